@@ -2,7 +2,6 @@ package com.cs4222.khuthia.barogpsapp;
 
 import java.io.*;
 import java.util.*;
-import java.text.*;
 
 import android.app.*;
 import android.os.*;
@@ -13,6 +12,8 @@ import android.location.*;
 import android.hardware.*;
 import android.util.*;
 
+import com.cs4222.khuthia.sensormetrics.*;
+
 /**
  Activity that logs Location and Barometer readings.
 
@@ -87,6 +88,9 @@ public class BaroGpsActivity
 
             // Open the log files
             openLogFiles();
+
+            // Export the runtime metrics periodically (next to the logs)
+            metricsReporter.start();
         }
         catch ( Exception e ) {
             // Log the exception
@@ -103,6 +107,9 @@ public class BaroGpsActivity
 
         try {
 
+            // Stop exporting the metrics (writing a last snapshot)
+            metricsReporter.stop();
+
             // Close the log files
             closeLogFiles();
 
@@ -138,7 +145,7 @@ public class BaroGpsActivity
             }
 
             // Initialise timestamps and count
-            prevBarometerTime = System.currentTimeMillis();
+            prevBarometerTime = currentTimeMillis();
             barometerDelayTime = 0;
             numBarometerReadings = 0;
 
@@ -257,10 +264,24 @@ public class BaroGpsActivity
     /** Called when the barometer value has changed. */
     @Override
     public void onSensorChanged( SensorEvent event ) {
+        long startNanos = sensorCallbackTimer.start();
+        long beginNanos = tracer.begin();
+        processBarometerEvent( event );
+        tracer.end( SPAN_SENSOR_CALLBACK , beginNanos );
+        sensorCallbackTimer.stop( startNanos );
+    }
+
+    /** Gets the current time (millisec) of the barometer's 1 Hz cap (the JVM tests replay on a fake clock). */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /** Helper method that logs and displays a barometer event. */
+    private void processBarometerEvent( SensorEvent event ) {
 
         // SensorEvent's timestamp is the device uptime,
         //  but for logging we use UTC time
-        long barometerTime = System.currentTimeMillis();
+        long barometerTime = currentTimeMillis();
 
         // Validity check: This must be the barometer sensor
         if ( event.sensor.getType() != Sensor.TYPE_PRESSURE )
@@ -315,6 +336,10 @@ public class BaroGpsActivity
     @Override
     public void onLocationChanged( Location location ) {
 
+        // Time (and trace) the callback
+        long startNanos = locationCallbackTimer.start();
+        long beginNanos = tracer.begin();
+
         // Calculate the delay for first reading
         long locationTime = location.getTime();
         if ( locationDelayTime == 0 ) {
@@ -358,6 +383,8 @@ public class BaroGpsActivity
 
         // Update the last timestamp
         prevLocationTime = locationTime;
+        tracer.end( SPAN_LOCATION_CALLBACK , beginNanos );
+        locationCallbackTimer.stop( startNanos );
     }
 
     /** Called when a location provider is disabled. */
@@ -508,23 +535,24 @@ public class BaroGpsActivity
                                           float millibar ,
                                           float height ) {
 
-        // Barometer details
-        final StringBuilder sb = new StringBuilder();
+        // Barometer details (the text is re-used: the callbacks and the
+        //  text view update run in the main thread)
+        final StringBuilder sb = barometerText;
+        sb.setLength( 0 );
         sb.append( "\nBarometer--" );
-        sb.append( "\nNumber of readings: " + numBarometerReadings );
-        sb.append( "\nMillibar: " + millibar );
-        sb.append( "\nHeight (m): " + height );
-        sb.append( "\nTime to get first sensor reading (msec): " + barometerDelayTime );
-        sb.append( "\nTime from previous reading (msec): " +
-                ( barometerTime - prevBarometerTime ) );
-
-        // Update the text view in the main UI thread
-        handler.post ( new Runnable() {
-            @Override
-            public void run() {
-                barometerTextView.setText( sb.toString() );
-            }
-        } );
+        sb.append( "\nNumber of readings: " ).append( numBarometerReadings );
+        sb.append( "\nMillibar: " ).append( millibar );
+        sb.append( "\nHeight (m): " ).append( height );
+        sb.append( "\nTime to get first sensor reading (msec): " ).append( barometerDelayTime );
+        sb.append( "\nTime from previous reading (msec): " ).append( barometerTime - prevBarometerTime );
+
+        // Update the text view in the main UI thread (unless an update
+        //  is already pending, which will show this text)
+        if ( ! isBarometerTextPosted ) {
+            isBarometerTextPosted = true;
+            handler.post( barometerTextUpdater );
+            displayUpdateCounter.increment();
+        }
     }
 
     /** Helper method that updates the location text view. */
@@ -537,28 +565,27 @@ public class BaroGpsActivity
                                          float bearing ,
                                          float speed ) {
 
-        // Location details
-        final StringBuilder sb = new StringBuilder();
+        // Location details (re-used, like the barometer's)
+        final StringBuilder sb = locationText;
+        sb.setLength( 0 );
         sb.append( "\nLocation--" );
-        sb.append( "\nNumber of readings: " + numLocationReadings );
-        sb.append( "\nProvider: " + provider );
-        sb.append( "\nLatitude (degrees): " + latitude );
-        sb.append( "\nLongitude (degrees): " + longitude );
-        sb.append( "\nAccuracy (m): " + accuracy );
-        sb.append( "\nAltitude (m): " + altitude );
-        sb.append( "\nBearing (degrees): " + bearing );
-        sb.append( "\nSpeed (m/sec): " + speed );
-        sb.append( "\nTime to get first sensor reading (msec): " + locationDelayTime );
-        sb.append( "\nTime from previous reading (msec): " +
-                ( locationTime - prevLocationTime ) );
-
-        // Update the text view in the main UI thread
-        handler.post ( new Runnable() {
-            @Override
-            public void run() {
-                locationTextView.setText( sb.toString() );
-            }
-        } );
+        sb.append( "\nNumber of readings: " ).append( numLocationReadings );
+        sb.append( "\nProvider: " ).append( provider );
+        sb.append( "\nLatitude (degrees): " ).append( latitude );
+        sb.append( "\nLongitude (degrees): " ).append( longitude );
+        sb.append( "\nAccuracy (m): " ).append( accuracy );
+        sb.append( "\nAltitude (m): " ).append( altitude );
+        sb.append( "\nBearing (degrees): " ).append( bearing );
+        sb.append( "\nSpeed (m/sec): " ).append( speed );
+        sb.append( "\nTime to get first sensor reading (msec): " ).append( locationDelayTime );
+        sb.append( "\nTime from previous reading (msec): " ).append( locationTime - prevLocationTime );
+
+        // Update the text view in the main UI thread (unless already pending)
+        if ( ! isLocationTextPosted ) {
+            isLocationTextPosted = true;
+            handler.post( locationTextUpdater );
+            displayUpdateCounter.increment();
+        }
     }
 
     /** Helper method to create toasts for the user. */
@@ -594,13 +621,17 @@ public class BaroGpsActivity
 
         // Third, create output streams for the log files (APPEND MODE)
         // Barometer log
+        // Note: The lines are written in one call each (unbuffered), so
+        //       each line is on the sdcard once logged
         File logFile = new File( logDirectory , "Barometer.csv" );
-        FileOutputStream fout = new FileOutputStream( logFile , true );
-        barometerLogFileOut = new PrintWriter( fout );
+        barometerLogFileOut = new FileOutputStream( logFile , true );
         // Location log
         logFile = new File( logDirectory , "GPS.csv" );
-        fout = new FileOutputStream( logFile , true );
-        locationLogFileOut = new PrintWriter( fout );
+        locationLogFileOut = new FileOutputStream( logFile , true );
+        // Metrics log
+        metricsReporter.setFile( new File( logDirectory , METRICS_FILE_NAME ) );
+        // Dump a trace next to the logs when a sensor callback stalls
+        tracer.setTrigger( SPAN_SENSOR_CALLBACK , TRACE_TRIGGER_NANOS , TRACE_WINDOW_NANOS , logDirectory );
     }
 
     /** Helper method that closes the log files. */
@@ -627,6 +658,15 @@ public class BaroGpsActivity
         finally {
             locationLogFileOut = null;
         }
+
+        // Stop the trace dumps, and close the metrics log file
+        tracer.setTrigger( SPAN_SENSOR_CALLBACK , TRACE_TRIGGER_NANOS , TRACE_WINDOW_NANOS , null );
+        try {
+            metricsReporter.setFile( null );
+        }
+        catch ( Exception e ) {
+            Log.e( TAG , "Unable to close metrics log file" , e );
+        }
     }
 
     /** Helper method that logs the barometer reading. */
@@ -634,19 +674,19 @@ public class BaroGpsActivity
                                       float millibar ,
                                       float height ) {
 
-        // Barometer details
-        final StringBuilder sb = new StringBuilder();
-        sb.append( numBarometerReadings + "," );
-        sb.append( barometerTime + "," );
-        sb.append( getHumanReadableTime( barometerTime ) + "," );
-        sb.append( millibar + "," );
-        sb.append( height + "," );
-        sb.append( ( barometerTime - prevBarometerTime ) + "," );
+        // Barometer details (in the re-used line)
+        final StringBuilder sb = logLine;
+        sb.setLength( 0 );
+        sb.append( numBarometerReadings ).append( ',' );
+        sb.append( barometerTime ).append( ',' );
+        logLineWriter.appendHumanReadableTime( sb , barometerTime ).append( ',' );
+        sb.append( millibar ).append( ',' );
+        sb.append( height ).append( ',' );
+        sb.append( barometerTime - prevBarometerTime ).append( ',' );
         sb.append( barometerDelayTime );
 
-        // Log to the file (and flush)
-        barometerLogFileOut.println( sb.toString() );
-        barometerLogFileOut.flush();
+        // Log to the file
+        writeLogLine( barometerLogFileOut );
     }
 
     /** Helper method that logs the location reading. */
@@ -659,31 +699,39 @@ public class BaroGpsActivity
                                      float bearing ,
                                      float speed ) {
 
-        // Location details
-        final StringBuilder sb = new StringBuilder();
-        sb.append( numLocationReadings + "," );
-        sb.append( locationTime + "," );
-        sb.append( getHumanReadableTime( locationTime ) + "," );
-        sb.append( provider + "," );
-        sb.append( latitude + "," );
-        sb.append( longitude + "," );
-        sb.append( accuracy + "," );
-        sb.append( altitude + "," );
-        sb.append( bearing + "," );
-        sb.append( speed + "," );
-        sb.append( ( locationTime - prevLocationTime ) + "," );
+        // Location details (in the re-used line)
+        final StringBuilder sb = logLine;
+        sb.setLength( 0 );
+        sb.append( numLocationReadings ).append( ',' );
+        sb.append( locationTime ).append( ',' );
+        logLineWriter.appendHumanReadableTime( sb , locationTime ).append( ',' );
+        sb.append( provider ).append( ',' );
+        sb.append( latitude ).append( ',' );
+        sb.append( longitude ).append( ',' );
+        sb.append( accuracy ).append( ',' );
+        sb.append( altitude ).append( ',' );
+        sb.append( bearing ).append( ',' );
+        sb.append( speed ).append( ',' );
+        sb.append( locationTime - prevLocationTime ).append( ',' );
         sb.append( locationDelayTime );
 
-        // Log to the file (and flush)
-        locationLogFileOut.println( sb.toString() );
-        locationLogFileOut.flush();
+        // Log to the file
+        writeLogLine( locationLogFileOut );
     }
 
-    /** Helper method to get the human readable time from unix time. */
-    private static String getHumanReadableTime( long unixTime ) {
-        Calendar calendar = Calendar.getInstance();
-        SimpleDateFormat sdf = new SimpleDateFormat( "yyyy-MM-dd-h-mm-ssa" );
-        return sdf.format( new Date( unixTime ) );
+    /** Helper method that writes the log line built to a log file. */
+    private void writeLogLine( OutputStream logFileOut ) {
+        long startNanos = logWriteTimer.start();
+        long beginNanos = tracer.begin();
+        try {
+            logLineWriter.writeLine( logLine , logFileOut );
+        }
+        catch ( IOException e ) {
+            // Log the exception
+            Log.e( TAG , "Unable to write log line" , e );
+        }
+        tracer.end( SPAN_LOG_WRITE , beginNanos );
+        logWriteTimer.stop( startNanos );
     }
 
     // GUI Widgets
@@ -735,9 +783,64 @@ public class BaroGpsActivity
     private Handler handler;
 
     /** Barometer log file output stream. */
-    public PrintWriter barometerLogFileOut;
+    public OutputStream barometerLogFileOut;
     /** Location log file output stream. */
-    public PrintWriter locationLogFileOut;
+    public OutputStream locationLogFileOut;
+    /** Log line being written (re-used, the callbacks run in the main thread), and its writer. */
+    private final StringBuilder logLine = new StringBuilder();
+    private final LogLineWriter logLineWriter = new LogLineWriter();
+
+    /** Barometer and location texts shown (re-used), and the flags of their pending text view updates. */
+    private final StringBuilder barometerText = new StringBuilder();
+    private final StringBuilder locationText = new StringBuilder();
+    private boolean isBarometerTextPosted , isLocationTextPosted;
+    /** Shows the barometer text (posted to the main thread). */
+    private final Runnable barometerTextUpdater = new Runnable() {
+            @Override
+            public void run() {
+                isBarometerTextPosted = false;
+                long beginNanos = tracer.begin();
+                barometerTextView.setText( barometerText );
+                tracer.end( SPAN_TEXT_VIEW , beginNanos );
+            }
+        };
+    /** Shows the location text (posted to the main thread). */
+    private final Runnable locationTextUpdater = new Runnable() {
+            @Override
+            public void run() {
+                isLocationTextPosted = false;
+                long beginNanos = tracer.begin();
+                locationTextView.setText( locationText );
+                tracer.end( SPAN_TEXT_VIEW , beginNanos );
+            }
+        };
+
+    /** Runtime metrics of the app. */
+    private static final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    /** Time to process a barometer event, and a location update. */
+    private final LatencyTimer sensorCallbackTimer = metrics.timer( "sensor.callback" );
+    private final LatencyTimer locationCallbackTimer = metrics.timer( "location.callback" );
+    /** Time to write (and flush) a log line. */
+    private final LatencyTimer logWriteTimer = metrics.timer( "log.write" );
+    /** Number of text view updates posted. */
+    private final Counter displayUpdateCounter = metrics.counter( "display.updates" );
+    /** Exports the metrics snapshots. */
+    private final MetricsReporter metricsReporter = new MetricsReporter( metrics , METRICS_PERIOD );
+    /** Time between two metrics snapshots (millisec). */
+    private static final long METRICS_PERIOD = 5000L;
+    /** Name of the metrics log file. */
+    private static final String METRICS_FILE_NAME = "Metrics.csv";
+
+    /** Trace of the app's spans. */
+    private static final SpanTracer tracer = SpanTracer.getDefault();
+    /** Trace spans of a barometer event, a location update, a log write and a text view update. */
+    private static final int SPAN_SENSOR_CALLBACK = tracer.span( "sensor.callback" );
+    private static final int SPAN_LOCATION_CALLBACK = tracer.span( "location.callback" );
+    private static final int SPAN_LOG_WRITE = tracer.span( "log.write" );
+    private static final int SPAN_TEXT_VIEW = tracer.span( "ui.textView" );
+    /** Callback time that dumps a trace (nanosec), and the time dumped (nanosec). */
+    private static final long TRACE_TRIGGER_NANOS = 20L * 1000000L;
+    private static final long TRACE_WINDOW_NANOS = 10L * 1000000000L;
 
     /** DDMS Log Tag. */
     private static final String TAG = "BaroGpsActivity";
@@ -0,0 +1,106 @@
+package com.cs4222.khuthia.barogpsapp;
+
+import java.io.*;
+
+import android.content.*;
+import android.hardware.*;
+import android.location.*;
+import android.view.*;
+
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.junit.Test;
+
+/**
+ * Checks that the activity's callbacks allocate nothing: a barometer
+ * event (the 1 Hz cap drops most of them, on a fake clock, and logs and
+ * displays the others), and a location fix (which is logged and
+ * displayed).
+ */
+public class BaroGpsAllocationTest {
+
+    /** Activity with the fake sensor/location managers and widgets. */
+    private static class ReplayActivity
+        extends BaroGpsActivity {
+
+        @Override
+        public Object getSystemService( String name ) {
+            if( Context.SENSOR_SERVICE.equals( name ) ) {
+                return sensors.getSensorManager();
+            }
+            else if( Context.LOCATION_SERVICE.equals( name ) ) {
+                return locations.getLocationManager();
+            }
+            return null;
+        }
+
+        @Override
+        public View findViewById( int id ) {
+            return views.findViewById( id );
+        }
+
+        @Override
+        public void onSensorChanged( SensorEvent event ) {
+            // Each event moves the fake clock on by the replay's 50 Hz
+            nowMillis += 20L;
+            super.onSensorChanged( event );
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return nowMillis;
+        }
+
+        final FakeSensorManager sensors = new FakeSensorManager( Sensor.TYPE_PRESSURE );
+        final FakeLocationManager locations =
+            new FakeLocationManager( LocationManager.GPS_PROVIDER , LocationManager.PASSIVE_PROVIDER );
+        final FakeViews views = new FakeViews();
+        /** Fake time (millisec). */
+        long nowMillis = 1451624400000L;
+    }
+
+    /** Stream that drops what is logged (there is no sdcard on the JVM). */
+    private static OutputStream createNullStream() {
+        return new OutputStream() {
+                @Override
+                public void write( int b ) {
+                }
+
+                @Override
+                public void write( byte[] buffer , int offset , int length ) {
+                }
+            };
+    }
+
+    @Test
+    public void callbacks_stayWithinTheirBudgets() {
+        ReplayActivity activity = new ReplayActivity();
+        activity.onCreate( null );
+        activity.barometerLogFileOut = createNullStream();
+        activity.locationLogFileOut = createNullStream();
+        activity.views.click( R.id.Button_StartBarometer );
+        activity.views.click( R.id.Button_StartLocation );
+
+        // 1 Hz GPS fixes, with and without altitude
+        final SensorTrace fixes = new SensorTrace();
+        long startTime = 1451624400000L;
+        for( int i = 0 ; i < 10 ; ++i ) {
+            fixes.addLocation( startTime + i * 1000L , startTime + i * 1000L , LocationManager.GPS_PROVIDER ,
+                               1.2966 + i * 0.0001 , 103.7764 , 8.0F , ( i % 2 == 0 ? 25.0 : -1.0 ) , -1.0F , -1.0F );
+        }
+        final FakeLocationManager locations = activity.locations;
+
+        // NOTE: The log lines and display texts are formatted into re-used
+        //  buffers (a String per line and date format were 5.5 KB a fix)
+        new AllocationBudget()
+            .addSensorPath( "barometer" , 0L , activity.sensors , Sensor.TYPE_PRESSURE ,
+                            new float[] { 1008.0F } , new float[] { 1008.1F } )
+            .addPath( "location" , 0L , new AllocationBudget.Driver() {
+                    @Override
+                    public void deliver( int index ) {
+                        locations.deliver( fixes.get( index % fixes.size() ) );
+                    }
+                } )
+            .check();
+    }
+}
@@ -0,0 +1,117 @@
+package com.cs4222.khuthia.barogpsapp;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import android.content.*;
+import android.hardware.*;
+import android.location.*;
+import android.view.*;
+
+import com.cs4222.khuthia.sensormetrics.*;
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of the activity's reading processing: a location fix (the
+ * log line written to a temp file, and the GUI update), a barometer reading
+ * (mostly dropped by the 1 Hz cap), and the log's human-readable time.
+ */
+@BenchmarkMode( { Mode.Throughput , Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class BaroGpsBenchmark {
+
+    /** Activity with the fake sensor/location managers, and plain (non-recording) widgets. */
+    private static class BenchmarkActivity
+        extends BaroGpsActivity {
+
+        @Override
+        public Object getSystemService( String name ) {
+            if( Context.SENSOR_SERVICE.equals( name ) ) {
+                return sensors.getSensorManager();
+            }
+            else if( Context.LOCATION_SERVICE.equals( name ) ) {
+                return locations.getLocationManager();
+            }
+            return null;
+        }
+
+        @Override
+        public View findViewById( int id ) {
+            return views.findViewById( id );
+        }
+
+        final FakeSensorManager sensors = new FakeSensorManager( Sensor.TYPE_PRESSURE );
+        final FakeLocationManager locations = new FakeLocationManager( LocationManager.GPS_PROVIDER );
+        final FakeViews views = new FakeViews( false );
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        activity.onCreate( null );
+        // The plain widgets cannot be clicked, so log to temp files and register directly
+        barometerLogFile = File.createTempFile( "BaroGpsBenchmark" , ".csv" );
+        locationLogFile = File.createTempFile( "BaroGpsBenchmark" , ".csv" );
+        activity.barometerLogFileOut = new FileOutputStream( barometerLogFile );
+        activity.locationLogFileOut = new FileOutputStream( locationLogFile );
+        activity.sensors.getSensorManager().registerListener( activity ,
+                                                              activity.sensors.getSensor( Sensor.TYPE_PRESSURE ) ,
+                                                              SensorManager.SENSOR_DELAY_FASTEST );
+        activity.locations.getLocationManager().requestLocationUpdates( LocationManager.GPS_PROVIDER ,
+                                                                        0L , 0.0F , activity );
+
+        // A GPS fix
+        SensorTrace trace = new SensorTrace();
+        trace.addLocation( 1451624400000L , 1451624399900L , LocationManager.GPS_PROVIDER ,
+                           1.2966 , 103.7764 , 8.0F , 25.0 , -1.0F , 1.5F );
+        fix = trace.get( 0 );
+    }
+
+    @TearDown
+    public void tearDown() {
+        activity.closeLogFiles();
+        barometerLogFile.delete();
+        locationLogFile.delete();
+    }
+
+    @Benchmark
+    public int onLocationChanged() {
+        return activity.locations.deliver( fix );
+    }
+
+    @Benchmark
+    public int onSensorChanged() {
+        timestamp += READING_INTERVAL;
+        return activity.sensors.deliver( Sensor.TYPE_PRESSURE , timestamp , SensorManager.SENSOR_STATUS_ACCURACY_HIGH , PRESSURE );
+    }
+
+    @Benchmark
+    public StringBuilder appendHumanReadableTime() {
+        unixTime += 200L;
+        timeText.setLength( 0 );
+        return logLineWriter.appendHumanReadableTime( timeText , unixTime );
+    }
+
+    /** Activity under test. */
+    private final BenchmarkActivity activity = new BenchmarkActivity();
+    /** Temp log files. */
+    private File barometerLogFile , locationLogFile;
+    /** Location fix delivered. */
+    private SensorTrace.Event fix;
+    /** Event timestamp (nanosec, device uptime). */
+    private long timestamp = 60L * 1000000000L;
+    /** UNIX time (millisec), its text, and the writer formatting it. */
+    private long unixTime = 1451624400000L;
+    private final StringBuilder timeText = new StringBuilder();
+    private final LogLineWriter logLineWriter = new LogLineWriter();
+
+    /** Time between barometer readings (nanosec), 5 Hz. */
+    private static final long READING_INTERVAL = 200000000L;
+    /** Barometer reading (millibar). */
+    private static final float[] PRESSURE = { 1008.5F };
+}
@@ -0,0 +1,113 @@
+package com.cs4222.khuthia.barogpsapp;
+
+import java.io.*;
+
+import android.content.*;
+import android.hardware.*;
+import android.location.*;
+import android.view.*;
+
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays recorded barometer and GPS logs into the activity on the JVM,
+ * and checks the readings it logs.
+ */
+public class BaroGpsReplayTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Activity with the fake sensor/location managers and widgets. */
+    private static class ReplayActivity
+        extends BaroGpsActivity {
+
+        @Override
+        public Object getSystemService( String name ) {
+            if( Context.SENSOR_SERVICE.equals( name ) ) {
+                return sensors.getSensorManager();
+            }
+            else if( Context.LOCATION_SERVICE.equals( name ) ) {
+                return locations.getLocationManager();
+            }
+            return null;
+        }
+
+        @Override
+        public View findViewById( int id ) {
+            return views.findViewById( id );
+        }
+
+        final FakeSensorManager sensors = new FakeSensorManager( Sensor.TYPE_PRESSURE );
+        final FakeLocationManager locations =
+            new FakeLocationManager( LocationManager.GPS_PROVIDER , LocationManager.PASSIVE_PROVIDER );
+        final FakeViews views = new FakeViews();
+    }
+
+    /** Writes BaroGpsApp logs: 5 Hz barometer and 1 Hz GPS readings for the given duration. */
+    private File writeLogs( int seconds ) throws Exception {
+        File logFolder = folder.newFolder();
+        long startTime = 1451624400000L;
+        PrintWriter barometer = new PrintWriter( new FileWriter( new File( logFolder , "Barometer.csv" ) ) );
+        for( int i = 0 ; i < seconds * 5 ; ++i ) {
+            barometer.println( ( i + 1 ) + "," + ( startTime + i * 200L ) + ",2016-01-01-1-00-00PM," +
+                               ( 1008.0F + i * 0.01F ) + ",40.0,200,0" );
+        }
+        barometer.close();
+        PrintWriter gps = new PrintWriter( new FileWriter( new File( logFolder , "GPS.csv" ) ) );
+        for( int i = 0 ; i < seconds ; ++i ) {
+            gps.println( ( i + 1 ) + "," + ( startTime + i * 1000L + 100L ) + ",2016-01-01-1-00-00PM,gps," +
+                         ( 1.2966 + i * 0.0001 ) + ",103.7764,8.0," + ( i % 2 == 0 ? "25.0" : "-1.0" ) +
+                         ",-1.0,-1.0,1000,0" );
+        }
+        gps.close();
+        return logFolder;
+    }
+
+    @Test
+    public void replay_logsLocationsAndRateLimitedBarometer() throws Exception {
+        SensorTrace trace = SensorTrace.readBaroGpsLogs( writeLogs( 3 ) );
+        ReplayActivity activity = new ReplayActivity();
+        activity.onCreate( null );
+        // There is no sdcard on the JVM, so log to memory
+        ByteArrayOutputStream barometerLog = new ByteArrayOutputStream() , locationLog = new ByteArrayOutputStream();
+        activity.barometerLogFileOut = barometerLog;
+        activity.locationLogFileOut = locationLog;
+        activity.views.click( R.id.Button_StartBarometer );
+        activity.views.click( R.id.Button_StartLocation );
+
+        assertEquals( 18 , trace.size() );
+        assertEquals( 1 , activity.locations.getNumListeners( LocationManager.GPS_PROVIDER ) );
+
+        // Replay 3 sec of readings at 2 times speed
+        SensorReplayer.Result result =
+            new SensorReplayer( activity.sensors , activity.locations ).replay( trace , 2.0 );
+
+        assertEquals( 15 , result.getNumSensorEvents() );
+        assertEquals( 3 , result.getNumLocations() );
+        assertEquals( 0 , result.getNumUndelivered() );
+
+        // Every fix is logged (with -1 for a missing altitude)
+        String[] locations = locationLog.toString().split( "\\r?\\n" );
+        assertEquals( 3 , locations.length );
+        assertTrue( locations[0].contains( ",gps,1.2966,103.7764,8.0,25.0,-1.0,-1.0," ) );
+        assertTrue( locations[1].contains( ",8.0,-1.0,-1.0,-1.0," ) );
+
+        // The barometer is capped at 1 Hz of wall clock time (about 1.4 sec of replay)
+        String[] barometer = barometerLog.toString().split( "\\r?\\n" );
+        assertTrue( barometer[0].startsWith( "1," ) );
+        assertTrue( "Barometer lines: " + barometer.length , barometer.length <= 2 );
+
+        // Stopping unregisters the listeners
+        activity.views.click( R.id.Button_StopBarometer );
+        activity.views.click( R.id.Button_StopLocation );
+        assertEquals( 0 , activity.sensors.getNumListeners( Sensor.TYPE_PRESSURE ) );
+        assertEquals( 0 , activity.locations.getNumListeners( LocationManager.GPS_PROVIDER ) );
+    }
+}
@@ -1,3 +1,5 @@
+package com.cs4222.khuthia.lightanalyzer;
+
 import android.test.ActivityInstrumentationTestCase2;
 import org.junit.Test;
 /**
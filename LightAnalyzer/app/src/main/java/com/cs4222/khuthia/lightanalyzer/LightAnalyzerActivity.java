@@ -2,7 +2,6 @@ package com.cs4222.khuthia.lightanalyzer;
 
 import java.io.*;
 import java.util.*;
-import java.text.*;
 
 import android.app.*;
 import android.os.*;
@@ -12,6 +11,8 @@ import android.content.*;
 import android.hardware.*;
 import android.util.*;
 
+import com.cs4222.khuthia.sensormetrics.*;
+
 /**
  Activity that logs Light sensor readings to the sdcard.
 
@@ -51,6 +52,9 @@ public class LightAnalyzerActivity
 
             // Open the log file
             openLogFile();
+
+            // Export the runtime metrics periodically (next to the log)
+            metricsReporter.start();
         }
         catch ( Exception e ) {
             // Log the exception
@@ -67,6 +71,9 @@ public class LightAnalyzerActivity
 
         try {
 
+            // Stop exporting the metrics (writing a last snapshot)
+            metricsReporter.stop();
+
             // Close the log file
             closeLogFile();
 
@@ -151,6 +158,15 @@ public class LightAnalyzerActivity
     /** Called when the light sensor value has changed. */
     @Override
     public void onSensorChanged( SensorEvent event ) {
+        long startNanos = sensorCallbackTimer.start();
+        long beginNanos = tracer.begin();
+        processLightEvent( event );
+        tracer.end( SPAN_SENSOR_CALLBACK , beginNanos );
+        sensorCallbackTimer.stop( startNanos );
+    }
+
+    /** Helper method that logs and displays a light sensor event. */
+    private void processLightEvent( SensorEvent event ) {
 
         // SensorEvent's timestamp is the device uptime,
         //  but for logging we use UTC time
@@ -247,19 +263,21 @@ public class LightAnalyzerActivity
     private void updateLightTextView( long timestamp ,
                                       float lux ) {
 
-        // Light sensor reading details
-        final StringBuilder sb = new StringBuilder();
+        // Light sensor reading details (the text is re-used: the callback
+        //  and the text view update run in the main thread)
+        final StringBuilder sb = lightText;
+        sb.setLength( 0 );
         sb.append( "\nLight--" );
-        sb.append( "\nNumber of readings: " + numLightReadings );
-        sb.append("\nAmbient light level (lux): " + lux);
-
-        // Update the text view in the main UI thread
-        handler.post(new Runnable() {
-            @Override
-            public void run() {
-                lightTextView.setText(sb.toString());
-            }
-        });
+        sb.append( "\nNumber of readings: " ).append( numLightReadings );
+        sb.append( "\nAmbient light level (lux): " ).append( lux );
+
+        // Update the text view in the main UI thread (unless an update
+        //  is already pending, which will show this text)
+        if ( ! isLightTextPosted ) {
+            isLightTextPosted = true;
+            handler.post( lightTextUpdater );
+            displayUpdateCounter.increment();
+        }
     }
 
     /** Helper method that updates the location text view. */
@@ -273,18 +291,18 @@ public class LightAnalyzerActivity
         } else {
             locationName = "Outdoors";
         }
-        // Light sensor reading details
-        final StringBuilder sb = new StringBuilder();
+        // Light sensor reading details (re-used, like the light's)
+        final StringBuilder sb = locationText;
+        sb.setLength( 0 );
         sb.append( "\nLocation--" );
-        sb.append( "\nCurrent location of user: " + locationName );
+        sb.append( "\nCurrent location of user: " ).append( locationName );
 
-        // Update the text view in the main UI thread
-        handler.post ( new Runnable() {
-            @Override
-            public void run() {
-                locationTextView.setText( sb.toString() );
-            }
-        } );
+        // Update the text view in the main UI thread (unless already pending)
+        if ( ! isLocationTextPosted ) {
+            isLocationTextPosted = true;
+            handler.post( locationTextUpdater );
+            displayUpdateCounter.increment();
+        }
     }
 
     /** Helper method to create toasts for the user. */
@@ -321,9 +339,15 @@ public class LightAnalyzerActivity
         }
 
         // Third, create output streams for the log file (APPEND MODE!)
+        // Note: The lines are written in one call each (unbuffered), so
+        //       each line is on the sdcard once logged
         File logFile = new File( logDirectory , "Light.csv" );
-        FileOutputStream fout = new FileOutputStream( logFile , true );
-        lightLogFileOut = new PrintWriter( fout );
+        lightLogFileOut = new FileOutputStream( logFile , true );
+
+        // Finally, export the metrics next to it
+        metricsReporter.setFile( new File( logDirectory , METRICS_FILE_NAME ) );
+        // (and dump a trace there when a sensor callback stalls)
+        tracer.setTrigger( SPAN_SENSOR_CALLBACK , TRACE_TRIGGER_NANOS , TRACE_WINDOW_NANOS , logDirectory );
     }
 
     /** Helper method that closes the log file. */
@@ -339,29 +363,40 @@ public class LightAnalyzerActivity
         finally {
             lightLogFileOut = null;
         }
+
+        // Stop the trace dumps, and close the metrics log file
+        tracer.setTrigger( SPAN_SENSOR_CALLBACK , TRACE_TRIGGER_NANOS , TRACE_WINDOW_NANOS , null );
+        try {
+            metricsReporter.setFile( null );
+        }
+        catch( Exception e ) {
+            Log.e( TAG , "Unable to close metrics log file" , e );
+        }
     }
 
     /** Helper method that logs the light sensor reading. */
     private void logLightReading( long timestamp ,
                                   float lux ) {
 
-        // Light sensor reading details
-        final StringBuilder sb = new StringBuilder();
-        sb.append( numLightReadings + "," );
-        sb.append( timestamp + "," );
-        sb.append( getHumanReadableTime( timestamp ) + "," );
+        // Light sensor reading details (in the re-used line)
+        final StringBuilder sb = logLine;
+        sb.setLength( 0 );
+        sb.append( numLightReadings ).append( ',' );
+        sb.append( timestamp ).append( ',' );
+        logLineWriter.appendHumanReadableTime( sb , timestamp ).append( ',' );
         sb.append( lux );
 
-        // Log to the file (and flush it)
-        lightLogFileOut.println( sb.toString() );
-        lightLogFileOut.flush();
-    }
-
-    /** Helper method to get the human readable time from unix time. */
-    private static String getHumanReadableTime( long unixTime ) {
-        Calendar calendar = Calendar.getInstance();
-        SimpleDateFormat sdf = new SimpleDateFormat( "yyyy-MM-dd-h-mm-ssa" );
-        return sdf.format( new Date( unixTime ) );
+        // Log to the file
+        long startNanos = logWriteTimer.start();
+        long beginNanos = tracer.begin();
+        try {
+            logLineWriter.writeLine( sb , lightLogFileOut );
+        }
+        catch( IOException e ) {
+            Log.e( TAG , "Unable to write light sensor log line" , e );
+        }
+        tracer.end( SPAN_LOG_WRITE , beginNanos );
+        logWriteTimer.stop( startNanos );
     }
 
     /** Start light sensor sampling button. */
@@ -389,7 +424,60 @@ public class LightAnalyzerActivity
     private Handler handler;
 
     /** Light sensor log file output stream. */
-    public PrintWriter lightLogFileOut;
+    public OutputStream lightLogFileOut;
+    /** Log line being written (re-used, the callback runs in the main thread), and its writer. */
+    private final StringBuilder logLine = new StringBuilder();
+    private final LogLineWriter logLineWriter = new LogLineWriter();
+
+    /** Light and location texts shown (re-used), and the flags of their pending text view updates. */
+    private final StringBuilder lightText = new StringBuilder();
+    private final StringBuilder locationText = new StringBuilder();
+    private boolean isLightTextPosted , isLocationTextPosted;
+    /** Shows the light text (posted to the main thread). */
+    private final Runnable lightTextUpdater = new Runnable() {
+            @Override
+            public void run() {
+                isLightTextPosted = false;
+                long beginNanos = tracer.begin();
+                lightTextView.setText( lightText );
+                tracer.end( SPAN_TEXT_VIEW , beginNanos );
+            }
+        };
+    /** Shows the location text (posted to the main thread). */
+    private final Runnable locationTextUpdater = new Runnable() {
+            @Override
+            public void run() {
+                isLocationTextPosted = false;
+                long beginNanos = tracer.begin();
+                locationTextView.setText( locationText );
+                tracer.end( SPAN_TEXT_VIEW , beginNanos );
+            }
+        };
+
+    /** Runtime metrics of the app. */
+    private static final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    /** Time to process a light sensor event. */
+    private final LatencyTimer sensorCallbackTimer = metrics.timer( "sensor.callback" );
+    /** Time to write (and flush) a log line. */
+    private final LatencyTimer logWriteTimer = metrics.timer( "log.write" );
+    /** Number of text view updates posted. */
+    private final Counter displayUpdateCounter = metrics.counter( "display.updates" );
+    /** Exports the metrics snapshots. */
+    private final MetricsReporter metricsReporter = new MetricsReporter( metrics , METRICS_PERIOD );
+    /** Time between two metrics snapshots (millisec). */
+    private static final long METRICS_PERIOD = 5000L;
+    /** Name of the metrics log file. */
+    private static final String METRICS_FILE_NAME = "Metrics.csv";
+
+    /** Trace of the app's spans. */
+    private static final SpanTracer tracer = SpanTracer.getDefault();
+    /** Trace spans of a light sensor event, a log write and a text view update. */
+    private static final int SPAN_SENSOR_CALLBACK = tracer.span( "sensor.callback" );
+    private static final int SPAN_LOG_WRITE = tracer.span( "log.write" );
+    private static final int SPAN_TEXT_VIEW = tracer.span( "ui.textView" );
+    /** Callback time that dumps a trace (nanosec), and the time dumped (nanosec). */
+    private static final long TRACE_TRIGGER_NANOS = 20L * 1000000L;
+    private static final long TRACE_WINDOW_NANOS = 10L * 1000000000L;
 
     /** DDMS Log Tag. */
     private static final String TAG = "LightAnalyzerActivity";
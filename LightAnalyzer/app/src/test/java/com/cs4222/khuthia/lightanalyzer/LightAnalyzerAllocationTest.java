@@ -0,0 +1,60 @@
+package com.cs4222.khuthia.lightanalyzer;
+
+import java.io.*;
+
+import android.content.*;
+import android.hardware.*;
+import android.view.*;
+
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.junit.Test;
+
+/**
+ * Checks that the activity's light callback (which logs and displays
+ * every reading) allocates nothing.
+ */
+public class LightAnalyzerAllocationTest {
+
+    /** Activity with the fake sensor manager and widgets. */
+    private static class ReplayActivity
+        extends LightAnalyzerActivity {
+
+        @Override
+        public Object getSystemService( String name ) {
+            return ( Context.SENSOR_SERVICE.equals( name ) ? sensors.getSensorManager() : null );
+        }
+
+        @Override
+        public View findViewById( int id ) {
+            return views.findViewById( id );
+        }
+
+        final FakeSensorManager sensors = new FakeSensorManager( Sensor.TYPE_LIGHT );
+        final FakeViews views = new FakeViews();
+    }
+
+    @Test
+    public void lightCallback_staysWithinItsBudget() {
+        ReplayActivity activity = new ReplayActivity();
+        activity.onCreate( null );
+        // Log to a stream that drops the lines (there is no sdcard on the JVM)
+        activity.lightLogFileOut = new OutputStream() {
+                @Override
+                public void write( int b ) {
+                }
+
+                @Override
+                public void write( byte[] buffer , int offset , int length ) {
+                }
+            };
+        activity.views.click( R.id.PA1Activity_Button_StartLight );
+
+        // NOTE: The log line and display texts are formatted into re-used
+        //  buffers (a String per line and date format were 2.6 KB a reading)
+        new AllocationBudget()
+            .addSensorPath( "light" , 0L , activity.sensors , Sensor.TYPE_LIGHT ,
+                            new float[] { 40.0F } , new float[] { 400.0F } , new float[] { 4000.0F } )
+            .check();
+    }
+}
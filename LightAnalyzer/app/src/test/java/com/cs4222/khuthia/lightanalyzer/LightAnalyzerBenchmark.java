@@ -0,0 +1,92 @@
+package com.cs4222.khuthia.lightanalyzer;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import android.content.*;
+import android.hardware.*;
+import android.view.*;
+
+import com.cs4222.khuthia.sensormetrics.*;
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of the activity's light reading processing (the log line
+ * written to a temp file, and the GUI updates), and of the log's human-readable
+ * time.
+ */
+@BenchmarkMode( { Mode.Throughput , Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class LightAnalyzerBenchmark {
+
+    /** Activity with the fake sensor manager, and plain (non-recording) widgets. */
+    private static class BenchmarkActivity
+        extends LightAnalyzerActivity {
+
+        @Override
+        public Object getSystemService( String name ) {
+            return ( Context.SENSOR_SERVICE.equals( name ) ? sensors.getSensorManager() : null );
+        }
+
+        @Override
+        public View findViewById( int id ) {
+            return views.findViewById( id );
+        }
+
+        final FakeSensorManager sensors = new FakeSensorManager( Sensor.TYPE_LIGHT );
+        final FakeViews views = new FakeViews( false );
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        activity.onCreate( null );
+        // The plain widgets cannot be clicked, so log to a temp file and register directly
+        logFile = File.createTempFile( "LightAnalyzerBenchmark" , ".csv" );
+        activity.lightLogFileOut = new FileOutputStream( logFile );
+        activity.sensors.getSensorManager().registerListener( activity ,
+                                                              activity.sensors.getSensor( Sensor.TYPE_LIGHT ) ,
+                                                              SensorManager.SENSOR_DELAY_FASTEST );
+    }
+
+    @TearDown
+    public void tearDown() {
+        activity.closeLogFile();
+        logFile.delete();
+    }
+
+    @Benchmark
+    public int onSensorChanged() {
+        timestamp += READING_INTERVAL;
+        lux[0] = ( lux[0] + 1.0F ) % 1000.0F;
+        return activity.sensors.deliver( Sensor.TYPE_LIGHT , timestamp , SensorManager.SENSOR_STATUS_ACCURACY_HIGH , lux );
+    }
+
+    @Benchmark
+    public StringBuilder appendHumanReadableTime() {
+        unixTime += 200L;
+        timeText.setLength( 0 );
+        return logLineWriter.appendHumanReadableTime( timeText , unixTime );
+    }
+
+    /** Activity under test. */
+    private final BenchmarkActivity activity = new BenchmarkActivity();
+    /** Temp log file. */
+    private File logFile;
+    /** Light reading (lux). */
+    private final float[] lux = { 320.0F };
+    /** Event timestamp (nanosec, device uptime). */
+    private long timestamp = 60L * 1000000000L;
+    /** UNIX time (millisec), its text, and the writer formatting it. */
+    private long unixTime = 1451624400000L;
+    private final StringBuilder timeText = new StringBuilder();
+    private final LogLineWriter logLineWriter = new LogLineWriter();
+
+    /** Time between readings (nanosec), 5 Hz. */
+    private static final long READING_INTERVAL = 200000000L;
+}
@@ -0,0 +1,103 @@
+package com.cs4222.khuthia.lightanalyzer;
+
+import java.io.*;
+
+import android.content.*;
+import android.hardware.*;
+import android.view.*;
+
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a recorded light log into the activity on the JVM,
+ * and checks the readings it logs.
+ */
+public class LightAnalyzerReplayTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Activity with the fake sensor manager and widgets. */
+    private static class ReplayActivity
+        extends LightAnalyzerActivity {
+
+        @Override
+        public Object getSystemService( String name ) {
+            return ( Context.SENSOR_SERVICE.equals( name ) ? sensors.getSensorManager() : null );
+        }
+
+        @Override
+        public View findViewById( int id ) {
+            return views.findViewById( id );
+        }
+
+        final FakeSensorManager sensors = new FakeSensorManager( Sensor.TYPE_LIGHT );
+        final FakeViews views = new FakeViews();
+    }
+
+    /** Writes a light log in the LightAnalyzer format (a reading every 200 ms). */
+    private File writeLightLog( int numReadings ) throws Exception {
+        File logFile = folder.newFile( "Light.csv" );
+        PrintWriter out = new PrintWriter( new FileWriter( logFile ) );
+        for( int i = 0 ; i < numReadings ; ++i ) {
+            out.println( ( i + 1 ) + "," + ( 1451624400000L + i * 200L ) + ",2016-01-01-1-00-00PM," + ( 100.0F * i ) );
+        }
+        out.println( "partly written line" );
+        out.close();
+        return logFile;
+    }
+
+    /** Creates the activity, and starts light sampling through its GUI. */
+    private ReplayActivity startActivity( OutputStream log ) {
+        ReplayActivity activity = new ReplayActivity();
+        activity.onCreate( null );
+        // There is no sdcard on the JVM, so log to memory
+        activity.lightLogFileOut = log;
+        activity.views.click( R.id.PA1Activity_Button_StartLight );
+        return activity;
+    }
+
+    @Test
+    public void replay_logsEveryReading() throws Exception {
+        SensorTrace trace = SensorTrace.readLightAnalyzerLog( writeLightLog( 20 ) );
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        ReplayActivity activity = startActivity( log );
+
+        assertEquals( 1 , trace.getNumSkippedLines() );
+        assertEquals( 1 , activity.sensors.getNumListeners( Sensor.TYPE_LIGHT ) );
+        assertFalse( activity.views.isEnabled( R.id.PA1Activity_Button_StartLight ) );
+
+        SensorReplayer.Result result =
+            new SensorReplayer( activity.sensors , null ).replay( trace , SensorReplayer.AS_FAST_AS_POSSIBLE );
+
+        assertEquals( 20 , result.getNumSensorEvents() );
+        assertEquals( 0 , result.getNumUndelivered() );
+        String[] lines = log.toString().split( "\\r?\\n" );
+        assertEquals( 20 , lines.length );
+        assertTrue( lines[0].startsWith( "1," ) );
+        assertTrue( lines[19].endsWith( ",1900.0" ) );
+
+        // Stopping unregisters the listener
+        activity.views.click( R.id.PA1Activity_Button_StopLight );
+        assertEquals( 0 , activity.sensors.getNumListeners( Sensor.TYPE_LIGHT ) );
+    }
+
+    @Test
+    public void replay_isPacedAtTheGivenSpeed() throws Exception {
+        // 19 x 200 ms = 3.8 sec of readings, replayed at 10 times speed
+        SensorTrace trace = SensorTrace.readLightAnalyzerLog( writeLightLog( 20 ) );
+        ReplayActivity activity = startActivity( new ByteArrayOutputStream() );
+
+        SensorReplayer.Result result = new SensorReplayer( activity.sensors , null ).replay( trace , 10.0 );
+
+        assertEquals( 3800L , result.getTraceMillis() );
+        assertTrue( result.toString() , result.getElapsedNanos() >= 380L * 1000000L );
+        assertTrue( result.toString() , result.getElapsedNanos() < 2000L * 1000000L );
+    }
+}
@@ -0,0 +1,43 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of the streaming label joiner: the label of the next
+ * sample (one every 10 ms), with one label per minute over 10 hours.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class LabelJoinerBenchmark {
+
+    @Setup
+    public void setUp() throws IOException {
+        GroundTruthIndex index = new GroundTruthIndex();
+        String[] activities = { "IDLE_INDOOR" , "WALKING" , "BUS" , "TRAIN" , "CAR" };
+        for( int i = 0 ; i < NUM_LABELS ; ++i ) {
+            index.add( i * 60000L , activities[ i % activities.length ] );
+        }
+        joiner = new LabelJoiner( index );
+    }
+
+    @Benchmark
+    public String labelAt() {
+        time = ( time + 10L ) % ( NUM_LABELS * 60000L );
+        return joiner.labelAt( time );
+    }
+
+    /** Joiner under test. */
+    private LabelJoiner joiner;
+    /** Time of the last sample (millisec). */
+    private long time = 0L;
+
+    /** Number of labels (one per minute). */
+    private static final int NUM_LABELS = 600;
+}
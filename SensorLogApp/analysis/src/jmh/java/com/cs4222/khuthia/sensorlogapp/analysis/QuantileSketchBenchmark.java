@@ -0,0 +1,40 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of a quantile sketch update (the per-reading cost of the
+ * session summary), with uniformly random readings.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class QuantileSketchBenchmark {
+
+    @Setup
+    public void setUp() {
+        Random random = new Random( 3L );
+        for( int i = 0 ; i < values.length ; ++i ) {
+            values[i] = random.nextFloat();
+        }
+    }
+
+    @Benchmark
+    public void update() {
+        sketch.update( values[ next ] );
+        next = ( next + 1 ) & ( values.length - 1 );
+    }
+
+    /** Sketch under test. */
+    private final QuantileSketch sketch = new QuantileSketch();
+    /** Readings (in a loop). */
+    private final float[] values = new float[ 1 << 20 ];
+    /** Next reading. */
+    private int next = 0;
+}
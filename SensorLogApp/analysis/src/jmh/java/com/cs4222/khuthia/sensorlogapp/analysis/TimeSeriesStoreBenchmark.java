@@ -0,0 +1,52 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of a window query (max of a column) over a day of
+ * accelerometer samples at 50 Hz, for a few window lengths.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class TimeSeriesStoreBenchmark {
+
+    /** Query window (millisec). */
+    @Param( { "1000" , "60000" } )
+    public long window;
+
+    @Setup
+    public void setUp() {
+        int numSamples = 24 * 3600 * 50;
+        for( int i = 0 ; i < numSamples ; ++i ) {
+            store.add( DAY_START + i * 20L , (float) Math.sin( i ) , 9.81F , 0.0F , (byte) 3 );
+        }
+        Random random = new Random( 9L );
+        for( int i = 0 ; i < starts.length ; ++i ) {
+            starts[i] = DAY_START + (long) ( random.nextDouble() * 24 * 3600000L );
+        }
+    }
+
+    @Benchmark
+    public float max() {
+        long start = starts[ next ];
+        next = ( next + 1 ) & ( starts.length - 1 );
+        return store.max( 0 , start , start + window );
+    }
+
+    /** Store under test. */
+    private final TimeSeriesStore store = new TimeSeriesStore( 3 );
+    /** Random window starts (in a loop). */
+    private final long[] starts = new long[ 1 << 16 ];
+    /** Next window. */
+    private int next = 0;
+
+    /** Start of the day stored (UNIX millisec). */
+    private static final long DAY_START = 1451606400000L;
+}
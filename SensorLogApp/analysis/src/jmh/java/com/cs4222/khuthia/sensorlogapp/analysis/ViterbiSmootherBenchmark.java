@@ -0,0 +1,57 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of smoothing a day of 1.28 s windows (offline, lag 16),
+ * with the app's 9 activities.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class ViterbiSmootherBenchmark {
+
+    @Setup
+    public void setUp() throws IOException {
+        List< String > classes = Arrays.asList( "IDLE_INDOOR" , "IDLE_OUTDOOR" , "WALKING" , "BUS" , "TRAIN" ,
+                                                "CAR" , "JOGGING" , "OTHER" , "INCORRECT" );
+        int numStates = classes.size();
+        Random random = new Random( 3L );
+        ActivityHmm.Counts counts = new ActivityHmm.Counts( classes , 1280L );
+        GroundTruthIndex index = new GroundTruthIndex();
+        for( int i = 0 ; i < NUM_LABELS ; ++i ) {
+            index.add( i * 600000L , classes.get( random.nextInt( numStates ) ) );
+        }
+        index.setEndTime( NUM_LABELS * 600000L );
+        counts.addSession( index );
+        smoother = new ViterbiSmoother( counts.toHmm() , 16 );
+        probabilities = new float[ NUM_WINDOWS * numStates ];
+        for( int i = 0 ; i < probabilities.length ; ++i ) {
+            probabilities[i] = random.nextFloat();
+        }
+    }
+
+    @Benchmark
+    public int[] smoothDay() {
+        smoother.smooth( probabilities , NUM_WINDOWS , states );
+        return states;
+    }
+
+    /** Smoother under test. */
+    private ViterbiSmoother smoother;
+    /** Class probabilities of each window, and the smoothed states. */
+    private float[] probabilities;
+    private final int[] states = new int[ NUM_WINDOWS ];
+
+    /** Number of windows (a day of 1.28 s windows). */
+    private static final int NUM_WINDOWS = 67500;
+    /** Number of labels of the model's session (one per 10 minutes). */
+    private static final int NUM_LABELS = 200;
+}
@@ -0,0 +1,285 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   Hidden Markov model of the user's activity, one step per classifier
+   window (hop): the prior of each activity, and the probability of
+   moving from one activity to another between two consecutive windows.
+   It is used by {@link ViterbiSmoother} to smooth the per-window
+   predictions.
+
+   <p> The model is learnt from the ground truth label sequences of the
+   logged sessions ({@link Counts}): a label lasting n hops counts n - 1
+   self transitions, and one transition to the next label, so the model
+   knows that activities last minutes, and that a switch between two
+   windows is rare. File layout (big endian):
+   <pre>
+     int    magic ('SLHM')
+     int    version
+     int    number of states, followed by the names (UTF)
+     double priors[ states ]
+     double transitions[ states ][ states ]   (by row: from, then to)
+   </pre>
+ */
+public class ActivityHmm {
+
+    /**
+       Creates a model.
+
+       @param  priors       Prior of each state
+       @param  transitions  Transition probabilities, by row (transitions[ from * states + to ])
+     */
+    public ActivityHmm( String[] classNames ,
+                        double[] priors ,
+                        double[] transitions ) {
+        int numStates = classNames.length;
+        if( numStates == 0 || priors.length != numStates || transitions.length != numStates * numStates ) {
+            throw new IllegalArgumentException( "Invalid model size" );
+        }
+        this.classNames = classNames.clone();
+        this.priors = priors.clone();
+        this.transitions = transitions.clone();
+    }
+
+    /** Gets the state (class) names. */
+    public List< String > getClassNames() {
+        return Collections.unmodifiableList( Arrays.asList( classNames ) );
+    }
+
+    /** Gets the number of states. */
+    public int getNumStates() {
+        return classNames.length;
+    }
+
+    /** Gets the prior of a state. */
+    public double getPrior( int state ) {
+        return priors[ state ];
+    }
+
+    /** Gets the probability of moving from a state to another in one window. */
+    public double getTransition( int from ,
+                                 int to ) {
+        return transitions[ from * classNames.length + to ];
+    }
+
+    /** Writes the model to a file. */
+    public void writeFile( File file )
+        throws IOException {
+        DataOutputStream out =
+            new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) );
+        try {
+            writeTo( out );
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /** Writes the model (see the class comment for the layout). */
+    public void writeTo( DataOutput out )
+        throws IOException {
+        out.writeInt( FILE_MAGIC );
+        out.writeInt( FILE_VERSION );
+        out.writeInt( classNames.length );
+        for( String name : classNames ) {
+            out.writeUTF( name );
+        }
+        for( double prior : priors ) {
+            out.writeDouble( prior );
+        }
+        for( double transition : transitions ) {
+            out.writeDouble( transition );
+        }
+    }
+
+    /** Reads a model file. */
+    public static ActivityHmm readFile( File file )
+        throws IOException {
+        DataInputStream in =
+            new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try {
+            return readFrom( in );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /** Reads a model (see the class comment for the layout). */
+    public static ActivityHmm readFrom( DataInput in )
+        throws IOException {
+        if( in.readInt() != FILE_MAGIC ) {
+            throw new IOException( "Not an activity model" );
+        }
+        int version = in.readInt();
+        if( version != FILE_VERSION ) {
+            throw new IOException( "Unsupported activity model version " + version );
+        }
+        int numStates = in.readInt();
+        if( numStates <= 0 || numStates > MAX_STATES ) {
+            throw new IOException( "Corrupt activity model (" + numStates + " states)" );
+        }
+        String[] classNames = new String[ numStates ];
+        for( int s = 0 ; s < numStates ; ++s ) {
+            classNames[s] = in.readUTF();
+        }
+        double[] priors = new double[ numStates ] , transitions = new double[ numStates * numStates ];
+        for( int s = 0 ; s < numStates ; ++s ) {
+            priors[s] = in.readDouble();
+        }
+        for( int i = 0 ; i < transitions.length ; ++i ) {
+            transitions[i] = in.readDouble();
+        }
+        return new ActivityHmm( classNames , priors , transitions );
+    }
+
+    /**
+       Reads the label index of a session folder (see {@link GroundTruthIndex#readSession}),
+       and adds its label sequence to the counts.
+     */
+    public static void readSession( File sessionFolder ,
+                                    Counts counts )
+        throws IOException {
+        counts.addSession( GroundTruthIndex.readSession( sessionFolder ) );
+    }
+
+    /**
+       Transition counts of label sequences, which give an {@link ActivityHmm}.
+
+       <p> Counts merge, so a model can be learnt from any subset of the
+       sessions (e.g. all but the one held out in a cross validation).
+     */
+    public static class Counts {
+
+        /**
+           Creates empty counts.
+
+           @param  hopMillis  Time between two consecutive windows (millisec)
+         */
+        public Counts( List< String > classNames ,
+                       long hopMillis ) {
+            if( hopMillis <= 0 ) {
+                throw new IllegalArgumentException( "Invalid hop " + hopMillis );
+            }
+            this.classNames = classNames.toArray( new String[ classNames.size() ] );
+            this.hopMillis = hopMillis;
+            stateCounts = new double[ this.classNames.length ];
+            transitionCounts = new double[ this.classNames.length * this.classNames.length ];
+            for( int s = 0 ; s < this.classNames.length ; ++s ) {
+                stateIndex.put( this.classNames[s] , s );
+            }
+        }
+
+        /**
+           Adds the label sequence of a session: the intervals of its label
+           index (a repeated label continues its interval). A label that is
+           not a state (e.g. a correction) breaks the sequence: no transition
+           is counted across it. If the session end is not known, the last
+           label counts as one window.
+         */
+        public void addSession( GroundTruthIndex index ) {
+            int numStates = classNames.length;
+            List< GroundTruthIndex.Interval > intervals = index.getIntervals();
+            for( int i = 0 ; i < intervals.size() ; ++i ) {
+                GroundTruthIndex.Interval interval = intervals.get( i );
+                Integer state = stateIndex.get( interval.label );
+                if( state == null ) {
+                    continue;
+                }
+
+                // Its windows stay in the state
+                long numWindows = 1L;
+                if( interval.endTime != Long.MAX_VALUE ) {
+                    numWindows = Math.max( 1L , ( interval.endTime - interval.startTime + hopMillis / 2 ) / hopMillis );
+                }
+                stateCounts[ state ] += numWindows;
+                transitionCounts[ state * numStates + state ] += numWindows - 1;
+
+                // And then move to the next label
+                Integer nextState = ( i + 1 < intervals.size() ? stateIndex.get( intervals.get( i + 1 ).label ) : null );
+                if( nextState != null ) {
+                    transitionCounts[ state * numStates + nextState ] += 1.0;
+                }
+            }
+        }
+
+        /** Adds the counts of another sequence set (of the same states and hop). */
+        public void merge( Counts other ) {
+            if( ! Arrays.equals( other.classNames , classNames ) || other.hopMillis != hopMillis ) {
+                throw new IllegalArgumentException( "Counts of different states or hops" );
+            }
+            for( int s = 0 ; s < stateCounts.length ; ++s ) {
+                stateCounts[s] += other.stateCounts[s];
+            }
+            for( int i = 0 ; i < transitionCounts.length ; ++i ) {
+                transitionCounts[i] += other.transitionCounts[i];
+            }
+        }
+
+        /** Gets the time between two windows (millisec). */
+        public long getHopMillis() {
+            return hopMillis;
+        }
+
+        /** Gets the number of windows counted. */
+        public double getNumWindows() {
+            double total = 0.0;
+            for( double count : stateCounts ) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+           Gets the model of the counts.
+
+           <p> A pseudo count is added to every prior and transition, so a
+           switch that was never labelled is unlikely, but not impossible.
+         */
+        public ActivityHmm toHmm() {
+            int numStates = classNames.length;
+            double[] priors = new double[ numStates ] , transitions = new double[ numStates * numStates ];
+            double total = getNumWindows() + numStates * PSEUDO_COUNT;
+            for( int from = 0 ; from < numStates ; ++from ) {
+                priors[ from ] = ( stateCounts[ from ] + PSEUDO_COUNT ) / total;
+                double rowTotal = numStates * PSEUDO_COUNT;
+                for( int to = 0 ; to < numStates ; ++to ) {
+                    rowTotal += transitionCounts[ from * numStates + to ];
+                }
+                for( int to = 0 ; to < numStates ; ++to ) {
+                    transitions[ from * numStates + to ] =
+                        ( transitionCounts[ from * numStates + to ] + PSEUDO_COUNT ) / rowTotal;
+                }
+            }
+            return new ActivityHmm( classNames , priors , transitions );
+        }
+
+        /** State names. */
+        private final String[] classNames;
+        /** State index of each name. */
+        private final Map< String , Integer > stateIndex = new HashMap< String , Integer >();
+        /** Time between two windows (millisec). */
+        private final long hopMillis;
+        /** Number of windows in each state. */
+        private final double[] stateCounts;
+        /** Number of transitions (by row: from, then to). */
+        private final double[] transitionCounts;
+    }
+
+    /** State names. */
+    private final String[] classNames;
+    /** Prior of each state. */
+    private final double[] priors;
+    /** Transition probabilities (by row: from, then to). */
+    private final double[] transitions;
+
+    /** Pseudo count added to every prior and transition count. */
+    private static final double PSEUDO_COUNT = 1.0;
+    /** Magic number of the model files ('SLHM'), and the version. */
+    private static final int FILE_MAGIC = 0x534C484D;
+    private static final int FILE_VERSION = 1;
+    /** Max number of states in a model file (a sanity check). */
+    private static final int MAX_STATES = 1 << 10;
+}
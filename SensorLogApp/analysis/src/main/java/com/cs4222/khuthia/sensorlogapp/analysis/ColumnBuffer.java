@@ -0,0 +1,80 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.util.*;
+
+/**
+   Collects parsed records into primitive column arrays
+   (one timestamp array, and one array per value column).
+ */
+public class ColumnBuffer
+    implements MappedCsvParser.RecordCallback {
+
+    /** Creates an empty buffer for records with the given number of values. */
+    public ColumnBuffer( int numValues ) {
+        timestamps = new long[ INITIAL_CAPACITY ];
+        columns = new double[ numValues ][ INITIAL_CAPACITY ];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onRecord( long timestamp ,
+                          double[] values ) {
+
+        // Grow the arrays if required
+        if( size == timestamps.length ) {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf( timestamps , capacity );
+            for( int i = 0 ; i < columns.length ; ++i ) {
+                columns[i] = Arrays.copyOf( columns[i] , capacity );
+            }
+        }
+
+        // Add the record
+        timestamps[ size ] = timestamp;
+        for( int i = 0 ; i < columns.length ; ++i ) {
+            columns[i][ size ] = values[i];
+        }
+        ++size;
+    }
+
+    /** Appends all the records of another buffer. */
+    public void addAll( ColumnBuffer other ) {
+        double[] values = new double[ columns.length ];
+        for( int row = 0 ; row < other.size ; ++row ) {
+            for( int i = 0 ; i < columns.length ; ++i ) {
+                values[i] = other.columns[i][ row ];
+            }
+            onRecord( other.timestamps[ row ] , values );
+        }
+    }
+
+    /** Gets the number of records. */
+    public int size() {
+        return size;
+    }
+
+    /** Gets the number of value columns. */
+    public int getNumColumns() {
+        return columns.length;
+    }
+
+    /** Gets the timestamp array (only the first size() entries are valid). */
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    /** Gets a value column array (only the first size() entries are valid). */
+    public double[] getColumn( int column ) {
+        return columns[ column ];
+    }
+
+    /** Timestamps. */
+    private long[] timestamps;
+    /** Value columns. */
+    private final double[][] columns;
+    /** Number of records. */
+    private int size = 0;
+
+    /** Initial capacity (records). */
+    private static final int INITIAL_CAPACITY = 1024;
+}
@@ -0,0 +1,190 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+
+/**
+   Splits a stream into content-defined chunks (a Gear rolling hash, as
+   in FastCDC), so that the same content gives the same chunks wherever it
+   is in a file: appending to a log, or copying a session, only creates
+   new chunks for the new bytes.
+
+   <p> A chunk ends where the rolling hash of the last bytes has its low
+   bits zero (one position in avgSize on average), but never before
+   minSize bytes, and at maxSize bytes at the latest. The Gear table is
+   seeded with a fixed seed, so every device and the server cut the same
+   chunks. Chunks are named by the hex SHA-256 of their bytes.
+ */
+public class ContentChunker {
+
+    /** Receives the chunks of a stream. */
+    public static interface ChunkCallback {
+        /**
+           Called for each chunk, in stream order.
+
+           @param  data    Buffer holding the chunk (re-used, copy if required)
+           @param  offset  Position of the chunk in the stream
+         */
+        void onChunk( byte[] data , int start , int length , long offset )
+            throws IOException;
+    }
+
+    /**
+       Creates a chunker.
+
+       @param  avgSize  Average chunk size (bytes), a power of 2
+     */
+    public ContentChunker( int minSize ,
+                           int avgSize ,
+                           int maxSize ) {
+        if( minSize <= 0 || Integer.bitCount( avgSize ) != 1 || minSize > avgSize || avgSize > maxSize ) {
+            throw new IllegalArgumentException( "Invalid chunk sizes " + minSize + "/" + avgSize + "/" + maxSize );
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.mask = avgSize - 1;
+        buffer = new byte[ 2 * maxSize ];
+    }
+
+    /** Creates a chunker with the default sizes (2 KB min, 8 KB average, 64 KB max). */
+    public ContentChunker() {
+        this( DEFAULT_MIN_SIZE , DEFAULT_AVG_SIZE , DEFAULT_MAX_SIZE );
+    }
+
+    /**
+       Splits a stream into chunks.
+
+       @return  Number of chunks
+     */
+    public int chunk( InputStream in ,
+                      ChunkCallback callback )
+        throws IOException {
+
+        int start = 0 , end = 0 , numChunks = 0;
+        long offset = 0L;
+        boolean isEof = false;
+        while( true ) {
+
+            // Fill the buffer (moving the unchunked bytes to the front) until a max size chunk fits
+            if( ! isEof && end - start < maxSize ) {
+                if( start > 0 ) {
+                    System.arraycopy( buffer , start , buffer , 0 , end - start );
+                    end -= start;
+                    start = 0;
+                }
+                while( end < buffer.length ) {
+                    int numRead = in.read( buffer , end , buffer.length - end );
+                    if( numRead < 0 ) {
+                        isEof = true;
+                        break;
+                    }
+                    end += numRead;
+                }
+            }
+            if( start == end ) {
+                return numChunks;
+            }
+
+            // Find the cut point
+            int length = findCut( buffer , start , Math.min( end - start , maxSize ) );
+            callback.onChunk( buffer , start , length , offset );
+            start += length;
+            offset += length;
+            ++numChunks;
+        }
+    }
+
+    /** Splits a file into chunks. */
+    public int chunk( File file ,
+                      ChunkCallback callback )
+        throws IOException {
+        InputStream in = new FileInputStream( file );
+        try {
+            return chunk( in , callback );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /** Gets the hex SHA-256 of some bytes (a chunk's name). */
+    public static String hash( byte[] data ,
+                               int start ,
+                               int length ) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+            digest.update( data , start , length );
+            return toHex( digest.digest() );
+        }
+        catch( NoSuchAlgorithmException e ) {
+            // Every JVM (and Android) has SHA-256
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /** Gets the lower case hex string of some bytes (e.g. a digest). */
+    public static String toHex( byte[] bytes ) {
+        char[] hex = new char[ bytes.length * 2 ];
+        for( int i = 0 ; i < bytes.length ; ++i ) {
+            hex[ 2 * i ] = HEX_DIGITS[ ( bytes[i] >> 4 ) & 0xF ];
+            hex[ 2 * i + 1 ] = HEX_DIGITS[ bytes[i] & 0xF ];
+        }
+        return new String( hex );
+    }
+
+    /** Checks if a string is a valid chunk name (hex SHA-256). */
+    public static boolean isValidHash( String hash ) {
+        if( hash.length() != 64 ) {
+            return false;
+        }
+        for( int i = 0 ; i < hash.length() ; ++i ) {
+            char c = hash.charAt( i );
+            if( ( c < '0' || c > '9' ) && ( c < 'a' || c > 'f' ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Helper method that finds the length of the chunk starting at start (at most maxLength bytes). */
+    private int findCut( byte[] data ,
+                         int start ,
+                         int maxLength ) {
+        if( maxLength <= minSize ) {
+            return maxLength;
+        }
+        long hash = 0L;
+        // NOTE: The hash only depends on the last 64 bytes (shifted out), so start it before minSize
+        int i = Math.max( 0 , minSize - 64 );
+        for( ; i < maxLength ; ++i ) {
+            hash = ( hash << 1 ) + GEAR[ data[ start + i ] & 0xFF ];
+            if( i >= minSize && ( hash & mask ) == 0L ) {
+                return i + 1;
+            }
+        }
+        return maxLength;
+    }
+
+    /** Min and max chunk sizes (bytes). */
+    private final int minSize , maxSize;
+    /** Mask of the hash bits that are zero at a cut point. */
+    private final long mask;
+    /** Read buffer (two max size chunks). */
+    private final byte[] buffer;
+
+    /** Default chunk sizes (bytes). */
+    public static final int DEFAULT_MIN_SIZE = 2048;
+    public static final int DEFAULT_AVG_SIZE = 8192;
+    public static final int DEFAULT_MAX_SIZE = 65536;
+    /** Gear table: a random 64-bit value per byte value (fixed seed, the same everywhere). */
+    private static final long[] GEAR = new long[ 256 ];
+    static {
+        Random random = new Random( 0x5EC7CDCL );
+        for( int i = 0 ; i < GEAR.length ; ++i ) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+    /** Hex digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+}
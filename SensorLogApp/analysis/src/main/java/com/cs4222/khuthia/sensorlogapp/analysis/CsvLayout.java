@@ -0,0 +1,122 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+/**
+   Column layout of a CSV log, for the {@link MappedCsvParser}.
+
+   <p> A layout is a string with one character per column:
+   <ul>
+     <li> {@code 't'}: the timestamp (unix millisec), exactly one column
+     <li> {@code 'n'}: a numeric value (integer or decimal), passed to the callback
+     <li> {@code 's'}: skipped (e.g. the human-readable date, the provider)
+   </ul>
+   The values are passed in column order.
+ */
+public class CsvLayout {
+
+    /** Creates a layout (see the class comment for the column characters). */
+    public CsvLayout( String name ,
+                      String columns ) {
+
+        // Check the columns
+        int numTimestamps = 0 , numValues = 0;
+        byte[] kinds = new byte[ columns.length() ];
+        for( int i = 0 ; i < kinds.length ; ++i ) {
+            char c = columns.charAt( i );
+            if( c == 't' ) {
+                kinds[i] = TIMESTAMP;
+                ++numTimestamps;
+            }
+            else if( c == 'n' ) {
+                kinds[i] = VALUE;
+                ++numValues;
+            }
+            else if( c == 's' ) {
+                kinds[i] = SKIPPED;
+            }
+            else {
+                throw new IllegalArgumentException( "Invalid column '" + c + "' in layout " + columns );
+            }
+        }
+        if( numTimestamps != 1 ) {
+            throw new IllegalArgumentException( "Layout must have exactly one timestamp column: " + columns );
+        }
+
+        this.name = name;
+        this.columns = columns;
+        this.kinds = kinds;
+        this.numValues = numValues;
+    }
+
+    /** Gets the layout for a SensorLogApp log file. */
+    public static CsvLayout forSensorLog( SensorLogType type ) {
+        switch( type ) {
+        case LOCATION:
+            return new CsvLayout( type.name() , "stnssnnnnnn" );
+        case GROUND_TRUTH:
+            return new CsvLayout( type.name() , "stsns" );
+        default:
+            // Logged date, logged time, and then only numbers
+            StringBuilder sb = new StringBuilder( "st" );
+            for( int i = 0 ; i < type.getNumColumns() ; ++i ) {
+                sb.append( 'n' );
+            }
+            return new CsvLayout( type.name() , sb.toString() );
+        }
+    }
+
+    /** Gets the layout name. */
+    public String getName() {
+        return name;
+    }
+
+    /** Gets the layout string. */
+    public String getColumns() {
+        return columns;
+    }
+
+    /** Gets the number of columns. */
+    public int getNumColumns() {
+        return kinds.length;
+    }
+
+    /** Gets the number of values (numeric columns) per record. */
+    public int getNumValues() {
+        return numValues;
+    }
+
+    /** Gets the kind of a column ({@link #TIMESTAMP}, {@link #VALUE} or {@link #SKIPPED}). */
+    byte getKind( int column ) {
+        return kinds[ column ];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return name + "(" + columns + ")";
+    }
+
+    /** Layout name. */
+    private final String name;
+    /** Layout string. */
+    private final String columns;
+    /** Kind of each column. */
+    private final byte[] kinds;
+    /** Number of values per record. */
+    private final int numValues;
+
+    /** Column kind: timestamp. */
+    static final byte TIMESTAMP = 0;
+    /** Column kind: numeric value. */
+    static final byte VALUE = 1;
+    /** Column kind: skipped. */
+    static final byte SKIPPED = 2;
+
+    /** SensorLogApp accelerometer/gravity/linear accl/magnetic/gyroscope log: date,millis,x,y,z,accuracy. */
+    public static final CsvLayout SENSOR_LOG_XYZ = forSensorLog( SensorLogType.ACCELEROMETER );
+    /** BaroGpsApp 'Barometer.csv': number,millis,date,millibar,height,interval,delay. */
+    public static final CsvLayout BARO_GPS_BAROMETER = new CsvLayout( "Barometer.csv" , "stsnnnn" );
+    /** BaroGpsApp 'GPS.csv': number,millis,date,provider,lat,lon,accuracy,altitude,bearing,speed,interval,delay. */
+    public static final CsvLayout BARO_GPS_GPS = new CsvLayout( "GPS.csv" , "stssnnnnnnnn" );
+    /** LightAnalyzer 'Light.csv': number,millis,date,lux. */
+    public static final CsvLayout LIGHT_ANALYZER_LIGHT = new CsvLayout( "Light.csv" , "stsn" );
+}
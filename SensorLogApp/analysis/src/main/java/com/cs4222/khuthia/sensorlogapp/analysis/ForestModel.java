@@ -0,0 +1,248 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   A trained decision forest ({@link ForestTrainer}), in a flat array
+   form: the nodes of all the trees are in parallel primitive arrays,
+   so a prediction is a few array lookups per tree, with no objects, and
+   the model loads on the phone as a handful of arrays.
+
+   <p> Node i is a split if {@code features[i] >= 0}: a row goes to node
+   {@code children[i]} if its feature value is at most
+   {@code thresholds[i]}, and to {@code children[i] + 1} otherwise (a NaN
+   goes right). Otherwise node i is a leaf, and its class distribution
+   starts at {@code distributions[ children[i] ]}. The forest predicts
+   the class with the highest mean distribution over the trees. File
+   layout (big endian):
+   <pre>
+     int    magic ('SLRF')
+     int    version
+     int    number of classes, followed by the names (UTF)
+     int    number of features, followed by the names (UTF)
+     int    number of trees, followed by the root nodes (int)
+     int    number of nodes, followed by (int feature , float threshold , int children)
+     int    number of distribution values, followed by the values (float)
+   </pre>
+ */
+public class ForestModel {
+
+    /** Creates a model from its arrays (see the class comment). */
+    public ForestModel( String[] classNames ,
+                        String[] featureNames ,
+                        int[] roots ,
+                        int[] features ,
+                        float[] thresholds ,
+                        int[] children ,
+                        float[] distributions ) {
+        if( features.length != thresholds.length || features.length != children.length ) {
+            throw new IllegalArgumentException( "Node arrays of different lengths" );
+        }
+        this.classNames = classNames.clone();
+        this.featureNames = featureNames.clone();
+        this.roots = roots;
+        this.features = features;
+        this.thresholds = thresholds;
+        this.children = children;
+        this.distributions = distributions;
+    }
+
+    /**
+       Predicts the class of a feature vector.
+
+       @param  probabilities  Set to the mean class distribution (the number of classes long)
+       @return  Class index
+     */
+    public int predict( float[] x ,
+                        float[] probabilities ) {
+        int numClasses = classNames.length;
+        Arrays.fill( probabilities , 0 , numClasses , 0.0F );
+        for( int root : roots ) {
+            int node = root;
+            int feature;
+            while( ( feature = features[ node ] ) >= 0 ) {
+                node = ( x[ feature ] <= thresholds[ node ] ? children[ node ] : children[ node ] + 1 );
+            }
+            int offset = children[ node ];
+            for( int c = 0 ; c < numClasses ; ++c ) {
+                probabilities[c] += distributions[ offset + c ];
+            }
+        }
+        int best = 0;
+        for( int c = 0 ; c < numClasses ; ++c ) {
+            probabilities[c] /= roots.length;
+            if( probabilities[c] > probabilities[ best ] ) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /** Predicts the class of a feature vector. */
+    public int predict( float[] x ) {
+        return predict( x , new float[ classNames.length ] );
+    }
+
+    /** Gets the class names. */
+    public List< String > getClassNames() {
+        return Collections.unmodifiableList( Arrays.asList( classNames ) );
+    }
+
+    /** Gets the feature names (the order of the feature vector). */
+    public List< String > getFeatureNames() {
+        return Collections.unmodifiableList( Arrays.asList( featureNames ) );
+    }
+
+    /** Gets the number of trees. */
+    public int getNumTrees() {
+        return roots.length;
+    }
+
+    /** Gets the total number of nodes. */
+    public int getNumNodes() {
+        return features.length;
+    }
+
+    /** Writes the model to a file. */
+    public void writeFile( File file )
+        throws IOException {
+        DataOutputStream out =
+            new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) );
+        try {
+            writeTo( out );
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /** Writes the model (see the class comment for the layout). */
+    public void writeTo( DataOutput out )
+        throws IOException {
+        out.writeInt( FILE_MAGIC );
+        out.writeInt( FILE_VERSION );
+        writeNames( classNames , out );
+        writeNames( featureNames , out );
+        out.writeInt( roots.length );
+        for( int root : roots ) {
+            out.writeInt( root );
+        }
+        out.writeInt( features.length );
+        for( int i = 0 ; i < features.length ; ++i ) {
+            out.writeInt( features[i] );
+            out.writeFloat( thresholds[i] );
+            out.writeInt( children[i] );
+        }
+        out.writeInt( distributions.length );
+        for( float value : distributions ) {
+            out.writeFloat( value );
+        }
+    }
+
+    /** Reads a model file. */
+    public static ForestModel readFile( File file )
+        throws IOException {
+        DataInputStream in =
+            new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try {
+            return readFrom( in );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /** Reads a model (see the class comment for the layout). */
+    public static ForestModel readFrom( DataInput in )
+        throws IOException {
+        if( in.readInt() != FILE_MAGIC ) {
+            throw new IOException( "Not a forest model" );
+        }
+        int version = in.readInt();
+        if( version != FILE_VERSION ) {
+            throw new IOException( "Unsupported forest model version " + version );
+        }
+        String[] classNames = readNames( in );
+        String[] featureNames = readNames( in );
+        int[] roots = new int[ readLength( in ) ];
+        for( int t = 0 ; t < roots.length ; ++t ) {
+            roots[t] = in.readInt();
+        }
+        int numNodes = readLength( in );
+        int[] features = new int[ numNodes ] , children = new int[ numNodes ];
+        float[] thresholds = new float[ numNodes ];
+        for( int i = 0 ; i < numNodes ; ++i ) {
+            features[i] = in.readInt();
+            thresholds[i] = in.readFloat();
+            children[i] = in.readInt();
+        }
+        float[] distributions = new float[ readLength( in ) ];
+        for( int i = 0 ; i < distributions.length ; ++i ) {
+            distributions[i] = in.readFloat();
+        }
+
+        // Check the links, so a corrupt model fails here, and not in predict
+        for( int root : roots ) {
+            if( root < 0 || root >= numNodes ) {
+                throw new IOException( "Corrupt forest model (root " + root + ")" );
+            }
+        }
+        for( int i = 0 ; i < numNodes ; ++i ) {
+            boolean isValid = ( features[i] >= 0 ?
+                                features[i] < featureNames.length && children[i] > i && children[i] + 1 < numNodes :
+                                children[i] >= 0 && children[i] + classNames.length <= distributions.length );
+            if( ! isValid ) {
+                throw new IOException( "Corrupt forest model (node " + i + ")" );
+            }
+        }
+        return new ForestModel( classNames , featureNames , roots , features , thresholds , children , distributions );
+    }
+
+    /** Helper method that writes names. */
+    private static void writeNames( String[] names ,
+                                    DataOutput out )
+        throws IOException {
+        out.writeInt( names.length );
+        for( String name : names ) {
+            out.writeUTF( name );
+        }
+    }
+
+    /** Helper method that reads names. */
+    private static String[] readNames( DataInput in )
+        throws IOException {
+        String[] names = new String[ readLength( in ) ];
+        for( int i = 0 ; i < names.length ; ++i ) {
+            names[i] = in.readUTF();
+        }
+        return names;
+    }
+
+    /** Helper method that reads an array length. */
+    private static int readLength( DataInput in )
+        throws IOException {
+        int length = in.readInt();
+        if( length < 0 || length > MAX_ARRAY_LENGTH ) {
+            throw new IOException( "Corrupt forest model (length " + length + ")" );
+        }
+        return length;
+    }
+
+    /** Class and feature names. */
+    private final String[] classNames , featureNames;
+    /** Root node of each tree. */
+    private final int[] roots;
+    /** Nodes: split feature (-1 for a leaf), threshold, and children (or distribution offset). */
+    private final int[] features;
+    private final float[] thresholds;
+    private final int[] children;
+    /** Class distributions of the leaves. */
+    private final float[] distributions;
+
+    /** Magic number of the model files ('SLRF'), and the version. */
+    private static final int FILE_MAGIC = 0x534C5246;
+    private static final int FILE_VERSION = 1;
+    /** Max array length in a model file (a sanity check). */
+    private static final int MAX_ARRAY_LENGTH = 1 << 26;
+}
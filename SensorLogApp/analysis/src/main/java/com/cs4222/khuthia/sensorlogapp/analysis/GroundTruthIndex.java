@@ -0,0 +1,401 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   Index of the ground truth label intervals of a logging session, keyed
+   by label name (so the app's activities and the offline tools share it).
+
+   <p> Each ground truth label logged by the user lasts until the next
+   label (a repeat of the same label continues it), and the last one
+   until the end of the session. The index keeps the label start times
+   and labels in parallel arrays (sorted by start time), so the label at
+   any time is found by a binary search in O(log n), and all intervals
+   of a label are enumerated in one pass.
+
+   <p> While logging, the index is built incrementally, and every label
+   is also appended to a binary sidecar file ({@link #SIDECAR_FILE_NAME},
+   next to {@code GroundTruth.txt}), so a training run can load the index
+   without parsing the text log. Sidecar layout (big endian):
+   <pre>
+     int    magic ('GTIX')
+     int    version
+     { long startTime , UTF label } ...   (an empty label marks the session end time)
+   </pre>
+   A record that was only partly written (e.g. the app was killed) is
+   ignored. Version 1 files (a label name table in the header, and a
+   byte index into it per record) are still read.
+ */
+public class GroundTruthIndex {
+
+    /** Creates an empty index. */
+    public GroundTruthIndex() {
+    }
+
+    /**
+       Adds a label that starts at the given time (millisec).
+
+       <p> Labels are normally added in time order; a label that starts
+       before the latest one is inserted at its sorted position.
+     */
+    public void add( long startTime ,
+                     String label )
+        throws IOException {
+        if( label.isEmpty() ) {
+            throw new IllegalArgumentException( "Empty label" );
+        }
+
+        // Grow the arrays if required
+        if( numLabels == startTimes.length ) {
+            startTimes = Arrays.copyOf( startTimes , numLabels * 2 );
+            labels = Arrays.copyOf( labels , numLabels * 2 );
+        }
+
+        // Insert at the sorted position (after any label with the same start time)
+        int index = numLabels;
+        if( numLabels > 0 && startTime < startTimes[ numLabels - 1 ] ) {
+            index = findInterval( startTime ) + 1;
+            System.arraycopy( startTimes , index , startTimes , index + 1 , numLabels - index );
+            System.arraycopy( labels , index , labels , index + 1 , numLabels - index );
+        }
+        startTimes[ index ] = startTime;
+        labels[ index ] = label;
+        ++numLabels;
+
+        // Append it to the sidecar file (if open)
+        if( sidecarOut != null ) {
+            writeRecord( startTime , label );
+        }
+    }
+
+    /** Sets the end time of the session (the end of the last interval), in millisec. */
+    public void setEndTime( long endTime ) {
+        this.endTime = endTime;
+    }
+
+    /** Gets the end time of the session (Long.MAX_VALUE if not known). */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /** Gets the number of labels. */
+    public int size() {
+        return numLabels;
+    }
+
+    /** Gets the start time of the i-th label (in time order). */
+    public long getStartTime( int i ) {
+        return startTimes[i];
+    }
+
+    /** Gets the end time of the i-th label's interval (the start of the next label, or the session end time). */
+    public long getIntervalEndTime( int i ) {
+        return ( i + 1 < numLabels ? startTimes[ i + 1 ] : endTime );
+    }
+
+    /** Gets the i-th label (in time order). */
+    public String getLabel( int i ) {
+        return labels[i];
+    }
+
+    /**
+       Gets the label at the given time, in O(log n).
+
+       @return  Label, or null if the time is before the first label or after the session end
+     */
+    public String labelAt( long timestamp ) {
+        int i = findInterval( timestamp );
+        if( i < 0 || timestamp >= getIntervalEndTime( i ) ) {
+            return null;
+        }
+        return labels[i];
+    }
+
+    /**
+       Finds the label interval containing the given time (binary search).
+
+       @return  Index of the last label starting at or before the time, or -1 if none
+     */
+    public int findInterval( long timestamp ) {
+        int low = 0 , high = numLabels - 1;
+        while( low <= high ) {
+            int mid = ( low + high ) >>> 1;
+            if( startTimes[ mid ] <= timestamp ) {
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /** Gets the intervals of all the labels, in time order (the repeats of a label merged). */
+    public List< Interval > getIntervals() {
+        return getIntervals( null );
+    }
+
+    /** Gets all intervals of a label, in time order (its repeats merged). */
+    public List< Interval > intervalsFor( String label ) {
+        return getIntervals( label );
+    }
+
+    /**
+       Checks if a label is a user activity, i.e. a class to learn: not the
+       Confirm button, nor a correction (INCORRECT marks the time before it
+       as wrongly labelled).
+     */
+    public static boolean isActivity( String label ) {
+        return ! label.equals( CONFIRM_LABEL ) && ! label.equals( INCORRECT_LABEL );
+    }
+
+    /**
+       Opens the sidecar file, and writes the labels added so far.
+
+       <p> Any label added after this is appended to the file (and flushed).
+     */
+    public void openSidecarFile( File file )
+        throws IOException {
+
+        // If already opened, then nothing to do
+        if( sidecarOut != null )
+            return;
+
+        // Write the header
+        sidecarOut = new DataOutputStream(
+            new BufferedOutputStream( new FileOutputStream( file ) ) );
+        sidecarOut.writeInt( SIDECAR_MAGIC );
+        sidecarOut.writeInt( SIDECAR_VERSION );
+
+        // Write the labels added so far
+        for( int i = 0 ; i < numLabels ; ++i ) {
+            sidecarOut.writeLong( startTimes[i] );
+            sidecarOut.writeUTF( labels[i] );
+        }
+        sidecarOut.flush();
+    }
+
+    /** Closes the sidecar file, after recording the session end time. */
+    public void closeSidecarFile( long endTime ) {
+
+        // Record the end time, and close the file
+        this.endTime = endTime;
+        try {
+            if( sidecarOut == null )
+                return;
+            writeRecord( endTime , END_MARKER );
+            sidecarOut.close();
+        }
+        catch( IOException e ) {
+            // Nothing more to do (the labels written so far are still readable)
+        }
+        finally {
+            sidecarOut = null;
+        }
+    }
+
+    /** Helper method that appends a record to the sidecar file. */
+    private void writeRecord( long timestamp ,
+                              String label )
+        throws IOException {
+        sidecarOut.writeLong( timestamp );
+        sidecarOut.writeUTF( label );
+        // Flush, so that the label survives if the app is killed
+        sidecarOut.flush();
+    }
+
+    /** Helper method that gets the intervals of a label (all labels if null), with the repeats merged. */
+    private List< Interval > getIntervals( String label ) {
+        List< Interval > intervals = new ArrayList< Interval >();
+        int i = 0;
+        while( i < numLabels ) {
+            int next = i + 1;
+            while( next < numLabels && labels[ next ].equals( labels[i] ) ) {
+                ++next;
+            }
+            if( label == null || labels[i].equals( label ) ) {
+                intervals.add( new Interval( startTimes[i] , getIntervalEndTime( next - 1 ) , labels[i] ) );
+            }
+            i = next;
+        }
+        return intervals;
+    }
+
+    /** Reads an index from a sidecar file. */
+    public static GroundTruthIndex readSidecarFile( File file )
+        throws IOException {
+
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream( new FileInputStream( file ) ) );
+        try {
+
+            // Check the header
+            if( in.readInt() != SIDECAR_MAGIC ) {
+                throw new IOException( "Not a ground truth index file: " + file );
+            }
+            int version = in.readInt();
+            if( version == 1 ) {
+                return readVersion1( in );
+            }
+            if( version != SIDECAR_VERSION ) {
+                throw new IOException( "Unsupported ground truth index version " + version + ": " + file );
+            }
+
+            // Read the records (ignoring a partly written record at the end)
+            GroundTruthIndex index = new GroundTruthIndex();
+            try {
+                while( true ) {
+                    long timestamp = in.readLong();
+                    String label = in.readUTF();
+                    if( label.equals( END_MARKER ) ) {
+                        index.setEndTime( timestamp );
+                    }
+                    else {
+                        index.add( timestamp , label );
+                    }
+                }
+            }
+            catch( EOFException e ) {
+                // End of the file
+            }
+            return index;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+       Reads the label index of a session folder: its sidecar file, or its
+       {@code GroundTruth.txt} if it has none (a session logged before the
+       sidecar file existed).
+
+       <p> If the session end time was not recorded (no sidecar file, or
+       the app was killed before closing it), the end of the last label
+       is the time of the last reading in the session summary, or not
+       known if the session has no summary either.
+     */
+    public static GroundTruthIndex readSession( File sessionFolder )
+        throws IOException {
+        GroundTruthIndex index;
+        File sidecarFile = new File( sessionFolder , SIDECAR_FILE_NAME );
+        if( sidecarFile.isFile() ) {
+            index = readSidecarFile( sidecarFile );
+        }
+        else {
+            index = new GroundTruthIndex();
+            for( SensorRecord.GroundTruth label : SensorLogReader.readLabels( sessionFolder ) ) {
+                if( ! label.label.isEmpty() ) {
+                    index.add( label.labelTime , label.label );
+                }
+            }
+        }
+        File summaryFile = new File( sessionFolder , SessionSummary.FILE_NAME );
+        if( summaryFile.isFile() ) {
+            index.endAtLastReading( SessionSummary.readFile( summaryFile ) );
+        }
+        return index;
+    }
+
+    /**
+       Ends the last label at the last reading of the session (included),
+       if the session end time is not known.
+     */
+    public void endAtLastReading( SessionSummary summary ) {
+        long lastReadingTime = summary.getEndTime();
+        if( endTime == Long.MAX_VALUE && lastReadingTime != Long.MIN_VALUE ) {
+            endTime = lastReadingTime + 1;
+        }
+    }
+
+    /** Helper method that reads the records of a version 1 sidecar file (after the version). */
+    private static GroundTruthIndex readVersion1( DataInputStream in )
+        throws IOException {
+
+        // Label name table
+        String[] nameTable = new String[ in.readInt() ];
+        for( int i = 0 ; i < nameTable.length ; ++i ) {
+            nameTable[i] = in.readUTF();
+        }
+
+        // Read the records (ignoring a partly written record at the end)
+        GroundTruthIndex index = new GroundTruthIndex();
+        byte[] record = new byte[ VERSION1_RECORD_SIZE ];
+        while( readFully( in , record ) ) {
+            long timestamp = 0L;
+            for( int i = 0 ; i < 8 ; ++i ) {
+                timestamp = ( timestamp << 8 ) | ( record[i] & 0xFF );
+            }
+            byte label = record[8];
+            if( label == -1 ) {
+                index.setEndTime( timestamp );
+            }
+            else if( label >= 0 && label < nameTable.length ) {
+                index.add( timestamp , nameTable[ label ] );
+            }
+        }
+        return index;
+    }
+
+    /** Helper method that reads a whole record (false at the end of the file, or for a partial record). */
+    private static boolean readFully( InputStream in ,
+                                      byte[] buffer )
+        throws IOException {
+        int offset = 0;
+        while( offset < buffer.length ) {
+            int numRead = in.read( buffer , offset , buffer.length - offset );
+            if( numRead < 0 ) {
+                return false;
+            }
+            offset += numRead;
+        }
+        return true;
+    }
+
+    /** A label interval [startTime, endTime). */
+    public static class Interval {
+
+        /** Creates an interval. */
+        public Interval( long startTime ,
+                         long endTime ,
+                         String label ) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.label = label;
+        }
+
+        /** Start time (millisec, inclusive). */
+        public final long startTime;
+        /** End time (millisec, exclusive), Long.MAX_VALUE if the session end is not known. */
+        public final long endTime;
+        /** Label. */
+        public final String label;
+    }
+
+    /** Label start times (millisec), sorted. */
+    private long[] startTimes = new long[ INITIAL_CAPACITY ];
+    /** Label of each interval. */
+    private String[] labels = new String[ INITIAL_CAPACITY ];
+    /** Number of labels. */
+    private int numLabels = 0;
+    /** End time of the session (millisec). */
+    private long endTime = Long.MAX_VALUE;
+    /** Sidecar file's output stream (null if not open). */
+    private DataOutputStream sidecarOut = null;
+
+    /** Name of the sidecar file (in the session's log folder). */
+    public static final String SIDECAR_FILE_NAME = "GroundTruth.idx";
+    /** Sidecar file magic number ('GTIX'). */
+    private static final int SIDECAR_MAGIC = 0x47544958;
+    /** Sidecar file format version. */
+    private static final int SIDECAR_VERSION = 2;
+    /** Size of a version 1 sidecar record (bytes). */
+    private static final int VERSION1_RECORD_SIZE = 9;
+    /** Label of the record holding the session end time. */
+    private static final String END_MARKER = "";
+    /** Labels that are not activities (the app's UserActivities.Confirm and INCORRECT). */
+    private static final String CONFIRM_LABEL = "Confirm" , INCORRECT_LABEL = "INCORRECT";
+    /** Initial capacity of the arrays. */
+    private static final int INITIAL_CAPACITY = 16;
+}
@@ -0,0 +1,137 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+
+/**
+   Tags every record in a sensor log with its ground truth label,
+   in a single pass.
+
+   <p> A sensor log line starts with {@code loggedDate,loggedTime,...}
+   (see {@link SensorLogType}). The joiner appends
+   {@code ,label} to each line, using the label at the logged time
+   (an empty label if there is none).
+
+   <p> Sensor logs are in time order, so the joiner keeps a cursor into
+   the {@link GroundTruthIndex} and only moves it forward, which makes
+   the join O(lines + labels). A record that goes back in time falls
+   back to a binary search.
+ */
+public class LabelJoiner {
+
+    /** Creates a joiner for the given label index. */
+    public LabelJoiner( GroundTruthIndex index ) {
+        this.index = index;
+    }
+
+    /**
+       Gets the label at the given time, moving the cursor forward.
+
+       @return  Label, or null if there is none at that time
+     */
+    public String labelAt( long timestamp ) {
+
+        // Move the cursor to the last interval starting at or before the time
+        int numLabels = index.size();
+        if( cursor >= 0 && timestamp < index.getStartTime( cursor ) ) {
+            // Went back in time, search again
+            cursor = index.findInterval( timestamp );
+        }
+        else {
+            while( cursor + 1 < numLabels && index.getStartTime( cursor + 1 ) <= timestamp ) {
+                ++cursor;
+            }
+        }
+
+        // Check if the time is inside the interval
+        if( cursor < 0 || timestamp >= index.getIntervalEndTime( cursor ) ) {
+            return null;
+        }
+        return index.getLabel( cursor );
+    }
+
+    /**
+       Copies the sensor log to the output, appending the label to every record.
+
+       <p> Lines without a valid logged time are copied with an empty label.
+
+       @return  Number of records that got a label
+     */
+    public int join( BufferedReader in ,
+                     Writer out )
+        throws IOException {
+
+        // Go through the lines, and append the label of each
+        int numLabelled = 0;
+        String line;
+        while( ( line = in.readLine() ) != null ) {
+            String label = labelOfLine( line );
+            out.write( line );
+            out.write( ',' );
+            if( label != null ) {
+                out.write( label );
+                ++numLabelled;
+            }
+            out.write( '\n' );
+        }
+        out.flush();
+        return numLabelled;
+    }
+
+    /**
+       Joins a sensor log file with the labels, writing the labelled log file.
+
+       @return  Number of records that got a label
+     */
+    public int join( File inFile ,
+                     File outFile )
+        throws IOException {
+        BufferedReader in = new BufferedReader( new FileReader( inFile ) , BUFFER_SIZE );
+        try {
+            Writer out = new BufferedWriter( new FileWriter( outFile ) , BUFFER_SIZE );
+            try {
+                return join( in , out );
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /** Helper method that gets the label of a log line (null if none). */
+    private String labelOfLine( String line ) {
+
+        // The logged time is the second field
+        // NOTE: Parsed in place, without splitting the line
+        int start = line.indexOf( ',' ) + 1;
+        if( start <= 0 ) {
+            return null;
+        }
+        int end = line.indexOf( ',' , start );
+        if( end < 0 ) {
+            end = line.length();
+        }
+        if( end == start ) {
+            return null;
+        }
+        long timestamp = 0L;
+        for( int i = start ; i < end ; ++i ) {
+            char c = line.charAt( i );
+            if( c < '0' || c > '9' ) {
+                return null;
+            }
+            timestamp = timestamp * 10 + ( c - '0' );
+        }
+        return labelAt( timestamp );
+    }
+
+    /** Label index. */
+    private final GroundTruthIndex index;
+    /** Index of the current interval (-1 before the first label). */
+    private int cursor = -1;
+
+    /** Buffer size for reading/writing the logs (chars). */
+    private static final int BUFFER_SIZE = 64 * 1024;
+}
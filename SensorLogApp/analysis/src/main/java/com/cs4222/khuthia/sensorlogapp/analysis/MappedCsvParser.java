@@ -0,0 +1,477 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+   Fast parser for CSV logs, that scans the bytes of a memory-mapped file.
+
+   <p> The timestamps and values are parsed straight from the bytes,
+   without creating a {@code String} per line or per column, and the
+   skipped columns (e.g. the human-readable date) are never decoded.
+   The values of each record are passed to a {@link RecordCallback}
+   in a re-used array, so parsing does not allocate per record.
+
+   <p> Decimal numbers are converted exactly (as {@code Double.parseDouble}
+   would) when they have at most 15 significant digits, which covers
+   every float written by the apps. Longer numbers (e.g. a double
+   latitude with 17 digits) fall back to {@code Double.parseDouble}.
+
+   <p> A file can be parsed in byte ranges (e.g. by several threads):
+   a range parses the lines that START inside it, so ranges that cover
+   the file parse every line exactly once. Lines that do not match the
+   layout are skipped and counted.
+
+   <p> A parser is not thread-safe; use one parser per thread.
+ */
+public class MappedCsvParser {
+
+    /** Receives the parsed records. */
+    public static interface RecordCallback {
+        /**
+           Called for each record.
+
+           @param  values  Values of the numeric columns (re-used for the next record, copy if required)
+         */
+        void onRecord( long timestamp , double[] values );
+    }
+
+    /** Creates a parser for the given layout. */
+    public MappedCsvParser( CsvLayout layout ) {
+        this.layout = layout;
+        values = new double[ layout.getNumValues() ];
+    }
+
+    /**
+       Parses a whole file.
+
+       @return  Number of records parsed
+     */
+    public long parse( File file ,
+                       RecordCallback callback )
+        throws IOException {
+        return parse( file , 0L , Long.MAX_VALUE , callback );
+    }
+
+    /**
+       Parses the lines that start in the byte range [start, end) of a file.
+
+       @return  Number of records parsed
+     */
+    public long parse( File file ,
+                       long start ,
+                       long end ,
+                       RecordCallback callback )
+        throws IOException {
+
+        long numRecordsBefore = numRecords;
+        FileInputStream in = new FileInputStream( file );
+        try {
+            FileChannel channel = in.getChannel();
+            long fileLength = channel.size();
+            end = Math.min( end , fileLength );
+
+            // Map the file in segments, each starting at a line start
+            // NOTE: A line that starts in the range is parsed to its end,
+            //       even if that is past the end of the range
+            long firstLineStart = findLineStart( channel , start , fileLength );
+            long segmentStart = firstLineStart;
+            while( segmentStart < end ) {
+                long segmentLength = Math.min( fileLength - segmentStart , SEGMENT_SIZE );
+                MappedByteBuffer buffer =
+                    channel.map( FileChannel.MapMode.READ_ONLY , segmentStart , segmentLength );
+                boolean isLastSegment = ( segmentStart + segmentLength == fileLength );
+                int parsedLength = parseSegment( buffer , (int) segmentLength ,
+                                                 (int) Math.min( end - segmentStart , segmentLength ) ,
+                                                 isLastSegment , callback );
+                if( parsedLength == 0 ) {
+                    throw new IOException( "Line longer than " + SEGMENT_SIZE + " bytes in " + file );
+                }
+                segmentStart += parsedLength;
+            }
+            numBytes += Math.max( 0L , Math.min( segmentStart , fileLength ) - firstLineStart );
+        }
+        finally {
+            in.close();
+        }
+        return numRecords - numRecordsBefore;
+    }
+
+    /** Gets the total number of records parsed. */
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /** Gets the total number of lines skipped (did not match the layout). */
+    public long getNumSkippedLines() {
+        return numSkippedLines;
+    }
+
+    /** Gets the total number of bytes parsed. */
+    public long getNumBytes() {
+        return numBytes;
+    }
+
+    /** Gets the layout. */
+    public CsvLayout getLayout() {
+        return layout;
+    }
+
+    /** Helper method that finds the first line starting at or after the given position. */
+    private static long findLineStart( FileChannel channel ,
+                                       long position ,
+                                       long fileLength )
+        throws IOException {
+
+        // A line starts at the position if it is the file start, or follows a newline
+        if( position <= 0L ) {
+            return 0L;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate( 4096 );
+        long offset = position - 1;
+        while( offset < fileLength ) {
+            buffer.clear();
+            int numRead = channel.read( buffer , offset );
+            if( numRead <= 0 ) {
+                break;
+            }
+            for( int i = 0 ; i < numRead ; ++i ) {
+                if( buffer.get( i ) == '\n' ) {
+                    return offset + i + 1;
+                }
+            }
+            offset += numRead;
+        }
+        return fileLength;
+    }
+
+    /**
+       Helper method that parses the lines in a mapped segment.
+
+       @param  length      Segment length
+       @param  rangeEnd    Only lines starting before this are parsed
+       @param  isLastSegment  Whether the segment ends at the end of the file
+       @return  Number of bytes parsed (up to the start of the first line not parsed)
+     */
+    private int parseSegment( ByteBuffer buffer ,
+                              int length ,
+                              int rangeEnd ,
+                              boolean isLastSegment ,
+                              RecordCallback callback ) {
+        int lineStart = 0;
+        while( lineStart < rangeEnd ) {
+
+            // Parse the line in a single pass (up to its newline)
+            boolean isValid = parseLine( buffer , lineStart , length );
+            int lineEnd = position;
+            if( ! isValid ) {
+                // Skip the rest of the line
+                while( lineEnd < length && buffer.get( lineEnd ) != '\n' ) {
+                    ++lineEnd;
+                }
+            }
+
+            // A partial line (at the end of the segment) is parsed in the next segment
+            if( lineEnd == length && ! isLastSegment ) {
+                return lineStart;
+            }
+
+            // Pass the record (empty lines are ignored)
+            if( isValid ) {
+                ++numRecords;
+                callback.onRecord( timestamp , values );
+            }
+            else if( ! isEmptyLine( buffer , lineStart , lineEnd ) ) {
+                ++numSkippedLines;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return Math.min( lineStart , length );
+    }
+
+    /**
+       Helper method that parses a line into the timestamp and values.
+
+       @param  end  End of the segment (the line ends at the first newline before this)
+       @return  True if the line matches the layout (the position is then at the newline,
+                or the segment end), false otherwise (the position is somewhere in the line)
+     */
+    private boolean parseLine( ByteBuffer buffer ,
+                               int start ,
+                               int end ) {
+        position = start;
+        int valueIndex = 0;
+        int numColumns = layout.getNumColumns();
+        for( int column = 0 ; column < numColumns ; ++column ) {
+
+            // Columns are separated by commas
+            if( column > 0 ) {
+                if( position >= end || buffer.get( position ) != ',' ) {
+                    return false;
+                }
+                ++position;
+            }
+
+            // Parse the column
+            // NOTE: The number parsers stop at the first byte that is not part
+            //       of a number, so they never run past the newline
+            byte kind = layout.getKind( column );
+            if( kind == CsvLayout.SKIPPED ) {
+                while( position < end ) {
+                    byte b = buffer.get( position );
+                    if( b == ',' || b == '\n' ) {
+                        break;
+                    }
+                    ++position;
+                }
+            }
+            else if( kind == CsvLayout.TIMESTAMP ) {
+                if( ! parseLong( buffer , end ) ) {
+                    return false;
+                }
+                timestamp = parsedLong;
+            }
+            else {
+                if( ! parseDouble( buffer , end ) ) {
+                    return false;
+                }
+                values[ valueIndex++ ] = parsedDouble;
+            }
+        }
+
+        // There must be nothing after the last column (except a '\r')
+        if( position < end && buffer.get( position ) == '\r' ) {
+            ++position;
+        }
+        return ( position == end || buffer.get( position ) == '\n' );
+    }
+
+    /** Helper method that checks if a line is empty (or only has a '\r'). */
+    private static boolean isEmptyLine( ByteBuffer buffer ,
+                                        int start ,
+                                        int end ) {
+        return ( end == start || ( end == start + 1 && buffer.get( start ) == '\r' ) );
+    }
+
+    /** Helper method that parses a long at the current position (into parsedLong). */
+    private boolean parseLong( ByteBuffer buffer ,
+                               int end ) {
+        int p = position;
+        boolean isNegative = false;
+        if( p < end && buffer.get( p ) == '-' ) {
+            isNegative = true;
+            ++p;
+        }
+        int digitsStart = p;
+        long value = 0L;
+        while( p < end ) {
+            int digit = buffer.get( p ) - '0';
+            if( digit < 0 || digit > 9 ) {
+                break;
+            }
+            value = value * 10 + digit;
+            ++p;
+        }
+        if( p == digitsStart || p - digitsStart > 18 ) {
+            return false;
+        }
+        parsedLong = ( isNegative ? -value : value );
+        position = p;
+        return true;
+    }
+
+    /** Helper method that parses a decimal number at the current position (into parsedDouble). */
+    private boolean parseDouble( ByteBuffer buffer ,
+                                 int end ) {
+        int numberStart = position;
+        int p = position;
+        boolean isNegative = false;
+        if( p < end && buffer.get( p ) == '-' ) {
+            isNegative = true;
+            ++p;
+        }
+
+        // Special values (as written by Float.toString)
+        if( p < end && ( buffer.get( p ) == 'N' || buffer.get( p ) == 'I' ) ) {
+            if( matches( buffer , p , end , NAN ) ) {
+                parsedDouble = Double.NaN;
+                position = p + NAN.length;
+                return true;
+            }
+            if( matches( buffer , p , end , INFINITY ) ) {
+                parsedDouble = ( isNegative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY );
+                position = p + INFINITY.length;
+                return true;
+            }
+            return false;
+        }
+
+        // Significant digits into a long mantissa, and the decimal exponent
+        long mantissa = 0L;
+        int numSignificantDigits = 0 , numDigits = 0 , exponent = 0;
+        boolean isTruncated = false;
+        while( p < end ) {
+            int digit = buffer.get( p ) - '0';
+            if( digit < 0 || digit > 9 ) {
+                break;
+            }
+            if( numSignificantDigits < MAX_MANTISSA_DIGITS ) {
+                mantissa = mantissa * 10 + digit;
+                if( mantissa != 0 ) {
+                    ++numSignificantDigits;
+                }
+            }
+            else {
+                ++exponent;
+                isTruncated = true;
+            }
+            ++numDigits;
+            ++p;
+        }
+        if( p < end && buffer.get( p ) == '.' ) {
+            ++p;
+            while( p < end ) {
+                int digit = buffer.get( p ) - '0';
+                if( digit < 0 || digit > 9 ) {
+                    break;
+                }
+                if( numSignificantDigits < MAX_MANTISSA_DIGITS ) {
+                    mantissa = mantissa * 10 + digit;
+                    if( mantissa != 0 ) {
+                        ++numSignificantDigits;
+                    }
+                    --exponent;
+                }
+                else {
+                    isTruncated = true;
+                }
+                ++numDigits;
+                ++p;
+            }
+        }
+        if( numDigits == 0 ) {
+            return false;
+        }
+
+        // Exponent (Float.toString uses it for very small/large values)
+        if( p < end && ( buffer.get( p ) == 'E' || buffer.get( p ) == 'e' ) ) {
+            ++p;
+            boolean isNegativeExponent = false;
+            if( p < end && ( buffer.get( p ) == '-' || buffer.get( p ) == '+' ) ) {
+                isNegativeExponent = ( buffer.get( p ) == '-' );
+                ++p;
+            }
+            int exponentStart = p , explicitExponent = 0;
+            while( p < end ) {
+                int digit = buffer.get( p ) - '0';
+                if( digit < 0 || digit > 9 ) {
+                    break;
+                }
+                if( explicitExponent < 10000 ) {
+                    explicitExponent = explicitExponent * 10 + digit;
+                }
+                ++p;
+            }
+            if( p == exponentStart ) {
+                return false;
+            }
+            exponent += ( isNegativeExponent ? -explicitExponent : explicitExponent );
+        }
+        position = p;
+
+        // Exact conversion: the mantissa and the power of ten are both exact
+        //  doubles, so one multiplication/division rounds correctly
+        double value;
+        if( mantissa == 0L ) {
+            value = 0.0;
+        }
+        else if( ! isTruncated &&
+                 mantissa <= MAX_EXACT_MANTISSA &&
+                 exponent >= -MAX_EXACT_EXPONENT &&
+                 exponent <= MAX_EXACT_EXPONENT ) {
+            value = ( exponent >= 0 ?
+                      mantissa * POWERS_OF_TEN[ exponent ] :
+                      mantissa / POWERS_OF_TEN[ -exponent ] );
+        }
+        else {
+            // Rare: too many digits for the exact fast path
+            value = parseSlowly( buffer , numberStart , p );
+            isNegative = false;
+        }
+        parsedDouble = ( isNegative ? -value : value );
+        return true;
+    }
+
+    /** Helper method that parses a number using Double.parseDouble (slow path). */
+    private double parseSlowly( ByteBuffer buffer ,
+                                int start ,
+                                int end ) {
+        int length = end - start;
+        if( slowPathBytes.length < length ) {
+            slowPathBytes = new byte[ length ];
+        }
+        for( int i = 0 ; i < length ; ++i ) {
+            slowPathBytes[i] = buffer.get( start + i );
+        }
+        return Double.parseDouble( new String( slowPathBytes , 0 , length , CHARSET ) );
+    }
+
+    /** Helper method that checks if the bytes at the position match a word. */
+    private static boolean matches( ByteBuffer buffer ,
+                                    int position ,
+                                    int end ,
+                                    byte[] word ) {
+        if( end - position < word.length ) {
+            return false;
+        }
+        for( int i = 0 ; i < word.length ; ++i ) {
+            if( buffer.get( position + i ) != word[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Column layout. */
+    private final CsvLayout layout;
+    /** Values of the current record (re-used). */
+    private final double[] values;
+    /** Timestamp of the current record. */
+    private long timestamp;
+    /** Current position in the line. */
+    private int position;
+    /** Result of parseLong(). */
+    private long parsedLong;
+    /** Result of parseDouble(). */
+    private double parsedDouble;
+    /** Re-used by the slow path. */
+    private byte[] slowPathBytes = new byte[ 32 ];
+    /** Number of records parsed. */
+    private long numRecords = 0L;
+    /** Number of lines skipped. */
+    private long numSkippedLines = 0L;
+    /** Number of bytes parsed. */
+    private long numBytes = 0L;
+
+    /** Size of a mapped segment (bytes). */
+    private static final long SEGMENT_SIZE = 256L * 1024 * 1024;
+    /** Max significant digits kept in the mantissa. */
+    private static final int MAX_MANTISSA_DIGITS = 18;
+    /** Largest mantissa that is an exact double (2^53). */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /** Largest power of ten that is an exact double. */
+    private static final int MAX_EXACT_EXPONENT = 22;
+    /** Exact powers of ten. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0 , 1e1 , 1e2 , 1e3 , 1e4 , 1e5 , 1e6 , 1e7 , 1e8 , 1e9 , 1e10 ,
+        1e11 , 1e12 , 1e13 , 1e14 , 1e15 , 1e16 , 1e17 , 1e18 , 1e19 , 1e20 , 1e21 , 1e22
+    };
+    /** "NaN" in ASCII. */
+    private static final byte[] NAN = { 'N' , 'a' , 'N' };
+    /** "Infinity" in ASCII. */
+    private static final byte[] INFINITY = { 'I' , 'n' , 'f' , 'i' , 'n' , 'i' , 't' , 'y' };
+    /** Character set of the logs. */
+    private static final Charset CHARSET = Charset.forName( "ISO-8859-1" );
+}
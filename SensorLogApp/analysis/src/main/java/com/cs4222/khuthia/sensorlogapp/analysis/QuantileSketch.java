@@ -0,0 +1,396 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   Mergeable quantile sketch of a stream of values, in fixed memory (a KLL
+   sketch, Karnin, Lang and Liberty 2016).
+
+   <p> The sketch keeps a stack of levels; an item at level h stands for
+   2^h values of the stream. New values go to level 0. When the sketch is
+   full, the lowest level that is over its capacity is sorted, and every
+   other item (starting at a random offset) is promoted to the next level,
+   halving it. Level capacities shrink geometrically (by 2/3) going down
+   from the top level, so the sketch retains about 3k items whatever the
+   stream length, and the rank error is about 1.7 / k (1% for the default k).
+
+   <p> Two sketches (e.g. of different sessions) merge by appending their
+   levels and compacting, with the same error bound as a single sketch of
+   both streams. The min and max are tracked exactly. NaN values are ignored.
+ */
+public class QuantileSketch {
+
+    /** Creates a sketch with the default accuracy. */
+    public QuantileSketch() {
+        this( DEFAULT_K );
+    }
+
+    /**
+       Creates a sketch.
+
+       @param  k  Capacity of the top level (the accuracy parameter, at least 8)
+     */
+    public QuantileSketch( int k ) {
+        if( k < MIN_K ) {
+            throw new IllegalArgumentException( "k must be at least " + MIN_K + ": " + k );
+        }
+        this.k = k;
+        levels = new float[1][ k ];
+        sizes = new int[1];
+        computeCapacities();
+    }
+
+    /** Adds a value. */
+    public void update( float value ) {
+        if( Float.isNaN( value ) ) {
+            return;
+        }
+        if( n == 0 ) {
+            min = max = value;
+        }
+        else if( value < min ) {
+            min = value;
+        }
+        else if( value > max ) {
+            max = value;
+        }
+        ++n;
+        append( 0 , value );
+        ++numRetained;
+        sortedItems = null;
+        if( numRetained >= capacity ) {
+            compress();
+        }
+    }
+
+    /** Merges another sketch into this one (the other sketch is not changed). */
+    public void merge( QuantileSketch other ) {
+        if( other.n == 0 ) {
+            return;
+        }
+        if( n == 0 ) {
+            min = other.min;
+            max = other.max;
+        }
+        else {
+            min = Math.min( min , other.min );
+            max = Math.max( max , other.max );
+        }
+        while( levels.length < other.levels.length ) {
+            addLevel();
+        }
+        for( int h = 0 ; h < other.levels.length ; ++h ) {
+            for( int i = 0 ; i < other.sizes[h] ; ++i ) {
+                append( h , other.levels[h][i] );
+            }
+        }
+        n += other.n;
+        numRetained += other.numRetained;
+        sortedItems = null;
+        compress();
+    }
+
+    /** Gets the number of values added (including merged sketches). */
+    public long getN() {
+        return n;
+    }
+
+    /** Checks if no values were added. */
+    public boolean isEmpty() {
+        return ( n == 0 );
+    }
+
+    /** Gets the min value (NaN if empty). */
+    public float getMin() {
+        return ( n == 0 ? Float.NaN : min );
+    }
+
+    /** Gets the max value (NaN if empty). */
+    public float getMax() {
+        return ( n == 0 ? Float.NaN : max );
+    }
+
+    /** Gets the accuracy parameter. */
+    public int getK() {
+        return k;
+    }
+
+    /** Gets the number of items retained (the memory used, in floats). */
+    public int getNumRetained() {
+        return numRetained;
+    }
+
+    /**
+       Gets the (approximate) value at the given quantile.
+
+       @param  fraction  Quantile, from 0 (the min) to 1 (the max)
+       @return  Value, or NaN if the sketch is empty
+     */
+    public float getQuantile( double fraction ) {
+        if( n == 0 ) {
+            return Float.NaN;
+        }
+        if( fraction <= 0.0 ) {
+            return min;
+        }
+        if( fraction >= 1.0 ) {
+            return max;
+        }
+        sort();
+        // The first item whose cumulative weight reaches the rank
+        double rank = fraction * n;
+        int low = 0 , high = sortedItems.length - 1;
+        while( low < high ) {
+            int mid = ( low + high ) >>> 1;
+            if( cumulativeWeights[ mid ] < rank ) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return sortedItems[ low ];
+    }
+
+    /** Gets the (approximate) fraction of the values that are <= the given value. */
+    public double getRank( float value ) {
+        if( n == 0 ) {
+            return Double.NaN;
+        }
+        sort();
+        // Number of items <= value
+        int low = 0 , high = sortedItems.length;
+        while( low < high ) {
+            int mid = ( low + high ) >>> 1;
+            if( sortedItems[ mid ] <= value ) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return ( low == 0 ? 0.0 : (double) cumulativeWeights[ low - 1 ] / n );
+    }
+
+    /** Writes the sketch (big endian). */
+    public void writeTo( DataOutput out )
+        throws IOException {
+        out.writeInt( k );
+        out.writeLong( n );
+        out.writeFloat( min );
+        out.writeFloat( max );
+        out.writeInt( levels.length );
+        for( int h = 0 ; h < levels.length ; ++h ) {
+            out.writeInt( sizes[h] );
+            for( int i = 0 ; i < sizes[h] ; ++i ) {
+                out.writeFloat( levels[h][i] );
+            }
+        }
+    }
+
+    /** Reads a sketch written by {@link #writeTo}. */
+    public static QuantileSketch readFrom( DataInput in )
+        throws IOException {
+        QuantileSketch sketch = new QuantileSketch( in.readInt() );
+        sketch.n = in.readLong();
+        sketch.min = in.readFloat();
+        sketch.max = in.readFloat();
+        int numLevels = in.readInt();
+        if( numLevels <= 0 || numLevels > MAX_LEVELS ) {
+            throw new IOException( "Invalid number of sketch levels: " + numLevels );
+        }
+        while( sketch.levels.length < numLevels ) {
+            sketch.addLevel();
+        }
+        for( int h = 0 ; h < numLevels ; ++h ) {
+            int size = in.readInt();
+            if( size < 0 || size > MAX_LEVEL_SIZE ) {
+                throw new IOException( "Invalid sketch level size: " + size );
+            }
+            for( int i = 0 ; i < size ; ++i ) {
+                sketch.append( h , in.readFloat() );
+            }
+            sketch.numRetained += size;
+        }
+        return sketch;
+    }
+
+    /** Helper method that appends an item to a level (growing it if required). */
+    private void append( int level ,
+                         float item ) {
+        if( sizes[ level ] == levels[ level ].length ) {
+            levels[ level ] = Arrays.copyOf( levels[ level ] , Math.max( 2 , levels[ level ].length * 2 ) );
+        }
+        levels[ level ][ sizes[ level ]++ ] = item;
+    }
+
+    /**
+       Helper method that adds an empty top level, with room for as many
+       items as the level below grew to (the levels fill up alike, so
+       the sketch's updates do not grow the levels once it has a few).
+     */
+    private void addLevel() {
+        int numLevels = levels.length + 1;
+        levels = Arrays.copyOf( levels , numLevels );
+        sizes = Arrays.copyOf( sizes , numLevels );
+        levels[ numLevels - 1 ] = new float[ Math.max( k , levels[ numLevels - 2 ].length ) ];
+        computeCapacities();
+    }
+
+    /** Helper method that compacts levels until the sketch is within its capacity. */
+    private void compress() {
+        while( numRetained >= capacity ) {
+
+            // The lowest level over its capacity (there is one, since the total is over)
+            int h = 0;
+            while( sizes[h] < levelCapacities[h] ) {
+                ++h;
+            }
+            if( h + 1 == levels.length ) {
+                addLevel();
+            }
+
+            // Sort it, keep the smallest item if the size is odd, and promote every other item
+            float[] items = levels[h];
+            int size = sizes[h];
+            sortItems( items , size );
+            int keep = ( size & 1 );
+            int offset = keep + ( nextRandomBit() ? 1 : 0 );
+            for( int i = offset ; i < size ; i += 2 ) {
+                append( h + 1 , items[i] );
+            }
+            sizes[h] = keep;
+            numRetained -= ( size - keep ) / 2;
+        }
+    }
+
+    /**
+       Helper method that sorts the first items of a level in place (a
+       heapsort: the library sort may allocate its work arrays, and a
+       level is compacted while the sensor callbacks update the sketch).
+     */
+    private static void sortItems( float[] items ,
+                                   int size ) {
+        for( int i = size / 2 - 1 ; i >= 0 ; --i ) {
+            siftDown( items , i , size );
+        }
+        for( int end = size - 1 ; end > 0 ; --end ) {
+            float item = items[0];
+            items[0] = items[ end ];
+            items[ end ] = item;
+            siftDown( items , 0 , end );
+        }
+    }
+
+    /** Helper method that moves an item down a max heap of the given size to its place. */
+    private static void siftDown( float[] items ,
+                                  int i ,
+                                  int size ) {
+        float item = items[i];
+        while( true ) {
+            int child = 2 * i + 1;
+            if( child >= size ) {
+                break;
+            }
+            if( child + 1 < size && items[ child + 1 ] > items[ child ] ) {
+                ++child;
+            }
+            if( items[ child ] <= item ) {
+                break;
+            }
+            items[i] = items[ child ];
+            i = child;
+        }
+        items[i] = item;
+    }
+
+    /** Helper method that computes the capacity of each level (shrinking from the top), and the total. */
+    private void computeCapacities() {
+        levelCapacities = new int[ levels.length ];
+        capacity = 0;
+        for( int h = 0 ; h < levels.length ; ++h ) {
+            int depth = levels.length - 1 - h;
+            levelCapacities[h] = Math.max( MIN_LEVEL_CAPACITY , (int) Math.ceil( k * Math.pow( LEVEL_RATIO , depth ) ) );
+            capacity += levelCapacities[h];
+        }
+    }
+
+    /** Helper method that gets a random bit (xorshift, so a sketch is reproducible). */
+    private boolean nextRandomBit() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return ( random & 1L ) != 0L;
+    }
+
+    /** Helper method that sorts the retained items with their cumulative weights (if not already). */
+    private void sort() {
+        if( sortedItems != null ) {
+            return;
+        }
+
+        // Merge the sorted levels, from the bottom (level h items weigh 2^h)
+        float[] items = new float[0];
+        long[] weights = new long[0];
+        for( int h = 0 ; h < levels.length ; ++h ) {
+            int size = sizes[h];
+            float[] level = Arrays.copyOf( levels[h] , size );
+            Arrays.sort( level );
+            float[] mergedItems = new float[ items.length + size ];
+            long[] mergedWeights = new long[ items.length + size ];
+            int i = 0 , j = 0 , m = 0;
+            while( i < items.length || j < size ) {
+                if( j == size || ( i < items.length && items[i] <= level[j] ) ) {
+                    mergedItems[m] = items[i];
+                    mergedWeights[m++] = weights[i++];
+                }
+                else {
+                    mergedItems[m] = level[j++];
+                    mergedWeights[m++] = 1L << h;
+                }
+            }
+            items = mergedItems;
+            weights = mergedWeights;
+        }
+        for( int i = 1 ; i < weights.length ; ++i ) {
+            weights[i] += weights[ i - 1 ];
+        }
+        sortedItems = items;
+        cumulativeWeights = weights;
+    }
+
+    /** Accuracy parameter (capacity of the top level). */
+    private final int k;
+    /** Items of each level (level 0 first). */
+    private float[][] levels;
+    /** Number of items in each level. */
+    private int[] sizes;
+    /** Capacity of each level. */
+    private int[] levelCapacities;
+    /** Total capacity of the levels. */
+    private int capacity;
+    /** Number of items retained. */
+    private int numRetained;
+    /** Number of values added. */
+    private long n;
+    /** Min and max values. */
+    private float min , max;
+    /** State of the random bits. */
+    private long random = 0x9E3779B97F4A7C15L;
+    /** Retained items sorted, and their cumulative weights (null if not sorted since the last change). */
+    private float[] sortedItems;
+    private long[] cumulativeWeights;
+
+    /** Default accuracy parameter (rank error about 1%). */
+    public static final int DEFAULT_K = 200;
+    /** Min accuracy parameter. */
+    private static final int MIN_K = 8;
+    /** Min capacity of a level. */
+    private static final int MIN_LEVEL_CAPACITY = 2;
+    /** Ratio of the capacities of consecutive levels. */
+    private static final double LEVEL_RATIO = 2.0 / 3.0;
+    /** Max number of levels (2^62 values) and level size, to validate a sketch read from a file. */
+    private static final int MAX_LEVELS = 62;
+    private static final int MAX_LEVEL_SIZE = 1 << 24;
+}
@@ -0,0 +1,264 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+   Lazily reads the records of a session log file, one at a time.
+
+   <p> The file is opened on the first {@link #next()}, and read through
+   a file channel into a fixed read-ahead buffer, so the memory used
+   does not depend on the file size. Lines that cannot be parsed (e.g.
+   a partly written last line) are skipped and counted.
+ */
+public class SensorLogReader
+    implements Closeable {
+
+    /**
+       Creates a reader (the file is not opened yet).
+
+       @param  readAheadBytes  Size of the read-ahead buffer (bytes)
+     */
+    public SensorLogReader( File file ,
+                            SensorLogType type ,
+                            int readAheadBytes ) {
+        if( readAheadBytes <= 0 ) {
+            throw new IllegalArgumentException( "Invalid read-ahead size: " + readAheadBytes );
+        }
+        this.file = file;
+        this.type = type;
+        this.readAheadBytes = readAheadBytes;
+        columns = new String[ type.getNumColumns() ];
+    }
+
+    /**
+       Reads the next record.
+
+       @return  Record, or null at the end of the file
+     */
+    public SensorRecord next()
+        throws IOException {
+
+        // Nothing more to read after closing, and open the file on first use
+        if( isClosed ) {
+            return null;
+        }
+        if( buffer == null ) {
+            open();
+        }
+
+        // Read lines until one can be parsed
+        String line;
+        while( ( line = readLine() ) != null ) {
+            SensorRecord record = parseLine( line );
+            if( record != null ) {
+                ++numRecords;
+                return record;
+            }
+            ++numSkippedLines;
+        }
+        return null;
+    }
+
+    /** Gets the log type. */
+    public SensorLogType getType() {
+        return type;
+    }
+
+    /** Gets the number of records read so far. */
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /** Gets the number of lines skipped so far (could not be parsed). */
+    public long getNumSkippedLines() {
+        return numSkippedLines;
+    }
+
+    /** Gets the size of the read-ahead buffer (bytes). */
+    public int getReadAheadBytes() {
+        return readAheadBytes;
+    }
+
+    /** Closes the file. */
+    @Override
+    public void close()
+        throws IOException {
+        isClosed = true;
+        if( channel != null ) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+       Reads the ground truth labels of a session folder ({@code GroundTruth.txt}),
+       sorted by their start time (a label is logged after it starts). A
+       session without labels gives an empty list.
+     */
+    public static List< SensorRecord.GroundTruth > readLabels( File sessionFolder )
+        throws IOException {
+        List< SensorRecord.GroundTruth > labels = new ArrayList< SensorRecord.GroundTruth >();
+        File file = new File( sessionFolder , SensorLogType.GROUND_TRUTH.getFileName() );
+        if( ! file.isFile() ) {
+            return labels;
+        }
+        SensorLogReader reader = new SensorLogReader( file , SensorLogType.GROUND_TRUTH , LABELS_READ_AHEAD_BYTES );
+        try {
+            SensorRecord record;
+            while( ( record = reader.next() ) != null ) {
+                labels.add( (SensorRecord.GroundTruth) record );
+            }
+        }
+        finally {
+            reader.close();
+        }
+        Collections.sort( labels , new Comparator< SensorRecord.GroundTruth >() {
+                @Override
+                public int compare( SensorRecord.GroundTruth a ,
+                                    SensorRecord.GroundTruth b ) {
+                    return ( a.labelTime < b.labelTime ? -1 : ( a.labelTime == b.labelTime ? 0 : 1 ) );
+                }
+            } );
+        return labels;
+    }
+
+    /** Helper method that opens the file, and allocates the buffers. */
+    private void open()
+        throws IOException {
+        channel = new FileInputStream( file ).getChannel();
+        buffer = ByteBuffer.allocate( readAheadBytes );
+        // Start with an empty buffer (the first read fills it)
+        buffer.flip();
+    }
+
+    /** Helper method that reads the next line (null at the end of the file). */
+    private String readLine()
+        throws IOException {
+
+        // Copy bytes up to the next newline, refilling the buffer as required
+        lineLength = 0;
+        while( true ) {
+            while( buffer.hasRemaining() ) {
+                byte b = buffer.get();
+                if( b == '\n' ) {
+                    return toLine();
+                }
+                appendToLine( b );
+            }
+            if( ! fillBuffer() ) {
+                // Last line without a newline
+                return ( lineLength > 0 ? toLine() : null );
+            }
+        }
+    }
+
+    /** Helper method that reads the next block of the file (false at the end of the file). */
+    private boolean fillBuffer()
+        throws IOException {
+        if( isEndOfFile ) {
+            return false;
+        }
+        buffer.clear();
+        int numRead = 0;
+        while( numRead == 0 ) {
+            numRead = channel.read( buffer );
+        }
+        buffer.flip();
+        if( numRead < 0 ) {
+            isEndOfFile = true;
+            return false;
+        }
+        return true;
+    }
+
+    /** Helper method that adds a byte to the current line. */
+    private void appendToLine( byte b ) {
+        if( lineLength == lineBytes.length ) {
+            byte[] newLineBytes = new byte[ lineBytes.length * 2 ];
+            System.arraycopy( lineBytes , 0 , newLineBytes , 0 , lineLength );
+            lineBytes = newLineBytes;
+        }
+        lineBytes[ lineLength++ ] = b;
+    }
+
+    /** Helper method that converts the current line to a string (without any '\r'). */
+    private String toLine() {
+        int length = lineLength;
+        if( length > 0 && lineBytes[ length - 1 ] == '\r' ) {
+            --length;
+        }
+        return new String( lineBytes , 0 , length , CHARSET );
+    }
+
+    /** Helper method that parses a line (null if it is invalid). */
+    private SensorRecord parseLine( String line ) {
+
+        // Skip the logged date, and get the logged time
+        int start = line.indexOf( ',' ) + 1;
+        int end = line.indexOf( ',' , start );
+        if( start <= 0 || end < 0 ) {
+            return null;
+        }
+
+        // Split the remaining columns (there must be exactly the expected number)
+        int numColumns = 0;
+        int columnStart = end + 1;
+        while( numColumns < columns.length ) {
+            int columnEnd = line.indexOf( ',' , columnStart );
+            if( columnEnd < 0 ) {
+                columnEnd = line.length();
+            }
+            columns[ numColumns++ ] = line.substring( columnStart , columnEnd );
+            columnStart = columnEnd + 1;
+            if( columnEnd == line.length() ) {
+                break;
+            }
+        }
+        if( numColumns != columns.length || columnStart <= line.length() ) {
+            return null;
+        }
+
+        // Parse the columns
+        try {
+            long timestamp = Long.parseLong( line.substring( start , end ) );
+            return type.parse( timestamp , columns );
+        }
+        catch( NumberFormatException e ) {
+            return null;
+        }
+    }
+
+    /** Log file. */
+    private final File file;
+    /** Log type. */
+    private final SensorLogType type;
+    /** Size of the read-ahead buffer (bytes). */
+    private final int readAheadBytes;
+    /** File channel (null until opened). */
+    private FileChannel channel;
+    /** Read-ahead buffer (null until opened). */
+    private ByteBuffer buffer;
+    /** Flag to indicate that the reader has been closed. */
+    private boolean isClosed = false;
+    /** Flag to indicate that the whole file has been read. */
+    private boolean isEndOfFile = false;
+    /** Bytes of the current line. */
+    private byte[] lineBytes = new byte[ 256 ];
+    /** Length of the current line. */
+    private int lineLength;
+    /** Re-used to split the columns of a line. */
+    private final String[] columns;
+    /** Number of records read. */
+    private long numRecords = 0L;
+    /** Number of lines skipped. */
+    private long numSkippedLines = 0L;
+
+    /** Character set of the log files (the app only writes ASCII). */
+    private static final Charset CHARSET = Charset.forName( "ISO-8859-1" );
+    /** Size of the read-ahead buffer for the ground truth logs (a few lines per label). */
+    private static final int LABELS_READ_AHEAD_BYTES = 4096;
+}
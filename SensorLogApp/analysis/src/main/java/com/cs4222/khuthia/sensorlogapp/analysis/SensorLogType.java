@@ -0,0 +1,149 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   The log files of a SensorLogApp session, and their column layouts.
+
+   <p> Every line starts with {@code loggedDate,loggedTime} (written by
+   the app's {@code FileLogger}), followed by the sensor specific columns
+   (see {@code SensorLogAppService}).
+ */
+public enum SensorLogType {
+
+    /** locationTime,locationDate,provider,latitude,longitude,accuracy,altitude,bearing,speed */
+    LOCATION( "Loc.txt" , 9 ) ,
+    /** x,y,z,accuracy */
+    ACCELEROMETER( "Accl.txt" , 4 ) ,
+    /** x,y,z,accuracy */
+    GRAVITY( "Gravity.txt" , 4 ) ,
+    /** x,y,z,accuracy */
+    LINEAR_ACCL( "LinAccl.txt" , 4 ) ,
+    /** x,y,z,accuracy */
+    MAGNETIC( "Mag.txt" , 4 ) ,
+    /** x,y,z,accuracy */
+    GYROSCOPE( "Gyro.txt" , 4 ) ,
+    /** x,y,z,scalar,accuracy */
+    ROTATION_VECTOR( "RotVec.txt" , 5 ) ,
+    /** qw,qx,qy,qz,roll,pitch,yaw */
+    ORIENTATION( "Orientation.txt" , 7 ) ,
+    /** pressure,altitude,accuracy */
+    BAROMETER( "Baro.txt" , 3 ) ,
+    /** light,accuracy */
+    LIGHT( "Light.txt" , 2 ) ,
+    /** proximity,accuracy */
+    PROXIMITY( "Proximity.txt" , 2 ) ,
+    /** labelDate,labelTime,label */
+    GROUND_TRUTH( "GroundTruth.txt" , 3 );
+
+    /** Creates a log type. */
+    private SensorLogType( String fileName ,
+                           int numColumns ) {
+        this.fileName = fileName;
+        this.numColumns = numColumns;
+    }
+
+    /** Gets the log file name (in the session folder). */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /** Gets the number of columns after the logged date and time. */
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /**
+       Parses the columns of a log line into a typed record.
+
+       @param  timestamp  Logged time (millisec)
+       @param  columns    Columns of the line, after the logged date and time
+       @throws NumberFormatException  If a column is not a valid number
+     */
+    public SensorRecord parse( long timestamp ,
+                               String[] columns ) {
+        switch( this ) {
+        case LOCATION:
+            return new SensorRecord.Location( timestamp ,
+                                              Long.parseLong( columns[0] ) ,
+                                              columns[2] ,
+                                              Double.parseDouble( columns[3] ) ,
+                                              Double.parseDouble( columns[4] ) ,
+                                              Float.parseFloat( columns[5] ) ,
+                                              Double.parseDouble( columns[6] ) ,
+                                              Float.parseFloat( columns[7] ) ,
+                                              Float.parseFloat( columns[8] ) );
+        case ROTATION_VECTOR:
+            return new SensorRecord.RotationVector( timestamp ,
+                                                    Float.parseFloat( columns[0] ) ,
+                                                    Float.parseFloat( columns[1] ) ,
+                                                    Float.parseFloat( columns[2] ) ,
+                                                    Float.parseFloat( columns[3] ) ,
+                                                    Integer.parseInt( columns[4] ) );
+        case ORIENTATION:
+            return new SensorRecord.Orientation( timestamp ,
+                                                 Float.parseFloat( columns[0] ) ,
+                                                 Float.parseFloat( columns[1] ) ,
+                                                 Float.parseFloat( columns[2] ) ,
+                                                 Float.parseFloat( columns[3] ) ,
+                                                 Float.parseFloat( columns[4] ) ,
+                                                 Float.parseFloat( columns[5] ) ,
+                                                 Float.parseFloat( columns[6] ) );
+        case BAROMETER:
+            return new SensorRecord.Barometer( timestamp ,
+                                               Float.parseFloat( columns[0] ) ,
+                                               Float.parseFloat( columns[1] ) ,
+                                               Integer.parseInt( columns[2] ) );
+        case LIGHT:
+        case PROXIMITY:
+            return new SensorRecord.Scalar( this ,
+                                            timestamp ,
+                                            Float.parseFloat( columns[0] ) ,
+                                            Integer.parseInt( columns[1] ) );
+        case GROUND_TRUTH:
+            return new SensorRecord.GroundTruth( timestamp ,
+                                                 Long.parseLong( columns[1] ) ,
+                                                 columns[2] );
+        default:
+            return new SensorRecord.Xyz( this ,
+                                         timestamp ,
+                                         Float.parseFloat( columns[0] ) ,
+                                         Float.parseFloat( columns[1] ) ,
+                                         Float.parseFloat( columns[2] ) ,
+                                         Integer.parseInt( columns[3] ) );
+        }
+    }
+
+    /**
+       Finds the session folders under the log folder (sorted by name).
+
+       <p> A session folder is a sub folder holding at least one
+       SensorLogApp log file (one is created per {@code startDataCollection}).
+     */
+    public static List< File > discoverSessions( File logFolder ) {
+        List< File > sessions = new ArrayList< File >();
+        File[] folders = logFolder.listFiles();
+        if( folders == null ) {
+            return sessions;
+        }
+        for( File folder : folders ) {
+            if( ! folder.isDirectory() ) {
+                continue;
+            }
+            for( SensorLogType type : SensorLogType.values() ) {
+                if( new File( folder , type.getFileName() ).isFile() ) {
+                    sessions.add( folder );
+                    break;
+                }
+            }
+        }
+        Collections.sort( sessions );
+        return sessions;
+    }
+
+    /** Log file name. */
+    private final String fileName;
+    /** Number of columns after the logged date and time. */
+    private final int numColumns;
+}
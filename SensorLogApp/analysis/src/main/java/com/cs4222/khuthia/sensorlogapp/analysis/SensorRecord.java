@@ -0,0 +1,183 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+/**
+   A single line of a session log, parsed into typed fields.
+
+   <p> All records have the log type and the logged time (the
+   {@code System.currentTimeMillis()} when the app logged the line),
+   which is the common clock of all the log files of a session.
+ */
+public abstract class SensorRecord {
+
+    /** Creates a record. */
+    protected SensorRecord( SensorLogType type ,
+                            long timestamp ) {
+        this.type = type;
+        this.timestamp = timestamp;
+    }
+
+    /** Log type. */
+    public final SensorLogType type;
+    /** Logged time (millisec). */
+    public final long timestamp;
+
+    /** Accelerometer, gravity, linear accl, magnetic or gyroscope reading. */
+    public static class Xyz
+        extends SensorRecord {
+
+        /** Creates a reading. */
+        public Xyz( SensorLogType type , long timestamp ,
+                    float x , float y , float z , int accuracy ) {
+            super( type , timestamp );
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.accuracy = accuracy;
+        }
+
+        /** Values along the device axes. */
+        public final float x , y , z;
+        /** Sensor accuracy status. */
+        public final int accuracy;
+    }
+
+    /** Rotation vector reading. */
+    public static class RotationVector
+        extends SensorRecord {
+
+        /** Creates a reading. */
+        public RotationVector( long timestamp ,
+                               float x , float y , float z , float scalar , int accuracy ) {
+            super( SensorLogType.ROTATION_VECTOR , timestamp );
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.scalar = scalar;
+            this.accuracy = accuracy;
+        }
+
+        /** Vector part of the rotation quaternion. */
+        public final float x , y , z;
+        /** Scalar part of the rotation quaternion. */
+        public final float scalar;
+        /** Sensor accuracy status. */
+        public final int accuracy;
+    }
+
+    /** Fused orientation (computed by the app's orientation filter). */
+    public static class Orientation
+        extends SensorRecord {
+
+        /** Creates an orientation. */
+        public Orientation( long timestamp ,
+                            float qw , float qx , float qy , float qz ,
+                            float roll , float pitch , float yaw ) {
+            super( SensorLogType.ORIENTATION , timestamp );
+            this.qw = qw;
+            this.qx = qx;
+            this.qy = qy;
+            this.qz = qz;
+            this.roll = roll;
+            this.pitch = pitch;
+            this.yaw = yaw;
+        }
+
+        /** Orientation quaternion. */
+        public final float qw , qx , qy , qz;
+        /** Euler angles (degrees). */
+        public final float roll , pitch , yaw;
+    }
+
+    /** Barometer reading. */
+    public static class Barometer
+        extends SensorRecord {
+
+        /** Creates a reading. */
+        public Barometer( long timestamp ,
+                          float pressure , float altitude , int accuracy ) {
+            super( SensorLogType.BAROMETER , timestamp );
+            this.pressure = pressure;
+            this.altitude = altitude;
+            this.accuracy = accuracy;
+        }
+
+        /** Pressure (hPa). */
+        public final float pressure;
+        /** Altitude computed from the pressure (m). */
+        public final float altitude;
+        /** Sensor accuracy status. */
+        public final int accuracy;
+    }
+
+    /** Light or proximity reading. */
+    public static class Scalar
+        extends SensorRecord {
+
+        /** Creates a reading. */
+        public Scalar( SensorLogType type , long timestamp ,
+                       float value , int accuracy ) {
+            super( type , timestamp );
+            this.value = value;
+            this.accuracy = accuracy;
+        }
+
+        /** Value (lux for light, cm for proximity). */
+        public final float value;
+        /** Sensor accuracy status. */
+        public final int accuracy;
+    }
+
+    /** Location fix. */
+    public static class Location
+        extends SensorRecord {
+
+        /** Creates a location fix. */
+        public Location( long timestamp ,
+                         long locationTime , String provider ,
+                         double latitude , double longitude , float accuracy ,
+                         double altitude , float bearing , float speed ) {
+            super( SensorLogType.LOCATION , timestamp );
+            this.locationTime = locationTime;
+            this.provider = provider;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracy = accuracy;
+            this.altitude = altitude;
+            this.bearing = bearing;
+            this.speed = speed;
+        }
+
+        /** Time of the fix (millisec). */
+        public final long locationTime;
+        /** Location provider (gps, network). */
+        public final String provider;
+        /** Latitude and longitude (degrees). */
+        public final double latitude , longitude;
+        /** Accuracy (m), -1 if not available. */
+        public final float accuracy;
+        /** Altitude (m), -1 if not available. */
+        public final double altitude;
+        /** Bearing (degrees), -1 if not available. */
+        public final float bearing;
+        /** Speed (m/s), -1 if not available. */
+        public final float speed;
+    }
+
+    /** Ground truth label marked by the user. */
+    public static class GroundTruth
+        extends SensorRecord {
+
+        /** Creates a ground truth label. */
+        public GroundTruth( long timestamp ,
+                            long labelTime , String label ) {
+            super( SensorLogType.GROUND_TRUTH , timestamp );
+            this.labelTime = labelTime;
+            this.label = label;
+        }
+
+        /** Time the label starts (millisec), earlier than the logged time. */
+        public final long labelTime;
+        /** User activity name. */
+        public final String label;
+    }
+}
@@ -0,0 +1,158 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   Merges the log files of a session into one time-ordered record stream.
+
+   <p> Each log file is already in time order, so this is a k-way merge:
+   a heap holds the next record of each file, and {@link #next()} takes
+   the earliest one and reads the next record of that file. Only one
+   record and one read-ahead buffer per file are kept in memory, no
+   matter how long the session is.
+
+   <p> Records with the same logged time are returned in the order of
+   the {@link SensorLogType}s (and in file order within a type), so the
+   merged stream is deterministic.
+ */
+public class SessionMerger
+    implements Closeable {
+
+    /** Creates a merger for all the log files in a session folder (missing files are skipped). */
+    public SessionMerger( File sessionFolder ) {
+        this( sessionFolder , DEFAULT_READ_AHEAD_BYTES );
+    }
+
+    /**
+       Creates a merger for all the log files in a session folder (missing files are skipped).
+
+       @param  readAheadBytes  Size of the read-ahead buffer of each file (bytes)
+     */
+    public SessionMerger( File sessionFolder ,
+                          int readAheadBytes ) {
+        this( createReaders( sessionFolder , readAheadBytes ) );
+    }
+
+    /** Creates a merger for the given readers (each must return records in time order). */
+    public SessionMerger( List< SensorLogReader > readers ) {
+        this.readers = new ArrayList< SensorLogReader >( readers );
+        heap = new PriorityQueue< Head >( Math.max( 1 , readers.size() ) );
+    }
+
+    /**
+       Gets the next record (in time order).
+
+       @return  Record, or null when all the files have been read
+     */
+    public SensorRecord next()
+        throws IOException {
+
+        // On first use, read the first record of each file
+        if( ! isStarted ) {
+            isStarted = true;
+            for( int i = 0 ; i < readers.size() ; ++i ) {
+                SensorRecord record = readers.get( i ).next();
+                if( record != null ) {
+                    heap.add( new Head( record , i ) );
+                }
+            }
+        }
+
+        // Take the earliest record, and replace it with the next one from the same file
+        // NOTE: The heap entry is re-used, so merging does not allocate
+        Head head = heap.poll();
+        if( head == null ) {
+            return null;
+        }
+        SensorRecord record = head.record;
+        head.record = readers.get( head.readerIndex ).next();
+        if( head.record != null ) {
+            heap.add( head );
+        }
+        return record;
+    }
+
+    /** Gets the readers (in tie-break order). */
+    public List< SensorLogReader > getReaders() {
+        return Collections.unmodifiableList( readers );
+    }
+
+    /** Gets the total number of lines skipped so far (could not be parsed). */
+    public long getNumSkippedLines() {
+        long numSkippedLines = 0L;
+        for( SensorLogReader reader : readers ) {
+            numSkippedLines += reader.getNumSkippedLines();
+        }
+        return numSkippedLines;
+    }
+
+    /** Closes all the files. */
+    @Override
+    public void close()
+        throws IOException {
+        IOException exception = null;
+        for( SensorLogReader reader : readers ) {
+            try {
+                reader.close();
+            }
+            catch( IOException e ) {
+                exception = e;
+            }
+        }
+        heap.clear();
+        if( exception != null ) {
+            throw exception;
+        }
+    }
+
+    /** Helper method that creates a reader for each log file in the session folder. */
+    private static List< SensorLogReader >
+        createReaders( File sessionFolder , int readAheadBytes ) {
+        List< SensorLogReader > readers = new ArrayList< SensorLogReader >();
+        for( SensorLogType type : SensorLogType.values() ) {
+            File file = new File( sessionFolder , type.getFileName() );
+            if( file.isFile() ) {
+                readers.add( new SensorLogReader( file , type , readAheadBytes ) );
+            }
+        }
+        return readers;
+    }
+
+    /** The next record of a file. */
+    private static class Head
+        implements Comparable< Head > {
+
+        /** Creates a heap entry. */
+        Head( SensorRecord record ,
+              int readerIndex ) {
+            this.record = record;
+            this.readerIndex = readerIndex;
+        }
+
+        /** Orders by time, then by reader (for a deterministic merge). */
+        @Override
+        public int compareTo( Head other ) {
+            if( record.timestamp != other.record.timestamp ) {
+                return ( record.timestamp < other.record.timestamp ? -1 : 1 );
+            }
+            return ( readerIndex < other.readerIndex ? -1 :
+                     ( readerIndex == other.readerIndex ? 0 : 1 ) );
+        }
+
+        /** Next record of the file. */
+        SensorRecord record;
+        /** Index of the file's reader. */
+        final int readerIndex;
+    }
+
+    /** Readers of the log files. */
+    private final List< SensorLogReader > readers;
+    /** Heap of the next record of each file. */
+    private final PriorityQueue< Head > heap;
+    /** Flag to indicate that the first records have been read. */
+    private boolean isStarted = false;
+
+    /** Default size of the read-ahead buffer of each file (bytes). */
+    public static final int DEFAULT_READ_AHEAD_BYTES = 64 * 1024;
+}
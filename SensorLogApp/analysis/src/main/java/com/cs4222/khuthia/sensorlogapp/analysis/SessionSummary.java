@@ -0,0 +1,346 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   Statistics summary of a SensorLogApp session, built by the app while
+   logging, and written to the session folder ({@link #FILE_NAME}) when
+   data collection stops.
+
+   <p> For each sensor channel, the summary keeps the number of readings,
+   the time range, the distribution of the reading accuracies, and a
+   {@link QuantileSketch} of every value (so the range and percentiles).
+   Its size does not depend on the session length (a few KB per channel).
+
+   <p> Summaries merge exactly like their sketches, so device or fleet
+   percentiles are computed from the summary files alone, without reading
+   the raw logs (see the desktop module's FleetSummary). File layout (big endian):
+   <pre>
+     int    magic ('SSUM')
+     int    version
+     int    number of channels, followed by the channels:
+       UTF    channel (SensorLogType name)
+       int    number of values
+       long   number of readings , long startTime , long endTime
+       long[] number of readings per accuracy (NO_CONTACT, UNRELIABLE, LOW, MEDIUM, HIGH)
+       sketch of each value (see QuantileSketch.writeTo)
+   </pre>
+ */
+public class SessionSummary {
+
+    /** Creates an empty summary. */
+    public SessionSummary() {
+    }
+
+    /**
+       Gets a channel's summary, adding it if required.
+
+       @param  numValues  Number of values per reading (e.g. 3 for x, y, z)
+     */
+    public Channel addChannel( SensorLogType type ,
+                               int numValues ) {
+        Channel channel = channels.get( type );
+        if( channel == null ) {
+            channel = new Channel( type , numValues );
+            channels.put( type , channel );
+        }
+        else if( channel.getNumValues() != numValues ) {
+            throw new IllegalArgumentException( type + " has " + channel.getNumValues() + " values, not " + numValues );
+        }
+        return channel;
+    }
+
+    /** Gets a channel's summary (null if none). */
+    public Channel getChannel( SensorLogType type ) {
+        return channels.get( type );
+    }
+
+    /** Gets the channels' summaries (in SensorLogType order). */
+    public Collection< Channel > getChannels() {
+        return Collections.unmodifiableCollection( channels.values() );
+    }
+
+    /** Gets the time of the last reading of any channel (UNIX millisec), Long.MIN_VALUE if there is none. */
+    public long getEndTime() {
+        long endTime = Long.MIN_VALUE;
+        for( Channel channel : channels.values() ) {
+            if( channel.getCount() > 0 ) {
+                endTime = Math.max( endTime , channel.getEndTime() );
+            }
+        }
+        return endTime;
+    }
+
+    /** Merges another summary (e.g. of another session) into this one. */
+    public void merge( SessionSummary other ) {
+        for( Channel channel : other.channels.values() ) {
+            addChannel( channel.getType() , channel.getNumValues() ).merge( channel );
+        }
+    }
+
+    /** Writes the summary to a file. */
+    public void writeFile( File file )
+        throws IOException {
+        DataOutputStream out =
+            new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) );
+        try {
+            out.writeInt( FILE_MAGIC );
+            out.writeInt( FILE_VERSION );
+            out.writeInt( channels.size() );
+            for( Channel channel : channels.values() ) {
+                channel.writeTo( out );
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /** Reads a summary file. */
+    public static SessionSummary readFile( File file )
+        throws IOException {
+        DataInputStream in =
+            new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try {
+            if( in.readInt() != FILE_MAGIC ) {
+                throw new IOException( "Not a session summary file: " + file );
+            }
+            int version = in.readInt();
+            if( version != FILE_VERSION ) {
+                throw new IOException( "Unsupported session summary version " + version + ": " + file );
+            }
+            SessionSummary summary = new SessionSummary();
+            int numChannels = in.readInt();
+            for( int i = 0 ; i < numChannels ; ++i ) {
+                Channel channel = Channel.readFrom( in );
+                summary.channels.put( channel.getType() , channel );
+            }
+            return summary;
+        }
+        catch( IllegalArgumentException e ) {
+            // Unknown channel name
+            throw new IOException( "Corrupt session summary file: " + file , e );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+       Merges the summary files of all the sessions under the log folders
+       (session folders without a summary are skipped).
+     */
+    public static SessionSummary mergeSessions( List< File > logFolders )
+        throws IOException {
+        SessionSummary merged = new SessionSummary();
+        for( File logFolder : logFolders ) {
+            for( File session : SensorLogType.discoverSessions( logFolder ) ) {
+                File file = new File( session , FILE_NAME );
+                if( file.isFile() ) {
+                    merged.merge( readFile( file ) );
+                    ++merged.numSessions;
+                }
+            }
+        }
+        return merged;
+    }
+
+    /** Gets the number of session files merged by {@link #mergeSessions}. */
+    public int getNumSessions() {
+        return numSessions;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for( Channel channel : channels.values() ) {
+            sb.append( channel ).append( '\n' );
+        }
+        return sb.toString();
+    }
+
+    /** Summary of a sensor channel. */
+    public static class Channel {
+
+        /** Creates an empty channel summary. */
+        Channel( SensorLogType type ,
+                 int numValues ) {
+            this.type = type;
+            sketches = new QuantileSketch[ numValues ];
+            for( int i = 0 ; i < numValues ; ++i ) {
+                sketches[i] = new QuantileSketch();
+            }
+        }
+
+        /**
+           Adds a reading (missing values are ignored).
+
+           @param  timestamp  Reading time (UNIX millisec)
+           @param  accuracy   Reading accuracy (SensorManager.SENSOR_STATUS_*)
+         */
+        public void add( long timestamp ,
+                         float[] values ,
+                         int accuracy ) {
+            if( count == 0 || timestamp < startTime ) {
+                startTime = timestamp;
+            }
+            if( count == 0 || timestamp > endTime ) {
+                endTime = timestamp;
+            }
+            ++count;
+            ++accuracyCounts[ Math.max( 0 , Math.min( NUM_ACCURACIES - 1 , accuracy - ACCURACY_NO_CONTACT ) ) ];
+            int numValues = Math.min( values.length , sketches.length );
+            for( int i = 0 ; i < numValues ; ++i ) {
+                sketches[i].update( values[i] );
+            }
+        }
+
+        /** Adds a reading of a channel with one value. */
+        public void add( long timestamp ,
+                         float value ,
+                         int accuracy ) {
+            single[0] = value;
+            add( timestamp , single , accuracy );
+        }
+
+        /** Merges another summary of the same channel into this one. */
+        public void merge( Channel other ) {
+            if( other.count == 0 ) {
+                return;
+            }
+            startTime = ( count == 0 ? other.startTime : Math.min( startTime , other.startTime ) );
+            endTime = ( count == 0 ? other.endTime : Math.max( endTime , other.endTime ) );
+            count += other.count;
+            for( int i = 0 ; i < NUM_ACCURACIES ; ++i ) {
+                accuracyCounts[i] += other.accuracyCounts[i];
+            }
+            for( int i = 0 ; i < sketches.length ; ++i ) {
+                sketches[i].merge( other.sketches[i] );
+            }
+        }
+
+        /** Gets the channel. */
+        public SensorLogType getType() {
+            return type;
+        }
+
+        /** Gets the number of values per reading. */
+        public int getNumValues() {
+            return sketches.length;
+        }
+
+        /** Gets the number of readings. */
+        public long getCount() {
+            return count;
+        }
+
+        /** Gets the time of the first reading (UNIX millisec). */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /** Gets the time of the last reading (UNIX millisec). */
+        public long getEndTime() {
+            return endTime;
+        }
+
+        /** Gets the number of readings with the given accuracy (SensorManager.SENSOR_STATUS_*). */
+        public long getAccuracyCount( int accuracy ) {
+            int index = accuracy - ACCURACY_NO_CONTACT;
+            return ( index < 0 || index >= NUM_ACCURACIES ? 0L : accuracyCounts[ index ] );
+        }
+
+        /** Gets the sketch of the i-th value. */
+        public QuantileSketch getSketch( int i ) {
+            return sketches[i];
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append( type ).append( ": " ).append( count ).append( " readings, accuracy" );
+            for( int i = 0 ; i < NUM_ACCURACIES ; ++i ) {
+                sb.append( ' ' ).append( accuracyCounts[i] );
+            }
+            for( int i = 0 ; i < sketches.length ; ++i ) {
+                QuantileSketch sketch = sketches[i];
+                sb.append( String.format( Locale.US ,
+                                          "\n  value %d: min %g p1 %g p50 %g p99 %g max %g" , i ,
+                                          sketch.getMin() , sketch.getQuantile( 0.01 ) , sketch.getQuantile( 0.5 ) ,
+                                          sketch.getQuantile( 0.99 ) , sketch.getMax() ) );
+            }
+            return sb.toString();
+        }
+
+        /** Helper method that writes the channel summary. */
+        void writeTo( DataOutput out )
+            throws IOException {
+            out.writeUTF( type.name() );
+            out.writeInt( sketches.length );
+            out.writeLong( count );
+            out.writeLong( startTime );
+            out.writeLong( endTime );
+            for( int i = 0 ; i < NUM_ACCURACIES ; ++i ) {
+                out.writeLong( accuracyCounts[i] );
+            }
+            for( QuantileSketch sketch : sketches ) {
+                sketch.writeTo( out );
+            }
+        }
+
+        /** Helper method that reads a channel summary. */
+        static Channel readFrom( DataInput in )
+            throws IOException {
+            SensorLogType type = SensorLogType.valueOf( in.readUTF() );
+            int numValues = in.readInt();
+            if( numValues < 0 || numValues > MAX_VALUES ) {
+                throw new IOException( "Invalid number of values: " + numValues );
+            }
+            Channel channel = new Channel( type , numValues );
+            channel.count = in.readLong();
+            channel.startTime = in.readLong();
+            channel.endTime = in.readLong();
+            for( int i = 0 ; i < NUM_ACCURACIES ; ++i ) {
+                channel.accuracyCounts[i] = in.readLong();
+            }
+            for( int i = 0 ; i < numValues ; ++i ) {
+                channel.sketches[i] = QuantileSketch.readFrom( in );
+            }
+            return channel;
+        }
+
+        /** Channel. */
+        private final SensorLogType type;
+        /** Sketch of each value. */
+        private final QuantileSketch[] sketches;
+        /** Number of readings. */
+        private long count;
+        /** Times of the first and last readings (UNIX millisec). */
+        private long startTime , endTime;
+        /** Number of readings per accuracy (from NO_CONTACT). */
+        private final long[] accuracyCounts = new long[ NUM_ACCURACIES ];
+        /** Reading of a channel with one value (re-used). */
+        private final float[] single = new float[1];
+    }
+
+    /** Channels' summaries. */
+    private final Map< SensorLogType , Channel > channels =
+        new EnumMap< SensorLogType , Channel >( SensorLogType.class );
+    /** Number of session files merged. */
+    private int numSessions;
+
+    /** Name of the summary file (in the session's log folder). */
+    public static final String FILE_NAME = "Summary.bin";
+    /** File magic number ('SSUM'). */
+    private static final int FILE_MAGIC = 0x5353554D;
+    /** File format version. */
+    private static final int FILE_VERSION = 1;
+    /** Lowest accuracy (SensorManager.SENSOR_STATUS_NO_CONTACT), and the number of accuracies. */
+    private static final int ACCURACY_NO_CONTACT = -1;
+    private static final int NUM_ACCURACIES = 5;
+    /** Max number of values per reading, to validate a file. */
+    private static final int MAX_VALUES = 16;
+}
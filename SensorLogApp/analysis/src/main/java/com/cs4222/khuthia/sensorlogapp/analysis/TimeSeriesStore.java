@@ -0,0 +1,413 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.util.*;
+
+/**
+   Columnar in-memory store for the samples of one sensor channel.
+
+   <p> The samples are kept as primitive columns (timestamps, one float
+   array per value, e.g. x/y/z, and a byte accuracy), split into fixed
+   size chunks. Appending fills the last chunk and then starts a new one,
+   so the data is never copied as the store grows.
+
+   <p> Samples must be appended in time order. A time range query finds
+   its first sample with a binary search over the chunks, and then over
+   the timestamps within the chunk. Each chunk keeps the min/max of every
+   value column, so an aggregate over a window only scans the partly
+   covered chunks at the edges, and a value filter skips whole chunks
+   whose range cannot match.
+
+   <p> Not thread-safe.
+ */
+public class TimeSeriesStore {
+
+    /** Receives the samples found by a query. */
+    public static interface SampleVisitor {
+        /**
+           Called for each sample.
+
+           @param  values  Values of the sample (re-used for the next sample)
+         */
+        void onSample( long timestamp , float[] values , byte accuracy );
+    }
+
+    /** Creates an empty store with the default chunk size. */
+    public TimeSeriesStore( int numColumns ) {
+        this( numColumns , DEFAULT_CHUNK_SIZE );
+    }
+
+    /**
+       Creates an empty store.
+
+       @param  numColumns  Number of value columns (e.g. 3 for x/y/z)
+       @param  chunkSize   Samples per chunk (a power of 2)
+     */
+    public TimeSeriesStore( int numColumns ,
+                            int chunkSize ) {
+        if( numColumns <= 0 || chunkSize <= 0 || Integer.bitCount( chunkSize ) != 1 ) {
+            throw new IllegalArgumentException( "Invalid store: " + numColumns +
+                                                " columns, chunk size " + chunkSize );
+        }
+        this.numColumns = numColumns;
+        this.chunkSize = chunkSize;
+        chunkShift = Integer.numberOfTrailingZeros( chunkSize );
+        visitorValues = new float[ numColumns ];
+    }
+
+    /** Creates a store for a SensorLogApp log type (the last column is the accuracy, if it has one). */
+    public static TimeSeriesStore forSensorLog( SensorLogType type ) {
+        switch( type ) {
+        case LOCATION:
+        case GROUND_TRUTH:
+            throw new IllegalArgumentException( "No numeric sensor channel in " + type );
+        case ORIENTATION:
+            return new TimeSeriesStore( type.getNumColumns() );
+        default:
+            return new TimeSeriesStore( type.getNumColumns() - 1 );
+        }
+    }
+
+    /** Appends the records of a parsed log of the given type (see {@link #forSensorLog}). */
+    public void addAll( ColumnBuffer buffer ,
+                        boolean hasAccuracy ) {
+        float[] values = new float[ numColumns ];
+        for( int row = 0 ; row < buffer.size() ; ++row ) {
+            for( int column = 0 ; column < numColumns ; ++column ) {
+                values[ column ] = (float) buffer.getColumn( column )[ row ];
+            }
+            byte accuracy = ( hasAccuracy ? (byte) buffer.getColumn( numColumns )[ row ] : 0 );
+            add( buffer.getTimestamps()[ row ] , values , accuracy );
+        }
+    }
+
+    /** Appends a sample with 3 values (e.g. x/y/z). */
+    public void add( long timestamp ,
+                     float x ,
+                     float y ,
+                     float z ,
+                     byte accuracy ) {
+        Chunk chunk = getChunkForAppend( timestamp );
+        int index = chunk.size;
+        chunk.timestamps[ index ] = timestamp;
+        chunk.values[0][ index ] = x;
+        chunk.values[1][ index ] = y;
+        chunk.values[2][ index ] = z;
+        chunk.accuracies[ index ] = accuracy;
+        chunk.updateSummary( 0 , x );
+        chunk.updateSummary( 1 , y );
+        chunk.updateSummary( 2 , z );
+        chunk.size = index + 1;
+        ++size;
+    }
+
+    /** Appends a sample. */
+    public void add( long timestamp ,
+                     float[] values ,
+                     byte accuracy ) {
+        Chunk chunk = getChunkForAppend( timestamp );
+        int index = chunk.size;
+        chunk.timestamps[ index ] = timestamp;
+        for( int column = 0 ; column < numColumns ; ++column ) {
+            chunk.values[ column ][ index ] = values[ column ];
+            chunk.updateSummary( column , values[ column ] );
+        }
+        chunk.accuracies[ index ] = accuracy;
+        chunk.size = index + 1;
+        ++size;
+    }
+
+    /** Gets the number of samples. */
+    public int size() {
+        return size;
+    }
+
+    /** Gets the number of value columns. */
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /** Gets the number of chunks. */
+    public int getNumChunks() {
+        return numChunks;
+    }
+
+    /** Gets the timestamp of a sample (by row number, in time order). */
+    public long getTimestamp( int row ) {
+        return chunks[ row >>> chunkShift ].timestamps[ row & ( chunkSize - 1 ) ];
+    }
+
+    /** Gets a value of a sample. */
+    public float getValue( int column ,
+                           int row ) {
+        return chunks[ row >>> chunkShift ].values[ column ][ row & ( chunkSize - 1 ) ];
+    }
+
+    /** Gets the accuracy of a sample. */
+    public byte getAccuracy( int row ) {
+        return chunks[ row >>> chunkShift ].accuracies[ row & ( chunkSize - 1 ) ];
+    }
+
+    /** Gets the first row with a timestamp at or after the given time (size() if none). */
+    public int lowerBound( long time ) {
+
+        // Binary search for the first chunk whose last timestamp is at or after the time
+        int low = 0 , high = numChunks - 1;
+        while( low <= high ) {
+            int mid = ( low + high ) >>> 1;
+            Chunk chunk = chunks[ mid ];
+            if( chunk.timestamps[ chunk.size - 1 ] < time ) {
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        if( low == numChunks ) {
+            return size;
+        }
+
+        // Binary search within the chunk
+        Chunk chunk = chunks[ low ];
+        int first = 0 , last = chunk.size - 1;
+        while( first <= last ) {
+            int mid = ( first + last ) >>> 1;
+            if( chunk.timestamps[ mid ] < time ) {
+                first = mid + 1;
+            }
+            else {
+                last = mid - 1;
+            }
+        }
+        return ( low << chunkShift ) + first;
+    }
+
+    /** Gets the number of samples in the time range [startTime, endTime). */
+    public int count( long startTime ,
+                      long endTime ) {
+        return Math.max( 0 , lowerBound( endTime ) - lowerBound( startTime ) );
+    }
+
+    /**
+       Passes the samples in the time range [startTime, endTime) to the visitor.
+
+       @return  Number of samples visited
+     */
+    public int scan( long startTime ,
+                     long endTime ,
+                     SampleVisitor visitor ) {
+        int startRow = lowerBound( startTime ) , endRow = lowerBound( endTime );
+        for( int row = startRow ; row < endRow ; ++row ) {
+            visit( row , visitor );
+        }
+        return Math.max( 0 , endRow - startRow );
+    }
+
+    /**
+       Passes the samples in the time range [startTime, endTime) whose value
+       in the given column is in [minValue, maxValue] to the visitor.
+
+       <p> Chunks whose min/max cannot match are skipped without being read.
+
+       @return  Number of samples visited
+     */
+    public int scanWhere( long startTime ,
+                          long endTime ,
+                          int column ,
+                          float minValue ,
+                          float maxValue ,
+                          SampleVisitor visitor ) {
+        int startRow = lowerBound( startTime ) , endRow = lowerBound( endTime );
+        int numVisited = 0;
+        int row = startRow;
+        while( row < endRow ) {
+
+            // Skip the rest of the chunk if its values cannot match
+            int chunkIndex = row >>> chunkShift;
+            int chunkEndRow = Math.min( endRow , ( chunkIndex + 1 ) << chunkShift );
+            Chunk chunk = chunks[ chunkIndex ];
+            if( chunk.maxs[ column ] < minValue || chunk.mins[ column ] > maxValue ) {
+                ++numChunksSkipped;
+                row = chunkEndRow;
+                continue;
+            }
+
+            // Check each sample in the chunk
+            float[] values = chunk.values[ column ];
+            for( ; row < chunkEndRow ; ++row ) {
+                float value = values[ row & ( chunkSize - 1 ) ];
+                if( value >= minValue && value <= maxValue ) {
+                    visit( row , visitor );
+                    ++numVisited;
+                }
+            }
+        }
+        return numVisited;
+    }
+
+    /** Gets the min value of a column in the time range [startTime, endTime) (NaN if no samples). */
+    public float min( int column ,
+                      long startTime ,
+                      long endTime ) {
+        return aggregate( column , startTime , endTime , true );
+    }
+
+    /** Gets the max value of a column in the time range [startTime, endTime) (NaN if no samples). */
+    public float max( int column ,
+                      long startTime ,
+                      long endTime ) {
+        return aggregate( column , startTime , endTime , false );
+    }
+
+    /** Gets the number of chunks skipped by the queries so far (thanks to the chunk summaries). */
+    public long getNumChunksSkipped() {
+        return numChunksSkipped;
+    }
+
+    /** Gets the approximate memory used by the samples (bytes). */
+    public long getMemoryBytes() {
+        long bytesPerSample = 8 + 4 * numColumns + 1;
+        return (long) numChunks * chunkSize * bytesPerSample;
+    }
+
+    /** Helper method that computes the min or max of a column in a time range. */
+    private float aggregate( int column ,
+                             long startTime ,
+                             long endTime ,
+                             boolean isMin ) {
+        int startRow = lowerBound( startTime ) , endRow = lowerBound( endTime );
+        float result = Float.NaN;
+        int row = startRow;
+        while( row < endRow ) {
+            int chunkIndex = row >>> chunkShift;
+            int chunkStartRow = chunkIndex << chunkShift;
+            Chunk chunk = chunks[ chunkIndex ];
+            int chunkEndRow = Math.min( endRow , chunkStartRow + chunk.size );
+
+            // Whole chunk covered: use its summary, otherwise scan the covered part
+            float value;
+            if( row == chunkStartRow && chunkEndRow == chunkStartRow + chunk.size ) {
+                value = ( isMin ? chunk.mins[ column ] : chunk.maxs[ column ] );
+                ++numChunksSkipped;
+            }
+            else {
+                value = Float.NaN;
+                float[] values = chunk.values[ column ];
+                for( int i = row - chunkStartRow ; i < chunkEndRow - chunkStartRow ; ++i ) {
+                    value = combine( value , values[i] , isMin );
+                }
+            }
+            result = combine( result , value , isMin );
+            row = chunkEndRow;
+        }
+        return result;
+    }
+
+    /** Helper method that combines two values into a min/max (ignoring NaN). */
+    private static float combine( float a ,
+                                  float b ,
+                                  boolean isMin ) {
+        if( a != a ) {
+            return b;
+        }
+        if( b != b ) {
+            return a;
+        }
+        return ( isMin ? Math.min( a , b ) : Math.max( a , b ) );
+    }
+
+    /** Helper method that passes a sample to the visitor. */
+    private void visit( int row ,
+                        SampleVisitor visitor ) {
+        Chunk chunk = chunks[ row >>> chunkShift ];
+        int index = row & ( chunkSize - 1 );
+        for( int column = 0 ; column < numColumns ; ++column ) {
+            visitorValues[ column ] = chunk.values[ column ][ index ];
+        }
+        visitor.onSample( chunk.timestamps[ index ] , visitorValues , chunk.accuracies[ index ] );
+    }
+
+    /** Helper method that gets the chunk to append to (starting a new chunk if required). */
+    private Chunk getChunkForAppend( long timestamp ) {
+
+        // Samples must be in time order (for the binary search)
+        if( timestamp < lastTimestamp ) {
+            throw new IllegalArgumentException( "Sample at " + timestamp +
+                                                " is before the last sample at " + lastTimestamp );
+        }
+        lastTimestamp = timestamp;
+
+        // Start a new chunk if the last one is full
+        // NOTE: Only the chunk references are copied when growing, never the samples
+        if( numChunks == 0 || chunks[ numChunks - 1 ].size == chunkSize ) {
+            if( numChunks == chunks.length ) {
+                Chunk[] newChunks = new Chunk[ Math.max( 16 , chunks.length * 2 ) ];
+                System.arraycopy( chunks , 0 , newChunks , 0 , numChunks );
+                chunks = newChunks;
+            }
+            chunks[ numChunks++ ] = new Chunk( numColumns , chunkSize );
+        }
+        return chunks[ numChunks - 1 ];
+    }
+
+    /** A fixed size chunk of samples, with the min/max of each value column. */
+    private static class Chunk {
+
+        /** Creates an empty chunk. */
+        Chunk( int numColumns ,
+               int chunkSize ) {
+            timestamps = new long[ chunkSize ];
+            values = new float[ numColumns ][ chunkSize ];
+            accuracies = new byte[ chunkSize ];
+            mins = new float[ numColumns ];
+            maxs = new float[ numColumns ];
+            Arrays.fill( mins , Float.NaN );
+            Arrays.fill( maxs , Float.NaN );
+        }
+
+        /** Updates the min/max of a column with a new value (NaN values are ignored). */
+        void updateSummary( int column ,
+                            float value ) {
+            if( ! ( mins[ column ] <= value ) && value == value ) {
+                mins[ column ] = value;
+            }
+            if( ! ( maxs[ column ] >= value ) && value == value ) {
+                maxs[ column ] = value;
+            }
+        }
+
+        /** Timestamps (millisec). */
+        final long[] timestamps;
+        /** Value columns. */
+        final float[][] values;
+        /** Accuracies. */
+        final byte[] accuracies;
+        /** Min value of each column (NaN if no values). */
+        final float[] mins;
+        /** Max value of each column (NaN if no values). */
+        final float[] maxs;
+        /** Number of samples. */
+        int size;
+    }
+
+    /** Number of value columns. */
+    private final int numColumns;
+    /** Samples per chunk. */
+    private final int chunkSize;
+    /** log2 of the chunk size. */
+    private final int chunkShift;
+    /** Chunks (the first numChunks are used). */
+    private Chunk[] chunks = new Chunk[0];
+    /** Number of chunks. */
+    private int numChunks = 0;
+    /** Number of samples. */
+    private int size = 0;
+    /** Timestamp of the last sample. */
+    private long lastTimestamp = Long.MIN_VALUE;
+    /** Number of chunks skipped by the queries. */
+    private long numChunksSkipped = 0L;
+    /** Re-used to pass the values to a visitor. */
+    private final float[] visitorValues;
+
+    /** Default samples per chunk. */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+}
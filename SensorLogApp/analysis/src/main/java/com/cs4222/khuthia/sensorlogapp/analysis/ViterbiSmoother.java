@@ -0,0 +1,207 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+/**
+   Streaming fixed-lag Viterbi smoother of per-window activity
+   predictions, with an {@link ActivityHmm}: the classifier's class
+   probabilities of each window are pushed in time order, and the
+   activity of the window {@code lag} windows back is decided from the
+   most likely activity path up to now. A one-window flicker (e.g.
+   WALKING, CAR, WALKING) costs two unlikely transitions, so it is
+   smoothed away unless the classifier is very sure of it.
+
+   <p> The emission score of a state is the log of the classifier's
+   probability of the class (floored, so that a class the classifier
+   rules out can still win if the path needs it). The probabilities are
+   not divided by the class priors: the priors of the labels and of the
+   classifier's training windows differ, and dividing by the wrong
+   priors favours the rare classes. Each push costs O(states^2) for the
+   Viterbi step, and O(lag) to trace the path back, with no allocation:
+   the path scores, and a ring of the last {@code lag} back pointers, are
+   preallocated primitive arrays.
+
+   <p> The same smoother runs on the phone (one window at a time) and
+   offline ({@link #smooth}), so the offline results match what the phone
+   would show. A smoother is not thread safe.
+ */
+public class ViterbiSmoother {
+
+    /**
+       Creates a smoother.
+
+       @param  lag  Number of windows a decision is delayed by (0 decides
+                    each window when it is pushed)
+     */
+    public ViterbiSmoother( ActivityHmm hmm ,
+                            int lag ) {
+        if( lag < 0 ) {
+            throw new IllegalArgumentException( "Invalid lag " + lag );
+        }
+        this.lag = lag;
+        numStates = hmm.getNumStates();
+        logPriors = new double[ numStates ];
+        logTransitions = new double[ numStates * numStates ];
+        for( int to = 0 ; to < numStates ; ++to ) {
+            logPriors[ to ] = Math.log( hmm.getPrior( to ) );
+            // Stored by column (to, then from), so the Viterbi step scans them in order
+            for( int from = 0 ; from < numStates ; ++from ) {
+                logTransitions[ to * numStates + from ] = Math.log( hmm.getTransition( from , to ) );
+            }
+        }
+        scores = new double[ numStates ];
+        nextScores = new double[ numStates ];
+        numRows = Math.max( lag , 1 );
+        backPointers = new int[ numRows * numStates ];
+    }
+
+    /**
+       Pushes the class probabilities of the next window.
+
+       @return  Decided state of the window {@code lag} windows back, or
+                {@link #NO_STATE} if fewer windows have been pushed
+     */
+    public int push( float[] probabilities ) {
+        return push( probabilities , 0 );
+    }
+
+    /**
+       Pushes the class probabilities of the next window, which start at
+       the given offset of the array.
+
+       @return  Decided state of the window {@code lag} windows back, or
+                {@link #NO_STATE} if fewer windows have been pushed
+     */
+    public int push( float[] probabilities ,
+                     int offset ) {
+
+        // Viterbi step: the best path into each state, and its back pointer
+        long window = numPushed;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        int rowOffset = (int) ( window % numRows ) * numStates;
+        for( int to = 0 ; to < numStates ; ++to ) {
+            double score;
+            if( window == 0 ) {
+                score = logPriors[ to ];
+            }
+            else {
+                score = Double.NEGATIVE_INFINITY;
+                int from = 0;
+                int column = to * numStates;
+                for( int i = 0 ; i < numStates ; ++i ) {
+                    double candidate = scores[i] + logTransitions[ column + i ];
+                    if( candidate > score ) {
+                        score = candidate;
+                        from = i;
+                    }
+                }
+                backPointers[ rowOffset + to ] = from;
+            }
+            float probability = Math.max( probabilities[ offset + to ] , MIN_PROBABILITY );
+            score += Math.log( probability );
+            nextScores[ to ] = score;
+            if( score > bestScore ) {
+                bestScore = score;
+                bestState = to;
+            }
+        }
+
+        // Keep the scores near 0 (only their differences matter)
+        for( int s = 0 ; s < numStates ; ++s ) {
+            scores[s] = nextScores[s] - bestScore;
+        }
+        ++numPushed;
+
+        // Decide the window lag back, by tracing the best path back
+        if( window < lag ) {
+            return NO_STATE;
+        }
+        int state = bestState;
+        for( long w = window ; w > window - lag ; --w ) {
+            state = backPointers[ (int) ( w % numRows ) * numStates + state ];
+        }
+        return state;
+    }
+
+    /**
+       Decides the windows not decided yet (the last {@code lag} windows
+       at most), and resets the smoother for a new sequence.
+
+       @param  states  Set to the states of the windows, in time order, from the offset
+       @return  Number of states set
+     */
+    public int flush( int[] states ,
+                      int offset ) {
+        int count = (int) Math.min( lag , numPushed );
+        if( count > 0 ) {
+            int state = bestState;
+            long window = numPushed - 1;
+            states[ offset + count - 1 ] = state;
+            for( int i = count - 1 ; i > 0 ; --i , --window ) {
+                state = backPointers[ (int) ( window % numRows ) * numStates + state ];
+                states[ offset + i - 1 ] = state;
+            }
+        }
+        reset();
+        return count;
+    }
+
+    /** Resets the smoother for a new sequence (dropping the windows not decided yet). */
+    public void reset() {
+        numPushed = 0L;
+        bestState = 0;
+    }
+
+    /**
+       Smooths a whole sequence (offline), with the same decisions as
+       pushing it window by window and flushing.
+
+       @param  probabilities  Class probabilities of the windows, one after the other
+       @param  states         Set to the decided state of each window
+     */
+    public void smooth( float[] probabilities ,
+                        int numWindows ,
+                        int[] states ) {
+        reset();
+        int numDecided = 0;
+        for( int w = 0 ; w < numWindows ; ++w ) {
+            int state = push( probabilities , w * numStates );
+            if( state != NO_STATE ) {
+                states[ numDecided++ ] = state;
+            }
+        }
+        flush( states , numDecided );
+    }
+
+    /** Gets the lag (in windows). */
+    public int getLag() {
+        return lag;
+    }
+
+    /** Gets the number of states. */
+    public int getNumStates() {
+        return numStates;
+    }
+
+    /** Decision delay (windows). */
+    private final int lag;
+    /** Number of states. */
+    private final int numStates;
+    /** Log prior of each state. */
+    private final double[] logPriors;
+    /** Log transition probabilities, by column (logTransitions[ to * states + from ]). */
+    private final double[] logTransitions;
+    /** Best path score into each state (the best is 0), and the next window's. */
+    private final double[] scores , nextScores;
+    /** Number of back pointer rows in the ring. */
+    private final int numRows;
+    /** Ring of the back pointers of the last windows (window w in row w % numRows). */
+    private final int[] backPointers;
+    /** Number of windows pushed since the reset. */
+    private long numPushed = 0L;
+    /** State ending the best path of the last window. */
+    private int bestState = 0;
+
+    /** Decision of a push before {@code lag} windows have been pushed. */
+    public static final int NO_STATE = -1;
+    /** Probability floor of a class. */
+    private static final float MIN_PROBABILITY = 1e-4F;
+}
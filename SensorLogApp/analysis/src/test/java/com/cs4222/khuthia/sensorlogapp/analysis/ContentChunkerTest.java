@@ -0,0 +1,94 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the chunk sizes and boundaries, and that an edit only changes
+ * the chunks around it.
+ */
+public class ContentChunkerTest {
+
+    /** Chunks some bytes, returning the chunk hashes (and checking the chunks cover the data). */
+    private static List< String > chunk( final byte[] data , final int minSize , final int maxSize ) throws IOException {
+        final List< String > hashes = new ArrayList< String >();
+        final long[] position = { 0L };
+        new ContentChunker( minSize , 4 * minSize , maxSize ).chunk( new ByteArrayInputStream( data ) , new ContentChunker.ChunkCallback() {
+                public void onChunk( byte[] buffer , int start , int length , long offset ) {
+                    assertEquals( position[0] , offset );
+                    assertTrue( length <= maxSize );
+                    // Only the last chunk can be smaller than the min size
+                    assertTrue( length >= minSize || offset + length == data.length );
+                    assertArrayEquals( Arrays.copyOfRange( data , (int) offset , (int) offset + length ) ,
+                                       Arrays.copyOfRange( buffer , start , start + length ) );
+                    hashes.add( ContentChunker.hash( buffer , start , length ) );
+                    position[0] += length;
+                }
+            } );
+        assertEquals( data.length , position[0] );
+        return hashes;
+    }
+
+    /** Gets log-like text (digits and separators). */
+    private static byte[] text( int numBytes , long seed ) {
+        Random random = new Random( seed );
+        StringBuilder text = new StringBuilder();
+        while( text.length() < numBytes ) {
+            text.append( 1451624400000L + text.length() ).append( ',' ).append( random.nextFloat() ).append( '\n' );
+        }
+        return text.substring( 0 , numBytes ).getBytes();
+    }
+
+    @Test
+    public void chunk_coversTheDataWithinTheSizeBounds() throws Exception {
+        byte[] data = text( 1000000 , 1L );
+        List< String > hashes = chunk( data , 2048 , 65536 );
+        // About 1 chunk per min size + average size bytes
+        assertEquals( 1000000.0 / ( 2048 + 8192 ) , hashes.size() , 30.0 );
+
+        // The same bytes give the same chunks (across chunkers and buffer positions)
+        assertEquals( hashes , chunk( data , 2048 , 65536 ) );
+
+        // Empty data has no chunks, and data shorter than the min size is one chunk
+        assertEquals( 0 , chunk( new byte[0] , 2048 , 65536 ).size() );
+        assertEquals( 1 , chunk( text( 1000 , 2L ) , 2048 , 65536 ).size() );
+
+        // No cut points at all (constant bytes): max size chunks
+        assertEquals( 16 , chunk( new byte[ 16 * 4096 ] , 512 , 4096 ).size() );
+    }
+
+    @Test
+    public void chunk_insertionOnlyChangesTheChunksAroundIt() throws Exception {
+        byte[] data = text( 500000 , 3L );
+        // Insert 100 bytes in the middle
+        byte[] edited = new byte[ data.length + 100 ];
+        System.arraycopy( data , 0 , edited , 0 , 250000 );
+        System.arraycopy( text( 100 , 4L ) , 0 , edited , 250000 , 100 );
+        System.arraycopy( data , 250000 , edited , 250100 , 250000 );
+
+        List< String > hashes = chunk( data , 2048 , 65536 );
+        Set< String > newHashes = new HashSet< String >( chunk( edited , 2048 , 65536 ) );
+        int numChanged = 0;
+        for( String hash : hashes ) {
+            if( ! newHashes.contains( hash ) ) {
+                ++numChanged;
+            }
+        }
+        assertTrue( numChanged + " chunks changed" , numChanged >= 1 && numChanged <= 3 );
+    }
+
+    @Test
+    public void hash_isHexSha256() {
+        byte[] data = "abc".getBytes();
+        String hash = ContentChunker.hash( data , 0 , data.length );
+        assertEquals( "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad" , hash );
+        assertTrue( ContentChunker.isValidHash( hash ) );
+        assertFalse( ContentChunker.isValidHash( hash.toUpperCase() ) );
+        assertFalse( ContentChunker.isValidHash( "../" + hash.substring( 3 ) ) );
+        assertEquals( "00017f80ff" , ContentChunker.toHex( new byte[] { 0 , 1 , 127 , -128 , -1 } ) );
+    }
+}
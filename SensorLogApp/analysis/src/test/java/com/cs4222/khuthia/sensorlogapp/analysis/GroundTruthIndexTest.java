@@ -0,0 +1,198 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ground truth label interval index, its sidecar file (and
+ * the text log of older sessions), and the streaming label joiner.
+ */
+public class GroundTruthIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Creates an index with WALKING [1000,2000), BUS [2000,5000), WALKING [5000,6000). */
+    private GroundTruthIndex createIndex() throws Exception {
+        GroundTruthIndex index = new GroundTruthIndex();
+        index.add( 1000L , "WALKING" );
+        index.add( 2000L , "BUS" );
+        index.add( 5000L , "WALKING" );
+        index.setEndTime( 6000L );
+        return index;
+    }
+
+    @Test
+    public void labelAt_findsIntervalContainingTime() throws Exception {
+        GroundTruthIndex index = createIndex();
+
+        assertNull( index.labelAt( 999L ) );
+        assertEquals( "WALKING" , index.labelAt( 1000L ) );
+        assertEquals( "WALKING" , index.labelAt( 1999L ) );
+        assertEquals( "BUS" , index.labelAt( 2000L ) );
+        assertEquals( "BUS" , index.labelAt( 4999L ) );
+        assertEquals( "WALKING" , index.labelAt( 5999L ) );
+        assertNull( index.labelAt( 6000L ) );
+    }
+
+    @Test
+    public void labelAddedOutOfOrder_isInsertedSorted() throws Exception {
+        GroundTruthIndex index = new GroundTruthIndex();
+        index.add( 3000L , "CAR" );
+        index.add( 1000L , "WALKING" );
+
+        assertEquals( "WALKING" , index.labelAt( 2000L ) );
+        assertEquals( "CAR" , index.labelAt( 3000L ) );
+        assertEquals( "CAR" , index.labelAt( Long.MAX_VALUE - 1 ) );
+    }
+
+    @Test
+    public void intervalsFor_enumeratesAllIntervalsOfLabel() throws Exception {
+        List< GroundTruthIndex.Interval > intervals =
+            createIndex().intervalsFor( "WALKING" );
+
+        assertEquals( 2 , intervals.size() );
+        assertEquals( 1000L , intervals.get( 0 ).startTime );
+        assertEquals( 2000L , intervals.get( 0 ).endTime );
+        assertEquals( 5000L , intervals.get( 1 ).startTime );
+        assertEquals( 6000L , intervals.get( 1 ).endTime );
+        assertTrue( createIndex().intervalsFor( "TRAIN" ).isEmpty() );
+    }
+
+    @Test
+    public void repeatedLabel_continuesItsInterval() throws Exception {
+        GroundTruthIndex index = createIndex();
+        index.add( 3000L , "BUS" );
+
+        List< GroundTruthIndex.Interval > intervals = index.getIntervals();
+
+        assertEquals( 3 , intervals.size() );
+        assertEquals( "BUS" , intervals.get( 1 ).label );
+        assertEquals( 2000L , intervals.get( 1 ).startTime );
+        assertEquals( 5000L , intervals.get( 1 ).endTime );
+    }
+
+    @Test
+    public void sidecarFile_isWrittenIncrementallyAndReadBack() throws Exception {
+        File file = folder.newFile( GroundTruthIndex.SIDECAR_FILE_NAME );
+        GroundTruthIndex index = new GroundTruthIndex();
+        index.add( 1000L , "WALKING" );
+        index.openSidecarFile( file );
+        index.add( 2000L , "BUS" );
+
+        // Readable while still logging (no end time yet)
+        GroundTruthIndex partial = GroundTruthIndex.readSidecarFile( file );
+        assertEquals( 2 , partial.size() );
+        assertEquals( Long.MAX_VALUE , partial.getEndTime() );
+
+        index.closeSidecarFile( 3000L );
+        GroundTruthIndex loaded = GroundTruthIndex.readSidecarFile( file );
+        assertEquals( 2 , loaded.size() );
+        assertEquals( "BUS" , loaded.labelAt( 2500L ) );
+        assertNull( loaded.labelAt( 3000L ) );
+    }
+
+    @Test
+    public void sidecarFile_partialRecordIsIgnored() throws Exception {
+        File file = folder.newFile( GroundTruthIndex.SIDECAR_FILE_NAME );
+        GroundTruthIndex index = createIndex();
+        index.openSidecarFile( file );
+        index.closeSidecarFile( 6000L );
+
+        // Chop off the end of the last record (as if the app was killed while writing)
+        RandomAccessFile raf = new RandomAccessFile( file , "rw" );
+        raf.setLength( raf.length() - 4 );
+        raf.close();
+
+        GroundTruthIndex loaded = GroundTruthIndex.readSidecarFile( file );
+        assertEquals( 3 , loaded.size() );
+        assertEquals( Long.MAX_VALUE , loaded.getEndTime() );
+    }
+
+    @Test
+    public void version1SidecarFile_isStillRead() throws Exception {
+        File file = folder.newFile( GroundTruthIndex.SIDECAR_FILE_NAME );
+        DataOutputStream out = new DataOutputStream( new FileOutputStream( file ) );
+        out.writeInt( 0x47544958 );
+        out.writeInt( 1 );
+        out.writeInt( 2 );
+        out.writeUTF( "WALKING" );
+        out.writeUTF( "BUS" );
+        out.writeLong( 1000L );
+        out.writeByte( 0 );
+        out.writeLong( 2000L );
+        out.writeByte( 1 );
+        out.writeLong( 3000L );
+        out.writeByte( -1 );
+        out.close();
+
+        GroundTruthIndex loaded = GroundTruthIndex.readSidecarFile( file );
+
+        assertEquals( 2 , loaded.size() );
+        assertEquals( "WALKING" , loaded.labelAt( 1500L ) );
+        assertEquals( "BUS" , loaded.labelAt( 2500L ) );
+        assertEquals( 3000L , loaded.getEndTime() );
+    }
+
+    @Test
+    public void readSession_withoutSidecar_parsesGroundTruthText() throws Exception {
+        File session = folder.newFolder( "session" );
+        PrintWriter out = new PrintWriter( new FileWriter( new File( session , "GroundTruth.txt" ) ) );
+        out.println( "2016-01-01-1-00-30PM,3010,2016-01-01-1-00-03PM,3000,TRAIN" );
+        out.println( "2016-01-01-1-00-10PM,1010,2016-01-01-1-00-01PM,1000,WALKING" );
+        out.println( "garbage" );
+        out.close();
+
+        GroundTruthIndex index = GroundTruthIndex.readSession( session );
+
+        assertEquals( 2 , index.size() );
+        assertEquals( "WALKING" , index.labelAt( 2999L ) );
+        assertEquals( "TRAIN" , index.labelAt( 3000L ) );
+        assertEquals( Long.MAX_VALUE , index.getEndTime() );
+    }
+
+    @Test
+    public void readSession_withoutEndTime_endsAtTheLastReading() throws Exception {
+        File session = folder.newFolder( "session" );
+        GroundTruthIndex index = createIndex();
+        index.openSidecarFile( new File( session , GroundTruthIndex.SIDECAR_FILE_NAME ) );
+        SessionSummary summary = new SessionSummary();
+        summary.addChannel( SensorLogType.ACCELEROMETER , 3 ).add( 7999L , new float[3] , 3 );
+        summary.writeFile( new File( session , SessionSummary.FILE_NAME ) );
+
+        // The app was killed: the sidecar file has no end time
+        GroundTruthIndex loaded = GroundTruthIndex.readSession( session );
+
+        assertEquals( 8000L , loaded.getEndTime() );
+        assertEquals( "WALKING" , loaded.labelAt( 7999L ) );
+    }
+
+    @Test
+    public void joiner_tagsEveryRecordInOnePass() throws Exception {
+        String log =
+            "2016-01-01-1-00-00PM,500,0.1,0.2,9.8,3\n" +
+            "2016-01-01-1-00-01PM,1500,0.1,0.2,9.8,3\n" +
+            "2016-01-01-1-00-03PM,3000,0.1,0.2,9.8,3\n" +
+            "2016-01-01-1-00-01PM,1999,0.1,0.2,9.8,3\n" +
+            "2016-01-01-1-00-07PM,7000,0.1,0.2,9.8,3\n";
+        StringWriter out = new StringWriter();
+
+        int numLabelled = new LabelJoiner( createIndex() )
+            .join( new BufferedReader( new StringReader( log ) ) , out );
+
+        assertEquals( 3 , numLabelled );
+        String[] lines = out.toString().split( "\n" );
+        assertEquals( "2016-01-01-1-00-00PM,500,0.1,0.2,9.8,3," , lines[0] );
+        assertEquals( "2016-01-01-1-00-01PM,1500,0.1,0.2,9.8,3,WALKING" , lines[1] );
+        assertEquals( "2016-01-01-1-00-03PM,3000,0.1,0.2,9.8,3,BUS" , lines[2] );
+        // Going back in time still gets the right label
+        assertEquals( "2016-01-01-1-00-01PM,1999,0.1,0.2,9.8,3,WALKING" , lines[3] );
+        assertEquals( "2016-01-01-1-00-07PM,7000,0.1,0.2,9.8,3," , lines[4] );
+    }
+}
@@ -0,0 +1,146 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the memory-mapped CSV parser on all the log layouts (see
+ * LogScanBenchmark for its speed against String.split()).
+ */
+public class MappedCsvParserTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Writes lines to a new file. */
+    private File writeFile( String... lines ) throws Exception {
+        File file = folder.newFile();
+        PrintWriter out = new PrintWriter( new FileWriter( file ) );
+        for( String line : lines ) {
+            out.print( line );
+        }
+        out.close();
+        return file;
+    }
+
+    /** Parses a file into a column buffer. */
+    private ColumnBuffer parse( CsvLayout layout , File file ) throws Exception {
+        ColumnBuffer buffer = new ColumnBuffer( layout.getNumValues() );
+        new MappedCsvParser( layout ).parse( file , buffer );
+        return buffer;
+    }
+
+    @Test
+    public void sensorLog_parsesTimestampAndValues() throws Exception {
+        File file = writeFile( "2016-01-01-1-00-00PM,1451624400000,0.12,-9.81,1.0E-5,3\n" ,
+                               "2016-01-01-1-00-00PM,1451624400005,NaN,-Infinity,0,2\r\n" ,
+                               "2016-01-01-1-00-00PM,1451624400010,1.5,2.5,3.5\n" ,
+                               "2016-01-01-1-00-00PM,1451624400015,1.5,x,3.5,3\n" ,
+                               "\n" ,
+                               "2016-01-01-1-00-00PM,1451624400020,-0.0,12345.678,3.4028235E38,1" );
+        MappedCsvParser parser = new MappedCsvParser( CsvLayout.SENSOR_LOG_XYZ );
+        ColumnBuffer buffer = new ColumnBuffer( 4 );
+
+        assertEquals( 3L , parser.parse( file , buffer ) );
+
+        assertEquals( 2L , parser.getNumSkippedLines() );
+        assertEquals( 1451624400000L , buffer.getTimestamps()[0] );
+        assertEquals( 0.12 , buffer.getColumn( 0 )[0] , 0.0 );
+        assertEquals( -9.81 , buffer.getColumn( 1 )[0] , 0.0 );
+        assertEquals( 1.0E-5 , buffer.getColumn( 2 )[0] , 0.0 );
+        assertEquals( 3.0 , buffer.getColumn( 3 )[0] , 0.0 );
+        assertTrue( Double.isNaN( buffer.getColumn( 0 )[1] ) );
+        assertEquals( Double.NEGATIVE_INFINITY , buffer.getColumn( 1 )[1] , 0.0 );
+        assertEquals( 1451624400020L , buffer.getTimestamps()[2] );
+        assertEquals( 12345.678 , buffer.getColumn( 1 )[2] , 0.0 );
+        assertEquals( 3.4028235E38F , (float) buffer.getColumn( 2 )[2] , 0.0F );
+    }
+
+    @Test
+    public void floats_matchFloatParseFloatExactly() throws Exception {
+        Random random = new Random( 7L );
+        StringBuilder sb = new StringBuilder();
+        float[] expected = new float[ 20000 ];
+        for( int i = 0 ; i < expected.length ; ++i ) {
+            // Mix of magnitudes, including ones written in E notation
+            float value = (float) ( ( random.nextDouble() - 0.5 ) * Math.pow( 10 , random.nextInt( 20 ) - 10 ) );
+            expected[i] = value;
+            sb.append( "d," ).append( i ).append( ',' ).append( value ).append( ",1,2,3\n" );
+        }
+        File file = writeFile( sb.toString() );
+
+        ColumnBuffer buffer = parse( CsvLayout.SENSOR_LOG_XYZ , file );
+
+        assertEquals( expected.length , buffer.size() );
+        for( int i = 0 ; i < expected.length ; ++i ) {
+            assertEquals( Float.floatToIntBits( expected[i] ) ,
+                          Float.floatToIntBits( (float) buffer.getColumn( 0 )[i] ) );
+        }
+    }
+
+    @Test
+    public void otherLayouts_areParsed() throws Exception {
+        // SensorLogApp Loc.txt, with a 17 digit latitude (slow path)
+        ColumnBuffer location = parse(
+            CsvLayout.forSensorLog( SensorLogType.LOCATION ) ,
+            writeFile( "d,1000,990,d,gps,1.2961234567891234,103.776,5.0,-1.0,-1.0,-1.0\n" ) );
+        assertEquals( 1 , location.size() );
+        assertEquals( 990.0 , location.getColumn( 0 )[0] , 0.0 );
+        assertEquals( 1.2961234567891234 , location.getColumn( 1 )[0] , 0.0 );
+        assertEquals( -1.0 , location.getColumn( 6 )[0] , 0.0 );
+
+        // BaroGpsApp Barometer.csv and GPS.csv
+        ColumnBuffer barometer = parse(
+            CsvLayout.BARO_GPS_BAROMETER ,
+            writeFile( "1,1451624400000,2016-01-01-1-00-00PM,1008.51,42.5,200,1500\n" ) );
+        assertEquals( 1451624400000L , barometer.getTimestamps()[0] );
+        assertEquals( 1008.51 , barometer.getColumn( 0 )[0] , 0.0 );
+        assertEquals( 1500.0 , barometer.getColumn( 3 )[0] , 0.0 );
+        ColumnBuffer gps = parse(
+            CsvLayout.BARO_GPS_GPS ,
+            writeFile( "7,1451624400000,2016-01-01-1-00-00PM,network,1.29,103.77,20.0,-1.0,-1.0,-1.0,1000,3000\n" ) );
+        assertEquals( 8 , gps.getNumColumns() );
+        assertEquals( 103.77 , gps.getColumn( 1 )[0] , 0.0 );
+
+        // LightAnalyzer Light.csv
+        ColumnBuffer light = parse(
+            CsvLayout.LIGHT_ANALYZER_LIGHT ,
+            writeFile( "1,1451624400000,2016-01-01-1-00-00PM,320.0\n" ,
+                       "2,1451624400200,2016-01-01-1-00-00PM,321.5\n" ) );
+        assertEquals( 2 , light.size() );
+        assertEquals( 321.5 , light.getColumn( 0 )[1] , 0.0 );
+    }
+
+    @Test
+    public void byteRanges_parseEveryLineExactlyOnce() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random( 3L );
+        for( int i = 0 ; i < 1000 ; ++i ) {
+            sb.append( TestSessions.line( SensorLogType.ACCELEROMETER , 1000L + i , random ) ).append( '\n' );
+        }
+        File file = writeFile( sb.toString() );
+        ColumnBuffer whole = parse( CsvLayout.SENSOR_LOG_XYZ , file );
+
+        // Split at arbitrary byte offsets (mostly in the middle of lines)
+        for( int numRanges : new int[] { 2 , 3 , 7 , 64 } ) {
+            ColumnBuffer parts = new ColumnBuffer( 4 );
+            MappedCsvParser parser = new MappedCsvParser( CsvLayout.SENSOR_LOG_XYZ );
+            long rangeSize = file.length() / numRanges + 1;
+            for( long start = 0 ; start < file.length() ; start += rangeSize ) {
+                parser.parse( file , start , start + rangeSize , parts );
+            }
+            assertEquals( whole.size() , parts.size() );
+            assertEquals( file.length() , parser.getNumBytes() );
+            for( int i = 0 ; i < whole.size() ; ++i ) {
+                assertEquals( whole.getTimestamps()[i] , parts.getTimestamps()[i] );
+                assertEquals( whole.getColumn( 2 )[i] , parts.getColumn( 2 )[i] , 0.0 );
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the sketch's rank error against the exact quantiles, merging,
+ * and the file round trip.
+ */
+public class QuantileSketchTest {
+
+    /** Checks the sketch's quantiles against the sorted values (rank error within the tolerance). */
+    private void assertQuantiles( float[] sorted , QuantileSketch sketch , double tolerance ) {
+        assertEquals( sorted.length , sketch.getN() );
+        assertEquals( sorted[0] , sketch.getMin() , 0.0F );
+        assertEquals( sorted[ sorted.length - 1 ] , sketch.getMax() , 0.0F );
+        for( double fraction = 0.01 ; fraction < 1.0 ; fraction += 0.01 ) {
+            float value = sketch.getQuantile( fraction );
+            // Exact rank of the value
+            int rank = Arrays.binarySearch( sorted , value );
+            assertTrue( rank >= 0 );
+            assertEquals( "quantile " + fraction , fraction , (double) rank / sorted.length , tolerance );
+        }
+    }
+
+    @Test
+    public void quantiles_withinRankError() {
+        Random random = new Random( 1L );
+        QuantileSketch sketch = new QuantileSketch();
+        float[] values = new float[ 1000000 ];
+        for( int i = 0 ; i < values.length ; ++i ) {
+            values[i] = (float) random.nextGaussian();
+            sketch.update( values[i] );
+        }
+        Arrays.sort( values );
+
+        assertQuantiles( values , sketch , 0.02 );
+        assertEquals( 0.5 , sketch.getRank( 0.0F ) , 0.02 );
+        // Fixed memory (about 3k items)
+        assertTrue( sketch.getNumRetained() < 4 * QuantileSketch.DEFAULT_K );
+    }
+
+    @Test
+    public void merge_ofManySessions() throws Exception {
+        // 50 "sessions" with different distributions, merged after a file round trip
+        Random random = new Random( 2L );
+        QuantileSketch merged = new QuantileSketch();
+        List< Float > all = new ArrayList< Float >();
+        for( int session = 0 ; session < 50 ; ++session ) {
+            QuantileSketch sketch = new QuantileSketch();
+            int numValues = 1000 + random.nextInt( 20000 );
+            for( int i = 0 ; i < numValues ; ++i ) {
+                float value = session + 10.0F * random.nextFloat();
+                sketch.update( value );
+                all.add( value );
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            sketch.writeTo( new DataOutputStream( bytes ) );
+            QuantileSketch read =
+                QuantileSketch.readFrom( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+            assertEquals( sketch.getQuantile( 0.3 ) , read.getQuantile( 0.3 ) , 0.0F );
+            merged.merge( read );
+        }
+        float[] sorted = new float[ all.size() ];
+        for( int i = 0 ; i < sorted.length ; ++i ) {
+            sorted[i] = all.get( i );
+        }
+        Arrays.sort( sorted );
+
+        assertQuantiles( sorted , merged , 0.02 );
+        assertTrue( merged.getNumRetained() < 4 * QuantileSketch.DEFAULT_K );
+    }
+
+    @Test
+    public void empty_andNaN() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.update( Float.NaN );
+        assertTrue( sketch.isEmpty() );
+        assertTrue( Float.isNaN( sketch.getQuantile( 0.5 ) ) );
+        sketch.update( 3.0F );
+        assertEquals( 3.0F , sketch.getQuantile( 0.5 ) , 0.0F );
+    }
+}
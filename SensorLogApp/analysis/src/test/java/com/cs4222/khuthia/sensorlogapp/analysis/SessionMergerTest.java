@@ -0,0 +1,134 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the typed log readers and the k-way merge of a session's log files.
+ */
+public class SessionMergerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Writes lines to a log file in the session folder. */
+    private void writeLog( File session , SensorLogType type , String... lines ) throws Exception {
+        PrintWriter out = new PrintWriter( new FileWriter( new File( session , type.getFileName() ) ) );
+        for( String line : lines ) {
+            out.println( line );
+        }
+        out.close();
+    }
+
+    @Test
+    public void reader_parsesTypedRecordsAndSkipsBadLines() throws Exception {
+        File session = folder.newFolder();
+        writeLog( session , SensorLogType.LOCATION ,
+                  "2016-01-01-1-00-00PM,1000,990,2016-01-01-1-00-00PM,gps,1.29,103.77,5.0,12.5,90.0,1.5" );
+        writeLog( session , SensorLogType.BAROMETER ,
+                  "2016-01-01-1-00-00PM,1000,1013.25,10.5,3" ,
+                  "2016-01-01-1-00-00PM,1001,1013.25" ,
+                  "2016-01-01-1-00-00PM,1002,abc,10.5,3" ,
+                  "2016-01-01-1-00-00PM,1003,1013.0,10.0,3\r" ,
+                  "2016-01-01-1-00-00PM,10" );
+
+        SensorLogReader locReader =
+            new SensorLogReader( new File( session , "Loc.txt" ) , SensorLogType.LOCATION , 16 );
+        SensorRecord.Location location = (SensorRecord.Location) locReader.next();
+        assertEquals( 1000L , location.timestamp );
+        assertEquals( 990L , location.locationTime );
+        assertEquals( "gps" , location.provider );
+        assertEquals( 103.77 , location.longitude , 0.0 );
+        assertEquals( 1.5F , location.speed , 0.0F );
+        assertNull( locReader.next() );
+        locReader.close();
+
+        SensorLogReader baroReader =
+            new SensorLogReader( new File( session , "Baro.txt" ) , SensorLogType.BAROMETER , 7 );
+        SensorRecord.Barometer baro = (SensorRecord.Barometer) baroReader.next();
+        assertEquals( 1013.25F , baro.pressure , 0.0F );
+        assertEquals( 3 , baro.accuracy );
+        baro = (SensorRecord.Barometer) baroReader.next();
+        assertEquals( 1003L , baro.timestamp );
+        assertNull( baroReader.next() );
+        assertEquals( 3L , baroReader.getNumSkippedLines() );
+        baroReader.close();
+    }
+
+    @Test
+    public void merge_isTimeOrderedWithDeterministicTies() throws Exception {
+        File session = folder.newFolder();
+        writeLog( session , SensorLogType.ACCELEROMETER ,
+                  "d,1000,1.0,2.0,3.0,3" , "d,1020,1.0,2.0,3.0,3" );
+        writeLog( session , SensorLogType.GYROSCOPE ,
+                  "d,1000,0.1,0.2,0.3,3" , "d,1010,0.1,0.2,0.3,3" );
+        writeLog( session , SensorLogType.GROUND_TRUTH ,
+                  "d,1015,d,900,BUS" );
+
+        SessionMerger merger = new SessionMerger( session );
+        List< String > merged = new ArrayList< String >();
+        SensorRecord record;
+        while( ( record = merger.next() ) != null ) {
+            merged.add( record.type + "@" + record.timestamp );
+        }
+        merger.close();
+
+        assertEquals( Arrays.asList( "ACCELEROMETER@1000" , "GYROSCOPE@1000" , "GYROSCOPE@1010" ,
+                                     "GROUND_TRUTH@1015" , "ACCELEROMETER@1020" ) , merged );
+        assertEquals( 3 , merger.getReaders().size() );
+    }
+
+    @Test
+    public void merge_matchesSortingEverything() throws Exception {
+        File session = folder.newFolder();
+        int numLines = TestSessions.writeSession( session , 1451620800000L , 20000 , 42L );
+        long sessionBytes = 0L;
+        for( File file : session.listFiles() ) {
+            sessionBytes += file.length();
+        }
+
+        // Sort-everything approach: read every record into memory, then sort
+        List< SensorRecord > all = new ArrayList< SensorRecord >();
+        for( SensorLogType type : SensorLogType.values() ) {
+            SensorLogReader reader =
+                new SensorLogReader( new File( session , type.getFileName() ) , type , 64 * 1024 );
+            SensorRecord record;
+            while( ( record = reader.next() ) != null ) {
+                all.add( record );
+            }
+            reader.close();
+        }
+        Collections.sort( all , new Comparator< SensorRecord >() {
+                public int compare( SensorRecord a , SensorRecord b ) {
+                    if( a.timestamp != b.timestamp ) {
+                        return ( a.timestamp < b.timestamp ? -1 : 1 );
+                    }
+                    return a.type.compareTo( b.type );
+                }
+            } );
+        assertEquals( numLines , all.size() );
+
+        // k-way merge with a small read-ahead
+        int readAheadBytes = 4096;
+        SessionMerger merger = new SessionMerger( session , readAheadBytes );
+        int count = 0;
+        SensorRecord record;
+        while( ( record = merger.next() ) != null ) {
+            SensorRecord expected = all.get( count++ );
+            assertEquals( expected.timestamp , record.timestamp );
+            assertSame( expected.type , record.type );
+        }
+        merger.close();
+        assertEquals( numLines , count );
+
+        // The merge buffers one read-ahead block per file, the sort holds every record
+        long mergeBufferBytes = (long) merger.getReaders().size() * readAheadBytes;
+        assertTrue( mergeBufferBytes * 100 < sessionBytes );
+    }
+}
@@ -0,0 +1,76 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests writing session summaries, and merging them into device
+ * and fleet summaries.
+ */
+public class SessionSummaryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Writes a session folder with a (dummy) log file and a summary of light readings in [base, base + 100). */
+    private void writeSession( File sessionFolder , long startTime , float base , int numReadings ) throws Exception {
+        sessionFolder.mkdirs();
+        new File( sessionFolder , SensorLogType.LIGHT.getFileName() ).createNewFile();
+        SessionSummary summary = new SessionSummary();
+        SessionSummary.Channel light = summary.addChannel( SensorLogType.LIGHT , 1 );
+        SessionSummary.Channel accl = summary.addChannel( SensorLogType.ACCELEROMETER , 3 );
+        for( int i = 0 ; i < numReadings ; ++i ) {
+            light.add( startTime + i * 100L , base + ( i % 100 ) , ( i % 10 == 0 ? 1 : 3 ) );
+            accl.add( startTime + i * 100L , new float[] { 0.0F , 0.0F , 9.8F } , 3 );
+        }
+        summary.writeFile( new File( sessionFolder , SessionSummary.FILE_NAME ) );
+    }
+
+    @Test
+    public void writeFile_roundTrip() throws Exception {
+        File session = new File( folder.getRoot() , "walk" );
+        writeSession( session , 1000L , 0.0F , 1000 );
+        SessionSummary summary = SessionSummary.readFile( new File( session , SessionSummary.FILE_NAME ) );
+
+        SessionSummary.Channel light = summary.getChannel( SensorLogType.LIGHT );
+        assertEquals( 1000 , light.getCount() );
+        assertEquals( 1000L , light.getStartTime() );
+        assertEquals( 1000L + 999 * 100L , light.getEndTime() );
+        assertEquals( 100 , light.getAccuracyCount( 1 ) );
+        assertEquals( 900 , light.getAccuracyCount( 3 ) );
+        assertEquals( 0.0F , light.getSketch( 0 ).getMin() , 0.0F );
+        assertEquals( 99.0F , light.getSketch( 0 ).getMax() , 0.0F );
+        assertEquals( 9.8F , summary.getChannel( SensorLogType.ACCELEROMETER ).getSketch( 2 ).getQuantile( 0.5 ) , 0.0F );
+        assertNull( summary.getChannel( SensorLogType.GYROSCOPE ) );
+    }
+
+    @Test
+    public void mergeSessions_ofTwoDevices() throws Exception {
+        // Device 1: light in [0, 100), device 2: light in [100, 200); a session without a summary is skipped
+        File device1 = folder.newFolder( "device1" ) , device2 = folder.newFolder( "device2" );
+        writeSession( new File( device1 , "a" ) , 1000L , 0.0F , 10000 );
+        writeSession( new File( device1 , "b" ) , 5000000L , 0.0F , 10000 );
+        writeSession( new File( device2 , "c" ) , 2000L , 100.0F , 20000 );
+        File noSummary = new File( device2 , "d" );
+        noSummary.mkdirs();
+        new File( noSummary , SensorLogType.LIGHT.getFileName() ).createNewFile();
+
+        SessionSummary fleet = SessionSummary.mergeSessions( Arrays.asList( device1 , device2 ) );
+        assertEquals( 3 , fleet.getNumSessions() );
+        SessionSummary.Channel light = fleet.getChannel( SensorLogType.LIGHT );
+        assertEquals( 40000 , light.getCount() );
+        assertEquals( 1000L , light.getStartTime() );
+        assertEquals( 5000000L + 9999 * 100L , light.getEndTime() );
+        assertEquals( 4000 , light.getAccuracyCount( 1 ) );
+        // Half the readings are below 100
+        assertEquals( 100.0F , light.getSketch( 0 ).getQuantile( 0.5 ) , 2.0F );
+        assertEquals( 199.0F , light.getSketch( 0 ).getMax() , 0.0F );
+        assertTrue( fleet.toString().contains( "LIGHT: 40000 readings, accuracy" ) );
+    }
+}
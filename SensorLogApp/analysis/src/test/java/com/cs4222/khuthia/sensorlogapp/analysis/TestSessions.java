@@ -0,0 +1,67 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.text.*;
+import java.util.*;
+
+/**
+ * Writes synthetic session folders in the SensorLogApp log format.
+ */
+public class TestSessions {
+
+    /** Same date format as the app's FileLogger. */
+    private static final SimpleDateFormat sdf = new SimpleDateFormat( "yyyy-MM-dd-h-mm-ssa" );
+
+    /**
+     * Writes every log file of a session, with about numLines lines per file.
+     * Each file gets its own sampling period, so the files interleave.
+     *
+     * @return Total number of lines written
+     */
+    public static int writeSession( File folder , long startTime , int numLines , long seed )
+        throws IOException {
+        folder.mkdirs();
+        Random random = new Random( seed );
+        int total = 0;
+        for( SensorLogType type : SensorLogType.values() ) {
+            PrintWriter out = new PrintWriter( new BufferedWriter(
+                new FileWriter( new File( folder , type.getFileName() ) ) ) );
+            long period = 5 + type.ordinal();
+            long time = startTime + random.nextInt( 10 );
+            for( int i = 0 ; i < numLines ; ++i ) {
+                out.println( line( type , time , random ) );
+                time += period + ( random.nextInt( 3 ) == 0 ? 0 : random.nextInt( 3 ) );
+                ++total;
+            }
+            out.close();
+        }
+        return total;
+    }
+
+    /** Creates a log line of the given type. */
+    public static String line( SensorLogType type , long time , Random random ) {
+        String prefix = sdf.format( new Date( time ) ) + "," + time + ",";
+        switch( type ) {
+        case LOCATION:
+            return prefix + ( time - 100 ) + "," + sdf.format( new Date( time - 100 ) ) + ",gps," +
+                ( 1.29 + random.nextDouble() / 100 ) + "," + ( 103.77 + random.nextDouble() / 100 ) + "," +
+                random.nextInt( 50 ) + ".0,-1.0," + random.nextInt( 360 ) + ".0,1.5";
+        case ROTATION_VECTOR:
+            return prefix + random.nextFloat() + "," + random.nextFloat() + "," + random.nextFloat() + "," +
+                random.nextFloat() + ",3";
+        case ORIENTATION:
+            return prefix + "1.0,0.0,0.0,0.0," + ( random.nextFloat() * 180 ) + ",-0.5," +
+                ( random.nextFloat() * 360 - 180 );
+        case BAROMETER:
+            return prefix + ( 1000 + random.nextFloat() * 20 ) + "," + ( random.nextFloat() * 100 ) + ",3";
+        case LIGHT:
+        case PROXIMITY:
+            return prefix + ( random.nextFloat() * 1000 ) + ",3";
+        case GROUND_TRUTH:
+            return prefix + sdf.format( new Date( time - 5 ) ) + "," + ( time - 5 ) + ",WALKING";
+        default:
+            return prefix + ( random.nextFloat() * 20 - 10 ) + "," + ( random.nextFloat() * 20 - 10 ) + "," +
+                ( random.nextFloat() * 20 - 10 ) + ",3";
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the chunked time range queries against a brute force scan.
+ */
+public class TimeSeriesStoreTest {
+
+    /** Fills a store with samples every 5 ms (with some gaps), value x = i. */
+    private TimeSeriesStore fill( int numSamples , int chunkSize ) {
+        TimeSeriesStore store = new TimeSeriesStore( 3 , chunkSize );
+        long time = 1000L;
+        for( int i = 0 ; i < numSamples ; ++i ) {
+            time += ( i % 100 == 0 ? 1000L : 5L );
+            store.add( time , i , -i , i % 10 , (byte) ( i % 4 ) );
+        }
+        return store;
+    }
+
+    @Test
+    public void queries_matchBruteForce() {
+        TimeSeriesStore store = fill( 1000 , 64 );
+        Random random = new Random( 5L );
+
+        assertEquals( 1000 , store.size() );
+        assertEquals( 16 , store.getNumChunks() );
+        for( int query = 0 ; query < 200 ; ++query ) {
+            long start = store.getTimestamp( 0 ) - 100 + random.nextInt( 20000 );
+            long end = start + random.nextInt( 5000 );
+
+            // Brute force
+            int expectedCount = 0;
+            float expectedMin = Float.NaN , expectedMax = Float.NaN;
+            for( int row = 0 ; row < store.size() ; ++row ) {
+                long t = store.getTimestamp( row );
+                if( t >= start && t < end ) {
+                    float y = store.getValue( 1 , row );
+                    expectedMin = ( expectedCount == 0 ? y : Math.min( expectedMin , y ) );
+                    expectedMax = ( expectedCount == 0 ? y : Math.max( expectedMax , y ) );
+                    ++expectedCount;
+                }
+            }
+
+            final long[] previous = { Long.MIN_VALUE };
+            final long queryStart = start , queryEnd = end;
+            int count = store.scan( start , end , new TimeSeriesStore.SampleVisitor() {
+                    public void onSample( long timestamp , float[] values , byte accuracy ) {
+                        assertTrue( timestamp >= queryStart && timestamp < queryEnd );
+                        assertTrue( timestamp > previous[0] );
+                        assertEquals( (int) values[0] % 4 , accuracy );
+                        previous[0] = timestamp;
+                    }
+                } );
+            assertEquals( expectedCount , count );
+            assertEquals( expectedCount , store.count( start , end ) );
+            assertEquals( expectedMin , store.min( 1 , start , end ) , 0.0F );
+            assertEquals( expectedMax , store.max( 1 , start , end ) , 0.0F );
+        }
+    }
+
+    @Test
+    public void scanWhere_skipsChunksOutsideTheValueRange() {
+        TimeSeriesStore store = fill( 1000 , 64 );
+        final List< Float > found = new ArrayList< Float >();
+
+        // x = row number, so only chunk 7 (rows 448-511) can have x in [450, 460]
+        int count = store.scanWhere( Long.MIN_VALUE , Long.MAX_VALUE , 0 , 450.0F , 460.0F ,
+                                     new TimeSeriesStore.SampleVisitor() {
+                                         public void onSample( long timestamp , float[] values , byte accuracy ) {
+                                             found.add( values[0] );
+                                         }
+                                     } );
+
+        assertEquals( 11 , count );
+        assertEquals( 450.0F , found.get( 0 ) , 0.0F );
+        assertEquals( 460.0F , found.get( 10 ) , 0.0F );
+        assertEquals( 15L , store.getNumChunksSkipped() );
+    }
+
+    @Test
+    public void nanValues_areIgnoredByTheSummaries() {
+        TimeSeriesStore store = new TimeSeriesStore( 1 , 4 );
+        store.add( 1L , new float[] { Float.NaN } , (byte) 0 );
+        store.add( 2L , new float[] { 3.0F } , (byte) 0 );
+        store.add( 3L , new float[] { -1.0F } , (byte) 0 );
+
+        assertEquals( -1.0F , store.min( 0 , 0L , 10L ) , 0.0F );
+        assertEquals( 3.0F , store.max( 0 , 0L , 10L ) , 0.0F );
+        assertTrue( Float.isNaN( store.max( 0 , 1L , 2L ) ) );
+        assertTrue( Float.isNaN( store.max( 0 , 5L , 10L ) ) );
+        assertEquals( 0 , store.count( 10L , 5L ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void outOfOrderSample_isRejected() {
+        TimeSeriesStore store = new TimeSeriesStore( 3 );
+        store.add( 10L , 0.0F , 0.0F , 0.0F , (byte) 0 );
+        store.add( 9L , 0.0F , 0.0F , 0.0F , (byte) 0 );
+    }
+
+    @Test
+    public void addAll_storesParsedLog() {
+        ColumnBuffer buffer = new ColumnBuffer( 4 );
+        buffer.onRecord( 100L , new double[] { 0.5 , -9.81 , 1.0 , 3.0 } );
+        buffer.onRecord( 105L , new double[] { 0.25 , -9.8 , 1.5 , 2.0 } );
+        TimeSeriesStore store = TimeSeriesStore.forSensorLog( SensorLogType.ACCELEROMETER );
+
+        store.addAll( buffer , true );
+
+        assertEquals( 3 , store.getNumColumns() );
+        assertEquals( 2 , store.size() );
+        assertEquals( -9.8F , store.getValue( 1 , 1 ) , 0.0F );
+        assertEquals( 3 , store.getAccuracy( 0 ) );
+    }
+}
@@ -0,0 +1,200 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests learning the activity HMM from label sequences, the fixed-lag
+ * Viterbi smoother (streaming and offline), and the model file.
+ */
+public class ViterbiSmootherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Classes of the tests. */
+    private static final List< String > CLASSES = Arrays.asList( "BUS" , "CAR" , "WALKING" );
+
+    /** Creates a model where each activity lasts about 100 windows. */
+    private static ActivityHmm createHmm() throws Exception {
+        ActivityHmm.Counts counts = new ActivityHmm.Counts( CLASSES , 1000L );
+        String[] labels = { "WALKING" , "BUS" , "WALKING" , "CAR" , "WALKING" , "BUS" };
+        GroundTruthIndex index = new GroundTruthIndex();
+        for( int i = 0 ; i < labels.length ; ++i ) {
+            index.add( i * 100000L , labels[i] );
+        }
+        index.setEndTime( labels.length * 100000L );
+        counts.addSession( index );
+        return counts.toHmm();
+    }
+
+    /**
+     * Creates noisy class probabilities of a state sequence: each window
+     * favours its true state, except the flicker windows, which favour
+     * another state.
+     */
+    private static float[] noisyProbabilities( int[] states , double flickerRate , Random random ) {
+        int numStates = CLASSES.size();
+        float[] probabilities = new float[ states.length * numStates ];
+        for( int w = 0 ; w < states.length ; ++w ) {
+            int favoured = states[w];
+            if( random.nextDouble() < flickerRate ) {
+                favoured = ( states[w] + 1 + random.nextInt( numStates - 1 ) ) % numStates;
+            }
+            for( int s = 0 ; s < numStates ; ++s ) {
+                probabilities[ w * numStates + s ] = ( s == favoured ? 0.7F : 0.15F );
+            }
+        }
+        return probabilities;
+    }
+
+    /** Creates a state sequence of runs of the given length. */
+    private static int[] runs( int numWindows , int runLength , Random random ) {
+        int[] states = new int[ numWindows ];
+        int state = 0;
+        for( int w = 0 ; w < numWindows ; ++w ) {
+            if( w % runLength == 0 ) {
+                state = random.nextInt( CLASSES.size() );
+            }
+            states[w] = state;
+        }
+        return states;
+    }
+
+    /** Gets the most likely class of each window. */
+    private static int[] argmax( float[] probabilities , int numWindows ) {
+        int numStates = probabilities.length / numWindows;
+        int[] states = new int[ numWindows ];
+        for( int w = 0 ; w < numWindows ; ++w ) {
+            for( int s = 1 ; s < numStates ; ++s ) {
+                if( probabilities[ w * numStates + s ] > probabilities[ w * numStates + states[w] ] ) {
+                    states[w] = s;
+                }
+            }
+        }
+        return states;
+    }
+
+    /** Counts the switches of a state sequence. */
+    private static int switches( int[] states ) {
+        int count = 0;
+        for( int w = 1 ; w < states.length ; ++w ) {
+            count += ( states[w] != states[ w - 1 ] ? 1 : 0 );
+        }
+        return count;
+    }
+
+    /** Counts the windows where two state sequences differ. */
+    private static int errors( int[] states , int[] truth ) {
+        int count = 0;
+        for( int w = 0 ; w < truth.length ; ++w ) {
+            count += ( states[w] != truth[w] ? 1 : 0 );
+        }
+        return count;
+    }
+
+    @Test
+    public void counts_learnTheTransitions() throws Exception {
+        ActivityHmm hmm = createHmm();
+        int walking = CLASSES.indexOf( "WALKING" ) , bus = CLASSES.indexOf( "BUS" ) , car = CLASSES.indexOf( "CAR" );
+
+        // WALKING lasts 300 windows, and is left 3 times (to BUS twice, to CAR once)
+        assertEquals( ( 297.0 + 1.0 ) / ( 300.0 + 3.0 ) , hmm.getTransition( walking , walking ) , 1e-9 );
+        assertEquals( ( 2.0 + 1.0 ) / 303.0 , hmm.getTransition( walking , bus ) , 1e-9 );
+        assertEquals( ( 1.0 + 1.0 ) / 303.0 , hmm.getTransition( walking , car ) , 1e-9 );
+        // Never labelled: unlikely, not impossible
+        assertTrue( hmm.getTransition( car , bus ) > 0.0 );
+        assertEquals( ( 300.0 + 1.0 ) / ( 600.0 + 3.0 ) , hmm.getPrior( walking ) , 1e-9 );
+        for( int from = 0 ; from < CLASSES.size() ; ++from ) {
+            double sum = 0.0;
+            for( int to = 0 ; to < CLASSES.size() ; ++to ) {
+                sum += hmm.getTransition( from , to );
+            }
+            assertEquals( 1.0 , sum , 1e-9 );
+        }
+
+        // A repeated label continues, an unknown label breaks the sequence
+        ActivityHmm.Counts counts = new ActivityHmm.Counts( CLASSES , 1000L );
+        GroundTruthIndex index = new GroundTruthIndex();
+        index.add( 0L , "BUS" );
+        index.add( 5000L , "BUS" );
+        index.add( 10000L , "INCORRECT" );
+        index.add( 12000L , "CAR" );
+        counts.addSession( index );
+        assertEquals( 11.0 , counts.getNumWindows() , 1e-9 );
+    }
+
+    @Test
+    public void smoother_removesFlicker() throws Exception {
+        Random random = new Random( 1L );
+        int[] truth = runs( 5000 , 100 , random );
+        float[] probabilities = noisyProbabilities( truth , 0.2 , random );
+        int[] raw = argmax( probabilities , truth.length );
+
+        int[] smoothed = new int[ truth.length ];
+        new ViterbiSmoother( createHmm() , 10 ).smooth( probabilities , truth.length , smoothed );
+        assertTrue( switches( smoothed ) < switches( raw ) / 10 );
+        assertTrue( errors( smoothed , truth ) < errors( raw , truth ) / 4 );
+
+        // Without a lag, the smoother only filters, so it is worse
+        int[] filtered = new int[ truth.length ];
+        new ViterbiSmoother( createHmm() , 0 ).smooth( probabilities , truth.length , filtered );
+        assertTrue( errors( filtered , truth ) < errors( raw , truth ) );
+        assertTrue( errors( smoothed , truth ) <= errors( filtered , truth ) );
+    }
+
+    @Test
+    public void streaming_matchesOffline() throws Exception {
+        Random random = new Random( 2L );
+        int[] truth = runs( 1000 , 37 , random );
+        float[] probabilities = noisyProbabilities( truth , 0.3 , random );
+        int numStates = CLASSES.size();
+        ViterbiSmoother smoother = new ViterbiSmoother( createHmm() , 8 );
+        int[] offline = new int[ truth.length ];
+        smoother.smooth( probabilities , truth.length , offline );
+
+        // Push the windows one at a time (the first lag pushes decide nothing)
+        int[] streamed = new int[ truth.length ];
+        float[] window = new float[ numStates ];
+        int numDecided = 0;
+        for( int w = 0 ; w < truth.length ; ++w ) {
+            System.arraycopy( probabilities , w * numStates , window , 0 , numStates );
+            int state = smoother.push( window );
+            if( w < 8 ) {
+                assertEquals( ViterbiSmoother.NO_STATE , state );
+            }
+            else {
+                streamed[ numDecided++ ] = state;
+            }
+        }
+        assertEquals( 8 , smoother.flush( streamed , numDecided ) );
+        assertArrayEquals( offline , streamed );
+
+        // A lag as long as the sequence gives the exact Viterbi path (all decided at the flush)
+        int[] exact = new int[ truth.length ];
+        new ViterbiSmoother( createHmm() , truth.length ).smooth( probabilities , truth.length , exact );
+        assertEquals( 0 , smoother.flush( exact , 0 ) );
+        assertTrue( errors( exact , truth ) <= errors( offline , truth ) + truth.length / 100 );
+    }
+
+    @Test
+    public void model_roundTripsThroughAFile() throws Exception {
+        ActivityHmm hmm = createHmm();
+        File file = folder.newFile( "activity.hmm" );
+        hmm.writeFile( file );
+        ActivityHmm read = ActivityHmm.readFile( file );
+        assertEquals( CLASSES , read.getClassNames() );
+        for( int from = 0 ; from < CLASSES.size() ; ++from ) {
+            assertEquals( hmm.getPrior( from ) , read.getPrior( from ) , 0.0 );
+            for( int to = 0 ; to < CLASSES.size() ; ++to ) {
+                assertEquals( hmm.getTransition( from , to ) , read.getTransition( from , to ) , 0.0 );
+            }
+        }
+    }
+}
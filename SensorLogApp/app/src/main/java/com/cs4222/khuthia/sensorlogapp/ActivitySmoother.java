@@ -0,0 +1,131 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+import java.util.*;
+
+import com.cs4222.khuthia.sensorlogapp.analysis.*;
+
+/**
+   Smooths a stream of per-window {@link UserActivities} predictions on
+   the phone, with the shared fixed-lag {@link ViterbiSmoother}, so a
+   prediction that flickers (e.g. WALKING, CAR, WALKING) shows as one
+   activity.
+
+   <p> The activity model ({@link ActivityHmm}) is learnt from the
+   ground truth of the logged sessions ({@link #learn}), or loaded from
+   a model file trained offline. A push costs O(activities^2), and
+   allocates nothing (the probabilities of a hard prediction go into a
+   preallocated array), and neither does a flush.
+ */
+public class ActivitySmoother {
+
+    /**
+       Creates a smoother.
+
+       @param  hmm  Activity model (its states must be activity names)
+       @param  lag  Number of windows a smoothed activity is delayed by
+     */
+    public ActivitySmoother( ActivityHmm hmm ,
+                             int lag ) {
+        smoother = new ViterbiSmoother( hmm , lag );
+        activities = new UserActivities[ hmm.getNumStates() ];
+        for( int s = 0 ; s < activities.length ; ++s ) {
+            activities[s] = UserActivities.valueOf( hmm.getClassNames().get( s ) );
+        }
+        probabilities = new float[ activities.length ];
+        flushedStates = new int[ lag ];
+    }
+
+    /**
+       Pushes the class probabilities of the next window (in the model's state order).
+
+       @return  Smoothed activity of the window {@code lag} windows back, or null if none yet
+     */
+    public UserActivities push( float[] probabilities ) {
+        int state = smoother.push( probabilities );
+        return ( state == ViterbiSmoother.NO_STATE ? null : activities[ state ] );
+    }
+
+    /**
+       Pushes the predicted activity of the next window, for a classifier
+       that only gives its best class: the rest of the probability is
+       spread over the other activities.
+
+       @param  confidence  Probability of the predicted activity (in (0,1))
+       @return  Smoothed activity of the window {@code lag} windows back, or null if none yet
+     */
+    public UserActivities push( UserActivities predicted ,
+                                float confidence ) {
+        float other = ( 1.0F - confidence ) / Math.max( 1 , activities.length - 1 );
+        for( int s = 0 ; s < activities.length ; ++s ) {
+            probabilities[s] = ( activities[s] == predicted ? confidence : other );
+        }
+        return push( probabilities );
+    }
+
+    /**
+       Gets the activities of the windows not decided yet, at the end of
+       a session, and resets the smoother.
+
+       @param  smoothed  Set to the activities, in time order (at least lag long)
+       @return  Number of activities set
+     */
+    public int flush( UserActivities[] smoothed ) {
+        int count = smoother.flush( flushedStates , 0 );
+        for( int i = 0 ; i < count ; ++i ) {
+            smoothed[i] = activities[ flushedStates[i] ];
+        }
+        return count;
+    }
+
+    /** Gets the activities (the model's state order). */
+    public List< UserActivities > getActivities() {
+        return Collections.unmodifiableList( Arrays.asList( activities ) );
+    }
+
+    /**
+       Learns an activity model from the ground truth of logged sessions.
+
+       <p> The states are the activities that can be labelled (not the
+       Confirm button, nor a correction).
+
+       @param  hopMillis  Time between two classifier windows (millisec)
+     */
+    public static ActivityHmm learn( List< GroundTruthIndex > sessions ,
+                                     long hopMillis ) {
+        List< String > names = new ArrayList< String >();
+        for( UserActivities activity : UserActivities.values() ) {
+            if( GroundTruthIndex.isActivity( activity.name() ) ) {
+                names.add( activity.name() );
+            }
+        }
+        ActivityHmm.Counts counts = new ActivityHmm.Counts( names , hopMillis );
+        for( GroundTruthIndex index : sessions ) {
+            counts.addSession( index );
+        }
+        return counts.toHmm();
+    }
+
+    /**
+       Learns an activity model from the session log folders, reading the
+       label index of each session (see {@link GroundTruthIndex#readSession}).
+     */
+    public static ActivityHmm learn( File[] sessionFolders ,
+                                     long hopMillis )
+        throws IOException {
+        List< GroundTruthIndex > sessions = new ArrayList< GroundTruthIndex >();
+        for( File sessionFolder : sessionFolders ) {
+            sessions.add( GroundTruthIndex.readSession( sessionFolder ) );
+        }
+        return learn( sessions , hopMillis );
+    }
+
+    /** Shared smoother. */
+    private final ViterbiSmoother smoother;
+    /** Activity of each state. */
+    private final UserActivities[] activities;
+    /** Probabilities of a hard prediction (preallocated). */
+    private final float[] probabilities;
+    /** States of the windows flushed at the end of a session (preallocated). */
+    private final int[] flushedStates;
+}
@@ -0,0 +1,153 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import android.os.*;
+import android.view.*;
+
+import com.cs4222.khuthia.sensormetrics.*;
+
+/**
+   Drains a subscription's real-time display updates once per GUI frame.
+
+   <p> On Jelly Bean and above, this is driven by the vsync signal
+   (using the {@code Choreographer}), otherwise by a handler posting
+   every {@link #FALLBACK_FRAME_INTERVAL} millisec. The refresh rate
+   can be capped further using the minimum refresh interval. So, no
+   matter how many sensors update their displays, the GUI is refreshed
+   at most once per frame.
+
+   <p> All methods must be called from the GUI thread.
+ */
+public class DisplayRefresher {
+
+    /**
+       Creates a display refresher.
+
+       @param  subscription        Subscription to drain
+       @param  minRefreshInterval  Minimum time between refreshes (millisec),
+                                   0 to refresh on every frame
+     */
+    public DisplayRefresher( RealTimeDisplay.Subscription subscription ,
+                             long minRefreshInterval ) {
+        this.subscription = subscription;
+        this.minRefreshInterval = minRefreshInterval;
+    }
+
+    /** Starts refreshing the displays (e.g. when the activity is resumed). */
+    public void start() {
+
+        // Check if already running
+        if( isRunning )
+            return;
+        isRunning = true;
+
+        // Refresh immediately, and then on every frame
+        refresh();
+        scheduleNextFrame();
+    }
+
+    /** Stops refreshing the displays (e.g. when the activity is paused). */
+    public void stop() {
+
+        // Check if already stopped
+        if( ! isRunning )
+            return;
+        isRunning = false;
+
+        // Remove the pending frame callback
+        if( frameCallback != null ) {
+            frameCallback.cancel();
+        }
+        else {
+            handler.removeCallbacks( fallbackCallback );
+        }
+    }
+
+    /** Helper method that drains the display updates (if the refresh is not capped). */
+    private void refresh() {
+        long currentTime = SystemClock.uptimeMillis();
+        if( currentTime - lastRefreshTime < minRefreshInterval ) {
+            return;
+        }
+        lastRefreshTime = currentTime;
+        long startNanos = refreshTimer.start();
+        long beginNanos = tracer.begin();
+        subscription.drainUpdates( currentTime );
+        tracer.end( SPAN_REFRESH , beginNanos );
+        refreshTimer.stop( startNanos );
+    }
+
+    /** Helper method to schedule the refresh for the next frame. */
+    private void scheduleNextFrame() {
+        if( frameCallback != null ) {
+            frameCallback.post();
+        }
+        else {
+            handler.postDelayed( fallbackCallback , FALLBACK_FRAME_INTERVAL );
+        }
+    }
+
+    /** Called on every frame (vsync). */
+    private void onFrame() {
+        if( ! isRunning )
+            return;
+        refresh();
+        scheduleNextFrame();
+    }
+
+    /**
+       Vsync frame callback.
+
+       <p> This is a separate class so that it is loaded only on devices
+       where the Choreographer is available.
+     */
+    private class VsyncCallback
+        implements Choreographer.FrameCallback {
+
+        /** Posts this callback for the next frame. */
+        void post() {
+            Choreographer.getInstance().postFrameCallback( this );
+        }
+
+        /** Removes this callback. */
+        void cancel() {
+            Choreographer.getInstance().removeFrameCallback( this );
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void doFrame( long frameTimeNanos ) {
+            onFrame();
+        }
+    }
+
+    /** Vsync frame callback (null if the Choreographer is not available). */
+    private final VsyncCallback frameCallback =
+        ( Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? new VsyncCallback() : null );
+    /** Handler to the GUI thread (used if the Choreographer is not available). */
+    private final Handler handler = new Handler();
+    /** Frame callback used if the Choreographer is not available. */
+    private final Runnable fallbackCallback = new Runnable() {
+            @Override
+            public void run() {
+                onFrame();
+            }
+        };
+
+    /** Subscription to drain. */
+    private final RealTimeDisplay.Subscription subscription;
+    /** Minimum time between refreshes (millisec). */
+    private final long minRefreshInterval;
+    /** Time of the last refresh (millisec, uptime). */
+    private long lastRefreshTime = 0L;
+    /** Flag to indicate that the refresher is running. */
+    private boolean isRunning = false;
+
+    /** Time to drain the updates (the GUI work of a frame). */
+    private static final LatencyTimer refreshTimer = MetricsRegistry.getDefault().timer( "display.refresh" );
+    /** Trace span of a refresh. */
+    private static final SpanTracer tracer = SpanTracer.getDefault();
+    private static final int SPAN_REFRESH = tracer.span( "display.refresh" );
+
+    /** Frame interval if vsync is not available (millisec), ~60 fps. */
+    private static final long FALLBACK_FRAME_INTERVAL = 16L;
+}
@@ -0,0 +1,57 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+/**
+   Static template used to format numeric real-time display values.
+
+   <p> A template is a list of labels, one per value. For example,
+   the labels {"x: ", "y: ", "z: "} format the values (1, 2, 3) as
+   "x: 1.0\ny: 2.0\nz: 3.0\n".
+
+   <p> Templates are created once (e.g. as constants), so that the
+   service can update a display with just the float values, and the
+   text is built only when the GUI actually shows it.
+ */
+public final class DisplayTemplate {
+
+    /** Creates a template with one label per value. */
+    public DisplayTemplate( String... labels ) {
+        if( labels.length == 0 || labels.length > MAX_VALUES ) {
+            throw new IllegalArgumentException( "A display template needs 1 to " +
+                                                MAX_VALUES + " labels" );
+        }
+        this.labels = labels.clone();
+
+        // Pre-build the text shown when there are no values yet
+        StringBuilder sb = new StringBuilder();
+        for( String label : labels ) {
+            sb.append( label ).append( '\n' );
+        }
+        emptyText = sb.toString();
+    }
+
+    /** Gets the number of values in this template. */
+    public int getNumValues() {
+        return labels.length;
+    }
+
+    /** Gets the text shown when there are no values yet (e.g. "x: \ny: \nz: \n"). */
+    public String getEmptyText() {
+        return emptyText;
+    }
+
+    /** Appends the formatted values to the string builder. */
+    public void format( float[] values ,
+                        StringBuilder sb ) {
+        for( int i = 0 ; i < labels.length ; ++i ) {
+            sb.append( labels[i] ).append( values[i] ).append( '\n' );
+        }
+    }
+
+    /** Labels, one per value. */
+    private final String[] labels;
+    /** Text shown when there are no values yet. */
+    private final String emptyText;
+
+    /** Maximum number of values in a template. */
+    public static final int MAX_VALUES = 4;
+}
@@ -2,10 +2,11 @@ package com.cs4222.khuthia.sensorlogapp;
 
 import java.io.*;
 import java.util.*;
-import java.text.*;
 import android.util.*;
 import android.os.*;
 
+import com.cs4222.khuthia.sensormetrics.*;
+
 /**
    Responsible for logging to the sdcard.
  */
@@ -23,16 +24,12 @@ public class FileLogger {
         // Open a file for logging
 
         // First, check if the sdcard is available for writing
-        String externalStorageState = Environment.getExternalStorageState();
-        if ( ! externalStorageState.equals ( Environment.MEDIA_MOUNTED ) &&
-             ! externalStorageState.equals ( Environment.MEDIA_SHARED ) ) {
+        //  (unless the logs go to another folder)
+        File logDirectory = getLogDirectory();
+        if ( logDirectory == null )
             throw new IOException ( "External storage is not mounted" );
-        }
 
         // Second, create the log directory
-        File logDirectory = 
-            new File( Environment.getExternalStorageDirectory() , 
-                      logDirectoryPath );
         logDirectory.mkdirs();
         if ( ! logDirectory.isDirectory() )
             throw new IOException( "Unable to create log directory" );
@@ -46,8 +43,7 @@ public class FileLogger {
 
         // Fourth, create an output stream for the log file (not APPEND MODE!!)
         logFile = new File( logSubFolder , logFileName );
-        FileOutputStream fout = new FileOutputStream( logFile ); // , true );
-        logFileOut = new PrintWriter( fout );
+        logFileOut = new FileOutputStream( logFile ); // , true );
     }
 
     /** Helper method that closes the log file. */
@@ -68,39 +64,169 @@ public class FileLogger {
         }
     }
 
+    /** Sets the folder the logs are written to (null for the 'SensorLogApp' folder on the sdcard, the default). */
+    public static void setLogDirectory( File directory ) {
+        logDirectoryOverride = directory;
+    }
+
+    /** Gets the folder the logs are written to (null if the sdcard is not mounted). */
+    public static File getLogDirectory() {
+        File logDirectory = logDirectoryOverride;
+        if ( logDirectory == null ) {
+            String externalStorageState = Environment.getExternalStorageState();
+            if ( ! externalStorageState.equals ( Environment.MEDIA_MOUNTED ) &&
+                 ! externalStorageState.equals ( Environment.MEDIA_SHARED ) ) {
+                return null;
+            }
+            logDirectory = 
+                new File( Environment.getExternalStorageDirectory() , 
+                          logDirectoryPath );
+        }
+        return logDirectory;
+    }
+
     /** Helper method to log an event. */
     public void logEvent( String event ) {
+        long startNanos = writeTimer.start();
+        long beginNanos = tracer.begin();
+        startLine().append( event );
+        writeLine( startNanos , beginNanos );
+    }
+
+    /** Helper method to log a reading of one value (e.g. light), without a String per line. */
+    public void logEvent( float value , 
+                          int accuracy ) {
+        long startNanos = writeTimer.start();
+        long beginNanos = tracer.begin();
+        startLine().append( value ).append( ',' ).append( accuracy );
+        writeLine( startNanos , beginNanos );
+    }
+
+    /** Helper method to log a reading of two values (e.g. pressure and altitude), without a String per line. */
+    public void logEvent( float x , float y , 
+                          int accuracy ) {
+        long startNanos = writeTimer.start();
+        long beginNanos = tracer.begin();
+        startLine().append( x ).append( ',' ).append( y ).append( ',' ).append( accuracy );
+        writeLine( startNanos , beginNanos );
+    }
+
+    /** Helper method to log a reading of three values (e.g. accl), without a String per line. */
+    public void logEvent( float x , float y , float z , 
+                          int accuracy ) {
+        long startNanos = writeTimer.start();
+        long beginNanos = tracer.begin();
+        startLine().append( x ).append( ',' ).append( y ).append( ',' ).append( z ).append( ',' ).append( accuracy );
+        writeLine( startNanos , beginNanos );
+    }
+
+    /** Helper method to log a reading of four values (e.g. a rotation vector), without a String per line. */
+    public void logEvent( float x , float y , float z , float scalar , 
+                          int accuracy ) {
+        long startNanos = writeTimer.start();
+        long beginNanos = tracer.begin();
+        startLine().append( x ).append( ',' ).append( y ).append( ',' ).append( z ).append( ',' )
+            .append( scalar ).append( ',' ).append( accuracy );
+        writeLine( startNanos , beginNanos );
+    }
+
+    /** Helper method to log the values of two arrays (e.g. a quaternion and its Euler angles), without a String per line. */
+    public void logEvent( float[] values , 
+                          float[] moreValues ) {
+        long startNanos = writeTimer.start();
+        long beginNanos = tracer.begin();
+        StringBuilder sb = startLine();
+        for( int i = 0 ; i < values.length ; ++i ) {
+            if( i > 0 ) {
+                sb.append( ',' );
+            }
+            sb.append( values[i] );
+        }
+        for( int i = 0 ; i < moreValues.length ; ++i ) {
+            sb.append( ',' ).append( moreValues[i] );
+        }
+        writeLine( startNanos , beginNanos );
+    }
+
+    /** Helper method that starts a line with the current timestamp (re-using the line builder). */
+    private StringBuilder startLine() {
+
+        // Get the current timestamp (the human-readable time is
+        //  formatted once a second, not per line, into a re-used buffer)
+        StringBuilder sb = lineBuilder;
+        sb.setLength( 0 );
+        long currentTime = System.currentTimeMillis();
+        timeWriter.appendHumanReadableTime( sb , currentTime );
+        sb.append( "," );
+        sb.append( currentTime );
+        sb.append( "," );
+        return sb;
+    }
+
+    /** Helper method that writes the line built (and flushes it). */
+    private void writeLine( long startNanos , 
+                            long beginNanos ) {
         try {
 
-            // Get the current timestamp
-            StringBuilder sb = new StringBuilder();
-            long currentTime = System.currentTimeMillis();
-            sb.append( sdf.format( new Date( currentTime ) ) );
-            sb.append( "," );
-            sb.append( currentTime );
-
-            // Log to a file (don't forget to flush it!)
-            sb.append( "," );
-            sb.append( event );
-            logFileOut.println( sb.toString() );
-            logFileOut.flush();
+            // Encode the line (the readings are ASCII, so the bytes are written
+            //  without a Writer, which wraps its chars in a new buffer per flush)
+            StringBuilder sb = lineBuilder;
+            int length = sb.length();
+            if( lineBytes.length < length + 1 ) {
+                lineBytes = new byte[ Math.max( length + 1 , lineBytes.length * 2 ) ];
+            }
+            byte[] bytes = lineBytes;
+            for( int i = 0 ; i < length ; ++i ) {
+                char c = sb.charAt( i );
+                if( c >= 0x80 ) {
+                    // Not ASCII (e.g. a String event), encode the whole line
+                    bytes = sb.toString().getBytes( "UTF-8" );
+                    bytes = Arrays.copyOf( bytes , bytes.length + 1 );
+                    length = bytes.length - 1;
+                    break;
+                }
+                bytes[i] = (byte) c;
+            }
+            bytes[ length ] = '\n';
+            tracer.end( SPAN_FORMAT , beginNanos );
+
+            // Log to a file (unbuffered, so each line is on the sdcard once logged)
+            beginNanos = tracer.begin();
+            logFileOut.write( bytes , 0 , length + 1 );
+            tracer.end( SPAN_WRITE , beginNanos );
         }
         catch ( Exception e ) {
             // Log the exception
             Log.e( TAG , "logEvent(): Exception while logging event" , e );
         }
+        writeTimer.stop( startNanos );
     }
 
     /** Full Path of log file. */
     public File logFile = null;
     /** Log file's output stream. */
-    public PrintWriter logFileOut = null;
+    public OutputStream logFileOut = null;
+
+    /**
+       Line being logged, and its bytes written to the file (re-used,
+       since a logger is written from one thread: the sensor callbacks').
+     */
+    private final StringBuilder lineBuilder = new StringBuilder();
+    private byte[] lineBytes = new byte[ 128 ];
+    /** Formats the human-readable time of the lines. */
+    private final LogLineWriter timeWriter = new LogLineWriter();
 
     /** Relative Path of logging directory. */
     private static final String logDirectoryPath = "SensorLogApp";
-
-    /** To format the UNIX millis time as a human-readable string. */
-    private static final SimpleDateFormat sdf = new SimpleDateFormat( "yyyy-MM-dd-h-mm-ssa" );
+    /** Logging directory used instead of the sdcard (e.g. by the JVM tests), null if not set. */
+    private static volatile File logDirectoryOverride = null;
+
+    /** Time to format and write a log line (of all the log files). */
+    private static final LatencyTimer writeTimer = MetricsRegistry.getDefault().timer( "log.write" );
+    /** Trace spans of formatting a log line, and of writing (and flushing) it. */
+    private static final SpanTracer tracer = SpanTracer.getDefault();
+    private static final int SPAN_FORMAT = tracer.span( "log.format" );
+    private static final int SPAN_WRITE = tracer.span( "log.write" );
 
     /** TAG used for ddms logging. */
     private static final String TAG = "SensorLogApp";
@@ -0,0 +1,133 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.util.*;
+
+/**
+   Decimates the samples in a plot buffer to a min and max value per
+   pixel column.
+
+   <p> Drawing a vertical line from the min to the max of each column
+   looks the same as drawing every sample (spikes are never lost), but
+   the drawing cost depends only on the plot width, not on the
+   sensor sampling rate.
+
+   <p> The output arrays are allocated once, so decimating does not
+   allocate anything. Columns without any samples are NaN.
+ */
+public class MinMaxDecimator {
+
+    /** Creates a decimator for the given number of channels and max columns (pixels). */
+    public MinMaxDecimator( int numChannels ,
+                            int maxColumns ) {
+        this.maxColumns = maxColumns;
+        mins = new float[ numChannels ][ maxColumns ];
+        maxs = new float[ numChannels ][ maxColumns ];
+    }
+
+    /**
+       Decimates the samples in the time range [startTime, endTime) into columns.
+
+       @return  Number of samples decimated
+     */
+    public int decimate( PlotBuffer buffer ,
+                         long startTime ,
+                         long endTime ,
+                         int numColumns ) {
+
+        // Validity checks
+        if( numColumns > maxColumns ) {
+            throw new IllegalArgumentException( "Too many columns: " + numColumns +
+                                                " (max " + maxColumns + ")" );
+        }
+        int numChannels = Math.min( mins.length , buffer.getNumChannels() );
+        this.numColumns = numColumns;
+
+        // Clear the columns
+        for( int channel = 0 ; channel < numChannels ; ++channel ) {
+            Arrays.fill( mins[ channel ] , 0 , numColumns , Float.NaN );
+            Arrays.fill( maxs[ channel ] , 0 , numColumns , Float.NaN );
+        }
+        minValue = Float.POSITIVE_INFINITY;
+        maxValue = Float.NEGATIVE_INFINITY;
+        if( endTime <= startTime || numColumns <= 0 ) {
+            return 0;
+        }
+
+        // Range of samples that are safe to read (the oldest ones may be overwritten)
+        long lastSample = buffer.getWriteCount();
+        long firstSample = Math.max( 0L , lastSample - buffer.getCapacity() + buffer.getSafetyMargin() );
+        long[] timestamps = buffer.getTimestamps();
+        double columnsPerMilli = (double) numColumns / ( endTime - startTime );
+
+        // Go through the samples (oldest first), and update the min/max of their columns
+        int numSamples = 0;
+        for( long sample = firstSample ; sample < lastSample ; ++sample ) {
+            int index = buffer.getIndex( sample );
+            long timestamp = timestamps[ index ];
+            if( timestamp < startTime || timestamp >= endTime ) {
+                continue;
+            }
+            int column = (int) ( ( timestamp - startTime ) * columnsPerMilli );
+            if( column >= numColumns ) {
+                column = numColumns - 1;
+            }
+            for( int channel = 0 ; channel < numChannels ; ++channel ) {
+                float value = buffer.getValues( channel )[ index ];
+                float[] channelMins = mins[ channel ] , channelMaxs = maxs[ channel ];
+                // NOTE: The NaN check is written as !(a <= b) so that empty columns are filled
+                if( ! ( channelMins[ column ] <= value ) ) {
+                    channelMins[ column ] = value;
+                }
+                if( ! ( channelMaxs[ column ] >= value ) ) {
+                    channelMaxs[ column ] = value;
+                }
+                if( value < minValue ) {
+                    minValue = value;
+                }
+                if( value > maxValue ) {
+                    maxValue = value;
+                }
+            }
+            ++numSamples;
+        }
+        return numSamples;
+    }
+
+    /** Gets the per-column min values of a channel (NaN if the column has no samples). */
+    public float[] getMins( int channel ) {
+        return mins[ channel ];
+    }
+
+    /** Gets the per-column max values of a channel (NaN if the column has no samples). */
+    public float[] getMaxs( int channel ) {
+        return maxs[ channel ];
+    }
+
+    /** Gets the number of columns of the last decimation. */
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /** Gets the min value over all channels and columns (+infinity if there were no samples). */
+    public float getMinValue() {
+        return minValue;
+    }
+
+    /** Gets the max value over all channels and columns (-infinity if there were no samples). */
+    public float getMaxValue() {
+        return maxValue;
+    }
+
+    /** Max number of columns. */
+    private final int maxColumns;
+    /** Per-column min values, one array per channel. */
+    private final float[][] mins;
+    /** Per-column max values, one array per channel. */
+    private final float[][] maxs;
+    /** Number of columns of the last decimation. */
+    private int numColumns;
+    /** Min value of the last decimation. */
+    private float minValue;
+    /** Max value of the last decimation. */
+    private float maxValue;
+}
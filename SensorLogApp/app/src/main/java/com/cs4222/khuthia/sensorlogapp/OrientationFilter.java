@@ -0,0 +1,301 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+/**
+   Quaternion orientation filter that fuses gyroscope, accelerometer
+   and (optionally) magnetometer readings.
+
+   <p> This is Madgwick's gradient descent filter: the gyro rate is
+   integrated into the orientation quaternion, and the accl/magnetic
+   readings pull the estimate back towards the measured gravity and
+   earth magnetic field directions. The {@code gain} (beta) decides how
+   strongly they pull (larger gain means faster convergence, but more
+   accl noise in the output).
+
+   <p> The filter only uses primitive fields, so an update does not
+   allocate anything, and the same input always gives the same output
+   (so it can be tested on the JVM against recorded traces).
+
+   <p> Units are the same as the Android sensors: gyro in rad/sec,
+   accl in m/sec^2 and magnetic field in micro Tesla. The accl and
+   magnetic vectors are normalised, so only their direction matters.
+ */
+public class OrientationFilter {
+
+    /** Creates a filter with the specified gain (beta). */
+    public OrientationFilter( float gain ) {
+        setGain( gain );
+        reset();
+    }
+
+    /** Resets the orientation to the identity quaternion. */
+    public void reset() {
+        q0 = 1.0F;
+        q1 = q2 = q3 = 0.0F;
+    }
+
+    /** Sets the filter gain (beta). */
+    public void setGain( float gain ) {
+        if( gain < 0.0F ) {
+            throw new IllegalArgumentException( "Filter gain must not be negative: " + gain );
+        }
+        this.gain = gain;
+    }
+
+    /** Gets the filter gain (beta). */
+    public float getGain() {
+        return gain;
+    }
+
+    /**
+       Updates the orientation using gyro, accl and magnetic readings.
+
+       @param  dt  Time since the previous update (sec)
+     */
+    public void update( float gx , float gy , float gz ,
+                        float ax , float ay , float az ,
+                        float mx , float my , float mz ,
+                        float dt ) {
+
+        // If the magnetic reading is invalid, then fall back to the IMU update
+        if( mx == 0.0F && my == 0.0F && mz == 0.0F ) {
+            update( gx , gy , gz , ax , ay , az , dt );
+            return;
+        }
+
+        // Rate of change of quaternion from the gyro
+        float qDot1 = 0.5F * ( -q1 * gx - q2 * gy - q3 * gz );
+        float qDot2 = 0.5F * ( q0 * gx + q2 * gz - q3 * gy );
+        float qDot3 = 0.5F * ( q0 * gy - q1 * gz + q3 * gx );
+        float qDot4 = 0.5F * ( q0 * gz + q1 * gy - q2 * gx );
+
+        // Apply the feedback only if the accl reading is valid
+        if( ! ( ax == 0.0F && ay == 0.0F && az == 0.0F ) ) {
+
+            // Normalise the accl and magnetic readings
+            float recipNorm = invSqrt( ax * ax + ay * ay + az * az );
+            ax *= recipNorm;
+            ay *= recipNorm;
+            az *= recipNorm;
+            recipNorm = invSqrt( mx * mx + my * my + mz * mz );
+            mx *= recipNorm;
+            my *= recipNorm;
+            mz *= recipNorm;
+
+            // Auxiliary variables to avoid repeated arithmetic
+            float _2q0mx = 2.0F * q0 * mx;
+            float _2q0my = 2.0F * q0 * my;
+            float _2q0mz = 2.0F * q0 * mz;
+            float _2q1mx = 2.0F * q1 * mx;
+            float _2q0 = 2.0F * q0;
+            float _2q1 = 2.0F * q1;
+            float _2q2 = 2.0F * q2;
+            float _2q3 = 2.0F * q3;
+            float _2q0q2 = 2.0F * q0 * q2;
+            float _2q2q3 = 2.0F * q2 * q3;
+            float q0q0 = q0 * q0;
+            float q0q1 = q0 * q1;
+            float q0q2 = q0 * q2;
+            float q0q3 = q0 * q3;
+            float q1q1 = q1 * q1;
+            float q1q2 = q1 * q2;
+            float q1q3 = q1 * q3;
+            float q2q2 = q2 * q2;
+            float q2q3 = q2 * q3;
+            float q3q3 = q3 * q3;
+
+            // Reference direction of the earth's magnetic field
+            float hx = mx * q0q0 - _2q0my * q3 + _2q0mz * q2 + mx * q1q1 +
+                _2q1 * my * q2 + _2q1 * mz * q3 - mx * q2q2 - mx * q3q3;
+            float hy = _2q0mx * q3 + my * q0q0 - _2q0mz * q1 + _2q1mx * q2 -
+                my * q1q1 + my * q2q2 + _2q2 * mz * q3 - my * q3q3;
+            float _2bx = (float) Math.sqrt( hx * hx + hy * hy );
+            float _2bz = -_2q0mx * q2 + _2q0my * q1 + mz * q0q0 + _2q1mx * q3 -
+                mz * q1q1 + _2q2 * my * q3 - mz * q2q2 + mz * q3q3;
+            float _4bx = 2.0F * _2bx;
+            float _4bz = 2.0F * _2bz;
+
+            // Gradient descent corrective step
+            float s0 = -_2q2 * ( 2.0F * q1q3 - _2q0q2 - ax ) +
+                _2q1 * ( 2.0F * q0q1 + _2q2q3 - ay ) -
+                _2bz * q2 * ( _2bx * ( 0.5F - q2q2 - q3q3 ) + _2bz * ( q1q3 - q0q2 ) - mx ) +
+                ( -_2bx * q3 + _2bz * q1 ) * ( _2bx * ( q1q2 - q0q3 ) + _2bz * ( q0q1 + q2q3 ) - my ) +
+                _2bx * q2 * ( _2bx * ( q0q2 + q1q3 ) + _2bz * ( 0.5F - q1q1 - q2q2 ) - mz );
+            float s1 = _2q3 * ( 2.0F * q1q3 - _2q0q2 - ax ) +
+                _2q0 * ( 2.0F * q0q1 + _2q2q3 - ay ) -
+                4.0F * q1 * ( 1 - 2.0F * q1q1 - 2.0F * q2q2 - az ) +
+                _2bz * q3 * ( _2bx * ( 0.5F - q2q2 - q3q3 ) + _2bz * ( q1q3 - q0q2 ) - mx ) +
+                ( _2bx * q2 + _2bz * q0 ) * ( _2bx * ( q1q2 - q0q3 ) + _2bz * ( q0q1 + q2q3 ) - my ) +
+                ( _2bx * q3 - _4bz * q1 ) * ( _2bx * ( q0q2 + q1q3 ) + _2bz * ( 0.5F - q1q1 - q2q2 ) - mz );
+            float s2 = -_2q0 * ( 2.0F * q1q3 - _2q0q2 - ax ) +
+                _2q3 * ( 2.0F * q0q1 + _2q2q3 - ay ) -
+                4.0F * q2 * ( 1 - 2.0F * q1q1 - 2.0F * q2q2 - az ) +
+                ( -_4bx * q2 - _2bz * q0 ) * ( _2bx * ( 0.5F - q2q2 - q3q3 ) + _2bz * ( q1q3 - q0q2 ) - mx ) +
+                ( _2bx * q1 + _2bz * q3 ) * ( _2bx * ( q1q2 - q0q3 ) + _2bz * ( q0q1 + q2q3 ) - my ) +
+                ( _2bx * q0 - _4bz * q2 ) * ( _2bx * ( q0q2 + q1q3 ) + _2bz * ( 0.5F - q1q1 - q2q2 ) - mz );
+            float s3 = _2q1 * ( 2.0F * q1q3 - _2q0q2 - ax ) +
+                _2q2 * ( 2.0F * q0q1 + _2q2q3 - ay ) +
+                ( -_4bx * q3 + _2bz * q1 ) * ( _2bx * ( 0.5F - q2q2 - q3q3 ) + _2bz * ( q1q3 - q0q2 ) - mx ) +
+                ( -_2bx * q0 + _2bz * q2 ) * ( _2bx * ( q1q2 - q0q3 ) + _2bz * ( q0q1 + q2q3 ) - my ) +
+                _2bx * q1 * ( _2bx * ( q0q2 + q1q3 ) + _2bz * ( 0.5F - q1q1 - q2q2 ) - mz );
+
+            // Apply the feedback step (only if the gradient is non-zero)
+            float sNorm = s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3;
+            if( sNorm > 0.0F ) {
+                recipNorm = invSqrt( sNorm );
+                qDot1 -= gain * s0 * recipNorm;
+                qDot2 -= gain * s1 * recipNorm;
+                qDot3 -= gain * s2 * recipNorm;
+                qDot4 -= gain * s3 * recipNorm;
+            }
+        }
+
+        // Integrate the rate of change of quaternion
+        integrate( qDot1 , qDot2 , qDot3 , qDot4 , dt );
+    }
+
+    /**
+       Updates the orientation using only gyro and accl readings (no heading correction).
+
+       @param  dt  Time since the previous update (sec)
+     */
+    public void update( float gx , float gy , float gz ,
+                        float ax , float ay , float az ,
+                        float dt ) {
+
+        // Rate of change of quaternion from the gyro
+        float qDot1 = 0.5F * ( -q1 * gx - q2 * gy - q3 * gz );
+        float qDot2 = 0.5F * ( q0 * gx + q2 * gz - q3 * gy );
+        float qDot3 = 0.5F * ( q0 * gy - q1 * gz + q3 * gx );
+        float qDot4 = 0.5F * ( q0 * gz + q1 * gy - q2 * gx );
+
+        // Apply the feedback only if the accl reading is valid
+        if( ! ( ax == 0.0F && ay == 0.0F && az == 0.0F ) ) {
+
+            // Normalise the accl reading
+            float recipNorm = invSqrt( ax * ax + ay * ay + az * az );
+            ax *= recipNorm;
+            ay *= recipNorm;
+            az *= recipNorm;
+
+            // Auxiliary variables to avoid repeated arithmetic
+            float _2q0 = 2.0F * q0;
+            float _2q1 = 2.0F * q1;
+            float _2q2 = 2.0F * q2;
+            float _2q3 = 2.0F * q3;
+            float _4q0 = 4.0F * q0;
+            float _4q1 = 4.0F * q1;
+            float _4q2 = 4.0F * q2;
+            float _8q1 = 8.0F * q1;
+            float _8q2 = 8.0F * q2;
+            float q0q0 = q0 * q0;
+            float q1q1 = q1 * q1;
+            float q2q2 = q2 * q2;
+            float q3q3 = q3 * q3;
+
+            // Gradient descent corrective step
+            float s0 = _4q0 * q2q2 + _2q2 * ax + _4q0 * q1q1 - _2q1 * ay;
+            float s1 = _4q1 * q3q3 - _2q3 * ax + 4.0F * q0q0 * q1 - _2q0 * ay -
+                _4q1 + _8q1 * q1q1 + _8q1 * q2q2 + _4q1 * az;
+            float s2 = 4.0F * q0q0 * q2 + _2q0 * ax + _4q2 * q3q3 - _2q3 * ay -
+                _4q2 + _8q2 * q1q1 + _8q2 * q2q2 + _4q2 * az;
+            float s3 = 4.0F * q1q1 * q3 - _2q1 * ax + 4.0F * q2q2 * q3 - _2q2 * ay;
+
+            // Apply the feedback step (only if the gradient is non-zero)
+            float sNorm = s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3;
+            if( sNorm > 0.0F ) {
+                recipNorm = invSqrt( sNorm );
+                qDot1 -= gain * s0 * recipNorm;
+                qDot2 -= gain * s1 * recipNorm;
+                qDot3 -= gain * s2 * recipNorm;
+                qDot4 -= gain * s3 * recipNorm;
+            }
+        }
+
+        // Integrate the rate of change of quaternion
+        integrate( qDot1 , qDot2 , qDot3 , qDot4 , dt );
+    }
+
+    /** Helper method that integrates the quaternion rate and normalises the quaternion. */
+    private void integrate( float qDot1 , float qDot2 , float qDot3 , float qDot4 ,
+                            float dt ) {
+        q0 += qDot1 * dt;
+        q1 += qDot2 * dt;
+        q2 += qDot3 * dt;
+        q3 += qDot4 * dt;
+        float recipNorm = invSqrt( q0 * q0 + q1 * q1 + q2 * q2 + q3 * q3 );
+        q0 *= recipNorm;
+        q1 *= recipNorm;
+        q2 *= recipNorm;
+        q3 *= recipNorm;
+    }
+
+    /** Gets the orientation quaternion as (w, x, y, z) into the given array. */
+    public void getQuaternion( float[] quaternion ) {
+        quaternion[0] = q0;
+        quaternion[1] = q1;
+        quaternion[2] = q2;
+        quaternion[3] = q3;
+    }
+
+    /** Gets the euler angles as (roll, pitch, yaw) in degrees into the given array. */
+    public void getEulerAngles( float[] angles ) {
+        angles[0] = getRoll();
+        angles[1] = getPitch();
+        angles[2] = getYaw();
+    }
+
+    /** Gets the roll (rotation about x-axis) in degrees. */
+    public float getRoll() {
+        return (float) Math.toDegrees( Math.atan2( q0 * q1 + q2 * q3 ,
+                                                   0.5F - q1 * q1 - q2 * q2 ) );
+    }
+
+    /** Gets the pitch (rotation about y-axis) in degrees. */
+    public float getPitch() {
+        float sinPitch = -2.0F * ( q1 * q3 - q0 * q2 );
+        // Clamp to avoid NaN near +-90 degrees
+        if( sinPitch > 1.0F ) {
+            sinPitch = 1.0F;
+        }
+        else if( sinPitch < -1.0F ) {
+            sinPitch = -1.0F;
+        }
+        return (float) Math.toDegrees( Math.asin( sinPitch ) );
+    }
+
+    /** Gets the yaw (rotation about z-axis) in degrees. */
+    public float getYaw() {
+        return (float) Math.toDegrees( Math.atan2( q1 * q2 + q0 * q3 ,
+                                                   0.5F - q2 * q2 - q3 * q3 ) );
+    }
+
+    /** Gets the w (scalar) component of the quaternion. */
+    public float getQ0() {
+        return q0;
+    }
+
+    /** Gets the x component of the quaternion. */
+    public float getQ1() {
+        return q1;
+    }
+
+    /** Gets the y component of the quaternion. */
+    public float getQ2() {
+        return q2;
+    }
+
+    /** Gets the z component of the quaternion. */
+    public float getQ3() {
+        return q3;
+    }
+
+    /** Helper method that calculates 1/sqrt(x). */
+    private static float invSqrt( float x ) {
+        return (float) ( 1.0 / Math.sqrt( x ) );
+    }
+
+    /** Orientation quaternion (w, x, y, z) of the sensor frame relative to the earth frame. */
+    private float q0 , q1 , q2 , q3;
+    /** Filter gain (beta). */
+    private float gain;
+}
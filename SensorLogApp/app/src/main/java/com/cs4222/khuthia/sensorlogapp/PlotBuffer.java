@@ -0,0 +1,112 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+/**
+   Ring buffer holding the latest samples of a real-time plot.
+
+   <p> The samples are kept in primitive arrays (one timestamp array,
+   and one value array per channel), so adding a sample never
+   allocates. Once the buffer is full, the oldest samples are
+   overwritten.
+
+   <p> There must be a single writer (the sensor thread). Readers (the
+   GUI thread) may read concurrently; the write count is volatile, so a
+   reader sees every sample written before the count it read. The
+   oldest samples may be overwritten while a reader is looking at them,
+   so readers should stay {@link #getSafetyMargin()} samples away from
+   the oldest sample.
+ */
+public class PlotBuffer {
+
+    /** Creates a plot buffer with the given number of channels and capacity (samples). */
+    public PlotBuffer( int numChannels ,
+                       int capacity ) {
+        if( numChannels <= 0 || capacity <= 0 ) {
+            throw new IllegalArgumentException( "Invalid plot buffer size: " +
+                                                numChannels + " channels, " + capacity + " samples" );
+        }
+        this.capacity = capacity;
+        timestamps = new long[ capacity ];
+        values = new float[ numChannels ][ capacity ];
+    }
+
+    /** Adds a sample with one value per channel. */
+    public void add( long timestamp ,
+                     float[] sampleValues ) {
+        int index = (int) ( writeCount % capacity );
+        timestamps[ index ] = timestamp;
+        for( int channel = 0 ; channel < values.length ; ++channel ) {
+            values[ channel ][ index ] = sampleValues[ channel ];
+        }
+        // Publish the sample (must be the last write)
+        writeCount = writeCount + 1;
+    }
+
+    /** Adds a sample to a 3-channel buffer. */
+    public void add( long timestamp ,
+                     float value0 ,
+                     float value1 ,
+                     float value2 ) {
+        int index = (int) ( writeCount % capacity );
+        timestamps[ index ] = timestamp;
+        values[0][ index ] = value0;
+        values[1][ index ] = value1;
+        values[2][ index ] = value2;
+        // Publish the sample (must be the last write)
+        writeCount = writeCount + 1;
+    }
+
+    /** Gets the number of channels. */
+    public int getNumChannels() {
+        return values.length;
+    }
+
+    /** Gets the capacity (max number of samples kept). */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Gets the total number of samples written so far. */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    /** Gets the number of oldest samples that readers should skip (may be overwritten while reading). */
+    public int getSafetyMargin() {
+        return capacity / 8;
+    }
+
+    /** Gets the timestamp of the sample with the given sequence number (write count - 1 is the latest). */
+    public long getTimestamp( long sequenceNumber ) {
+        return timestamps[ (int) ( sequenceNumber % capacity ) ];
+    }
+
+    /** Gets a value of the sample with the given sequence number. */
+    public float getValue( int channel ,
+                           long sequenceNumber ) {
+        return values[ channel ][ (int) ( sequenceNumber % capacity ) ];
+    }
+
+    /** Gets the array index of the sample with the given sequence number (for bulk reads). */
+    int getIndex( long sequenceNumber ) {
+        return (int) ( sequenceNumber % capacity );
+    }
+
+    /** Gets the raw timestamp array (for bulk reads). */
+    long[] getTimestamps() {
+        return timestamps;
+    }
+
+    /** Gets the raw value array of a channel (for bulk reads). */
+    float[] getValues( int channel ) {
+        return values[ channel ];
+    }
+
+    /** Capacity (samples). */
+    private final int capacity;
+    /** Sample timestamps (millisec). */
+    private final long[] timestamps;
+    /** Sample values, one array per channel. */
+    private final float[][] values;
+    /** Number of samples written so far (only written by the single writer). */
+    private volatile long writeCount = 0L;
+}
@@ -1,79 +1,336 @@
 package com.cs4222.khuthia.sensorlogapp;
 
 import java.util.*;
+import java.util.concurrent.*;
+
+import com.cs4222.khuthia.sensormetrics.*;
 
 /**
-   For displaying real-time sensor data on the GUI.
+   For displaying real-time sensor data on the GUI (and other subscribers).
 
-   <p> The GUI can listen for added displays and display updates
-   by registering a {@code DisplayListener} using the 
-   {@link #getDisplayList(DisplayListener)} method.
+   <p> A subscriber (the GUI, a notification ticker, a debug overlay,
+   a test harness...) listens for added displays and display updates
+   by registering a {@code DisplayListener} using the
+   {@link #subscribe(DisplayListener,Collection,long)} method, with the
+   names of the displays it needs and its max update rate.
 
-   <p> The service can add a display using the 
+   <p> The service can add a display using the
    {@link #addDisplay(String,String)} method, and update it using
    the {@link #updateDisplay(String,String)} method.
+
+   <p> For numeric displays, the service adds the display with a
+   {@link DisplayTemplate} using {@link #addDisplay(String,DisplayTemplate)},
+   and updates it with just the float values, e.g.
+   {@link #updateDisplay(String,float,float,float)}. The text is
+   formatted lazily by each subscriber, and only for displays that it
+   needs and that are visible to it. If nobody needs a display, an
+   update only stores the values.
+
+   <p> For plots, the service adds the display using
+   {@link #addPlotDisplay(String,int,long,int)}, and adds every sample
+   using {@link #updatePlot(String,long,float,float,float)}. The GUI
+   draws the {@link PlotBuffer} (see {@link SensorPlotView}).
+
+   <p> Updates are NOT passed to the listeners immediately. Each display
+   only keeps its latest text (in a volatile slot), and each subscription
+   keeps a dirty flag per display, so the sensor thread never takes a
+   lock or touches the GUI. The subscriptions are kept in a copy-on-write
+   array, so the sensor thread iterates them without locking. Each
+   subscriber calls {@link Subscription#drainUpdates(long)} at its own
+   pace (e.g. the GUI once per frame, see {@link DisplayRefresher}), and
+   its listener is called (in the subscriber's thread) only for the
+   displays that changed, at most once per min update interval.
  */
 public class RealTimeDisplay {
 
-    /** Adds a new real-time display to the GUI. */
-    public synchronized static void 
+    /** Adds a new (text) real-time display. */
+    public synchronized static void
         addDisplay( String displayName , String initialText ) {
+        addDisplay( displayName , null , initialText );
+    }
+
+    /** Adds a new numeric real-time display, formatted using the template. */
+    public synchronized static void
+        addDisplay( String displayName , DisplayTemplate template ) {
+        addDisplay( displayName , template , template.getEmptyText() );
+    }
+
+    /**
+       Adds a new real-time plot.
+
+       @param  numChannels   Number of channels (values per sample)
+       @param  windowMillis  Time window shown in the plot (millisec)
+       @param  capacity      Max number of samples kept (enough for the window at the max sampling rate)
+     */
+    public synchronized static void
+        addPlotDisplay( String displayName , int numChannels , long windowMillis , int capacity ) {
+        if( displayMap.containsKey( displayName ) ) {
+            return;
+        }
+        Display display = new Display( displayName , displays.length , null , "" );
+        display.plotBuffer = new PlotBuffer( numChannels , capacity );
+        display.plotWindowMillis = windowMillis;
+        publishDisplay( display );
+    }
+
+    /** Helper method that adds a new real-time display. */
+    private static void
+        addDisplay( String displayName , DisplayTemplate template , String initialText ) {
+
+        // If the display already exists, then just update its text
+        Display display = displayMap.get( displayName );
+        if( display != null ) {
+            updateDisplay( displayName , initialText );
+            return;
+        }
 
         // Add the display to the list of displays
-        displayMap.put( displayName , initialText );
+        publishDisplay( new Display( displayName , displays.length , template , initialText ) );
+    }
 
-        // Call the display listener
-        if( displayListener != null ) {
-            displayListener.onDisplayAdded( displayName , initialText );
+    /** Helper method that adds a fully set up display to the list of displays. */
+    private static void
+        publishDisplay( Display display ) {
+
+        // Check the limit (the per-subscription flags are fixed size arrays)
+        if( display.index >= MAX_DISPLAYS ) {
+            throw new IllegalStateException( "Too many real-time displays (max " + MAX_DISPLAYS + ")" );
+        }
+
+        // Tell the existing subscriptions whether they need this display
+        for( Subscription subscription : subscriptions ) {
+            subscription.isWanted[ display.index ] = subscription.wants( display.name );
         }
+
+        // Copy-on-write, so that the subscribers can iterate the list without locking
+        Display[] newDisplays = Arrays.copyOf( displays , displays.length + 1 );
+        newDisplays[ displays.length ] = display;
+        displayMap.put( display.name , display );
+        displays = newDisplays;
     }
 
-    /** Clears all added displays (for cleanup). */
+    /** Clears all added displays and subscriptions (for cleanup). */
     public synchronized static void
         clearDisplays() {
 
         // Clear the display list
         displayMap.clear();
-        // Clear the listener
-        displayListener = null;
+        displays = new Display[0];
+        // Clear the subscriptions
+        subscriptions = new Subscription[0];
     }
 
-    /** Updates a display's text. */
-    public synchronized static void
+    /** Updates a display's text (lock-free, can be called from any thread). */
+    public static void
         updateDisplay( String displayName , String updatedText ) {
 
-        // Update the text in the display map
-        displayMap.put( displayName , updatedText );
+        // Get the display (ignore unknown displays)
+        Display display = displayMap.get( displayName );
+        if( display == null ) {
+            return;
+        }
+
+        // Publish the latest text, and mark it for the subscribers
+        // NOTE: The text must be written before the dirty flags
+        display.text = updatedText;
+        markDirty( display );
+    }
+
+    /** Updates a numeric display with one value (lock-free, can be called from any thread). */
+    public static void
+        updateDisplay( String displayName , float value0 ) {
+        Display display = getNumericDisplay( displayName , 1 );
+        if( display == null ) {
+            return;
+        }
+        display.values[0] = value0;
+        publishValues( display );
+    }
+
+    /** Updates a numeric display with two values (lock-free, can be called from any thread). */
+    public static void
+        updateDisplay( String displayName , float value0 , float value1 ) {
+        Display display = getNumericDisplay( displayName , 2 );
+        if( display == null ) {
+            return;
+        }
+        display.values[0] = value0;
+        display.values[1] = value1;
+        publishValues( display );
+    }
+
+    /** Updates a numeric display with three values (lock-free, can be called from any thread). */
+    public static void
+        updateDisplay( String displayName , float value0 , float value1 , float value2 ) {
+        Display display = getNumericDisplay( displayName , 3 );
+        if( display == null ) {
+            return;
+        }
+        display.values[0] = value0;
+        display.values[1] = value1;
+        display.values[2] = value2;
+        publishValues( display );
+    }
+
+    /** Updates a numeric display with four values (lock-free, can be called from any thread). */
+    public static void
+        updateDisplay( String displayName , float value0 , float value1 , float value2 , float value3 ) {
+        Display display = getNumericDisplay( displayName , 4 );
+        if( display == null ) {
+            return;
+        }
+        display.values[0] = value0;
+        display.values[1] = value1;
+        display.values[2] = value2;
+        display.values[3] = value3;
+        publishValues( display );
+    }
+
+    /** Adds a sample to a 3-channel plot (lock-free, but only one thread may add to a plot). */
+    public static void
+        updatePlot( String displayName , long timestamp , float value0 , float value1 , float value2 ) {
+
+        // Get the plot (ignore unknown displays)
+        Display display = displayMap.get( displayName );
+        if( display == null || display.plotBuffer == null ) {
+            return;
+        }
+
+        // Always keep the sample (so the plot has history when the GUI comes back),
+        //  and mark the plot for redrawing by the subscribers that need it
+        display.plotBuffer.add( timestamp , value0 , value1 , value2 );
+        markDirty( display );
+    }
+
+    /** Gets the buffer of a plot display (null if it is not a plot). */
+    public static PlotBuffer
+        getPlotBuffer( String displayName ) {
+        Display display = displayMap.get( displayName );
+        return ( display == null ? null : display.plotBuffer );
+    }
+
+    /** Gets the time window of a plot display (millisec). */
+    public static long
+        getPlotWindow( String displayName ) {
+        Display display = displayMap.get( displayName );
+        return ( display == null ? 0L : display.plotWindowMillis );
+    }
+
+    /** Helper method that gets a numeric display (null if unknown or too few values). */
+    private static Display
+        getNumericDisplay( String displayName , int numValues ) {
+        Display display = displayMap.get( displayName );
+        if( display == null ||
+            display.template == null ||
+            display.template.getNumValues() != numValues ) {
+            return null;
+        }
+        return display;
+    }
+
+    /** Helper method that publishes newly written values of a numeric display. */
+    private static void
+        publishValues( Display display ) {
+
+        // Clear any text, the values are formatted only when a subscriber
+        //  (or getDisplayText) asks for them
+        display.text = null;
+        markDirty( display );
+    }
+
+    /** Helper method that marks a display as changed for the subscribers that need it. */
+    private static void
+        markDirty( Display display ) {
+
+        updateCounter.increment();
+        long beginNanos = tracer.begin();
 
-        // Call the display listener
-        if( displayListener != null ) {
-            displayListener.onDisplayUpdated( displayName , updatedText );
+        // NOTE: Subscribers that do not need this display are filtered out here,
+        //       so no formatting work is ever done for them
+        int index = display.index;
+        for( Subscription subscription : subscriptions ) {
+            if( subscription.isWanted[ index ] ) {
+                subscription.isDirty[ index ] = true;
+                // Publish the flag (must be the last write)
+                subscription.hasPendingUpdates = true;
+            }
         }
+        tracer.end( SPAN_UPDATE , beginNanos );
     }
 
-    /** Gets a snapshot of the display list, and adds the listener. */
-    public synchronized static List< String > 
-        getDisplayList( DisplayListener listener ) {
+    /**
+       Subscribes a listener to real-time displays.
+
+       <p> On the subscription's first drain, the listener is told about
+       all the (needed) displays added so far.
 
-        // Add the listener
-        displayListener = listener;
+       @param  displayNames       Names of the displays needed (null for all displays)
+       @param  minUpdateInterval  Min time between two updates of the same display (millisec),
+                                  0 for no limit
+     */
+    public synchronized static Subscription
+        subscribe( DisplayListener listener , Collection< String > displayNames , long minUpdateInterval ) {
 
-        // Return a snapshot of the display list
-        return new LinkedList< String >( displayMap.keySet() );
+        // Create the subscription, and mark the displays it needs
+        Subscription subscription =
+            new Subscription( listener , displayNames , minUpdateInterval );
+        for( Display display : displays ) {
+            subscription.isWanted[ display.index ] = subscription.wants( display.name );
+        }
+
+        // Add it to the subscriptions (copy-on-write)
+        Subscription[] newSubscriptions = Arrays.copyOf( subscriptions , subscriptions.length + 1 );
+        newSubscriptions[ subscriptions.length ] = subscription;
+        subscriptions = newSubscriptions;
+        return subscription;
     }
 
-    /** Removes a display listener. */
-    public synchronized static void 
-        removeDisplayListener( DisplayListener displayListener ) {
+    /** Removes a subscription. */
+    public synchronized static void
+        unsubscribe( Subscription subscription ) {
+
+        // Copy the subscriptions, except for the removed one (copy-on-write)
+        List< Subscription > remaining =
+            new ArrayList< Subscription >( Arrays.asList( subscriptions ) );
+        if( remaining.remove( subscription ) ) {
+            subscriptions = remaining.toArray( new Subscription[ remaining.size() ] );
+        }
+    }
 
-        // Remove the listener
-        displayListener = null;
+    /** Gets a snapshot of the display list. */
+    public static List< String >
+        getDisplayList() {
+        List< String > displayList = new LinkedList< String >();
+        for( Display display : displays ) {
+            displayList.add( display.name );
+        }
+        return displayList;
     }
 
     /** Gets the text in a display. */
-    public synchronized static String 
+    public static String
         getDisplayText( String displayName ) {
-        return displayMap.get( displayName );
+        Display display = displayMap.get( displayName );
+        return ( display == null ? null : formatDisplay( display , new StringBuilder() ) );
+    }
+
+    /** Helper method that gets the text of a display (formatting the values if required). */
+    private static String
+        formatDisplay( Display display , StringBuilder sb ) {
+
+        // Check if it is a text update
+        String text = display.text;
+        if( text != null ) {
+            return text;
+        }
+
+        // Format the latest values using the template
+        // NOTE: If the producer writes while we read, the values may be a mix
+        //       of two consecutive readings, which is fine for a display
+        display.template.format( display.values , sb );
+        text = sb.toString();
+        sb.setLength( 0 );
+        return text;
     }
 
     /** Listener for real-time display additions/updates. */
@@ -84,9 +341,162 @@ public class RealTimeDisplay {
         void onDisplayUpdated( String displayName , String updatedText );
     }
 
-    /** Map of Display names {Key} ==> Displayed Text {value}. */
-    private static Map< String , String > displayMap = 
-        new LinkedHashMap< String , String >();
-    /** Listener for real-time display additions/updates. */
-    private static DisplayListener displayListener = null;
+    /**
+       A subscriber's registration for display updates.
+
+       <p> The methods must be called from the subscriber's own thread
+       (e.g. the GUI thread).
+     */
+    public static class Subscription {
+
+        /** Creates a subscription (see {@link RealTimeDisplay#subscribe}). */
+        private Subscription( DisplayListener listener ,
+                              Collection< String > displayNames ,
+                              long minUpdateInterval ) {
+            this.listener = listener;
+            this.displayNames =
+                ( displayNames == null ? null : new HashSet< String >( displayNames ) );
+            this.minUpdateInterval = minUpdateInterval;
+        }
+
+        /**
+           Passes new displays and the latest text of changed displays to the listener.
+
+           @param  currentTime  Current time (millisec), used for the rate limit
+         */
+        public void drainUpdates( long currentTime ) {
+
+            // First, tell the listener about displays added since the last drain
+            Display[] currentDisplays = displays;
+            for( int i = numNotifiedDisplays ; i < currentDisplays.length ; ++i ) {
+                Display display = currentDisplays[i];
+                if( isWanted[ display.index ] ) {
+                    isDirty[ display.index ] = false;
+                    lastUpdateTimes[ display.index ] = currentTime;
+                    listener.onDisplayAdded( display.name , formatDisplay( display , formatBuilder ) );
+                }
+            }
+            numNotifiedDisplays = currentDisplays.length;
+
+            // Second, pass only the visible displays that changed, if their rate allows
+            // NOTE: The flags are cleared before reading the text, so an update that
+            //       races with this drain is passed in the next drain (never lost)
+            if( ! hasPendingUpdates ) {
+                return;
+            }
+            hasPendingUpdates = false;
+            boolean isHeldBack = false;
+            for( Display display : currentDisplays ) {
+                int index = display.index;
+                if( ! isDirty[ index ] || isHidden[ index ] ) {
+                    continue;
+                }
+                if( currentTime - lastUpdateTimes[ index ] < minUpdateInterval ) {
+                    // Too soon, keep it dirty for a later drain
+                    isHeldBack = true;
+                    continue;
+                }
+                isDirty[ index ] = false;
+                lastUpdateTimes[ index ] = currentTime;
+                listener.onDisplayUpdated( display.name , formatDisplay( display , formatBuilder ) );
+            }
+            if( isHeldBack ) {
+                hasPendingUpdates = true;
+            }
+        }
+
+        /**
+           Sets whether a display is currently visible to this subscriber.
+
+           <p> Updates to invisible displays are not formatted or passed to the
+           listener until they become visible again.
+         */
+        public void setDisplayVisible( String displayName , boolean isVisible ) {
+            Display display = displayMap.get( displayName );
+            if( display == null || isHidden[ display.index ] == ! isVisible ) {
+                return;
+            }
+            isHidden[ display.index ] = ! isVisible;
+            // Pass any update that was held back while invisible
+            if( isVisible && isDirty[ display.index ] ) {
+                hasPendingUpdates = true;
+            }
+        }
+
+        /** Gets the listener. */
+        public DisplayListener getListener() {
+            return listener;
+        }
+
+        /** Helper method that checks if this subscription needs a display. */
+        private boolean wants( String displayName ) {
+            return ( displayNames == null || displayNames.contains( displayName ) );
+        }
+
+        /** Listener to pass the updates to. */
+        private final DisplayListener listener;
+        /** Names of the displays needed (null for all). */
+        private final Set< String > displayNames;
+        /** Min time between two updates of the same display (millisec). */
+        private final long minUpdateInterval;
+        /** Whether each display (by index) is needed (written when the display is added). */
+        private final boolean[] isWanted = new boolean[ MAX_DISPLAYS ];
+        /** Whether each display (by index) changed since it was last passed. */
+        private final boolean[] isDirty = new boolean[ MAX_DISPLAYS ];
+        /** Whether each display (by index) is currently invisible to the subscriber. */
+        private final boolean[] isHidden = new boolean[ MAX_DISPLAYS ];
+        /** Time each display (by index) was last passed (millisec). */
+        private final long[] lastUpdateTimes = new long[ MAX_DISPLAYS ];
+        /** Flag to indicate that some needed display changed since the last drain. */
+        private volatile boolean hasPendingUpdates = false;
+        /** Number of displays that the listener has been told about. */
+        private int numNotifiedDisplays = 0;
+        /** Re-used to format display values. */
+        private final StringBuilder formatBuilder = new StringBuilder();
+    }
+
+    /** Latest state of a single display. */
+    private static class Display {
+
+        /** Creates a display with some initial text. */
+        Display( String name , int index , DisplayTemplate template , String initialText ) {
+            this.name = name;
+            this.index = index;
+            this.template = template;
+            this.values = ( template == null ? null : new float[ template.getNumValues() ] );
+            this.text = initialText;
+        }
+
+        /** Display name. */
+        final String name;
+        /** Index in the display list (and in the per-subscription flags). */
+        final int index;
+        /** Template to format the values (null for text displays). */
+        final DisplayTemplate template;
+        /** Latest values (null for text displays). */
+        final float[] values;
+        /** Latest text (replaced as a whole by the producer), null if the values should be shown. */
+        volatile String text;
+        /** Samples of a plot display (null for other displays). */
+        PlotBuffer plotBuffer;
+        /** Time window of a plot display (millisec). */
+        long plotWindowMillis;
+    }
+
+    /** Map of Display names {Key} ==> Display {value}. */
+    private static final Map< String , Display > displayMap =
+        new ConcurrentHashMap< String , Display >();
+    /** Displays in the order they were added (copy-on-write). */
+    private static volatile Display[] displays = new Display[0];
+    /** Subscriptions (copy-on-write, iterated without locking). */
+    private static volatile Subscription[] subscriptions = new Subscription[0];
+
+    /** Number of display updates (and plot samples). */
+    private static final Counter updateCounter = MetricsRegistry.getDefault().counter( "display.updates" );
+    /** Trace span of publishing a display update to the subscribers. */
+    private static final SpanTracer tracer = SpanTracer.getDefault();
+    private static final int SPAN_UPDATE = tracer.span( "display.update" );
+
+    /** Max number of displays. */
+    public static final int MAX_DISPLAYS = 64;
 }
@@ -0,0 +1,349 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+import java.util.*;
+
+import com.cs4222.khuthia.sensormetrics.*;
+
+/**
+   Rolls up a sensor channel's readings into 1 sec and 1 min buckets while
+   logging, so that summary queries over a session (e.g. how active the
+   user was each minute) read a small file instead of the raw log.
+
+   <p> Each bucket keeps the count, min, max, mean and variance of every
+   value of the readings, updated per reading in O(1) with Welford's
+   method (numerically stable, unlike summing squares). A bucket is
+   appended to its tier's file (e.g. {@code Accl.1s.txt} and
+   {@code Accl.1min.txt}, next to {@code Accl.txt}) when the first reading
+   of a later bucket arrives, or when the file is closed. Line format:
+   <pre>
+     bucketStartTime,count,{min,max,mean,variance} per value
+   </pre>
+   The bucket start time is UNIX millisec (aligned to the bucket size), and
+   the variance is the population variance. Buckets without readings are
+   not written. Buckets of a tier can be merged exactly
+   ({@link Bucket#merge}), e.g. for an hour's summary.
+ */
+public class RollupWriter {
+
+    /** Creates a writer for a channel with the given number of values per reading. */
+    public RollupWriter( int numValues ) {
+        tiers = new Tier[ TIERS.length ];
+        for( int i = 0 ; i < TIERS.length ; ++i ) {
+            tiers[i] = new Tier( TIERS[i] , numValues );
+        }
+    }
+
+    /**
+       Opens the tiers' files (the log file's name, with the tier suffix).
+
+       @param  logFile  Channel's raw log file (e.g. .../Accl.txt)
+     */
+    public void openRollupFiles( File logFile )
+        throws IOException {
+
+        // If already opened, then nothing to do
+        if( isOpen )
+            return;
+
+        String name = logFile.getName();
+        int dot = name.lastIndexOf( '.' );
+        String baseName = ( dot < 0 ? name : name.substring( 0 , dot ) );
+        for( Tier tier : tiers ) {
+            tier.open( new File( logFile.getParentFile() , baseName + tier.suffix ) );
+        }
+        isOpen = true;
+    }
+
+    /** Writes the open buckets, and closes the tiers' files. */
+    public void closeRollupFiles() {
+        if( ! isOpen )
+            return;
+        for( Tier tier : tiers ) {
+            tier.close();
+        }
+        isOpen = false;
+    }
+
+    /**
+       Adds a reading (missing values are taken as 0, like the log).
+
+       @param  timestamp  Reading time (UNIX millisec)
+     */
+    public void add( long timestamp ,
+                     float[] values ) {
+        if( ! isOpen )
+            return;
+        for( Tier tier : tiers ) {
+            tier.add( timestamp , values );
+        }
+    }
+
+    /** Adds a reading of a channel with one value. */
+    public void add( long timestamp ,
+                     float value ) {
+        single[0] = value;
+        add( timestamp , single );
+    }
+
+    /** Reads the buckets of a tier's file (in time order). */
+    public static List< Bucket > readRollupFile( File file )
+        throws IOException {
+
+        List< Bucket > buckets = new ArrayList< Bucket >();
+        BufferedReader in = new BufferedReader( new FileReader( file ) );
+        try {
+            String line;
+            while( ( line = in.readLine() ) != null ) {
+                String[] fields = line.split( "," );
+                // Ignore a line that was only partly written (e.g. the app was killed)
+                if( fields.length < 2 || ( fields.length - 2 ) % 4 != 0 ) {
+                    continue;
+                }
+                int numValues = ( fields.length - 2 ) / 4;
+                Bucket bucket = new Bucket( Long.parseLong( fields[0] ) , numValues );
+                bucket.count = Long.parseLong( fields[1] );
+                for( int i = 0 ; i < numValues ; ++i ) {
+                    bucket.min[i] = Float.parseFloat( fields[ 2 + 4 * i ] );
+                    bucket.max[i] = Float.parseFloat( fields[ 3 + 4 * i ] );
+                    bucket.mean[i] = Double.parseDouble( fields[ 4 + 4 * i ] );
+                    bucket.m2[i] = Double.parseDouble( fields[ 5 + 4 * i ] ) * bucket.count;
+                }
+                buckets.add( bucket );
+            }
+        }
+        finally {
+            in.close();
+        }
+        return buckets;
+    }
+
+    /** Summary of the readings in a bucket. */
+    public static class Bucket {
+
+        /** Creates an empty bucket. */
+        public Bucket( long startTime ,
+                       int numValues ) {
+            this.startTime = startTime;
+            min = new float[ numValues ];
+            max = new float[ numValues ];
+            mean = new double[ numValues ];
+            m2 = new double[ numValues ];
+        }
+
+        /** Gets the bucket start time (UNIX millisec). */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /** Gets the number of readings. */
+        public long getCount() {
+            return count;
+        }
+
+        /** Gets the number of values per reading. */
+        public int getNumValues() {
+            return mean.length;
+        }
+
+        /** Gets the min of the i-th value. */
+        public float getMin( int i ) {
+            return min[i];
+        }
+
+        /** Gets the max of the i-th value. */
+        public float getMax( int i ) {
+            return max[i];
+        }
+
+        /** Gets the mean of the i-th value. */
+        public double getMean( int i ) {
+            return mean[i];
+        }
+
+        /** Gets the (population) variance of the i-th value. */
+        public double getVariance( int i ) {
+            return ( count == 0 ? 0.0 : m2[i] / count );
+        }
+
+        /**
+           Merges the readings of another bucket into this one (Chan et al.'s
+           pairwise update of the mean and variance).
+         */
+        public void merge( Bucket other ) {
+            if( other.count == 0 ) {
+                return;
+            }
+            if( count == 0 ) {
+                count = other.count;
+                System.arraycopy( other.min , 0 , min , 0 , min.length );
+                System.arraycopy( other.max , 0 , max , 0 , max.length );
+                System.arraycopy( other.mean , 0 , mean , 0 , mean.length );
+                System.arraycopy( other.m2 , 0 , m2 , 0 , m2.length );
+                return;
+            }
+            long total = count + other.count;
+            for( int i = 0 ; i < mean.length ; ++i ) {
+                double delta = other.mean[i] - mean[i];
+                mean[i] += delta * other.count / total;
+                m2[i] += other.m2[i] + delta * delta * ( (double) count * other.count / total );
+                min[i] = Math.min( min[i] , other.min[i] );
+                max[i] = Math.max( max[i] , other.max[i] );
+            }
+            count = total;
+        }
+
+        /** Helper method that adds a reading (Welford's update). */
+        void add( float[] values ) {
+            ++count;
+            for( int i = 0 ; i < mean.length ; ++i ) {
+                float value = ( i < values.length ? values[i] : 0.0F );
+                if( count == 1 ) {
+                    min[i] = max[i] = value;
+                }
+                else {
+                    if( value < min[i] )
+                        min[i] = value;
+                    if( value > max[i] )
+                        max[i] = value;
+                }
+                double delta = value - mean[i];
+                mean[i] += delta / count;
+                m2[i] += delta * ( value - mean[i] );
+            }
+        }
+
+        /** Helper method that empties the bucket, for a new start time. */
+        void reset( long startTime ) {
+            this.startTime = startTime;
+            count = 0;
+            Arrays.fill( mean , 0.0 );
+            Arrays.fill( m2 , 0.0 );
+        }
+
+        /** Bucket start time (UNIX millisec). */
+        private long startTime;
+        /** Number of readings. */
+        private long count;
+        /** Min and max of each value. */
+        private final float[] min , max;
+        /** Mean of each value. */
+        private final double[] mean;
+        /** Sum of squared differences from the mean of each value (Welford's M2). */
+        private final double[] m2;
+    }
+
+    /** A tier: the current bucket of a bucket size, and its file. */
+    private static class Tier {
+
+        /** Creates a tier. */
+        Tier( TierSpec spec ,
+              int numValues ) {
+            this.bucketSize = spec.bucketSize;
+            this.suffix = spec.suffix;
+            this.bucket = new Bucket( 0L , numValues );
+        }
+
+        /** Opens the tier's file (not APPEND MODE), with an empty bucket. */
+        void open( File file )
+            throws IOException {
+            out = new BufferedOutputStream( new FileOutputStream( file ) );
+            bucket.reset( 0L );
+        }
+
+        /** Adds a reading, writing the current bucket first if the reading is in a later one. */
+        void add( long timestamp ,
+                  float[] values ) {
+            long startTime = timestamp - ( timestamp % bucketSize );
+            // NOTE: A reading before the current bucket (the wall clock was set back) is added to it
+            if( bucket.count > 0 && startTime > bucket.startTime ) {
+                write();
+            }
+            if( bucket.count == 0 ) {
+                bucket.reset( startTime );
+            }
+            bucket.add( values );
+        }
+
+        /** Writes the current bucket (if any), and closes the file. */
+        void close() {
+            if( bucket.count > 0 ) {
+                write();
+            }
+            try {
+                out.close();
+            }
+            catch( IOException e ) {
+                // Nothing to do, the completed buckets were flushed
+            }
+            out = null;
+        }
+
+        /** Helper method that appends the current bucket to the file (and empties it). */
+        private void write() {
+            sb.setLength( 0 );
+            sb.append( bucket.startTime ).append( ',' ).append( bucket.count );
+            for( int i = 0 ; i < bucket.mean.length ; ++i ) {
+                sb.append( ',' ).append( bucket.min[i] );
+                sb.append( ',' ).append( bucket.max[i] );
+                sb.append( ',' ).append( bucket.mean[i] );
+                sb.append( ',' ).append( bucket.getVariance( i ) );
+            }
+
+            // Write the line's bytes (a Writer makes a String and a char buffer per line)
+            try {
+                lineWriter.writeLine( sb , out );
+                // Flush, so that a killed session keeps its completed buckets
+                out.flush();
+            }
+            catch( IOException e ) {
+                // Like a PrintWriter, drop the bucket (the raw log still has its readings)
+            }
+            bucket.reset( 0L );
+        }
+
+        /** Bucket size (millisec). */
+        final long bucketSize;
+        /** File name suffix. */
+        final String suffix;
+        /** Current bucket. */
+        private final Bucket bucket;
+        /** To format the lines (re-used), and to write them. */
+        private final StringBuilder sb = new StringBuilder();
+        private final LogLineWriter lineWriter = new LogLineWriter();
+        /** File's output stream. */
+        private OutputStream out;
+    }
+
+    /** Bucket size and file name suffix of a tier. */
+    private static class TierSpec {
+        TierSpec( long bucketSize ,
+                  String suffix ) {
+            this.bucketSize = bucketSize;
+            this.suffix = suffix;
+        }
+        final long bucketSize;
+        final String suffix;
+    }
+
+    /** The tiers. */
+    private final Tier[] tiers;
+    /** Flag to indicate that the files are open. */
+    private boolean isOpen = false;
+    /** Reading of a channel with one value (re-used). */
+    private final float[] single = new float[1];
+
+    /** Bucket size of the 1 sec tier (millisec). */
+    public static final long SECOND_BUCKET = 1000L;
+    /** Bucket size of the 1 min tier (millisec). */
+    public static final long MINUTE_BUCKET = 60000L;
+    /** File name suffix of the 1 sec tier. */
+    public static final String SECOND_SUFFIX = ".1s.txt";
+    /** File name suffix of the 1 min tier. */
+    public static final String MINUTE_SUFFIX = ".1min.txt";
+    /** The tiers written. */
+    private static final TierSpec[] TIERS = {
+        new TierSpec( SECOND_BUCKET , SECOND_SUFFIX ) ,
+        new TierSpec( MINUTE_BUCKET , MINUTE_SUFFIX )
+    };
+}
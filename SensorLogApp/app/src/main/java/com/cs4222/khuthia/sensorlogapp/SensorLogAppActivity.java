@@ -10,8 +10,11 @@ import android.widget.*;
 import android.util.*;
 import android.view.*;
 import android.preference.*;
+import android.graphics.*;
 import android.graphics.drawable.*;
 
+import com.cs4222.khuthia.sensormetrics.*;
+
 /**
    Activity that displays the sensor data values.
  */
@@ -54,8 +57,8 @@ public class SensorLogAppActivity
 
         try {
 
-            // Remove the display listener
-            RealTimeDisplay.removeDisplayListener( displayListener );
+            // Remove the display subscription
+            RealTimeDisplay.unsubscribe( displaySubscription );
 
             // Un-Bind from the service
             unbindFromSensorLogService();
@@ -70,6 +73,26 @@ public class SensorLogAppActivity
         }
     }
 
+    /** Called when the application gains focus. */
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        try {
+
+            // Start refreshing the real-time displays (once per frame)
+            if( displayRefresher != null ) {
+                displayRefresher.start();
+            }
+        }
+        catch( Exception e ) {
+            // Log the exception
+            Log.e ( TAG , "Unable to resume activity" , e );
+            // Tell the user
+            createToast ( "Unable to resume activity, check error log" );
+        }
+    }
+
     /** Called when the application loses focus. */
     @Override
     protected void onPause() {
@@ -77,6 +100,11 @@ public class SensorLogAppActivity
 
         try {
 
+            // Stop refreshing the real-time displays (nobody can see them)
+            if( displayRefresher != null ) {
+                displayRefresher.stop();
+            }
+
             // Save the GUI state
             saveGuiState();
         }
@@ -380,6 +408,8 @@ public class SensorLogAppActivity
     private void registerDisplayListener() {
 
         // Create a display listener
+        // NOTE: The listener is called from the GUI thread, once per frame,
+        //       by the display refresher (not from the sensor thread)
         displayListener = 
             new RealTimeDisplay.DisplayListener() {
                 /** {@inheritDoc} */
@@ -394,15 +424,30 @@ public class SensorLogAppActivity
                 }
             };
 
-        // Register the display listener
-        List< String > displayList = 
-            RealTimeDisplay.getDisplayList( displayListener );
+        // Subscribe to all the displays (on the first frame, the listener
+        //  is told about the displays already added before)
+        displaySubscription = 
+            RealTimeDisplay.subscribe( displayListener , null , MIN_DISPLAY_UPDATE_INTERVAL );
+        // Create the display refresher (in the main UI thread)
+        displayRefresher = 
+            new DisplayRefresher( displaySubscription , MIN_DISPLAY_REFRESH_INTERVAL );
+
+        // Track which displays are scrolled into view (the others
+        //  are not formatted or updated)
+        mainLayout.getViewTreeObserver().addOnScrollChangedListener( 
+            new ViewTreeObserver.OnScrollChangedListener() {
+                @Override
+                public void onScrollChanged() {
+                    updateDisplayVisibility();
+                }
+            } );
+    }
 
-        // For the displays already added before, 
-        //  create the required display views.
-        for( String displayName : displayList ) {
-            addDisplayView( displayName , 
-                            RealTimeDisplay.getDisplayText( displayName ) );
+    /** Helper method that tells the real-time displays which of them are visible. */
+    private void updateDisplayVisibility() {
+        for( Map.Entry< String , TextView > entry : displayMap.entrySet() ) {
+            boolean isVisible = entry.getValue().getLocalVisibleRect( visibleRect );
+            displaySubscription.setDisplayVisible( entry.getKey() , isVisible );
         }
     }
 
@@ -431,6 +476,17 @@ public class SensorLogAppActivity
         // Add the display and its text view to the map
         displayMap.put( displayName , displayText );
 
+        // If the display is a plot, then add a plot view below the text view
+        PlotBuffer plotBuffer = RealTimeDisplay.getPlotBuffer( displayName );
+        if( plotBuffer != null ) {
+            SensorPlotView plotView = 
+                new SensorPlotView( this , 
+                                    plotBuffer , 
+                                    RealTimeDisplay.getPlotWindow( displayName ) );
+            ( (ViewGroup) displayView ).addView( plotView );
+            plotViewMap.put( displayName , plotView );
+        }
+
         // Invalidate the main layout, it must be re-drawn
         mainLayout.invalidate();
     }
@@ -439,6 +495,13 @@ public class SensorLogAppActivity
     private void updateDisplayView( String displayName , 
                                     String updatedText ) {
 
+        // If the display is a plot, then just redraw it
+        SensorPlotView plotView = plotViewMap.get( displayName );
+        if( plotView != null ) {
+            plotView.invalidate();
+            return;
+        }
+
         // Get the text view for this display name
         TextView displayText = displayMap.get( displayName );
 
@@ -446,7 +509,11 @@ public class SensorLogAppActivity
         // BUG: Race condition here, displayText is null on exit,
         //      need to check if null
         if( displayText != null ) {
-            displayText.setText( displayName + "\n" + updatedText );
+            long beginNanos = tracer.begin();
+            displayTextBuilder.append( displayName ).append( '\n' ).append( updatedText );
+            displayText.setText( displayTextBuilder.toString() );
+            displayTextBuilder.setLength( 0 );
+            tracer.end( SPAN_TEXT_VIEW , beginNanos );
         }
     }
 
@@ -482,9 +549,23 @@ public class SensorLogAppActivity
 
     /** Display Listener. */
     private RealTimeDisplay.DisplayListener displayListener;
+    /** Subscription of the display listener to the real-time displays. */
+    private RealTimeDisplay.Subscription displaySubscription;
+    /** Drains the real-time display updates once per frame. */
+    private DisplayRefresher displayRefresher;
     /** Map of Display name {key} ==> Text View {value}. */
     private Map< String , TextView > displayMap = 
         new HashMap< String , TextView >();
+    /** Map of Display name {key} ==> Plot View {value} (only for plot displays). */
+    private Map< String , SensorPlotView > plotViewMap = 
+        new HashMap< String , SensorPlotView >();
+    /** Re-used to build the display view text. */
+    private final StringBuilder displayTextBuilder = new StringBuilder();
+    /** Re-used to check the display view visibility. */
+    private final Rect visibleRect = new Rect();
+    /** Trace span of updating a display's text view. */
+    private static final SpanTracer tracer = SpanTracer.getDefault();
+    private static final int SPAN_TEXT_VIEW = tracer.span( "ui.textView" );
 
     /** Confirm button. */
     private Button confirmButton;
@@ -512,6 +593,10 @@ public class SensorLogAppActivity
 
     /** Handler to the main thread. */
     private Handler handler;
+    /** Minimum time between real-time display refreshes (millisec), 0 to refresh every frame. */
+    private static final long MIN_DISPLAY_REFRESH_INTERVAL = 0L;
+    /** Minimum time between updates of the same display view (millisec), 0 for no limit. */
+    private static final long MIN_DISPLAY_UPDATE_INTERVAL = 0L;
     /** DDMS log tag. */
     private static final String TAG = "SensorLogApp";
 }
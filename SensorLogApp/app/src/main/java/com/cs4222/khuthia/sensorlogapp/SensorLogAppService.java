@@ -1,5 +1,6 @@
 package com.cs4222.khuthia.sensorlogapp;
 
+import java.io.*;
 import java.util.*;
 import java.text.*;
 
@@ -12,6 +13,9 @@ import android.location.*;
 import android.util.*;
 import android.support.v4.app.NotificationCompat;
 
+import com.cs4222.khuthia.sensorlogapp.analysis.*;
+import com.cs4222.khuthia.sensormetrics.*;
+
 /** Service that samples and logs sensor data. */
 public class SensorLogAppService
     extends Service 
@@ -31,6 +35,9 @@ public class SensorLogAppService
             // Register real-time displays for sensor data
             registerSensorDisplays();
 
+            // Export the runtime metrics periodically (to the display, and to the log folder while logging)
+            startMetricsReporter();
+
             // Acquire wake lock
             acquireLocks();
         }
@@ -54,6 +61,9 @@ public class SensorLogAppService
             // Put the service in the background
             putServiceInBackground();
 
+            // Stop exporting the metrics
+            metricsReporter.stop();
+
             // Clear the real-time sensor displays
             RealTimeDisplay.clearDisplays();
         }
@@ -285,6 +295,14 @@ public class SensorLogAppService
             closeLogFiles();
             // Stop sampling sensors
             stopSensorSampling();
+            // Upload the closed sessions in the background
+            startService( new Intent( SensorLogAppService.this , 
+                                      SessionSyncService.class ) );
+        }
+
+        /** Sets the orientation filter gain (beta). */
+        public void setOrientationFilterGain( float gain ) {
+            orientationFilter.setGain( gain );
         }
 
         /** Logs the ground truth marked manually by the user. */
@@ -293,6 +311,19 @@ public class SensorLogAppService
             String logLine = sdf.format( new Date( timestamp ) ) + "," + 
                 timestamp + "," + activity.toString();
             loggerGroundTruth.logEvent( logLine );
+            // Add it to the label interval index (and its sidecar file)
+            try {
+                groundTruthIndex.add( timestamp , activity.name() );
+            }
+            catch( Exception e ) {
+                Log.e( TAG , "Unable to index ground truth" , e );
+            }
+        }
+
+        /** Gets the ground truth label at the given time (null if none). */
+        public UserActivities getGroundTruthLabel( long timestamp ) {
+            String label = groundTruthIndex.labelAt( timestamp );
+            return ( label == null ? null : UserActivities.valueOf( label ) );
         }
     }
 
@@ -306,14 +337,49 @@ public class SensorLogAppService
         loggerMagnetic.openLogFile( logName , "Mag.txt" );
         loggerGyroscope.openLogFile( logName , "Gyro.txt" );
         loggerRotationVector.openLogFile( logName , "RotVec.txt" );
+        loggerOrientation.openLogFile( logName , "Orientation.txt" );
         loggerBarometer.openLogFile( logName , "Baro.txt" );
         loggerLight.openLogFile( logName , "Light.txt" );
         loggerProximity.openLogFile( logName , "Proximity.txt" );
         loggerGroundTruth.openLogFile( logName , "GroundTruth.txt" );
+        // Open the rollup tiers next to the sensor logs
+        rollupAccelerometer.openRollupFiles( loggerAccelerometer.logFile );
+        rollupGravity.openRollupFiles( loggerGravity.logFile );
+        rollupLinearAccl.openRollupFiles( loggerLinearAccl.logFile );
+        rollupMagnetic.openRollupFiles( loggerMagnetic.logFile );
+        rollupGyroscope.openRollupFiles( loggerGyroscope.logFile );
+        rollupRotationVector.openRollupFiles( loggerRotationVector.logFile );
+        rollupBarometer.openRollupFiles( loggerBarometer.logFile );
+        rollupLight.openRollupFiles( loggerLight.logFile );
+        rollupProximity.openRollupFiles( loggerProximity.logFile );
+        // The session stays open until its closed marker is written again (the folder may be re-used)
+        new File( loggerGroundTruth.logFile.getParentFile() , SessionUploader.CLOSED_FILE_NAME ).delete();
+        // Start a new statistics summary (written next to the logs when the data collection stops)
+        sessionSummary = new SessionSummary();
+        sessionSummaryFile = new File( loggerGroundTruth.logFile.getParentFile() , SessionSummary.FILE_NAME );
+        summaryAccelerometer = sessionSummary.addChannel( SensorLogType.ACCELEROMETER , 3 );
+        summaryGravity = sessionSummary.addChannel( SensorLogType.GRAVITY , 3 );
+        summaryLinearAccl = sessionSummary.addChannel( SensorLogType.LINEAR_ACCL , 3 );
+        summaryMagnetic = sessionSummary.addChannel( SensorLogType.MAGNETIC , 3 );
+        summaryGyroscope = sessionSummary.addChannel( SensorLogType.GYROSCOPE , 3 );
+        summaryRotationVector = sessionSummary.addChannel( SensorLogType.ROTATION_VECTOR , 4 );
+        summaryBarometer = sessionSummary.addChannel( SensorLogType.BAROMETER , 1 );
+        summaryLight = sessionSummary.addChannel( SensorLogType.LIGHT , 1 );
+        summaryProximity = sessionSummary.addChannel( SensorLogType.PROXIMITY , 1 );
+        // Start a new label interval index, with its sidecar file next to the ground truth log
+        groundTruthIndex = new GroundTruthIndex();
+        groundTruthIndex.openSidecarFile( 
+            new File( loggerGroundTruth.logFile.getParentFile() , GroundTruthIndex.SIDECAR_FILE_NAME ) );
+        // Export the metrics next to the logs
+        metricsReporter.setFile( new File( loggerGroundTruth.logFile.getParentFile() , METRICS_FILE_NAME ) );
+        // Dump a trace next to the logs when a sensor callback stalls
+        tracer.setTrigger( SPAN_SENSOR_CALLBACK , TRACE_TRIGGER_NANOS , TRACE_WINDOW_NANOS , 
+                           loggerGroundTruth.logFile.getParentFile() );
     }
 
     /** Closes the log files for sensor data logging. */
     private void closeLogFiles() {
+        File sessionFolder = ( sessionSummaryFile != null ? sessionSummaryFile.getParentFile() : null );
         loggerLocation.closeLogFile();
         loggerAccelerometer.closeLogFile();
         loggerGravity.closeLogFile();
@@ -321,10 +387,68 @@ public class SensorLogAppService
         loggerMagnetic.closeLogFile();
         loggerGyroscope.closeLogFile();
         loggerRotationVector.closeLogFile();
+        loggerOrientation.closeLogFile();
         loggerBarometer.closeLogFile();
         loggerLight.closeLogFile();
         loggerProximity.closeLogFile();
         loggerGroundTruth.closeLogFile();
+        rollupAccelerometer.closeRollupFiles();
+        rollupGravity.closeRollupFiles();
+        rollupLinearAccl.closeRollupFiles();
+        rollupMagnetic.closeRollupFiles();
+        rollupGyroscope.closeRollupFiles();
+        rollupRotationVector.closeRollupFiles();
+        rollupBarometer.closeRollupFiles();
+        rollupLight.closeRollupFiles();
+        rollupProximity.closeRollupFiles();
+        // Write the statistics summary (once)
+        try {
+            if( sessionSummaryFile != null )
+                sessionSummary.writeFile( sessionSummaryFile );
+        }
+        catch( Exception e ) {
+            Log.e( TAG , "Unable to write the session summary" , e );
+        }
+        finally {
+            sessionSummaryFile = null;
+        }
+        groundTruthIndex.closeSidecarFile( System.currentTimeMillis() );
+        // Stop the trace dumps
+        tracer.setTrigger( SPAN_SENSOR_CALLBACK , TRACE_TRIGGER_NANOS , TRACE_WINDOW_NANOS , null );
+        // Write a last metrics snapshot, and stop exporting to the file
+        try {
+            metricsReporter.report();
+            metricsReporter.setFile( null );
+        }
+        catch( Exception e ) {
+            Log.e( TAG , "Unable to close the metrics file" , e );
+        }
+        // Mark the session as closed (once), for the uploads
+        try {
+            if( sessionFolder != null )
+                new FileOutputStream( new File( sessionFolder , SessionUploader.CLOSED_FILE_NAME ) ).close();
+        }
+        catch( Exception e ) {
+            Log.e( TAG , "Unable to write the closed marker" , e );
+        }
+    }
+
+    /** Helper method that starts exporting the metrics (package-private for the JVM tests). */
+    void startMetricsReporter() {
+        metrics.gauge( "memory.used.kb" , new Gauge() {
+                @Override
+                public double getValue() {
+                    Runtime runtime = Runtime.getRuntime();
+                    return ( runtime.totalMemory() - runtime.freeMemory() ) / 1024L;
+                }
+            } );
+        metricsReporter.setListener( new MetricsReporter.Listener() {
+                @Override
+                public void onSnapshot( MetricsSnapshot snapshot ) {
+                    RealTimeDisplay.updateDisplay( DISPLAY_METRICS , snapshot.format() );
+                }
+            } );
+        metricsReporter.start();
     }
 
     // Sensor data loggers
@@ -335,11 +459,38 @@ public class SensorLogAppService
     private FileLogger loggerMagnetic = new FileLogger();
     private FileLogger loggerGyroscope = new FileLogger();
     private FileLogger loggerRotationVector = new FileLogger();
+    private FileLogger loggerOrientation = new FileLogger();
     private FileLogger loggerBarometer = new FileLogger();
     private FileLogger loggerLight = new FileLogger();
     private FileLogger loggerProximity = new FileLogger();
     // Logger for ground truth
     private FileLogger loggerGroundTruth = new FileLogger();
+    // Rollups (1 sec and 1 min summaries) of every sensor reading, not just the logged ones
+    private RollupWriter rollupAccelerometer = new RollupWriter( 3 );
+    private RollupWriter rollupGravity = new RollupWriter( 3 );
+    private RollupWriter rollupLinearAccl = new RollupWriter( 3 );
+    private RollupWriter rollupMagnetic = new RollupWriter( 3 );
+    private RollupWriter rollupGyroscope = new RollupWriter( 3 );
+    private RollupWriter rollupRotationVector = new RollupWriter( 4 );
+    private RollupWriter rollupBarometer = new RollupWriter( 1 );
+    private RollupWriter rollupLight = new RollupWriter( 1 );
+    private RollupWriter rollupProximity = new RollupWriter( 1 );
+    /** Statistics summary (quantile sketches) of every sensor reading in the session. */
+    private SessionSummary sessionSummary = new SessionSummary();
+    /** File the statistics summary is written to. */
+    private File sessionSummaryFile;
+    // Summaries of the sensor channels
+    private SessionSummary.Channel summaryAccelerometer = sessionSummary.addChannel( SensorLogType.ACCELEROMETER , 3 );
+    private SessionSummary.Channel summaryGravity = sessionSummary.addChannel( SensorLogType.GRAVITY , 3 );
+    private SessionSummary.Channel summaryLinearAccl = sessionSummary.addChannel( SensorLogType.LINEAR_ACCL , 3 );
+    private SessionSummary.Channel summaryMagnetic = sessionSummary.addChannel( SensorLogType.MAGNETIC , 3 );
+    private SessionSummary.Channel summaryGyroscope = sessionSummary.addChannel( SensorLogType.GYROSCOPE , 3 );
+    private SessionSummary.Channel summaryRotationVector = sessionSummary.addChannel( SensorLogType.ROTATION_VECTOR , 4 );
+    private SessionSummary.Channel summaryBarometer = sessionSummary.addChannel( SensorLogType.BAROMETER , 1 );
+    private SessionSummary.Channel summaryLight = sessionSummary.addChannel( SensorLogType.LIGHT , 1 );
+    private SessionSummary.Channel summaryProximity = sessionSummary.addChannel( SensorLogType.PROXIMITY , 1 );
+    /** Label interval index of the ground truth (built while logging). */
+    private GroundTruthIndex groundTruthIndex = new GroundTruthIndex();
 
     /** Starts sensor sampling at the specified sampling rates. */
     private void startSensorSampling() {
@@ -351,15 +502,16 @@ public class SensorLogAppService
 
         // Initialise the sensor displays
         RealTimeDisplay.updateDisplay( DISPLAY_LOCATION , "provider: \nlatitude: \nlongitude: \naltitude: \nspeed: \n" );
-        RealTimeDisplay.updateDisplay( DISPLAY_ACCELEROMETER , "x: \ny: \nz: \n" );
-        RealTimeDisplay.updateDisplay( DISPLAY_GRAVITY , "x: \ny: \nz: \n" );
-        RealTimeDisplay.updateDisplay( DISPLAY_LINEAR_ACCL , "x: \ny: \nz: \n" );
-        RealTimeDisplay.updateDisplay( DISPLAY_MAGNETIC , "x: \ny: \nz: \n" );
-        RealTimeDisplay.updateDisplay( DISPLAY_GYROSCOPE , "x: \ny: \nz: \n" );
-        RealTimeDisplay.updateDisplay( DISPLAY_ROTATION_VECTOR , "x: \ny: \nz: \n" );
-        RealTimeDisplay.updateDisplay( DISPLAY_BAROMETER , "pressure: \naltitude: \n" );
-        RealTimeDisplay.updateDisplay( DISPLAY_LIGHT , "light: \n" );
-        RealTimeDisplay.updateDisplay( DISPLAY_PROXIMITY , "proximity: \n" );
+        RealTimeDisplay.updateDisplay( DISPLAY_ACCELEROMETER , TEMPLATE_XYZ.getEmptyText() );
+        RealTimeDisplay.updateDisplay( DISPLAY_GRAVITY , TEMPLATE_XYZ.getEmptyText() );
+        RealTimeDisplay.updateDisplay( DISPLAY_LINEAR_ACCL , TEMPLATE_XYZ.getEmptyText() );
+        RealTimeDisplay.updateDisplay( DISPLAY_MAGNETIC , TEMPLATE_XYZ.getEmptyText() );
+        RealTimeDisplay.updateDisplay( DISPLAY_GYROSCOPE , TEMPLATE_XYZ.getEmptyText() );
+        RealTimeDisplay.updateDisplay( DISPLAY_ROTATION_VECTOR , TEMPLATE_ROTATION_VECTOR.getEmptyText() );
+        RealTimeDisplay.updateDisplay( DISPLAY_ORIENTATION , TEMPLATE_ORIENTATION.getEmptyText() );
+        RealTimeDisplay.updateDisplay( DISPLAY_BAROMETER , TEMPLATE_BAROMETER.getEmptyText() );
+        RealTimeDisplay.updateDisplay( DISPLAY_LIGHT , TEMPLATE_LIGHT.getEmptyText() );
+        RealTimeDisplay.updateDisplay( DISPLAY_PROXIMITY , TEMPLATE_PROXIMITY.getEmptyText() );
 
         // Get the various sensors (and check if they are available or not)
         Sensor acclSensor = (Sensor) sensorManager.getDefaultSensor( Sensor.TYPE_ACCELEROMETER );
@@ -381,6 +533,7 @@ public class SensorLogAppService
         Sensor gyroSensor = (Sensor) sensorManager.getDefaultSensor( Sensor.TYPE_GYROSCOPE );
         if( gyroSensor == null ) {
             RealTimeDisplay.updateDisplay( DISPLAY_GYROSCOPE , "Gyro sensor not available" );
+            RealTimeDisplay.updateDisplay( DISPLAY_ORIENTATION , "Gyro sensor not available" );
         }
         Sensor rotVecSensor = (Sensor) sensorManager.getDefaultSensor( Sensor.TYPE_ROTATION_VECTOR );
         if( rotVecSensor == null ) {
@@ -415,6 +568,7 @@ public class SensorLogAppService
             prevLogTimeMagnetic = 
             prevLogTimeGyroscope = 
             prevLogTimeRotationVector = 
+            prevLogTimeOrientation = 
             prevLogTimeBarometer = 
             prevLogTimeLight = 
             prevLogTimeProximity = 0L;
@@ -425,10 +579,17 @@ public class SensorLogAppService
             prevDisplayTimeMagnetic = 
             prevDisplayTimeGyroscope = 
             prevDisplayTimeRotationVector = 
+            prevDisplayTimeOrientation = 
             prevDisplayTimeBarometer = 
             prevDisplayTimeLight = 
             prevDisplayTimeProximity = 0L;
 
+        // Reset the orientation filter
+        orientationFilter.reset();
+        prevGyroTimestamp = 0L;
+        latestAccl[0] = latestAccl[1] = latestAccl[2] = 0.0F;
+        latestMagnetic[0] = latestMagnetic[1] = latestMagnetic[2] = 0.0F;
+
         // Start sampling the various sensors
         if( acclSensor != null ) {
             sensorManager.registerListener( this , acclSensor , SensorManager.SENSOR_DELAY_FASTEST );
@@ -493,190 +654,238 @@ public class SensorLogAppService
     /** Called when the sensor value has changed. */
     @Override
     public void onSensorChanged( SensorEvent event ) {
+        long startNanos = sensorCallbackTimer.start();
+        long beginNanos = tracer.begin();
+        processSensorEvent( event );
+        tracer.end( SPAN_SENSOR_CALLBACK , beginNanos );
+        sensorCallbackTimer.stop( startNanos );
+    }
+
+    /** Gets the current time (millisec) of the logging/display rates (the JVM tests replay on a fake clock). */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /** Helper method that rolls up, logs and displays a sensor event. */
+    private void processSensorEvent( SensorEvent event ) {
 
         // Get the current timestamp
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         // Get the sensor event accuracy
         int accuracy = event.accuracy;
 
         // Check the sensor type
         if( event.sensor.getType() == Sensor.TYPE_ACCELEROMETER ) {
+            long branchNanos = tracer.begin();
             // Get the sensor data
             float x = event.values[0] , 
                 y = event.values[1] , 
                 z = event.values[2];
+            // Save the latest reading for the orientation filter
+            latestAccl[0] = x;
+            latestAccl[1] = y;
+            latestAccl[2] = z;
+            // Roll up and summarize the reading
+            rollupAccelerometer.add( currentTime , event.values );
+            summaryAccelerometer.add( currentTime , event.values , accuracy );
             // Log the sensor data to the log file
             if( currentTime - prevLogTimeAccelerometer >= LOGGING_RATE_ACCELEROMETER ) {
                 prevLogTimeAccelerometer = currentTime;
-                String logLine = 
-                    x + "," + y + "," + z + "," + accuracy;
-                loggerAccelerometer.logEvent( logLine );
+                loggerAccelerometer.logEvent( x , y , z , accuracy );
             }
             // Display the sensor data on the GUI
             if( currentTime - prevDisplayTimeAccelerometer >= DISPLAY_RATE_ACCELEROMETER ) {
                 prevDisplayTimeAccelerometer = currentTime;
-                String displayLine = 
-                    "x: " + x + "\ny: " + y + "\nz: " + z + "\n";
-                RealTimeDisplay.updateDisplay( DISPLAY_ACCELEROMETER , displayLine );
+                RealTimeDisplay.updateDisplay( DISPLAY_ACCELEROMETER , x , y , z );
             }
+            // Plot every sample
+            RealTimeDisplay.updatePlot( DISPLAY_ACCELEROMETER_PLOT , currentTime , x , y , z );
+            // Trace the branch
+            tracer.end( SPAN_ACCELEROMETER , branchNanos );
         }
         else if( event.sensor.getType() == Sensor.TYPE_GRAVITY ) {
+            long branchNanos = tracer.begin();
             // Get the sensor data
             float x = event.values[0] , 
                 y = event.values[1] , 
                 z = event.values[2];
+            // Roll up and summarize the reading
+            rollupGravity.add( currentTime , event.values );
+            summaryGravity.add( currentTime , event.values , accuracy );
             // Log the sensor data to the log file
             if( currentTime - prevLogTimeGravity >= LOGGING_RATE_GRAVITY ) {
                 prevLogTimeGravity = currentTime;
-                String logLine = 
-                    x + "," + y + "," + z + "," + accuracy;
-                loggerGravity.logEvent( logLine );
+                loggerGravity.logEvent( x , y , z , accuracy );
             }
             // Display the sensor data on the GUI
             if( currentTime - prevDisplayTimeGravity >= DISPLAY_RATE_GRAVITY ) {
                 prevDisplayTimeGravity = currentTime;
-                String displayLine = 
-                    "x: " + x + "\ny: " + y + "\nz: " + z + "\n";
-                RealTimeDisplay.updateDisplay( DISPLAY_GRAVITY , displayLine );
+                RealTimeDisplay.updateDisplay( DISPLAY_GRAVITY , x , y , z );
             }
+            // Trace the branch
+            tracer.end( SPAN_GRAVITY , branchNanos );
         }
         else if( event.sensor.getType() == Sensor.TYPE_LINEAR_ACCELERATION ) {
+            long branchNanos = tracer.begin();
             // Get the sensor data
             float x = event.values[0] , 
                 y = event.values[1] , 
                 z = event.values[2];
+            // Roll up and summarize the reading
+            rollupLinearAccl.add( currentTime , event.values );
+            summaryLinearAccl.add( currentTime , event.values , accuracy );
             // Log the sensor data to the log file
             if( currentTime - prevLogTimeLinearAccelerometer >= LOGGING_RATE_LINEAR_ACCL ) {
                 prevLogTimeLinearAccelerometer = currentTime;
-                String logLine = 
-                    x + "," + y + "," + z + "," + accuracy;
-                loggerLinearAccl.logEvent( logLine );
+                loggerLinearAccl.logEvent( x , y , z , accuracy );
             }
             // Display the sensor data on the GUI
             if( currentTime - prevDisplayTimeLinearAccelerometer >= DISPLAY_RATE_LINEAR_ACCL ) {
                 prevDisplayTimeLinearAccelerometer = currentTime;
-                String displayLine = 
-                    "x: " + x + "\ny: " + y + "\nz: " + z + "\n";
-                RealTimeDisplay.updateDisplay( DISPLAY_LINEAR_ACCL , displayLine );
+                RealTimeDisplay.updateDisplay( DISPLAY_LINEAR_ACCL , x , y , z );
             }
+            // Trace the branch
+            tracer.end( SPAN_LINEAR_ACCL , branchNanos );
         }
         else if( event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD ) {
+            long branchNanos = tracer.begin();
             // Get the sensor data
             float x = event.values[0] , 
                 y = event.values[1] , 
                 z = event.values[2];
+            // Save the latest reading for the orientation filter
+            latestMagnetic[0] = x;
+            latestMagnetic[1] = y;
+            latestMagnetic[2] = z;
+            // Roll up and summarize the reading
+            rollupMagnetic.add( currentTime , event.values );
+            summaryMagnetic.add( currentTime , event.values , accuracy );
             // Log the sensor data to the log file
             if( currentTime - prevLogTimeMagnetic >= LOGGING_RATE_MAGNETIC ) {
                 prevLogTimeMagnetic = currentTime;
-                String logLine = 
-                    x + "," + y + "," + z + "," + accuracy;
-                loggerMagnetic.logEvent( logLine );
+                loggerMagnetic.logEvent( x , y , z , accuracy );
             }
             // Display the sensor data on the GUI
             if( currentTime - prevDisplayTimeMagnetic >= DISPLAY_RATE_MAGNETIC ) {
                 prevDisplayTimeMagnetic = currentTime;
-                String displayLine = 
-                    "x: " + x + "\ny: " + y + "\nz: " + z + "\n";
-                RealTimeDisplay.updateDisplay( DISPLAY_MAGNETIC , displayLine );
+                RealTimeDisplay.updateDisplay( DISPLAY_MAGNETIC , x , y , z );
             }
+            // Plot every sample
+            RealTimeDisplay.updatePlot( DISPLAY_MAGNETIC_PLOT , currentTime , x , y , z );
+            // Trace the branch
+            tracer.end( SPAN_MAGNETIC , branchNanos );
         }
         else if( event.sensor.getType() == Sensor.TYPE_GYROSCOPE ) {
+            long branchNanos = tracer.begin();
             // Get the sensor data
             float x = event.values[0] , 
                 y = event.values[1] , 
                 z = event.values[2];
+            // Fuse the gyro reading (at the full sampling rate) into the orientation
+            updateOrientation( currentTime , event.timestamp , x , y , z );
+            // Roll up and summarize the reading
+            rollupGyroscope.add( currentTime , event.values );
+            summaryGyroscope.add( currentTime , event.values , accuracy );
             // Log the sensor data to the log file
             if( currentTime - prevLogTimeGyroscope >= LOGGING_RATE_GYROSCOPE ) {
                 prevLogTimeGyroscope = currentTime;
-                String logLine = 
-                    x + "," + y + "," + z + "," + accuracy;
-                loggerGyroscope.logEvent( logLine );
+                loggerGyroscope.logEvent( x , y , z , accuracy );
             }
             // Display the sensor data on the GUI
             if( currentTime - prevDisplayTimeGyroscope >= DISPLAY_RATE_GYROSCOPE ) {
                 prevDisplayTimeGyroscope = currentTime;
-                String displayLine = 
-                    "x: " + x + "\ny: " + y + "\nz: " + z + "\n";
-                RealTimeDisplay.updateDisplay( DISPLAY_GYROSCOPE , displayLine );
+                RealTimeDisplay.updateDisplay( DISPLAY_GYROSCOPE , x , y , z );
             }
+            // Plot every sample
+            RealTimeDisplay.updatePlot( DISPLAY_GYROSCOPE_PLOT , currentTime , x , y , z );
+            // Trace the branch
+            tracer.end( SPAN_GYROSCOPE , branchNanos );
         }
         else if( event.sensor.getType() == Sensor.TYPE_ROTATION_VECTOR ) {
+            long branchNanos = tracer.begin();
             // Get the sensor data
             float x = event.values[0] , 
                 y = event.values[1] , 
                 z = event.values[2] , 
                 scalar = ( event.values.length > 3 ? event.values[3] : 0.0F );
+            // Roll up and summarize the reading
+            rollupRotationVector.add( currentTime , event.values );
+            summaryRotationVector.add( currentTime , event.values , accuracy );
             // Log the sensor data to the log file
             if( currentTime - prevLogTimeRotationVector >= LOGGING_RATE_ROTATION_VECTOR ) {
                 prevLogTimeRotationVector = currentTime;
-                String logLine = 
-                    x + "," + y + "," + z + "," + scalar + "," + accuracy;
-                loggerRotationVector.logEvent( logLine );
+                loggerRotationVector.logEvent( x , y , z , scalar , accuracy );
             }
             // Display the sensor data on the GUI
             if( currentTime - prevDisplayTimeRotationVector >= DISPLAY_RATE_ROTATION_VECTOR ) {
                 prevDisplayTimeRotationVector = currentTime;
-                String displayLine = 
-                    "x: " + x + "\ny: " + y + "\nz: " + z + "\nscalar: " + scalar + "\n";
-                RealTimeDisplay.updateDisplay( DISPLAY_ROTATION_VECTOR , displayLine );
+                RealTimeDisplay.updateDisplay( DISPLAY_ROTATION_VECTOR , x , y , z , scalar );
             }
+            // Trace the branch
+            tracer.end( SPAN_ROTATION_VECTOR , branchNanos );
         }
         else if( event.sensor.getType() == Sensor.TYPE_PRESSURE ) {
+            long branchNanos = tracer.begin();
             // Get the sensor data
             float pressure = event.values[0];
             float altitude = 
                 SensorManager.getAltitude( SensorManager.PRESSURE_STANDARD_ATMOSPHERE , 
                                            pressure );
+            // Roll up and summarize the reading
+            rollupBarometer.add( currentTime , pressure );
+            summaryBarometer.add( currentTime , pressure , accuracy );
             // Log the sensor data to the log file
             if( currentTime - prevLogTimeBarometer >= LOGGING_RATE_BAROMETER ) {
                 prevLogTimeBarometer = currentTime;
-                String logLine = 
-                    pressure + "," + altitude + "," + accuracy;
-                loggerBarometer.logEvent( logLine );
+                loggerBarometer.logEvent( pressure , altitude , accuracy );
             }
             // Display the sensor data on the GUI
             if( currentTime - prevDisplayTimeBarometer >= DISPLAY_RATE_BAROMETER ) {
                 prevDisplayTimeBarometer = currentTime;
-                String displayLine = 
-                    "pressure: " + pressure + "\naltitude: " + altitude + "\n";
-                RealTimeDisplay.updateDisplay( DISPLAY_BAROMETER , displayLine );
+                RealTimeDisplay.updateDisplay( DISPLAY_BAROMETER , pressure , altitude );
             }
+            // Trace the branch
+            tracer.end( SPAN_BAROMETER , branchNanos );
         }
         else if( event.sensor.getType() == Sensor.TYPE_LIGHT ) {
+            long branchNanos = tracer.begin();
             // Get the sensor data
             float light = event.values[0];
+            // Roll up and summarize the reading
+            rollupLight.add( currentTime , light );
+            summaryLight.add( currentTime , light , accuracy );
             // Log the sensor data to the log file
             if( currentTime - prevLogTimeLight >= LOGGING_RATE_LIGHT ) {
                 prevLogTimeLight = currentTime;
-                String logLine = 
-                    light + "," + accuracy;
-                loggerLight.logEvent( logLine );
+                loggerLight.logEvent( light , accuracy );
             }
             // Display the sensor data on the GUI
             if( currentTime - prevDisplayTimeLight >= DISPLAY_RATE_LIGHT ) {
                 prevDisplayTimeLight = currentTime;
-                String displayLine = 
-                    "light: " + light + "\n";
-                RealTimeDisplay.updateDisplay( DISPLAY_LIGHT , displayLine );
+                RealTimeDisplay.updateDisplay( DISPLAY_LIGHT , light );
             }
+            // Trace the branch
+            tracer.end( SPAN_LIGHT , branchNanos );
         }
         else if( event.sensor.getType() == Sensor.TYPE_PROXIMITY ) {
+            long branchNanos = tracer.begin();
             // Get the sensor data
             float proximity = event.values[0];
+            // Roll up and summarize the reading
+            rollupProximity.add( currentTime , proximity );
+            summaryProximity.add( currentTime , proximity , accuracy );
             // Log the sensor data to the log file
             if( currentTime - prevLogTimeProximity >= LOGGING_RATE_PROXIMITY ) {
                 prevLogTimeProximity = currentTime;
-                String logLine = 
-                    proximity + "," + accuracy;
-                loggerProximity.logEvent( logLine );
+                loggerProximity.logEvent( proximity , accuracy );
             }
             // Display the sensor data on the GUI
             if( currentTime - prevDisplayTimeProximity >= DISPLAY_RATE_PROXIMITY ) {
                 prevDisplayTimeProximity = currentTime;
-                String displayLine = 
-                    "proximity: " + proximity + "\n";
-                RealTimeDisplay.updateDisplay( DISPLAY_PROXIMITY , displayLine );
+                RealTimeDisplay.updateDisplay( DISPLAY_PROXIMITY , proximity );
             }
+            // Trace the branch
+            tracer.end( SPAN_PROXIMITY , branchNanos );
         }
         else {
             // Ignore, unknown sensor type
@@ -691,12 +900,69 @@ public class SensorLogAppService
         // Ignore
     }
 
+    /** Helper method that fuses a gyro reading into the orientation, and logs/displays it. */
+    private void updateOrientation( long currentTime , 
+                                    long eventTimestamp , 
+                                    float gx , float gy , float gz ) {
+
+        // Time since the previous gyro reading (the event timestamp is in nanosec)
+        long prevTimestamp = prevGyroTimestamp;
+        prevGyroTimestamp = eventTimestamp;
+        if( prevTimestamp == 0L || eventTimestamp <= prevTimestamp ) {
+            return;
+        }
+        float dt = ( eventTimestamp - prevTimestamp ) * 1.0E-9F;
+
+        // Update the orientation (the magnetic reading is zero until the first one arrives,
+        //  in which case the filter falls back to gyro and accl only)
+        orientationFilter.update( gx , gy , gz , 
+                                  latestAccl[0] , latestAccl[1] , latestAccl[2] , 
+                                  latestMagnetic[0] , latestMagnetic[1] , latestMagnetic[2] , 
+                                  dt );
+
+        // Log the orientation to the log file
+        if( currentTime - prevLogTimeOrientation >= LOGGING_RATE_ORIENTATION ) {
+            prevLogTimeOrientation = currentTime;
+            orientationFilter.getQuaternion( orientationQuaternion );
+            orientationFilter.getEulerAngles( orientationAngles );
+            loggerOrientation.logEvent( orientationQuaternion , orientationAngles );
+        }
+        // Display the orientation on the GUI
+        if( currentTime - prevDisplayTimeOrientation >= DISPLAY_RATE_ORIENTATION ) {
+            prevDisplayTimeOrientation = currentTime;
+            RealTimeDisplay.updateDisplay( DISPLAY_ORIENTATION , 
+                                           orientationFilter.getRoll() , 
+                                           orientationFilter.getPitch() , 
+                                           orientationFilter.getYaw() );
+        }
+    }
+
+    /** Orientation filter fusing the gyro, accl and magnetic readings. */
+    private final OrientationFilter orientationFilter = 
+        new OrientationFilter( ORIENTATION_FILTER_GAIN );
+    /** Latest accl reading (for the orientation filter). */
+    private final float[] latestAccl = new float[3];
+    /** Latest magnetic reading (for the orientation filter). */
+    private final float[] latestMagnetic = new float[3];
+    /** Orientation quaternion (w, x, y, z), re-used for logging. */
+    private final float[] orientationQuaternion = new float[4];
+    /** Orientation euler angles (roll, pitch, yaw) in degrees, re-used for logging/display. */
+    private final float[] orientationAngles = new float[3];
+    /** Timestamp of the previous gyro reading (nanosec, event time base). */
+    private long prevGyroTimestamp;
+    /** Default orientation filter gain (beta). */
+    private static final float ORIENTATION_FILTER_GAIN = 0.1F;
+
     /** Called when the location has changed. */
     @Override
     public void onLocationChanged( Location location ) {
 
+        // Time (and trace) the callback
+        long startNanos = locationCallbackTimer.start();
+        long beginNanos = tracer.begin();
+
         // Get the current timestamp
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         // Get the location timestamp (may be much older than the current timestamp)
         long locationTime = location.getTime();
 
@@ -739,6 +1005,8 @@ public class SensorLogAppService
                 "speed: " + speed + "\n";
             RealTimeDisplay.updateDisplay( DISPLAY_LOCATION , displayLine );
         }
+        tracer.end( SPAN_LOCATION_CALLBACK , beginNanos );
+        locationCallbackTimer.stop( startNanos );
     }
 
     /** Called when a location provider is disabled. */
@@ -769,6 +1037,7 @@ public class SensorLogAppService
     private static final long LOGGING_RATE_MAGNETIC = 25L;         // 40 Hz
     private static final long LOGGING_RATE_GYROSCOPE = 25L;        // 40 Hz
     private static final long LOGGING_RATE_ROTATION_VECTOR = 25L;  // 40 Hz
+    private static final long LOGGING_RATE_ORIENTATION = 25L;      // 40 Hz (but fused at the gyro rate)
     private static final long LOGGING_RATE_BAROMETER = 1000L;      // 1 Hz
     private static final long LOGGING_RATE_LIGHT = 100L;           // 10 Hz
     private static final long LOGGING_RATE_PROXIMITY = 0L;         // Fastest (since it is triggered on change only)
@@ -781,6 +1050,7 @@ public class SensorLogAppService
     private long prevLogTimeMagnetic;
     private long prevLogTimeGyroscope;
     private long prevLogTimeRotationVector;
+    private long prevLogTimeOrientation;
     private long prevLogTimeBarometer;
     private long prevLogTimeLight;
     private long prevLogTimeProximity;
@@ -793,6 +1063,7 @@ public class SensorLogAppService
     private static final long DISPLAY_RATE_MAGNETIC = 100L;        // 10 Hz
     private static final long DISPLAY_RATE_GYROSCOPE = 100L;       // 10 Hz
     private static final long DISPLAY_RATE_ROTATION_VECTOR = 100L; // 10 Hz
+    private static final long DISPLAY_RATE_ORIENTATION = 100L;     // 10 Hz
     private static final long DISPLAY_RATE_BAROMETER = 1000L;      // 1 Hz
     private static final long DISPLAY_RATE_LIGHT = 100L;           // 10 Hz
     private static final long DISPLAY_RATE_PROXIMITY = 0L;         // Fastest (since it is triggered on change only)
@@ -805,22 +1076,28 @@ public class SensorLogAppService
     private long prevDisplayTimeMagnetic;
     private long prevDisplayTimeGyroscope;
     private long prevDisplayTimeRotationVector;
+    private long prevDisplayTimeOrientation;
     private long prevDisplayTimeBarometer;
     private long prevDisplayTimeLight;
     private long prevDisplayTimeProximity;
 
-    /** Helper method to register sensor displays. */
-    private void registerSensorDisplays() {
+    /** Helper method to register sensor displays (package-private for the JVM benchmarks). */
+    void registerSensorDisplays() {
         RealTimeDisplay.addDisplay( DISPLAY_LOCATION , "provider: \nlatitude: \nlongitude: \naltitude: \nspeed: \n" );
-        RealTimeDisplay.addDisplay( DISPLAY_ACCELEROMETER , "x: \ny: \nz: \n" );
-        RealTimeDisplay.addDisplay( DISPLAY_GRAVITY , "x: \ny: \nz: \n" );
-        RealTimeDisplay.addDisplay( DISPLAY_LINEAR_ACCL , "x: \ny: \nz: \n" );
-        RealTimeDisplay.addDisplay( DISPLAY_MAGNETIC , "x: \ny: \nz: \n" );
-        RealTimeDisplay.addDisplay( DISPLAY_GYROSCOPE , "x: \ny: \nz: \n" );
-        RealTimeDisplay.addDisplay( DISPLAY_ROTATION_VECTOR , "x: \ny: \nz: \n" );
-        RealTimeDisplay.addDisplay( DISPLAY_BAROMETER , "pressure: \naltitude: \n" );
-        RealTimeDisplay.addDisplay( DISPLAY_LIGHT , "light: \n" );
-        RealTimeDisplay.addDisplay( DISPLAY_PROXIMITY , "proximity: \n" );
+        RealTimeDisplay.addDisplay( DISPLAY_ACCELEROMETER , TEMPLATE_XYZ );
+        RealTimeDisplay.addDisplay( DISPLAY_GRAVITY , TEMPLATE_XYZ );
+        RealTimeDisplay.addDisplay( DISPLAY_LINEAR_ACCL , TEMPLATE_XYZ );
+        RealTimeDisplay.addDisplay( DISPLAY_MAGNETIC , TEMPLATE_XYZ );
+        RealTimeDisplay.addDisplay( DISPLAY_GYROSCOPE , TEMPLATE_XYZ );
+        RealTimeDisplay.addDisplay( DISPLAY_ROTATION_VECTOR , TEMPLATE_ROTATION_VECTOR );
+        RealTimeDisplay.addDisplay( DISPLAY_ORIENTATION , TEMPLATE_ORIENTATION );
+        RealTimeDisplay.addDisplay( DISPLAY_BAROMETER , TEMPLATE_BAROMETER );
+        RealTimeDisplay.addDisplay( DISPLAY_LIGHT , TEMPLATE_LIGHT );
+        RealTimeDisplay.addDisplay( DISPLAY_PROXIMITY , TEMPLATE_PROXIMITY );
+        RealTimeDisplay.addPlotDisplay( DISPLAY_ACCELEROMETER_PLOT , 3 , PLOT_WINDOW , PLOT_CAPACITY );
+        RealTimeDisplay.addPlotDisplay( DISPLAY_GYROSCOPE_PLOT , 3 , PLOT_WINDOW , PLOT_CAPACITY );
+        RealTimeDisplay.addPlotDisplay( DISPLAY_MAGNETIC_PLOT , 3 , PLOT_WINDOW , PLOT_CAPACITY );
+        RealTimeDisplay.addDisplay( DISPLAY_METRICS , "" );
     }
 
     // Sensor real-time displays
@@ -831,9 +1108,63 @@ public class SensorLogAppService
     private static final String DISPLAY_MAGNETIC = "MAGNETIC";
     private static final String DISPLAY_GYROSCOPE = "GYROSCOPE";
     private static final String DISPLAY_ROTATION_VECTOR = "ROTATION VECTOR";
+    private static final String DISPLAY_ORIENTATION = "ORIENTATION";
     private static final String DISPLAY_BAROMETER = "BAROMETER";
     private static final String DISPLAY_LIGHT = "LIGHT";
     private static final String DISPLAY_PROXIMITY = "PROXIMITY";
+    private static final String DISPLAY_ACCELEROMETER_PLOT = "ACCELEROMETER PLOT";
+    private static final String DISPLAY_GYROSCOPE_PLOT = "GYROSCOPE PLOT";
+    private static final String DISPLAY_MAGNETIC_PLOT = "MAGNETIC PLOT";
+    private static final String DISPLAY_METRICS = "METRICS";
+
+    // Real-time plots
+    private static final long PLOT_WINDOW = 10000L;    // Last 10 sec
+    private static final int PLOT_CAPACITY = 6000;     // 10 sec at up to 500 Hz (plus a safety margin)
+
+    // Templates to format the numeric real-time displays
+    private static final DisplayTemplate TEMPLATE_XYZ = 
+        new DisplayTemplate( "x: " , "y: " , "z: " );
+    private static final DisplayTemplate TEMPLATE_ROTATION_VECTOR = 
+        new DisplayTemplate( "x: " , "y: " , "z: " , "scalar: " );
+    private static final DisplayTemplate TEMPLATE_ORIENTATION = 
+        new DisplayTemplate( "roll: " , "pitch: " , "yaw: " );
+    private static final DisplayTemplate TEMPLATE_BAROMETER = 
+        new DisplayTemplate( "pressure: " , "altitude: " );
+    private static final DisplayTemplate TEMPLATE_LIGHT = 
+        new DisplayTemplate( "light: " );
+    private static final DisplayTemplate TEMPLATE_PROXIMITY = 
+        new DisplayTemplate( "proximity: " );
+
+    /** Runtime metrics of the app. */
+    private static final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    /** Time to process a sensor event, and a location update. */
+    private final LatencyTimer sensorCallbackTimer = metrics.timer( "sensor.callback" );
+    private final LatencyTimer locationCallbackTimer = metrics.timer( "location.callback" );
+    /** Exports the metrics snapshots. */
+    private final MetricsReporter metricsReporter = new MetricsReporter( metrics , METRICS_PERIOD );
+    /** Time between two metrics snapshots (millis). */
+    private static final long METRICS_PERIOD = 5000L;
+    /** Name of the metrics file (in the session's log folder). */
+    private static final String METRICS_FILE_NAME = "Metrics.csv";
+
+    /** Trace of the app's spans. */
+    private static final SpanTracer tracer = SpanTracer.getDefault();
+    /** Trace spans of a sensor callback, and a location update. */
+    private static final int SPAN_SENSOR_CALLBACK = tracer.span( "sensor.callback" );
+    private static final int SPAN_LOCATION_CALLBACK = tracer.span( "location.callback" );
+    /** Trace spans of the sensor callback's branches (by sensor type). */
+    private static final int SPAN_ACCELEROMETER = tracer.span( "sensor.accelerometer" );
+    private static final int SPAN_GRAVITY = tracer.span( "sensor.gravity" );
+    private static final int SPAN_LINEAR_ACCL = tracer.span( "sensor.linearAccl" );
+    private static final int SPAN_MAGNETIC = tracer.span( "sensor.magnetic" );
+    private static final int SPAN_GYROSCOPE = tracer.span( "sensor.gyroscope" );
+    private static final int SPAN_ROTATION_VECTOR = tracer.span( "sensor.rotationVector" );
+    private static final int SPAN_BAROMETER = tracer.span( "sensor.barometer" );
+    private static final int SPAN_LIGHT = tracer.span( "sensor.light" );
+    private static final int SPAN_PROXIMITY = tracer.span( "sensor.proximity" );
+    /** Callback time that dumps a trace (nanosec), and the time dumped (nanosec). */
+    private static final long TRACE_TRIGGER_NANOS = 20L * 1000000L;
+    private static final long TRACE_WINDOW_NANOS = 10L * 1000000000L;
 
     /** Binder class for Service's API. */
     private final IBinder binder = new SensorLogAppServiceApi();
@@ -0,0 +1,131 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import android.content.*;
+import android.graphics.*;
+import android.view.*;
+
+/**
+   View that plots the latest samples in a plot buffer.
+
+   <p> The samples in the time window are decimated to a min/max per
+   pixel column, and each channel is drawn as one vertical line per
+   column, so the drawing cost does not depend on the sampling rate.
+   All arrays and paints are allocated when the view is created or
+   resized, so drawing a frame does not allocate anything.
+ */
+public class SensorPlotView
+    extends View {
+
+    /** Creates a plot view for the buffer, showing the last window (millisec). */
+    public SensorPlotView( Context context ,
+                           PlotBuffer buffer ,
+                           long windowMillis ) {
+        super( context );
+        this.buffer = buffer;
+        this.windowMillis = windowMillis;
+
+        // One paint per channel
+        channelPaints = new Paint[ buffer.getNumChannels() ];
+        for( int channel = 0 ; channel < channelPaints.length ; ++channel ) {
+            Paint paint = new Paint();
+            paint.setColor( CHANNEL_COLORS[ channel % CHANNEL_COLORS.length ] );
+            paint.setStrokeWidth( 1.0F );
+            channelPaints[ channel ] = paint;
+        }
+        axisPaint.setColor( Color.GRAY );
+    }
+
+    /** Called when the view is resized (re-allocates the per-column arrays). */
+    @Override
+    protected void onSizeChanged( int width , int height ,
+                                  int oldWidth , int oldHeight ) {
+        super.onSizeChanged( width , height , oldWidth , oldHeight );
+        if( width > 0 ) {
+            decimator = new MinMaxDecimator( buffer.getNumChannels() , width );
+            lines = new float[ width * 4 ];
+        }
+    }
+
+    /** Called to measure the view (full width, fixed height). */
+    @Override
+    protected void onMeasure( int widthMeasureSpec ,
+                              int heightMeasureSpec ) {
+        int width = MeasureSpec.getSize( widthMeasureSpec );
+        int height = (int) ( PLOT_HEIGHT_DP * getResources().getDisplayMetrics().density );
+        setMeasuredDimension( width , height );
+    }
+
+    /** Called to draw the plot. */
+    @Override
+    protected void onDraw( Canvas canvas ) {
+        super.onDraw( canvas );
+
+        // Check if the view has been sized, and if there are samples
+        int width = getWidth() , height = getHeight();
+        long writeCount = buffer.getWriteCount();
+        if( decimator == null || width <= 0 || height <= 0 || writeCount == 0 ) {
+            return;
+        }
+
+        // Decimate the samples in the window ending at the latest sample
+        long endTime = buffer.getTimestamp( writeCount - 1 ) + 1;
+        if( decimator.decimate( buffer , endTime - windowMillis , endTime , width ) == 0 ) {
+            return;
+        }
+
+        // Scale the y-axis to the value range (with some padding)
+        float minValue = decimator.getMinValue() , maxValue = decimator.getMaxValue();
+        float range = Math.max( maxValue - minValue , MIN_VALUE_RANGE );
+        float padding = range * 0.05F;
+        minValue -= padding;
+        range += 2 * padding;
+        float yScale = height / range;
+
+        // Zero line (if in range)
+        if( minValue < 0.0F && minValue + range > 0.0F ) {
+            float zeroY = height + minValue * yScale;
+            canvas.drawLine( 0.0F , zeroY , width , zeroY , axisPaint );
+        }
+
+        // Draw a vertical min-max line per column for each channel
+        for( int channel = 0 ; channel < channelPaints.length ; ++channel ) {
+            float[] mins = decimator.getMins( channel ) , maxs = decimator.getMaxs( channel );
+            int numPoints = 0;
+            for( int column = 0 ; column < width ; ++column ) {
+                float min = mins[ column ];
+                if( min != min ) {
+                    // No samples in this column (NaN)
+                    continue;
+                }
+                float x = column;
+                lines[ numPoints++ ] = x;
+                lines[ numPoints++ ] = height - ( min - minValue ) * yScale;
+                lines[ numPoints++ ] = x;
+                // Make flat columns at least one pixel tall, so they are visible
+                lines[ numPoints++ ] = height - ( maxs[ column ] - minValue ) * yScale - 1.0F;
+            }
+            canvas.drawLines( lines , 0 , numPoints , channelPaints[ channel ] );
+        }
+    }
+
+    /** Buffer holding the samples to plot. */
+    private final PlotBuffer buffer;
+    /** Time window shown (millisec). */
+    private final long windowMillis;
+    /** Paint for each channel. */
+    private final Paint[] channelPaints;
+    /** Paint for the zero line. */
+    private final Paint axisPaint = new Paint();
+    /** Decimator (sized to the view width). */
+    private MinMaxDecimator decimator;
+    /** Line end points passed to the canvas (4 floats per column). */
+    private float[] lines;
+
+    /** Plot height (dp). */
+    private static final float PLOT_HEIGHT_DP = 120.0F;
+    /** Minimum y-axis range (so that a flat signal is not blown up). */
+    private static final float MIN_VALUE_RANGE = 0.1F;
+    /** Channel colors (x, y, z). */
+    private static final int[] CHANNEL_COLORS =
+        new int[] { Color.RED , Color.GREEN , Color.CYAN , Color.YELLOW , Color.MAGENTA };
+}
@@ -0,0 +1,90 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import android.app.*;
+import android.content.*;
+import android.net.*;
+import android.provider.*;
+import android.util.*;
+
+/**
+   Service that uploads the closed sessions to the collection server
+   (R.string.sync_server_url, sync is off if empty) in the background.
+   Started when the data collection stops; it only runs on Wi-Fi, since
+   a cellular upload costs far more radio energy (and data) per byte.
+ */
+public class SessionSyncService
+    extends IntentService {
+
+    /** Creates the service. */
+    public SessionSyncService() {
+        super( "SessionSyncService" );
+    }
+
+    /** Uploads the closed sessions (on the service's worker thread). */
+    @Override
+    protected void onHandleIntent( Intent intent ) {
+
+        // Check if sync is on, and that we are on Wi-Fi
+        String serverUrl = getString( R.string.sync_server_url );
+        if ( serverUrl == null || serverUrl.isEmpty() )
+            return;
+        ConnectivityManager connectivityManager =
+            (ConnectivityManager) getSystemService( Context.CONNECTIVITY_SERVICE );
+        NetworkInfo network = connectivityManager.getActiveNetworkInfo();
+        if ( network == null ||
+             ! network.isConnected() ||
+             network.getType() != ConnectivityManager.TYPE_WIFI ) {
+            Log.i( TAG , "Not on Wi-Fi, session upload postponed" );
+            return;
+        }
+        File logDirectory = FileLogger.getLogDirectory();
+        if ( logDirectory == null || ! logDirectory.isDirectory() )
+            return;
+
+        // Upload the sessions the server does not have (only one upload at a time)
+        synchronized( SessionSyncService.class ) {
+            try {
+                SessionUploader uploader =
+                    new SessionUploader( new URL( serverUrl ) ,
+                                         getDeviceId() ,
+                                         new File( getFilesDir() , JOURNAL_FILE_NAME ) ,
+                                         new TokenBucket( MAX_BYTES_PER_SECOND , BURST_BYTES ) );
+                int numFiles = uploader.syncAll( logDirectory );
+                for ( Map.Entry< String , IOException > failure : uploader.getFailures().entrySet() )
+                    Log.e( TAG , "Unable to upload session " + failure.getKey() , failure.getValue() );
+                Log.i( TAG , "Uploaded " + numFiles + " files (" +
+                       uploader.getNumChunksSent() + " chunks, " +
+                       uploader.getChunkBytesSent() + " bytes), " +
+                       uploader.getNumFilesSkipped() + " already uploaded, " +
+                       uploader.getFailures().size() + " sessions failed" );
+            }
+            catch ( Exception e ) {
+                // The next sync resumes from the chunks that got through
+                Log.e( TAG , "Unable to upload the sessions" , e );
+            }
+        }
+    }
+
+    /** Helper method that gets the device's name on the server (the Android ID). */
+    private String getDeviceId() {
+        String androidId =
+            Settings.Secure.getString( getContentResolver() ,
+                                       Settings.Secure.ANDROID_ID );
+        if ( androidId == null || ! androidId.matches( "[A-Za-z0-9]+" ) )
+            return "unknown";
+        return androidId;
+    }
+
+    /** Journal of the uploaded files (in the app's private folder). */
+    private static final String JOURNAL_FILE_NAME = "SyncJournal.txt";
+    /** Upload bandwidth limit (bytes/s) and burst (bytes). */
+    private static final long MAX_BYTES_PER_SECOND = 256 * 1024;
+    private static final long BURST_BYTES = 64 * 1024;
+
+    /** DEBUG tag. */
+    private static final String TAG = "SessionSyncService";
+}
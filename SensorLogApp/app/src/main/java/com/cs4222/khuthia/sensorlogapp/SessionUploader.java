@@ -0,0 +1,372 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import com.cs4222.khuthia.sensorlogapp.analysis.*;
+
+/**
+   Uploads the closed sessions to a collection server (see the desktop
+   module's CollectionServer), sending only what the server does not have:
+   <ul>
+     <li> Files already uploaded (same length and modification time, as in
+          a local journal) are skipped without being read
+     <li> Other files are split into content-defined chunks, and only the
+          chunks the server is missing are sent, in batches; so a file that
+          grew only sends its new chunks, and an interrupted upload resumes
+          from the chunks that did not get through
+     <li> Once the server has all its chunks, the file's manifest (the list
+          of chunks) is sent, and the file is added to the journal
+   </ul>
+   The bytes sent go through a token bucket, to bound the bandwidth.
+ */
+public class SessionUploader {
+
+    /**
+       Creates an uploader.
+
+       @param  serverUrl    Collection server's URL
+       @param  deviceId     Device's name on the server
+       @param  journalFile  Local journal of the uploaded files
+       @param  bandwidth    Rate limit of the uploads
+     */
+    public SessionUploader( URL serverUrl ,
+                            String deviceId ,
+                            File journalFile ,
+                            TokenBucket bandwidth )
+        throws IOException {
+        this.serverUrl = serverUrl;
+        this.deviceId = deviceId;
+        this.journalFile = journalFile;
+        this.bandwidth = bandwidth;
+        readJournal();
+    }
+
+    /**
+       Uploads all the closed sessions (see {@link #isClosed}) in a log directory.
+
+       <p> A session that fails to upload does not stop the others: its
+       error is kept (see {@link #getFailures}), and the next sync resumes
+       it from the chunks that got through.
+
+       @return  Number of files uploaded
+     */
+    public int syncAll( File logDirectory ) {
+        File[] sessionFolders = logDirectory.listFiles();
+        if( sessionFolders == null )
+            return 0;
+        Arrays.sort( sessionFolders );
+        long now = System.currentTimeMillis();
+        int numFilesBefore = numFilesSent;
+        for( File sessionFolder : sessionFolders ) {
+            if( ! isClosed( sessionFolder , now ) )
+                continue;
+            try {
+                syncSession( sessionFolder );
+            }
+            catch( IOException e ) {
+                failures.put( sessionFolder.getName() , e );
+            }
+        }
+        return numFilesSent - numFilesBefore;
+    }
+
+    /**
+       Checks if a session folder is closed: either its closed marker (written
+       last when the service closes the session) is as new as its other files,
+       or none of its files changed for IDLE_MILLIS (a session the app crashed
+       in, which has no marker).
+
+       <p> A marker older than the logs is left over from an earlier session
+       of the same name, so that session is still open.
+     */
+    static boolean isClosed( File sessionFolder ,
+                             long now ) {
+        File[] files = sessionFolder.listFiles();
+        if( files == null )
+            return false;
+        long lastModified = 0L , closedTime = -1L;
+        for( File file : files ) {
+            if( file.getName().equals( CLOSED_FILE_NAME ) )
+                closedTime = file.lastModified();
+            else
+                lastModified = Math.max( lastModified , file.lastModified() );
+        }
+        return ( closedTime >= lastModified || now - lastModified >= IDLE_MILLIS );
+    }
+
+    /**
+       Uploads the files of a session folder.
+
+       @return  Number of files uploaded
+     */
+    public int syncSession( File sessionFolder )
+        throws IOException {
+        File[] files = sessionFolder.listFiles();
+        if( files == null )
+            return 0;
+        Arrays.sort( files );
+        int numFiles = 0;
+        for( File file : files ) {
+            // The closed marker is local state, it is not uploaded
+            if( file.isFile() &&
+                ! file.getName().equals( CLOSED_FILE_NAME ) &&
+                syncFile( sessionFolder.getName() , file ) )
+                ++numFiles;
+        }
+        return numFiles;
+    }
+
+    /**
+       Uploads a file of a session (if not already uploaded).
+
+       @return  True if the file was uploaded, false if it was already
+     */
+    public boolean syncFile( String sessionName ,
+                             File file )
+        throws IOException {
+
+        // Skip the file if it is unchanged since its upload
+        String key = sessionName + "/" + file.getName();
+        String version = file.length() + "," + file.lastModified();
+        if( version.equals( journal.get( key ) ) ) {
+            ++numFilesSkipped;
+            return false;
+        }
+
+        // Split it into chunks
+        final List< String > hashes = new ArrayList< String >();
+        final Map< String , long[] > chunkRanges = new LinkedHashMap< String , long[] >();
+        final long[] length = { 0L };
+        chunker.chunk( file , new ContentChunker.ChunkCallback() {
+                public void onChunk( byte[] data , int start , int chunkLength , long offset ) {
+                    String hash = ContentChunker.hash( data , start , chunkLength );
+                    hashes.add( hash );
+                    if( ! chunkRanges.containsKey( hash ) )
+                        chunkRanges.put( hash , new long[] { offset , chunkLength } );
+                    length[0] += chunkLength;
+                }
+            } );
+
+        // Send the chunks the server is missing, then the manifest
+        List< String > missing = findMissing( new ArrayList< String >( chunkRanges.keySet() ) );
+        sendChunks( file , missing , chunkRanges );
+        StringBuilder manifest = new StringBuilder();
+        manifest.append( length[0] ).append( '\n' );
+        for( String hash : hashes )
+            manifest.append( hash ).append( '\n' );
+        String path = "files/" + encode( deviceId ) + "/" + encode( sessionName ) + "/" + encode( file.getName() );
+        int status = request( "PUT" , path , manifest.toString().getBytes( "UTF-8" ) , null );
+        if( status != HttpURLConnection.HTTP_OK )
+            throw new IOException( "Upload of " + key + " failed (" + status + ")" );
+
+        // Add it to the journal
+        journal.put( key , version );
+        Writer out = new OutputStreamWriter( new FileOutputStream( journalFile , true ) , "UTF-8" );
+        try {
+            out.write( key + "\t" + version + "\n" );
+        }
+        finally {
+            out.close();
+        }
+        ++numFilesSent;
+        return true;
+    }
+
+    /** Gets the number of files uploaded. */
+    public int getNumFilesSent() {
+        return numFilesSent;
+    }
+
+    /** Gets the number of files skipped (already uploaded). */
+    public int getNumFilesSkipped() {
+        return numFilesSkipped;
+    }
+
+    /** Gets the sessions that failed to upload in {@link #syncAll}, and their errors (in upload order). */
+    public Map< String , IOException > getFailures() {
+        return failures;
+    }
+
+    /** Gets the number of chunks sent. */
+    public int getNumChunksSent() {
+        return numChunksSent;
+    }
+
+    /** Gets the number of chunk bytes sent. */
+    public long getChunkBytesSent() {
+        return chunkBytesSent;
+    }
+
+    /** Helper method that asks the server which chunks it is missing (in batches). */
+    private List< String > findMissing( List< String > hashes )
+        throws IOException {
+        List< String > missing = new ArrayList< String >();
+        for( int i = 0 ; i < hashes.size() ; i += MISSING_BATCH_SIZE ) {
+            StringBuilder body = new StringBuilder();
+            for( String hash : hashes.subList( i , Math.min( hashes.size() , i + MISSING_BATCH_SIZE ) ) )
+                body.append( hash ).append( '\n' );
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            int status = request( "POST" , "missing" , body.toString().getBytes( "UTF-8" ) , response );
+            if( status != HttpURLConnection.HTTP_OK )
+                throw new IOException( "Chunk query failed (" + status + ")" );
+            for( String hash : response.toString( "UTF-8" ).split( "\n" ) ) {
+                if( ! hash.isEmpty() )
+                    missing.add( hash );
+            }
+        }
+        return missing;
+    }
+
+    /** Helper method that sends chunks of a file (in batches of up to BATCH_BYTES). */
+    private void sendChunks( File file ,
+                             List< String > hashes ,
+                             Map< String , long[] > chunkRanges )
+        throws IOException {
+        RandomAccessFile in = new RandomAccessFile( file , "r" );
+        try {
+            int i = 0;
+            while( i < hashes.size() ) {
+
+                // Read the next batch
+                ByteArrayOutputStream batch = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream( batch );
+                int numChunks = 0;
+                long numBytes = 0L;
+                do {
+                    String hash = hashes.get( i++ );
+                    long[] range = chunkRanges.get( hash );
+                    if( range == null )
+                        throw new IOException( "Server asked for an unknown chunk " + hash );
+                    byte[] data = new byte[ (int) range[1] ];
+                    in.seek( range[0] );
+                    in.readFully( data );
+                    out.writeUTF( hash );
+                    out.writeInt( data.length );
+                    out.write( data );
+                    ++numChunks;
+                    numBytes += data.length;
+                } while( i < hashes.size() && batch.size() < BATCH_BYTES );
+                out.flush();
+
+                // Send it
+                int status = request( "POST" , "chunks" , batch.toByteArray() , null );
+                if( status != HttpURLConnection.HTTP_OK )
+                    throw new IOException( "Chunk upload failed (" + status + ")" );
+                numChunksSent += numChunks;
+                chunkBytesSent += numBytes;
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+       Helper method that sends a request (throttled).
+
+       @param   response  Stream for the response body (null to ignore it)
+       @return  HTTP status
+     */
+    private int request( String method ,
+                         String path ,
+                         byte[] body ,
+                         OutputStream response )
+        throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL( serverUrl , path ).openConnection();
+        try {
+            connection.setRequestMethod( method );
+            connection.setConnectTimeout( TIMEOUT_MILLIS );
+            connection.setReadTimeout( TIMEOUT_MILLIS );
+            connection.setDoOutput( true );
+            connection.setFixedLengthStreamingMode( body.length );
+            connection.setRequestProperty( "Content-Type" , "application/octet-stream" );
+            OutputStream out = connection.getOutputStream();
+            try {
+                for( int offset = 0 ; offset < body.length ; offset += WRITE_SIZE ) {
+                    int length = Math.min( WRITE_SIZE , body.length - offset );
+                    bandwidth.acquire( length );
+                    out.write( body , offset , length );
+                }
+            }
+            finally {
+                out.close();
+            }
+            int status = connection.getResponseCode();
+            InputStream in = ( status < 400 ? connection.getInputStream() : connection.getErrorStream() );
+            if( in != null ) {
+                try {
+                    byte[] buffer = new byte[ 4096 ];
+                    int numRead;
+                    while( ( numRead = in.read( buffer ) ) > 0 ) {
+                        if( response != null )
+                            response.write( buffer , 0 , numRead );
+                    }
+                }
+                finally {
+                    in.close();
+                }
+            }
+            return status;
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    /** Helper method that reads the journal (the last line of a file wins). */
+    private void readJournal()
+        throws IOException {
+        if( ! journalFile.isFile() )
+            return;
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( journalFile ) , "UTF-8" ) );
+        try {
+            String line;
+            while( ( line = reader.readLine() ) != null ) {
+                int tab = line.indexOf( '\t' );
+                if( tab > 0 )
+                    journal.put( line.substring( 0 , tab ) , line.substring( tab + 1 ) );
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /** Helper method that URL encodes a path component. */
+    private static String encode( String name )
+        throws UnsupportedEncodingException {
+        return URLEncoder.encode( name , "UTF-8" );
+    }
+
+    /** Collection server's URL. */
+    private final URL serverUrl;
+    /** Device's name on the server. */
+    private final String deviceId;
+    /** Journal file, and its entries ("session/file" to "length,lastModified"). */
+    private final File journalFile;
+    private final Map< String , String > journal = new HashMap< String , String >();
+    /** Rate limit of the uploads. */
+    private final TokenBucket bandwidth;
+    /** Splits the files into chunks. */
+    private final ContentChunker chunker = new ContentChunker();
+    /** Upload counts. */
+    private int numFilesSent = 0 , numFilesSkipped = 0 , numChunksSent = 0;
+    private long chunkBytesSent = 0L;
+    /** Sessions that failed to upload, and their errors. */
+    private final Map< String , IOException > failures = new LinkedHashMap< String , IOException >();
+
+    /** Name of the closed marker (in the session's log folder, written by the service). */
+    public static final String CLOSED_FILE_NAME = "Closed";
+    /** Time without changes after which a session without a closed marker counts as closed (ms). */
+    private static final long IDLE_MILLIS = 30L * 60L * 1000L;
+    /** Number of hashes per missing chunk query. */
+    private static final int MISSING_BATCH_SIZE = 512;
+    /** Size of a chunk upload batch (bytes, the last chunk may overshoot). */
+    private static final int BATCH_BYTES = 256 * 1024;
+    /** Size of the throttled writes (bytes). */
+    private static final int WRITE_SIZE = 8192;
+    /** Connect and read timeout (ms). */
+    private static final int TIMEOUT_MILLIS = 30000;
+}
@@ -0,0 +1,72 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+
+/**
+   Token bucket rate limiter: bytes are sent only when there are tokens
+   for them, with tokens refilled at a fixed rate up to a burst size.
+   Used to bound the bandwidth of the session uploads.
+ */
+public class TokenBucket {
+
+    /**
+       Creates a bucket (initially full).
+
+       @param  bytesPerSecond  Refill rate
+       @param  burstBytes      Bucket size
+     */
+    public TokenBucket( long bytesPerSecond ,
+                        long burstBytes ) {
+        if( bytesPerSecond <= 0 || burstBytes <= 0 )
+            throw new IllegalArgumentException( "Invalid rate " + bytesPerSecond + "/" + burstBytes );
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstBytes = burstBytes;
+        this.tokens = burstBytes;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /** Waits until the given number of bytes can be sent (and takes their tokens). */
+    public synchronized void acquire( long numBytes )
+        throws InterruptedIOException {
+        // Bytes beyond the burst size are taken in burst size pieces
+        while( numBytes > 0 ) {
+            long take = Math.min( numBytes , burstBytes );
+            refill();
+            while( tokens < take ) {
+                long waitNanos = ( take - tokens ) * 1000000000L / bytesPerSecond;
+                try {
+                    Thread.sleep( waitNanos / 1000000L , (int) ( waitNanos % 1000000L ) );
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException( "Interrupted while throttled" );
+                }
+                refill();
+            }
+            tokens -= take;
+            numBytes -= take;
+        }
+    }
+
+    /** Helper method that adds the tokens for the time since the last refill. */
+    private void refill() {
+        long now = System.nanoTime();
+        long newTokens = ( now - lastRefillNanos ) * bytesPerSecond / 1000000000L;
+        if( tokens + newTokens >= burstBytes ) {
+            tokens = burstBytes;
+            lastRefillNanos = now;
+        }
+        else if( newTokens > 0 ) {
+            tokens += newTokens;
+            // NOTE: Only the time of the whole tokens is consumed (no rounding drift)
+            lastRefillNanos += newTokens * 1000000000L / bytesPerSecond;
+        }
+    }
+
+    /** Refill rate (bytes/s) and bucket size (bytes). */
+    private final long bytesPerSecond , burstBytes;
+    /** Tokens available (bytes). */
+    private long tokens;
+    /** Time of the last refill (nanos). */
+    private long lastRefillNanos;
+}
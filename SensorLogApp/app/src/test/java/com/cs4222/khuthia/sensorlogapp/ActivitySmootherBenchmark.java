@@ -0,0 +1,66 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.cs4222.khuthia.sensorlogapp.analysis.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of the on-phone activity smoothing: a push of the next
+ * window's prediction (the Viterbi step and the trace back), for a few
+ * lags. It should not allocate (see -prof gc).
+ */
+@BenchmarkMode( { Mode.Throughput , Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class ActivitySmootherBenchmark {
+
+    /** Smoother lag (windows). */
+    @Param( { "0" , "8" , "32" } )
+    public int lag;
+
+    @Setup
+    public void setUp() {
+        // A model of activities lasting about 5 minutes (1.28 s windows)
+        Random random = new Random( 1L );
+        GroundTruthIndex index = new GroundTruthIndex();
+        UserActivities[] activities = { UserActivities.IDLE_INDOOR , UserActivities.WALKING ,
+                                        UserActivities.BUS , UserActivities.TRAIN , UserActivities.CAR };
+        try {
+            for( int i = 0 ; i < 100 ; ++i ) {
+                index.add( i * 300000L , activities[ random.nextInt( activities.length ) ].name() );
+            }
+        }
+        catch( java.io.IOException e ) {
+            throw new IllegalStateException( e );
+        }
+        index.setEndTime( 100 * 300000L );
+        smoother = new ActivitySmoother( ActivitySmoother.learn( Collections.singletonList( index ) , 1280L ) , lag );
+
+        // Predictions that mostly say WALKING, with a flicker every few windows
+        predictions = new UserActivities[ 1024 ];
+        for( int i = 0 ; i < predictions.length ; ++i ) {
+            predictions[i] = ( random.nextInt( 5 ) == 0 ? activities[ random.nextInt( activities.length ) ] :
+                               UserActivities.WALKING );
+        }
+    }
+
+    @Benchmark
+    public UserActivities push() {
+        UserActivities predicted = predictions[ next ];
+        next = ( next + 1 ) & ( predictions.length - 1 );
+        return smoother.push( predicted , 0.6F );
+    }
+
+    /** Smoother under test. */
+    private ActivitySmoother smoother;
+    /** Predictions pushed (in a loop). */
+    private UserActivities[] predictions;
+    /** Next prediction. */
+    private int next = 0;
+}
@@ -0,0 +1,84 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+import java.util.*;
+
+import com.cs4222.khuthia.sensorlogapp.analysis.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests learning the activity model from the ground truth of the logged
+ * sessions, and smoothing a stream of activity predictions.
+ */
+public class ActivitySmootherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Creates a session of WALKING [0,60s), BUS [60s,300s), WALKING [300s,360s). */
+    private GroundTruthIndex createIndex() throws Exception {
+        GroundTruthIndex index = new GroundTruthIndex();
+        index.add( 0L , "WALKING" );
+        index.add( 60000L , "BUS" );
+        index.add( 300000L , "WALKING" );
+        index.setEndTime( 360000L );
+        return index;
+    }
+
+    @Test
+    public void learn_countsTheLabelledTransitions() throws Exception {
+        ActivityHmm hmm = ActivitySmoother.learn( Collections.singletonList( createIndex() ) , 1000L );
+        List< String > names = hmm.getClassNames();
+        assertFalse( names.contains( UserActivities.Confirm.name() ) );
+        assertFalse( names.contains( UserActivities.INCORRECT.name() ) );
+        int walking = names.indexOf( "WALKING" ) , bus = names.indexOf( "BUS" ) , car = names.indexOf( "CAR" );
+        assertTrue( hmm.getTransition( walking , walking ) > 0.9 );
+        assertTrue( hmm.getTransition( walking , bus ) > hmm.getTransition( walking , car ) );
+        assertTrue( hmm.getPrior( bus ) > hmm.getPrior( walking ) );
+
+        // From the log folders (the text log of a session without an index)
+        File session = folder.newFolder( "session" );
+        PrintWriter out = new PrintWriter( new FileWriter( new File( session , "GroundTruth.txt" ) ) );
+        out.println( "2016-01-01-12-00-10PM,1451620810000,2016-01-01-12-00-00PM,1451620800000,WALKING" );
+        out.println( "2016-01-01-12-01-10PM,1451620870000,2016-01-01-12-01-00PM,1451620860000,BUS" );
+        out.close();
+        ActivityHmm logged = ActivitySmoother.learn( new File[] { session } , 1000L );
+        assertTrue( logged.getTransition( walking , bus ) > logged.getTransition( walking , car ) );
+    }
+
+    @Test
+    public void push_smoothsAFlicker() throws Exception {
+        ActivitySmoother smoother =
+            new ActivitySmoother( ActivitySmoother.learn( Collections.singletonList( createIndex() ) , 1000L ) , 3 );
+
+        // WALKING with a single CAR window, and then BUS for good
+        List< UserActivities > predicted = new ArrayList< UserActivities >();
+        for( int i = 0 ; i < 20 ; ++i ) {
+            predicted.add( i == 5 ? UserActivities.CAR : ( i < 12 ? UserActivities.WALKING : UserActivities.BUS ) );
+        }
+        List< UserActivities > smoothed = new ArrayList< UserActivities >();
+        for( int i = 0 ; i < predicted.size() ; ++i ) {
+            UserActivities activity = smoother.push( predicted.get( i ) , 0.6F );
+            if( i < 3 ) {
+                assertNull( activity );
+            }
+            else {
+                smoothed.add( activity );
+            }
+        }
+        UserActivities[] rest = new UserActivities[3];
+        assertEquals( 3 , smoother.flush( rest ) );
+        smoothed.addAll( Arrays.asList( rest ) );
+
+        // The flicker is gone, the real change is kept
+        assertEquals( predicted.size() , smoothed.size() );
+        for( int i = 0 ; i < smoothed.size() ; ++i ) {
+            assertEquals( "window " + i , ( i < 12 ? UserActivities.WALKING : UserActivities.BUS ) , smoothed.get( i ) );
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of FileLogger.logEvent (timestamp formatting, line building
+ * and the write) of a String line and of a reading's values, logging to a
+ * file, or to a stream that discards the bytes (to separate the formatting
+ * from the write).
+ */
+@BenchmarkMode( { Mode.Throughput , Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class FileLoggerBenchmark {
+
+    /** Where the log lines go: "file" or "discard". */
+    @Param( { "file" , "discard" } )
+    public String sink;
+
+    @Setup
+    public void setUp() throws IOException {
+        if( sink.equals( "file" ) ) {
+            logFile = File.createTempFile( "FileLoggerBenchmark" , ".txt" );
+            logger.logFileOut = new FileOutputStream( logFile );
+        }
+        else {
+            logger.logFileOut = new OutputStream() {
+                    @Override
+                    public void write( int b ) {
+                    }
+                    @Override
+                    public void write( byte[] b , int off , int len ) {
+                    }
+                };
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        logger.closeLogFile();
+        if( logFile != null ) {
+            logFile.delete();
+        }
+    }
+
+    @Benchmark
+    public void logEvent() {
+        logger.logEvent( LOG_LINE );
+    }
+
+    @Benchmark
+    public void logReading() {
+        logger.logEvent( 0.1F , 0.2F , 9.8F , 3 );
+    }
+
+    /** Logger under test. */
+    private final FileLogger logger = new FileLogger();
+    /** Log file (null if discarding). */
+    private File logFile;
+
+    /** A typical accelerometer log line. */
+    private static final String LOG_LINE = "0.13407153,-0.23942058,9.816512,3";
+}
@@ -0,0 +1,61 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of a plot frame's min/max decimation: a 10 sec window of
+ * accl, gyro and magnetic readings (3 x 3 channels) at 200 Hz, decimated
+ * to 1080 columns. A frame is 16 ms, the decimation should only use a
+ * small part of it.
+ */
+@BenchmarkMode( { Mode.Throughput , Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class MinMaxDecimatorBenchmark {
+
+    @Setup
+    public void setUp() {
+        for( int i = 0 ; i < buffers.length ; ++i ) {
+            buffers[i] = new PlotBuffer( 3 , RATE * WINDOW_SEC * 5 / 4 );
+            decimators[i] = new MinMaxDecimator( 3 , WIDTH );
+        }
+        long timestamp = 0L;
+        for( int sample = 0 ; sample < RATE * WINDOW_SEC * 2 ; ++sample ) {
+            timestamp = sample * 1000L / RATE;
+            for( PlotBuffer buffer : buffers ) {
+                buffer.add( timestamp ,
+                            (float) Math.sin( sample * 0.01 ) ,
+                            (float) Math.cos( sample * 0.02 ) ,
+                            sample % 7 );
+            }
+        }
+        endTime = timestamp + 1;
+    }
+
+    @Benchmark
+    public int decimateFrame() {
+        int numSamples = 0;
+        for( int i = 0 ; i < buffers.length ; ++i ) {
+            numSamples += decimators[i].decimate( buffers[i] , endTime - WINDOW_SEC * 1000L , endTime , WIDTH );
+        }
+        return numSamples;
+    }
+
+    /** Plot buffers of the 3 sensors, and their decimators. */
+    private final PlotBuffer[] buffers = new PlotBuffer[3];
+    private final MinMaxDecimator[] decimators = new MinMaxDecimator[3];
+    /** End of the plotted window (millisec). */
+    private long endTime;
+
+    /** Reading rate (Hz). */
+    private static final int RATE = 200;
+    /** Plotted window (sec). */
+    private static final int WINDOW_SEC = 10;
+    /** Plot width (columns). */
+    private static final int WIDTH = 1080;
+}
@@ -0,0 +1,66 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the plot buffer and min/max decimation.
+ */
+public class MinMaxDecimatorTest {
+
+    @Test
+    public void decimate_keepsMinAndMaxPerColumn() throws Exception {
+        PlotBuffer buffer = new PlotBuffer( 3 , 100 );
+        // 4 samples in column 0, 1 spike in column 1, nothing in column 2
+        buffer.add( 0L , 1.0F , 0.0F , 0.0F );
+        buffer.add( 1L , 5.0F , 0.0F , 0.0F );
+        buffer.add( 2L , -2.0F , 0.0F , 0.0F );
+        buffer.add( 3L , 3.0F , 0.0F , 0.0F );
+        buffer.add( 4L , 100.0F , 0.0F , 0.0F );
+        MinMaxDecimator decimator = new MinMaxDecimator( 3 , 10 );
+
+        int numSamples = decimator.decimate( buffer , 0L , 12L , 3 );
+
+        assertEquals( 5 , numSamples );
+        assertEquals( -2.0F , decimator.getMins( 0 )[0] , 0.0F );
+        assertEquals( 5.0F , decimator.getMaxs( 0 )[0] , 0.0F );
+        assertEquals( 100.0F , decimator.getMins( 0 )[1] , 0.0F );
+        assertEquals( 100.0F , decimator.getMaxs( 0 )[1] , 0.0F );
+        assertTrue( Float.isNaN( decimator.getMins( 0 )[2] ) );
+        assertEquals( -2.0F , decimator.getMinValue() , 0.0F );
+        assertEquals( 100.0F , decimator.getMaxValue() , 0.0F );
+    }
+
+    @Test
+    public void decimate_ignoresSamplesOutsideWindow() throws Exception {
+        PlotBuffer buffer = new PlotBuffer( 3 , 100 );
+        for( int i = 0 ; i < 20 ; ++i ) {
+            buffer.add( i , i , i , i );
+        }
+        MinMaxDecimator decimator = new MinMaxDecimator( 3 , 10 );
+
+        int numSamples = decimator.decimate( buffer , 10L , 15L , 5 );
+
+        assertEquals( 5 , numSamples );
+        assertEquals( 10.0F , decimator.getMinValue() , 0.0F );
+        assertEquals( 14.0F , decimator.getMaxValue() , 0.0F );
+    }
+
+    @Test
+    public void fullBuffer_overwritesOldestSamples() throws Exception {
+        PlotBuffer buffer = new PlotBuffer( 3 , 16 );
+        for( int i = 0 ; i < 40 ; ++i ) {
+            buffer.add( i , i , i , i );
+        }
+        MinMaxDecimator decimator = new MinMaxDecimator( 3 , 10 );
+
+        decimator.decimate( buffer , 0L , 40L , 10 );
+
+        // Only the newest samples (minus the safety margin) are left
+        assertEquals( 40L , buffer.getWriteCount() );
+        assertEquals( 39.0F , buffer.getValue( 0 , 39L ) , 0.0F );
+        assertEquals( 40 - 16 + buffer.getSafetyMargin() , decimator.getMinValue() , 0.0F );
+        assertEquals( 39.0F , decimator.getMaxValue() , 0.0F );
+    }
+}
@@ -0,0 +1,160 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+
+import com.cs4222.khuthia.sensorlogapp.analysis.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the orientation filter on synthetic gyro/accl/magnetic traces,
+ * and on a short Gyro/Accl/Mag log (test resources) of a phone turned
+ * by 90 degrees on a table.
+ */
+public class OrientationFilterTest {
+
+    /** Sampling period of the synthetic traces (sec), i.e. 200 Hz. */
+    private static final float DT = 0.005F;
+
+    @Test
+    public void staticPhone_staysLevel() throws Exception {
+        OrientationFilter filter = new OrientationFilter( 0.1F );
+
+        // Phone lying flat, pointing north
+        for( int i = 0 ; i < 2000 ; ++i ) {
+            filter.update( 0.0F , 0.0F , 0.0F ,
+                           0.0F , 0.0F , 9.81F ,
+                           20.0F , 0.0F , -40.0F ,
+                           DT );
+        }
+
+        assertEquals( 0.0F , filter.getRoll() , 0.5F );
+        assertEquals( 0.0F , filter.getPitch() , 0.5F );
+        assertEquals( 0.0F , filter.getYaw() , 0.5F );
+    }
+
+    @Test
+    public void tiltedPhone_convergesToGravity() throws Exception {
+        OrientationFilter filter = new OrientationFilter( 0.5F );
+
+        // Phone rolled by 30 degrees about the x-axis (gravity in the y-z plane)
+        float angle = (float) Math.toRadians( 30.0 );
+        float ay = 9.81F * (float) Math.sin( angle ) ,
+            az = 9.81F * (float) Math.cos( angle );
+        for( int i = 0 ; i < 4000 ; ++i ) {
+            filter.update( 0.0F , 0.0F , 0.0F , 0.0F , ay , az , DT );
+        }
+
+        assertEquals( 30.0F , filter.getRoll() , 1.0F );
+        assertEquals( 0.0F , filter.getPitch() , 1.0F );
+    }
+
+    @Test
+    public void gyroOnly_integratesYaw() throws Exception {
+        OrientationFilter filter = new OrientationFilter( 0.0F );
+
+        // Rotate at 90 deg/sec about the z-axis for half a second
+        float rate = (float) Math.toRadians( 90.0 );
+        for( int i = 0 ; i < 100 ; ++i ) {
+            filter.update( 0.0F , 0.0F , rate , 0.0F , 0.0F , 9.81F , DT );
+        }
+
+        assertEquals( 45.0F , filter.getYaw() , 0.5F );
+    }
+
+    @Test
+    public void loggedTurn_endsAtTheTurnedHeading() throws Exception {
+        OrientationFilter filter = new OrientationFilter( 0.1F );
+
+        // Flat and still for a second, turned at 90 deg/sec for a second, still for a second
+        replayLog( filter );
+
+        assertEquals( 90.0F , filter.getYaw() , 3.0F );
+        assertEquals( 0.0F , filter.getRoll() , 2.0F );
+        assertEquals( 0.0F , filter.getPitch() , 2.0F );
+    }
+
+    @Test
+    public void sameTrace_givesSameOutput() throws Exception {
+        float[] first = replayTrace( new OrientationFilter( 0.1F ) );
+        float[] second = replayTrace( new OrientationFilter( 0.1F ) );
+
+        for( int i = 0 ; i < first.length ; ++i ) {
+            assertEquals( Float.floatToIntBits( first[i] ) ,
+                          Float.floatToIntBits( second[i] ) );
+        }
+    }
+
+    @Test
+    public void negativeGain_isRejected() throws Exception {
+        try {
+            new OrientationFilter( -1.0F );
+            fail( "Expected IllegalArgumentException" );
+        }
+        catch( IllegalArgumentException e ) {
+            // Expected
+        }
+    }
+
+    /** Replays a synthetic 'phone being waved around' trace, returns the final quaternion. */
+    private static float[] replayTrace( OrientationFilter filter ) {
+        for( int i = 0 ; i < 5000 ; ++i ) {
+            float t = i * DT;
+            float gx = 0.5F * (float) Math.sin( 2.0 * t ) ,
+                gy = 0.3F * (float) Math.cos( 3.0 * t ) ,
+                gz = 0.2F;
+            float ax = (float) Math.sin( t ) ,
+                ay = (float) Math.cos( t ) ,
+                az = 9.7F;
+            filter.update( gx , gy , gz , ax , ay , az ,
+                           18.0F , 5.0F , -42.0F , DT );
+        }
+        float[] quaternion = new float[4];
+        filter.getQuaternion( quaternion );
+        return quaternion;
+    }
+
+    /**
+       Replays the logged turn the way the service fuses it: every gyro
+       reading updates the filter with the latest accl and magnetic
+       readings, over the logged time since the previous gyro reading.
+     */
+    private static void replayLog( OrientationFilter filter ) throws Exception {
+        SensorLogReader gyro = openLog( SensorLogType.GYROSCOPE ) ,
+            accl = openLog( SensorLogType.ACCELEROMETER ) ,
+            magnetic = openLog( SensorLogType.MAGNETIC );
+        SensorRecord.Xyz nextAccl = (SensorRecord.Xyz) accl.next() ,
+            nextMagnetic = (SensorRecord.Xyz) magnetic.next();
+        SensorRecord.Xyz latestAccl = null , latestMagnetic = null;
+        long prevTimestamp = 0L;
+        for( SensorRecord record = gyro.next() ; record != null ; record = gyro.next() ) {
+            SensorRecord.Xyz reading = (SensorRecord.Xyz) record;
+            while( nextAccl != null && nextAccl.timestamp <= reading.timestamp ) {
+                latestAccl = nextAccl;
+                nextAccl = (SensorRecord.Xyz) accl.next();
+            }
+            while( nextMagnetic != null && nextMagnetic.timestamp <= reading.timestamp ) {
+                latestMagnetic = nextMagnetic;
+                nextMagnetic = (SensorRecord.Xyz) magnetic.next();
+            }
+            if( prevTimestamp != 0L && latestAccl != null && latestMagnetic != null ) {
+                filter.update( reading.x , reading.y , reading.z ,
+                               latestAccl.x , latestAccl.y , latestAccl.z ,
+                               latestMagnetic.x , latestMagnetic.y , latestMagnetic.z ,
+                               ( reading.timestamp - prevTimestamp ) * 1.0E-3F );
+            }
+            prevTimestamp = reading.timestamp;
+        }
+        gyro.close();
+        accl.close();
+        magnetic.close();
+    }
+
+    /** Opens a log file of the logged turn. */
+    private static SensorLogReader openLog( SensorLogType type ) throws Exception {
+        File file = new File( OrientationFilterTest.class.getResource( "/orientation/" + type.getFileName() ).toURI() );
+        return new SensorLogReader( file , type , 4096 );
+    }
+}
@@ -0,0 +1,91 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * JMH benchmark of RealTimeDisplay.updateDisplay, alone, and under contention:
+ * three producer threads (like the sensor and location callbacks) updating
+ * their own displays, while a subscriber thread (like the GUI) keeps draining
+ * and formatting the updates.
+ */
+@BenchmarkMode( { Mode.Throughput , Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Group )
+public class RealTimeDisplayBenchmark {
+
+    /** A producer thread, updating its own display. */
+    @State( Scope.Thread )
+    public static class Producer {
+
+        @Setup
+        public void setUp( ThreadParams threadParams ) {
+            displayName = DISPLAY_NAME + ( threadParams.getSubgroupThreadIndex() % NUM_DISPLAYS );
+        }
+
+        /** Display updated. */
+        String displayName;
+        /** Value written. */
+        float value;
+    }
+
+    @Setup
+    public void setUp() {
+        RealTimeDisplay.clearDisplays();
+        for( int i = 0 ; i < NUM_DISPLAYS ; ++i ) {
+            RealTimeDisplay.addDisplay( DISPLAY_NAME + i , new DisplayTemplate( "X: " , "Y: " , "Z: " ) );
+        }
+        subscription = RealTimeDisplay.subscribe( new RealTimeDisplay.DisplayListener() {
+                @Override
+                public void onDisplayAdded( String displayName , String initialText ) {
+                }
+                @Override
+                public void onDisplayUpdated( String displayName , String updatedText ) {
+                    ++numUpdatesPassed;
+                }
+            } , null , 0L );
+    }
+
+    @TearDown
+    public void tearDown() {
+        RealTimeDisplay.clearDisplays();
+    }
+
+    @Benchmark
+    @Group( "uncontended" )
+    public void update( Producer producer ) {
+        producer.value += 0.5F;
+        RealTimeDisplay.updateDisplay( producer.displayName , producer.value , 0.1F , 9.8F );
+    }
+
+    @Benchmark
+    @Group( "contended" )
+    @GroupThreads( 3 )
+    public void contendedUpdate( Producer producer ) {
+        producer.value += 0.5F;
+        RealTimeDisplay.updateDisplay( producer.displayName , producer.value , 0.1F , 9.8F );
+    }
+
+    @Benchmark
+    @Group( "contended" )
+    @GroupThreads( 1 )
+    public int contendedDrain() {
+        subscription.drainUpdates( System.currentTimeMillis() );
+        return numUpdatesPassed;
+    }
+
+    /** Subscription of the draining thread. */
+    private RealTimeDisplay.Subscription subscription;
+    /** Number of updates passed to the listener (only written by the draining thread). */
+    private int numUpdatesPassed;
+
+    /** Number of displays (one per producer thread). */
+    private static final int NUM_DISPLAYS = 3;
+    /** Display name prefix. */
+    private static final String DISPLAY_NAME = "Display ";
+}
@@ -0,0 +1,231 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that real-time display updates are coalesced per frame,
+ * that numeric values are formatted lazily, and that each subscriber
+ * only gets the displays it needs, at its own rate.
+ */
+public class RealTimeDisplayTest {
+
+    /** Records the listener calls. */
+    private final List< String > calls = new ArrayList< String >();
+
+    private final RealTimeDisplay.DisplayListener listener =
+        new RealTimeDisplay.DisplayListener() {
+            public void onDisplayAdded( String displayName , String initialText ) {
+                calls.add( "added " + displayName + "=" + initialText );
+            }
+            public void onDisplayUpdated( String displayName , String updatedText ) {
+                calls.add( "updated " + displayName + "=" + updatedText );
+            }
+        };
+
+    @Before
+    public void setUp() {
+        RealTimeDisplay.clearDisplays();
+    }
+
+    @After
+    public void tearDown() {
+        RealTimeDisplay.clearDisplays();
+    }
+
+    /** Subscribes the listener to all displays, and drains the initial display list. */
+    private RealTimeDisplay.Subscription subscribeAndDrain() {
+        RealTimeDisplay.Subscription subscription =
+            RealTimeDisplay.subscribe( listener , null , 0L );
+        subscription.drainUpdates( 0L );
+        calls.clear();
+        return subscription;
+    }
+
+    @Test
+    public void manyUpdates_deliverOnlyLatestTextPerFrame() throws Exception {
+        RealTimeDisplay.addDisplay( "ACCL" , "x: " );
+        RealTimeDisplay.addDisplay( "GYRO" , "x: " );
+        assertEquals( 2 , RealTimeDisplay.getDisplayList().size() );
+        RealTimeDisplay.Subscription subscription = subscribeAndDrain();
+
+        for( int i = 0 ; i < 100 ; ++i ) {
+            RealTimeDisplay.updateDisplay( "ACCL" , "x: " + i );
+        }
+        subscription.drainUpdates( 0L );
+
+        assertEquals( Arrays.asList( "updated ACCL=x: 99" ) , calls );
+    }
+
+    @Test
+    public void noUpdates_noListenerCalls() throws Exception {
+        RealTimeDisplay.addDisplay( "ACCL" , "x: " );
+        RealTimeDisplay.Subscription subscription = subscribeAndDrain();
+
+        subscription.drainUpdates( 0L );
+        subscription.drainUpdates( 0L );
+
+        assertTrue( calls.isEmpty() );
+    }
+
+    @Test
+    public void displayAddedAfterRegistering_isPassedOnNextFrame() throws Exception {
+        RealTimeDisplay.Subscription subscription = subscribeAndDrain();
+
+        RealTimeDisplay.addDisplay( "LIGHT" , "light: " );
+        assertTrue( calls.isEmpty() );
+        subscription.drainUpdates( 0L );
+
+        assertEquals( Arrays.asList( "added LIGHT=light: " ) , calls );
+        assertEquals( "light: " , RealTimeDisplay.getDisplayText( "LIGHT" ) );
+    }
+
+    @Test
+    public void numericUpdates_areFormattedWithTemplate() throws Exception {
+        RealTimeDisplay.addDisplay( "ACCL" , new DisplayTemplate( "x: " , "y: " , "z: " ) );
+        assertEquals( "x: \ny: \nz: \n" , RealTimeDisplay.getDisplayText( "ACCL" ) );
+        RealTimeDisplay.Subscription subscription = subscribeAndDrain();
+
+        RealTimeDisplay.updateDisplay( "ACCL" , 1.0F , 2.5F , -3.0F );
+        subscription.drainUpdates( 0L );
+
+        assertEquals( Arrays.asList( "updated ACCL=x: 1.0\ny: 2.5\nz: -3.0\n" ) , calls );
+    }
+
+    @Test
+    public void numericUpdates_withoutListener_onlyKeepValues() throws Exception {
+        RealTimeDisplay.addDisplay( "LIGHT" , new DisplayTemplate( "light: " ) );
+
+        RealTimeDisplay.updateDisplay( "LIGHT" , 42.0F );
+        RealTimeDisplay.Subscription subscription = subscribeAndDrain();
+        subscription.drainUpdates( 0L );
+
+        // Nothing was pending, but the latest value is shown when asked for
+        assertTrue( calls.isEmpty() );
+        assertEquals( "light: 42.0\n" , RealTimeDisplay.getDisplayText( "LIGHT" ) );
+    }
+
+    @Test
+    public void invisibleDisplay_isUpdatedWhenVisibleAgain() throws Exception {
+        RealTimeDisplay.addDisplay( "LIGHT" , new DisplayTemplate( "light: " ) );
+        RealTimeDisplay.Subscription subscription = subscribeAndDrain();
+        subscription.setDisplayVisible( "LIGHT" , false );
+
+        RealTimeDisplay.updateDisplay( "LIGHT" , 1.0F );
+        subscription.drainUpdates( 0L );
+        assertTrue( calls.isEmpty() );
+
+        subscription.setDisplayVisible( "LIGHT" , true );
+        subscription.drainUpdates( 0L );
+        assertEquals( Arrays.asList( "updated LIGHT=light: 1.0\n" ) , calls );
+    }
+
+    @Test
+    public void numericUpdate_withWrongNumberOfValues_isIgnored() throws Exception {
+        RealTimeDisplay.addDisplay( "LIGHT" , new DisplayTemplate( "light: " ) );
+        RealTimeDisplay.Subscription subscription = subscribeAndDrain();
+
+        RealTimeDisplay.updateDisplay( "LIGHT" , 1.0F , 2.0F );
+        subscription.drainUpdates( 0L );
+
+        assertTrue( calls.isEmpty() );
+    }
+
+    @Test
+    public void unknownDisplay_isIgnored() throws Exception {
+        RealTimeDisplay.Subscription subscription = subscribeAndDrain();
+
+        RealTimeDisplay.updateDisplay( "UNKNOWN" , "text" );
+        subscription.drainUpdates( 0L );
+
+        assertTrue( calls.isEmpty() );
+        assertNull( RealTimeDisplay.getDisplayText( "UNKNOWN" ) );
+    }
+
+    @Test
+    public void firstDrain_passesDisplaysAddedBeforeSubscribing() throws Exception {
+        RealTimeDisplay.addDisplay( "ACCL" , "x: " );
+        RealTimeDisplay.updateDisplay( "ACCL" , "x: 1" );
+        RealTimeDisplay.Subscription subscription =
+            RealTimeDisplay.subscribe( listener , null , 0L );
+
+        subscription.drainUpdates( 0L );
+        subscription.drainUpdates( 0L );
+
+        assertEquals( Arrays.asList( "added ACCL=x: 1" ) , calls );
+    }
+
+    @Test
+    public void subscriber_onlyGetsDisplaysItNeeds() throws Exception {
+        RealTimeDisplay.addDisplay( "ACCL" , "x: " );
+        RealTimeDisplay.Subscription subscription =
+            RealTimeDisplay.subscribe( listener , Arrays.asList( "LIGHT" ) , 0L );
+        RealTimeDisplay.addDisplay( "LIGHT" , new DisplayTemplate( "light: " ) );
+        subscription.drainUpdates( 0L );
+
+        RealTimeDisplay.updateDisplay( "ACCL" , "x: 1" );
+        RealTimeDisplay.updateDisplay( "LIGHT" , 2.0F );
+        subscription.drainUpdates( 0L );
+
+        assertEquals( Arrays.asList( "added LIGHT=light: \n" ,
+                                     "updated LIGHT=light: 2.0\n" ) , calls );
+    }
+
+    @Test
+    public void rateLimitedSubscriber_getsLatestTextOncePerInterval() throws Exception {
+        RealTimeDisplay.addDisplay( "ACCL" , "x: " );
+        RealTimeDisplay.Subscription subscription =
+            RealTimeDisplay.subscribe( listener , null , 100L );
+        subscription.drainUpdates( 0L );
+        calls.clear();
+
+        // Updates within the interval are held back (not lost)
+        RealTimeDisplay.updateDisplay( "ACCL" , "x: 1" );
+        subscription.drainUpdates( 50L );
+        RealTimeDisplay.updateDisplay( "ACCL" , "x: 2" );
+        subscription.drainUpdates( 99L );
+        assertTrue( calls.isEmpty() );
+
+        subscription.drainUpdates( 100L );
+        subscription.drainUpdates( 150L );
+        assertEquals( Arrays.asList( "updated ACCL=x: 2" ) , calls );
+    }
+
+    @Test
+    public void subscribers_areIndependent() throws Exception {
+        final List< String > otherCalls = new ArrayList< String >();
+        RealTimeDisplay.DisplayListener otherListener =
+            new RealTimeDisplay.DisplayListener() {
+                public void onDisplayAdded( String displayName , String initialText ) {
+                }
+                public void onDisplayUpdated( String displayName , String updatedText ) {
+                    otherCalls.add( displayName + "=" + updatedText );
+                }
+            };
+        RealTimeDisplay.addDisplay( "ACCL" , "x: " );
+        RealTimeDisplay.Subscription subscription = subscribeAndDrain();
+        RealTimeDisplay.Subscription otherSubscription =
+            RealTimeDisplay.subscribe( otherListener , null , 0L );
+        otherSubscription.drainUpdates( 0L );
+
+        // Draining one subscription does not consume the other's updates
+        RealTimeDisplay.updateDisplay( "ACCL" , "x: 1" );
+        subscription.drainUpdates( 0L );
+        otherSubscription.drainUpdates( 0L );
+        assertEquals( Arrays.asList( "updated ACCL=x: 1" ) , calls );
+        assertEquals( Arrays.asList( "ACCL=x: 1" ) , otherCalls );
+
+        // An unsubscribed listener is not called any more
+        RealTimeDisplay.unsubscribe( otherSubscription );
+        RealTimeDisplay.updateDisplay( "ACCL" , "x: 2" );
+        subscription.drainUpdates( 0L );
+        otherSubscription.drainUpdates( 0L );
+        assertEquals( Arrays.asList( "updated ACCL=x: 1" , "updated ACCL=x: 2" ) , calls );
+        assertEquals( Arrays.asList( "ACCL=x: 1" ) , otherCalls );
+    }
+}
@@ -0,0 +1,89 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the rollup tiers: the per-bucket stats, the bucket boundaries,
+ * and merging buckets.
+ */
+public class RollupWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void add_writesEachTierToItsOwnFile() throws Exception {
+        File logFile = new File( folder.getRoot() , "Accl.txt" );
+        RollupWriter writer = new RollupWriter( 3 );
+        writer.openRollupFiles( logFile );
+
+        // 2 min 30 sec of readings at 40 Hz, x = reading number, y = 1, z missing
+        long startTime = 1451624400000L;
+        float[] values = new float[2];
+        for( int i = 0 ; i < 6000 ; ++i ) {
+            values[0] = i;
+            values[1] = 1.0F;
+            writer.add( startTime + i * 25L , values );
+        }
+        writer.closeRollupFiles();
+
+        List< RollupWriter.Bucket > seconds =
+            RollupWriter.readRollupFile( new File( folder.getRoot() , "Accl" + RollupWriter.SECOND_SUFFIX ) );
+        List< RollupWriter.Bucket > minutes =
+            RollupWriter.readRollupFile( new File( folder.getRoot() , "Accl" + RollupWriter.MINUTE_SUFFIX ) );
+        assertEquals( 150 , seconds.size() );
+        assertEquals( 3 , minutes.size() );
+
+        // Second 1: readings 40 to 79 (population variance of 40 consecutive numbers is (40^2 - 1) / 12)
+        RollupWriter.Bucket second = seconds.get( 1 );
+        assertEquals( startTime + 1000L , second.getStartTime() );
+        assertEquals( 40 , second.getCount() );
+        assertEquals( 40.0F , second.getMin( 0 ) , 0.0F );
+        assertEquals( 79.0F , second.getMax( 0 ) , 0.0F );
+        assertEquals( 59.5 , second.getMean( 0 ) , 1.0E-9 );
+        assertEquals( ( 40.0 * 40.0 - 1.0 ) / 12.0 , second.getVariance( 0 ) , 1.0E-9 );
+        assertEquals( 1.0 , second.getMean( 1 ) , 0.0 );
+        assertEquals( 0.0 , second.getVariance( 1 ) , 0.0 );
+        assertEquals( 0.0 , second.getMean( 2 ) , 0.0 );
+
+        // The last minute is partial (written on close)
+        assertEquals( 2400 , minutes.get( 0 ).getCount() );
+        assertEquals( 1200 , minutes.get( 2 ).getCount() );
+        assertEquals( startTime + 120000L , minutes.get( 2 ).getStartTime() );
+    }
+
+    @Test
+    public void merge_matchesTheCoarserTier() throws Exception {
+        File logFile = new File( folder.getRoot() , "Light.txt" );
+        RollupWriter writer = new RollupWriter( 1 );
+        writer.openRollupFiles( logFile );
+        Random random = new Random( 1L );
+        long startTime = 1451624400000L;
+        for( int i = 0 ; i < 1200 ; ++i ) {
+            writer.add( startTime + i * 100L , 300.0F + 50.0F * (float) random.nextGaussian() );
+        }
+        writer.closeRollupFiles();
+
+        // Merging the 60 seconds of the first minute gives the minute's stats
+        List< RollupWriter.Bucket > seconds =
+            RollupWriter.readRollupFile( new File( folder.getRoot() , "Light" + RollupWriter.SECOND_SUFFIX ) );
+        RollupWriter.Bucket minute =
+            RollupWriter.readRollupFile( new File( folder.getRoot() , "Light" + RollupWriter.MINUTE_SUFFIX ) ).get( 0 );
+        RollupWriter.Bucket merged = new RollupWriter.Bucket( startTime , 1 );
+        for( int i = 0 ; i < 60 ; ++i ) {
+            merged.merge( seconds.get( i ) );
+        }
+        assertEquals( minute.getCount() , merged.getCount() );
+        assertEquals( minute.getMin( 0 ) , merged.getMin( 0 ) , 0.0F );
+        assertEquals( minute.getMax( 0 ) , merged.getMax( 0 ) , 0.0F );
+        assertEquals( minute.getMean( 0 ) , merged.getMean( 0 ) , 1.0E-9 );
+        assertEquals( minute.getVariance( 0 ) , merged.getVariance( 0 ) , 1.0E-6 );
+    }
+}
@@ -0,0 +1,105 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import android.content.*;
+import android.hardware.*;
+import android.location.*;
+
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the service's sensor callbacks allocate nothing per
+ * reading while it collects data, including the periodic work of the
+ * log lines, rollups and sketches. The service runs on a fake clock
+ * that moves on a logging period (25 ms) per event, so every reading is
+ * logged (and displayed at the display rates), like on a phone.
+ */
+public class SensorLogAppServiceAllocationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        FileLogger.setLogDirectory( null );
+    }
+
+    /** Service with the fake sensor and location managers. */
+    private static class ReplayService
+        extends SensorLogAppService {
+
+        @Override
+        public Object getSystemService( String name ) {
+            if( Context.SENSOR_SERVICE.equals( name ) ) {
+                return sensors.getSensorManager();
+            }
+            else if( Context.LOCATION_SERVICE.equals( name ) ) {
+                return locations.getLocationManager();
+            }
+            return null;
+        }
+
+        @Override
+        public void onSensorChanged( SensorEvent event ) {
+            // Each event moves the fake clock on by the 40 Hz logging period
+            nowMillis += 25L;
+            super.onSensorChanged( event );
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return nowMillis;
+        }
+
+        final FakeSensorManager sensors =
+            new FakeSensorManager( Sensor.TYPE_ACCELEROMETER , Sensor.TYPE_GRAVITY ,
+                                   Sensor.TYPE_LINEAR_ACCELERATION , Sensor.TYPE_MAGNETIC_FIELD ,
+                                   Sensor.TYPE_GYROSCOPE , Sensor.TYPE_ROTATION_VECTOR ,
+                                   Sensor.TYPE_PRESSURE , Sensor.TYPE_LIGHT , Sensor.TYPE_PROXIMITY );
+        final FakeLocationManager locations =
+            new FakeLocationManager( LocationManager.GPS_PROVIDER , LocationManager.NETWORK_PROVIDER );
+        /** Fake time (millisec). */
+        long nowMillis = 1451624400000L;
+    }
+
+    @Test
+    public void sensorCallbacks_stayWithinTheirBudgets() throws Exception {
+        ReplayService service = new ReplayService();
+        FileLogger.setLogDirectory( folder.newFolder( "logs" ) );
+        SensorLogAppService.SensorLogAppServiceApi api =
+            (SensorLogAppService.SensorLogAppServiceApi) service.onBind( null );
+        api.startDataCollection( "allocation" );
+
+        try {
+            float[][] xyz = { { 0.1F , 0.2F , 9.8F } , { 0.3F , -0.2F , 9.7F } , { -0.1F , 0.4F , 9.9F } };
+            // NOTE: The typical reading allocates nothing, and neither do the
+            //  rollups' lines or the sketches' compactions. A sketch only adds a
+            //  level (1.7 KB) each time its number of readings about doubles,
+            //  which is under 1 byte/reading on average (a String per logged
+            //  line would be 100 more)
+            new AllocationBudget()
+                .addSensorPath( "accelerometer" , 1L , service.sensors , Sensor.TYPE_ACCELEROMETER , xyz )
+                .addSensorPath( "gravity" , 1L , service.sensors , Sensor.TYPE_GRAVITY , xyz )
+                .addSensorPath( "linear accl" , 1L , service.sensors , Sensor.TYPE_LINEAR_ACCELERATION , xyz )
+                .addSensorPath( "magnetic field" , 1L , service.sensors , Sensor.TYPE_MAGNETIC_FIELD ,
+                                new float[] { 5.0F , 20.0F , -40.0F } , new float[] { 6.0F , 19.0F , -41.0F } )
+                .addSensorPath( "gyroscope" , 1L , service.sensors , Sensor.TYPE_GYROSCOPE , xyz )
+                .addSensorPath( "rotation vector" , 1L , service.sensors , Sensor.TYPE_ROTATION_VECTOR ,
+                                new float[] { 0.1F , 0.2F , 0.3F , 0.9F } , new float[] { 0.2F , 0.1F , 0.3F , 0.9F } )
+                .addSensorPath( "barometer" , 1L , service.sensors , Sensor.TYPE_PRESSURE ,
+                                new float[] { 1008.5F , 42.0F } )
+                .addSensorPath( "light" , 1L , service.sensors , Sensor.TYPE_LIGHT ,
+                                new float[] { 320.0F } , new float[] { 330.0F } )
+                .addSensorPath( "proximity" , 1L , service.sensors , Sensor.TYPE_PROXIMITY ,
+                                new float[] { 5.0F } , new float[] { 0.0F } )
+                .check();
+        }
+        finally {
+            api.stopDataCollection();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import android.content.*;
+import android.hardware.*;
+import android.location.*;
+
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of each sensor's branch of SensorLogAppService.onSensorChanged,
+ * with data collection started (logging to a temp folder) and the GUI subscribed
+ * to all the displays.
+ *
+ * <p> The readings arrive at 200 Hz of event time, as fast as possible. The
+ * logging/display rates use the wall clock, so most readings are only stored
+ * (and plotted), like on a phone.
+ */
+@BenchmarkMode( { Mode.Throughput , Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class SensorLogAppServiceBenchmark {
+
+    /** Sensor type (the Sensor.TYPE_* name, without the prefix). */
+    @Param( { "ACCELEROMETER" , "GRAVITY" , "LINEAR_ACCELERATION" , "MAGNETIC_FIELD" , "GYROSCOPE" ,
+              "ROTATION_VECTOR" , "PRESSURE" , "LIGHT" , "PROXIMITY" } )
+    public String sensor;
+
+    /** Service with the fake sensor and location managers. */
+    private static class BenchmarkService
+        extends SensorLogAppService {
+
+        @Override
+        public Object getSystemService( String name ) {
+            if( Context.SENSOR_SERVICE.equals( name ) ) {
+                return sensors.getSensorManager();
+            }
+            else if( Context.LOCATION_SERVICE.equals( name ) ) {
+                return locations.getLocationManager();
+            }
+            return null;
+        }
+
+        final FakeSensorManager sensors =
+            new FakeSensorManager( Sensor.TYPE_ACCELEROMETER , Sensor.TYPE_GRAVITY ,
+                                   Sensor.TYPE_LINEAR_ACCELERATION , Sensor.TYPE_MAGNETIC_FIELD ,
+                                   Sensor.TYPE_GYROSCOPE , Sensor.TYPE_ROTATION_VECTOR ,
+                                   Sensor.TYPE_PRESSURE , Sensor.TYPE_LIGHT , Sensor.TYPE_PROXIMITY );
+        final FakeLocationManager locations =
+            new FakeLocationManager( LocationManager.GPS_PROVIDER , LocationManager.NETWORK_PROVIDER );
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+
+        // Start data collection, logging to a temp folder
+        // NOTE: onCreate() cannot put the service in the foreground on the JVM,
+        //       so only its displays are registered
+        logDirectory = File.createTempFile( "SensorLogAppServiceBenchmark" , "" );
+        logDirectory.delete();
+        FileLogger.setLogDirectory( logDirectory );
+        service.registerSensorDisplays();
+        api = (SensorLogAppService.SensorLogAppServiceApi) service.onBind( null );
+        api.startDataCollection( "benchmark" );
+
+        // Subscribe to all displays (like the GUI)
+        RealTimeDisplay.subscribe( new RealTimeDisplay.DisplayListener() {
+                @Override
+                public void onDisplayAdded( String displayName , String initialText ) {
+                }
+                @Override
+                public void onDisplayUpdated( String displayName , String updatedText ) {
+                }
+            } , null , 0L );
+
+        // A typical reading of the sensor
+        sensorType = Sensor.class.getField( "TYPE_" + sensor ).getInt( null );
+        if( sensorType == Sensor.TYPE_ROTATION_VECTOR ) {
+            values = new float[] { 0.1F , 0.2F , 0.3F , 0.9F };
+        }
+        else if( sensorType == Sensor.TYPE_PRESSURE ) {
+            values = new float[] { 1008.5F };
+        }
+        else if( sensorType == Sensor.TYPE_LIGHT || sensorType == Sensor.TYPE_PROXIMITY ) {
+            values = new float[] { 320.0F };
+        }
+        else {
+            values = new float[] { 0.13407153F , -0.23942058F , 9.816512F };
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        api.stopDataCollection();
+        RealTimeDisplay.clearDisplays();
+        FileLogger.setLogDirectory( null );
+        deleteFolder( logDirectory );
+    }
+
+    @Benchmark
+    public int onSensorChanged() {
+        timestamp += READING_INTERVAL;
+        return service.sensors.deliver( sensorType , timestamp , SensorManager.SENSOR_STATUS_ACCURACY_HIGH , values );
+    }
+
+    /** Helper method that deletes a folder and its contents. */
+    private static void deleteFolder( File folder ) {
+        File[] files = folder.listFiles();
+        if( files != null ) {
+            for( File file : files ) {
+                deleteFolder( file );
+            }
+        }
+        folder.delete();
+    }
+
+    /** Service under test. */
+    private final BenchmarkService service = new BenchmarkService();
+    /** Service API. */
+    private SensorLogAppService.SensorLogAppServiceApi api;
+    /** Temp log folder. */
+    private File logDirectory;
+    /** Sensor type (Sensor.TYPE_*). */
+    private int sensorType;
+    /** Reading delivered. */
+    private float[] values;
+    /** Event timestamp (nanosec, device uptime). */
+    private long timestamp = 60L * 1000000000L;
+
+    /** Time between readings (nanosec), 200 Hz. */
+    private static final long READING_INTERVAL = 5000000L;
+}
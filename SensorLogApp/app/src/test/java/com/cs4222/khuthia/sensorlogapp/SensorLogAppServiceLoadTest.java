@@ -0,0 +1,124 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.util.*;
+
+import android.content.*;
+import android.hardware.*;
+import android.location.*;
+
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stress tests the service with synthetic high rate readings (through the
+ * fake sensor manager), ramping the rate until its sensor processing saturates.
+ */
+public class SensorLogAppServiceLoadTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        FileLogger.setLogDirectory( null );
+    }
+
+    /** Service with the fake sensor and location managers. */
+    private static class LoadService
+        extends SensorLogAppService {
+
+        @Override
+        public Object getSystemService( String name ) {
+            if( Context.SENSOR_SERVICE.equals( name ) ) {
+                return sensors.getSensorManager();
+            }
+            else if( Context.LOCATION_SERVICE.equals( name ) ) {
+                return locations.getLocationManager();
+            }
+            return null;
+        }
+
+        final FakeSensorManager sensors =
+            new FakeSensorManager( Sensor.TYPE_ACCELEROMETER , Sensor.TYPE_GRAVITY ,
+                                   Sensor.TYPE_LINEAR_ACCELERATION , Sensor.TYPE_MAGNETIC_FIELD ,
+                                   Sensor.TYPE_GYROSCOPE , Sensor.TYPE_ROTATION_VECTOR ,
+                                   Sensor.TYPE_PRESSURE , Sensor.TYPE_LIGHT , Sensor.TYPE_PROXIMITY );
+        final FakeLocationManager locations =
+            new FakeLocationManager( LocationManager.GPS_PROVIDER , LocationManager.NETWORK_PROVIDER );
+    }
+
+    /** Adds the channels of a phone with a fast IMU (accl, gyro and magnetic), a barometer and a light sensor. */
+    private SensorLoadGenerator newGenerator( FakeSensorManager sensors ,
+                                              long seed ) {
+        return new SensorLoadGenerator( sensors , seed )
+            .addChannel( Sensor.TYPE_ACCELEROMETER , 3 , SensorLoadGenerator.Waveform.sine( 0.0F , 9.8F , 2.0 ) )
+            .addChannel( Sensor.TYPE_GYROSCOPE , 3 , SensorLoadGenerator.Waveform.noise( 0.0F , 0.05F ) )
+            .addChannel( Sensor.TYPE_MAGNETIC_FIELD , 3 , SensorLoadGenerator.Waveform.step( -40.0F , 40.0F , 1.0 ) )
+            .addChannel( Sensor.TYPE_PRESSURE , 1 , SensorLoadGenerator.Waveform.burst( 1008.5F , 0.5F , 0.1 , 0.5 ) )
+            .addChannel( Sensor.TYPE_LIGHT , 1 , SensorLoadGenerator.Waveform.step( 20.0F , 320.0F , 2.0 ) );
+    }
+
+    @Test
+    public void waveforms_areDeterministic() {
+        SensorLoadGenerator.Waveform noise = SensorLoadGenerator.Waveform.noise( 0.0F , 1.0F );
+        SensorLoadGenerator.Waveform burst = SensorLoadGenerator.Waveform.burst( 5.0F , 2.0F , 0.1 , 1.0 );
+        Random random1 = new Random( 7L ) , random2 = new Random( 7L );
+        for( int i = 0 ; i < 100 ; ++i ) {
+            assertEquals( noise.valueAt( i * 0.01 , 0 , random1 ) , noise.valueAt( i * 0.01 , 0 , random2 ) , 0.0F );
+        }
+
+        // Bursts only within the first 0.1 sec of each period
+        assertEquals( 5.0F , burst.valueAt( 0.5 , 0 , random1 ) , 0.0F );
+        assertEquals( 7.0F , burst.valueAt( 0.05 , 0 , random1 ) , 2.0F );
+        assertEquals( 1.0F , SensorLoadGenerator.Waveform.step( 1.0F , 2.0F , 1.0 ).valueAt( 1.2 , 0 , random1 ) , 0.0F );
+        assertEquals( 2.0F , SensorLoadGenerator.Waveform.step( 1.0F , 2.0F , 1.0 ).valueAt( 1.7 , 0 , random1 ) , 0.0F );
+        assertEquals( 1.0F , SensorLoadGenerator.Waveform.sine( 0.0F , 1.0F , 1.0 ).valueAt( 0.25 , 0 , random1 ) , 1.0E-6F );
+    }
+
+    @Test
+    public void run_deliversAllReadingsBelowSaturation() throws Exception {
+        LoadService service = new LoadService();
+        FileLogger.setLogDirectory( folder.newFolder( "logs" ) );
+        SensorLogAppService.SensorLogAppServiceApi api =
+            (SensorLogAppService.SensorLogAppServiceApi) service.onBind( null );
+        api.startDataCollection( "load" );
+
+        // 5 channels at 200 Hz each, for 0.5 sec
+        SensorLoadGenerator.Step step = newGenerator( service.sensors , 1L ).run( 1000 , 500L );
+        api.stopDataCollection();
+
+        assertEquals( 500 , step.getNumOffered() );
+        assertEquals( 0 , step.getNumDropped() );
+        assertEquals( 500 , step.getNumDelivered() );
+        assertTrue( step.getP99LatencyNanos() <= step.getMaxLatencyNanos() );
+    }
+
+    @Test
+    public void ramp_findsTheKnee() throws Exception {
+        LoadService service = new LoadService();
+        FileLogger.setLogDirectory( folder.newFolder( "logs" ) );
+        SensorLogAppService.SensorLogAppServiceApi api =
+            (SensorLogAppService.SensorLogAppServiceApi) service.onBind( null );
+        api.startDataCollection( "load" );
+
+        // Double the rate every 0.3 sec, from 500 readings/s (no drops, the
+        //  FIFO not left over half full, and a p99 latency within 20 ms)
+        SensorLoadGenerator.Report report =
+            newGenerator( service.sensors , 1L ).ramp( 500 , 256000 , 2.0 , 300L ,
+                                                      new SensorLoadGenerator.Slo( 0.0 , 0.5 , 20.0 ) );
+        api.stopDataCollection();
+
+        // NOTE: The knee's rate depends on the machine, so only the ramp
+        //  itself is checked (SensorLogAppServiceBenchmark measures the cost)
+        SensorLoadGenerator.Step knee = report.getKnee();
+        assertNotNull( knee );
+        assertEquals( 0 , knee.getNumDropped() );
+        assertEquals( report.isSaturated() , knee.getOfferedRate() < 256000 );
+    }
+}
@@ -0,0 +1,152 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+import java.util.*;
+
+import android.content.*;
+import android.hardware.*;
+import android.location.*;
+
+import com.cs4222.khuthia.sensorlogapp.analysis.*;
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a recorded session into the service on the JVM (through the
+ * fake sensor and location managers), and checks what it logs.
+ */
+public class SensorLogAppServiceReplayTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        FileLogger.setLogDirectory( null );
+    }
+
+    /** Service with the fake sensor and location managers. */
+    private static class ReplayService
+        extends SensorLogAppService {
+
+        @Override
+        public Object getSystemService( String name ) {
+            if( Context.SENSOR_SERVICE.equals( name ) ) {
+                return sensors.getSensorManager();
+            }
+            else if( Context.LOCATION_SERVICE.equals( name ) ) {
+                return locations.getLocationManager();
+            }
+            return null;
+        }
+
+        final FakeSensorManager sensors =
+            new FakeSensorManager( Sensor.TYPE_ACCELEROMETER , Sensor.TYPE_GRAVITY ,
+                                   Sensor.TYPE_LINEAR_ACCELERATION , Sensor.TYPE_MAGNETIC_FIELD ,
+                                   Sensor.TYPE_GYROSCOPE , Sensor.TYPE_ROTATION_VECTOR ,
+                                   Sensor.TYPE_PRESSURE , Sensor.TYPE_LIGHT , Sensor.TYPE_PROXIMITY );
+        final FakeLocationManager locations =
+            new FakeLocationManager( LocationManager.GPS_PROVIDER , LocationManager.NETWORK_PROVIDER );
+    }
+
+    /** Writes a session in the SensorLogApp log format (sensors at 100 Hz, a location every 10 sec). */
+    private File writeSession( long durationMillis ) throws Exception {
+        File sessionFolder = folder.newFolder();
+        Random random = new Random( 1L );
+        long startTime = 1451624400000L;
+        String[] xyzFiles = { "Accl.txt" , "Gravity.txt" , "LinAccl.txt" , "Mag.txt" , "Gyro.txt" };
+        for( String fileName : xyzFiles ) {
+            PrintWriter out = new PrintWriter( new FileWriter( new File( sessionFolder , fileName ) ) );
+            for( long t = 0 ; t < durationMillis ; t += 10L ) {
+                out.println( "d," + ( startTime + t ) + "," + random.nextFloat() + "," +
+                             random.nextFloat() + "," + ( 9.8F + random.nextFloat() ) + ",3" );
+            }
+            out.close();
+        }
+        PrintWriter rotationVector = new PrintWriter( new FileWriter( new File( sessionFolder , "RotVec.txt" ) ) );
+        PrintWriter barometer = new PrintWriter( new FileWriter( new File( sessionFolder , "Baro.txt" ) ) );
+        PrintWriter light = new PrintWriter( new FileWriter( new File( sessionFolder , "Light.txt" ) ) );
+        for( long t = 0 ; t < durationMillis ; t += 100L ) {
+            rotationVector.println( "d," + ( startTime + t ) + ",0.1,0.2,0.3,0.9,3" );
+            barometer.println( "d," + ( startTime + t ) + ",1008.5,42.0,3" );
+            light.println( "d," + ( startTime + t ) + ",320.0,3" );
+        }
+        rotationVector.close();
+        barometer.close();
+        light.close();
+        PrintWriter location = new PrintWriter( new FileWriter( new File( sessionFolder , "Loc.txt" ) ) );
+        for( long t = 0 ; t < durationMillis ; t += 10000L ) {
+            location.println( "d," + ( startTime + t ) + "," + ( startTime + t - 500L ) +
+                              ",d,gps,1.2966,103.7764,8.0,25.0,-1.0,1.5" );
+        }
+        location.close();
+        return sessionFolder;
+    }
+
+    /** Counts the lines of a log file. */
+    private int countLines( File logFile ) throws Exception {
+        BufferedReader in = new BufferedReader( new FileReader( logFile ) );
+        int numLines = 0;
+        while( in.readLine() != null ) {
+            ++numLines;
+        }
+        in.close();
+        return numLines;
+    }
+
+    /** Starts data collection in a new service (logging to the temp folder). */
+    private SensorLogAppService.SensorLogAppServiceApi startService( ReplayService service ) throws Exception {
+        FileLogger.setLogDirectory( folder.newFolder( "logs" ) );
+        SensorLogAppService.SensorLogAppServiceApi api =
+            (SensorLogAppService.SensorLogAppServiceApi) service.onBind( null );
+        api.startDataCollection( "replay" );
+        return api;
+    }
+
+    @Test
+    public void replay_logsTheSession() throws Exception {
+        SensorTrace trace = SensorTrace.readSensorLogSession( writeSession( 20000L ) );
+        ReplayService service = new ReplayService();
+        SensorLogAppService.SensorLogAppServiceApi api = startService( service );
+
+        assertEquals( 1 , service.sensors.getNumListeners( Sensor.TYPE_GYROSCOPE ) );
+        assertEquals( 1 , service.sensors.getNumListeners( Sensor.TYPE_PROXIMITY ) );
+        assertEquals( 1 , service.locations.getNumListeners( LocationManager.NETWORK_PROVIDER ) );
+
+        SensorReplayer.Result result =
+            new SensorReplayer( service.sensors , service.locations ).replay( trace , SensorReplayer.AS_FAST_AS_POSSIBLE );
+        api.stopDataCollection();
+
+        // The proximity log is empty, so there are 5 x 2000 + 3 x 200 readings
+        assertEquals( 10600 , result.getNumSensorEvents() );
+        assertEquals( 2 , result.getNumLocations() );
+        assertEquals( 0 , result.getNumUndelivered() );
+        assertEquals( 0 , service.sensors.getNumListeners( Sensor.TYPE_GYROSCOPE ) );
+
+        // The location and the first reading of each sensor are logged
+        //  (later readings depend on the wall clock logging rates)
+        File logFolder = new File( new File( folder.getRoot() , "logs" ) , "replay" );
+        assertEquals( 1 , countLines( new File( logFolder , "Loc.txt" ) ) );
+        assertTrue( countLines( new File( logFolder , "Accl.txt" ) ) >= 1 );
+        assertTrue( countLines( new File( logFolder , "Light.txt" ) ) >= 1 );
+        assertTrue( countLines( new File( logFolder , "Orientation.txt" ) ) >= 1 );
+
+        // Every reading is in the rollups and the session summary
+        List< RollupWriter.Bucket > minutes =
+            RollupWriter.readRollupFile( new File( logFolder , "Gyro" + RollupWriter.MINUTE_SUFFIX ) );
+        assertEquals( 2000 , minutes.get( 0 ).getCount() + ( minutes.size() > 1 ? minutes.get( 1 ).getCount() : 0 ) );
+        SessionSummary summary = SessionSummary.readFile( new File( logFolder , SessionSummary.FILE_NAME ) );
+        assertEquals( 2000 , summary.getChannel( SensorLogType.GYROSCOPE ).getCount() );
+        assertEquals( 200 , summary.getChannel( SensorLogType.LIGHT ).getCount() );
+        assertEquals( 320.0F , summary.getChannel( SensorLogType.LIGHT ).getSketch( 0 ).getQuantile( 0.5 ) , 0.0F );
+
+        // The session is marked as closed, for the uploads
+        assertTrue( SessionUploader.isClosed( logFolder , System.currentTimeMillis() ) );
+    }
+}
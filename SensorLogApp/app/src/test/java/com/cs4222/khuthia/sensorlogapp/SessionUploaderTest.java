@@ -0,0 +1,223 @@
+package com.cs4222.khuthia.sensorlogapp;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.cs4222.khuthia.sensorlogapp.analysis.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the session upload against the reference collection server:
+ * only closed sessions and new data are sent, a failed session does not
+ * stop the others, an interrupted upload resumes without re-sending, and
+ * the bandwidth is bounded. Also tests which sessions count as closed.
+ */
+public class SessionUploaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        logDirectory = folder.newFolder( "SensorLogApp" );
+        journalFile = new File( folder.getRoot() , "SyncJournal.txt" );
+        server = new CollectionServer( folder.newFolder( "server" ) );
+        server.start( 0 );
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void syncAll_sendsOnlyNewData() throws Exception {
+        File session = writeSession( "Walk" , 300000 , 1L );
+        File open = writeSession( "Open" , 100000 , 2L );
+        new File( open , SessionUploader.CLOSED_FILE_NAME ).delete();   // Still logging: no closed marker yet
+
+        // First sync: the closed session's files
+        SessionUploader uploader = newUploader( 1L << 30 );
+        assertEquals( 2 , uploader.syncAll( logDirectory ) );
+        assertSameFile( new File( session , "Accl.txt" ) , server.getFile( "device" , "Walk" , "Accl.txt" ) );
+        assertSameFile( new File( session , SessionSummary.FILE_NAME ) ,
+                        server.getFile( "device" , "Walk" , SessionSummary.FILE_NAME ) );
+        assertFalse( server.getFile( "device" , "Open" , "Accl.txt" ).exists() );
+
+        // Second sync (a new uploader, as after a restart): nothing is read or sent
+        uploader = newUploader( 1L << 30 );
+        assertEquals( 0 , uploader.syncAll( logDirectory ) );
+        assertEquals( 2 , uploader.getNumFilesSkipped() );
+        assertEquals( 0L , uploader.getChunkBytesSent() );
+
+        // Appending to a log (and closing the session again) only sends the chunks
+        //  after the old end (up to a max size chunk before)
+        File log = new File( session , "Accl.txt" );
+        long oldLength = log.length();
+        writeLog( log , 500 , 4L , true );
+        long appended = log.length() - oldLength;
+        new File( session , SessionUploader.CLOSED_FILE_NAME ).setLastModified( log.lastModified() );
+        uploader = newUploader( 1L << 30 );
+        assertEquals( 1 , uploader.syncAll( logDirectory ) );
+        assertTrue( uploader.getChunkBytesSent() >= appended );
+        assertTrue( uploader.getChunkBytesSent() <= appended + ContentChunker.DEFAULT_MAX_SIZE );
+        assertSameFile( log , server.getFile( "device" , "Walk" , "Accl.txt" ) );
+
+        // A copy of the session (e.g. from another device) sends no chunks at all
+        SessionUploader otherDevice = new SessionUploader( server.getUrl() , "other" ,
+                                                           new File( folder.getRoot() , "Other.txt" ) ,
+                                                           new TokenBucket( 1L << 30 , 1L << 20 ) );
+        assertEquals( 2 , otherDevice.syncSession( session ) );
+        assertEquals( 0L , otherDevice.getChunkBytesSent() );
+        assertSameFile( log , server.getFile( "other" , "Walk" , "Accl.txt" ) );
+        assertEquals( 0L , server.getNumFailedRequests() );
+    }
+
+    @Test
+    public void syncAll_carriesOnAfterAFailedSession() throws Exception {
+        // The server rejects the first session's name, so its upload fails
+        writeSession( "Bad session" , 10000 , 7L );
+        File session = writeSession( "Walk" , 10000 , 8L );
+
+        SessionUploader uploader = newUploader( 1L << 30 );
+        assertEquals( 2 , uploader.syncAll( logDirectory ) );
+        assertSameFile( new File( session , "Accl.txt" ) , server.getFile( "device" , "Walk" , "Accl.txt" ) );
+        assertEquals( Collections.singleton( "Bad session" ) , uploader.getFailures().keySet() );
+    }
+
+    @Test
+    public void isClosed_checksTheMarkerAge() throws Exception {
+        long now = System.currentTimeMillis();
+        File session = writeSession( "Walk" , 1000 , 1L );
+        File log = new File( session , "Accl.txt" );
+        File marker = new File( session , SessionUploader.CLOSED_FILE_NAME );
+        for( File file : session.listFiles() ) {
+            file.setLastModified( now - 60000L );
+        }
+        assertTrue( SessionUploader.isClosed( session , now ) );
+
+        // The name is re-used, by a session still logging (the old marker is older than the logs)
+        log.setLastModified( now );
+        assertFalse( SessionUploader.isClosed( session , now ) );
+
+        // The app crashed in the session: no marker, but no changes for a long time
+        marker.delete();
+        assertFalse( SessionUploader.isClosed( session , now ) );
+        assertTrue( SessionUploader.isClosed( session , now + 24L * 3600L * 1000L ) );
+    }
+
+    @Test
+    public void syncFile_resumesAfterInterruption() throws Exception {
+        File session = writeSession( "Run" , 400000 , 5L );
+        File log = new File( session , "Accl.txt" );
+
+        // The connection drops after 10 chunks
+        server.setChunkLimit( 10 );
+        SessionUploader uploader = newUploader( 1L << 30 );
+        try {
+            uploader.syncFile( "Run" , log );
+            fail( "Upload should have been interrupted" );
+        }
+        catch( IOException e ) {
+            // Expected
+        }
+        assertFalse( server.getFile( "device" , "Run" , "Accl.txt" ).exists() );
+        assertEquals( 10L , server.getNumChunksReceived() );
+
+        // The retry sends the other chunks only: each byte is received once overall
+        server.setChunkLimit( -1 );
+        uploader = newUploader( 1L << 30 );
+        assertTrue( uploader.syncFile( "Run" , log ) );
+        assertEquals( log.length() , server.getChunkBytesReceived() );
+        assertTrue( uploader.getChunkBytesSent() < log.length() );
+        assertSameFile( log , server.getFile( "device" , "Run" , "Accl.txt" ) );
+    }
+
+    @Test
+    public void syncFile_isThrottled() throws Exception {
+        File session = writeSession( "Sit" , 200000 , 6L );
+        File log = new File( session , "Accl.txt" );
+
+        // 512 KB/s with a 16 KB burst: the upload takes (length - burst) / rate at least
+        SessionUploader uploader = new SessionUploader( server.getUrl() , "device" , journalFile ,
+                                                        new TokenBucket( 512 * 1024 , 16 * 1024 ) );
+        long startTime = System.nanoTime();
+        assertTrue( uploader.syncFile( "Sit" , log ) );
+        long elapsedMillis = ( System.nanoTime() - startTime ) / 1000000L;
+        long minMillis = ( log.length() - 16 * 1024 ) * 1000L / ( 512 * 1024 );
+        assertTrue( elapsedMillis + " < " + minMillis , elapsedMillis >= minMillis );
+        assertSameFile( log , server.getFile( "device" , "Sit" , "Accl.txt" ) );
+    }
+
+    /** Helper method that creates an uploader (for device 'device') with a rate limit. */
+    private SessionUploader newUploader( long bytesPerSecond ) throws IOException {
+        return new SessionUploader( server.getUrl() , "device" , journalFile ,
+                                    new TokenBucket( bytesPerSecond , 1L << 20 ) );
+    }
+
+    /** Helper method that writes a closed session: an accelerometer log of about numBytes bytes, a summary, and the closed marker. */
+    private File writeSession( String name , int numBytes , long seed ) throws IOException {
+        File session = new File( logDirectory , name );
+        session.mkdirs();
+        writeLog( new File( session , "Accl.txt" ) , numBytes / 60 , seed , false );
+        OutputStream out = new FileOutputStream( new File( session , SessionSummary.FILE_NAME ) );
+        try {
+            out.write( new byte[] { 'S' , 'S' , 'U' , 'M' , 0 , 0 , 0 , 1 } );
+        }
+        finally {
+            out.close();
+        }
+        new File( session , SessionUploader.CLOSED_FILE_NAME ).createNewFile();
+        return session;
+    }
+
+    /** Helper method that writes (or appends) accelerometer log lines. */
+    private static void writeLog( File file , int numLines , long seed , boolean append ) throws IOException {
+        Random random = new Random( seed );
+        PrintWriter out = new PrintWriter( new FileWriter( file , append ) );
+        try {
+            long time = 1451624400000L + seed * 100000000L;
+            for( int i = 0 ; i < numLines ; ++i ) {
+                time += 25L;
+                out.println( time + "," + ( time * 1000000L ) + ",3," + random.nextFloat() + "," +
+                             random.nextFloat() + "," + ( 9.8F + random.nextFloat() ) );
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /** Helper method that checks that two files have the same bytes. */
+    private static void assertSameFile( File expected , File actual ) throws IOException {
+        assertTrue( actual + " missing" , actual.isFile() );
+        assertArrayEquals( readFile( expected ) , readFile( actual ) );
+    }
+
+    /** Helper method that reads a file. */
+    private static byte[] readFile( File file ) throws IOException {
+        byte[] data = new byte[ (int) file.length() ];
+        DataInputStream in = new DataInputStream( new FileInputStream( file ) );
+        try {
+            in.readFully( data );
+        }
+        finally {
+            in.close();
+        }
+        return data;
+    }
+
+    /** Log directory with the sessions. */
+    private File logDirectory;
+    /** Uploader's journal. */
+    private File journalFile;
+    /** Collection server. */
+    private CollectionServer server;
+}
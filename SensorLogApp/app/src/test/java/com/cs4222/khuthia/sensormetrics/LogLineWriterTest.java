@@ -0,0 +1,51 @@
+package com.cs4222.khuthia.sensormetrics;
+
+import java.io.*;
+import java.text.*;
+import java.util.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the log line writer against the date format the logs were
+ * written with.
+ */
+public class LogLineWriterTest {
+
+    @Test
+    public void humanReadableTime_matchesTheDateFormat() {
+        SimpleDateFormat sdf = new SimpleDateFormat( "yyyy-MM-dd-h-mm-ssa" );
+        LogLineWriter writer = new LogLineWriter();
+        StringBuilder sb = new StringBuilder();
+
+        // Around midnight and noon, and steps over a few years (both ways, so the cached second changes)
+        long startTime = 1451606400000L;
+        long[] times = { startTime - 1L , startTime , startTime + 999L , startTime + 1000L ,
+                         startTime + 12L * 3600000L - 1L , startTime + 12L * 3600000L , 0L , -1L };
+        for( long time : times ) {
+            sb.setLength( 0 );
+            assertEquals( sdf.format( new Date( time ) ) , writer.appendHumanReadableTime( sb , time ).toString() );
+        }
+        Random random = new Random( 1 );
+        for( int i = 0 ; i < 10000 ; ++i ) {
+            long time = startTime + ( random.nextLong() % ( 5L * 365L * 86400000L ) );
+            sb.setLength( 0 );
+            assertEquals( sdf.format( new Date( time ) ) , writer.appendHumanReadableTime( sb , time ).toString() );
+        }
+    }
+
+    @Test
+    public void writeLine_writesTheLineAndANewline() throws Exception {
+        LogLineWriter writer = new LogLineWriter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StringBuilder sb = new StringBuilder();
+        for( int i = 0 ; i < 100 ; ++i ) {
+            sb.append( "1,2.5," );    // Longer than the initial bytes
+        }
+        writer.writeLine( sb , out );
+        writer.writeLine( "gps,\u00e9t\u00e9" , out );
+        assertEquals( sb + "\ngps,\u00e9t\u00e9\n" , out.toString( "UTF-8" ) );
+    }
+}
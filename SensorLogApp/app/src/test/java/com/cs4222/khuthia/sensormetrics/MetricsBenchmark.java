@@ -0,0 +1,53 @@
+package com.cs4222.khuthia.sensormetrics;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of the hot-path metrics: a counter increment, a timed
+ * section and a traced span, with the registry (and tracer) enabled or
+ * disabled (the overhead left in the hot paths when they are off).
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class MetricsBenchmark {
+
+    /** Whether the registry is enabled. */
+    @Param( { "false" , "true" } )
+    public boolean enabled;
+
+    @Setup
+    public void setUp() {
+        registry.setEnabled( enabled );
+        tracer.setEnabled( enabled );
+    }
+
+    @Benchmark
+    public void counterIncrement() {
+        counter.increment();
+    }
+
+    @Benchmark
+    public void timedSection() {
+        timer.stop( timer.start() );
+    }
+
+    @Benchmark
+    public void tracedSpan() {
+        tracer.end( span , tracer.begin() );
+    }
+
+    /** Registry under test. */
+    private final MetricsRegistry registry = new MetricsRegistry();
+    /** Metrics under test. */
+    private final Counter counter = registry.counter( "events" );
+    private final LatencyTimer timer = registry.timer( "callback" );
+    /** Tracer under test, and its span. */
+    private final SpanTracer tracer = new SpanTracer( 4096 );
+    private final int span = tracer.span( "callback" );
+}
@@ -0,0 +1,162 @@
+package com.cs4222.khuthia.sensormetrics;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the shared metrics library (counters, timers, gauges, snapshots
+ * and the reporter).
+ */
+public class MetricsRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void counter_sumsTheStripesOfManyThreads() throws Exception {
+        final Counter counter = new MetricsRegistry().counter( "events" );
+        Thread[] threads = new Thread[8];
+        for( int t = 0 ; t < threads.length ; ++t ) {
+            threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        for( int i = 0 ; i < 100000 ; ++i ) {
+                            counter.increment();
+                        }
+                    }
+                };
+            threads[t].start();
+        }
+        for( Thread thread : threads ) {
+            thread.join();
+        }
+        counter.add( 5L );
+        assertEquals( 800005L , counter.get() );
+    }
+
+    @Test
+    public void timer_bucketsTheDurations() {
+        MetricsRegistry registry = new MetricsRegistry();
+        LatencyTimer timer = registry.timer( "write" );
+        assertEquals( 0 , LatencyTimer.bucketOf( 0L ) );
+        assertEquals( 0 , LatencyTimer.bucketOf( 1000L ) );
+        assertEquals( 1 , LatencyTimer.bucketOf( 1001L ) );
+        assertEquals( 10 , LatencyTimer.bucketOf( 1024000L ) );
+        assertEquals( LatencyTimer.NUM_BUCKETS - 1 , LatencyTimer.bucketOf( Long.MAX_VALUE / 2 ) );
+
+        // 98 fast writes (3 us), and 2 slow ones (1 ms)
+        for( int i = 0 ; i < 98 ; ++i ) {
+            timer.record( 3000L );
+        }
+        timer.record( 1000000L );
+        timer.record( 1000000L );
+        MetricsSnapshot.Entry entry = registry.snapshot().getEntry( "write" );
+        assertEquals( MetricsSnapshot.TYPE_TIMER , entry.type );
+        assertEquals( 100L , entry.count );
+        assertEquals( ( 98 * 3.0 + 2 * 1000.0 ) / 100 , entry.value , 1e-9 );
+        assertEquals( 4L , entry.p50 );
+        assertEquals( 1024L , entry.p99 );
+
+        // A timed section
+        long startNanos = timer.start();
+        timer.stop( startNanos );
+        assertEquals( 101L , timer.getCount() );
+    }
+
+    @Test
+    public void disabledRegistry_ignoresUpdates() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter( "events" );
+        LatencyTimer timer = registry.timer( "callback" );
+        registry.setEnabled( false );
+        counter.increment();
+        long startNanos = timer.start();
+        assertEquals( 0L , startNanos );
+        registry.setEnabled( true );
+        // A section started while disabled is not recorded
+        timer.stop( startNanos );
+        assertEquals( 0L , counter.get() );
+        assertEquals( 0L , timer.getCount() );
+
+        // The names are unique across the types
+        assertSame( counter , registry.counter( "events" ) );
+        try {
+            registry.timer( "events" );
+            fail( "Name reused for another type" );
+        }
+        catch( IllegalArgumentException e ) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void reporter_writesTheSnapshots() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter( "sensor.events" ).add( 42L );
+        registry.gauge( "queue.length" , new Gauge() {
+                @Override
+                public double getValue() {
+                    return 7.0;
+                }
+            } );
+        registry.gauge( "broken" , new Gauge() {
+                @Override
+                public double getValue() {
+                    throw new IllegalStateException();
+                }
+            } );
+        final List< MetricsSnapshot > snapshots = new ArrayList< MetricsSnapshot >();
+        MetricsReporter reporter = new MetricsReporter( registry , 1000L );
+        reporter.setListener( new MetricsReporter.Listener() {
+                @Override
+                public void onSnapshot( MetricsSnapshot snapshot ) {
+                    snapshots.add( snapshot );
+                }
+            } );
+        File file = new File( folder.getRoot() , "Metrics.csv" );
+        reporter.setFile( file );
+        reporter.report();
+        reporter.report();
+        reporter.setFile( null );
+
+        // The listener, and the display text
+        assertEquals( 2 , snapshots.size() );
+        String text = snapshots.get( 0 ).format();
+        assertTrue( text , text.contains( "sensor.events: 42\n" ) );
+        assertTrue( text , text.contains( "queue.length: 7.0\n" ) );
+        assertTrue( Double.isNaN( snapshots.get( 0 ).getEntry( "broken" ).value ) );
+
+        // The file: a header, and a line per metric per snapshot (sorted by name)
+        BufferedReader in = new BufferedReader( new FileReader( file ) );
+        assertEquals( MetricsSnapshot.CSV_HEADER , in.readLine() );
+        List< String > lines = new ArrayList< String >();
+        String line;
+        while( ( line = in.readLine() ) != null ) {
+            lines.add( line );
+        }
+        in.close();
+        assertEquals( 6 , lines.size() );
+        assertTrue( lines.get( 1 ).endsWith( ",queue.length,gauge,0,7.0,0,0" ) );
+        assertTrue( lines.get( 2 ).endsWith( ",sensor.events,counter,42,42.0,0,0" ) );
+
+        // Appending to an existing file does not repeat the header
+        reporter.setFile( file );
+        reporter.report();
+        reporter.setFile( null );
+        in = new BufferedReader( new FileReader( file ) );
+        int numHeaders = 0 , numLines = 0;
+        while( ( line = in.readLine() ) != null ) {
+            numHeaders += ( line.equals( MetricsSnapshot.CSV_HEADER ) ? 1 : 0 );
+            ++numLines;
+        }
+        in.close();
+        assertEquals( 1 , numHeaders );
+        assertEquals( 10 , numLines );
+    }
+}
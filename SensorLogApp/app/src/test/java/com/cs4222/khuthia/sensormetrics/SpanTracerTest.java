@@ -0,0 +1,214 @@
+package com.cs4222.khuthia.sensormetrics;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.regex.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the span tracer (the per-thread rings, the Chrome trace export
+ * and the triggered capture).
+ */
+public class SpanTracerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Pattern of a span event of the trace. */
+    private static final Pattern SPAN_EVENT =
+        Pattern.compile( "\\{\"name\":\"((?:[^\"\\\\]|\\\\.)*)\",\"ph\":\"X\",\"pid\":1,\"tid\":(\\d+),\"ts\":(\\d+\\.\\d{3}),\"dur\":(\\d+\\.\\d{3})\\}" );
+
+    /** Gets the names of the span events of a trace (in order). */
+    private static List< String > spanNames( String trace ) {
+        List< String > names = new ArrayList< String >();
+        Matcher matcher = SPAN_EVENT.matcher( trace );
+        while( matcher.find() ) {
+            names.add( matcher.group( 1 ) );
+        }
+        return names;
+    }
+
+    /** Exports the whole trace. */
+    private static String export( SpanTracer tracer ) throws IOException {
+        StringWriter out = new StringWriter();
+        tracer.writeChromeTrace( out , Long.MIN_VALUE );
+        return out.toString();
+    }
+
+    @Test
+    public void spans_exportAsChromeTrace() throws Exception {
+        SpanTracer tracer = new SpanTracer( 16 );
+        int callback = tracer.span( "sensor.callback" ) , write = tracer.span( "log.write" );
+        assertEquals( callback , tracer.span( "sensor.callback" ) );
+        assertEquals( "log.write" , tracer.getSpanName( write ) );
+
+        // A write nested in a callback
+        long callbackNanos = tracer.begin();
+        long writeNanos = tracer.begin();
+        tracer.end( write , writeNanos );
+        tracer.end( callback , callbackNanos );
+        String trace = export( tracer );
+        assertTrue( trace.startsWith( "{\"traceEvents\":[" ) );
+        assertTrue( trace.trim().endsWith( "],\"displayTimeUnit\":\"ms\"}" ) );
+        assertTrue( trace.contains( "\"ph\":\"M\",\"pid\":1,\"tid\":" + Thread.currentThread().getId() ) );
+        assertEquals( Arrays.asList( "log.write" , "sensor.callback" ) , spanNames( trace ) );
+
+        // The times are in microseconds of the nano clock
+        Matcher matcher = SPAN_EVENT.matcher( trace );
+        assertTrue( matcher.find() );
+        assertEquals( String.valueOf( Thread.currentThread().getId() ) , matcher.group( 2 ) );
+        double beginMicros = Double.parseDouble( matcher.group( 3 ) );
+        assertEquals( writeNanos / 1000.0 , beginMicros , 1.0 );
+
+        // A disabled tracer records nothing
+        tracer.setEnabled( false );
+        assertEquals( 0L , tracer.begin() );
+        tracer.end( write , tracer.begin() );
+        assertEquals( 2 , spanNames( export( tracer ) ).size() );
+    }
+
+    @Test
+    public void ring_keepsTheLastSpans() throws Exception {
+        SpanTracer tracer = new SpanTracer( 5 );    // Rounded up to 8 entries, 7 exported
+        int[] spans = new int[ 20 ];
+        for( int i = 0 ; i < spans.length ; ++i ) {
+            spans[i] = tracer.span( "span" + i );
+            tracer.end( spans[i] , tracer.begin() );
+        }
+        List< String > names = spanNames( export( tracer ) );
+        assertEquals( 7 , names.size() );
+        assertEquals( "span13" , names.get( 0 ) );
+        assertEquals( "span19" , names.get( 6 ) );
+
+        // Only the spans that ended in the window
+        long sinceNanos = System.nanoTime();
+        tracer.end( spans[0] , tracer.begin() );
+        StringWriter out = new StringWriter();
+        tracer.writeChromeTrace( out , sinceNanos );
+        assertEquals( Arrays.asList( "span0" ) , spanNames( out.toString() ) );
+    }
+
+    @Test
+    public void rings_ofAllThreadsAreExported_whileTheyWrite() throws Exception {
+        final SpanTracer tracer = new SpanTracer( 64 );
+        final int span = tracer.span( "work \"quoted\"" );
+        final AtomicBoolean isDone = new AtomicBoolean( false );
+        Thread[] threads = new Thread[4];
+        for( int t = 0 ; t < threads.length ; ++t ) {
+            threads[t] = new Thread( "worker-" + t ) {
+                    @Override
+                    public void run() {
+                        for( int i = 0 ; i < 1000 || ! isDone.get() ; ++i ) {
+                            tracer.end( span , tracer.begin() );
+                        }
+                    }
+                };
+            threads[t].start();
+        }
+
+        // Export while the threads go on writing
+        for( int i = 0 ; i < 50 ; ++i ) {
+            String trace = export( tracer );
+            for( String name : spanNames( trace ) ) {
+                assertEquals( "work \\\"quoted\\\"" , name );
+            }
+            assertTrue( spanNames( trace ).size() < threads.length * 64 );
+        }
+        isDone.set( true );
+        for( Thread thread : threads ) {
+            thread.join();
+        }
+        String trace = export( tracer );
+        assertEquals( threads.length * 63 , spanNames( trace ).size() );
+        for( int t = 0 ; t < threads.length ; ++t ) {
+            assertTrue( trace.contains( "\"args\":{\"name\":\"worker-" + t + "\"}" ) );
+        }
+
+        // The rings of the ended threads are dropped once exported
+        assertEquals( 0 , tracer.getNumRings() );
+        assertEquals( 0 , spanNames( export( tracer ) ).size() );
+    }
+
+    @Test
+    public void rings_ofEndedThreads_areDroppedWhenTooMany() throws Exception {
+        final SpanTracer tracer = new SpanTracer( 16 );
+        final int span = tracer.span( "work" );
+        for( int t = 0 ; t < 100 ; ++t ) {
+            Thread thread = new Thread( "worker-" + t ) {
+                    @Override
+                    public void run() {
+                        tracer.end( span , tracer.begin() );
+                    }
+                };
+            thread.start();
+            thread.join();
+        }
+        assertTrue( tracer.getNumRings() <= 33 );
+    }
+
+    @Test
+    public void trigger_dumpsTheRecentSpans_oncePerWindow() throws Exception {
+        SpanTracer tracer = new SpanTracer( 256 );
+        int callback = tracer.span( "sensor.callback" ) , write = tracer.span( "log.write" );
+        File traceFolder = folder.newFolder( "traces" );
+        tracer.setTrigger( callback , 5L * 1000000L , 10L * 1000000000L , traceFolder );
+        try {
+
+            // Fast callbacks (and a slow span that is not watched) trigger nothing
+            for( int i = 0 ; i < 100 ; ++i ) {
+                tracer.end( callback , tracer.begin() );
+            }
+            long writeNanos = tracer.begin();
+            Thread.sleep( 10L );
+            tracer.end( write , writeNanos );
+            assertEquals( 0 , tracer.getNumTriggered() );
+
+            // A slow callback dumps the window, and the next slow one does not
+            for( int i = 0 ; i < 2 ; ++i ) {
+                long callbackNanos = tracer.begin();
+                Thread.sleep( 10L );
+                tracer.end( callback , callbackNanos );
+            }
+            assertEquals( 1 , tracer.getNumTriggered() );
+            File[] files = null;
+            for( int wait = 0 ; wait < 100 ; ++wait ) {
+                files = traceFolder.listFiles();
+                if( files.length > 0 && files[0].length() > 0L ) {
+                    break;
+                }
+                Thread.sleep( 50L );
+            }
+            assertEquals( 1 , files.length );
+            assertTrue( files[0].getName().matches( "Trace-\\d+\\.json" ) );
+            StringBuilder trace = new StringBuilder();
+            BufferedReader in = new BufferedReader( new FileReader( files[0] ) );
+            try {
+                String line;
+                while( ( line = in.readLine() ) != null ) {
+                    trace.append( line ).append( '\n' );
+                }
+            }
+            finally {
+                in.close();
+            }
+            List< String > names = spanNames( trace.toString() );
+            assertTrue( names.size() >= 102 );
+            assertTrue( names.contains( "log.write" ) );
+            assertTrue( trace.toString().trim().endsWith( "}" ) );
+
+            // A cleared trigger dumps nothing
+            tracer.setTrigger( callback , 0L , 0L , null );
+            tracer.end( callback , tracer.begin() - 1000000000L );
+            assertEquals( 1 , tracer.getNumTriggered() );
+        }
+        finally {
+            tracer.shutdown();
+        }
+    }
+}
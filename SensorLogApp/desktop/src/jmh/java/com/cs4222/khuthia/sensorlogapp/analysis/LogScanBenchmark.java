@@ -0,0 +1,90 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of reading an hour of accelerometer log (40 Hz): parsed
+ * by the memory-mapped parser, by the BufferedReader/split/parseFloat
+ * baseline it replaces, and scanned (time and z only) from its columnar
+ * export.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class LogScanBenchmark {
+
+    @Setup
+    public void setUp() throws IOException {
+        logFile = File.createTempFile( "LogScanBenchmark" , ".txt" );
+        PrintWriter out = new PrintWriter( new BufferedWriter( new FileWriter( logFile ) ) );
+        Random random = new Random( 4L );
+        long startTime = 1451624400000L;
+        for( int i = 0 ; i < NUM_ROWS ; ++i ) {
+            out.println( "2016-01-01-1-00-00PM," + ( startTime + i * 25L ) + "," +
+                         ( random.nextFloat() * 20 - 10 ) + "," + ( random.nextFloat() * 20 - 10 ) + "," +
+                         ( random.nextFloat() * 20 - 10 ) + ",3" );
+        }
+        out.close();
+        columnarFile = File.createTempFile( "LogScanBenchmark" , ColumnarWriter.FILE_EXTENSION );
+        new ColumnarWriter().writeLog( logFile , SensorLogType.ACCELEROMETER , columnarFile );
+    }
+
+    @TearDown
+    public void tearDown() {
+        logFile.delete();
+        columnarFile.delete();
+    }
+
+    @Benchmark
+    public double mappedParse() throws IOException {
+        final double[] sum = new double[1];
+        new MappedCsvParser( CsvLayout.SENSOR_LOG_XYZ ).parse( logFile , new MappedCsvParser.RecordCallback() {
+                public void onRecord( long timestamp , double[] values ) {
+                    sum[0] += values[2];
+                }
+            } );
+        return sum[0];
+    }
+
+    @Benchmark
+    public double splitParse() throws IOException {
+        BufferedReader in = new BufferedReader( new FileReader( logFile ) );
+        double sum = 0.0;
+        try {
+            String line;
+            while( ( line = in.readLine() ) != null ) {
+                String[] fields = line.split( "," );
+                Long.parseLong( fields[1] );
+                sum += Float.parseFloat( fields[4] );
+            }
+        }
+        finally {
+            in.close();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int columnarScan() throws IOException {
+        ColumnarReader reader = new ColumnarReader( columnarFile );
+        try {
+            return reader.scan( new ColumnarReader.Query().select( "time" , "z" ) ).getNumRows();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /** Accelerometer log, and its columnar export. */
+    private File logFile , columnarFile;
+
+    /** Number of log lines (an hour at 40 Hz). */
+    private static final int NUM_ROWS = 144000;
+}
@@ -0,0 +1,80 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of the parallel ingestion of a day of sessions (an hour
+ * each of the 40 Hz IMU logs), to compare the scaling with the number of
+ * parsing threads.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class SessionIngesterBenchmark {
+
+    @Param( { "1" , "2" , "4" } )
+    public int threads;
+
+    @Setup
+    public void setUp() throws IOException {
+        logFolder = File.createTempFile( "SessionIngesterBenchmark" , "" );
+        logFolder.delete();
+        Random random = new Random( 5L );
+        long startTime = 1451624400000L;
+        for( int i = 0 ; i < NUM_SESSIONS ; ++i ) {
+            File sessionFolder = new File( logFolder , "session" + i );
+            sessionFolder.mkdirs();
+            for( SensorLogType type : IMU_TYPES ) {
+                PrintWriter out = new PrintWriter( new BufferedWriter(
+                    new FileWriter( new File( sessionFolder , type.getFileName() ) ) ) );
+                for( int j = 0 ; j < NUM_LINES ; ++j ) {
+                    out.println( "2016-01-01-1-00-00PM," + ( startTime + j * 25L ) + "," +
+                                 ( random.nextFloat() * 20 - 10 ) + "," + ( random.nextFloat() * 20 - 10 ) + "," +
+                                 ( random.nextFloat() * 20 - 10 ) + ",3" );
+                }
+                out.close();
+            }
+            startTime += 3600000L;
+        }
+        ingester = new SessionIngester( threads , SPLIT_SIZE );
+    }
+
+    @TearDown
+    public void tearDown() {
+        for( File sessionFolder : logFolder.listFiles() ) {
+            for( File file : sessionFolder.listFiles() ) {
+                file.delete();
+            }
+            sessionFolder.delete();
+        }
+        logFolder.delete();
+    }
+
+    @Benchmark
+    public long ingest() throws IOException {
+        return ingester.ingest( logFolder ).getNumRecords();
+    }
+
+    /** Folder holding the sessions. */
+    private File logFolder;
+    /** Ingester with the benchmarked number of threads. */
+    private SessionIngester ingester;
+
+    /** Logs written per session. */
+    private static final SensorLogType[] IMU_TYPES = {
+        SensorLogType.ACCELEROMETER , SensorLogType.GYROSCOPE , SensorLogType.MAGNETIC
+    };
+    /** Number of sessions. */
+    private static final int NUM_SESSIONS = 4;
+    /** Number of lines per log (an hour at 40 Hz). */
+    private static final int NUM_LINES = 144000;
+    /** Split size of the ingester (bytes). */
+    private static final long SPLIT_SIZE = 256 * 1024;
+}
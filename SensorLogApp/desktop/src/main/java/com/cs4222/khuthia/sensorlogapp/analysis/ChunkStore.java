@@ -0,0 +1,527 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+   Content-addressed archive of sessions: every file of a session is split
+   into content-defined chunks ({@link ContentChunker}), each chunk is
+   stored once (by its hash, whatever session or file it came from), and
+   a per-session manifest lists the chunks of each file. So a copied or
+   re-exported session, or long stretches of identical idle data, add
+   (almost) nothing; the archive grows with the unique content only.
+   Chunks are stored deflated: idle stretches that are near-identical but
+   not identical (e.g. the same readings with new timestamps) do not
+   dedup, but compress well.
+
+   <p> Layout: root/chunks/ab/abcdef... (a folder per first 2 hash digits),
+   and root/manifests/session.txt, with a line per file ("file", length,
+   name), each followed by a line per chunk (hash, length).
+
+   <p> Files are read back by streaming their chunks ({@link #openFile}),
+   through an LRU cache of the recently read chunks (shared by all the
+   streams, e.g. the sessions' common idle chunks stay cached).
+ */
+public class ChunkStore {
+
+    /** Chunks of a file, as in a session manifest. */
+    public static class FileEntry {
+
+        /** Creates an empty entry. */
+        FileEntry( String name ) {
+            this.name = name;
+        }
+
+        /** Gets the file name. */
+        public String getName() {
+            return name;
+        }
+
+        /** Gets the file length (bytes). */
+        public long getLength() {
+            return length;
+        }
+
+        /** Gets the number of chunks. */
+        public int getNumChunks() {
+            return hashes.size();
+        }
+
+        /** Gets the hash of a chunk. */
+        public String getHash( int chunk ) {
+            return hashes.get( chunk );
+        }
+
+        /** Gets the length of a chunk (bytes). */
+        public int getChunkLength( int chunk ) {
+            return chunkLengths.get( chunk );
+        }
+
+        /** Helper method that adds a chunk. */
+        void addChunk( String hash ,
+                       int chunkLength ) {
+            hashes.add( hash );
+            chunkLengths.add( chunkLength );
+            length += chunkLength;
+        }
+
+        /** File name. */
+        private final String name;
+        /** File length (bytes). */
+        private long length = 0L;
+        /** Hashes and lengths of the chunks. */
+        private final List< String > hashes = new ArrayList< String >();
+        private final List< Integer > chunkLengths = new ArrayList< Integer >();
+    }
+
+    /** Creates a store under a root folder (created if required), with the default chunk cache. */
+    public ChunkStore( File rootFolder ) {
+        this( rootFolder , DEFAULT_CACHE_BYTES );
+    }
+
+    /**
+       Creates a store under a root folder (created if required).
+
+       @param  cacheBytes  Size of the chunk cache (bytes)
+     */
+    public ChunkStore( File rootFolder ,
+                       long cacheBytes ) {
+        this.chunkFolder = new File( rootFolder , "chunks" );
+        this.manifestFolder = new File( rootFolder , "manifests" );
+        this.cacheBytes = cacheBytes;
+    }
+
+    /**
+       Archives a session folder's files (as the session named as the folder,
+       replacing an earlier archive of it).
+
+       @return  Bytes of new chunks (the unique content added, before deflating)
+     */
+    public long archiveSession( File sessionFolder )
+        throws IOException {
+        return archiveSession( sessionFolder.getName() , sessionFolder );
+    }
+
+    /**
+       Archives a session folder's files as a given session.
+
+       @return  Bytes of new chunks (the unique content added, before deflating)
+     */
+    public long archiveSession( String sessionName ,
+                                File sessionFolder )
+        throws IOException {
+        checkName( sessionName );
+        File[] files = sessionFolder.listFiles();
+        if( files == null ) {
+            throw new IOException( "Unable to list " + sessionFolder );
+        }
+        Arrays.sort( files );
+
+        // Store each file's chunks
+        List< FileEntry > entries = new ArrayList< FileEntry >();
+        final long[] numNewBytes = { 0L };
+        ContentChunker chunker = new ContentChunker();
+        for( File file : files ) {
+            if( ! file.isFile() ) {
+                continue;
+            }
+            final FileEntry entry = new FileEntry( file.getName() );
+            chunker.chunk( file , new ContentChunker.ChunkCallback() {
+                    public void onChunk( byte[] data , int start , int length , long offset )
+                        throws IOException {
+                        String hash = ContentChunker.hash( data , start , length );
+                        if( putChunk( hash , data , start , length ) ) {
+                            numNewBytes[0] += length;
+                        }
+                        entry.addChunk( hash , length );
+                    }
+                } );
+            entries.add( entry );
+        }
+
+        // Then the manifest (last, so a manifest only lists stored chunks)
+        writeManifest( sessionName , entries );
+        return numNewBytes[0];
+    }
+
+    /** Gets the names of the archived sessions (sorted). */
+    public List< String > getSessionNames() {
+        List< String > sessionNames = new ArrayList< String >();
+        String[] fileNames = manifestFolder.list();
+        if( fileNames != null ) {
+            for( String fileName : fileNames ) {
+                if( fileName.endsWith( MANIFEST_SUFFIX ) ) {
+                    sessionNames.add( fileName.substring( 0 , fileName.length() - MANIFEST_SUFFIX.length() ) );
+                }
+            }
+        }
+        Collections.sort( sessionNames );
+        return sessionNames;
+    }
+
+    /** Reads the manifest of a session: the chunks of each of its files. */
+    public List< FileEntry > readManifest( String sessionName )
+        throws IOException {
+        checkName( sessionName );
+        List< FileEntry > entries = new ArrayList< FileEntry >();
+        BufferedReader reader =
+            new BufferedReader( new InputStreamReader( new FileInputStream( getManifestFile( sessionName ) ) , "UTF-8" ) );
+        try {
+            FileEntry entry = null;
+            long length = 0L;
+            String line;
+            while( ( line = reader.readLine() ) != null ) {
+                String[] fields = line.split( " " , 3 );
+                if( fields[0].equals( "file" ) && fields.length == 3 ) {
+                    checkLength( entry , length );
+                    entry = new FileEntry( fields[2] );
+                    length = Long.parseLong( fields[1] );
+                    entries.add( entry );
+                }
+                else if( entry != null && fields.length == 2 && ContentChunker.isValidHash( fields[0] ) ) {
+                    entry.addChunk( fields[0] , Integer.parseInt( fields[1] ) );
+                }
+                else {
+                    throw new IOException( "Invalid manifest line: " + line );
+                }
+            }
+            checkLength( entry , length );
+        }
+        catch( NumberFormatException e ) {
+            throw new IOException( "Invalid manifest of " + sessionName , e );
+        }
+        finally {
+            reader.close();
+        }
+        return entries;
+    }
+
+    /** Opens a file of an archived session (streamed from its chunks). */
+    public InputStream openFile( String sessionName ,
+                                 String fileName )
+        throws IOException {
+        for( FileEntry entry : readManifest( sessionName ) ) {
+            if( entry.getName().equals( fileName ) ) {
+                return openFile( entry );
+            }
+        }
+        throw new FileNotFoundException( sessionName + "/" + fileName + " is not archived" );
+    }
+
+    /** Opens a file of a manifest (streamed from its chunks). */
+    public InputStream openFile( final FileEntry entry ) {
+        return new InputStream() {
+            @Override
+            public int read()
+                throws IOException {
+                byte[] b = new byte[1];
+                return ( read( b , 0 , 1 ) < 0 ? -1 : ( b[0] & 0xFF ) );
+            }
+
+            @Override
+            public int read( byte[] b ,
+                             int off ,
+                             int len )
+                throws IOException {
+                // Next chunk, if the current one is read
+                while( chunk == null || position == chunk.length ) {
+                    if( nextChunk == entry.getNumChunks() ) {
+                        return -1;
+                    }
+                    chunk = getChunk( entry.getHash( nextChunk ) , entry.getChunkLength( nextChunk ) );
+                    ++nextChunk;
+                    position = 0;
+                }
+                int numRead = Math.min( len , chunk.length - position );
+                System.arraycopy( chunk , position , b , off , numRead );
+                position += numRead;
+                return numRead;
+            }
+
+            /** Current chunk's bytes, and the position in them. */
+            private byte[] chunk;
+            private int position;
+            /** Index of the next chunk. */
+            private int nextChunk = 0;
+        };
+    }
+
+    /** Restores the files of an archived session into a folder. */
+    public void restoreSession( String sessionName ,
+                                File folder )
+        throws IOException {
+        if( ! folder.isDirectory() && ! folder.mkdirs() ) {
+            throw new IOException( "Unable to create " + folder );
+        }
+        byte[] buffer = new byte[ 8192 ];
+        for( FileEntry entry : readManifest( sessionName ) ) {
+            InputStream in = openFile( entry );
+            OutputStream out = new FileOutputStream( new File( folder , entry.getName() ) );
+            try {
+                int numRead;
+                while( ( numRead = in.read( buffer ) ) > 0 ) {
+                    out.write( buffer , 0 , numRead );
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+    }
+
+    /** Checks if a chunk is stored. */
+    public boolean hasChunk( String hash ) {
+        return getChunkFile( hash ).isFile();
+    }
+
+    /**
+       Stores a chunk, if not already stored (the hash is not checked).
+
+       @return  True if the chunk was new
+     */
+    public boolean putChunk( String hash ,
+                             byte[] data ,
+                             int start ,
+                             int length )
+        throws IOException {
+        File file = getChunkFile( hash );
+        if( file.isFile() ) {
+            return false;
+        }
+        File folder = file.getParentFile();
+        if( ! folder.isDirectory() && ! folder.mkdirs() ) {
+            throw new IOException( "Unable to create " + folder );
+        }
+        // NOTE: Written to a temp file and renamed, so a chunk file is always complete
+        //  (and concurrent writers of the same chunk write the same bytes)
+        File tempFile = File.createTempFile( TEMP_PREFIX + hash , TEMP_SUFFIX , folder );
+        Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+        OutputStream out = new DeflaterOutputStream( new FileOutputStream( tempFile ) , deflater );
+        try {
+            out.write( data , start , length );
+        }
+        finally {
+            out.close();
+            deflater.end();
+        }
+        if( ! tempFile.renameTo( file ) ) {
+            tempFile.delete();
+            if( ! file.isFile() ) {
+                throw new IOException( "Unable to store chunk " + hash );
+            }
+        }
+        return true;
+    }
+
+    /** Gets a chunk's bytes (from the cache, or its file). */
+    public byte[] getChunk( String hash )
+        throws IOException {
+        return getChunk( hash , -1 );
+    }
+
+    /**
+       Gets a chunk's bytes (from the cache, or its file).
+
+       @param  length  Chunk length, checked (-1 if not known)
+     */
+    public byte[] getChunk( String hash ,
+                            int length )
+        throws IOException {
+        synchronized( cache ) {
+            byte[] chunk = cache.get( hash );
+            if( chunk != null ) {
+                ++numCacheHits;
+                return chunk;
+            }
+            ++numCacheMisses;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( length > 0 ? length : 8192 );
+        InputStream in = new InflaterInputStream( new FileInputStream( getChunkFile( hash ) ) );
+        try {
+            byte[] buffer = new byte[ 8192 ];
+            int numRead;
+            while( ( numRead = in.read( buffer ) ) >= 0 ) {
+                bytes.write( buffer , 0 , numRead );
+            }
+        }
+        finally {
+            in.close();
+        }
+        byte[] chunk = bytes.toByteArray();
+        if( length >= 0 && chunk.length != length ) {
+            throw new IOException( "Chunk " + hash + " has " + chunk.length + " bytes, not " + length );
+        }
+        synchronized( cache ) {
+            if( cache.put( hash , chunk ) == null ) {
+                cachedBytes += chunk.length;
+            }
+            // Evict the least recently used chunks
+            Iterator< byte[] > iterator = cache.values().iterator();
+            while( cachedBytes > cacheBytes && iterator.hasNext() ) {
+                cachedBytes -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+        return chunk;
+    }
+
+    /** Gets the number of stored chunks (not counting the temp files of chunks being written). */
+    public int getNumChunks() {
+        int numChunks = 0;
+        File[] folders = chunkFolder.listFiles();
+        if( folders != null ) {
+            for( File folder : folders ) {
+                String[] names = folder.list();
+                if( names == null ) {
+                    continue;
+                }
+                for( String name : names ) {
+                    numChunks += ( name.endsWith( TEMP_SUFFIX ) ? 0 : 1 );
+                }
+            }
+        }
+        return numChunks;
+    }
+
+    /** Gets the bytes of the stored (deflated) chunks (not counting the temp files). */
+    public long getStoredBytes() {
+        long numBytes = 0L;
+        File[] folders = chunkFolder.listFiles();
+        if( folders != null ) {
+            for( File folder : folders ) {
+                File[] files = folder.listFiles();
+                if( files != null ) {
+                    for( File file : files ) {
+                        numBytes += ( file.getName().endsWith( TEMP_SUFFIX ) ? 0L : file.length() );
+                    }
+                }
+            }
+        }
+        return numBytes;
+    }
+
+    /** Gets the number of chunk reads from the cache so far. */
+    public long getNumCacheHits() {
+        synchronized( cache ) {
+            return numCacheHits;
+        }
+    }
+
+    /** Gets the number of chunk reads from the chunk files so far. */
+    public long getNumCacheMisses() {
+        synchronized( cache ) {
+            return numCacheMisses;
+        }
+    }
+
+    /** Helper method that writes a session's manifest (in a temp file, renamed when complete). */
+    private void writeManifest( String sessionName ,
+                                List< FileEntry > entries )
+        throws IOException {
+        if( ! manifestFolder.isDirectory() && ! manifestFolder.mkdirs() ) {
+            throw new IOException( "Unable to create " + manifestFolder );
+        }
+        File tempFile =
+            File.createTempFile( TEMP_PREFIX + sessionName , TEMP_SUFFIX , manifestFolder );
+        Writer out = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( tempFile ) , "UTF-8" ) );
+        try {
+            for( FileEntry entry : entries ) {
+                out.write( "file " + entry.getLength() + " " + entry.getName() + "\n" );
+                for( int i = 0 ; i < entry.getNumChunks() ; ++i ) {
+                    out.write( entry.getHash( i ) + " " + entry.getChunkLength( i ) + "\n" );
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+        File manifestFile = getManifestFile( sessionName );
+        if( ! tempFile.renameTo( manifestFile ) ) {
+            // NOTE: renameTo does not replace on some platforms
+            manifestFile.delete();
+            if( ! tempFile.renameTo( manifestFile ) ) {
+                tempFile.delete();
+                throw new IOException( "Unable to write " + manifestFile );
+            }
+        }
+    }
+
+    /** Helper method that gets a chunk's file. */
+    private File getChunkFile( String hash ) {
+        if( ! ContentChunker.isValidHash( hash ) ) {
+            throw new IllegalArgumentException( "Invalid chunk hash: " + hash );
+        }
+        return new File( new File( chunkFolder , hash.substring( 0 , 2 ) ) , hash );
+    }
+
+    /** Helper method that gets a session's manifest file. */
+    private File getManifestFile( String sessionName ) {
+        return new File( manifestFolder , sessionName + MANIFEST_SUFFIX );
+    }
+
+    /** Helper method that checks a session name (a plain folder name). */
+    private static void checkName( String sessionName ) {
+        if( sessionName.isEmpty() || sessionName.startsWith( "." ) ||
+            sessionName.indexOf( '/' ) >= 0 || sessionName.indexOf( '\\' ) >= 0 ) {
+            throw new IllegalArgumentException( "Invalid session name: " + sessionName );
+        }
+    }
+
+    /** Helper method that checks that a manifest entry's chunks add up to its length. */
+    private static void checkLength( FileEntry entry ,
+                                     long length )
+        throws IOException {
+        if( entry != null && entry.getLength() != length ) {
+            throw new IOException( "Chunks of " + entry.getName() + " do not add up to " + length + " bytes" );
+        }
+    }
+
+    /**
+       Archives session folders, and prints the archive's growth.
+
+       <p> Usage: ChunkStore archiveFolder sessionFolder...
+     */
+    public static void main( String[] args )
+        throws IOException {
+        if( args.length < 2 ) {
+            System.err.println( "Usage: ChunkStore archiveFolder sessionFolder..." );
+            System.exit( 2 );
+        }
+        ChunkStore store = new ChunkStore( new File( args[0] ) );
+        for( int i = 1 ; i < args.length ; ++i ) {
+            File sessionFolder = new File( args[i] );
+            long numBytes = 0L;
+            File[] files = sessionFolder.listFiles();
+            if( files != null ) {
+                for( File file : files ) {
+                    numBytes += ( file.isFile() ? file.length() : 0L );
+                }
+            }
+            long numNewBytes = store.archiveSession( sessionFolder );
+            System.out.println( sessionFolder.getName() + ": " + numBytes + " bytes, " + numNewBytes + " new" );
+        }
+        System.out.println( store.getSessionNames().size() + " sessions, " +
+                            store.getNumChunks() + " chunks, " + store.getStoredBytes() + " bytes" );
+    }
+
+    /** Folders of the chunks and the manifests. */
+    private final File chunkFolder , manifestFolder;
+    /** Size of the chunk cache (bytes), and the bytes cached. */
+    private final long cacheBytes;
+    private long cachedBytes = 0L;
+    /** Chunk cache (in LRU order), and its hit/miss counts. */
+    private final LinkedHashMap< String , byte[] > cache =
+        new LinkedHashMap< String , byte[] >( 64 , 0.75F , true );
+    private long numCacheHits = 0L , numCacheMisses = 0L;
+
+    /** Default size of the chunk cache (bytes). */
+    public static final long DEFAULT_CACHE_BYTES = 32L << 20;
+    /** Manifest file suffix. */
+    private static final String MANIFEST_SUFFIX = ".txt";
+    /**
+       Prefix and suffix of the temp files (renamed when complete). The
+       prefix makes names of any length valid for createTempFile (3 chars min).
+     */
+    static final String TEMP_PREFIX = "tmp-" , TEMP_SUFFIX = ".part";
+}
@@ -0,0 +1,365 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.sun.net.httpserver.*;
+
+/**
+   Reference collection server for the session uploads of the app's
+   SessionUploader. Files are uploaded as content-defined chunks
+   ({@link ContentChunker}), so a device only sends the chunks the server
+   does not already have (from any device). Protocol (HTTP):
+   <ul>
+     <li> POST /missing: body is chunk hashes, one per line; the response
+          is the ones the server does not have
+     <li> POST /chunks: body is a sequence of chunks, each the hash (as
+          writeUTF), the length (int), and the bytes; the server checks
+          the hash and stores each chunk as soon as it is read, so an
+          interrupted batch keeps its complete chunks
+     <li> PUT /files/device/session/file: body is the file length, then
+          the hashes of its chunks in order, one per line; the server
+          assembles the file (200), or responds 409 with the missing
+          hashes if it does not have them all
+   </ul>
+
+   <p> Chunks are stored in a {@link ChunkStore} under root (so the same
+   root can also archive sessions), and the assembled files under
+   root/files/device/session. Run it locally (e.g. for tests, or a lab
+   machine) with {@link #main}.
+ */
+public class CollectionServer {
+
+    /** Creates a server that stores the uploads under a root folder. */
+    public CollectionServer( File rootFolder ) {
+        this.chunkStore = new ChunkStore( rootFolder );
+        this.fileFolder = new File( rootFolder , "files" );
+    }
+
+    /**
+       Starts the server.
+
+       @param  port  Port to listen on (0 to pick a free one)
+     */
+    public void start( int port )
+        throws IOException {
+        server = HttpServer.create( new InetSocketAddress( port ) , 0 );
+        server.createContext( "/missing" , new Handler() {
+                void handleRequest( HttpExchange exchange ) throws IOException {
+                    handleMissing( exchange );
+                }
+            } );
+        server.createContext( "/chunks" , new Handler() {
+                void handleRequest( HttpExchange exchange ) throws IOException {
+                    handleChunks( exchange );
+                }
+            } );
+        server.createContext( "/files/" , new Handler() {
+                void handleRequest( HttpExchange exchange ) throws IOException {
+                    handleFile( exchange );
+                }
+            } );
+        executor = Executors.newFixedThreadPool( NUM_THREADS );
+        server.setExecutor( executor );
+        server.start();
+    }
+
+    /** Stops the server. */
+    public void stop() {
+        if( server != null ) {
+            server.stop( 0 );
+            executor.shutdown();
+            server = null;
+        }
+    }
+
+    /** Gets the server's URL (once started). */
+    public URL getUrl()
+        throws MalformedURLException {
+        return new URL( "http://localhost:" + server.getAddress().getPort() + "/" );
+    }
+
+    /** Gets the uploaded file of a device's session (which may not exist). */
+    public File getFile( String deviceId ,
+                         String sessionName ,
+                         String fileName ) {
+        return new File( new File( new File( fileFolder , deviceId ) , sessionName ) , fileName );
+    }
+
+    /** Gets the number of chunks stored so far. */
+    public long getNumChunksReceived() {
+        return numChunksReceived.get();
+    }
+
+    /** Gets the number of chunk bytes received so far (including chunks that were already stored). */
+    public long getChunkBytesReceived() {
+        return chunkBytesReceived.get();
+    }
+
+    /** Gets the number of requests that failed with an error (responded 500, or dropped). */
+    public long getNumFailedRequests() {
+        return numFailedRequests.get();
+    }
+
+    /**
+       Makes the server drop the connection after reading the given number
+       of chunks, to test resuming interrupted uploads (-1 for no limit).
+     */
+    public void setChunkLimit( int numChunks ) {
+        chunkLimit.set( numChunks );
+    }
+
+    /** Helper method that handles POST /missing. */
+    private void handleMissing( HttpExchange exchange )
+        throws IOException {
+        if( ! exchange.getRequestMethod().equals( "POST" ) ) {
+            sendResponse( exchange , 405 , "" );
+            return;
+        }
+        StringBuilder missing = new StringBuilder();
+        BufferedReader reader = new BufferedReader( new InputStreamReader( exchange.getRequestBody() , "UTF-8" ) );
+        String hash;
+        while( ( hash = reader.readLine() ) != null ) {
+            if( hash.isEmpty() ) {
+                continue;
+            }
+            if( ! ContentChunker.isValidHash( hash ) ) {
+                sendResponse( exchange , 400 , "Invalid hash " + hash );
+                return;
+            }
+            if( ! chunkStore.hasChunk( hash ) ) {
+                missing.append( hash ).append( '\n' );
+            }
+        }
+        sendResponse( exchange , 200 , missing.toString() );
+    }
+
+    /** Helper method that handles POST /chunks. */
+    private void handleChunks( HttpExchange exchange )
+        throws IOException {
+        if( ! exchange.getRequestMethod().equals( "POST" ) ) {
+            sendResponse( exchange , 405 , "" );
+            return;
+        }
+        DataInputStream in = new DataInputStream( new BufferedInputStream( exchange.getRequestBody() ) );
+        int numStored = 0;
+        byte[] data = new byte[ ContentChunker.DEFAULT_MAX_SIZE ];
+        while( true ) {
+
+            // Read the next chunk (a clean end of the body ends the batch)
+            String hash;
+            try {
+                hash = in.readUTF();
+            }
+            catch( EOFException e ) {
+                break;
+            }
+            int length = in.readInt();
+            if( ! ContentChunker.isValidHash( hash ) || length < 0 || length > MAX_CHUNK_SIZE ) {
+                sendResponse( exchange , 400 , "Invalid chunk " + hash );
+                return;
+            }
+            if( length > data.length ) {
+                data = new byte[ length ];
+            }
+            in.readFully( data , 0 , length );
+            chunkBytesReceived.addAndGet( length );
+
+            // Check and store it
+            if( ! hash.equals( ContentChunker.hash( data , 0 , length ) ) ) {
+                sendResponse( exchange , 400 , "Hash mismatch " + hash );
+                return;
+            }
+            chunkStore.putChunk( hash , data , 0 , length );
+            ++numStored;
+            numChunksReceived.incrementAndGet();
+
+            // Simulate a dropped connection (testing)
+            if( chunkLimit.get() >= 0 && chunkLimit.decrementAndGet() <= 0 ) {
+                exchange.close();
+                return;
+            }
+        }
+        sendResponse( exchange , 200 , numStored + "\n" );
+    }
+
+    /** Helper method that handles PUT /files/device/session/file. */
+    private void handleFile( HttpExchange exchange )
+        throws IOException {
+        if( ! exchange.getRequestMethod().equals( "PUT" ) ) {
+            sendResponse( exchange , 405 , "" );
+            return;
+        }
+        String[] names = exchange.getRequestURI().getPath().substring( "/files/".length() ).split( "/" );
+        if( names.length != 3 || ! isValidName( names[0] ) || ! isValidName( names[1] ) || ! isValidName( names[2] ) ) {
+            sendResponse( exchange , 400 , "Invalid file path" );
+            return;
+        }
+
+        // Read the manifest, and check that all the chunks are here
+        BufferedReader reader = new BufferedReader( new InputStreamReader( exchange.getRequestBody() , "UTF-8" ) );
+        long length;
+        try {
+            length = Long.parseLong( reader.readLine() );
+        }
+        catch( NumberFormatException e ) {
+            sendResponse( exchange , 400 , "Invalid manifest" );
+            return;
+        }
+        List< String > hashes = new ArrayList< String >();
+        StringBuilder missing = new StringBuilder();
+        String hash;
+        while( ( hash = reader.readLine() ) != null ) {
+            if( ! ContentChunker.isValidHash( hash ) ) {
+                sendResponse( exchange , 400 , "Invalid hash " + hash );
+                return;
+            }
+            hashes.add( hash );
+            if( ! chunkStore.hasChunk( hash ) ) {
+                missing.append( hash ).append( '\n' );
+            }
+        }
+        if( missing.length() > 0 ) {
+            sendResponse( exchange , 409 , missing.toString() );
+            return;
+        }
+
+        // Assemble the file (in a temp file, renamed when complete)
+        File file = getFile( names[0] , names[1] , names[2] );
+        File folder = file.getParentFile();
+        if( ! folder.isDirectory() && ! folder.mkdirs() ) {
+            throw new IOException( "Unable to create " + folder );
+        }
+        File tempFile = File.createTempFile( ChunkStore.TEMP_PREFIX + file.getName() , ChunkStore.TEMP_SUFFIX , folder );
+        long numBytes = 0L;
+        OutputStream out = new FileOutputStream( tempFile );
+        try {
+            for( String chunkHash : hashes ) {
+                byte[] chunk = chunkStore.getChunk( chunkHash );
+                out.write( chunk );
+                numBytes += chunk.length;
+            }
+        }
+        finally {
+            out.close();
+        }
+        if( numBytes != length ) {
+            tempFile.delete();
+            sendResponse( exchange , 400 , "Length mismatch: " + numBytes + " != " + length );
+            return;
+        }
+        if( ! replaceFile( tempFile , file ) ) {
+            tempFile.delete();
+            throw new IOException( "Unable to rename to " + file );
+        }
+        sendResponse( exchange , 200 , numBytes + "\n" );
+    }
+
+    /** Helper method that renames a file, replacing the target. */
+    private static boolean replaceFile( File source ,
+                                        File target ) {
+        if( source.renameTo( target ) ) {
+            return true;
+        }
+        // NOTE: renameTo does not replace on some platforms
+        target.delete();
+        return source.renameTo( target );
+    }
+
+    /** Helper method that checks a path component (no separators or '..'). */
+    private static boolean isValidName( String name ) {
+        return name.matches( "[A-Za-z0-9_.-]+" ) && ! name.startsWith( "." );
+    }
+
+    /** Helper method that sends a text response. */
+    private static void sendResponse( HttpExchange exchange ,
+                                      int status ,
+                                      String body )
+        throws IOException {
+        // NOTE: Never an empty body: with no body (length -1) the JDK server ends the exchange
+        //  twice (on the headers, and on closing the body), and hands the connection to two
+        //  exchanges, which then read the next request in turns
+        byte[] bytes = ( body.isEmpty() ? "\n" : body ).getBytes( "UTF-8" );
+        exchange.getResponseHeaders().set( "Content-Type" , "text/plain; charset=utf-8" );
+        exchange.sendResponseHeaders( status , bytes.length );
+        OutputStream out = exchange.getResponseBody();
+        out.write( bytes );
+        out.close();
+    }
+
+    /**
+       Request handler that reports a failed request to the client (500, with
+       the error), instead of dropping the connection, and counts it.
+     */
+    private abstract class Handler
+        implements HttpHandler {
+
+        /** Handles a request. */
+        public void handle( HttpExchange exchange ) {
+            try {
+                handleRequest( exchange );
+            }
+            catch( Exception e ) {
+                numFailedRequests.incrementAndGet();
+                try {
+                    sendResponse( exchange , 500 , "Request " + exchange.getRequestURI() + " failed: " + e );
+                }
+                catch( Exception ignored ) {
+                    // The response was already (partly) sent: drop the connection
+                    exchange.close();
+                }
+            }
+        }
+
+        /**
+           Handles a request, sending the response.
+
+           <p> NOTE: Sending the response ends the exchange, and the connection
+           may then carry the next request: closing the exchange again would
+           close that request's stream.
+         */
+        abstract void handleRequest( HttpExchange exchange )
+            throws IOException;
+    }
+
+    /**
+       Runs a server until killed.
+
+       <p> Usage: CollectionServer rootFolder [port]
+     */
+    public static void main( String[] args )
+        throws IOException {
+        if( args.length == 0 || args.length > 2 ) {
+            System.err.println( "Usage: CollectionServer rootFolder [port]" );
+            System.exit( 2 );
+        }
+        CollectionServer server = new CollectionServer( new File( args[0] ) );
+        server.start( args.length > 1 ? Integer.parseInt( args[1] ) : DEFAULT_PORT );
+        System.out.println( "Listening on " + server.getUrl() );
+    }
+
+    /** Chunks. */
+    private final ChunkStore chunkStore;
+    /** Folder of the assembled files. */
+    private final File fileFolder;
+    /** HTTP server, and its threads. */
+    private HttpServer server;
+    private ExecutorService executor;
+    /** Counts of chunks and chunk bytes received. */
+    private final AtomicLong numChunksReceived = new AtomicLong() ,
+        chunkBytesReceived = new AtomicLong();
+    /** Chunks left to read before dropping the connection (-1 for no limit). */
+    private final AtomicInteger chunkLimit = new AtomicInteger( -1 );
+    /** Number of failed requests. */
+    private final AtomicLong numFailedRequests = new AtomicLong();
+
+    /** Default port. */
+    public static final int DEFAULT_PORT = 8222;
+    /** Number of request threads. */
+    private static final int NUM_THREADS = 4;
+    /** Largest accepted chunk (bytes). */
+    private static final int MAX_CHUNK_SIZE = 1 << 20;
+}
@@ -0,0 +1,340 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   Encodes the column chunks of the columnar files, each independently:
+   <ul>
+     <li> LONG and INT: the first value, then the deltas between consecutive
+          values, zigzag varint encoded (a 40 Hz timestamp is 1 byte)
+     <li> FLOAT and DOUBLE: the XOR of each value's bits with the previous
+          value's bits (Gorilla, Pelkonen et al. 2015): '0' if the value
+          repeats, else the XOR's meaningful bits, re-using the previous
+          leading/trailing zero window when they fit ('10'), or with a new
+          window ('11', leading zeros, length)
+     <li> STRING: a dictionary of the distinct values (in first use order),
+          then the varint dictionary code of each value
+   </ul>
+ */
+final class ColumnCodec {
+
+    /** Not instantiable. */
+    private ColumnCodec() {
+    }
+
+    /** Encodes a column chunk. */
+    static byte[] encode( ColumnVector column )
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream( column.size() * 2 + 16 );
+        int size = column.size();
+        switch( column.getType() ) {
+        case LONG:
+        case INT: {
+            long previous = 0L;
+            for( int i = 0 ; i < size ; ++i ) {
+                long value = column.longs[i];
+                writeVarLong( out , zigzag( value - previous ) );
+                previous = value;
+            }
+            break;
+        }
+        case FLOAT: {
+            XorEncoder encoder = new XorEncoder( out , 32 );
+            for( int i = 0 ; i < size ; ++i ) {
+                encoder.encode( Float.floatToRawIntBits( column.floats[i] ) & 0xFFFFFFFFL );
+            }
+            encoder.flush();
+            break;
+        }
+        case DOUBLE: {
+            XorEncoder encoder = new XorEncoder( out , 64 );
+            for( int i = 0 ; i < size ; ++i ) {
+                encoder.encode( Double.doubleToRawLongBits( column.doubles[i] ) );
+            }
+            encoder.flush();
+            break;
+        }
+        default: {
+            Map< String , Integer > codes = new LinkedHashMap< String , Integer >();
+            int[] rowCodes = new int[ size ];
+            for( int i = 0 ; i < size ; ++i ) {
+                String value = column.strings[i];
+                Integer code = codes.get( value );
+                if( code == null ) {
+                    code = codes.size();
+                    codes.put( value , code );
+                }
+                rowCodes[i] = code;
+            }
+            writeVarLong( out , codes.size() );
+            DataOutputStream dataOut = new DataOutputStream( out );
+            for( String value : codes.keySet() ) {
+                dataOut.writeUTF( value );
+            }
+            dataOut.flush();
+            for( int i = 0 ; i < size ; ++i ) {
+                writeVarLong( out , rowCodes[i] );
+            }
+            break;
+        }
+        }
+        return out.toByteArray();
+    }
+
+    /** Decodes a column chunk of numRows values into an (empty) column. */
+    static void decode( byte[] data ,
+                        int numRows ,
+                        ColumnVector column )
+        throws IOException {
+        switch( column.getType() ) {
+        case LONG:
+        case INT: {
+            int[] position = { 0 };
+            long value = 0L;
+            for( int i = 0 ; i < numRows ; ++i ) {
+                value += unzigzag( readVarLong( data , position ) );
+                column.addLong( value );
+            }
+            break;
+        }
+        case FLOAT: {
+            XorDecoder decoder = new XorDecoder( data , 32 );
+            for( int i = 0 ; i < numRows ; ++i ) {
+                column.addFloat( Float.intBitsToFloat( (int) decoder.decode() ) );
+            }
+            break;
+        }
+        case DOUBLE: {
+            XorDecoder decoder = new XorDecoder( data , 64 );
+            for( int i = 0 ; i < numRows ; ++i ) {
+                column.addDouble( Double.longBitsToDouble( decoder.decode() ) );
+            }
+            break;
+        }
+        default: {
+            int[] position = { 0 };
+            String[] dictionary = readDictionary( data , position );
+            for( int i = 0 ; i < numRows ; ++i ) {
+                int code = (int) readVarLong( data , position );
+                if( code >= dictionary.length ) {
+                    throw new IOException( "Invalid dictionary code " + code );
+                }
+                column.addString( dictionary[ code ] );
+            }
+            break;
+        }
+        }
+    }
+
+    /** Reads the dictionary at the start of a STRING chunk (the position is advanced past it). */
+    static String[] readDictionary( byte[] data ,
+                                    int[] position )
+        throws IOException {
+        int numValues = (int) readVarLong( data , position );
+        if( numValues < 0 || numValues > data.length ) {
+            throw new IOException( "Invalid dictionary size " + numValues );
+        }
+        ByteArrayInputStream bytes = new ByteArrayInputStream( data , position[0] , data.length - position[0] );
+        DataInputStream in = new DataInputStream( bytes );
+        String[] dictionary = new String[ numValues ];
+        for( int i = 0 ; i < numValues ; ++i ) {
+            dictionary[i] = in.readUTF();
+        }
+        position[0] = data.length - bytes.available();
+        return dictionary;
+    }
+
+    /** Helper method that writes an unsigned varint (7 bits per byte, low bits first). */
+    static void writeVarLong( OutputStream out ,
+                              long value )
+        throws IOException {
+        while( ( value & ~0x7FL ) != 0L ) {
+            out.write( (int) ( ( value & 0x7F ) | 0x80 ) );
+            value >>>= 7;
+        }
+        out.write( (int) value );
+    }
+
+    /** Helper method that reads an unsigned varint at a position (advanced). */
+    static long readVarLong( byte[] data ,
+                             int[] position )
+        throws IOException {
+        long value = 0L;
+        int pos = position[0];
+        for( int shift = 0 ; shift < 64 ; shift += 7 ) {
+            if( pos >= data.length ) {
+                throw new EOFException( "Truncated varint" );
+            }
+            int b = data[ pos++ ];
+            value |= (long) ( b & 0x7F ) << shift;
+            if( b >= 0 ) {
+                position[0] = pos;
+                return value;
+            }
+        }
+        throw new IOException( "Invalid varint" );
+    }
+
+    /** Helper method that maps a signed value to an unsigned one (small magnitudes to small values). */
+    private static long zigzag( long value ) {
+        return ( value << 1 ) ^ ( value >> 63 );
+    }
+
+    /** Helper method that maps a zigzag value back to a signed one. */
+    private static long unzigzag( long value ) {
+        return ( value >>> 1 ) ^ -( value & 1L );
+    }
+
+    /** Writes the XOR encoding of a sequence of 32 or 64-bit values. */
+    private static class XorEncoder {
+
+        /** Creates an encoder for values of the given width (bits). */
+        XorEncoder( OutputStream out ,
+                    int width ) {
+            this.out = out;
+            this.width = width;
+            this.leadingBits = ( width == 32 ? 5 : 6 );
+        }
+
+        /** Encodes a value (in the low width bits). */
+        void encode( long value )
+            throws IOException {
+            if( isFirst ) {
+                writeBits( value , width );
+                isFirst = false;
+            }
+            else {
+                long xor = value ^ previous;
+                if( xor == 0L ) {
+                    writeBits( 0L , 1 );
+                }
+                else {
+                    int leading = Long.numberOfLeadingZeros( xor ) - ( 64 - width );
+                    int trailing = Long.numberOfTrailingZeros( xor );
+                    if( previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing ) {
+                        writeBits( 2L , 2 );
+                        writeBits( xor >>> previousTrailing , width - previousLeading - previousTrailing );
+                    }
+                    else {
+                        int length = width - leading - trailing;
+                        writeBits( 3L , 2 );
+                        writeBits( leading , leadingBits );
+                        writeBits( length - 1 , leadingBits );
+                        writeBits( xor >>> trailing , length );
+                        previousLeading = leading;
+                        previousTrailing = trailing;
+                    }
+                }
+            }
+            previous = value;
+        }
+
+        /** Writes the last partial byte (zero padded). */
+        void flush()
+            throws IOException {
+            if( numBits > 0 ) {
+                out.write( (int) ( bits << ( 8 - numBits ) ) );
+                numBits = 0;
+            }
+        }
+
+        /** Helper method that writes the low count bits of a value (most significant first). */
+        private void writeBits( long value ,
+                                int count )
+            throws IOException {
+            for( int i = count - 1 ; i >= 0 ; --i ) {
+                bits = ( bits << 1 ) | ( ( value >>> i ) & 1L );
+                if( ++numBits == 8 ) {
+                    out.write( (int) bits );
+                    bits = 0L;
+                    numBits = 0;
+                }
+            }
+        }
+
+        /** Output. */
+        private final OutputStream out;
+        /** Value width, and the width of the leading zeros/length fields (bits). */
+        private final int width , leadingBits;
+        /** Previous value. */
+        private long previous;
+        /** Previous leading/trailing zero window (-1 if none yet). */
+        private int previousLeading = -1 , previousTrailing;
+        /** Flag to indicate that no value was written yet. */
+        private boolean isFirst = true;
+        /** Bits of the current byte. */
+        private long bits;
+        private int numBits;
+    }
+
+    /** Reads the XOR encoding of a sequence of 32 or 64-bit values. */
+    private static class XorDecoder {
+
+        /** Creates a decoder for values of the given width (bits). */
+        XorDecoder( byte[] data ,
+                    int width ) {
+            this.data = data;
+            this.width = width;
+            this.leadingBits = ( width == 32 ? 5 : 6 );
+        }
+
+        /** Decodes the next value. */
+        long decode()
+            throws IOException {
+            if( isFirst ) {
+                previous = readBits( width );
+                isFirst = false;
+                return previous;
+            }
+            if( readBits( 1 ) == 0L ) {
+                return previous;
+            }
+            if( readBits( 1 ) == 0L ) {
+                // Previous window
+                previous ^= readBits( width - previousLeading - previousTrailing ) << previousTrailing;
+            }
+            else {
+                previousLeading = (int) readBits( leadingBits );
+                int length = (int) readBits( leadingBits ) + 1;
+                previousTrailing = width - previousLeading - length;
+                previous ^= readBits( length ) << previousTrailing;
+            }
+            return previous;
+        }
+
+        /** Helper method that reads count (1 to 64) bits (most significant first). */
+        private long readBits( int count )
+            throws IOException {
+            long value = 0L;
+            while( count > 0 ) {
+                if( numBits == 0 ) {
+                    if( position >= data.length ) {
+                        throw new EOFException( "Truncated XOR chunk" );
+                    }
+                    bits = data[ position++ ] & 0xFF;
+                    numBits = 8;
+                }
+                int take = Math.min( count , numBits );
+                value = ( value << take ) | ( ( bits >>> ( numBits - take ) ) & ( ( 1 << take ) - 1 ) );
+                numBits -= take;
+                count -= take;
+            }
+            return value;
+        }
+
+        /** Input. */
+        private final byte[] data;
+        /** Value width, and the width of the leading zeros/length fields (bits). */
+        private final int width , leadingBits;
+        /** Previous value. */
+        private long previous;
+        /** Previous leading/trailing zero window. */
+        private int previousLeading , previousTrailing;
+        /** Flag to indicate that no value was read yet. */
+        private boolean isFirst = true;
+        /** Position of the next byte, and the unread bits of the current byte. */
+        private int position = 0;
+        private int bits , numBits = 0;
+    }
+}
@@ -0,0 +1,194 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.util.*;
+
+/**
+   A named, typed column of values in a primitive array (grown as required),
+   as written to and read from the columnar files ({@link ColumnarWriter}).
+ */
+public class ColumnVector {
+
+    /** Value types. */
+    public static enum Type {
+        /** 64-bit integer (e.g. a timestamp), delta encoded. */
+        LONG( 'L' ) ,
+        /** 32-bit integer (e.g. an accuracy), delta encoded. */
+        INT( 'I' ) ,
+        /** Float, XOR encoded. */
+        FLOAT( 'F' ) ,
+        /** Double, XOR encoded. */
+        DOUBLE( 'D' ) ,
+        /** String (e.g. a provider or a label), dictionary encoded. */
+        STRING( 'S' );
+
+        /** Creates a type. */
+        private Type( char code ) {
+            this.code = code;
+        }
+
+        /** Gets the type with the given code (as in a schema string). */
+        public static Type forCode( char code ) {
+            for( Type type : values() ) {
+                if( type.code == code ) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException( "Invalid column type: " + code );
+        }
+
+        /** Code of the type. */
+        final char code;
+    }
+
+    /** Creates an empty column. */
+    public ColumnVector( String name ,
+                         Type type ) {
+        this.name = name;
+        this.type = type;
+        switch( type ) {
+        case LONG:
+        case INT:
+            longs = new long[ INITIAL_CAPACITY ];
+            break;
+        case FLOAT:
+            floats = new float[ INITIAL_CAPACITY ];
+            break;
+        case DOUBLE:
+            doubles = new double[ INITIAL_CAPACITY ];
+            break;
+        default:
+            strings = new String[ INITIAL_CAPACITY ];
+            break;
+        }
+    }
+
+    /** Gets the column name. */
+    public String getName() {
+        return name;
+    }
+
+    /** Gets the value type. */
+    public Type getType() {
+        return type;
+    }
+
+    /** Gets the number of values. */
+    public int size() {
+        return size;
+    }
+
+    /** Gets a LONG (or INT) value. */
+    public long getLong( int row ) {
+        return longs[ row ];
+    }
+
+    /** Gets an INT value. */
+    public int getInt( int row ) {
+        return (int) longs[ row ];
+    }
+
+    /** Gets a FLOAT value. */
+    public float getFloat( int row ) {
+        return floats[ row ];
+    }
+
+    /** Gets a DOUBLE value. */
+    public double getDouble( int row ) {
+        return doubles[ row ];
+    }
+
+    /** Gets a STRING value. */
+    public String getString( int row ) {
+        return strings[ row ];
+    }
+
+    /** Gets a numeric value as a double (NaN for a STRING column). */
+    public double getNumeric( int row ) {
+        switch( type ) {
+        case LONG:
+        case INT:
+            return longs[ row ];
+        case FLOAT:
+            return floats[ row ];
+        case DOUBLE:
+            return doubles[ row ];
+        default:
+            return Double.NaN;
+        }
+    }
+
+    /** Adds a LONG (or INT) value. */
+    public void addLong( long value ) {
+        if( size == longs.length ) {
+            longs = Arrays.copyOf( longs , size * 2 );
+        }
+        longs[ size++ ] = value;
+    }
+
+    /** Adds a FLOAT value. */
+    public void addFloat( float value ) {
+        if( size == floats.length ) {
+            floats = Arrays.copyOf( floats , size * 2 );
+        }
+        floats[ size++ ] = value;
+    }
+
+    /** Adds a DOUBLE value. */
+    public void addDouble( double value ) {
+        if( size == doubles.length ) {
+            doubles = Arrays.copyOf( doubles , size * 2 );
+        }
+        doubles[ size++ ] = value;
+    }
+
+    /** Adds a STRING value. */
+    public void addString( String value ) {
+        if( size == strings.length ) {
+            strings = Arrays.copyOf( strings , size * 2 );
+        }
+        strings[ size++ ] = value;
+    }
+
+    /** Adds a value of another column of the same type. */
+    public void addFrom( ColumnVector other ,
+                         int row ) {
+        switch( type ) {
+        case LONG:
+        case INT:
+            addLong( other.longs[ row ] );
+            break;
+        case FLOAT:
+            addFloat( other.floats[ row ] );
+            break;
+        case DOUBLE:
+            addDouble( other.doubles[ row ] );
+            break;
+        default:
+            addString( other.strings[ row ] );
+            break;
+        }
+    }
+
+    /** Removes all the values (keeping the arrays). */
+    public void clear() {
+        if( strings != null ) {
+            Arrays.fill( strings , 0 , size , null );
+        }
+        size = 0;
+    }
+
+    /** Column name. */
+    private final String name;
+    /** Value type. */
+    private final Type type;
+    /** Values (only the array of the type is allocated). */
+    long[] longs;
+    float[] floats;
+    double[] doubles;
+    String[] strings;
+    /** Number of values. */
+    int size = 0;
+
+    /** Initial capacity (values). */
+    private static final int INITIAL_CAPACITY = 1024;
+}
@@ -0,0 +1,651 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+   Reads the columnar files written by {@link ColumnarWriter}.
+
+   <p> A scan ({@link Query}) reads only the chunks of the requested
+   columns (and of the columns its predicates need), and skips the row
+   groups whose footer stats cannot match: a time range outside the
+   group's min/max time, or a label (any STRING column value) that is
+   not in the group's dictionary, or a value comparison outside the
+   group's min/max (bounded for the {@link #MAGNITUDE} of x, y, z too).
+   The rows of the remaining groups are then filtered exactly.
+ */
+public class ColumnarReader
+    implements Closeable {
+
+    /** Opens a columnar file, and reads its footer. */
+    public ColumnarReader( File file )
+        throws IOException {
+        this.file = file;
+        channel = new FileInputStream( file ).getChannel();
+        try {
+            // Trailer: footer length and magic
+            long fileLength = channel.size();
+            if( fileLength < ColumnarWriter.HEADER_LENGTH + 8 ) {
+                throw new IOException( "Not a columnar file: " + file );
+            }
+            ByteBuffer trailer = read( fileLength - 8 , 8 );
+            int footerLength = trailer.getInt();
+            if( trailer.getInt() != ColumnarWriter.FILE_MAGIC ||
+                footerLength <= 0 || footerLength > fileLength - ColumnarWriter.HEADER_LENGTH - 8 ) {
+                throw new IOException( "Not a columnar file (or truncated): " + file );
+            }
+            ByteBuffer header = read( 0L , ColumnarWriter.HEADER_LENGTH );
+            if( header.getInt() != ColumnarWriter.FILE_MAGIC ) {
+                throw new IOException( "Not a columnar file: " + file );
+            }
+            int version = header.getInt();
+            if( version != ColumnarWriter.FILE_VERSION ) {
+                throw new IOException( "Unsupported columnar file version " + version + ": " + file );
+            }
+
+            // Footer: schema, and the row groups' chunks
+            ByteBuffer footerBuffer = read( fileLength - 8 - footerLength , footerLength );
+            bytesRead += 8 + ColumnarWriter.HEADER_LENGTH + footerLength;
+            DataInputStream footer =
+                new DataInputStream( new ByteArrayInputStream( footerBuffer.array() ) );
+            type = SensorLogType.valueOf( footer.readUTF() );
+            int numColumns = footer.readInt();
+            columnNames = new String[ numColumns ];
+            columnTypes = new ColumnVector.Type[ numColumns ];
+            for( int i = 0 ; i < numColumns ; ++i ) {
+                columnNames[i] = footer.readUTF();
+                columnTypes[i] = ColumnVector.Type.forCode( (char) footer.readByte() );
+            }
+            chunkColumns = new ColumnVector[ numColumns ];
+            int numRowGroups = footer.readInt();
+            rowGroups = new RowGroup[ numRowGroups ];
+            for( int g = 0 ; g < numRowGroups ; ++g ) {
+                RowGroup rowGroup = new RowGroup( footer.readInt() , numColumns );
+                for( int i = 0 ; i < numColumns ; ++i ) {
+                    rowGroup.offsets[i] = footer.readLong();
+                    rowGroup.lengths[i] = footer.readInt();
+                    rowGroup.mins[i] = footer.readDouble();
+                    rowGroup.maxs[i] = footer.readDouble();
+                    if( columnTypes[i] == ColumnVector.Type.STRING ) {
+                        int numValues = footer.readInt();
+                        Set< String > values = new HashSet< String >();
+                        for( int v = 0 ; v < numValues ; ++v ) {
+                            values.add( footer.readUTF() );
+                        }
+                        rowGroup.dictionaries[i] = values;
+                    }
+                }
+                rowGroups[g] = rowGroup;
+                numRows += rowGroup.numRows;
+            }
+        }
+        catch( IllegalArgumentException e ) {
+            // Unknown log type or column type
+            channel.close();
+            throw new IOException( "Corrupt columnar file: " + file , e );
+        }
+        catch( IOException e ) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Gets the log type. */
+    public SensorLogType getType() {
+        return type;
+    }
+
+    /** Gets the column names (in schema order). */
+    public List< String > getColumnNames() {
+        return Collections.unmodifiableList( Arrays.asList( columnNames ) );
+    }
+
+    /** Gets a column's type. */
+    public ColumnVector.Type getColumnType( String name ) {
+        return columnTypes[ findColumn( name ) ];
+    }
+
+    /** Gets the number of rows. */
+    public long getNumRows() {
+        return numRows;
+    }
+
+    /** Gets the number of row groups. */
+    public int getNumRowGroups() {
+        return rowGroups.length;
+    }
+
+    /** Gets the total number of bytes read (footer and chunks). */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /** Runs a scan. */
+    public Result scan( Query query )
+        throws IOException {
+        return scan( query , null );
+    }
+
+    /**
+       Runs a scan, streaming the rows: the selected rows of each scanned
+       row group are passed to the callback (and not kept in the result),
+       so the memory used does not depend on the number of rows.
+
+       @param  callback  Callback for the rows (null to return them in the result)
+     */
+    public Result scan( Query query ,
+                        RowCallback callback )
+        throws IOException {
+
+        // Columns to return (all if none given), and the predicate columns
+        String[] names = ( query.columns == null ? columnNames : query.columns );
+        int[] outputColumns = new int[ names.length ];
+        Result result = new Result();
+        List< ColumnVector > outputs = new ArrayList< ColumnVector >();
+        for( int i = 0 ; i < names.length ; ++i ) {
+            outputColumns[i] = findColumn( names[i] );
+            ColumnVector output = new ColumnVector( names[i] , columnTypes[ outputColumns[i] ] );
+            result.columns.put( names[i] , output );
+            outputs.add( output );
+        }
+        boolean hasTimeRanges = ( query.startTimes != null );
+        int equalsColumn = -1;
+        if( query.equalsColumn != null ) {
+            equalsColumn = findColumn( query.equalsColumn );
+            if( columnTypes[ equalsColumn ] != ColumnVector.Type.STRING ) {
+                throw new IllegalArgumentException( "Only STRING columns can be matched: " + query.equalsColumn );
+            }
+        }
+        int numComparisons = query.comparisons.size();
+        int[][] comparisonColumns = new int[ numComparisons ][];
+        for( int c = 0 ; c < numComparisons ; ++c ) {
+            comparisonColumns[c] = findNumericColumns( query.comparisons.get( c ).column );
+        }
+
+        long bytesBefore = bytesRead;
+        ColumnVector[] decoded = new ColumnVector[ columnNames.length ];
+        boolean[] isSelected = new boolean[0];
+        double[] bounds = new double[2];
+        for( RowGroup rowGroup : rowGroups ) {
+
+            // Skip the row group if its stats cannot match (the time ranges,
+            //  label dictionary, and value min/max), and check if all its rows match
+            boolean canMatch = true , isWholeGroup = ( equalsColumn < 0 );
+            if( hasTimeRanges ) {
+                int range = findTimeRange( query , (long) rowGroup.mins[ TIME_COLUMN ] );
+                canMatch = ( range + 1 < query.startTimes.length &&
+                             query.startTimes[ range + 1 ] <= rowGroup.maxs[ TIME_COLUMN ] ) ||
+                    ( range >= 0 && query.endTimes[ range ] > rowGroup.mins[ TIME_COLUMN ] );
+                isWholeGroup &= ( range >= 0 && rowGroup.maxs[ TIME_COLUMN ] < query.endTimes[ range ] );
+            }
+            if( equalsColumn >= 0 && ! rowGroup.dictionaries[ equalsColumn ].contains( query.equalsValue ) ) {
+                canMatch = false;
+            }
+            for( int c = 0 ; c < numComparisons && canMatch ; ++c ) {
+                Comparison comparison = query.comparisons.get( c );
+                getBounds( rowGroup.mins , rowGroup.maxs , comparisonColumns[c] , bounds );
+                canMatch = comparison.canMatch( bounds[0] , bounds[1] );
+                isWholeGroup &= comparison.allMatch( bounds[0] , bounds[1] );
+            }
+            if( ! canMatch ) {
+                ++result.numRowGroupsSkipped;
+                result.bytesSkipped += rowGroup.getNumBytes();
+                continue;
+            }
+            ++result.numRowGroupsScanned;
+            result.numRowsScanned += rowGroup.numRows;
+
+            // Select the rows (all of them if the group stats match)
+            Arrays.fill( decoded , null );
+            if( ! isWholeGroup ) {
+                if( isSelected.length < rowGroup.numRows ) {
+                    isSelected = new boolean[ rowGroup.numRows ];
+                }
+                Arrays.fill( isSelected , 0 , rowGroup.numRows , true );
+                if( hasTimeRanges ) {
+                    ColumnVector times = decode( rowGroup , TIME_COLUMN , decoded );
+                    for( int row = 0 ; row < rowGroup.numRows ; ++row ) {
+                        long time = times.longs[ row ];
+                        int range = findTimeRange( query , time );
+                        isSelected[ row ] = ( range >= 0 && time < query.endTimes[ range ] );
+                    }
+                }
+                if( equalsColumn >= 0 ) {
+                    ColumnVector values = decode( rowGroup , equalsColumn , decoded );
+                    for( int row = 0 ; row < rowGroup.numRows ; ++row ) {
+                        isSelected[ row ] &= query.equalsValue.equals( values.strings[ row ] );
+                    }
+                }
+                for( int c = 0 ; c < numComparisons ; ++c ) {
+                    Comparison comparison = query.comparisons.get( c );
+                    int[] columns = comparisonColumns[c];
+                    for( int column : columns ) {
+                        decode( rowGroup , column , decoded );
+                    }
+                    for( int row = 0 ; row < rowGroup.numRows ; ++row ) {
+                        if( isSelected[ row ] ) {
+                            isSelected[ row ] = comparison.matches( getValue( decoded , columns , row ) );
+                        }
+                    }
+                }
+            }
+
+            // Copy the selected rows of the output columns
+            for( int i = 0 ; i < outputColumns.length ; ++i ) {
+                ColumnVector column = decode( rowGroup , outputColumns[i] , decoded );
+                ColumnVector output = outputs.get( i );
+                for( int row = 0 ; row < rowGroup.numRows ; ++row ) {
+                    if( isWholeGroup || isSelected[ row ] ) {
+                        output.addFrom( column , row );
+                    }
+                }
+            }
+            for( int i = 0 ; i < columnNames.length ; ++i ) {
+                if( decoded[i] == null ) {
+                    result.bytesSkipped += rowGroup.lengths[i];
+                }
+            }
+
+            // Pass the rows on (if streaming)
+            if( outputColumns.length > 0 ) {
+                int numRows = outputs.get( 0 ).size();
+                if( callback == null ) {
+                    result.numRows = numRows;
+                }
+                else {
+                    result.numRows += numRows;
+                    if( numRows > 0 ) {
+                        callback.onRows( outputs , numRows );
+                    }
+                    for( ColumnVector output : outputs ) {
+                        output.clear();
+                    }
+                }
+            }
+        }
+        result.bytesRead = bytesRead - bytesBefore;
+        return result;
+    }
+
+    /** Closes the file. */
+    @Override
+    public void close()
+        throws IOException {
+        channel.close();
+    }
+
+    /**
+       A scan: the columns to return, and the predicates (all optional).
+       The setters return the query, so they can be chained.
+     */
+    public static class Query {
+
+        /** Sets the columns to return (default all). */
+        public Query select( String... columns ) {
+            this.columns = columns.clone();
+            return this;
+        }
+
+        /** Returns only the rows with a logged time in [startTime, endTime) (millisec). */
+        public Query timeRange( long startTime ,
+                                long endTime ) {
+            return timeRanges( new long[] { startTime } , new long[] { endTime } );
+        }
+
+        /**
+           Returns only the rows with a logged time in one of the ranges
+           [startTimes[i], endTimes[i]) (millisec), e.g. the intervals of
+           a label. The ranges must be sorted, and must not overlap.
+         */
+        public Query timeRanges( long[] startTimes ,
+                                 long[] endTimes ) {
+            if( startTimes.length != endTimes.length ) {
+                throw new IllegalArgumentException( startTimes.length + " start times, but " +
+                                                    endTimes.length + " end times" );
+            }
+            for( int i = 0 ; i < startTimes.length ; ++i ) {
+                if( startTimes[i] > endTimes[i] || ( i > 0 && startTimes[i] < endTimes[ i - 1 ] ) ) {
+                    throw new IllegalArgumentException( "Time ranges not sorted, or overlapping" );
+                }
+            }
+            this.startTimes = startTimes.clone();
+            this.endTimes = endTimes.clone();
+            return this;
+        }
+
+        /** Returns only the rows whose STRING column has the given value (e.g. label = WALKING). */
+        public Query where( String column ,
+                            String value ) {
+            this.equalsColumn = column;
+            this.equalsValue = value;
+            return this;
+        }
+
+        /**
+           Returns only the rows whose numeric column compares to the given
+           value (e.g. z &gt; 3). The column can also be {@link ColumnarReader#MAGNITUDE},
+           the length of the (x, y, z) vector. All the comparisons must hold.
+
+           @param  op  One of &lt;, &lt;=, &gt;, &gt;=
+         */
+        public Query where( String column ,
+                            String op ,
+                            double value ) {
+            comparisons.add( new Comparison( column , op , value ) );
+            return this;
+        }
+
+        /** Columns to return (null for all). */
+        String[] columns;
+        /** Time ranges (null if none). */
+        long[] startTimes , endTimes;
+        /** STRING column to match, and its value (null if none). */
+        String equalsColumn , equalsValue;
+        /** Numeric comparisons. */
+        final List< Comparison > comparisons = new ArrayList< Comparison >();
+    }
+
+    /** Callback for the rows of a streaming scan. */
+    public static interface RowCallback {
+
+        /**
+           Called with the selected rows of a row group.
+
+           @param  columns  The requested columns (cleared after the call)
+           @param  numRows  Number of rows
+         */
+        public void onRows( List< ColumnVector > columns ,
+                            int numRows )
+            throws IOException;
+    }
+
+    /** Result of a scan: the selected rows of the requested columns, and the scan stats. */
+    public static class Result {
+
+        /** Gets a returned column. */
+        public ColumnVector getColumn( String name ) {
+            ColumnVector column = columns.get( name );
+            if( column == null ) {
+                throw new IllegalArgumentException( "Column not selected: " + name );
+            }
+            return column;
+        }
+
+        /** Gets the number of rows returned. */
+        public int getNumRows() {
+            return numRows;
+        }
+
+        /** Gets the number of rows in the scanned row groups. */
+        public long getNumRowsScanned() {
+            return numRowsScanned;
+        }
+
+        /** Gets the number of row groups scanned. */
+        public int getNumRowGroupsScanned() {
+            return numRowGroupsScanned;
+        }
+
+        /** Gets the number of row groups skipped (by their stats). */
+        public int getNumRowGroupsSkipped() {
+            return numRowGroupsSkipped;
+        }
+
+        /** Gets the number of chunk bytes read. */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /** Gets the number of chunk bytes skipped (of the skipped row groups, and the unread columns). */
+        public long getBytesSkipped() {
+            return bytesSkipped;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return numRows + " rows (of " + numRowsScanned + " scanned), " + numRowGroupsScanned +
+                " row groups scanned, " + numRowGroupsSkipped + " skipped, " + bytesRead + " bytes read, " + bytesSkipped + " skipped";
+        }
+
+        /** Returned columns (in the requested order). */
+        private final Map< String , ColumnVector > columns = new LinkedHashMap< String , ColumnVector >();
+        /** Stats. */
+        private int numRows , numRowGroupsScanned , numRowGroupsSkipped;
+        private long numRowsScanned , bytesRead , bytesSkipped;
+    }
+
+    /** A numeric comparison (column op value). */
+    static class Comparison {
+
+        /** Creates a comparison. */
+        Comparison( String column ,
+                    String op ,
+                    double value ) {
+            this.column = column;
+            this.op = Arrays.asList( OPS ).indexOf( op );
+            this.value = value;
+            if( this.op < 0 ) {
+                throw new IllegalArgumentException( "Unknown comparison " + op + " (not one of " +
+                                                    Arrays.toString( OPS ) + ")" );
+            }
+        }
+
+        /** Checks if a value matches. */
+        boolean matches( double x ) {
+            switch( op ) {
+            case LESS:
+                return x < value;
+            case LESS_EQUAL:
+                return x <= value;
+            case GREATER:
+                return x > value;
+            default:
+                return x >= value;
+            }
+        }
+
+        /** Checks if some value in [min, max] can match (true if the stats are unknown). */
+        boolean canMatch( double min ,
+                          double max ) {
+            if( Double.isNaN( min ) || Double.isNaN( max ) ) {
+                return true;
+            }
+            return ( op == LESS || op == LESS_EQUAL ? matches( min ) : matches( max ) );
+        }
+
+        /** Checks if all the values in [min, max] match (false if the stats are unknown). */
+        boolean allMatch( double min ,
+                          double max ) {
+            if( Double.isNaN( min ) || Double.isNaN( max ) ) {
+                return false;
+            }
+            return ( op == LESS || op == LESS_EQUAL ? matches( max ) : matches( min ) );
+        }
+
+        /** Column (or MAGNITUDE). */
+        final String column;
+        /** Operator (index in OPS). */
+        final int op;
+        /** Value compared to. */
+        final double value;
+
+        /** Operators. */
+        static final String[] OPS = { "<" , "<=" , ">" , ">=" };
+        static final int LESS = 0 , LESS_EQUAL = 1 , GREATER = 2;
+    }
+
+    /** Helper method that finds the last time range starting at or before a time (-1 if none). */
+    private static int findTimeRange( Query query ,
+                                      long time ) {
+        int index = Arrays.binarySearch( query.startTimes , time );
+        if( index >= 0 ) {
+            // The last of equal start times (an empty range may start at the same time)
+            while( index + 1 < query.startTimes.length && query.startTimes[ index + 1 ] == time ) {
+                ++index;
+            }
+            return index;
+        }
+        return -index - 2;
+    }
+
+    /** Helper method that finds the columns of a numeric comparison (x, y, z for MAGNITUDE). */
+    private int[] findNumericColumns( String name ) {
+        if( name.equals( MAGNITUDE ) ) {
+            return new int[] { findColumn( "x" ) , findColumn( "y" ) , findColumn( "z" ) };
+        }
+        int column = findColumn( name );
+        if( columnTypes[ column ] == ColumnVector.Type.STRING ) {
+            throw new IllegalArgumentException( "Not a numeric column: " + name );
+        }
+        return new int[] { column };
+    }
+
+    /**
+       Gets the min and max of a (derived) column from the min and max of
+       each column (e.g. of a row group).
+
+       @param  columns  The column, or the x, y, z columns of a magnitude
+       @param  bounds   Set to the min and max
+     */
+    static void getBounds( double[] mins ,
+                           double[] maxs ,
+                           int[] columns ,
+                           double[] bounds ) {
+        if( columns.length == 1 ) {
+            bounds[0] = mins[ columns[0] ];
+            bounds[1] = maxs[ columns[0] ];
+            return;
+        }
+        // Magnitude: the nearest and farthest corners of the min/max box
+        double minSquared = 0.0 , maxSquared = 0.0;
+        for( int column : columns ) {
+            double min = mins[ column ] , max = maxs[ column ];
+            double near = ( min > 0.0 ? min : ( max < 0.0 ? -max : 0.0 ) );
+            double far = Math.max( Math.abs( min ) , Math.abs( max ) );
+            minSquared += near * near;
+            maxSquared += far * far;
+        }
+        bounds[0] = Math.sqrt( minSquared );
+        bounds[1] = Math.sqrt( maxSquared );
+    }
+
+    /** Helper method that gets the value of a (derived) column in a row. */
+    private static double getValue( ColumnVector[] decoded ,
+                                    int[] columns ,
+                                    int row ) {
+        if( columns.length == 1 ) {
+            return decoded[ columns[0] ].getNumeric( row );
+        }
+        double sumSquared = 0.0;
+        for( int column : columns ) {
+            double value = decoded[ column ].getNumeric( row );
+            sumSquared += value * value;
+        }
+        return Math.sqrt( sumSquared );
+    }
+
+    /** Helper method that finds a column by name. */
+    private int findColumn( String name ) {
+        for( int i = 0 ; i < columnNames.length ; ++i ) {
+            if( columnNames[i].equals( name ) ) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException( "No column " + name + " in " + type + " (" + file + ")" );
+    }
+
+    /** Helper method that reads and decodes a chunk of a row group (once per row group). */
+    private ColumnVector decode( RowGroup rowGroup ,
+                                 int column ,
+                                 ColumnVector[] decoded )
+        throws IOException {
+        if( decoded[ column ] == null ) {
+            byte[] data = read( rowGroup.offsets[ column ] , rowGroup.lengths[ column ] ).array();
+            bytesRead += data.length;
+            ColumnVector vector = chunkColumns[ column ];
+            if( vector == null ) {
+                vector = chunkColumns[ column ] = new ColumnVector( columnNames[ column ] , columnTypes[ column ] );
+            }
+            vector.clear();
+            ColumnCodec.decode( data , rowGroup.numRows , vector );
+            decoded[ column ] = vector;
+        }
+        return decoded[ column ];
+    }
+
+    /** Helper method that reads a byte range of the file. */
+    private ByteBuffer read( long offset ,
+                             int length )
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate( length );
+        while( buffer.hasRemaining() ) {
+            if( channel.read( buffer , offset + buffer.position() ) < 0 ) {
+                throw new EOFException( "Truncated columnar file: " + file );
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /** Footer entry of a row group. */
+    private static class RowGroup {
+
+        /** Creates an entry. */
+        @SuppressWarnings( { "unchecked" , "rawtypes" } )
+        RowGroup( int numRows ,
+                  int numColumns ) {
+            this.numRows = numRows;
+            offsets = new long[ numColumns ];
+            lengths = new int[ numColumns ];
+            mins = new double[ numColumns ];
+            maxs = new double[ numColumns ];
+            dictionaries = new Set[ numColumns ];
+        }
+
+        /** Number of rows. */
+        final int numRows;
+        /** Position and length of each column's chunk. */
+        final long[] offsets;
+        final int[] lengths;
+        /** Min and max of each numeric column. */
+        final double[] mins , maxs;
+        /** Values of each STRING column (null for the other columns). */
+        final Set< String >[] dictionaries;
+
+        /** Gets the total length of the chunks. */
+        long getNumBytes() {
+            long numBytes = 0L;
+            for( int length : lengths ) {
+                numBytes += length;
+            }
+            return numBytes;
+        }
+    }
+
+    /** File. */
+    private final File file;
+    /** File channel. */
+    private final FileChannel channel;
+    /** Log type. */
+    private SensorLogType type;
+    /** Column names and types. */
+    private String[] columnNames;
+    private ColumnVector.Type[] columnTypes;
+    /** Footer entries of the row groups. */
+    private RowGroup[] rowGroups;
+    /** Decoded chunk of each column (re-used across row groups). */
+    private ColumnVector[] chunkColumns;
+    /** Number of rows. */
+    private long numRows;
+    /** Total number of bytes read. */
+    private long bytesRead;
+
+    /** The logged time column. */
+    private static final int TIME_COLUMN = 0;
+
+    /** Derived column for comparisons: the magnitude of the (x, y, z) vector. */
+    public static final String MAGNITUDE = "magnitude";
+}
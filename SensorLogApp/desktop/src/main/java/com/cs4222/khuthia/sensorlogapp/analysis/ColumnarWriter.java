@@ -0,0 +1,337 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   Exports SensorLogApp logs to self-describing columnar files (one per
+   log, e.g. {@code Loc.slc} for {@code Loc.txt}), for analysis tools that
+   only need a few columns or a time range ({@link ColumnarReader}).
+
+   <p> The rows are split into time-bounded row groups (a minute by
+   default), and each column of a row group is encoded as an independent
+   chunk ({@link ColumnCodec}). A footer holds the schema, and for every
+   chunk its position and min/max (for a STRING column, its dictionary),
+   so a reader can skip row groups by time or label. File layout (big
+   endian):
+   <pre>
+     int    magic ('SLCF')
+     int    version
+     column chunks (row group by row group, column by column)
+     footer:
+       UTF    log type (SensorLogType name)
+       int    number of columns, followed by (UTF name , byte type code)
+       int    number of row groups, followed by:
+         int    number of rows
+         per column: long offset , int length , double min , double max
+                     (for a STRING column: int number of values , UTF values)
+     int    footer length (bytes)
+     int    magic ('SLCF')
+   </pre>
+ */
+public class ColumnarWriter {
+
+    /**
+       Creates a writer.
+
+       @param  rowGroupMillis   Time span of a row group (millisec)
+       @param  maxRowGroupRows  Max rows of a row group
+     */
+    public ColumnarWriter( long rowGroupMillis ,
+                           int maxRowGroupRows ) {
+        if( rowGroupMillis <= 0 || maxRowGroupRows <= 0 ) {
+            throw new IllegalArgumentException( "Invalid row group span " + rowGroupMillis +
+                                                " or size " + maxRowGroupRows );
+        }
+        this.rowGroupMillis = rowGroupMillis;
+        this.maxRowGroupRows = maxRowGroupRows;
+    }
+
+    /** Creates a writer with a minute per row group. */
+    public ColumnarWriter() {
+        this( DEFAULT_ROW_GROUP_MILLIS , DEFAULT_MAX_ROW_GROUP_ROWS );
+    }
+
+    /**
+       Gets the schema of a log type: the column names and types (the
+       first column is always the logged time).
+     */
+    public static ColumnVector[] newColumns( SensorLogType type ) {
+        String[] schema = SCHEMAS[ type.ordinal() ].split( "," );
+        ColumnVector[] columns = new ColumnVector[ schema.length ];
+        for( int i = 0 ; i < schema.length ; ++i ) {
+            int colon = schema[i].indexOf( ':' );
+            columns[i] = new ColumnVector( schema[i].substring( 0 , colon ) ,
+                                           ColumnVector.Type.forCode( schema[i].charAt( colon + 1 ) ) );
+        }
+        return columns;
+    }
+
+    /** Gets the name of the columnar file of a log type (e.g. Loc.slc). */
+    public static String getFileName( SensorLogType type ) {
+        String name = type.getFileName();
+        return name.substring( 0 , name.lastIndexOf( '.' ) ) + FILE_EXTENSION;
+    }
+
+    /**
+       Exports the logs of a session folder to columnar files in the output
+       folder. The session's summary (if any) is copied too, so queries can
+       skip the session by its channels' time and value ranges.
+
+       @return  The files written
+     */
+    public List< File > exportSession( File sessionFolder ,
+                                       File outFolder )
+        throws IOException {
+        outFolder.mkdirs();
+        if( ! outFolder.isDirectory() )
+            throw new IOException( "Unable to create the output folder " + outFolder );
+        List< File > files = new ArrayList< File >();
+        for( SensorLogType type : SensorLogType.values() ) {
+            File logFile = new File( sessionFolder , type.getFileName() );
+            if( logFile.isFile() ) {
+                File outFile = new File( outFolder , getFileName( type ) );
+                writeLog( logFile , type , outFile );
+                files.add( outFile );
+            }
+        }
+        File summaryFile = new File( sessionFolder , SessionSummary.FILE_NAME );
+        if( summaryFile.isFile() ) {
+            File outFile = new File( outFolder , SessionSummary.FILE_NAME );
+            SessionSummary.readFile( summaryFile ).writeFile( outFile );
+            files.add( outFile );
+        }
+        return files;
+    }
+
+    /**
+       Exports a log file to a columnar file (lines that cannot be parsed are skipped).
+
+       @return  Number of rows written
+     */
+    public long writeLog( File logFile ,
+                          SensorLogType type ,
+                          File outFile )
+        throws IOException {
+
+        ColumnVector[] columns = newColumns( type );
+        ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+        DataOutputStream footer = new DataOutputStream( footerBytes );
+        footer.writeUTF( type.name() );
+        footer.writeInt( columns.length );
+        for( ColumnVector column : columns ) {
+            footer.writeUTF( column.getName() );
+            footer.writeByte( column.getType().code );
+        }
+        ByteArrayOutputStream rowGroupBytes = new ByteArrayOutputStream();
+        DataOutputStream rowGroups = new DataOutputStream( rowGroupBytes );
+
+        SensorLogReader reader = new SensorLogReader( logFile , type , READ_AHEAD_BYTES );
+        DataOutputStream out =
+            new DataOutputStream( new BufferedOutputStream( new FileOutputStream( outFile ) ) );
+        try {
+            out.writeInt( FILE_MAGIC );
+            out.writeInt( FILE_VERSION );
+            long offset = HEADER_LENGTH;
+            int numRowGroups = 0;
+            long numRows = 0L , rowGroupStart = 0L;
+
+            // Add the records, writing a row group when the next record is past its time span (or it is full)
+            SensorRecord record;
+            while( ( record = reader.next() ) != null ) {
+                int size = columns[0].size();
+                if( size > 0 &&
+                    ( record.timestamp - rowGroupStart >= rowGroupMillis || size >= maxRowGroupRows ) ) {
+                    offset = writeRowGroup( columns , out , offset , rowGroups );
+                    ++numRowGroups;
+                }
+                if( columns[0].size() == 0 ) {
+                    rowGroupStart = record.timestamp;
+                }
+                addRecord( record , columns );
+                ++numRows;
+            }
+            if( columns[0].size() > 0 ) {
+                writeRowGroup( columns , out , offset , rowGroups );
+                ++numRowGroups;
+            }
+
+            // Footer
+            rowGroups.flush();
+            footer.writeInt( numRowGroups );
+            footer.write( rowGroupBytes.toByteArray() );
+            footer.flush();
+            out.write( footerBytes.toByteArray() );
+            out.writeInt( footerBytes.size() );
+            out.writeInt( FILE_MAGIC );
+            return numRows;
+        }
+        finally {
+            reader.close();
+            out.close();
+        }
+    }
+
+    /**
+       Exports sessions to columnar files (a sub folder per session).
+
+       <p> Usage: ColumnarWriter outFolder sessionFolder...
+     */
+    public static void main( String[] args )
+        throws IOException {
+        if( args.length < 2 ) {
+            System.err.println( "Usage: ColumnarWriter outFolder sessionFolder..." );
+            System.exit( 2 );
+        }
+        ColumnarWriter writer = new ColumnarWriter();
+        File outFolder = new File( args[0] );
+        for( int i = 1 ; i < args.length ; ++i ) {
+            File sessionFolder = new File( args[i] );
+            long numBytes = 0L;
+            for( File file : writer.exportSession( sessionFolder , new File( outFolder , sessionFolder.getName() ) ) ) {
+                numBytes += file.length();
+            }
+            System.out.println( sessionFolder + ": " + numBytes + " bytes" );
+        }
+    }
+
+    /** Helper method that encodes and writes a row group, adds its footer entry, and clears the columns. */
+    private static long writeRowGroup( ColumnVector[] columns ,
+                                       DataOutputStream out ,
+                                       long offset ,
+                                       DataOutputStream rowGroups )
+        throws IOException {
+        int numRows = columns[0].size();
+        rowGroups.writeInt( numRows );
+        for( ColumnVector column : columns ) {
+            byte[] chunk = ColumnCodec.encode( column );
+            out.write( chunk );
+            rowGroups.writeLong( offset );
+            rowGroups.writeInt( chunk.length );
+            offset += chunk.length;
+
+            // Stats (the dictionary for strings)
+            double min = Double.NaN , max = Double.NaN;
+            if( column.getType() != ColumnVector.Type.STRING ) {
+                for( int row = 0 ; row < numRows ; ++row ) {
+                    double value = column.getNumeric( row );
+                    // NOTE: Written as !(a <= b) so that the NaN start is replaced
+                    if( ! ( min <= value ) ) {
+                        min = value;
+                    }
+                    if( ! ( max >= value ) ) {
+                        max = value;
+                    }
+                }
+            }
+            rowGroups.writeDouble( min );
+            rowGroups.writeDouble( max );
+            if( column.getType() == ColumnVector.Type.STRING ) {
+                Set< String > values = new LinkedHashSet< String >();
+                for( int row = 0 ; row < numRows ; ++row ) {
+                    values.add( column.getString( row ) );
+                }
+                rowGroups.writeInt( values.size() );
+                for( String value : values ) {
+                    rowGroups.writeUTF( value );
+                }
+            }
+            column.clear();
+        }
+        return offset;
+    }
+
+    /** Helper method that adds a record's values to the columns (in schema order). */
+    private static void addRecord( SensorRecord record ,
+                                   ColumnVector[] columns ) {
+        columns[0].addLong( record.timestamp );
+        if( record instanceof SensorRecord.Xyz ) {
+            SensorRecord.Xyz xyz = (SensorRecord.Xyz) record;
+            columns[1].addFloat( xyz.x );
+            columns[2].addFloat( xyz.y );
+            columns[3].addFloat( xyz.z );
+            columns[4].addLong( xyz.accuracy );
+        }
+        else if( record instanceof SensorRecord.RotationVector ) {
+            SensorRecord.RotationVector rotationVector = (SensorRecord.RotationVector) record;
+            columns[1].addFloat( rotationVector.x );
+            columns[2].addFloat( rotationVector.y );
+            columns[3].addFloat( rotationVector.z );
+            columns[4].addFloat( rotationVector.scalar );
+            columns[5].addLong( rotationVector.accuracy );
+        }
+        else if( record instanceof SensorRecord.Orientation ) {
+            SensorRecord.Orientation orientation = (SensorRecord.Orientation) record;
+            columns[1].addFloat( orientation.qw );
+            columns[2].addFloat( orientation.qx );
+            columns[3].addFloat( orientation.qy );
+            columns[4].addFloat( orientation.qz );
+            columns[5].addFloat( orientation.roll );
+            columns[6].addFloat( orientation.pitch );
+            columns[7].addFloat( orientation.yaw );
+        }
+        else if( record instanceof SensorRecord.Barometer ) {
+            SensorRecord.Barometer barometer = (SensorRecord.Barometer) record;
+            columns[1].addFloat( barometer.pressure );
+            columns[2].addFloat( barometer.altitude );
+            columns[3].addLong( barometer.accuracy );
+        }
+        else if( record instanceof SensorRecord.Scalar ) {
+            SensorRecord.Scalar scalar = (SensorRecord.Scalar) record;
+            columns[1].addFloat( scalar.value );
+            columns[2].addLong( scalar.accuracy );
+        }
+        else if( record instanceof SensorRecord.Location ) {
+            SensorRecord.Location location = (SensorRecord.Location) record;
+            columns[1].addLong( location.locationTime );
+            columns[2].addString( location.provider );
+            columns[3].addDouble( location.latitude );
+            columns[4].addDouble( location.longitude );
+            columns[5].addFloat( location.accuracy );
+            columns[6].addDouble( location.altitude );
+            columns[7].addFloat( location.bearing );
+            columns[8].addFloat( location.speed );
+        }
+        else {
+            SensorRecord.GroundTruth groundTruth = (SensorRecord.GroundTruth) record;
+            columns[1].addLong( groundTruth.labelTime );
+            columns[2].addString( groundTruth.label );
+        }
+    }
+
+    /** Time span of a row group (millisec). */
+    private final long rowGroupMillis;
+    /** Max rows of a row group. */
+    private final int maxRowGroupRows;
+
+    /** Schema of each log type (in SensorLogType order): name:typeCode,... */
+    private static final String[] SCHEMAS = {
+        "time:L,locationTime:L,provider:S,latitude:D,longitude:D,accuracy:F,altitude:D,bearing:F,speed:F" ,
+        "time:L,x:F,y:F,z:F,accuracy:I" ,
+        "time:L,x:F,y:F,z:F,accuracy:I" ,
+        "time:L,x:F,y:F,z:F,accuracy:I" ,
+        "time:L,x:F,y:F,z:F,accuracy:I" ,
+        "time:L,x:F,y:F,z:F,accuracy:I" ,
+        "time:L,x:F,y:F,z:F,scalar:F,accuracy:I" ,
+        "time:L,qw:F,qx:F,qy:F,qz:F,roll:F,pitch:F,yaw:F" ,
+        "time:L,pressure:F,altitude:F,accuracy:I" ,
+        "time:L,light:F,accuracy:I" ,
+        "time:L,proximity:F,accuracy:I" ,
+        "time:L,labelTime:L,label:S"
+    };
+
+    /** Extension of the columnar files. */
+    public static final String FILE_EXTENSION = ".slc";
+    /** Default time span of a row group (millisec). */
+    public static final long DEFAULT_ROW_GROUP_MILLIS = 60000L;
+    /** Default max rows of a row group. */
+    public static final int DEFAULT_MAX_ROW_GROUP_ROWS = 65536;
+    /** File magic number ('SLCF'). */
+    static final int FILE_MAGIC = 0x534C4346;
+    /** File format version. */
+    static final int FILE_VERSION = 1;
+    /** Length of the header (magic and version). */
+    static final int HEADER_LENGTH = 8;
+    /** Read-ahead buffer size of the log reader (bytes). */
+    private static final int READ_AHEAD_BYTES = 1 << 16;
+}
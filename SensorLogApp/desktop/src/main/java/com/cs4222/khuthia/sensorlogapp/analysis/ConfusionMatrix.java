@@ -0,0 +1,119 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.util.*;
+
+/**
+   Confusion matrix of a classifier: the number of rows of each actual
+   class predicted as each class, with the per-class precision and
+   recall. Matrices of the same classes merge (e.g. over the folds of a
+   cross validation).
+ */
+public class ConfusionMatrix {
+
+    /** Creates an empty matrix. */
+    public ConfusionMatrix( List< String > classNames ) {
+        this.classNames = new ArrayList< String >( classNames );
+        counts = new long[ classNames.size() ][ classNames.size() ];
+    }
+
+    /** Adds a prediction. */
+    public void add( int actual ,
+                     int predicted ) {
+        ++counts[ actual ][ predicted ];
+    }
+
+    /** Adds the counts of another matrix of the same classes. */
+    public void merge( ConfusionMatrix other ) {
+        if( ! other.classNames.equals( classNames ) ) {
+            throw new IllegalArgumentException( "Different classes: " + other.classNames + " , " + classNames );
+        }
+        for( int a = 0 ; a < counts.length ; ++a ) {
+            for( int p = 0 ; p < counts.length ; ++p ) {
+                counts[a][p] += other.counts[a][p];
+            }
+        }
+    }
+
+    /** Gets the class names. */
+    public List< String > getClassNames() {
+        return Collections.unmodifiableList( classNames );
+    }
+
+    /** Gets the number of rows of an actual class predicted as a class. */
+    public long getCount( int actual ,
+                          int predicted ) {
+        return counts[ actual ][ predicted ];
+    }
+
+    /** Gets the total number of rows. */
+    public long getTotal() {
+        long total = 0L;
+        for( long[] row : counts ) {
+            for( long count : row ) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /** Gets the fraction of rows predicted correctly (NaN if none). */
+    public double getAccuracy() {
+        long correct = 0L;
+        for( int c = 0 ; c < counts.length ; ++c ) {
+            correct += counts[c][c];
+        }
+        return (double) correct / getTotal();
+    }
+
+    /** Gets the fraction of the rows predicted as the class that are of the class (NaN if none). */
+    public double getPrecision( int c ) {
+        long predicted = 0L;
+        for( long[] row : counts ) {
+            predicted += row[c];
+        }
+        return (double) counts[c][c] / predicted;
+    }
+
+    /** Gets the fraction of the rows of the class predicted as the class (NaN if none). */
+    public double getRecall( int c ) {
+        long actual = 0L;
+        for( long count : counts[c] ) {
+            actual += count;
+        }
+        return (double) counts[c][c] / actual;
+    }
+
+    /** Gets the table (actual class by row, predicted by column), with the precision and recall. */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        int width = 9;
+        for( String name : classNames ) {
+            width = Math.max( width , name.length() + 1 );
+        }
+        String nameFormat = "%-" + width + "s" , countFormat = "%" + width + "d";
+        sb.append( String.format( Locale.US , nameFormat , "actual" ) );
+        for( String name : classNames ) {
+            sb.append( String.format( Locale.US , "%" + width + "s" , name ) );
+        }
+        sb.append( String.format( Locale.US , "%" + width + "s%n" , "recall" ) );
+        for( int a = 0 ; a < counts.length ; ++a ) {
+            sb.append( String.format( Locale.US , nameFormat , classNames.get( a ) ) );
+            for( int p = 0 ; p < counts.length ; ++p ) {
+                sb.append( String.format( Locale.US , countFormat , counts[a][p] ) );
+            }
+            sb.append( String.format( Locale.US , "%" + width + ".3f%n" , getRecall( a ) ) );
+        }
+        sb.append( String.format( Locale.US , nameFormat , "precision" ) );
+        for( int p = 0 ; p < counts.length ; ++p ) {
+            sb.append( String.format( Locale.US , "%" + width + ".3f" , getPrecision( p ) ) );
+        }
+        sb.append( String.format( Locale.US , "%naccuracy %.3f (%d rows)%n" , getAccuracy() , getTotal() ) );
+        return sb.toString();
+    }
+
+    /** Class names. */
+    private final List< String > classNames;
+    /** Counts (counts[actual][predicted]). */
+    private final long[][] counts;
+}
@@ -0,0 +1,279 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+   Leave-one-session-out cross validation of a {@link ForestTrainer}: for
+   each session, a forest is trained on the other sessions, and tested on
+   the held out one, so the score shows how well the classifier does on
+   a new session (not on other windows of the sessions it has seen).
+
+   <p> With {@link #smoothing}, the predictions of the held out session
+   are smoothed by a {@link ViterbiSmoother}, with a model learnt from
+   the labels of the other sessions. The windows of a session are
+   smoothed in time order (skipping the windows without a single label,
+   as the phone would not).
+
+   <p> The folds run in parallel on a {@code ForkJoinPool}, and the trees
+   of each fold are forked on the same pool, so all the cores stay busy
+   whether there are few folds or few trees. The result does not depend
+   on the number of threads.
+ */
+public class CrossValidator {
+
+    /** Creates a validator that uses the given number of threads. */
+    public CrossValidator( ForestTrainer trainer ,
+                           int parallelism ) {
+        if( parallelism <= 0 ) {
+            throw new IllegalArgumentException( "Invalid parallelism " + parallelism );
+        }
+        this.trainer = trainer;
+        this.parallelism = parallelism;
+    }
+
+    /**
+       Smooths the predictions of the held out sessions.
+
+       @param  sessionCounts  Label counts of each session (group), of the class names
+       @param  lag            Smoother lag (windows)
+     */
+    public CrossValidator smoothing( List< ActivityHmm.Counts > sessionCounts ,
+                                     int lag ) {
+        if( lag < 0 ) {
+            throw new IllegalArgumentException( "Invalid lag " + lag );
+        }
+        this.sessionCounts = new ArrayList< ActivityHmm.Counts >( sessionCounts );
+        this.lag = lag;
+        return this;
+    }
+
+    /**
+       Runs the cross validation (a fold per group with rows, in group order).
+
+       @return  The confusion matrix of each fold
+     */
+    public List< ConfusionMatrix > leaveOneSessionOut( final TrainingSet data ) {
+
+        // A fold per group
+        final List< FoldTask > folds = new ArrayList< FoldTask >();
+        boolean[] hasRows = new boolean[ data.getNumGroups() ];
+        for( int row = 0 ; row < data.getNumRows() ; ++row ) {
+            hasRows[ data.getGroup( row ) ] = true;
+        }
+        for( int g = 0 ; g < hasRows.length ; ++g ) {
+            if( hasRows[g] ) {
+                folds.add( new FoldTask( data , g ) );
+            }
+        }
+
+        // Run them
+        ForkJoinPool pool = new ForkJoinPool( parallelism );
+        try {
+            pool.invoke( new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll( folds );
+                    }
+                } );
+        }
+        finally {
+            pool.shutdown();
+        }
+        List< ConfusionMatrix > matrices = new ArrayList< ConfusionMatrix >();
+        for( FoldTask fold : folds ) {
+            matrices.add( fold.getRawResult() );
+        }
+        return matrices;
+    }
+
+    /**
+       Cross validates a forest on the sessions under the log folders,
+       prints the confusion matrix, and trains the final model on all the
+       sessions.
+
+       <p> Usage: CrossValidator [--trees N] [--depth N] [--cache FOLDER]
+       [--threads N] [--smooth LAG] [--model FILE] logFolder...
+     */
+    public static void main( String[] args )
+        throws IOException {
+
+        // Parse the options
+        ForestTrainer trainer = new ForestTrainer();
+        File cacheFolder = null , modelFile = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int lag = -1;
+        List< File > sessionFolders = new ArrayList< File >();
+        try {
+            for( int i = 0 ; i < args.length ; ++i ) {
+                if( ! args[i].startsWith( "--" ) ) {
+                    sessionFolders.addAll( SensorLogType.discoverSessions( new File( args[i] ) ) );
+                    continue;
+                }
+                if( i + 1 == args.length ) {
+                    throw new IllegalArgumentException( "No value for " + args[i] );
+                }
+                String option = args[i] , value = args[ ++i ];
+                if( option.equals( "--trees" ) ) {
+                    trainer.numTrees( Integer.parseInt( value ) );
+                }
+                else if( option.equals( "--depth" ) ) {
+                    trainer.maxDepth( Integer.parseInt( value ) );
+                }
+                else if( option.equals( "--cache" ) ) {
+                    cacheFolder = new File( value );
+                }
+                else if( option.equals( "--threads" ) ) {
+                    parallelism = Integer.parseInt( value );
+                }
+                else if( option.equals( "--smooth" ) ) {
+                    lag = Integer.parseInt( value );
+                }
+                else if( option.equals( "--model" ) ) {
+                    modelFile = new File( value );
+                }
+                else {
+                    throw new IllegalArgumentException( "Unknown option " + option );
+                }
+            }
+            if( sessionFolders.isEmpty() ) {
+                throw new IllegalArgumentException( "No sessions found" );
+            }
+        }
+        catch( IllegalArgumentException e ) {
+            System.err.println( e.getMessage() );
+            System.err.println( "Usage: CrossValidator [--trees N] [--depth N] [--cache FOLDER] [--threads N]" +
+                                " [--smooth LAG] [--model FILE] logFolder..." );
+            System.exit( 2 );
+            return;
+        }
+
+        // Build the windows, and cross validate
+        long startNanos = System.nanoTime();
+        TrainingSetBuilder.Config config = new TrainingSetBuilder.Config();
+        TrainingSet data =
+            TrainingSet.fromWindows( new TrainingSetBuilder( config , cacheFolder , parallelism )
+                                     .build( sessionFolders ) );
+        long buildNanos = System.nanoTime() - startNanos;
+        if( data.getNumRows() == 0 ) {
+            System.err.println( "No labelled windows in the sessions" );
+            System.exit( 1 );
+        }
+        startNanos = System.nanoTime();
+        CrossValidator validator = new CrossValidator( trainer , parallelism );
+        if( lag >= 0 ) {
+            List< ActivityHmm.Counts > sessionCounts = new ArrayList< ActivityHmm.Counts >();
+            for( File sessionFolder : sessionFolders ) {
+                ActivityHmm.Counts counts = new ActivityHmm.Counts( data.getClassNames() , config.getHopMillis() );
+                ActivityHmm.readSession( sessionFolder , counts );
+                sessionCounts.add( counts );
+            }
+            validator.smoothing( sessionCounts , lag );
+        }
+        ConfusionMatrix total = new ConfusionMatrix( data.getClassNames() );
+        for( ConfusionMatrix fold : validator.leaveOneSessionOut( data ) ) {
+            total.merge( fold );
+        }
+        System.out.print( total );
+        System.out.println( String.format( Locale.US , "%d windows, %d sessions: windows %.3f s, cross validation %.3f s" ,
+                                           data.getNumRows() , data.getNumGroups() , buildNanos / 1e9 ,
+                                           ( System.nanoTime() - startNanos ) / 1e9 ) );
+
+        // Train the final model
+        if( modelFile != null ) {
+            ForkJoinPool pool = new ForkJoinPool( parallelism );
+            try {
+                ForestModel model = trainer.train( data , pool );
+                model.writeFile( modelFile );
+                System.out.println( modelFile + ": " + model.getNumTrees() + " trees, " + model.getNumNodes() + " nodes" );
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /** Trains on all the groups but one, and tests on that one. */
+    private class FoldTask
+        extends RecursiveTask< ConfusionMatrix > {
+
+        /** Creates the task. */
+        FoldTask( TrainingSet data ,
+                  int testGroup ) {
+            this.data = data;
+            this.testGroup = testGroup;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected ConfusionMatrix compute() {
+
+            // Split the rows
+            int numTest = 0;
+            for( int row = 0 ; row < data.getNumRows() ; ++row ) {
+                numTest += ( data.getGroup( row ) == testGroup ? 1 : 0 );
+            }
+            int[] trainRows = new int[ data.getNumRows() - numTest ] , testRows = new int[ numTest ];
+            int numTrain = 0;
+            numTest = 0;
+            for( int row = 0 ; row < data.getNumRows() ; ++row ) {
+                if( data.getGroup( row ) == testGroup ) {
+                    testRows[ numTest++ ] = row;
+                }
+                else {
+                    trainRows[ numTrain++ ] = row;
+                }
+            }
+
+            // Train (forking the trees), and test
+            ConfusionMatrix matrix = new ConfusionMatrix( data.getClassNames() );
+            if( trainRows.length == 0 ) {
+                return matrix;
+            }
+            ForestModel model = trainer.newTask( data.subset( trainRows ) ).invoke();
+            int numClasses = data.getNumClasses();
+            float[] features = new float[ data.getNumFeatures() ];
+            float[] probabilities = new float[ numTest * numClasses ];
+            int[] predicted = new int[ numTest ];
+            float[] windowProbabilities = new float[ numClasses ];
+            for( int i = 0 ; i < numTest ; ++i ) {
+                data.getRow( testRows[i] , features );
+                predicted[i] = model.predict( features , windowProbabilities );
+                System.arraycopy( windowProbabilities , 0 , probabilities , i * numClasses , numClasses );
+            }
+
+            // Smooth the predictions (with a model of the other sessions' labels)
+            if( sessionCounts != null ) {
+                ActivityHmm.Counts counts =
+                    new ActivityHmm.Counts( data.getClassNames() , sessionCounts.get( 0 ).getHopMillis() );
+                for( int g = 0 ; g < sessionCounts.size() ; ++g ) {
+                    if( g != testGroup ) {
+                        counts.merge( sessionCounts.get( g ) );
+                    }
+                }
+                new ViterbiSmoother( counts.toHmm() , lag ).smooth( probabilities , numTest , predicted );
+            }
+            for( int i = 0 ; i < numTest ; ++i ) {
+                matrix.add( data.getLabel( testRows[i] ) , predicted[i] );
+            }
+            return matrix;
+        }
+
+        /** Serialization version (ForkJoinTask is Serializable). */
+        private static final long serialVersionUID = 1L;
+        /** Training set. */
+        private final TrainingSet data;
+        /** Group held out. */
+        private final int testGroup;
+    }
+
+    /** Trainer. */
+    private final ForestTrainer trainer;
+    /** Number of threads. */
+    private final int parallelism;
+    /** Label counts of each group (null if not smoothing). */
+    private List< ActivityHmm.Counts > sessionCounts = null;
+    /** Smoother lag (windows). */
+    private int lag = 0;
+}
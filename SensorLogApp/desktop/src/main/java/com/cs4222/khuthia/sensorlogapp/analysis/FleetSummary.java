@@ -0,0 +1,31 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   Prints the device or fleet percentiles of the sessions under the given
+   log folders (e.g. one per phone), merged from their session summaries.
+ */
+public class FleetSummary {
+
+    /**
+       Prints the merged summary.
+
+       <p> Usage: FleetSummary logFolder...
+     */
+    public static void main( String[] args )
+        throws IOException {
+        if( args.length == 0 ) {
+            System.err.println( "Usage: FleetSummary logFolder..." );
+            System.exit( 2 );
+        }
+        List< File > logFolders = new ArrayList< File >();
+        for( String arg : args ) {
+            logFolders.add( new File( arg ) );
+        }
+        SessionSummary summary = SessionSummary.mergeSessions( logFolders );
+        System.out.println( summary.getNumSessions() + " sessions" );
+        System.out.print( summary );
+    }
+}
@@ -0,0 +1,388 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+   Trains decision forests ({@link ForestModel}) on a {@link TrainingSet}:
+   each tree is grown on a bootstrap sample of the rows, splitting each
+   node on the best Gini split of a random subset of the features. A
+   single tree on all the rows and features is a plain decision tree.
+
+   <p> The trees are trained in parallel on a {@code ForkJoinPool}. A
+   tree keeps the rows of each feature in sorted order (from the
+   training set's presorted columns), and each node owns a range of
+   them, so the best split of a feature is found in one scan of the
+   node's range, and the range is stably partitioned between the
+   children (no sorting at the nodes).
+
+   <p> Training is deterministic: tree t uses its own random seed
+   ({@code seed + t}), so the model does not depend on the thread count.
+   The setters return the trainer, so they can be chained.
+ */
+public class ForestTrainer {
+
+    /** Creates a trainer with the default settings. */
+    public ForestTrainer() {
+    }
+
+    /** Sets the number of trees (1 for a single decision tree on all the rows). */
+    public ForestTrainer numTrees( int numTrees ) {
+        if( numTrees <= 0 ) {
+            throw new IllegalArgumentException( "Invalid number of trees " + numTrees );
+        }
+        this.numTrees = numTrees;
+        return this;
+    }
+
+    /** Sets the max tree depth (the root is at depth 0). */
+    public ForestTrainer maxDepth( int maxDepth ) {
+        if( maxDepth < 0 ) {
+            throw new IllegalArgumentException( "Invalid depth " + maxDepth );
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /** Sets the min number of rows (with the bootstrap repeats) in a leaf. */
+    public ForestTrainer minLeafSize( int minLeafSize ) {
+        if( minLeafSize <= 0 ) {
+            throw new IllegalArgumentException( "Invalid leaf size " + minLeafSize );
+        }
+        this.minLeafSize = minLeafSize;
+        return this;
+    }
+
+    /** Sets the number of features tried at each split (0 for the square root of the number of features). */
+    public ForestTrainer featuresPerSplit( int featuresPerSplit ) {
+        if( featuresPerSplit < 0 ) {
+            throw new IllegalArgumentException( "Invalid features per split " + featuresPerSplit );
+        }
+        this.featuresPerSplit = featuresPerSplit;
+        return this;
+    }
+
+    /** Sets the random seed. */
+    public ForestTrainer seed( long seed ) {
+        this.seed = seed;
+        return this;
+    }
+
+    /** Trains a forest on the given pool. */
+    public ForestModel train( TrainingSet data ,
+                              ForkJoinPool pool ) {
+        return pool.invoke( newTask( data ) );
+    }
+
+    /** Trains a forest (using all the cores). */
+    public ForestModel train( TrainingSet data ) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return train( data , pool );
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Creates the task that trains a forest (forking a task per tree). */
+    ForkJoinTask< ForestModel > newTask( final TrainingSet data ) {
+        if( data.getNumRows() == 0 ) {
+            throw new IllegalArgumentException( "No rows to train on" );
+        }
+        return new RecursiveTask< ForestModel >() {
+            @Override
+            protected ForestModel compute() {
+                List< TreeTask > tasks = new ArrayList< TreeTask >();
+                for( int t = 0 ; t < numTrees ; ++t ) {
+                    tasks.add( new TreeTask( data , seed + t ) );
+                }
+                invokeAll( tasks );
+                return merge( data , tasks );
+            }
+        };
+    }
+
+    /** Helper method that concatenates the trees into a flat model. */
+    private static ForestModel merge( TrainingSet data ,
+                                      List< TreeTask > tasks ) {
+        int numNodes = 0 , numValues = 0;
+        for( TreeTask task : tasks ) {
+            numNodes += task.numNodes;
+            numValues += task.numValues;
+        }
+        int[] roots = new int[ tasks.size() ];
+        int[] features = new int[ numNodes ] , children = new int[ numNodes ];
+        float[] thresholds = new float[ numNodes ] , distributions = new float[ numValues ];
+        int nodeOffset = 0 , valueOffset = 0;
+        for( int t = 0 ; t < tasks.size() ; ++t ) {
+            TreeTask task = tasks.get( t );
+            roots[t] = nodeOffset;
+            for( int i = 0 ; i < task.numNodes ; ++i ) {
+                features[ nodeOffset + i ] = task.features[i];
+                thresholds[ nodeOffset + i ] = task.thresholds[i];
+                children[ nodeOffset + i ] = task.children[i] + ( task.features[i] >= 0 ? nodeOffset : valueOffset );
+            }
+            System.arraycopy( task.distributions , 0 , distributions , valueOffset , task.numValues );
+            nodeOffset += task.numNodes;
+            valueOffset += task.numValues;
+        }
+        List< String > classNames = data.getClassNames() , featureNames = data.getFeatureNames();
+        return new ForestModel( classNames.toArray( new String[ classNames.size() ] ) ,
+                                featureNames.toArray( new String[ featureNames.size() ] ) ,
+                                roots , features , thresholds , children , distributions );
+    }
+
+    /** Grows a tree (on the calling worker thread; the nodes are not forked). */
+    private class TreeTask
+        extends RecursiveAction {
+
+        /** Creates the task. */
+        TreeTask( TrainingSet data ,
+                  long seed ) {
+            this.data = data;
+            this.random = new Random( seed );
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void compute() {
+            int numRows = data.getNumRows() , numFeatures = data.getNumFeatures();
+            numClasses = data.getNumClasses();
+
+            // Sample the rows (with repeats, unless it is a single tree)
+            weights = new int[ numRows ];
+            if( numTrees == 1 ) {
+                Arrays.fill( weights , 1 );
+            }
+            else {
+                for( int i = 0 ; i < numRows ; ++i ) {
+                    ++weights[ random.nextInt( numRows ) ];
+                }
+            }
+            int numSampled = 0;
+            for( int weight : weights ) {
+                numSampled += ( weight > 0 ? 1 : 0 );
+            }
+
+            // The sampled rows, in the order of each feature
+            order = new int[ numFeatures ][ numSampled ];
+            for( int f = 0 ; f < numFeatures ; ++f ) {
+                int[] sorted = data.getSortedRows( f );
+                int n = 0;
+                for( int row : sorted ) {
+                    if( weights[ row ] > 0 ) {
+                        order[f][ n++ ] = row;
+                    }
+                }
+            }
+            goesLeft = new boolean[ numRows ];
+            buffer = new int[ numSampled ];
+            candidates = new int[ numFeatures ];
+            for( int f = 0 ; f < numFeatures ; ++f ) {
+                candidates[f] = f;
+            }
+            numCandidates = ( featuresPerSplit == 0 ?
+                              Math.min( numFeatures , Math.max( 1 , (int) Math.round( Math.sqrt( numFeatures ) ) ) ) :
+                              Math.min( featuresPerSplit , numFeatures ) );
+            if( numTrees == 1 && featuresPerSplit == 0 ) {
+                numCandidates = numFeatures;
+            }
+            nodeCounts = new double[ numClasses ];
+            leftCounts = new double[ numClasses ];
+
+            // Grow the tree from the root
+            features = new int[ 64 ];
+            thresholds = new float[ 64 ];
+            children = new int[ 64 ];
+            distributions = new float[ 64 * Math.max( 1 , numClasses ) ];
+            addNode();
+            grow( 0 , 0 , numSampled , 0 );
+        }
+
+        /** Helper method that grows the subtree of a node, on the rows of the range [start, end). */
+        private void grow( int node ,
+                           int start ,
+                           int end ,
+                           int depth ) {
+
+            // Class counts of the node
+            int[] rows = order[0];
+            Arrays.fill( nodeCounts , 0.0 );
+            double total = 0.0;
+            for( int i = start ; i < end ; ++i ) {
+                int row = rows[i];
+                nodeCounts[ data.getLabel( row ) ] += weights[ row ];
+                total += weights[ row ];
+            }
+            double nodeImpurity = gini( nodeCounts , total );
+
+            // Find the best split (unless the node is small, deep, or pure)
+            int bestFeature = -1;
+            float bestThreshold = 0.0F;
+            double bestImpurity = nodeImpurity - MIN_IMPURITY_DECREASE;
+            if( depth < maxDepth && total >= 2 * minLeafSize && nodeImpurity > 0.0 ) {
+                // Random candidate features (a partial shuffle)
+                for( int k = 0 ; k < numCandidates ; ++k ) {
+                    int j = k + random.nextInt( candidates.length - k );
+                    int f = candidates[j];
+                    candidates[j] = candidates[k];
+                    candidates[k] = f;
+
+                    // Scan the node's rows in the feature's order
+                    float[] column = data.getColumn( f );
+                    int[] sorted = order[f];
+                    Arrays.fill( leftCounts , 0.0 );
+                    double leftTotal = 0.0;
+                    for( int i = start ; i < end - 1 ; ++i ) {
+                        int row = sorted[i];
+                        leftCounts[ data.getLabel( row ) ] += weights[ row ];
+                        leftTotal += weights[ row ];
+                        float value = column[ row ] , nextValue = column[ sorted[ i + 1 ] ];
+                        if( ! ( value < nextValue ) ||
+                            leftTotal < minLeafSize || total - leftTotal < minLeafSize ) {
+                            continue;
+                        }
+                        double impurity = ( leftTotal * gini( leftCounts , leftTotal ) +
+                                            ( total - leftTotal ) * giniOfRest( leftCounts , leftTotal , total ) ) / total;
+                        if( impurity < bestImpurity ) {
+                            bestImpurity = impurity;
+                            bestFeature = f;
+                            bestThreshold = value + ( nextValue - value ) / 2.0F;
+                            // NOTE: The midpoint may round up to the next value
+                            if( ! ( bestThreshold < nextValue ) ) {
+                                bestThreshold = value;
+                            }
+                        }
+                    }
+                }
+            }
+
+            // A leaf: the class distribution
+            if( bestFeature < 0 ) {
+                int offset = numValues;
+                if( numValues + numClasses > distributions.length ) {
+                    distributions = Arrays.copyOf( distributions , distributions.length * 2 );
+                }
+                for( int c = 0 ; c < numClasses ; ++c ) {
+                    distributions[ offset + c ] = (float) ( nodeCounts[c] / total );
+                }
+                numValues += numClasses;
+                features[ node ] = -1;
+                children[ node ] = offset;
+                return;
+            }
+
+            // A split: partition the rows of every feature (stably, so they stay sorted)
+            float[] column = data.getColumn( bestFeature );
+            int numLeft = 0;
+            for( int i = start ; i < end ; ++i ) {
+                int row = rows[i];
+                goesLeft[ row ] = ( column[ row ] <= bestThreshold );
+                numLeft += ( goesLeft[ row ] ? 1 : 0 );
+            }
+            for( int[] sorted : order ) {
+                int left = start , right = 0;
+                for( int i = start ; i < end ; ++i ) {
+                    int row = sorted[i];
+                    if( goesLeft[ row ] ) {
+                        sorted[ left++ ] = row;
+                    }
+                    else {
+                        buffer[ right++ ] = row;
+                    }
+                }
+                System.arraycopy( buffer , 0 , sorted , left , right );
+            }
+            int leftChild = addNode();
+            addNode();
+            features[ node ] = bestFeature;
+            thresholds[ node ] = bestThreshold;
+            children[ node ] = leftChild;
+            grow( leftChild , start , start + numLeft , depth + 1 );
+            grow( leftChild + 1 , start + numLeft , end , depth + 1 );
+        }
+
+        /** Helper method that adds a node. */
+        private int addNode() {
+            if( numNodes == features.length ) {
+                features = Arrays.copyOf( features , numNodes * 2 );
+                thresholds = Arrays.copyOf( thresholds , numNodes * 2 );
+                children = Arrays.copyOf( children , numNodes * 2 );
+            }
+            return numNodes++;
+        }
+
+        /** Helper method that gets the Gini impurity of class counts. */
+        private double gini( double[] counts ,
+                             double total ) {
+            double sumSquares = 0.0;
+            for( int c = 0 ; c < numClasses ; ++c ) {
+                sumSquares += counts[c] * counts[c];
+            }
+            return 1.0 - sumSquares / ( total * total );
+        }
+
+        /** Helper method that gets the Gini impurity of the node's rows that are not in the counts. */
+        private double giniOfRest( double[] counts ,
+                                   double countsTotal ,
+                                   double total ) {
+            double sumSquares = 0.0;
+            for( int c = 0 ; c < numClasses ; ++c ) {
+                double rest = nodeCounts[c] - counts[c];
+                sumSquares += rest * rest;
+            }
+            double restTotal = total - countsTotal;
+            return 1.0 - sumSquares / ( restTotal * restTotal );
+        }
+
+        /** Serialization version (ForkJoinTask is Serializable). */
+        private static final long serialVersionUID = 1L;
+        /** Training set. */
+        private final TrainingSet data;
+        /** Random source (bootstrap and feature sampling). */
+        private final Random random;
+        /** Number of classes. */
+        private int numClasses;
+        /** Bootstrap count of each row. */
+        private int[] weights;
+        /** Sampled rows in the order of each feature (each node owns a range). */
+        private int[][] order;
+        /** Side of each row in the current split. */
+        private boolean[] goesLeft;
+        /** Right side rows of a partition. */
+        private int[] buffer;
+        /** Features (shuffled for the candidates of a split), and the number of candidates. */
+        private int[] candidates;
+        private int numCandidates;
+        /** Class counts of the node, and of the left side of a split. */
+        private double[] nodeCounts , leftCounts;
+        /** Nodes (see ForestModel), with the children relative to the tree. */
+        int[] features , children;
+        float[] thresholds;
+        int numNodes;
+        /** Leaf distributions. */
+        float[] distributions;
+        int numValues;
+    }
+
+    /** Number of trees. */
+    private int numTrees = DEFAULT_NUM_TREES;
+    /** Max depth. */
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    /** Min leaf size. */
+    private int minLeafSize = DEFAULT_MIN_LEAF_SIZE;
+    /** Features tried per split (0 for the square root). */
+    private int featuresPerSplit = 0;
+    /** Random seed. */
+    private long seed = 0L;
+
+    /** Default number of trees. */
+    public static final int DEFAULT_NUM_TREES = 32;
+    /** Default max depth (small trees, for the phone). */
+    public static final int DEFAULT_MAX_DEPTH = 12;
+    /** Default min leaf size. */
+    public static final int DEFAULT_MIN_LEAF_SIZE = 2;
+    /** Min impurity decrease of a split (so ties do not split). */
+    private static final double MIN_IMPURITY_DECREASE = 1e-9;
+}
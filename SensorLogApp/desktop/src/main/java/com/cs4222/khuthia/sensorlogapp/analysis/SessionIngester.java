@@ -0,0 +1,363 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+   Parses many SensorLogApp session folders in parallel.
+
+   <p> The work is split by session, by log file, and (for large files)
+   by byte range, and the pieces are parsed on a {@code ForkJoinPool}
+   using the {@link MappedCsvParser}. A range parses the lines that start
+   inside it, so the ranges of a file parse every line exactly once.
+
+   <p> The results are merged in a fixed order (sessions by name, files by
+   {@link SensorLogType}, ranges by offset), not in the order the tasks
+   finish, so the result is the same as a single-threaded run.
+ */
+public class SessionIngester {
+
+    /**
+       Creates an ingester.
+
+       @param  parallelism  Number of parsing threads
+       @param  splitSize    Files larger than this are split into ranges of this size (bytes)
+     */
+    public SessionIngester( int parallelism ,
+                            long splitSize ) {
+        if( parallelism <= 0 || splitSize <= 0 ) {
+            throw new IllegalArgumentException( "Invalid parallelism " + parallelism +
+                                                " or split size " + splitSize );
+        }
+        this.parallelism = parallelism;
+        this.splitSize = splitSize;
+    }
+
+    /** Creates an ingester that uses all the cores. */
+    public SessionIngester() {
+        this( Runtime.getRuntime().availableProcessors() , DEFAULT_SPLIT_SIZE );
+    }
+
+    /** Discovers and parses all the sessions under the log folder. */
+    public Result ingest( File logFolder )
+        throws IOException {
+        long beginTime = System.nanoTime();
+        List< File > sessions = SensorLogType.discoverSessions( logFolder );
+        long discoveryNanos = System.nanoTime() - beginTime;
+        return ingest( sessions , discoveryNanos );
+    }
+
+    /** Parses the given session folders. */
+    public Result ingest( List< File > sessionFolders )
+        throws IOException {
+        return ingest( sessionFolders , 0L );
+    }
+
+    /** Helper method that plans and runs the parsing tasks. */
+    private Result ingest( List< File > sessionFolders ,
+                           long discoveryNanos )
+        throws IOException {
+
+        // Stage 1: Plan the tasks (one per byte range of each log file)
+        long beginTime = System.nanoTime();
+        Result result = new Result();
+        List< SessionTask > sessionTasks = new ArrayList< SessionTask >();
+        for( File folder : sessionFolders ) {
+            SessionTask sessionTask = new SessionTask( folder.getName() );
+            for( SensorLogType type : SensorLogType.values() ) {
+                File file = new File( folder , type.getFileName() );
+                if( ! file.isFile() ) {
+                    continue;
+                }
+                FileTask fileTask = new FileTask( type );
+                long numRanges = Math.max( 1L , ( file.length() + splitSize - 1 ) / splitSize );
+                for( long i = 0 ; i < numRanges ; ++i ) {
+                    long start = i * splitSize;
+                    fileTask.rangeTasks.add( new RangeTask( file , type , start , start + splitSize , result ) );
+                }
+                sessionTask.fileTasks.add( fileTask );
+            }
+            sessionTasks.add( sessionTask );
+        }
+        long planNanos = System.nanoTime() - beginTime;
+
+        // Stage 2: Parse (and merge) in parallel
+        beginTime = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool( parallelism );
+        try {
+            pool.invoke( new IngestTask( sessionTasks ) );
+        }
+        catch( RuntimeException e ) {
+            // Unwrap the parsing error (the pool may wrap it again, when
+            //  rethrowing it in this thread), other errors are rethrown as they are
+            for( Throwable cause = e.getCause() ; cause != null ; cause = cause.getCause() ) {
+                if( cause instanceof IOException ) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        }
+        finally {
+            pool.shutdown();
+        }
+        long parseNanos = System.nanoTime() - beginTime;
+
+        // Collect the sessions (in the planned order)
+        for( SessionTask sessionTask : sessionTasks ) {
+            result.sessions.add( sessionTask.getRawResult() );
+        }
+        result.discoveryNanos = discoveryNanos;
+        result.planNanos = planNanos;
+        result.wallNanos = parseNanos;
+        return result;
+    }
+
+    /** Parses all the sessions. */
+    private static class IngestTask
+        extends RecursiveAction {
+
+        /** Creates the task. */
+        IngestTask( List< SessionTask > sessionTasks ) {
+            this.sessionTasks = sessionTasks;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void compute() {
+            invokeAll( sessionTasks );
+        }
+
+        /** Serialization version (ForkJoinTask is Serializable). */
+        private static final long serialVersionUID = 1L;
+        /** Session tasks. */
+        private final List< SessionTask > sessionTasks;
+    }
+
+    /** Parses the log files of a session. */
+    private static class SessionTask
+        extends RecursiveTask< SessionData > {
+
+        /** Creates the task. */
+        SessionTask( String name ) {
+            this.name = name;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected SessionData compute() {
+            invokeAll( fileTasks );
+            SessionData session = new SessionData( name );
+            for( FileTask fileTask : fileTasks ) {
+                session.logs.put( fileTask.type , fileTask.getRawResult() );
+            }
+            return session;
+        }
+
+        /** Serialization version (ForkJoinTask is Serializable). */
+        private static final long serialVersionUID = 1L;
+        /** Session name (folder name). */
+        private final String name;
+        /** File tasks (in log type order). */
+        final List< FileTask > fileTasks = new ArrayList< FileTask >();
+    }
+
+    /** Parses the byte ranges of a log file, and concatenates them in order. */
+    private static class FileTask
+        extends RecursiveTask< ColumnBuffer > {
+
+        /** Creates the task. */
+        FileTask( SensorLogType type ) {
+            this.type = type;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected ColumnBuffer compute() {
+            invokeAll( rangeTasks );
+
+            // Merge the ranges in file order
+            ColumnBuffer merged = rangeTasks.get( 0 ).getRawResult();
+            if( rangeTasks.size() > 1 ) {
+                long beginTime = System.nanoTime();
+                for( int i = 1 ; i < rangeTasks.size() ; ++i ) {
+                    merged.addAll( rangeTasks.get( i ).getRawResult() );
+                }
+                rangeTasks.get( 0 ).result.mergeNanos.addAndGet( System.nanoTime() - beginTime );
+            }
+            return merged;
+        }
+
+        /** Serialization version (ForkJoinTask is Serializable). */
+        private static final long serialVersionUID = 1L;
+        /** Log type. */
+        final SensorLogType type;
+        /** Range tasks (in file order). */
+        final List< RangeTask > rangeTasks = new ArrayList< RangeTask >();
+    }
+
+    /** Parses the lines starting in a byte range of a log file. */
+    private static class RangeTask
+        extends RecursiveTask< ColumnBuffer > {
+
+        /** Creates the task. */
+        RangeTask( File file ,
+                   SensorLogType type ,
+                   long start ,
+                   long end ,
+                   Result result ) {
+            this.file = file;
+            this.type = type;
+            this.start = start;
+            this.end = end;
+            this.result = result;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected ColumnBuffer compute() {
+            long beginTime = System.nanoTime();
+            CsvLayout layout = CsvLayout.forSensorLog( type );
+            MappedCsvParser parser = new MappedCsvParser( layout );
+            ColumnBuffer buffer = new ColumnBuffer( layout.getNumValues() );
+            try {
+                parser.parse( file , start , end , buffer );
+            }
+            catch( IOException e ) {
+                throw new RuntimeException( e );
+            }
+
+            // Update the stats
+            result.numRecords.addAndGet( parser.getNumRecords() );
+            result.numSkippedLines.addAndGet( parser.getNumSkippedLines() );
+            result.numBytes.addAndGet( parser.getNumBytes() );
+            result.numTasks.incrementAndGet();
+            result.parseNanos.addAndGet( System.nanoTime() - beginTime );
+            return buffer;
+        }
+
+        /** Serialization version (ForkJoinTask is Serializable). */
+        private static final long serialVersionUID = 1L;
+        /** Log file. */
+        private final File file;
+        /** Log type. */
+        private final SensorLogType type;
+        /** Byte range. */
+        private final long start , end;
+        /** Result (for the stats). */
+        final Result result;
+    }
+
+    /** The parsed log files of a session. */
+    public static class SessionData {
+
+        /** Creates an empty session. */
+        SessionData( String name ) {
+            this.name = name;
+        }
+
+        /** Gets the session name (folder name). */
+        public String getName() {
+            return name;
+        }
+
+        /** Gets the parsed log of the given type (null if the session has no such file). */
+        public ColumnBuffer getLog( SensorLogType type ) {
+            return logs.get( type );
+        }
+
+        /** Session name. */
+        private final String name;
+        /** Parsed logs. */
+        final Map< SensorLogType , ColumnBuffer > logs =
+            new EnumMap< SensorLogType , ColumnBuffer >( SensorLogType.class );
+    }
+
+    /** The parsed sessions, and the ingestion stats. */
+    public static class Result {
+
+        /** Gets the parsed sessions (sorted by name). */
+        public List< SessionData > getSessions() {
+            return sessions;
+        }
+
+        /** Gets the number of records parsed. */
+        public long getNumRecords() {
+            return numRecords.get();
+        }
+
+        /** Gets the number of lines skipped (did not match the layout). */
+        public long getNumSkippedLines() {
+            return numSkippedLines.get();
+        }
+
+        /** Gets the number of bytes parsed. */
+        public long getNumBytes() {
+            return numBytes.get();
+        }
+
+        /** Gets the number of parsing tasks (byte ranges). */
+        public long getNumTasks() {
+            return numTasks.get();
+        }
+
+        /** Gets the time taken to discover the session folders (nanosec). */
+        public long getDiscoveryNanos() {
+            return discoveryNanos;
+        }
+
+        /** Gets the time taken to plan the tasks (nanosec). */
+        public long getPlanNanos() {
+            return planNanos;
+        }
+
+        /** Gets the total time spent parsing, summed over all threads (nanosec). */
+        public long getParseNanos() {
+            return parseNanos.get();
+        }
+
+        /** Gets the total time spent merging ranges, summed over all threads (nanosec). */
+        public long getMergeNanos() {
+            return mergeNanos.get();
+        }
+
+        /** Gets the elapsed time of the parallel parse and merge (nanosec). */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /** Gets the throughput of the parallel parse and merge (MB/s). */
+        public double getThroughput() {
+            return ( wallNanos == 0L ? 0.0 : getNumBytes() * 1000.0 / wallNanos );
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return sessions.size() + " sessions, " + getNumRecords() + " records (" +
+                getNumSkippedLines() + " skipped), " + getNumBytes() + " bytes in " +
+                getNumTasks() + " tasks: discover " + discoveryNanos / 1000000 + " ms, plan " +
+                planNanos / 1000000 + " ms, parse " + getParseNanos() / 1000000 + " ms (cpu), merge " +
+                getMergeNanos() / 1000000 + " ms (cpu), wall " + wallNanos / 1000000 + " ms, " +
+                (int) getThroughput() + " MB/s";
+        }
+
+        /** Parsed sessions. */
+        final List< SessionData > sessions = new ArrayList< SessionData >();
+        /** Stats (updated by the parsing threads). */
+        final AtomicLong numRecords = new AtomicLong() , numSkippedLines = new AtomicLong() ,
+            numBytes = new AtomicLong() , numTasks = new AtomicLong() ,
+            parseNanos = new AtomicLong() , mergeNanos = new AtomicLong();
+        /** Stage timings (nanosec). */
+        long discoveryNanos , planNanos , wallNanos;
+    }
+
+    /** Number of parsing threads. */
+    private final int parallelism;
+    /** Max byte range parsed by one task. */
+    private final long splitSize;
+
+    /** Default max byte range parsed by one task (bytes). */
+    public static final long DEFAULT_SPLIT_SIZE = 16L * 1024 * 1024;
+}
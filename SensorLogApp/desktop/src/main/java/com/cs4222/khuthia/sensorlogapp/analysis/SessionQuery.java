@@ -0,0 +1,790 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.text.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.*;
+
+/**
+   Queries the readings of one channel across many exported sessions
+   ({@link ColumnarWriter} folders), e.g. all the LinAccl readings
+   labelled WALKING with a magnitude over 3 in the last week:
+   <pre>
+     SessionQuery --channel LINEAR_ACCL --last 7d --label WALKING --where "magnitude&gt;3" archiveFolder
+   </pre>
+
+   <p> The predicates are pushed down to skip as much as possible before
+   any column is decoded:
+   <ul>
+     <li> Files of the other channels are never opened.
+     <li> A session is skipped by its summary ({@link SessionSummary}, if
+          exported with it): the channel's time range, and the range of
+          each compared value.
+     <li> The label becomes time ranges (the label's intervals, from the
+          session's {@code GroundTruth.slc}), so a session without the
+          label is skipped without opening its channel file.
+     <li> Within the channel file, row groups are skipped by their time
+          range and value min/max ({@link ColumnarReader}), and only the
+          columns needed are read.
+   </ul>
+
+   <p> Sessions are scanned in parallel, and the rows are streamed to a
+   {@link RowSink} (CSV or binary) a row group at a time, so memory does
+   not depend on the result size. The rows of a session are in time
+   order, but the sessions' row groups may interleave.
+ */
+public class SessionQuery {
+
+    /** Creates a query of a channel (all its readings and columns, until predicates are added). */
+    public SessionQuery( SensorLogType type ) {
+        if( type == SensorLogType.GROUND_TRUTH ) {
+            throw new IllegalArgumentException( "Ground truth is queried with a label" );
+        }
+        this.type = type;
+        schema = ColumnarWriter.newColumns( type );
+    }
+
+    /** Sets the columns to return (default all). */
+    public SessionQuery select( String... columns ) {
+        for( String column : columns ) {
+            findColumn( column );
+        }
+        this.columns = columns.clone();
+        return this;
+    }
+
+    /** Returns only the readings logged in [startTime, endTime) (millisec). */
+    public SessionQuery timeRange( long startTime ,
+                                   long endTime ) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        return this;
+    }
+
+    /** Returns only the readings logged while the given label (e.g. WALKING) was on. */
+    public SessionQuery label( String label ) {
+        this.label = label;
+        return this;
+    }
+
+    /**
+       Returns only the readings whose value compares to the given value
+       (see {@link ColumnarReader.Query#where(String,String,double)}).
+     */
+    public SessionQuery where( String column ,
+                               String op ,
+                               double value ) {
+        ColumnarReader.Comparison comparison = new ColumnarReader.Comparison( column , op , value );
+        findNumericColumns( column );
+        comparisons.add( comparison );
+        return this;
+    }
+
+    /**
+       Runs the query on the given session folders.
+
+       @param  sink        Sink for the rows (called by one thread at a time)
+       @param  numThreads  Number of sessions scanned in parallel
+     */
+    public Stats run( List< File > sessionFolders ,
+                      final RowSink sink ,
+                      int numThreads )
+        throws IOException {
+
+        final Stats stats = new Stats();
+        ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1 , numThreads ) );
+        try {
+            // Scan the sessions
+            List< Future< Void > > futures = new ArrayList< Future< Void > >();
+            for( final File sessionFolder : sessionFolders ) {
+                futures.add( executor.submit( new Callable< Void >() {
+                        @Override
+                        public Void call()
+                            throws IOException {
+                            scanSession( sessionFolder , sink , stats );
+                            return null;
+                        }
+                    } ) );
+            }
+
+            // Wait for all of them (the first error fails the query)
+            for( Future< Void > future : futures ) {
+                try {
+                    future.get();
+                }
+                catch( ExecutionException e ) {
+                    if( e.getCause() instanceof IOException ) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException( "Query failed" , e.getCause() );
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException( "Query interrupted" );
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        synchronized( sink ) {
+            sink.finish( getColumnNames() );
+        }
+        return stats;
+    }
+
+    /**
+       Finds the exported sessions under the given folders: a folder with
+       columnar files is a session, and any other folder is searched for
+       session sub folders (in name order).
+     */
+    public static List< File > findSessions( List< File > folders ) {
+        List< File > sessionFolders = new ArrayList< File >();
+        for( File folder : folders ) {
+            File[] files = folder.listFiles();
+            if( files == null ) {
+                continue;
+            }
+            Arrays.sort( files );
+            boolean isSession = false;
+            for( File file : files ) {
+                isSession |= file.getName().endsWith( ColumnarWriter.FILE_EXTENSION );
+            }
+            if( isSession ) {
+                sessionFolders.add( folder );
+            }
+            else {
+                for( File file : files ) {
+                    if( file.isDirectory() ) {
+                        sessionFolders.addAll( findSessions( Collections.singletonList( file ) ) );
+                    }
+                }
+            }
+        }
+        return sessionFolders;
+    }
+
+    /**
+       Runs a query from the command line. The rows are written to the
+       output (CSV or binary), and the query stats to stderr.
+
+       <p> Usage: SessionQuery --channel TYPE [--from TIME] [--to TIME]
+       [--last N(s|m|h|d)] [--label LABEL] [--where COLUMN(&lt;|&lt;=|&gt;|&gt;=)VALUE]...
+       [--select COLUMN,...] [--format csv|binary] [--threads N] [--out FILE]
+       folder... (a TIME is UNIX millisec, or yyyy-MM-dd[-HH-mm] local time)
+     */
+    public static void main( String[] args )
+        throws IOException {
+
+        // Parse the options
+        SessionQuery query = null;
+        List< String > wheres = new ArrayList< String >();
+        List< File > folders = new ArrayList< File >();
+        String format = "csv" , select = null , label = null , outName = null;
+        long startTime = Long.MIN_VALUE , endTime = Long.MAX_VALUE;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        try {
+            for( int i = 0 ; i < args.length ; ++i ) {
+                String option = args[i];
+                if( ! option.startsWith( "--" ) ) {
+                    folders.add( new File( option ) );
+                    continue;
+                }
+                if( i + 1 == args.length ) {
+                    throw new IllegalArgumentException( "No value for " + option );
+                }
+                String value = args[ ++i ];
+                if( option.equals( "--channel" ) ) {
+                    query = new SessionQuery( SensorLogType.valueOf( value ) );
+                }
+                else if( option.equals( "--from" ) ) {
+                    startTime = parseTime( value );
+                }
+                else if( option.equals( "--to" ) ) {
+                    endTime = parseTime( value );
+                }
+                else if( option.equals( "--last" ) ) {
+                    startTime = System.currentTimeMillis() - parseDuration( value );
+                }
+                else if( option.equals( "--label" ) ) {
+                    label = value;
+                }
+                else if( option.equals( "--where" ) ) {
+                    wheres.add( value );
+                }
+                else if( option.equals( "--select" ) ) {
+                    select = value;
+                }
+                else if( option.equals( "--format" ) ) {
+                    format = value;
+                }
+                else if( option.equals( "--threads" ) ) {
+                    numThreads = Integer.parseInt( value );
+                }
+                else if( option.equals( "--out" ) ) {
+                    outName = value;
+                }
+                else {
+                    throw new IllegalArgumentException( "Unknown option " + option );
+                }
+            }
+            if( query == null || folders.isEmpty() ) {
+                throw new IllegalArgumentException( "No channel or folder given" );
+            }
+            if( ! format.equals( "csv" ) && ! format.equals( "binary" ) ) {
+                throw new IllegalArgumentException( "Unknown format " + format );
+            }
+            query.timeRange( startTime , endTime ).label( label );
+            for( String where : wheres ) {
+                Matcher matcher = WHERE_PATTERN.matcher( where );
+                if( ! matcher.matches() ) {
+                    throw new IllegalArgumentException( "Invalid predicate " + where );
+                }
+                query.where( matcher.group( 1 ) , matcher.group( 2 ) , Double.parseDouble( matcher.group( 3 ) ) );
+            }
+            if( select != null ) {
+                query.select( select.split( "," ) );
+            }
+        }
+        catch( IllegalArgumentException e ) {
+            System.err.println( e.getMessage() );
+            System.err.println( "Usage: SessionQuery --channel TYPE [--from TIME] [--to TIME] [--last N(s|m|h|d)]" +
+                                " [--label LABEL] [--where COLUMN(<|<=|>|>=)VALUE]... [--select COLUMN,...]" +
+                                " [--format csv|binary] [--threads N] [--out FILE] folder..." );
+            System.exit( 2 );
+            return;
+        }
+
+        // Run it
+        OutputStream out = ( outName == null ? System.out : new FileOutputStream( outName ) );
+        out = new BufferedOutputStream( out , OUTPUT_BUFFER_BYTES );
+        try {
+            RowSink sink = ( format.equals( "csv" ) ? new CsvSink( out ) : new BinarySink( out ) );
+            long startNanos = System.nanoTime();
+            Stats stats = query.run( findSessions( folders ) , sink , numThreads );
+            System.err.println( stats + String.format( Locale.US , ", %.3f s" ,
+                                                       ( System.nanoTime() - startNanos ) / 1e9 ) );
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /** Sink for the rows of a query. */
+    public static interface RowSink {
+
+        /**
+           Writes rows of a session.
+
+           @param  columns  The selected columns
+           @param  numRows  Number of rows (at least one)
+         */
+        public void writeRows( String sessionName ,
+                               List< ColumnVector > columns ,
+                               int numRows )
+            throws IOException;
+
+        /** Called after the last rows (with the names of the selected columns). */
+        public void finish( List< String > columnNames )
+            throws IOException;
+    }
+
+    /** Writes the rows as CSV, with a header line, and the session name in the first column. */
+    public static class CsvSink
+        implements RowSink {
+
+        /** Creates a sink (the stream is flushed, but not closed, when finished). */
+        public CsvSink( OutputStream out ) {
+            this.out = new PrintWriter( new OutputStreamWriter( out ) );
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeRows( String sessionName ,
+                               List< ColumnVector > columns ,
+                               int numRows ) {
+            if( ! hasHeader ) {
+                writeHeader( columns );
+            }
+            StringBuilder sb = new StringBuilder();
+            for( int row = 0 ; row < numRows ; ++row ) {
+                sb.setLength( 0 );
+                sb.append( sessionName );
+                for( ColumnVector column : columns ) {
+                    sb.append( ',' );
+                    switch( column.getType() ) {
+                    case LONG:
+                        sb.append( column.getLong( row ) );
+                        break;
+                    case INT:
+                        sb.append( column.getInt( row ) );
+                        break;
+                    case FLOAT:
+                        sb.append( column.getFloat( row ) );
+                        break;
+                    case DOUBLE:
+                        sb.append( column.getDouble( row ) );
+                        break;
+                    default:
+                        sb.append( column.getString( row ) );
+                        break;
+                    }
+                }
+                out.println( sb );
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void finish( List< String > columnNames )
+            throws IOException {
+            if( ! hasHeader ) {
+                List< ColumnVector > columns = new ArrayList< ColumnVector >();
+                for( String name : columnNames ) {
+                    columns.add( new ColumnVector( name , ColumnVector.Type.STRING ) );
+                }
+                writeHeader( columns );
+            }
+            out.flush();
+            if( out.checkError() ) {
+                throw new IOException( "Unable to write the rows" );
+            }
+        }
+
+        /** Helper method that writes the header line. */
+        private void writeHeader( List< ColumnVector > columns ) {
+            StringBuilder sb = new StringBuilder( "session" );
+            for( ColumnVector column : columns ) {
+                sb.append( ',' ).append( column.getName() );
+            }
+            out.println( sb );
+            hasHeader = true;
+        }
+
+        /** Output. */
+        private final PrintWriter out;
+        /** Whether the header is written. */
+        private boolean hasHeader;
+    }
+
+    /**
+       Writes the rows in a compact binary form, as batches of columns.
+       Layout (big endian):
+       <pre>
+         int    magic ('SLQR')
+         int    number of columns, followed by (UTF name , byte type code)
+         batches:
+           int    number of rows (0 ends the stream)
+           UTF    session name
+           per column, the values (long, int, float, double or UTF)
+       </pre>
+     */
+    public static class BinarySink
+        implements RowSink {
+
+        /** Creates a sink (the stream is flushed, but not closed, when finished). */
+        public BinarySink( OutputStream out ) {
+            this.out = new DataOutputStream( out );
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void writeRows( String sessionName ,
+                               List< ColumnVector > columns ,
+                               int numRows )
+            throws IOException {
+            if( ! hasHeader ) {
+                writeHeader( columns );
+            }
+            out.writeInt( numRows );
+            out.writeUTF( sessionName );
+            for( ColumnVector column : columns ) {
+                for( int row = 0 ; row < numRows ; ++row ) {
+                    switch( column.getType() ) {
+                    case LONG:
+                        out.writeLong( column.getLong( row ) );
+                        break;
+                    case INT:
+                        out.writeInt( column.getInt( row ) );
+                        break;
+                    case FLOAT:
+                        out.writeFloat( column.getFloat( row ) );
+                        break;
+                    case DOUBLE:
+                        out.writeDouble( column.getDouble( row ) );
+                        break;
+                    default:
+                        out.writeUTF( column.getString( row ) );
+                        break;
+                    }
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void finish( List< String > columnNames )
+            throws IOException {
+            if( ! hasHeader ) {
+                // No rows: the column types are not known, so the columns are left out
+                writeHeader( Collections.< ColumnVector >emptyList() );
+            }
+            out.writeInt( 0 );
+            out.flush();
+        }
+
+        /** Helper method that writes the header. */
+        private void writeHeader( List< ColumnVector > columns )
+            throws IOException {
+            out.writeInt( FILE_MAGIC );
+            out.writeInt( columns.size() );
+            for( ColumnVector column : columns ) {
+                out.writeUTF( column.getName() );
+                out.writeByte( column.getType().code );
+            }
+            hasHeader = true;
+        }
+
+        /** Output. */
+        private final DataOutputStream out;
+        /** Whether the header is written. */
+        private boolean hasHeader;
+
+        /** Magic number of the binary rows ('SLQR'). */
+        public static final int FILE_MAGIC = 0x534C5152;
+    }
+
+    /** Stats of a query run (updated by the scanning threads). */
+    public static class Stats {
+
+        /** Gets the number of sessions scanned (their channel file read). */
+        public synchronized int getNumSessionsScanned() {
+            return numSessionsScanned;
+        }
+
+        /** Gets the number of sessions skipped (by their summary or labels). */
+        public synchronized int getNumSessionsSkipped() {
+            return numSessionsSkipped;
+        }
+
+        /** Gets the number of row groups scanned. */
+        public synchronized int getNumRowGroupsScanned() {
+            return numRowGroupsScanned;
+        }
+
+        /** Gets the number of row groups skipped (by their stats). */
+        public synchronized int getNumRowGroupsSkipped() {
+            return numRowGroupsSkipped;
+        }
+
+        /** Gets the number of rows returned. */
+        public synchronized long getNumRows() {
+            return numRows;
+        }
+
+        /** Gets the number of bytes read (of the channel and ground truth files). */
+        public synchronized long getBytesScanned() {
+            return bytesScanned;
+        }
+
+        /** Gets the number of bytes of the channel and ground truth files that were not read. */
+        public synchronized long getBytesSkipped() {
+            return bytesSkipped;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public synchronized String toString() {
+            return numRows + " rows, " + numSessionsScanned + " sessions scanned, " + numSessionsSkipped +
+                " skipped, " + numRowGroupsScanned + " row groups scanned, " + numRowGroupsSkipped +
+                " skipped, " + bytesScanned + " bytes scanned, " + bytesSkipped + " skipped";
+        }
+
+        /** Helper method that adds the bytes of a file (the bytes not read are skipped). */
+        private synchronized void addFile( long fileLength ,
+                                           long bytesRead ) {
+            bytesScanned += bytesRead;
+            bytesSkipped += fileLength - bytesRead;
+        }
+
+        /** Session stats. */
+        private int numSessionsScanned , numSessionsSkipped;
+        /** Row group stats. */
+        private int numRowGroupsScanned , numRowGroupsSkipped;
+        /** Rows returned. */
+        private long numRows;
+        /** Bytes read, and not read. */
+        private long bytesScanned , bytesSkipped;
+    }
+
+    /** Helper method that scans a session, and writes its rows to the sink. */
+    private void scanSession( File sessionFolder ,
+                              final RowSink sink ,
+                              Stats stats )
+        throws IOException {
+
+        final String sessionName = sessionFolder.getName();
+        File file = new File( sessionFolder , ColumnarWriter.getFileName( type ) );
+        if( ! file.isFile() ) {
+            return;
+        }
+
+        // Skip the session if its summary cannot match the time range or comparisons
+        SessionSummary summary = null;
+        SessionSummary.Channel channel = null;
+        File summaryFile = new File( sessionFolder , SessionSummary.FILE_NAME );
+        if( summaryFile.isFile() ) {
+            summary = SessionSummary.readFile( summaryFile );
+            channel = summary.getChannel( type );
+        }
+        long[] startTimes = { startTime } , endTimes = { endTime };
+        if( ! canMatch( channel , startTimes , endTimes ) ) {
+            skipSession( file , stats );
+            return;
+        }
+
+        // Get the label intervals (within the time range)
+        if( label != null ) {
+            File groundTruthFile =
+                new File( sessionFolder , ColumnarWriter.getFileName( SensorLogType.GROUND_TRUTH ) );
+            List< long[] > intervals = new ArrayList< long[] >();
+            if( groundTruthFile.isFile() ) {
+                ColumnarReader groundTruth = new ColumnarReader( groundTruthFile );
+                try {
+                    intervals = getLabelIntervals( groundTruth , summary );
+                }
+                finally {
+                    groundTruth.close();
+                    stats.addFile( groundTruthFile.length() , groundTruth.getBytesRead() );
+                }
+            }
+            startTimes = new long[ intervals.size() ];
+            endTimes = new long[ intervals.size() ];
+            for( int i = 0 ; i < startTimes.length ; ++i ) {
+                startTimes[i] = intervals.get( i )[0];
+                endTimes[i] = intervals.get( i )[1];
+            }
+            if( ! canMatch( channel , startTimes , endTimes ) ) {
+                skipSession( file , stats );
+                return;
+            }
+        }
+
+        // Scan the channel file, and stream its rows to the sink
+        ColumnarReader.Query query = new ColumnarReader.Query();
+        query.comparisons.addAll( comparisons );
+        if( columns != null ) {
+            query.select( columns );
+        }
+        if( label != null || startTime != Long.MIN_VALUE || endTime != Long.MAX_VALUE ) {
+            query.timeRanges( startTimes , endTimes );
+        }
+        ColumnarReader reader = new ColumnarReader( file );
+        ColumnarReader.Result result;
+        try {
+            result = reader.scan( query , new ColumnarReader.RowCallback() {
+                    @Override
+                    public void onRows( List< ColumnVector > columns ,
+                                        int numRows )
+                        throws IOException {
+                        synchronized( sink ) {
+                            sink.writeRows( sessionName , columns , numRows );
+                        }
+                    }
+                } );
+        }
+        finally {
+            reader.close();
+            stats.addFile( file.length() , reader.getBytesRead() );
+        }
+        synchronized( stats ) {
+            ++stats.numSessionsScanned;
+            stats.numRowGroupsScanned += result.getNumRowGroupsScanned();
+            stats.numRowGroupsSkipped += result.getNumRowGroupsSkipped();
+            stats.numRows += result.getNumRows();
+        }
+    }
+
+    /** Helper method that counts a skipped session. */
+    private static void skipSession( File file ,
+                                     Stats stats ) {
+        stats.addFile( file.length() , 0L );
+        synchronized( stats ) {
+            ++stats.numSessionsSkipped;
+        }
+    }
+
+    /**
+       Helper method that checks if a session's channel summary (if any)
+       can match the time ranges and the comparisons.
+     */
+    private boolean canMatch( SessionSummary.Channel channel ,
+                              long[] startTimes ,
+                              long[] endTimes ) {
+        if( startTimes.length == 0 ) {
+            return false;
+        }
+        if( channel == null ) {
+            return true;
+        }
+        if( channel.getCount() == 0 ) {
+            return false;
+        }
+
+        // Time: the readings are logged a bit after the summary's reading times
+        long firstTime = channel.getStartTime() , lastTime = channel.getEndTime() + SUMMARY_TIME_SLACK_MILLIS;
+        boolean overlaps = false;
+        for( int i = 0 ; i < startTimes.length && ! overlaps ; ++i ) {
+            overlaps = ( startTimes[i] <= lastTime && endTimes[i] > firstTime && startTimes[i] < endTimes[i] );
+        }
+        if( ! overlaps ) {
+            return false;
+        }
+
+        // Values: the summary's value i is the schema column i + 1 (after the time)
+        double[] mins = new double[ schema.length ] , maxs = new double[ schema.length ];
+        Arrays.fill( mins , Double.NaN );
+        Arrays.fill( maxs , Double.NaN );
+        for( int i = 0 ; i < channel.getNumValues() && i + 1 < schema.length ; ++i ) {
+            QuantileSketch sketch = channel.getSketch( i );
+            if( ! sketch.isEmpty() ) {
+                mins[ i + 1 ] = sketch.getMin();
+                maxs[ i + 1 ] = sketch.getMax();
+            }
+        }
+        double[] bounds = new double[2];
+        for( ColumnarReader.Comparison comparison : comparisons ) {
+            ColumnarReader.getBounds( mins , maxs , findNumericColumns( comparison.column ) , bounds );
+            if( ! comparison.canMatch( bounds[0] , bounds[1] ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+       Helper method that gets the intervals of the label, within the time
+       range, from the session's label index (see {@link GroundTruthIndex}:
+       the last label ends at the session's last reading, if it has a summary).
+
+       @return  The sorted, disjoint intervals [start, end)
+     */
+    private List< long[] > getLabelIntervals( ColumnarReader groundTruth ,
+                                              SessionSummary summary )
+        throws IOException {
+
+        // Label index of the session
+        ColumnarReader.Result result = groundTruth.scan( new ColumnarReader.Query().select( "labelTime" , "label" ) );
+        ColumnVector labelTimes = result.getColumn( "labelTime" ) , labels = result.getColumn( "label" );
+        GroundTruthIndex index = new GroundTruthIndex();
+        for( int i = 0 ; i < result.getNumRows() ; ++i ) {
+            String name = labels.getString( i );
+            if( ! name.isEmpty() ) {
+                index.add( labelTimes.getLong( i ) , name );
+            }
+        }
+        if( summary != null ) {
+            index.endAtLastReading( summary );
+        }
+
+        // Intervals of the label, clipped to the time range
+        List< long[] > intervals = new ArrayList< long[] >();
+        for( GroundTruthIndex.Interval interval : index.intervalsFor( label ) ) {
+            long start = Math.max( startTime , interval.startTime ) ,
+                end = Math.min( endTime , interval.endTime );
+            if( start < end ) {
+                intervals.add( new long[] { start , end } );
+            }
+        }
+        return intervals;
+    }
+
+    /** Helper method that gets the names of the selected columns. */
+    private List< String > getColumnNames() {
+        if( columns != null ) {
+            return Arrays.asList( columns );
+        }
+        List< String > names = new ArrayList< String >();
+        for( ColumnVector column : schema ) {
+            names.add( column.getName() );
+        }
+        return names;
+    }
+
+    /** Helper method that finds a column of the schema. */
+    private int findColumn( String name ) {
+        for( int i = 0 ; i < schema.length ; ++i ) {
+            if( schema[i].getName().equals( name ) ) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException( "No column " + name + " in " + type );
+    }
+
+    /** Helper method that finds the columns of a comparison (x, y, z for a magnitude). */
+    private int[] findNumericColumns( String name ) {
+        if( name.equals( ColumnarReader.MAGNITUDE ) ) {
+            return new int[] { findColumn( "x" ) , findColumn( "y" ) , findColumn( "z" ) };
+        }
+        int column = findColumn( name );
+        if( schema[ column ].getType() == ColumnVector.Type.STRING ) {
+            throw new IllegalArgumentException( "Not a numeric column: " + name );
+        }
+        return new int[] { column };
+    }
+
+    /** Helper method that parses a time: UNIX millisec, or yyyy-MM-dd[-HH-mm] (local time). */
+    private static long parseTime( String time ) {
+        if( time.matches( "-?[0-9]+" ) ) {
+            return Long.parseLong( time );
+        }
+        String pattern = ( time.length() > 10 ? "yyyy-MM-dd-HH-mm" : "yyyy-MM-dd" );
+        try {
+            SimpleDateFormat format = new SimpleDateFormat( pattern , Locale.US );
+            format.setLenient( false );
+            return format.parse( time ).getTime();
+        }
+        catch( ParseException e ) {
+            throw new IllegalArgumentException( "Invalid time " + time );
+        }
+    }
+
+    /** Helper method that parses a duration, e.g. 7d or 12h (millisec). */
+    private static long parseDuration( String duration ) {
+        Matcher matcher = DURATION_PATTERN.matcher( duration );
+        if( ! matcher.matches() ) {
+            throw new IllegalArgumentException( "Invalid duration " + duration );
+        }
+        long unit = ( matcher.group( 2 ).equals( "s" ) ? 1000L :
+                      matcher.group( 2 ).equals( "m" ) ? 60000L :
+                      matcher.group( 2 ).equals( "h" ) ? 3600000L : 86400000L );
+        return Long.parseLong( matcher.group( 1 ) ) * unit;
+    }
+
+    /** Channel queried, and its schema. */
+    private final SensorLogType type;
+    private final ColumnVector[] schema;
+    /** Columns to return (null for all). */
+    private String[] columns;
+    /** Time range (millisec). */
+    private long startTime = Long.MIN_VALUE , endTime = Long.MAX_VALUE;
+    /** Label (null if none). */
+    private String label;
+    /** Value comparisons. */
+    private final List< ColumnarReader.Comparison > comparisons = new ArrayList< ColumnarReader.Comparison >();
+
+    /**
+       Max time between a reading (in the summary) and its logged time
+       (millisec). The reading is summarized when it arrives, and logged
+       just after.
+     */
+    private static final long SUMMARY_TIME_SLACK_MILLIS = 1000L;
+    /** Command line predicate, e.g. magnitude&gt;3. */
+    private static final Pattern WHERE_PATTERN =
+        Pattern.compile( "\\s*(\\w+)\\s*(<=|>=|<|>)\\s*(\\S+)\\s*" );
+    /** Command line duration, e.g. 7d. */
+    private static final Pattern DURATION_PATTERN = Pattern.compile( "([0-9]+)([smhd])" );
+    /** Buffer size of the output (bytes). */
+    private static final int OUTPUT_BUFFER_BYTES = 1 << 16;
+}
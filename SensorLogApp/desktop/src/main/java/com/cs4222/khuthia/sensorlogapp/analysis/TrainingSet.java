@@ -0,0 +1,200 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.util.*;
+
+/**
+   Labelled feature rows for training a classifier, stored as primitive
+   feature columns. Each row also has a group (its session), for the
+   leave-one-session-out cross validation ({@link CrossValidator}).
+
+   <p> The rows of each feature column are sorted once, when the set is
+   created ({@link #getSortedRows}), so the tree training finds the
+   splits by scanning the sorted rows instead of sorting at every node.
+ */
+public class TrainingSet {
+
+    /**
+       Creates a training set.
+
+       @param  columns  Feature columns (columns[feature][row])
+       @param  labels   Class of each row (index in the class names)
+       @param  groups   Group of each row (index in the group names)
+     */
+    public TrainingSet( String[] featureNames ,
+                        String[] classNames ,
+                        String[] groupNames ,
+                        float[][] columns ,
+                        int[] labels ,
+                        int[] groups ) {
+        if( columns.length != featureNames.length ) {
+            throw new IllegalArgumentException( featureNames.length + " features, but " + columns.length + " columns" );
+        }
+        for( float[] column : columns ) {
+            if( column.length != labels.length ) {
+                throw new IllegalArgumentException( "Columns of different lengths" );
+            }
+        }
+        if( groups.length != labels.length ) {
+            throw new IllegalArgumentException( labels.length + " labels, but " + groups.length + " groups" );
+        }
+        this.featureNames = featureNames.clone();
+        this.classNames = classNames.clone();
+        this.groupNames = groupNames.clone();
+        this.columns = columns;
+        this.labels = labels;
+        this.groups = groups;
+
+        // Presort the rows of each feature
+        sortedRows = new int[ columns.length ][];
+        long[] keys = new long[ labels.length ];
+        for( int f = 0 ; f < columns.length ; ++f ) {
+            for( int row = 0 ; row < keys.length ; ++row ) {
+                keys[ row ] = ( (long) sortableBits( columns[f][ row ] ) << 32 ) | row;
+            }
+            Arrays.sort( keys );
+            int[] rows = new int[ keys.length ];
+            for( int i = 0 ; i < keys.length ; ++i ) {
+                rows[i] = (int) keys[i];
+            }
+            sortedRows[f] = rows;
+        }
+    }
+
+    /**
+       Creates a training set from the windows of sessions (a group per
+       session, and a class per label, in name order).
+     */
+    public static TrainingSet fromWindows( List< TrainingSetBuilder.SessionWindows > sessions ) {
+
+        // Classes, and the number of rows
+        SortedSet< String > labelSet = new TreeSet< String >();
+        int numRows = 0;
+        List< String > featureNames = Collections.emptyList();
+        for( TrainingSetBuilder.SessionWindows session : sessions ) {
+            for( int i = 0 ; i < session.getNumWindows() ; ++i ) {
+                labelSet.add( session.getLabel( i ) );
+            }
+            numRows += session.getNumWindows();
+            featureNames = session.getFeatureNames();
+        }
+        List< String > classNames = new ArrayList< String >( labelSet );
+
+        // Copy the windows into the columns
+        float[][] columns = new float[ featureNames.size() ][ numRows ];
+        int[] labels = new int[ numRows ] , groups = new int[ numRows ];
+        String[] groupNames = new String[ sessions.size() ];
+        int row = 0;
+        for( int g = 0 ; g < sessions.size() ; ++g ) {
+            TrainingSetBuilder.SessionWindows session = sessions.get( g );
+            groupNames[g] = session.getSessionName();
+            for( int i = 0 ; i < session.getNumWindows() ; ++i , ++row ) {
+                for( int f = 0 ; f < columns.length ; ++f ) {
+                    columns[f][ row ] = session.getFeature( i , f );
+                }
+                labels[ row ] = classNames.indexOf( session.getLabel( i ) );
+                groups[ row ] = g;
+            }
+        }
+        return new TrainingSet( featureNames.toArray( new String[ featureNames.size() ] ) ,
+                                classNames.toArray( new String[ classNames.size() ] ) ,
+                                groupNames , columns , labels , groups );
+    }
+
+    /** Creates a training set of some of the rows (with the same features, classes and groups). */
+    public TrainingSet subset( int[] rows ) {
+        float[][] subsetColumns = new float[ columns.length ][ rows.length ];
+        int[] subsetLabels = new int[ rows.length ] , subsetGroups = new int[ rows.length ];
+        for( int i = 0 ; i < rows.length ; ++i ) {
+            for( int f = 0 ; f < columns.length ; ++f ) {
+                subsetColumns[f][i] = columns[f][ rows[i] ];
+            }
+            subsetLabels[i] = labels[ rows[i] ];
+            subsetGroups[i] = groups[ rows[i] ];
+        }
+        return new TrainingSet( featureNames , classNames , groupNames , subsetColumns , subsetLabels , subsetGroups );
+    }
+
+    /** Gets the number of rows. */
+    public int getNumRows() {
+        return labels.length;
+    }
+
+    /** Gets the number of features. */
+    public int getNumFeatures() {
+        return featureNames.length;
+    }
+
+    /** Gets the number of classes. */
+    public int getNumClasses() {
+        return classNames.length;
+    }
+
+    /** Gets the number of groups. */
+    public int getNumGroups() {
+        return groupNames.length;
+    }
+
+    /** Gets the feature names. */
+    public List< String > getFeatureNames() {
+        return Collections.unmodifiableList( Arrays.asList( featureNames ) );
+    }
+
+    /** Gets the class names. */
+    public List< String > getClassNames() {
+        return Collections.unmodifiableList( Arrays.asList( classNames ) );
+    }
+
+    /** Gets the group names. */
+    public List< String > getGroupNames() {
+        return Collections.unmodifiableList( Arrays.asList( groupNames ) );
+    }
+
+    /** Gets a feature value. */
+    public float getValue( int row ,
+                           int feature ) {
+        return columns[ feature ][ row ];
+    }
+
+    /** Copies the features of a row. */
+    public void getRow( int row ,
+                        float[] features ) {
+        for( int f = 0 ; f < columns.length ; ++f ) {
+            features[f] = columns[f][ row ];
+        }
+    }
+
+    /** Gets the class of a row. */
+    public int getLabel( int row ) {
+        return labels[ row ];
+    }
+
+    /** Gets the group of a row. */
+    public int getGroup( int row ) {
+        return groups[ row ];
+    }
+
+    /** Gets a feature column (not copied, do not change). */
+    float[] getColumn( int feature ) {
+        return columns[ feature ];
+    }
+
+    /** Gets the rows sorted by a feature's value (not copied, do not change). */
+    int[] getSortedRows( int feature ) {
+        return sortedRows[ feature ];
+    }
+
+    /** Helper method that maps a float to an int with the same order (NaN last). */
+    private static int sortableBits( float value ) {
+        int bits = Float.floatToIntBits( value );
+        return bits ^ ( ( bits >> 31 ) & 0x7FFFFFFF );
+    }
+
+    /** Feature, class and group names. */
+    private final String[] featureNames , classNames , groupNames;
+    /** Feature columns. */
+    private final float[][] columns;
+    /** Class and group of each row. */
+    private final int[] labels , groups;
+    /** Rows sorted by each feature. */
+    private final int[][] sortedRows;
+}
@@ -0,0 +1,753 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+   Builds a labelled training set for activity classification: the
+   sessions' sensor logs are cut into (overlapping) time windows, and
+   each window gets a feature vector (e.g. the mean and standard
+   deviation of each axis, and of the magnitude) and its ground truth
+   label.
+
+   <p> A window is kept only if a single label covers all of it (see
+   {@link GroundTruthIndex}: a label lasts until a different one, the last
+   one until the end of the session) and it is an activity (not Confirm
+   nor INCORRECT, as in the activity model), and every channel has at least
+   {@link #MIN_WINDOW_SAMPLES} readings in it. Windows start on a multiple
+   of the hop, so the windows of the same time are the same in every run.
+
+   <p> Sessions are processed in parallel, and the features of each are
+   cached on disk, keyed by the session's content hash and the feature
+   config ({@link Config#getKey}). Re-running with the same features
+   (e.g. to try another model) only hashes the logs. Cache file layout
+   (big endian):
+   <pre>
+     int    magic ('SLFW')
+     int    version
+     UTF    config key
+     UTF    session hash
+     int    number of features, followed by the names (UTF)
+     int    number of windows, followed by (long startTime , UTF label , float[] features)
+   </pre>
+ */
+public class TrainingSetBuilder {
+
+    /**
+       Creates a builder.
+
+       @param  cacheFolder  Feature cache folder (null for no cache)
+       @param  parallelism  Number of sessions processed in parallel
+     */
+    public TrainingSetBuilder( Config config ,
+                               File cacheFolder ,
+                               int parallelism ) {
+        if( parallelism <= 0 ) {
+            throw new IllegalArgumentException( "Invalid parallelism " + parallelism );
+        }
+        this.config = config;
+        this.cacheFolder = cacheFolder;
+        this.parallelism = parallelism;
+    }
+
+    /** Builds the windows of the given sessions (in the given order). */
+    public List< SessionWindows > build( List< File > sessionFolders )
+        throws IOException {
+
+        // Process the sessions in parallel
+        ExecutorService executor = Executors.newFixedThreadPool( parallelism );
+        try {
+            List< Future< SessionWindows > > futures = new ArrayList< Future< SessionWindows > >();
+            for( final File sessionFolder : sessionFolders ) {
+                futures.add( executor.submit( new Callable< SessionWindows >() {
+                        @Override
+                        public SessionWindows call()
+                            throws IOException {
+                            return buildSession( sessionFolder );
+                        }
+                    } ) );
+            }
+
+            // Collect them in order (the first error fails the build)
+            List< SessionWindows > sessions = new ArrayList< SessionWindows >();
+            for( Future< SessionWindows > future : futures ) {
+                try {
+                    sessions.add( future.get() );
+                }
+                catch( ExecutionException e ) {
+                    if( e.getCause() instanceof IOException ) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException( "Unable to build the windows" , e.getCause() );
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException( "Build interrupted" );
+                }
+            }
+            return sessions;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Builds the windows of a session (from the cache, if it has them). */
+    public SessionWindows buildSession( File sessionFolder )
+        throws IOException {
+
+        // Look up the cache
+        String sessionName = sessionFolder.getName();
+        File cacheFile = null;
+        String sessionHash = null;
+        if( cacheFolder != null ) {
+            sessionHash = hashSession( sessionFolder );
+            cacheFile = new File( cacheFolder ,
+                                  hashKey( sessionHash + "\n" + config.getKey() ) +
+                                  CACHE_FILE_EXTENSION );
+            if( cacheFile.isFile() ) {
+                try {
+                    SessionWindows windows = readCacheFile( cacheFile , sessionName , sessionHash );
+                    numCacheHits.incrementAndGet();
+                    return windows;
+                }
+                catch( IOException e ) {
+                    // Corrupt (e.g. a partly written file from an old version): computed again
+                }
+            }
+            numCacheMisses.incrementAndGet();
+        }
+
+        // Compute the features, and cache them
+        SessionWindows windows = computeWindows( sessionFolder );
+        if( cacheFile != null ) {
+            writeCacheFile( windows , cacheFile , sessionHash );
+        }
+        return windows;
+    }
+
+    /** Gets the number of sessions read from the cache. */
+    public int getNumCacheHits() {
+        return numCacheHits.get();
+    }
+
+    /** Gets the number of sessions computed (with a cache). */
+    public int getNumCacheMisses() {
+        return numCacheMisses.get();
+    }
+
+    /** Writes the windows as CSV: session,startTime,label, followed by the features. */
+    public static void writeCsv( List< SessionWindows > sessions ,
+                                 Writer writer )
+        throws IOException {
+        PrintWriter out = new PrintWriter( writer );
+        boolean hasHeader = false;
+        for( SessionWindows session : sessions ) {
+            if( ! hasHeader ) {
+                StringBuilder sb = new StringBuilder( "session,startTime,label" );
+                for( String name : session.getFeatureNames() ) {
+                    sb.append( ',' ).append( name );
+                }
+                out.println( sb );
+                hasHeader = true;
+            }
+            for( int i = 0 ; i < session.getNumWindows() ; ++i ) {
+                StringBuilder sb = new StringBuilder();
+                sb.append( session.getSessionName() ).append( ',' )
+                    .append( session.getStartTime( i ) ).append( ',' )
+                    .append( session.getLabel( i ) );
+                for( int f = 0 ; f < session.getNumFeatures() ; ++f ) {
+                    sb.append( ',' ).append( session.getFeature( i , f ) );
+                }
+                out.println( sb );
+            }
+        }
+        out.flush();
+        if( out.checkError() ) {
+            throw new IOException( "Unable to write the training set" );
+        }
+    }
+
+    /**
+       Builds a training set from the command line, and writes it as CSV.
+
+       <p> Usage: TrainingSetBuilder [--window MILLIS] [--hop MILLIS]
+       [--channels TYPE,...] [--features FEATURE,...] [--cache FOLDER]
+       [--threads N] out.csv logFolder...
+     */
+    public static void main( String[] args )
+        throws IOException {
+
+        // Parse the options
+        Config config = new Config();
+        File cacheFolder = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        List< String > files = new ArrayList< String >();
+        try {
+            for( int i = 0 ; i < args.length ; ++i ) {
+                if( ! args[i].startsWith( "--" ) ) {
+                    files.add( args[i] );
+                    continue;
+                }
+                if( i + 1 == args.length ) {
+                    throw new IllegalArgumentException( "No value for " + args[i] );
+                }
+                String option = args[i] , value = args[ ++i ];
+                if( option.equals( "--window" ) ) {
+                    config.window( Long.parseLong( value ) , config.getHopMillis() );
+                }
+                else if( option.equals( "--hop" ) ) {
+                    config.window( config.getWindowMillis() , Long.parseLong( value ) );
+                }
+                else if( option.equals( "--channels" ) ) {
+                    List< SensorLogType > channels = new ArrayList< SensorLogType >();
+                    for( String name : value.split( "," ) ) {
+                        channels.add( SensorLogType.valueOf( name ) );
+                    }
+                    config.channels( channels.toArray( new SensorLogType[ channels.size() ] ) );
+                }
+                else if( option.equals( "--features" ) ) {
+                    List< Feature > features = new ArrayList< Feature >();
+                    for( String name : value.split( "," ) ) {
+                        features.add( Feature.valueOf( name ) );
+                    }
+                    config.features( features.toArray( new Feature[ features.size() ] ) );
+                }
+                else if( option.equals( "--cache" ) ) {
+                    cacheFolder = new File( value );
+                }
+                else if( option.equals( "--threads" ) ) {
+                    parallelism = Integer.parseInt( value );
+                }
+                else {
+                    throw new IllegalArgumentException( "Unknown option " + option );
+                }
+            }
+            if( files.size() < 2 ) {
+                throw new IllegalArgumentException( "No output file or log folder given" );
+            }
+        }
+        catch( IllegalArgumentException e ) {
+            System.err.println( e.getMessage() );
+            System.err.println( "Usage: TrainingSetBuilder [--window MILLIS] [--hop MILLIS] [--channels TYPE,...]" +
+                                " [--features FEATURE,...] [--cache FOLDER] [--threads N] out.csv logFolder..." );
+            System.exit( 2 );
+            return;
+        }
+
+        // Build it
+        List< File > sessionFolders = new ArrayList< File >();
+        for( String logFolder : files.subList( 1 , files.size() ) ) {
+            sessionFolders.addAll( SensorLogType.discoverSessions( new File( logFolder ) ) );
+        }
+        long startNanos = System.nanoTime();
+        TrainingSetBuilder builder = new TrainingSetBuilder( config , cacheFolder , parallelism );
+        List< SessionWindows > sessions = builder.build( sessionFolders );
+        Writer out = new BufferedWriter( new FileWriter( files.get( 0 ) ) );
+        try {
+            writeCsv( sessions , out );
+        }
+        finally {
+            out.close();
+        }
+        int numWindows = 0;
+        for( SessionWindows session : sessions ) {
+            numWindows += session.getNumWindows();
+        }
+        System.out.println( String.format( Locale.US , "%d sessions, %d windows (%d sessions cached), %.3f s" ,
+                                           sessions.size() , numWindows , builder.getNumCacheHits() ,
+                                           ( System.nanoTime() - startNanos ) / 1e9 ) );
+    }
+
+    /** Window features, computed for each value of each channel (and the x, y, z magnitude). */
+    public static enum Feature {
+        /** Mean. */
+        MEAN ,
+        /** Standard deviation. */
+        STD ,
+        /** Min. */
+        MIN ,
+        /** Max. */
+        MAX ,
+        /** Mean of the squares. */
+        ENERGY
+    }
+
+    /**
+       Feature config: the window size and hop, the channels, and the
+       features. The setters return the config, so they can be chained.
+     */
+    public static class Config {
+
+        /** Creates the default config (see the DEFAULT_* constants). */
+        public Config() {
+        }
+
+        /** Sets the window size, and the time between window starts (millisec). */
+        public Config window( long windowMillis ,
+                              long hopMillis ) {
+            if( windowMillis <= 0 || hopMillis <= 0 ) {
+                throw new IllegalArgumentException( "Invalid window " + windowMillis + " or hop " + hopMillis );
+            }
+            this.windowMillis = windowMillis;
+            this.hopMillis = hopMillis;
+            return this;
+        }
+
+        /** Sets the channels (sensor logs, not the location or ground truth). */
+        public Config channels( SensorLogType... channels ) {
+            for( SensorLogType channel : channels ) {
+                if( channel == SensorLogType.LOCATION || channel == SensorLogType.GROUND_TRUTH ) {
+                    throw new IllegalArgumentException( "Not a sensor channel: " + channel );
+                }
+            }
+            if( channels.length == 0 ) {
+                throw new IllegalArgumentException( "No channels" );
+            }
+            this.channels = channels.clone();
+            return this;
+        }
+
+        /** Sets the features. */
+        public Config features( Feature... features ) {
+            if( features.length == 0 ) {
+                throw new IllegalArgumentException( "No features" );
+            }
+            this.features = features.clone();
+            return this;
+        }
+
+        /** Gets the window size (millisec). */
+        public long getWindowMillis() {
+            return windowMillis;
+        }
+
+        /** Gets the time between window starts (millisec). */
+        public long getHopMillis() {
+            return hopMillis;
+        }
+
+        /** Gets the feature names (channel.value.feature, e.g. LINEAR_ACCL.magnitude.STD). */
+        public List< String > getFeatureNames() {
+            List< String > names = new ArrayList< String >();
+            for( SensorLogType channel : channels ) {
+                for( String value : getValueNames( channel ) ) {
+                    for( Feature feature : features ) {
+                        names.add( channel.name() + "." + value + "." + feature.name() );
+                    }
+                }
+            }
+            return names;
+        }
+
+        /**
+           Gets the cache key: everything the features depend on (a new
+           feature version must change FEATURE_VERSION).
+         */
+        public String getKey() {
+            return "features=" + FEATURE_VERSION + ";window=" + windowMillis + ";hop=" + hopMillis +
+                ";minSamples=" + MIN_WINDOW_SAMPLES + ";names=" + getFeatureNames();
+        }
+
+        /** Window size and hop (millisec). */
+        private long windowMillis = DEFAULT_WINDOW_MILLIS , hopMillis = DEFAULT_HOP_MILLIS;
+        /** Channels. */
+        private SensorLogType[] channels = { SensorLogType.LINEAR_ACCL , SensorLogType.GYROSCOPE };
+        /** Features. */
+        private Feature[] features = Feature.values();
+    }
+
+    /** The labelled feature windows of a session. */
+    public static class SessionWindows {
+
+        /** Creates the windows. */
+        SessionWindows( String sessionName ,
+                        List< String > featureNames ,
+                        long[] startTimes ,
+                        String[] labels ,
+                        float[] features ) {
+            this.sessionName = sessionName;
+            this.featureNames = featureNames;
+            this.startTimes = startTimes;
+            this.labels = labels;
+            this.features = features;
+        }
+
+        /** Gets the session name (folder name). */
+        public String getSessionName() {
+            return sessionName;
+        }
+
+        /** Gets the feature names. */
+        public List< String > getFeatureNames() {
+            return Collections.unmodifiableList( featureNames );
+        }
+
+        /** Gets the number of features per window. */
+        public int getNumFeatures() {
+            return featureNames.size();
+        }
+
+        /** Gets the number of windows. */
+        public int getNumWindows() {
+            return startTimes.length;
+        }
+
+        /** Gets a window's start time (millisec). */
+        public long getStartTime( int window ) {
+            return startTimes[ window ];
+        }
+
+        /** Gets a window's label. */
+        public String getLabel( int window ) {
+            return labels[ window ];
+        }
+
+        /** Gets a feature of a window. */
+        public float getFeature( int window ,
+                                 int feature ) {
+            return features[ window * featureNames.size() + feature ];
+        }
+
+        /** Session name. */
+        private final String sessionName;
+        /** Feature names. */
+        private final List< String > featureNames;
+        /** Window start times and labels. */
+        private final long[] startTimes;
+        private final String[] labels;
+        /** Features (window by window). */
+        private final float[] features;
+    }
+
+    /** Helper method that computes the windows of a session from its logs. */
+    private SessionWindows computeWindows( File sessionFolder )
+        throws IOException {
+
+        // Parse the channels, and the labels (sorted by time)
+        ColumnBuffer[] logs = new ColumnBuffer[ config.channels.length ];
+        int[][] valueColumns = new int[ logs.length ][];
+        boolean[] hasMagnitude = new boolean[ logs.length ];
+        long startTime = Long.MAX_VALUE , endTime = Long.MIN_VALUE;
+        for( int c = 0 ; c < logs.length ; ++c ) {
+            SensorLogType channel = config.channels[c];
+            CsvLayout layout = CsvLayout.forSensorLog( channel );
+            logs[c] = new ColumnBuffer( layout.getNumValues() );
+            File logFile = new File( sessionFolder , channel.getFileName() );
+            if( logFile.isFile() ) {
+                new MappedCsvParser( layout ).parse( logFile , logs[c] );
+            }
+            if( logs[c].size() > 0 ) {
+                startTime = Math.min( startTime , logs[c].getTimestamps()[0] );
+                endTime = Math.max( endTime , logs[c].getTimestamps()[ logs[c].size() - 1 ] );
+            }
+            valueColumns[c] = getValueColumns( channel );
+            hasMagnitude[c] = getValueNames( channel ).contains( ColumnarReader.MAGNITUDE );
+        }
+        List< GroundTruthIndex.Interval > labels = GroundTruthIndex.readSession( sessionFolder ).getIntervals();
+
+        // Go through the windows
+        List< String > featureNames = config.getFeatureNames();
+        int numFeatures = featureNames.size();
+        List< Long > windowStarts = new ArrayList< Long >();
+        List< String > windowLabels = new ArrayList< String >();
+        float[] features = new float[ numFeatures * 64 ];
+        float[] windowFeatures = new float[ numFeatures ];
+        long firstStart = ( startTime + config.hopMillis - 1 ) / config.hopMillis * config.hopMillis;
+        int labelIndex = 0;
+        for( long windowStart = firstStart ;
+             startTime != Long.MAX_VALUE && windowStart + config.windowMillis <= endTime + 1 ;
+             windowStart += config.hopMillis ) {
+            long windowEnd = windowStart + config.windowMillis;
+
+            // Label interval covering the whole window (the repeats of a label are merged)
+            while( labelIndex < labels.size() && labels.get( labelIndex ).endTime <= windowStart ) {
+                ++labelIndex;
+            }
+            if( labelIndex == labels.size() ||
+                labels.get( labelIndex ).startTime > windowStart ||
+                labels.get( labelIndex ).endTime < windowEnd ) {
+                continue;
+            }
+            String label = labels.get( labelIndex ).label;
+            if( ! GroundTruthIndex.isActivity( label ) ) {
+                continue;
+            }
+
+            // Features of each channel
+            int f = 0;
+            boolean hasSamples = true;
+            for( int c = 0 ; c < logs.length && hasSamples ; ++c ) {
+                int from = lowerBound( logs[c] , windowStart ) , to = lowerBound( logs[c] , windowEnd );
+                hasSamples = ( to - from >= MIN_WINDOW_SAMPLES );
+                if( hasSamples ) {
+                    f = computeFeatures( logs[c] , valueColumns[c] , hasMagnitude[c] ,
+                                         from , to , windowFeatures , f );
+                }
+            }
+            if( ! hasSamples ) {
+                continue;
+            }
+            int numWindows = windowStarts.size();
+            if( ( numWindows + 1 ) * numFeatures > features.length ) {
+                features = Arrays.copyOf( features , features.length * 2 );
+            }
+            System.arraycopy( windowFeatures , 0 , features , numWindows * numFeatures , numFeatures );
+            windowStarts.add( windowStart );
+            windowLabels.add( label );
+        }
+
+        long[] startTimes = new long[ windowStarts.size() ];
+        for( int i = 0 ; i < startTimes.length ; ++i ) {
+            startTimes[i] = windowStarts.get( i );
+        }
+        return new SessionWindows( sessionFolder.getName() , featureNames , startTimes ,
+                                   windowLabels.toArray( new String[ startTimes.length ] ) ,
+                                   Arrays.copyOf( features , startTimes.length * numFeatures ) );
+    }
+
+    /**
+       Helper method that computes the features of the values of a channel
+       in the rows [from, to), and of their magnitude (of the first three).
+
+       @return  Index after the last feature written
+     */
+    private int computeFeatures( ColumnBuffer log ,
+                                 int[] columns ,
+                                 boolean hasMagnitude ,
+                                 int from ,
+                                 int to ,
+                                 float[] out ,
+                                 int f ) {
+        int numValues = columns.length + ( hasMagnitude ? 1 : 0 );
+        for( int v = 0 ; v < numValues ; ++v ) {
+            double sum = 0.0 , sumSquares = 0.0;
+            double min = Double.POSITIVE_INFINITY , max = Double.NEGATIVE_INFINITY;
+            for( int row = from ; row < to ; ++row ) {
+                double value;
+                if( v < columns.length ) {
+                    value = log.getColumn( columns[v] )[ row ];
+                }
+                else {
+                    double x = log.getColumn( 0 )[ row ] , y = log.getColumn( 1 )[ row ] , z = log.getColumn( 2 )[ row ];
+                    value = Math.sqrt( x * x + y * y + z * z );
+                }
+                sum += value;
+                sumSquares += value * value;
+                min = Math.min( min , value );
+                max = Math.max( max , value );
+            }
+            int n = to - from;
+            double mean = sum / n , energy = sumSquares / n;
+            for( Feature feature : config.features ) {
+                switch( feature ) {
+                case MEAN:
+                    out[ f++ ] = (float) mean;
+                    break;
+                case STD:
+                    out[ f++ ] = (float) Math.sqrt( Math.max( 0.0 , energy - mean * mean ) );
+                    break;
+                case MIN:
+                    out[ f++ ] = (float) min;
+                    break;
+                case MAX:
+                    out[ f++ ] = (float) max;
+                    break;
+                default:
+                    out[ f++ ] = (float) energy;
+                    break;
+                }
+            }
+        }
+        return f;
+    }
+
+    /** Helper method that gets the value names of a channel (the x, y, z ones get a magnitude too). */
+    private static List< String > getValueNames( SensorLogType channel ) {
+        List< String > names = new ArrayList< String >();
+        ColumnVector[] schema = ColumnarWriter.newColumns( channel );
+        for( int column : getValueColumns( channel ) ) {
+            names.add( schema[ column + 1 ].getName() );
+        }
+        if( names.equals( Arrays.asList( "x" , "y" , "z" ) ) ) {
+            names.add( ColumnarReader.MAGNITUDE );
+        }
+        return names;
+    }
+
+    /**
+       Helper method that gets the value columns of a channel's log (the
+       numeric columns after the logged time, except the accuracy).
+     */
+    private static int[] getValueColumns( SensorLogType channel ) {
+        ColumnVector[] schema = ColumnarWriter.newColumns( channel );
+        int numValues = 0;
+        int[] columns = new int[ schema.length - 1 ];
+        for( int i = 1 ; i < schema.length ; ++i ) {
+            if( ! schema[i].getName().equals( "accuracy" ) ) {
+                columns[ numValues++ ] = i - 1;
+            }
+        }
+        return Arrays.copyOf( columns , numValues );
+    }
+
+    /** Helper method that finds the first row at or after a time (the log is in time order). */
+    private static int lowerBound( ColumnBuffer log ,
+                                   long time ) {
+        long[] timestamps = log.getTimestamps();
+        int low = 0 , high = log.size();
+        while( low < high ) {
+            int middle = ( low + high ) >>> 1;
+            if( timestamps[ middle ] < time ) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** Helper method that gets the cache file name of a key (hex SHA-256). */
+    private static String hashKey( String key )
+        throws IOException {
+        byte[] bytes = key.getBytes( "UTF-8" );
+        return ContentChunker.hash( bytes , 0 , bytes.length );
+    }
+
+    /** Helper method that hashes the content of the session's channel logs and ground truth. */
+    private String hashSession( File sessionFolder )
+        throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        }
+        catch( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( "No SHA-256" , e );
+        }
+        // The label index and the summary are hashed too, since they give the session end time
+        List< String > fileNames = new ArrayList< String >();
+        for( SensorLogType type : config.channels ) {
+            fileNames.add( type.getFileName() );
+        }
+        fileNames.add( SensorLogType.GROUND_TRUTH.getFileName() );
+        fileNames.add( GroundTruthIndex.SIDECAR_FILE_NAME );
+        fileNames.add( SessionSummary.FILE_NAME );
+        byte[] buffer = new byte[ HASH_BUFFER_BYTES ];
+        for( String fileName : fileNames ) {
+            File file = new File( sessionFolder , fileName );
+            if( ! file.isFile() ) {
+                continue;
+            }
+            digest.update( ( fileName + "\n" + file.length() + "\n" ).getBytes( "UTF-8" ) );
+            InputStream in = new FileInputStream( file );
+            try {
+                int numRead;
+                while( ( numRead = in.read( buffer ) ) >= 0 ) {
+                    digest.update( buffer , 0 , numRead );
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        return ContentChunker.toHex( digest.digest() );
+    }
+
+    /** Helper method that reads a cache file. */
+    private SessionWindows readCacheFile( File file ,
+                                          String sessionName ,
+                                          String sessionHash )
+        throws IOException {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try {
+            if( in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION ||
+                ! in.readUTF().equals( config.getKey() ) || ! in.readUTF().equals( sessionHash ) ) {
+                throw new IOException( "Not a cache file of this session and config: " + file );
+            }
+            int numFeatures = in.readInt();
+            List< String > featureNames = new ArrayList< String >();
+            for( int f = 0 ; f < numFeatures ; ++f ) {
+                featureNames.add( in.readUTF() );
+            }
+            int numWindows = in.readInt();
+            long[] startTimes = new long[ numWindows ];
+            String[] labels = new String[ numWindows ];
+            float[] features = new float[ numWindows * numFeatures ];
+            for( int i = 0 ; i < numWindows ; ++i ) {
+                startTimes[i] = in.readLong();
+                labels[i] = in.readUTF();
+                for( int f = 0 ; f < numFeatures ; ++f ) {
+                    features[ i * numFeatures + f ] = in.readFloat();
+                }
+            }
+            return new SessionWindows( sessionName , featureNames , startTimes , labels , features );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /** Helper method that writes a cache file (to a temp file, renamed when complete). */
+    private void writeCacheFile( SessionWindows windows ,
+                                 File file ,
+                                 String sessionHash )
+        throws IOException {
+        cacheFolder.mkdirs();
+        File tempFile = File.createTempFile( "windows" , ".tmp" , cacheFolder );
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ) ) );
+        try {
+            out.writeInt( CACHE_MAGIC );
+            out.writeInt( CACHE_VERSION );
+            out.writeUTF( config.getKey() );
+            out.writeUTF( sessionHash );
+            out.writeInt( windows.getNumFeatures() );
+            for( String name : windows.getFeatureNames() ) {
+                out.writeUTF( name );
+            }
+            out.writeInt( windows.getNumWindows() );
+            for( int i = 0 ; i < windows.getNumWindows() ; ++i ) {
+                out.writeLong( windows.getStartTime( i ) );
+                out.writeUTF( windows.getLabel( i ) );
+                for( int f = 0 ; f < windows.getNumFeatures() ; ++f ) {
+                    out.writeFloat( windows.getFeature( i , f ) );
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+        // NOTE: Another build may have written the same file meanwhile (same content)
+        file.delete();
+        if( ! tempFile.renameTo( file ) ) {
+            tempFile.delete();
+            throw new IOException( "Unable to write the cache file " + file );
+        }
+    }
+
+    /** Feature config. */
+    private final Config config;
+    /** Cache folder (null if none). */
+    private final File cacheFolder;
+    /** Number of sessions processed in parallel. */
+    private final int parallelism;
+    /** Cache stats. */
+    private final AtomicInteger numCacheHits = new AtomicInteger() , numCacheMisses = new AtomicInteger();
+
+    /** Default window size and hop (millisec). */
+    public static final long DEFAULT_WINDOW_MILLIS = 2560L;
+    public static final long DEFAULT_HOP_MILLIS = 1280L;
+    /** Min readings of each channel in a window. */
+    public static final int MIN_WINDOW_SAMPLES = 2;
+    /** Version of the window computation, features and labels (part of the cache key). */
+    private static final int FEATURE_VERSION = 3;
+    /** Cache file magic ('SLFW'), version and extension. */
+    private static final int CACHE_MAGIC = 0x534C4657;
+    private static final int CACHE_VERSION = 1;
+    private static final String CACHE_FILE_EXTENSION = ".fw";
+    /** Read buffer of the session hash (bytes). */
+    private static final int HASH_BUFFER_BYTES = 64 * 1024;
+}
@@ -0,0 +1,169 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the archive grows with the unique content only, that the
+ * manifests reconstruct the files, the chunk cache, and that temp files
+ * are not counted as chunks.
+ */
+public class ChunkStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Reads a stream to the end. */
+    private static byte[] readAll( InputStream in ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[ 5000 ];
+        int numRead;
+        while( ( numRead = in.read( buffer ) ) >= 0 ) {
+            out.write( buffer , 0 , numRead );
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /** Reads a file. */
+    private static byte[] readFile( File file ) throws IOException {
+        return readAll( new FileInputStream( file ) );
+    }
+
+    /** Gets the total size of a folder's files. */
+    private static long folderBytes( File sessionFolder ) {
+        long numBytes = 0L;
+        for( File file : sessionFolder.listFiles() ) {
+            numBytes += file.length();
+        }
+        return numBytes;
+    }
+
+    /** Copies a folder's files. */
+    private static void copyFolder( File source , File target ) throws IOException {
+        target.mkdirs();
+        for( File file : source.listFiles() ) {
+            OutputStream out = new FileOutputStream( new File( target , file.getName() ) );
+            out.write( readFile( file ) );
+            out.close();
+        }
+    }
+
+    @Test
+    public void archiveSession_growsWithUniqueContentOnly() throws Exception {
+        File session = new File( folder.getRoot() , "2016-01-01-walk" );
+        TestSessions.writeSession( session , 1451624400000L , 5000 , 1L );
+        ChunkStore store = new ChunkStore( folder.newFolder( "archive" ) );
+
+        long growth = store.archiveSession( session );
+        long storedBytes = store.getStoredBytes();
+        // Unique random data: (almost) no chunk repeats, but the text deflates
+        assertEquals( folderBytes( session ) , growth , folderBytes( session ) / 100 );
+        assertTrue( storedBytes < growth * 3 / 4 );
+
+        // The same session collected again, or copied: nothing new
+        assertEquals( 0L , store.archiveSession( session ) );
+        File copy = new File( folder.getRoot() , "copy" );
+        copyFolder( session , copy );
+        assertEquals( 0L , store.archiveSession( "2016-01-01-walk-copy" , copy ) );
+        assertEquals( storedBytes , store.getStoredBytes() );
+        assertEquals( Arrays.asList( "2016-01-01-walk" , "2016-01-01-walk-copy" ) , store.getSessionNames() );
+
+        // Appending to a log: only the new chunks (and the one at the old end)
+        File log = new File( session , SensorLogType.LINEAR_ACCL.getFileName() );
+        long oldLength = log.length();
+        PrintWriter out = new PrintWriter( new FileWriter( log , true ) );
+        Random random = new Random( 2L );
+        for( int i = 0 ; i < 1000 ; ++i ) {
+            out.println( TestSessions.line( SensorLogType.LINEAR_ACCL , 1451630000000L + i * 25L , random ) );
+        }
+        out.close();
+        long appendGrowth = store.archiveSession( session );
+        assertTrue( appendGrowth >= log.length() - oldLength );
+        assertTrue( appendGrowth <= log.length() - oldLength + ContentChunker.DEFAULT_MAX_SIZE );
+    }
+
+    @Test
+    public void restoreSession_reconstructsTheFiles() throws Exception {
+        File session = new File( folder.getRoot() , "session" );
+        TestSessions.writeSession( session , 1451624400000L , 2000 , 3L );
+        ChunkStore store = new ChunkStore( folder.newFolder( "archive" ) );
+        store.archiveSession( session );
+
+        List< ChunkStore.FileEntry > manifest = store.readManifest( "session" );
+        assertEquals( session.list().length , manifest.size() );
+        File restored = folder.newFolder( "restored" );
+        store.restoreSession( "session" , restored );
+        for( ChunkStore.FileEntry entry : manifest ) {
+            File file = new File( session , entry.getName() );
+            assertEquals( file.length() , entry.getLength() );
+            assertArrayEquals( readFile( file ) , readFile( new File( restored , entry.getName() ) ) );
+            assertArrayEquals( readFile( file ) , readAll( store.openFile( "session" , entry.getName() ) ) );
+        }
+
+        // A missing chunk fails the read (instead of returning a short file)
+        ChunkStore.FileEntry entry = manifest.get( 0 );
+        File chunkFile = new File( new File( new File( folder.getRoot() , "archive/chunks" ) ,
+                                             entry.getHash( 0 ).substring( 0 , 2 ) ) , entry.getHash( 0 ) );
+        assertTrue( chunkFile.delete() );
+        try {
+            readAll( new ChunkStore( new File( folder.getRoot() , "archive" ) ).openFile( entry ) );
+            fail( "Missing chunk not detected" );
+        }
+        catch( IOException e ) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void archiveSession_ofShortName_ignoresLeftoverTempFiles() throws Exception {
+        File session = new File( folder.getRoot() , "a" );
+        TestSessions.writeSession( session , 1451624400000L , 500 , 4L );
+        File archive = folder.newFolder( "archive" );
+        ChunkStore store = new ChunkStore( archive );
+        store.archiveSession( session );
+        int numChunks = store.getNumChunks();
+        long storedBytes = store.getStoredBytes();
+        assertEquals( Arrays.asList( "a" ) , store.getSessionNames() );
+
+        // A chunk write interrupted by a crash leaves its temp file
+        File chunkFolder = new File( archive , "chunks" ).listFiles()[0];
+        File.createTempFile( ChunkStore.TEMP_PREFIX + "00" , ChunkStore.TEMP_SUFFIX , chunkFolder );
+        assertEquals( numChunks , store.getNumChunks() );
+        assertEquals( storedBytes , store.getStoredBytes() );
+    }
+
+    @Test
+    public void openFile_readsHotChunksFromTheCache() throws Exception {
+        // An idle stretch: the same 32 byte line over and over (no cut points, so
+        //  max size chunks, all the same), that also deflates well
+        File session = folder.newFolder( "idle" );
+        PrintWriter out = new PrintWriter( new FileWriter( new File( session , "Light.txt" ) ) );
+        for( int i = 0 ; i < 50000 ; ++i ) {
+            out.print( "2016-01-01-9-00-00AM,0.0,3,1234\n" );
+        }
+        out.close();
+        ChunkStore store = new ChunkStore( folder.newFolder( "archive" ) , 1L << 20 );
+        store.archiveSession( session );
+        assertTrue( store.getStoredBytes() + " bytes stored" , store.getStoredBytes() * 50 < folderBytes( session ) );
+
+        byte[] data = readAll( store.openFile( "idle" , "Light.txt" ) );
+        assertArrayEquals( readFile( new File( session , "Light.txt" ) ) , data );
+        int numChunks = store.readManifest( "idle" ).get( 0 ).getNumChunks();
+        assertEquals( 2 , store.getNumChunks() );
+        assertEquals( store.getNumChunks() , store.getNumCacheMisses() );
+        assertEquals( numChunks - store.getNumChunks() , store.getNumCacheHits() );
+
+        // A cache too small for a chunk: every read goes to the chunk files
+        ChunkStore noCache = new ChunkStore( new File( folder.getRoot() , "archive" ) , 0L );
+        readAll( noCache.openFile( "idle" , "Light.txt" ) );
+        assertEquals( 0L , noCache.getNumCacheHits() );
+        assertEquals( numChunks , noCache.getNumCacheMisses() );
+    }
+}
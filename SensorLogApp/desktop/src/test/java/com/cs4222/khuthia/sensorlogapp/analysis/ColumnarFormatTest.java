@@ -0,0 +1,127 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the columnar export against the CSV logs (every value exact),
+ * column pruning and row group skipping (see LogScanBenchmark for the
+ * scan speed).
+ */
+public class ColumnarFormatTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Reads all the records of a log. */
+    private List< SensorRecord > readLog( File logFile , SensorLogType type ) throws IOException {
+        List< SensorRecord > records = new ArrayList< SensorRecord >();
+        SensorLogReader reader = new SensorLogReader( logFile , type , 4096 );
+        SensorRecord record;
+        while( ( record = reader.next() ) != null ) {
+            records.add( record );
+        }
+        reader.close();
+        return records;
+    }
+
+    @Test
+    public void export_roundTrip() throws Exception {
+        File session = new File( folder.getRoot() , "session" );
+        TestSessions.writeSession( session , 1451624400000L , 20000 , 1L );
+        // 10 sec row groups, so each log has several
+        List< File > files = new ColumnarWriter( 10000L , 65536 ).exportSession( session , folder.newFolder( "out" ) );
+        assertEquals( SensorLogType.values().length , files.size() );
+
+        // Xyz
+        List< SensorRecord > records = readLog( new File( session , "Accl.txt" ) , SensorLogType.ACCELEROMETER );
+        ColumnarReader reader = new ColumnarReader( files.get( SensorLogType.ACCELEROMETER.ordinal() ) );
+        assertEquals( SensorLogType.ACCELEROMETER , reader.getType() );
+        assertEquals( Arrays.asList( "time" , "x" , "y" , "z" , "accuracy" ) , reader.getColumnNames() );
+        assertTrue( reader.getNumRowGroups() > 1 );
+        ColumnarReader.Result result = reader.scan( new ColumnarReader.Query() );
+        assertEquals( records.size() , result.getNumRows() );
+        for( int row = 0 ; row < records.size() ; ++row ) {
+            SensorRecord.Xyz xyz = (SensorRecord.Xyz) records.get( row );
+            assertEquals( xyz.timestamp , result.getColumn( "time" ).getLong( row ) );
+            assertEquals( xyz.x , result.getColumn( "x" ).getFloat( row ) , 0.0F );
+            assertEquals( xyz.y , result.getColumn( "y" ).getFloat( row ) , 0.0F );
+            assertEquals( xyz.z , result.getColumn( "z" ).getFloat( row ) , 0.0F );
+            assertEquals( xyz.accuracy , result.getColumn( "accuracy" ).getInt( row ) );
+        }
+        reader.close();
+
+        // Location (doubles and a dictionary column)
+        records = readLog( new File( session , "Loc.txt" ) , SensorLogType.LOCATION );
+        reader = new ColumnarReader( files.get( SensorLogType.LOCATION.ordinal() ) );
+        result = reader.scan( new ColumnarReader.Query() );
+        assertEquals( records.size() , result.getNumRows() );
+        for( int row = 0 ; row < records.size() ; ++row ) {
+            SensorRecord.Location location = (SensorRecord.Location) records.get( row );
+            assertEquals( location.locationTime , result.getColumn( "locationTime" ).getLong( row ) );
+            assertEquals( location.provider , result.getColumn( "provider" ).getString( row ) );
+            assertEquals( location.latitude , result.getColumn( "latitude" ).getDouble( row ) , 0.0 );
+            assertEquals( location.longitude , result.getColumn( "longitude" ).getDouble( row ) , 0.0 );
+            assertEquals( location.bearing , result.getColumn( "bearing" ).getFloat( row ) , 0.0F );
+        }
+        reader.close();
+
+        // The columnar files are much smaller than the logs
+        long logBytes = 0L , columnarBytes = 0L;
+        for( SensorLogType type : SensorLogType.values() ) {
+            logBytes += new File( session , type.getFileName() ).length();
+        }
+        for( File file : files ) {
+            columnarBytes += file.length();
+        }
+        assertTrue( columnarBytes * 2 < logBytes );
+    }
+
+    @Test
+    public void scan_prunesColumnsAndRowGroups() throws Exception {
+        // Ground truth labels every 10 sec for an hour, cycling through 4 activities every 10 min
+        File logFile = folder.newFile( "GroundTruth.txt" );
+        PrintWriter out = new PrintWriter( new FileWriter( logFile ) );
+        String[] labels = { "WALKING" , "IDLE" , "RUNNING" , "IDLE" };
+        long startTime = 1451624400000L;
+        for( int i = 0 ; i < 360 ; ++i ) {
+            long time = startTime + i * 10000L;
+            out.println( "d," + time + ",d," + ( time - 5 ) + "," + labels[ ( i / 60 ) % labels.length ] );
+        }
+        out.close();
+        File file = folder.newFile( "GroundTruth.slc" );
+        new ColumnarWriter().writeLog( logFile , SensorLogType.GROUND_TRUTH , file );
+
+        ColumnarReader reader = new ColumnarReader( file );
+        assertEquals( 60 , reader.getNumRowGroups() );
+
+        // Label predicate: only the RUNNING groups (minutes 20 to 29) are read
+        ColumnarReader.Result result =
+            reader.scan( new ColumnarReader.Query().select( "time" ).where( "label" , "RUNNING" ) );
+        assertEquals( 60 , result.getNumRows() );
+        assertEquals( 10 , result.getNumRowGroupsScanned() );
+        assertEquals( 50 , result.getNumRowGroupsSkipped() );
+        assertEquals( startTime + 1200000L , result.getColumn( "time" ).getLong( 0 ) );
+
+        // Time range (partly covering 2 row groups), and a single column
+        result = reader.scan( new ColumnarReader.Query().select( "labelTime" )
+                              .timeRange( startTime + 90000L , startTime + 150000L ) );
+        assertEquals( 6 , result.getNumRows() );
+        assertEquals( 2 , result.getNumRowGroupsScanned() );
+        assertEquals( startTime + 90000L - 5 , result.getColumn( "labelTime" ).getLong( 0 ) );
+        try {
+            result.getColumn( "label" );
+            fail( "Column not selected" );
+        }
+        catch( IllegalArgumentException e ) {
+        }
+        assertTrue( result.getBytesRead() < file.length() / 10 );
+        reader.close();
+    }
+}
@@ -0,0 +1,173 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the forest training (on synthetic activities), that it does not
+ * depend on the thread count, the flat model file, the leave-one-session-out
+ * cross validation, and the confusion matrix stats.
+ */
+public class ForestTrainerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Classes of the synthetic data. */
+    private static final String[] CLASSES = { "BUS" , "IDLE_INDOOR" , "WALKING" };
+
+    /**
+     * Creates synthetic windows: feature 0 is the magnitude std (idle low,
+     * bus medium, walking high), feature 1 is noise, and feature 2 a period
+     * that only separates walking. A group per session.
+     */
+    private static TrainingSet syntheticSet( int numSessions , int rowsPerSession , long seed ) {
+        Random random = new Random( seed );
+        int numRows = numSessions * rowsPerSession;
+        float[][] columns = new float[3][ numRows ];
+        int[] labels = new int[ numRows ] , groups = new int[ numRows ];
+        String[] groupNames = new String[ numSessions ];
+        for( int row = 0 ; row < numRows ; ++row ) {
+            int label = random.nextInt( CLASSES.length );
+            float std = ( label == 1 ? 0.05F : label == 0 ? 0.8F : 2.5F );
+            columns[0][ row ] = std * ( 1.0F + 0.3F * (float) random.nextGaussian() );
+            columns[1][ row ] = random.nextFloat();
+            columns[2][ row ] = ( label == 2 ? 0.5F : 3.0F ) + 0.2F * (float) random.nextGaussian();
+            labels[ row ] = label;
+            groups[ row ] = row / rowsPerSession;
+            groupNames[ row / rowsPerSession ] = "session" + ( row / rowsPerSession );
+        }
+        return new TrainingSet( new String[] { "std" , "noise" , "period" } , CLASSES , groupNames ,
+                                columns , labels , groups );
+    }
+
+    /** Gets the accuracy of a model on a set. */
+    private static double accuracy( ForestModel model , TrainingSet data ) {
+        float[] features = new float[ data.getNumFeatures() ];
+        int correct = 0;
+        for( int row = 0 ; row < data.getNumRows() ; ++row ) {
+            data.getRow( row , features );
+            correct += ( model.predict( features ) == data.getLabel( row ) ? 1 : 0 );
+        }
+        return (double) correct / data.getNumRows();
+    }
+
+    /** Gets the predictions of a model on a set. */
+    private static int[] predictions( ForestModel model , TrainingSet data ) {
+        float[] features = new float[ data.getNumFeatures() ];
+        int[] predicted = new int[ data.getNumRows() ];
+        for( int row = 0 ; row < data.getNumRows() ; ++row ) {
+            data.getRow( row , features );
+            predicted[ row ] = model.predict( features );
+        }
+        return predicted;
+    }
+
+    @Test
+    public void train_learnsTheClasses() throws Exception {
+        TrainingSet train = syntheticSet( 4 , 500 , 1L ) , test = syntheticSet( 2 , 500 , 2L );
+
+        // A single tree, and a forest
+        ForestModel tree = new ForestTrainer().numTrees( 1 ).train( train );
+        assertEquals( 1 , tree.getNumTrees() );
+        assertTrue( accuracy( tree , test ) > 0.9 );
+        ForestModel forest = new ForestTrainer().numTrees( 16 ).featuresPerSplit( 1 ).seed( 7L ).train( train );
+        assertEquals( 16 , forest.getNumTrees() );
+        assertTrue( accuracy( forest , test ) > 0.9 );
+        assertEquals( CLASSES.length , forest.getClassNames().size() );
+
+        // A depth 0 tree predicts the most common class
+        ForestModel stump = new ForestTrainer().numTrees( 1 ).maxDepth( 0 ).train( train );
+        assertEquals( 1 , stump.getNumNodes() );
+    }
+
+    @Test
+    public void train_doesNotDependOnTheThreads() throws Exception {
+        TrainingSet train = syntheticSet( 3 , 400 , 3L ) , test = syntheticSet( 1 , 400 , 4L );
+        ForestTrainer trainer = new ForestTrainer().numTrees( 12 ).seed( 5L );
+        ForkJoinPool single = new ForkJoinPool( 1 ) , many = new ForkJoinPool( 4 );
+        ForestModel a = trainer.train( train , single ) , b = trainer.train( train , many );
+        single.shutdown();
+        many.shutdown();
+        assertEquals( a.getNumNodes() , b.getNumNodes() );
+        assertArrayEquals( predictions( a , test ) , predictions( b , test ) );
+    }
+
+    @Test
+    public void model_roundTripsThroughAFile() throws Exception {
+        TrainingSet train = syntheticSet( 2 , 300 , 6L ) , test = syntheticSet( 1 , 300 , 7L );
+        ForestModel model = new ForestTrainer().numTrees( 4 ).train( train );
+        File file = folder.newFile( "model.bin" );
+        model.writeFile( file );
+        ForestModel read = ForestModel.readFile( file );
+        assertEquals( model.getFeatureNames() , read.getFeatureNames() );
+        assertEquals( model.getNumNodes() , read.getNumNodes() );
+        assertArrayEquals( predictions( model , test ) , predictions( read , test ) );
+
+        // The probabilities are the mean leaf distribution
+        float[] probabilities = new float[ CLASSES.length ] , features = new float[3];
+        test.getRow( 0 , features );
+        int predicted = read.predict( features , probabilities );
+        float sum = 0.0F;
+        for( float p : probabilities ) {
+            assertTrue( p <= probabilities[ predicted ] );
+            sum += p;
+        }
+        assertEquals( 1.0F , sum , 1e-5F );
+
+        // A truncated file fails
+        byte[] bytes = new byte[ (int) file.length() / 2 ];
+        DataInputStream in = new DataInputStream( new FileInputStream( file ) );
+        in.readFully( bytes );
+        in.close();
+        try {
+            ForestModel.readFrom( new DataInputStream( new ByteArrayInputStream( bytes ) ) );
+            fail( "Truncated model not detected" );
+        }
+        catch( IOException e ) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void leaveOneSessionOut_scoresEverySession() throws Exception {
+        TrainingSet data = syntheticSet( 5 , 200 , 8L );
+        List< ConfusionMatrix > folds = new CrossValidator( new ForestTrainer().numTrees( 8 ) , 3 ).leaveOneSessionOut( data );
+        assertEquals( 5 , folds.size() );
+        ConfusionMatrix total = new ConfusionMatrix( data.getClassNames() );
+        for( ConfusionMatrix fold : folds ) {
+            assertEquals( 200L , fold.getTotal() );
+            total.merge( fold );
+        }
+        assertEquals( 1000L , total.getTotal() );
+        assertTrue( total.toString() , total.getAccuracy() > 0.9 );
+        for( int c = 0 ; c < CLASSES.length ; ++c ) {
+            assertTrue( total.getPrecision( c ) > 0.8 );
+            assertTrue( total.getRecall( c ) > 0.8 );
+        }
+        assertTrue( total.toString().contains( "WALKING" ) );
+    }
+
+    @Test
+    public void confusionMatrix_precisionAndRecall() {
+        ConfusionMatrix matrix = new ConfusionMatrix( Arrays.asList( "A" , "B" ) );
+        // 3 A: 2 right, 1 as B; 1 B: right
+        matrix.add( 0 , 0 );
+        matrix.add( 0 , 0 );
+        matrix.add( 0 , 1 );
+        matrix.add( 1 , 1 );
+        assertEquals( 0.75 , matrix.getAccuracy() , 1e-9 );
+        assertEquals( 1.0 , matrix.getPrecision( 0 ) , 1e-9 );
+        assertEquals( 2.0 / 3.0 , matrix.getRecall( 0 ) , 1e-9 );
+        assertEquals( 0.5 , matrix.getPrecision( 1 ) , 1e-9 );
+        assertEquals( 1.0 , matrix.getRecall( 1 ) , 1e-9 );
+        assertTrue( Double.isNaN( new ConfusionMatrix( Arrays.asList( "A" ) ).getPrecision( 0 ) ) );
+    }
+}
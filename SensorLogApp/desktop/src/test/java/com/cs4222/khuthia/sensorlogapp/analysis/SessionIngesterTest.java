@@ -0,0 +1,94 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the parallel ingestion finds the sessions, and gives the
+ * same result as parsing every file in a single thread.
+ */
+public class SessionIngesterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Writes a few sessions (and some folders that are not sessions). */
+    private File writeSessions( int numSessions , int numLines ) throws Exception {
+        File logFolder = folder.newFolder();
+        for( int i = 0 ; i < numSessions ; ++i ) {
+            TestSessions.writeSession( new File( logFolder , "session" + i ) ,
+                                       1451624400000L + i * 3600000L , numLines , i );
+        }
+        new File( logFolder , "empty" ).mkdirs();
+        new File( logFolder , "notes.txt" ).createNewFile();
+        return logFolder;
+    }
+
+    /** Checks that two column buffers hold the same records. */
+    private void assertSameRecords( ColumnBuffer expected , ColumnBuffer actual ) {
+        assertEquals( expected.size() , actual.size() );
+        for( int i = 0 ; i < expected.size() ; ++i ) {
+            assertEquals( expected.getTimestamps()[i] , actual.getTimestamps()[i] );
+            for( int column = 0 ; column < expected.getNumColumns() ; ++column ) {
+                assertEquals( expected.getColumn( column )[i] , actual.getColumn( column )[i] , 0.0 );
+            }
+        }
+    }
+
+    @Test
+    public void discoverSessions_findsOnlySessionFolders() throws Exception {
+        File logFolder = writeSessions( 3 , 10 );
+
+        List< File > sessions = SensorLogType.discoverSessions( logFolder );
+
+        assertEquals( 3 , sessions.size() );
+        assertEquals( "session0" , sessions.get( 0 ).getName() );
+        assertEquals( "session2" , sessions.get( 2 ).getName() );
+    }
+
+    @Test
+    public void parallelIngest_matchesSingleThreadedParse() throws Exception {
+        File logFolder = writeSessions( 3 , 2000 );
+
+        // Small split size, so that every file is split into several ranges
+        SessionIngester.Result result = new SessionIngester( 4 , 8 * 1024 ).ingest( logFolder );
+
+        assertEquals( 3 , result.getSessions().size() );
+        assertEquals( 3 * 2000 * SensorLogType.values().length , result.getNumRecords() );
+        assertEquals( 0L , result.getNumSkippedLines() );
+        assertTrue( result.getNumTasks() > 3 * SensorLogType.values().length );
+        for( SessionIngester.SessionData session : result.getSessions() ) {
+            for( SensorLogType type : SensorLogType.values() ) {
+                CsvLayout layout = CsvLayout.forSensorLog( type );
+                ColumnBuffer expected = new ColumnBuffer( layout.getNumValues() );
+                new MappedCsvParser( layout ).parse(
+                    new File( new File( logFolder , session.getName() ) , type.getFileName() ) , expected );
+                assertSameRecords( expected , session.getLog( type ) );
+            }
+        }
+    }
+
+    @Test
+    public void ingest_isIndependentOfTheParallelism() throws Exception {
+        File logFolder = writeSessions( 4 , 5000 );
+
+        SessionIngester.Result single = new SessionIngester( 1 , 16 * 1024 ).ingest( logFolder );
+        SessionIngester.Result parallel = new SessionIngester( 4 , 16 * 1024 ).ingest( logFolder );
+
+        assertEquals( single.getNumRecords() , parallel.getNumRecords() );
+        assertEquals( single.getNumBytes() , parallel.getNumBytes() );
+        assertEquals( single.getNumTasks() , parallel.getNumTasks() );
+        for( int i = 0 ; i < single.getSessions().size() ; ++i ) {
+            for( SensorLogType type : SensorLogType.values() ) {
+                assertSameRecords( single.getSessions().get( i ).getLog( type ) ,
+                                   parallel.getSessions().get( i ).getLog( type ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the session queries against a full scan of the columnar files,
+ * the session and row group skipping (by labels, time and summaries),
+ * and the CSV and binary output.
+ */
+public class SessionQueryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Start time of the test sessions. */
+    private static final long START_TIME = 1451624400000L;
+
+    /** Collects the rows as "session,time,magnitude" strings. */
+    private static class CollectingSink implements SessionQuery.RowSink {
+        final Set< String > rows = new TreeSet< String >();
+        boolean isFinished;
+
+        @Override
+        public void writeRows( String sessionName , List< ColumnVector > columns , int numRows ) {
+            for( int row = 0 ; row < numRows ; ++row ) {
+                rows.add( sessionName + "," + columns.get( 0 ).getLong( row ) + "," +
+                          magnitude( columns.get( 1 ) , columns.get( 2 ) , columns.get( 3 ) , row ) );
+            }
+        }
+
+        @Override
+        public void finish( List< String > columnNames ) {
+            assertEquals( Arrays.asList( "time" , "x" , "y" , "z" ) , columnNames );
+            isFinished = true;
+        }
+    }
+
+    /** Gets the magnitude of a row. */
+    private static double magnitude( ColumnVector x , ColumnVector y , ColumnVector z , int row ) {
+        double vx = x.getFloat( row ) , vy = y.getFloat( row ) , vz = z.getFloat( row );
+        return Math.sqrt( vx * vx + vy * vy + vz * vz );
+    }
+
+    /** Writes a session, with the given labels (label, start time offset) instead of its ground truth. */
+    private static void writeSession( File session , long startTime , long seed , Object... labels )
+        throws IOException {
+        TestSessions.writeSession( session , startTime , 5000 , seed );
+        PrintWriter out = new PrintWriter( new FileWriter( new File( session , "GroundTruth.txt" ) ) );
+        Random random = new Random( seed );
+        for( int i = 0 ; i < labels.length ; i += 2 ) {
+            // The label time is 5 ms before the logged time
+            long labelTime = startTime + (Long) labels[ i + 1 ];
+            out.println( TestSessions.line( SensorLogType.GROUND_TRUTH , labelTime + 5 , random )
+                         .replace( "WALKING" , (String) labels[i] ) );
+        }
+        out.close();
+    }
+
+    /** Writes the summary of a session's LinAccl log. */
+    private static void writeSummary( File session ) throws IOException {
+        SessionSummary summary = new SessionSummary();
+        SessionSummary.Channel channel = summary.addChannel( SensorLogType.LINEAR_ACCL , 3 );
+        SensorLogReader reader = new SensorLogReader( new File( session , "LinAccl.txt" ) ,
+                                                      SensorLogType.LINEAR_ACCL , 4096 );
+        SensorRecord record;
+        while( ( record = reader.next() ) != null ) {
+            SensorRecord.Xyz xyz = (SensorRecord.Xyz) record;
+            channel.add( xyz.timestamp , new float[] { xyz.x , xyz.y , xyz.z } , xyz.accuracy );
+        }
+        reader.close();
+        summary.writeFile( new File( session , SessionSummary.FILE_NAME ) );
+    }
+
+    /** Exports a session to the archive (5 sec row groups). */
+    private File export( File session ) throws IOException {
+        File archived = new File( new File( folder.getRoot() , "archive" ) , session.getName() );
+        new ColumnarWriter( 5000L , 1000 ).exportSession( session , archived );
+        return archived;
+    }
+
+    /** The expected rows: a full scan, filtered by the label intervals and the magnitude. */
+    private static Set< String > expectedRows( File archived , long startTime , long endTime ,
+                                               String label , double minMagnitude ) throws IOException {
+        // Label at each time
+        ColumnarReader groundTruth = new ColumnarReader( new File( archived , "GroundTruth.slc" ) );
+        ColumnarReader.Result labels = groundTruth.scan( new ColumnarReader.Query() );
+        groundTruth.close();
+
+        Set< String > rows = new TreeSet< String >();
+        ColumnarReader reader = new ColumnarReader( new File( archived , "LinAccl.slc" ) );
+        ColumnarReader.Result result = reader.scan( new ColumnarReader.Query() );
+        reader.close();
+        for( int row = 0 ; row < result.getNumRows() ; ++row ) {
+            long time = result.getColumn( "time" ).getLong( row );
+            String labelNow = null;
+            for( int i = 0 ; i < labels.getNumRows() ; ++i ) {
+                if( labels.getColumn( "labelTime" ).getLong( i ) <= time ) {
+                    labelNow = labels.getColumn( "label" ).getString( i );
+                }
+            }
+            double value = magnitude( result.getColumn( "x" ) , result.getColumn( "y" ) , result.getColumn( "z" ) , row );
+            if( time >= startTime && time < endTime && label.equals( labelNow ) && value > minMagnitude ) {
+                rows.add( archived.getName() + "," + time + "," + value );
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    public void run_matchesAFullScan() throws Exception {
+        // Walking, on a bus, and walking again (about 40 sec of LinAccl)
+        writeSession( new File( folder.getRoot() , "walk" ) , START_TIME , 1L ,
+                      "WALKING" , 0L , "BUS" , 10000L , "WALKING" , 22000L );
+        File walk = export( new File( folder.getRoot() , "walk" ) );
+        // No walking
+        writeSession( new File( folder.getRoot() , "bus" ) , START_TIME , 2L , "BUS" , 0L );
+        File bus = export( new File( folder.getRoot() , "bus" ) );
+        // Walking, but a day later
+        writeSession( new File( folder.getRoot() , "later" ) , START_TIME + 86400000L , 3L , "WALKING" , 0L );
+        File later = export( new File( folder.getRoot() , "later" ) );
+
+        long endTime = START_TIME + 3600000L;
+        CollectingSink sink = new CollectingSink();
+        SessionQuery.Stats stats =
+            new SessionQuery( SensorLogType.LINEAR_ACCL )
+            .select( "time" , "x" , "y" , "z" ).timeRange( START_TIME , endTime )
+            .label( "WALKING" ).where( "magnitude" , ">" , 12.0 )
+            .run( SessionQuery.findSessions( Arrays.asList( new File( folder.getRoot() , "archive" ) ) ) , sink , 3 );
+
+        Set< String > expected = expectedRows( walk , START_TIME , endTime , "WALKING" , 12.0 );
+        assertFalse( expected.isEmpty() );
+        assertEquals( expected , sink.rows );
+        assertTrue( sink.isFinished );
+        assertEquals( expected.size() , stats.getNumRows() );
+
+        // Only the walk's LinAccl file is read, and not all of it (the bus row groups)
+        assertEquals( 1 , stats.getNumSessionsScanned() );
+        assertEquals( 2 , stats.getNumSessionsSkipped() );
+        assertTrue( stats.toString() , stats.getNumRowGroupsSkipped() > 0 );
+        long channelBytes = 0L , groundTruthBytes = 0L;
+        for( File session : Arrays.asList( walk , bus , later ) ) {
+            channelBytes += new File( session , "LinAccl.slc" ).length();
+            groundTruthBytes += new File( session , "GroundTruth.slc" ).length();
+        }
+        assertEquals( channelBytes + groundTruthBytes , stats.getBytesScanned() + stats.getBytesSkipped() );
+        assertTrue( stats.toString() , stats.getBytesScanned() < groundTruthBytes + new File( walk , "LinAccl.slc" ).length() );
+    }
+
+    @Test
+    public void run_skipsSessionsBySummary() throws Exception {
+        // Moving, and idle (LinAccl near 0)
+        File moving = new File( folder.getRoot() , "moving" );
+        writeSession( moving , START_TIME , 1L , "WALKING" , 0L );
+        writeSummary( moving );
+        File idle = new File( folder.getRoot() , "idle" );
+        writeSession( idle , START_TIME , 2L , "WALKING" , 0L );
+        PrintWriter out = new PrintWriter( new FileWriter( new File( idle , "LinAccl.txt" ) ) );
+        Random random = new Random( 4L );
+        for( int i = 0 ; i < 5000 ; ++i ) {
+            out.println( TestSessions.line( SensorLogType.LINEAR_ACCL , START_TIME + i * 10L , random )
+                         .replaceAll( ",(-?)[0-9]\\." , ",$10.0" ) );
+        }
+        out.close();
+        writeSummary( idle );
+        File movingArchived = export( moving );
+        File idleArchived = export( idle );
+        assertTrue( new File( idleArchived , SessionSummary.FILE_NAME ).isFile() );
+        List< File > sessions = Arrays.asList( movingArchived , idleArchived );
+
+        // The idle session is skipped by its summary, without reading its LinAccl file
+        CollectingSink sink = new CollectingSink();
+        SessionQuery.Stats stats = new SessionQuery( SensorLogType.LINEAR_ACCL ).select( "time" , "x" , "y" , "z" )
+            .where( "magnitude" , ">" , 3.0 ).run( sessions , sink , 2 );
+        assertEquals( expectedRows( movingArchived , Long.MIN_VALUE , Long.MAX_VALUE , "WALKING" , 3.0 ) , sink.rows );
+        assertEquals( 1 , stats.getNumSessionsScanned() );
+        assertEquals( 1 , stats.getNumSessionsSkipped() );
+        long movingBytes = new File( movingArchived , "LinAccl.slc" ).length();
+        assertTrue( stats.getBytesScanned() > 0 && stats.getBytesScanned() < movingBytes );
+        assertEquals( movingBytes + new File( idleArchived , "LinAccl.slc" ).length() ,
+                      stats.getBytesScanned() + stats.getBytesSkipped() );
+
+        // A time range after both sessions: nothing is read
+        sink = new CollectingSink();
+        stats = new SessionQuery( SensorLogType.LINEAR_ACCL ).select( "time" , "x" , "y" , "z" )
+            .timeRange( START_TIME + 3600000L , Long.MAX_VALUE ).run( sessions , sink , 2 );
+        assertTrue( sink.rows.isEmpty() );
+        assertTrue( sink.isFinished );
+        assertEquals( 2 , stats.getNumSessionsSkipped() );
+        assertEquals( 0L , stats.getBytesScanned() );
+    }
+
+    @Test
+    public void sinks_writeTheRows() throws Exception {
+        writeSession( new File( folder.getRoot() , "walk" ) , START_TIME , 1L ,
+                      "WALKING" , 0L , "BUS" , 10000L );
+        List< File > sessions = Arrays.asList( export( new File( folder.getRoot() , "walk" ) ) );
+        SessionQuery query = new SessionQuery( SensorLogType.LINEAR_ACCL )
+            .select( "time" , "z" ).label( "BUS" ).where( "z" , "<=" , -5.0 );
+
+        // CSV: a header, and a line per row
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        SessionQuery.Stats stats = query.run( sessions , new SessionQuery.CsvSink( csv ) , 1 );
+        assertTrue( stats.getNumRows() > 0 );
+        BufferedReader in = new BufferedReader( new StringReader( csv.toString() ) );
+        assertEquals( "session,time,z" , in.readLine() );
+        String line;
+        int numLines = 0;
+        while( ( line = in.readLine() ) != null ) {
+            String[] fields = line.split( "," );
+            assertEquals( "walk" , fields[0] );
+            assertTrue( Long.parseLong( fields[1] ) >= START_TIME + 10000L - 5L );
+            assertTrue( Float.parseFloat( fields[2] ) <= -5.0F );
+            ++numLines;
+        }
+        assertEquals( stats.getNumRows() , numLines );
+
+        // Binary: the same rows
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        query.run( sessions , new SessionQuery.BinarySink( binary ) , 1 );
+        DataInputStream data = new DataInputStream( new ByteArrayInputStream( binary.toByteArray() ) );
+        assertEquals( SessionQuery.BinarySink.FILE_MAGIC , data.readInt() );
+        assertEquals( 2 , data.readInt() );
+        assertEquals( "time" , data.readUTF() );
+        assertEquals( 'L' , data.readByte() );
+        assertEquals( "z" , data.readUTF() );
+        assertEquals( 'F' , data.readByte() );
+        long numRows = 0L;
+        int batchRows;
+        while( ( batchRows = data.readInt() ) > 0 ) {
+            assertEquals( "walk" , data.readUTF() );
+            for( int row = 0 ; row < batchRows ; ++row ) {
+                assertTrue( data.readLong() >= START_TIME + 10000L - 5L );
+            }
+            for( int row = 0 ; row < batchRows ; ++row ) {
+                assertTrue( data.readFloat() <= -5.0F );
+            }
+            numRows += batchRows;
+        }
+        assertEquals( stats.getNumRows() , numRows );
+        assertEquals( -1 , data.read() );
+    }
+}
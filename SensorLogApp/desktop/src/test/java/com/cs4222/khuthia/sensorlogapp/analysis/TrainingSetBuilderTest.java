@@ -0,0 +1,164 @@
+package com.cs4222.khuthia.sensorlogapp.analysis;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the window labels and features against a direct computation,
+ * and that the feature cache is keyed by the session content and the
+ * feature config.
+ */
+public class TrainingSetBuilderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Start time of the test sessions. */
+    private static final long START_TIME = 1451624400000L;
+
+    /** Writes a session with LinAccl and Gyro every 20 ms for 20 sec, walking and then on a bus. */
+    private static void writeSession( File session , long seed ) throws IOException {
+        session.mkdirs();
+        Random random = new Random( seed );
+        for( SensorLogType type : Arrays.asList( SensorLogType.LINEAR_ACCL , SensorLogType.GYROSCOPE ) ) {
+            PrintWriter out = new PrintWriter( new FileWriter( new File( session , type.getFileName() ) ) );
+            for( long time = START_TIME ; time < START_TIME + 20000L ; time += 20L ) {
+                out.println( TestSessions.line( type , time , random ) );
+            }
+            out.close();
+        }
+        PrintWriter out = new PrintWriter( new FileWriter( new File( session , "GroundTruth.txt" ) ) );
+        out.println( TestSessions.line( SensorLogType.GROUND_TRUTH , START_TIME + 5L , random ) );
+        out.println( TestSessions.line( SensorLogType.GROUND_TRUTH , START_TIME + 10005L , random )
+                     .replace( "WALKING" , "BUS" ) );
+        out.close();
+    }
+
+    /** Writes the windows as CSV. */
+    private static String toCsv( List< TrainingSetBuilder.SessionWindows > sessions ) throws IOException {
+        StringWriter out = new StringWriter();
+        TrainingSetBuilder.writeCsv( sessions , out );
+        return out.toString();
+    }
+
+    @Test
+    public void buildSession_labelsAndFeatures() throws Exception {
+        File session = new File( folder.getRoot() , "session" );
+        writeSession( session , 1L );
+        TrainingSetBuilder.Config config = new TrainingSetBuilder.Config().window( 2000L , 1000L );
+        TrainingSetBuilder.SessionWindows windows = new TrainingSetBuilder( config , null , 1 ).buildSession( session );
+        assertEquals( 2 * 4 * TrainingSetBuilder.Feature.values().length , windows.getNumFeatures() );
+        assertEquals( "LINEAR_ACCL.x.MEAN" , windows.getFeatureNames().get( 0 ) );
+        assertTrue( windows.getFeatureNames().contains( "GYROSCOPE.magnitude.STD" ) );
+
+        // Windows on the 1 sec grid, inside a single label (not across the change at 10 sec),
+        //  and ending by the last reading (at 19.98 sec)
+        List< SensorRecord > records = new ArrayList< SensorRecord >();
+        SensorLogReader reader = new SensorLogReader( new File( session , "LinAccl.txt" ) , SensorLogType.LINEAR_ACCL , 4096 );
+        SensorRecord record;
+        while( ( record = reader.next() ) != null ) {
+            records.add( record );
+        }
+        reader.close();
+        int numWindows = 0;
+        for( long start = ( START_TIME + 999L ) / 1000L * 1000L ; start + 2000L <= START_TIME + 19981L ; start += 1000L ) {
+            if( start < START_TIME + 10000L && start + 2000L > START_TIME + 10000L ) {
+                continue;
+            }
+            assertEquals( start , windows.getStartTime( numWindows ) );
+            assertEquals( start < START_TIME + 10000L ? "WALKING" : "BUS" , windows.getLabel( numWindows ) );
+
+            // x mean, magnitude max
+            double sum = 0.0 , maxMagnitude = 0.0;
+            int n = 0;
+            for( SensorRecord r : records ) {
+                SensorRecord.Xyz xyz = (SensorRecord.Xyz) r;
+                if( xyz.timestamp >= start && xyz.timestamp < start + 2000L ) {
+                    sum += xyz.x;
+                    maxMagnitude = Math.max( maxMagnitude , Math.sqrt( xyz.x * xyz.x + xyz.y * xyz.y + xyz.z * xyz.z ) );
+                    ++n;
+                }
+            }
+            assertEquals( 100 , n );
+            assertEquals( sum / n , windows.getFeature( numWindows , 0 ) , 1e-4 );
+            int maxIndex = windows.getFeatureNames().indexOf( "LINEAR_ACCL.magnitude.MAX" );
+            assertEquals( maxMagnitude , windows.getFeature( numWindows , maxIndex ) , 1e-4 );
+            ++numWindows;
+        }
+        assertEquals( numWindows , windows.getNumWindows() );
+    }
+
+    @Test
+    public void buildSession_skipsNonActivityLabels() throws Exception {
+        File session = new File( folder.getRoot() , "session" );
+        writeSession( session , 1L );
+
+        // The bus part was marked as wrongly labelled
+        PrintWriter out = new PrintWriter( new FileWriter( new File( session , "GroundTruth.txt" ) , true ) );
+        out.println( TestSessions.line( SensorLogType.GROUND_TRUTH , START_TIME + 15005L , new Random( 2L ) )
+                     .replace( "WALKING" , "INCORRECT" ) );
+        out.close();
+        TrainingSetBuilder.Config config = new TrainingSetBuilder.Config().window( 2000L , 1000L );
+        TrainingSetBuilder.SessionWindows windows = new TrainingSetBuilder( config , null , 1 ).buildSession( session );
+
+        assertTrue( windows.getNumWindows() > 0 );
+        for( int i = 0 ; i < windows.getNumWindows() ; ++i ) {
+            assertNotEquals( "INCORRECT" , windows.getLabel( i ) );
+            assertTrue( windows.getStartTime( i ) + 2000L <= START_TIME + 15000L );
+        }
+    }
+
+    @Test
+    public void build_cachesBySessionAndConfig() throws Exception {
+        List< File > sessions = new ArrayList< File >();
+        for( int i = 0 ; i < 3 ; ++i ) {
+            File session = new File( folder.getRoot() , "session" + i );
+            writeSession( session , i );
+            sessions.add( session );
+        }
+        File cacheFolder = new File( folder.getRoot() , "cache" );
+        TrainingSetBuilder.Config config = new TrainingSetBuilder.Config();
+
+        // First run: all computed
+        TrainingSetBuilder builder = new TrainingSetBuilder( config , cacheFolder , 3 );
+        String csv = toCsv( builder.build( sessions ) );
+        assertEquals( 0 , builder.getNumCacheHits() );
+        assertEquals( 3 , builder.getNumCacheMisses() );
+        assertEquals( toCsv( new TrainingSetBuilder( config , null , 1 ).build( sessions ) ) , csv );
+
+        // Same config: all cached, the same windows
+        builder = new TrainingSetBuilder( new TrainingSetBuilder.Config() , cacheFolder , 2 );
+        assertEquals( csv , toCsv( builder.build( sessions ) ) );
+        assertEquals( 3 , builder.getNumCacheHits() );
+
+        // Another config: computed again
+        builder = new TrainingSetBuilder( new TrainingSetBuilder.Config().features( TrainingSetBuilder.Feature.MEAN ) ,
+                                          cacheFolder , 2 );
+        builder.build( sessions );
+        assertEquals( 3 , builder.getNumCacheMisses() );
+
+        // A changed session: only that one computed again
+        PrintWriter out = new PrintWriter( new FileWriter( new File( sessions.get( 1 ) , "Gyro.txt" ) , true ) );
+        out.println( TestSessions.line( SensorLogType.GYROSCOPE , START_TIME + 20000L , new Random( 5L ) ) );
+        out.close();
+        builder = new TrainingSetBuilder( config , cacheFolder , 2 );
+        builder.build( sessions );
+        assertEquals( 2 , builder.getNumCacheHits() );
+        assertEquals( 1 , builder.getNumCacheMisses() );
+
+        // A corrupt cache file is computed again
+        for( File file : cacheFolder.listFiles() ) {
+            new FileOutputStream( file ).close();
+        }
+        builder = new TrainingSetBuilder( config , cacheFolder , 2 );
+        String rebuilt = toCsv( builder.build( sessions ) );
+        assertEquals( 3 , builder.getNumCacheMisses() );
+        assertEquals( toCsv( new TrainingSetBuilder( config , null , 1 ).build( sessions ) ) , rebuilt );
+    }
+}
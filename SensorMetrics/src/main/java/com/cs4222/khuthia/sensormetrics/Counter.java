@@ -0,0 +1,69 @@
+package com.cs4222.khuthia.sensormetrics;
+
+import java.util.concurrent.atomic.*;
+
+/**
+   A counter that many threads can increment without contending (like
+   Java 8's {@code LongAdder}, which Android does not have): the count is
+   split into stripes, each on its own cache line, and a thread adds to
+   the stripe of its id. Reading sums the stripes.
+
+   <p> When the registry is disabled, an increment is a volatile read
+   and a branch.
+ */
+public class Counter {
+
+    /** Creates a counter (see {@link MetricsRegistry#counter}). */
+    Counter( String name ,
+             MetricsRegistry registry ) {
+        this.name = name;
+        this.registry = registry;
+    }
+
+    /** Adds one. */
+    public void increment() {
+        add( 1L );
+    }
+
+    /** Adds to the count. */
+    public void add( long delta ) {
+        if( ! registry.isEnabled() ) {
+            return;
+        }
+        cells.getAndAdd( stripeOf( Thread.currentThread() ) , delta );
+    }
+
+    /** Gets the count (the sum of the stripes, which may miss concurrent adds). */
+    public long get() {
+        long count = 0L;
+        for( int stripe = 0 ; stripe < NUM_STRIPES ; ++stripe ) {
+            count += cells.get( stripe * STRIDE );
+        }
+        return count;
+    }
+
+    /** Gets the name. */
+    public String getName() {
+        return name;
+    }
+
+    /** Helper method that gets the cell of a thread's stripe. */
+    static int stripeOf( Thread thread ) {
+        long id = thread.getId();
+        // Mix the id, since thread ids are sequential
+        int hash = (int) ( id ^ ( id >>> 32 ) ) * 0x9E3779B9;
+        return ( ( hash >>> 16 ) & ( NUM_STRIPES - 1 ) ) * STRIDE;
+    }
+
+    /** Name. */
+    private final String name;
+    /** Registry (which enables the counter). */
+    private final MetricsRegistry registry;
+    /** Stripes (cell stripe * STRIDE, the rest of each line is padding). */
+    private final AtomicLongArray cells = new AtomicLongArray( NUM_STRIPES * STRIDE );
+
+    /** Number of stripes (a power of 2). */
+    static final int NUM_STRIPES = 8;
+    /** Cells between two stripes (64 bytes, a cache line). */
+    static final int STRIDE = 8;
+}
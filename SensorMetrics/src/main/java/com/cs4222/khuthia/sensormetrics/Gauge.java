@@ -0,0 +1,11 @@
+package com.cs4222.khuthia.sensormetrics;
+
+/**
+   A value read when a snapshot is taken (e.g. a queue length), so
+   it costs nothing on the hot path.
+ */
+public interface Gauge {
+
+    /** Gets the current value (called from the reporter's thread). */
+    double getValue();
+}
@@ -0,0 +1,102 @@
+package com.cs4222.khuthia.sensormetrics;
+
+import java.util.concurrent.atomic.*;
+
+/**
+   A latency timer with fixed buckets: bucket i counts the durations of
+   at most 2^i microsec (the last bucket also counts the longer ones),
+   so recording is a couple of atomic adds, with no allocation, and the
+   percentiles are read from the buckets (within a factor of 2).
+
+   <p> Usage, on a hot path:
+   <pre>
+     long startNanos = timer.start();
+     ...
+     timer.stop( startNanos );
+   </pre>
+   When the registry is disabled, {@code start()} does not read the
+   clock, and {@code stop()} does nothing.
+ */
+public class LatencyTimer {
+
+    /** Creates a timer (see {@link MetricsRegistry#timer}). */
+    LatencyTimer( String name ,
+           MetricsRegistry registry ) {
+        this.name = name;
+        this.registry = registry;
+    }
+
+    /** Starts timing (returns 0 if the registry is disabled). */
+    public long start() {
+        return ( registry.isEnabled() ? System.nanoTime() : 0L );
+    }
+
+    /** Stops timing, and records the duration since the start. */
+    public void stop( long startNanos ) {
+        if( startNanos == 0L || ! registry.isEnabled() ) {
+            return;
+        }
+        record( System.nanoTime() - startNanos );
+    }
+
+    /** Records a duration (nanosec). */
+    public void record( long nanos ) {
+        if( ! registry.isEnabled() ) {
+            return;
+        }
+        buckets.getAndIncrement( bucketOf( nanos ) );
+        totalNanos.getAndAdd( nanos );
+    }
+
+    /** Gets the name. */
+    public String getName() {
+        return name;
+    }
+
+    /** Gets the number of durations recorded. */
+    public long getCount() {
+        long count = 0L;
+        for( int i = 0 ; i < NUM_BUCKETS ; ++i ) {
+            count += buckets.get( i );
+        }
+        return count;
+    }
+
+    /** Gets the total of the durations recorded (nanosec). */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /** Gets the number of durations in a bucket. */
+    public long getBucketCount( int bucket ) {
+        return buckets.get( bucket );
+    }
+
+    /** Gets the upper bound of a bucket (microsec). */
+    public static long getBucketBound( int bucket ) {
+        return 1L << bucket;
+    }
+
+    /** Helper method that gets the bucket of a duration. */
+    static int bucketOf( long nanos ) {
+        long micros = ( nanos + 999L ) / 1000L;
+        if( micros <= 1L ) {
+            return 0;
+        }
+        // Smallest i with micros <= 2^i
+        int bucket = 64 - Long.numberOfLeadingZeros( micros - 1L );
+        return Math.min( bucket , NUM_BUCKETS - 1 );
+    }
+
+    /** Name. */
+    private final String name;
+    /** Registry (which enables the timer). */
+    private final MetricsRegistry registry;
+    /** Count of each bucket. */
+    private final AtomicLongArray buckets = new AtomicLongArray( NUM_BUCKETS );
+    /** Total of the durations (nanosec). */
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /** Number of buckets (up to 2^23 microsec, about 8 sec). */
+    public static final int NUM_BUCKETS = 24;
+}
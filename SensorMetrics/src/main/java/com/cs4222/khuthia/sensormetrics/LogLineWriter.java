@@ -0,0 +1,138 @@
+package com.cs4222.khuthia.sensormetrics;
+
+import java.io.*;
+import java.text.*;
+import java.util.*;
+
+/**
+   Formats and writes the apps' CSV log lines without allocating per
+   line, so logging a reading adds no garbage to a sensor callback.
+
+   <p> The human-readable time is in the logs' format
+   ({@code yyyy-MM-dd-h-mm-ssa}, e.g. "2016-01-17-2-05-09PM", in the
+   default time zone), formatted once a second into a re-used buffer.
+   A line is encoded into re-used bytes, and written to the stream in
+   one call (a Writer wraps its chars in a new buffer per flush).
+
+   <p> Usage, on a hot path:
+   <pre>
+     sb.setLength( 0 );
+     logWriter.appendHumanReadableTime( sb , timestamp ).append( ',' ).append( value );
+     logWriter.writeLine( sb , logFileOut );
+   </pre>
+   A writer is not thread-safe: use one per logging thread.
+ */
+public class LogLineWriter {
+
+    /** Creates a writer (for the default time zone and locale). */
+    public LogLineWriter() {
+        timeZone = TimeZone.getDefault();
+        amPmStrings = new DateFormatSymbols().getAmPmStrings();
+    }
+
+    /** Appends the human-readable time of a UNIX time (millisec), and returns the builder. */
+    public StringBuilder appendHumanReadableTime( StringBuilder sb ,
+                                                  long unixTime ) {
+        long second = floorDiv( unixTime , 1000L );
+        if( second != formattedSecond ) {
+            formattedSecond = second;
+            formatTime( unixTime );
+        }
+        return sb.append( formattedTime );
+    }
+
+    /**
+       Writes a line (and a newline) to a stream.
+
+       @throws  IOException  If the stream could not be written
+     */
+    public void writeLine( CharSequence line ,
+                           OutputStream out )
+        throws IOException {
+
+        // The lines are ASCII, but for a string value (e.g. a provider name)
+        int length = line.length();
+        if( lineBytes.length < length + 1 ) {
+            lineBytes = new byte[ Math.max( length + 1 , lineBytes.length * 2 ) ];
+        }
+        byte[] bytes = lineBytes;
+        for( int i = 0 ; i < length ; ++i ) {
+            char c = line.charAt( i );
+            if( c >= 0x80 ) {
+                // Not ASCII, encode the whole line
+                bytes = line.toString().getBytes( "UTF-8" );
+                bytes = Arrays.copyOf( bytes , bytes.length + 1 );
+                length = bytes.length - 1;
+                break;
+            }
+            bytes[i] = (byte) c;
+        }
+        bytes[ length ] = '\n';
+        out.write( bytes , 0 , length + 1 );
+    }
+
+    /**
+       Helper method that formats the time (as SimpleDateFormat's
+       "yyyy-MM-dd-h-mm-ssa"). The date is computed from the day number
+       (Hinnant's civil_from_days, proleptic Gregorian), since a Calendar
+       allocates while computing its fields.
+     */
+    private void formatTime( long unixTime ) {
+
+        // Local day, and time of the day (sec)
+        long localTime = unixTime + timeZone.getOffset( unixTime );
+        long days = floorDiv( localTime , MILLIS_PER_DAY );
+        int secondOfDay = (int) ( ( localTime - days * MILLIS_PER_DAY ) / 1000L );
+
+        // Year, month and day of the month (in 400 year eras, from March 1st)
+        long shiftedDays = days + 719468L;
+        long era = floorDiv( shiftedDays , 146097L );
+        long dayOfEra = shiftedDays - era * 146097L;
+        long yearOfEra = ( dayOfEra - dayOfEra / 1460L + dayOfEra / 36524L - dayOfEra / 146096L ) / 365L;
+        long dayOfYear = dayOfEra - ( 365L * yearOfEra + yearOfEra / 4L - yearOfEra / 100L );
+        long shiftedMonth = ( 5L * dayOfYear + 2L ) / 153L;
+        int day = (int) ( dayOfYear - ( 153L * shiftedMonth + 2L ) / 5L + 1L );
+        int month = (int) ( shiftedMonth < 10L ? shiftedMonth + 3L : shiftedMonth - 9L );
+        long year = yearOfEra + era * 400L + ( month <= 2 ? 1L : 0L );
+
+        StringBuilder sb = formattedTime;
+        sb.setLength( 0 );
+        sb.append( year ).append( '-' );
+        appendTwoDigits( sb , month ).append( '-' );
+        appendTwoDigits( sb , day ).append( '-' );
+        int hour = secondOfDay / 3600;
+        sb.append( hour % 12 == 0 ? 12 : hour % 12 ).append( '-' );
+        appendTwoDigits( sb , secondOfDay / 60 % 60 ).append( '-' );
+        appendTwoDigits( sb , secondOfDay % 60 );
+        sb.append( amPmStrings[ hour < 12 ? 0 : 1 ] );
+    }
+
+    /** Helper method that divides, rounding down (Math.floorDiv is Java 8). */
+    private static long floorDiv( long x ,
+                                  long y ) {
+        long quotient = x / y;
+        return ( ( x % y != 0 ) && ( ( x < 0 ) != ( y < 0 ) ) ? quotient - 1 : quotient );
+    }
+
+    /** Helper method that appends a number with at least two digits. */
+    private static StringBuilder appendTwoDigits( StringBuilder sb ,
+                                                  int value ) {
+        if( value < 10 ) {
+            sb.append( '0' );
+        }
+        return sb.append( value );
+    }
+
+    /** Time zone of the times. */
+    private final TimeZone timeZone;
+    /** AM and PM markers. */
+    private final String[] amPmStrings;
+    /** Human-readable time last formatted, and its UNIX time (sec). */
+    private final StringBuilder formattedTime = new StringBuilder();
+    private long formattedSecond = Long.MIN_VALUE;
+    /** Bytes of the line written (re-used). */
+    private byte[] lineBytes = new byte[ 128 ];
+
+    /** Millisec in a day. */
+    private static final long MILLIS_PER_DAY = 86400000L;
+}
@@ -0,0 +1,114 @@
+package com.cs4222.khuthia.sensormetrics;
+
+import java.util.*;
+
+/**
+   Registry of an app's runtime metrics: counters, gauges and latency
+   timers, by name (e.g. "sensor.callback").
+
+   <p> The hot paths look up their metrics once (e.g. in a static field),
+   and then only touch them, with no lookup, lock or allocation. The
+   whole registry can be disabled, which makes every metric a volatile
+   read and a branch. A {@link MetricsReporter} exports snapshots
+   periodically.
+ */
+public class MetricsRegistry {
+
+    /** Creates an (enabled) registry. */
+    public MetricsRegistry() {
+    }
+
+    /** Gets the app's registry (shared by its activities and services). */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /** Gets the counter of a name (created if required). */
+    public synchronized Counter counter( String name ) {
+        Counter counter = counters.get( name );
+        if( counter == null ) {
+            checkName( name );
+            counter = new Counter( name , this );
+            counters.put( name , counter );
+        }
+        return counter;
+    }
+
+    /** Gets the timer of a name (created if required). */
+    public synchronized LatencyTimer timer( String name ) {
+        LatencyTimer timer = timers.get( name );
+        if( timer == null ) {
+            checkName( name );
+            timer = new LatencyTimer( name , this );
+            timers.put( name , timer );
+        }
+        return timer;
+    }
+
+    /** Sets the gauge of a name (replacing any previous one). */
+    public synchronized void gauge( String name ,
+                                    Gauge gauge ) {
+        if( ! gauges.containsKey( name ) ) {
+            checkName( name );
+        }
+        gauges.put( name , gauge );
+    }
+
+    /** Enables or disables all the metrics (a disabled metric ignores updates). */
+    public void setEnabled( boolean isEnabled ) {
+        this.isEnabled = isEnabled;
+    }
+
+    /** Checks if the metrics are enabled. */
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /** Takes a snapshot of all the metrics (sorted by name). */
+    public synchronized MetricsSnapshot snapshot() {
+        MetricsSnapshot snapshot = new MetricsSnapshot( System.currentTimeMillis() );
+        SortedSet< String > names = new TreeSet< String >();
+        names.addAll( counters.keySet() );
+        names.addAll( timers.keySet() );
+        names.addAll( gauges.keySet() );
+        for( String name : names ) {
+            Counter counter = counters.get( name );
+            LatencyTimer timer = timers.get( name );
+            if( counter != null ) {
+                snapshot.addCounter( name , counter.get() );
+            }
+            else if( timer != null ) {
+                snapshot.addTimer( timer );
+            }
+            else {
+                double value;
+                try {
+                    value = gauges.get( name ).getValue();
+                }
+                catch( RuntimeException e ) {
+                    // A failing gauge must not break the export
+                    value = Double.NaN;
+                }
+                snapshot.addGauge( name , value );
+            }
+        }
+        return snapshot;
+    }
+
+    /** Helper method that checks that a name is new (across all the metric types). */
+    private void checkName( String name ) {
+        if( counters.containsKey( name ) || timers.containsKey( name ) || gauges.containsKey( name ) ) {
+            throw new IllegalArgumentException( "Metric " + name + " is already of another type" );
+        }
+    }
+
+    /** Metrics by name. */
+    private final Map< String , Counter > counters = new HashMap< String , Counter >();
+    private final Map< String , LatencyTimer > timers = new HashMap< String , LatencyTimer >();
+    private final Map< String , Gauge > gauges = new HashMap< String , Gauge >();
+    /** Flag to indicate that the metrics are updated. */
+    private volatile boolean isEnabled = true;
+
+    /** The app's registry. */
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+}
@@ -0,0 +1,133 @@
+package com.cs4222.khuthia.sensormetrics;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+   Exports snapshots of a registry periodically, on its own (daemon)
+   thread: appended to a metrics file as CSV (see {@link MetricsSnapshot}),
+   and passed to a listener (e.g. to show them on a real-time display).
+   The file and the listener can be changed while it runs (e.g. a new
+   file per logging session).
+ */
+public class MetricsReporter {
+
+    /**
+       Creates a reporter.
+
+       @param  periodMillis  Time between two snapshots (millisec)
+     */
+    public MetricsReporter( MetricsRegistry registry ,
+                            long periodMillis ) {
+        if( periodMillis <= 0 ) {
+            throw new IllegalArgumentException( "Invalid period " + periodMillis );
+        }
+        this.registry = registry;
+        this.periodMillis = periodMillis;
+    }
+
+    /** Listener for the snapshots. */
+    public static interface Listener {
+
+        /** Called (in the reporter's thread) with every snapshot. */
+        public void onSnapshot( MetricsSnapshot snapshot );
+    }
+
+    /** Sets the listener (null for none). */
+    public void setListener( Listener listener ) {
+        this.listener = listener;
+    }
+
+    /**
+       Sets the metrics file the snapshots are appended to (null to stop
+       writing). A new file starts with the CSV header.
+     */
+    public synchronized void setFile( File file )
+        throws IOException {
+
+        // Close the previous file
+        if( fileOut != null ) {
+            fileOut.close();
+            fileOut = null;
+        }
+
+        // Open the new one (appending)
+        if( file != null ) {
+            boolean isNew = ! file.exists() || file.length() == 0L;
+            fileOut = new PrintWriter( new BufferedWriter( new FileWriter( file , true ) ) );
+            if( isNew ) {
+                fileOut.println( MetricsSnapshot.CSV_HEADER );
+                fileOut.flush();
+            }
+        }
+    }
+
+    /** Starts the periodic export (if not already started). */
+    public synchronized void start() {
+        if( executor != null ) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+                @Override
+                public Thread newThread( Runnable runnable ) {
+                    Thread thread = new Thread( runnable , "MetricsReporter" );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        executor.scheduleAtFixedRate( new Runnable() {
+                @Override
+                public void run() {
+                    report();
+                }
+            } , periodMillis , periodMillis , TimeUnit.MILLISECONDS );
+    }
+
+    /** Stops the periodic export, exports a last snapshot, and closes the file. */
+    public void stop() {
+        synchronized( this ) {
+            if( executor == null ) {
+                return;
+            }
+            executor.shutdownNow();
+            executor = null;
+        }
+        report();
+        try {
+            setFile( null );
+        }
+        catch( IOException e ) {
+            // Nothing more to do
+        }
+    }
+
+    /** Exports a snapshot now. */
+    public void report() {
+
+        // Take the snapshot, and append it to the file
+        MetricsSnapshot snapshot = registry.snapshot();
+        synchronized( this ) {
+            if( fileOut != null ) {
+                snapshot.writeCsv( fileOut );
+                fileOut.flush();
+            }
+        }
+
+        // Pass it to the listener (outside the lock)
+        Listener listener = this.listener;
+        if( listener != null ) {
+            listener.onSnapshot( snapshot );
+        }
+    }
+
+    /** Registry exported. */
+    private final MetricsRegistry registry;
+    /** Time between two snapshots (millisec). */
+    private final long periodMillis;
+    /** Listener (null if none). */
+    private volatile Listener listener = null;
+    /** Metrics file's output stream (null if none). */
+    private PrintWriter fileOut = null;
+    /** Export thread (null if stopped). */
+    private ScheduledExecutorService executor = null;
+}
@@ -0,0 +1,165 @@
+package com.cs4222.khuthia.sensormetrics;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   The values of all the metrics of a registry at a point in time
+   (see {@link MetricsRegistry#snapshot}).
+
+   <p> A counter has its count, a gauge its value, and a timer its
+   count, mean, median and 99th percentile (microsec, the percentiles
+   are bucket bounds). The CSV lines are
+   {@code time,name,type,count,value,p50,p99}.
+ */
+public class MetricsSnapshot {
+
+    /** Creates an empty snapshot. */
+    MetricsSnapshot( long time ) {
+        this.time = time;
+    }
+
+    /** Gets the time of the snapshot (UNIX millis). */
+    public long getTime() {
+        return time;
+    }
+
+    /** Gets the entries (sorted by name). */
+    public List< Entry > getEntries() {
+        return Collections.unmodifiableList( entries );
+    }
+
+    /** Gets the entry of a name (null if none). */
+    public Entry getEntry( String name ) {
+        for( Entry entry : entries ) {
+            if( entry.name.equals( name ) ) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /** Writes the snapshot as CSV lines (see the class comment). */
+    public void writeCsv( PrintWriter out ) {
+        for( Entry entry : entries ) {
+            out.print( time );
+            out.print( ',' );
+            out.print( entry.name );
+            out.print( ',' );
+            out.print( entry.type );
+            out.print( ',' );
+            out.print( entry.count );
+            out.print( ',' );
+            out.print( entry.value );
+            out.print( ',' );
+            out.print( entry.p50 );
+            out.print( ',' );
+            out.println( entry.p99 );
+        }
+    }
+
+    /** Formats the snapshot for a display (a line per metric). */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        for( Entry entry : entries ) {
+            sb.append( entry.name ).append( ": " );
+            if( entry.type.equals( TYPE_COUNTER ) ) {
+                sb.append( entry.count );
+            }
+            else if( entry.type.equals( TYPE_GAUGE ) ) {
+                sb.append( (float) entry.value );
+            }
+            else {
+                sb.append( entry.count ).append( " x " ).append( Math.round( entry.value ) )
+                    .append( " us (p50 " ).append( entry.p50 ).append( " , p99 " ).append( entry.p99 ).append( ")" );
+            }
+            sb.append( '\n' );
+        }
+        return sb.toString();
+    }
+
+    /** Helper method that adds a counter. */
+    void addCounter( String name ,
+                     long count ) {
+        entries.add( new Entry( name , TYPE_COUNTER , count , count , 0L , 0L ) );
+    }
+
+    /** Helper method that adds a gauge. */
+    void addGauge( String name ,
+                   double value ) {
+        entries.add( new Entry( name , TYPE_GAUGE , 0L , value , 0L , 0L ) );
+    }
+
+    /** Helper method that adds a timer (reading its buckets once). */
+    void addTimer( LatencyTimer timer ) {
+        long[] counts = new long[ LatencyTimer.NUM_BUCKETS ];
+        long count = 0L;
+        for( int i = 0 ; i < counts.length ; ++i ) {
+            counts[i] = timer.getBucketCount( i );
+            count += counts[i];
+        }
+        double meanMicros = ( count == 0L ? 0.0 : timer.getTotalNanos() / 1000.0 / count );
+        entries.add( new Entry( timer.getName() , TYPE_TIMER , count , meanMicros ,
+                                percentile( counts , count , 0.5 ) , percentile( counts , count , 0.99 ) ) );
+    }
+
+    /** Helper method that gets the bucket bound of a percentile (microsec, 0 if empty). */
+    private static long percentile( long[] counts ,
+                                    long count ,
+                                    double fraction ) {
+        if( count == 0L ) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil( fraction * count );
+        long seen = 0L;
+        for( int i = 0 ; i < counts.length ; ++i ) {
+            seen += counts[i];
+            if( seen >= rank ) {
+                return LatencyTimer.getBucketBound( i );
+            }
+        }
+        return LatencyTimer.getBucketBound( counts.length - 1 );
+    }
+
+    /** A metric's values. */
+    public static class Entry {
+
+        /** Creates an entry. */
+        Entry( String name ,
+               String type ,
+               long count ,
+               double value ,
+               long p50 ,
+               long p99 ) {
+            this.name = name;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+            this.p50 = p50;
+            this.p99 = p99;
+        }
+
+        /** Name. */
+        public final String name;
+        /** Type ({@link #TYPE_COUNTER}, {@link #TYPE_GAUGE} or {@link #TYPE_TIMER}). */
+        public final String type;
+        /** Count (of a counter or timer). */
+        public final long count;
+        /** Value (of a gauge), or mean duration (of a timer, microsec). */
+        public final double value;
+        /** Median and 99th percentile durations (of a timer, microsec bucket bounds). */
+        public final long p50 , p99;
+    }
+
+    /** Time of the snapshot (UNIX millis). */
+    private final long time;
+    /** Entries. */
+    private final List< Entry > entries = new ArrayList< Entry >();
+
+    /** Metric types. */
+    public static final String TYPE_COUNTER = "counter";
+    public static final String TYPE_GAUGE = "gauge";
+    public static final String TYPE_TIMER = "timer";
+    /** CSV header. */
+    public static final String CSV_HEADER = "time,name,type,count,value,p50,p99";
+}
@@ -0,0 +1,454 @@
+package com.cs4222.khuthia.sensormetrics;
+
+import java.io.*;
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+   Records timed spans of the hot paths (e.g. a sensor callback, a log
+   write, a display update), so a stutter can be broken down into where
+   the time went. A span is a name id, its begin time and its duration,
+   recorded when it ends:
+   <pre>
+     long beginNanos = tracer.begin();
+     ...
+     tracer.end( SPAN_LOG_WRITE , beginNanos );
+   </pre>
+
+   <p> Each thread records into its own preallocated ring of primitive
+   entries (the last {@code capacity} spans), so a span costs two clock
+   reads and a few array stores, with no lock or allocation. The spans
+   are exported as a Chrome trace (JSON, opened by chrome://tracing or
+   Perfetto), either on demand ({@link #dump}) or when a span is too slow
+   ({@link #setTrigger}), e.g. the last 10 s when a sensor callback takes
+   over 20 ms.
+
+   <p> The rings are read without stopping the writers: a reader copies a
+   ring, and then drops the entries that may have been overwritten while
+   it was copying. The ring of a thread that ended is dropped once it has
+   been exported (or when there are too many rings).
+ */
+public class SpanTracer {
+
+    /**
+       Creates an (enabled) tracer.
+
+       @param  capacity  Number of entries of each thread's ring (rounded up to
+                         a power of 2). An export leaves out the oldest entry
+                         of a full ring, which the thread may be overwriting.
+     */
+    public SpanTracer( int capacity ) {
+        if( capacity <= 0 || capacity > MAX_CAPACITY ) {
+            throw new IllegalArgumentException( "Invalid capacity " + capacity );
+        }
+        int size = 1;
+        while( size < capacity ) {
+            size <<= 1;
+        }
+        this.capacity = size;
+    }
+
+    /** Gets the app's tracer (shared by its activities and services). */
+    public static SpanTracer getDefault() {
+        return DEFAULT;
+    }
+
+    /** Gets the id of a span name (registered if required). */
+    public synchronized int span( String name ) {
+        for( int id = 0 ; id < spanNames.length ; ++id ) {
+            if( spanNames[ id ].equals( name ) ) {
+                return id;
+            }
+        }
+        String[] names = Arrays.copyOf( spanNames , spanNames.length + 1 );
+        names[ spanNames.length ] = name;
+        spanNames = names;
+        return spanNames.length - 1;
+    }
+
+    /** Gets the name of a span id. */
+    public String getSpanName( int span ) {
+        return spanNames[ span ];
+    }
+
+    /**
+       Begins a span.
+
+       @return  Begin time (nanosec), or 0 if the tracer is disabled
+     */
+    public long begin() {
+        return ( isEnabled ? System.nanoTime() : 0L );
+    }
+
+    /**
+       Ends a span (and records it in the calling thread's ring).
+
+       @param  beginNanos  Begin time (from {@link #begin})
+     */
+    public void end( int span ,
+                     long beginNanos ) {
+        if( beginNanos == 0L ) {
+            return;
+        }
+        long endNanos = System.nanoTime();
+        long durationNanos = endNanos - beginNanos;
+        rings.get().add( span , beginNanos , durationNanos );
+
+        // Check if a capture is triggered
+        Trigger trigger = this.trigger;
+        if( trigger != null && trigger.span == span && durationNanos > trigger.thresholdNanos ) {
+            fire( trigger , endNanos );
+        }
+    }
+
+    /** Enables or disables the tracer (a disabled tracer records nothing). */
+    public void setEnabled( boolean isEnabled ) {
+        this.isEnabled = isEnabled;
+    }
+
+    /** Checks if the tracer is enabled. */
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+       Captures the recent spans when a span takes too long: the spans of
+       the last window are dumped to a new trace file of the folder
+       ({@code Trace-<UNIX millisec>.json}), by a background thread. No
+       other capture is triggered until a window later.
+
+       @param  thresholdNanos  Duration that triggers the capture (nanosec)
+       @param  windowNanos     Time captured before the trigger (nanosec)
+       @param  folder          Folder of the trace files (null to clear the trigger)
+     */
+    public void setTrigger( int span ,
+                            long thresholdNanos ,
+                            long windowNanos ,
+                            File folder ) {
+        trigger = ( folder == null ? null : new Trigger( span , thresholdNanos , windowNanos , folder ) );
+    }
+
+    /** Gets the number of captures triggered so far. */
+    public int getNumTriggered() {
+        return numTriggered.get();
+    }
+
+    /**
+       Clears the trigger, and stops the capture thread (for a tracer that
+       is no longer used; a later trigger starts it again).
+     */
+    public synchronized void shutdown() {
+        trigger = null;
+        if( dumpExecutor != null ) {
+            dumpExecutor.shutdown();
+            dumpExecutor = null;
+        }
+    }
+
+    /** Gets the number of thread rings kept (for the tests). */
+    int getNumRings() {
+        return allRings.size();
+    }
+
+    /**
+       Dumps the spans of all the threads to a Chrome trace file.
+
+       @param  windowNanos  Time dumped, back from now (nanosec)
+     */
+    public void dump( File file ,
+                      long windowNanos )
+        throws IOException {
+        Writer out = new BufferedWriter( new FileWriter( file ) );
+        try {
+            writeChromeTrace( out , System.nanoTime() - windowNanos );
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+       Writes the spans of all the threads as a Chrome trace: a complete
+       ("X") event per span, and the thread names. The times are in
+       microseconds (of the {@code System.nanoTime} clock).
+
+       @param  sinceNanos  Spans that ended before this time are left out
+     */
+    public void writeChromeTrace( Writer out ,
+                                  long sinceNanos )
+        throws IOException {
+        String[] names = spanNames;
+        int[] copySpans = new int[ capacity ];
+        long[] copyBegins = new long[ capacity ] , copyDurations = new long[ capacity ];
+        out.write( "{\"traceEvents\":[" );
+        boolean isFirst = true;
+        for( Ring ring : allRings ) {
+
+            // Copy the spans of the thread (the last time, if it ended)
+            boolean isDead = ring.isThreadDead();
+            int numSpans = ring.copy( copySpans , copyBegins , copyDurations );
+            if( isDead ) {
+                allRings.remove( ring );
+            }
+            if( numSpans == 0 ) {
+                continue;
+            }
+            out.write( isFirst ? "\n" : ",\n" );
+            isFirst = false;
+            out.write( "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + ring.threadId +
+                       ",\"args\":{\"name\":" );
+            writeString( out , ring.threadName );
+            out.write( "}}" );
+
+            // One event per span
+            for( int i = 0 ; i < numSpans ; ++i ) {
+                if( copyBegins[i] + copyDurations[i] < sinceNanos ) {
+                    continue;
+                }
+                out.write( ",\n{\"name\":" );
+                writeString( out , ( copySpans[i] < names.length ? names[ copySpans[i] ] : "?" ) );
+                out.write( ",\"ph\":\"X\",\"pid\":1,\"tid\":" + ring.threadId + ",\"ts\":" );
+                writeMicros( out , copyBegins[i] );
+                out.write( ",\"dur\":" );
+                writeMicros( out , copyDurations[i] );
+                out.write( "}" );
+            }
+        }
+        out.write( "\n],\"displayTimeUnit\":\"ms\"}\n" );
+        out.flush();
+    }
+
+    /** Helper method that starts a triggered capture (unless one was triggered less than a window ago). */
+    private void fire( final Trigger trigger ,
+                       final long triggerNanos ) {
+
+        // Only one capture per window
+        long lastNanos = lastTriggerNanos.get();
+        if( ( lastNanos != 0L && triggerNanos - lastNanos < trigger.windowNanos ) ||
+            ! lastTriggerNanos.compareAndSet( lastNanos , triggerNanos ) ) {
+            return;
+        }
+        numTriggered.incrementAndGet();
+
+        // Dump in the background (the slow thread must not wait for the file)
+        getDumpExecutor().execute( new Runnable() {
+                @Override
+                public void run() {
+                    File file = new File( trigger.folder , "Trace-" + System.currentTimeMillis() + ".json" );
+                    try {
+                        Writer out = new BufferedWriter( new FileWriter( file ) );
+                        try {
+                            writeChromeTrace( out , triggerNanos - trigger.windowNanos );
+                        }
+                        finally {
+                            out.close();
+                        }
+                    }
+                    catch( IOException e ) {
+                        // Nothing more to do, the next trigger tries again
+                    }
+                }
+            } );
+    }
+
+    /** Helper method that gets the capture thread (started on the first capture). */
+    private synchronized Executor getDumpExecutor() {
+        if( dumpExecutor == null ) {
+            dumpExecutor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+                    @Override
+                    public Thread newThread( Runnable runnable ) {
+                        Thread thread = new Thread( runnable , "SpanTracer" );
+                        thread.setDaemon( true );
+                        return thread;
+                    }
+                } );
+        }
+        return dumpExecutor;
+    }
+
+    /** Helper method that adds the ring of a new thread (dropping the rings of ended threads, if too many). */
+    private void addRing( Ring ring ) {
+        if( allRings.size() >= MAX_RINGS ) {
+            for( Ring other : allRings ) {
+                if( other.isThreadDead() ) {
+                    allRings.remove( other );
+                }
+            }
+        }
+        allRings.add( ring );
+    }
+
+    /** Helper method that writes a JSON string. */
+    private static void writeString( Writer out ,
+                                     String value )
+        throws IOException {
+        out.write( '"' );
+        for( int i = 0 ; i < value.length() ; ++i ) {
+            char c = value.charAt( i );
+            if( c == '"' || c == '\\' ) {
+                out.write( '\\' );
+                out.write( c );
+            }
+            else if( c < 0x20 ) {
+                out.write( String.format( Locale.US , "\\u%04x" , (int) c ) );
+            }
+            else {
+                out.write( c );
+            }
+        }
+        out.write( '"' );
+    }
+
+    /** Helper method that writes nanoseconds as microseconds (with 3 decimals). */
+    private static void writeMicros( Writer out ,
+                                     long nanos )
+        throws IOException {
+        if( nanos < 0L ) {
+            out.write( '-' );
+            nanos = -nanos;
+        }
+        out.write( Long.toString( nanos / 1000L ) );
+        int fraction = (int) ( nanos % 1000L );
+        out.write( fraction < 10 ? ".00" : ( fraction < 100 ? ".0" : "." ) );
+        out.write( Integer.toString( fraction ) );
+    }
+
+    /** Spans of a thread (written by that thread only). */
+    private static class Ring {
+
+        /** Creates the ring of the calling thread. */
+        Ring( int capacity ) {
+            this.capacity = capacity;
+            Thread thread = Thread.currentThread();
+            this.thread = new WeakReference< Thread >( thread );
+            threadId = thread.getId();
+            threadName = thread.getName();
+            spans = new int[ capacity ];
+            begins = new long[ capacity ];
+            durations = new long[ capacity ];
+        }
+
+        /** Adds a span (overwriting the oldest if full). */
+        void add( int span ,
+                  long beginNanos ,
+                  long durationNanos ) {
+            long position = count;
+            int index = (int) position & ( capacity - 1 );
+            spans[ index ] = span;
+            begins[ index ] = beginNanos;
+            durations[ index ] = durationNanos;
+            // Publish the entry (an ordered store, cheaper than a volatile one)
+            COUNT_UPDATER.lazySet( this , position + 1 );
+        }
+
+        /** Checks if the thread ended (so its ring no longer changes). */
+        boolean isThreadDead() {
+            Thread thread = this.thread.get();
+            return ( thread == null || ! thread.isAlive() );
+        }
+
+        /**
+           Copies the spans, oldest first (the writer may go on meanwhile).
+
+           @return  Number of spans copied
+         */
+        int copy( int[] toSpans ,
+                  long[] toBegins ,
+                  long[] toDurations ) {
+            long end = count;
+            long start = Math.max( 0L , end - capacity );
+            for( long position = start ; position < end ; ++position ) {
+                int index = (int) position & ( capacity - 1 );
+                int i = (int) ( position - start );
+                toSpans[i] = spans[ index ];
+                toBegins[i] = begins[ index ];
+                toDurations[i] = durations[ index ];
+            }
+
+            // NOTE: The entry at position p is being overwritten once the
+            //       writer has published p + capacity - 1, so drop those
+            long firstValid = Math.max( start , count - capacity + 1 );
+            int numDropped = (int) ( firstValid - start );
+            int numSpans = (int) Math.max( 0L , end - firstValid );
+            if( numDropped > 0 && numSpans > 0 ) {
+                System.arraycopy( toSpans , numDropped , toSpans , 0 , numSpans );
+                System.arraycopy( toBegins , numDropped , toBegins , 0 , numSpans );
+                System.arraycopy( toDurations , numDropped , toDurations , 0 , numSpans );
+            }
+            return numSpans;
+        }
+
+        /** Number of entries (a power of 2). */
+        final int capacity;
+        /** Thread (not kept alive by its ring), its id, and name. */
+        final WeakReference< Thread > thread;
+        final long threadId;
+        final String threadName;
+        /** Span id, begin time and duration of each entry (nanosec). */
+        final int[] spans;
+        final long[] begins , durations;
+        /** Number of spans added so far (the next entry is at count % capacity). */
+        volatile long count = 0L;
+
+        /** Publishes the count. */
+        private static final AtomicLongFieldUpdater< Ring > COUNT_UPDATER =
+            AtomicLongFieldUpdater.newUpdater( Ring.class , "count" );
+    }
+
+    /** Settings of the triggered capture. */
+    private static class Trigger {
+
+        /** Creates the settings. */
+        Trigger( int span ,
+                 long thresholdNanos ,
+                 long windowNanos ,
+                 File folder ) {
+            this.span = span;
+            this.thresholdNanos = thresholdNanos;
+            this.windowNanos = windowNanos;
+            this.folder = folder;
+        }
+
+        /** Span watched. */
+        final int span;
+        /** Duration that triggers the capture, and time captured (nanosec). */
+        final long thresholdNanos , windowNanos;
+        /** Folder of the trace files. */
+        final File folder;
+    }
+
+    /** Number of spans kept per thread (a power of 2). */
+    private final int capacity;
+    /** Names of the span ids (copied on write). */
+    private volatile String[] spanNames = new String[ 0 ];
+    /** Flag to indicate that spans are recorded. */
+    private volatile boolean isEnabled = true;
+    /** Triggered capture (null if none). */
+    private volatile Trigger trigger = null;
+    /** Time of the last triggered capture (nanosec, 0 if none), and the number of captures. */
+    private final AtomicLong lastTriggerNanos = new AtomicLong( 0L );
+    private final AtomicInteger numTriggered = new AtomicInteger( 0 );
+
+    /** Rings of all the threads that recorded spans. */
+    private final List< Ring > allRings = new CopyOnWriteArrayList< Ring >();
+    /** Ring of each thread (created on its first span). */
+    private final ThreadLocal< Ring > rings = new ThreadLocal< Ring >() {
+            @Override
+            protected Ring initialValue() {
+                Ring ring = new Ring( capacity );
+                addRing( ring );
+                return ring;
+            }
+        };
+    /** Writes the triggered captures (a single daemon thread, null until the first capture). */
+    private ExecutorService dumpExecutor = null;
+
+    /** Max number of spans kept per thread. */
+    private static final int MAX_CAPACITY = 1 << 16;
+    /** Number of rings above which the rings of ended threads are dropped on a new ring. */
+    private static final int MAX_RINGS = 32;
+    /** The app's tracer (the last 8192 spans of each thread). */
+    private static final SpanTracer DEFAULT = new SpanTracer( 8192 );
+}
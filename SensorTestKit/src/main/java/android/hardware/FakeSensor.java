@@ -0,0 +1,43 @@
+package android.hardware;
+
+/**
+   A sensor of a given type for JVM tests.
+
+   <p> Sensor's constructor is package-private, so this class is in
+   the android.hardware package. Unlike a mock, {@link #getType()} is a
+   plain field read, which keeps the test kit out of the numbers when
+   the apps' sensor callbacks are benchmarked.
+ */
+public class FakeSensor
+    extends Sensor {
+
+    /** Creates a sensor of the given type (Sensor.TYPE_*). */
+    public FakeSensor( int sensorType ,
+                       String name ) {
+        this.sensorType = sensorType;
+        this.name = name;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getType() {
+        return sensorType;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /** Sensor type. */
+    private final int sensorType;
+    /** Sensor name. */
+    private final String name;
+}
@@ -0,0 +1,368 @@
+package com.cs4222.khuthia.sensortestkit;
+
+import java.io.*;
+import java.lang.management.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+   Checks the heap allocation of an app's hot paths (e.g. each sensor's
+   branch of onSensorChanged) against a budget, so a change that adds
+   garbage to a callback fails the JVM tests instead of adding GC jitter
+   on the phone.
+
+   <p> Each path is a driver that delivers one event (e.g. a reading of
+   one sensor type to the listeners of a {@link FakeSensorManager}). The
+   events are delivered on the calling thread, and the bytes each event
+   allocates on that thread are read from the JVM's per-thread
+   allocation counter (ThreadMXBean, minus the cost of reading it). The
+   typical (median) event of a path must allocate nothing, whatever its
+   budget: the budget applies to the total over the events (the mean per
+   event), so it only covers garbage on a few events (e.g. a structure
+   that grows with the session), and a steady-state path's budget is 0.
+   The apps also do rate limited work (logging, display updates every n
+   millisec), which a phone does on most events (e.g. logging at 40 Hz),
+   so a replay must drive the app's rate limits with a fake clock for
+   that work to be measured at all.
+
+   <p> A path over its budget is reported with its allocation sites,
+   sampled with Java Flight Recorder if the JVM has it (JDK 11 and up).
+   Run the tests with escape analysis off ({@code -XX:-DoEscapeAnalysis},
+   see the apps' build.gradle): ART does not remove allocations, so the
+   JVM must not either.
+ */
+public class AllocationBudget {
+
+    /** Creates a budget check (warming each path up for 20000 events, and measuring 20000). */
+    public AllocationBudget() {
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if( ! threadBean.isThreadAllocatedMemorySupported() ) {
+            throw new IllegalStateException( "The JVM does not count the allocated bytes per thread" );
+        }
+        threadBean.setThreadAllocatedMemoryEnabled( true );
+    }
+
+    /** Driver of a path. */
+    public static interface Driver {
+
+        /** Delivers the path's event of the given index (on the calling thread). */
+        public void deliver( int index );
+    }
+
+    /** Sets the number of events to warm each path up (for the JIT), and to measure. */
+    public AllocationBudget setNumEvents( int numWarmupEvents ,
+                                          int numEvents ) {
+        if( numWarmupEvents < 0 || numEvents <= 0 ) {
+            throw new IllegalArgumentException( "Invalid number of events" );
+        }
+        this.numWarmupEvents = numWarmupEvents;
+        this.numEvents = numEvents;
+        return this;
+    }
+
+    /**
+       Adds a path.
+
+       @param  budgetBytes  Bytes an event may allocate, on average (the median event must allocate none)
+     */
+    public AllocationBudget addPath( String name ,
+                                     long budgetBytes ,
+                                     Driver driver ) {
+        paths.add( new Path( name , budgetBytes , driver ) );
+        return this;
+    }
+
+    /**
+       Adds the path of a sensor type: its readings (taken in turn) are
+       delivered to the listeners of the sensor manager.
+     */
+    public AllocationBudget addSensorPath( String name ,
+                                           long budgetBytes ,
+                                           final FakeSensorManager sensors ,
+                                           final int sensorType ,
+                                           final float[]... readings ) {
+        return addPath( name , budgetBytes , new Driver() {
+                @Override
+                public void deliver( int index ) {
+                    // NOTE: The timestamp is in the device uptime base (nanosec), like a replay's
+                    long timestamp = 60L * 1000000000L + index * 20000000L;
+                    if( sensors.deliver( sensorType , timestamp , 3 , readings[ index % readings.length ] ) == 0 ) {
+                        throw new IllegalStateException( "No listener for sensor type " + sensorType );
+                    }
+                }
+            } );
+    }
+
+    /**
+       Measures all the paths (in the order they were added). A path over
+       its budget is measured again over the next events (up to 3 times),
+       and its last measurement is kept: the JIT allocates a few objects
+       on the measured thread now and then (installing compiled code),
+       while garbage of the path shows up in every measurement.
+     */
+    public List< Result > run() {
+        List< Result > results = new ArrayList< Result >();
+        for( Path path : paths ) {
+            Result result = null;
+            for( int i = 0 ; i < MAX_MEASUREMENTS && ( result == null || result.isOverBudget() ) ; ++i ) {
+                result = measure( path , ( i == 0 ? numWarmupEvents : 0 ) , numWarmupEvents + i * numEvents );
+            }
+            results.add( result );
+        }
+        return results;
+    }
+
+    /**
+       Measures all the paths, and fails if any is over its budget.
+
+       @throws  AssertionError  Listing the paths over budget, and their allocation sites
+     */
+    public List< Result > check() {
+        List< Result > results = run();
+        StringBuilder failures = new StringBuilder();
+        for( int i = 0 ; i < results.size() ; ++i ) {
+            Result result = results.get( i );
+            if( ! result.isOverBudget() ) {
+                continue;
+            }
+            failures.append( '\n' ).append( result );
+            for( String site : sampleSites( paths.get( i ) ) ) {
+                failures.append( "\n    " ).append( site );
+            }
+        }
+        if( failures.length() > 0 ) {
+            throw new AssertionError( "Allocation budget exceeded:" + failures );
+        }
+        return results;
+    }
+
+    /** Helper method that measures the allocation of each event of a path (after warming it up), from an event index. */
+    private Result measure( Path path ,
+                            int numWarmups ,
+                            int firstIndex ) {
+
+        // Warm up, and find the cost of reading the counter
+        for( int i = 0 ; i < numWarmups ; ++i ) {
+            path.driver.deliver( i );
+        }
+        long threadId = Thread.currentThread().getId();
+        long readBytes = Long.MAX_VALUE;
+        for( int i = 0 ; i < 1000 ; ++i ) {
+            long beforeBytes = threadBean.getThreadAllocatedBytes( threadId );
+            readBytes = Math.min( readBytes , threadBean.getThreadAllocatedBytes( threadId ) - beforeBytes );
+        }
+
+        // Measure the events one at a time
+        long[] eventBytes = new long[ numEvents ];
+        for( int i = 0 ; i < numEvents ; ++i ) {
+            long beforeBytes = threadBean.getThreadAllocatedBytes( threadId );
+            path.driver.deliver( firstIndex + i );
+            eventBytes[i] = Math.max( 0L , threadBean.getThreadAllocatedBytes( threadId ) - beforeBytes - readBytes );
+        }
+        return new Result( path.name , path.budgetBytes , eventBytes );
+    }
+
+    /**
+       Helper method that samples the allocation sites of a path with Java
+       Flight Recorder (accessed by reflection, as the test kit is built for
+       Java 7), by the bytes sampled at each site.
+
+       @return  The top sites ("bytes class at frame"), or a note why there are none
+     */
+    private List< String > sampleSites( Path path ) {
+        List< String > sites = new ArrayList< String >();
+        File recordingFile = null;
+        try {
+
+            // Record the allocation samples (with their stacks) of many events
+            Class< ? > recordingClass = Class.forName( "jdk.jfr.Recording" );
+            Method withStackTrace = Class.forName( "jdk.jfr.EventSettings" ).getMethod( "withStackTrace" );
+            Object recording = recordingClass.getConstructor().newInstance();
+            for( String eventName : ALLOCATION_EVENTS ) {
+                withStackTrace.invoke( recordingClass.getMethod( "enable" , String.class ).invoke( recording , eventName ) );
+            }
+            recordingClass.getMethod( "start" ).invoke( recording );
+            for( int i = 0 ; i < numSiteEvents ; ++i ) {
+                path.driver.deliver( i );
+            }
+            recordingClass.getMethod( "stop" ).invoke( recording );
+            recordingFile = File.createTempFile( "allocations" , ".jfr" );
+            recordingClass.getMethod( "dump" , java.nio.file.Path.class ).invoke( recording , recordingFile.toPath() );
+            recordingClass.getMethod( "close" ).invoke( recording );
+
+            // Add up the bytes of each site (the first frame outside the JDK and the test kit)
+            Class< ? > eventClass = Class.forName( "jdk.jfr.consumer.RecordedEvent" );
+            Class< ? > objectClass = Class.forName( "jdk.jfr.consumer.RecordedObject" );
+            Method getStackTrace = eventClass.getMethod( "getStackTrace" );
+            Method getThread = eventClass.getMethod( "getThread" );
+            Method getLong = objectClass.getMethod( "getLong" , String.class );
+            Method getClassField = objectClass.getMethod( "getClass" , String.class );
+            Method getFrames = Class.forName( "jdk.jfr.consumer.RecordedStackTrace" ).getMethod( "getFrames" );
+            Method getMethod = Class.forName( "jdk.jfr.consumer.RecordedFrame" ).getMethod( "getMethod" );
+            Method getLineNumber = Class.forName( "jdk.jfr.consumer.RecordedFrame" ).getMethod( "getLineNumber" );
+            Method getType = Class.forName( "jdk.jfr.consumer.RecordedMethod" ).getMethod( "getType" );
+            Method getMethodName = Class.forName( "jdk.jfr.consumer.RecordedMethod" ).getMethod( "getName" );
+            Method getClassName = Class.forName( "jdk.jfr.consumer.RecordedClass" ).getMethod( "getName" );
+            Method getJavaThreadId = Class.forName( "jdk.jfr.consumer.RecordedThread" ).getMethod( "getJavaThreadId" );
+            List< ? > events = (List< ? >) Class.forName( "jdk.jfr.consumer.RecordingFile" )
+                .getMethod( "readAllEvents" , java.nio.file.Path.class ).invoke( null , recordingFile.toPath() );
+            final Map< String , Long > siteBytes = new HashMap< String , Long >();
+            long threadId = Thread.currentThread().getId();
+            for( Object event : events ) {
+                Object thread = getThread.invoke( event );
+                Object stackTrace = getStackTrace.invoke( event );
+                if( thread == null || (Long) getJavaThreadId.invoke( thread ) != threadId || stackTrace == null ) {
+                    continue;
+                }
+                String site = null;
+                for( Object frame : (List< ? >) getFrames.invoke( stackTrace ) ) {
+                    Object method = getMethod.invoke( frame );
+                    String className = (String) getClassName.invoke( getType.invoke( method ) );
+                    if( className.equals( AllocationBudget.class.getName() ) ) {
+                        break;    // Allocated by the recording, not by the path
+                    }
+                    if( ! isInternalClass( className ) ) {
+                        site = className + "." + getMethodName.invoke( method ) + ":" + getLineNumber.invoke( frame );
+                        break;
+                    }
+                }
+                if( site == null ) {
+                    continue;
+                }
+                String key = getClassName.invoke( getClassField.invoke( event , "objectClass" ) ) + " at " + site;
+                Long bytes = siteBytes.get( key );
+                siteBytes.put( key , ( bytes == null ? 0L : bytes ) + (Long) getLong.invoke( event , "allocationSize" ) );
+            }
+
+            // Sort them
+            List< String > keys = new ArrayList< String >( siteBytes.keySet() );
+            Collections.sort( keys , new Comparator< String >() {
+                    @Override
+                    public int compare( String lhs , String rhs ) {
+                        return siteBytes.get( rhs ).compareTo( siteBytes.get( lhs ) );
+                    }
+                } );
+            for( String key : keys.subList( 0 , Math.min( keys.size() , MAX_SITES ) ) ) {
+                sites.add( siteBytes.get( key ) + " bytes sampled: " + key );
+            }
+            if( sites.isEmpty() ) {
+                sites.add( "(no allocation sampled, try more events)" );
+            }
+        }
+        catch( ClassNotFoundException e ) {
+            sites.add( "(allocation sites need a JVM with Java Flight Recorder)" );
+        }
+        catch( Exception e ) {
+            sites.add( "(unable to sample the allocation sites: " + e + ")" );
+        }
+        finally {
+            if( recordingFile != null ) {
+                recordingFile.delete();
+            }
+        }
+        return sites;
+    }
+
+    /** Helper method that checks if a class is of the JDK or the test kit (not an allocation site). */
+    private static boolean isInternalClass( String className ) {
+        return className.startsWith( "java." ) ||
+            className.startsWith( "javax." ) ||
+            className.startsWith( "jdk." ) ||
+            className.startsWith( "sun." ) ||
+            className.startsWith( "com.sun." ) ||
+            className.startsWith( AllocationBudget.class.getPackage().getName() );
+    }
+
+    /** A path and its budget. */
+    private static class Path {
+
+        /** Creates a path. */
+        Path( String name ,
+              long budgetBytes ,
+              Driver driver ) {
+            this.name = name;
+            this.budgetBytes = budgetBytes;
+            this.driver = driver;
+        }
+
+        /** Path name. */
+        final String name;
+        /** Bytes an event may allocate, on average. */
+        final long budgetBytes;
+        /** Delivers the path's events. */
+        final Driver driver;
+    }
+
+    /** Allocation of a path's events. */
+    public static class Result {
+
+        /** Creates the result of the bytes of each event. */
+        Result( String name ,
+                long budgetBytes ,
+                long[] eventBytes ) {
+            this.name = name;
+            this.budgetBytes = budgetBytes;
+            numEvents = eventBytes.length;
+            long[] sortedBytes = eventBytes.clone();
+            Arrays.sort( sortedBytes );
+            typicalBytes = sortedBytes[ sortedBytes.length / 2 ];
+            maxBytes = sortedBytes[ sortedBytes.length - 1 ];
+            long total = 0L;
+            int numAllocating = 0;
+            for( long bytes : eventBytes ) {
+                total += bytes;
+                numAllocating += ( bytes > 0L ? 1 : 0 );
+            }
+            totalBytes = total;
+            meanBytes = (double) total / numEvents;
+            numAllocatingEvents = numAllocating;
+        }
+
+        /**
+           Checks if the events allocate more than the budget in total, or
+           if the typical (median) event allocates at all.
+         */
+        public boolean isOverBudget() {
+            return typicalBytes > 0L || totalBytes > budgetBytes * numEvents;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return String.format( Locale.US , "%s: mean %.1f bytes/event (budget %d), median %d, max %d, %d of %d events allocate" ,
+                                  name , meanBytes , budgetBytes , typicalBytes , maxBytes ,
+                                  numAllocatingEvents , numEvents );
+        }
+
+        /** Path name. */
+        public final String name;
+        /** Bytes an event may allocate, on average. */
+        public final long budgetBytes;
+        /** Bytes allocated by all the events, by the typical (median) event, the mean and the max. */
+        public final long totalBytes;
+        public final long typicalBytes;
+        public final double meanBytes;
+        public final long maxBytes;
+        /** Number of events measured, and of those that allocated. */
+        public final int numEvents;
+        public final int numAllocatingEvents;
+    }
+
+    /** Per-thread allocation counter. */
+    private final com.sun.management.ThreadMXBean threadBean;
+    /** Paths (in the order they were added). */
+    private final List< Path > paths = new ArrayList< Path >();
+    /** Number of events to warm each path up, and to measure. */
+    private int numWarmupEvents = 20000;
+    private int numEvents = 20000;
+    /** Number of events to sample the allocation sites of a path over budget. */
+    private int numSiteEvents = 500000;
+
+    /** Flight recorder events of the allocations (sampled at each new thread-local buffer). */
+    private static final String[] ALLOCATION_EVENTS =
+        { "jdk.ObjectAllocationInNewTLAB" , "jdk.ObjectAllocationOutsideTLAB" };
+    /** Max number of measurements of a path over budget. */
+    private static final int MAX_MEASUREMENTS = 3;
+    /** Max number of allocation sites reported per path. */
+    private static final int MAX_SITES = 5;
+}
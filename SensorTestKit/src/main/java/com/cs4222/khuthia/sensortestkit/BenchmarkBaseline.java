@@ -0,0 +1,263 @@
+package com.cs4222.khuthia.sensortestkit;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   Compares JMH results with a recorded baseline (both in JMH's CSV
+   result format, see {@code jmh.gradle}), so that an optimization (or
+   a regression) can be judged against numbers.
+
+   <p> For each benchmark (and parameter combination) in both files, the
+   primary score and the allocation per operation ({@code -prof gc}'s
+   gc.alloc.rate.norm) are compared. A change worse than the tolerance
+   is reported as a regression. Allocation changes under
+   {@link #ALLOCATION_SLACK} bytes/op are ignored, since the escape
+   analysis makes them noisy.
+
+   <p> Lines starting with '#' are comments (e.g. where the baseline
+   was recorded).
+ */
+public class BenchmarkBaseline {
+
+    /**
+       Usage: BenchmarkBaseline &lt;baseline csv&gt; &lt;results csv&gt; [tolerance %]
+
+       <p> Exits with status 1 if there is a regression.
+     */
+    public static void main( String[] args )
+        throws IOException {
+
+        if( args.length < 2 ) {
+            System.err.println( "Usage: BenchmarkBaseline <baseline csv> <results csv> [tolerance %]" );
+            System.exit( 2 );
+        }
+        double tolerance = ( args.length > 2 ? Double.parseDouble( args[2] ) : 10.0 );
+        Map< String , Score > baseline = readScores( new File( args[0] ) );
+        Map< String , Score > results = readScores( new File( args[1] ) );
+
+        List< Comparison > comparisons = compare( baseline , results , tolerance );
+        int numRegressions = 0;
+        System.out.println( "Benchmark, baseline, result, unit, change (positive is worse)" );
+        for( Comparison comparison : comparisons ) {
+            System.out.println( comparison );
+            if( comparison.isRegression() ) {
+                ++numRegressions;
+            }
+        }
+        System.out.println( comparisons.size() + " scores compared (tolerance " + tolerance + "%), " +
+                            numRegressions + " regressions" );
+        if( numRegressions > 0 ) {
+            System.exit( 1 );
+        }
+    }
+
+    /** Compares the results with the baseline (the scores in the results, in order). */
+    public static List< Comparison > compare( Map< String , Score > baseline ,
+                                              Map< String , Score > results ,
+                                              double tolerance ) {
+        List< Comparison > comparisons = new ArrayList< Comparison >();
+        for( Map.Entry< String , Score > entry : results.entrySet() ) {
+            comparisons.add( new Comparison( entry.getKey() , baseline.get( entry.getKey() ) ,
+                                             entry.getValue() , tolerance ) );
+        }
+        return comparisons;
+    }
+
+    /**
+       Reads the compared scores from a JMH CSV result file.
+
+       @return  Scores by key (benchmark, mode and parameters), in file order
+     */
+    public static Map< String , Score > readScores( File csvFile )
+        throws IOException {
+
+        Map< String , Score > scores = new LinkedHashMap< String , Score >();
+        BufferedReader in = new BufferedReader( new InputStreamReader( new FileInputStream( csvFile ) , "UTF-8" ) );
+        try {
+            String[] header = null;
+            String line;
+            while( ( line = in.readLine() ) != null ) {
+                if( line.trim().isEmpty() || line.startsWith( "#" ) ) {
+                    continue;
+                }
+                List< String > fields = splitCsvLine( line );
+                if( header == null ) {
+                    header = fields.toArray( new String[ fields.size() ] );
+                    continue;
+                }
+
+                // Only the primary scores (including those of each method in a group) and the
+                //  normalised allocation rate are compared (the profilers' and the percentiles'
+                //  metrics are marked with a middle dot, e.g. "logEvent:\u00B7gc.alloc.rate")
+                String benchmark = fields.get( 0 );
+                if( benchmark.indexOf( SECONDARY_METRIC_MARK ) >= 0 &&
+                    ! benchmark.endsWith( "gc.alloc.rate.norm" ) ) {
+                    continue;
+                }
+
+                // Key: benchmark, mode and the parameter columns ("Param: ...")
+                StringBuilder key = new StringBuilder( benchmark );
+                key.append( " " ).append( fields.get( 1 ) );
+                for( int i = 7 ; i < fields.size() && i < header.length ; ++i ) {
+                    if( ! fields.get( i ).isEmpty() ) {
+                        key.append( " " ).append( header[i].replace( "Param: " , "" ) )
+                            .append( "=" ).append( fields.get( i ) );
+                    }
+                }
+                scores.put( key.toString() ,
+                            new Score( Double.parseDouble( fields.get( 4 ) ) ,
+                                       parseError( fields.get( 5 ) ) ,
+                                       fields.get( 6 ) ) );
+            }
+        }
+        finally {
+            in.close();
+        }
+        return scores;
+    }
+
+    /** Helper method that parses a score error (NaN when there were too few samples). */
+    private static double parseError( String field ) {
+        try {
+            return Double.parseDouble( field );
+        }
+        catch( NumberFormatException e ) {
+            return Double.NaN;
+        }
+    }
+
+    /** Helper method that splits a CSV line (fields may be quoted, with "" for a quote). */
+    private static List< String > splitCsvLine( String line ) {
+        List< String > fields = new ArrayList< String >();
+        StringBuilder field = new StringBuilder();
+        boolean isQuoted = false;
+        for( int i = 0 ; i < line.length() ; ++i ) {
+            char c = line.charAt( i );
+            if( isQuoted ) {
+                if( c == '"' && i + 1 < line.length() && line.charAt( i + 1 ) == '"' ) {
+                    field.append( '"' );
+                    ++i;
+                }
+                else if( c == '"' ) {
+                    isQuoted = false;
+                }
+                else {
+                    field.append( c );
+                }
+            }
+            else if( c == '"' ) {
+                isQuoted = true;
+            }
+            else if( c == ',' ) {
+                fields.add( field.toString() );
+                field.setLength( 0 );
+            }
+            else {
+                field.append( c );
+            }
+        }
+        fields.add( field.toString() );
+        return fields;
+    }
+
+    /** A score in a JMH result file. */
+    public static class Score {
+
+        /** Creates a score. */
+        public Score( double score ,
+                      double error ,
+                      String unit ) {
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        /** Checks if higher is better (throughput units, e.g. ops/us). */
+        public boolean isHigherBetter() {
+            return unit.startsWith( "ops/" );
+        }
+
+        /** Score. */
+        public final double score;
+        /** Score error (99.9%), NaN if unknown. */
+        public final double error;
+        /** Unit (e.g. ops/us, us/op, B/op). */
+        public final String unit;
+    }
+
+    /** A result score compared with its baseline. */
+    public static class Comparison {
+
+        /** Compares a result score with its baseline (null if there is none). */
+        Comparison( String key ,
+                    Score baseline ,
+                    Score result ,
+                    double tolerance ) {
+            this.key = key;
+            this.baseline = baseline;
+            this.result = result;
+
+            // Relative change, positive if the result is worse
+            if( baseline == null || ! baseline.unit.equals( result.unit ) ) {
+                change = 0.0;
+                isRegression = false;
+                return;
+            }
+            double difference = ( baseline.isHigherBetter() ?
+                                  baseline.score - result.score :
+                                  result.score - baseline.score );
+            change = ( baseline.score == 0.0 ? 0.0 : 100.0 * difference / Math.abs( baseline.score ) );
+            if( result.unit.equals( "B/op" ) ) {
+                isRegression = ( difference > ALLOCATION_SLACK &&
+                                 ( baseline.score == 0.0 || change > tolerance ) );
+            }
+            else {
+                isRegression = ( change > tolerance );
+            }
+        }
+
+        /** Gets the key (benchmark, mode and parameters). */
+        public String getKey() {
+            return key;
+        }
+
+        /** Gets the relative change (%), positive if the result is worse than the baseline. */
+        public double getChange() {
+            return change;
+        }
+
+        /** Checks if the result is worse than the baseline by more than the tolerance. */
+        public boolean isRegression() {
+            return isRegression;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            if( baseline == null ) {
+                return String.format( Locale.US , "%-90s %12s %12.3f %-8s (no baseline)" ,
+                                      key , "" , result.score , result.unit );
+            }
+            return String.format( Locale.US , "%-90s %12.3f %12.3f %-8s %+7.1f%%%s" ,
+                                  key , baseline.score , result.score , result.unit , change ,
+                                  ( isRegression ? "  REGRESSION" : "" ) );
+        }
+
+        /** Key. */
+        private final String key;
+        /** Baseline score (null if none). */
+        private final Score baseline;
+        /** Result score. */
+        private final Score result;
+        /** Relative change (%), positive if worse. */
+        private final double change;
+        /** Whether the result is worse than the tolerance allows. */
+        private final boolean isRegression;
+    }
+
+    /** Mark of the secondary metrics in the benchmark names. */
+    private static final char SECONDARY_METRIC_MARK = '\u00B7';
+    /** Allocation changes (bytes/op) that are ignored. */
+    public static final double ALLOCATION_SLACK = 16.0;
+}
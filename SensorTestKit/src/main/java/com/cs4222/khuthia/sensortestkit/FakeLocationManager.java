@@ -0,0 +1,227 @@
+package com.cs4222.khuthia.sensortestkit;
+
+import java.util.*;
+
+import android.location.*;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+   A LocationManager for JVM tests, that records the listeners registered
+   by the app, and delivers location fixes to them.
+
+   <p> Give the app {@link #getLocationManager()} from its
+   {@code getSystemService( Context.LOCATION_SERVICE )}. A fix is delivered
+   to the listeners of its provider, as a Location whose getters return
+   the values of the fix.
+ */
+public class FakeLocationManager {
+
+    /** Creates a location manager with the given providers enabled (e.g. LocationManager.GPS_PROVIDER). */
+    public FakeLocationManager( String... enabledProviders ) {
+        this.enabledProviders = Arrays.asList( enabledProviders );
+        locationManager = Mockito.mock( LocationManager.class , new Answer< Object >() {
+                @Override
+                public Object answer( InvocationOnMock invocation ) throws Throwable {
+                    return onLocationManagerCall( invocation );
+                }
+            } );
+    }
+
+    /** Gets the (fake) location manager to give to the app. */
+    public LocationManager getLocationManager() {
+        return locationManager;
+    }
+
+    /** Gets the number of listeners registered for a provider. */
+    public int getNumListeners( String provider ) {
+        int numListeners = 0;
+        for( Registration registration : registrations ) {
+            if( registration.provider.equals( provider ) ) {
+                ++numListeners;
+            }
+        }
+        return numListeners;
+    }
+
+    /**
+       Delivers a location fix to the listeners registered for its provider.
+
+       @return  Number of listeners the fix was delivered to
+     */
+    public int deliver( SensorTrace.Event fix ) {
+        Registration[] currentRegistrations = registrations;
+        currentFix = fix;
+        int numDelivered = 0;
+        for( Registration registration : currentRegistrations ) {
+            if( registration.provider.equals( fix.provider ) ) {
+                registration.listener.onLocationChanged( location );
+                ++numDelivered;
+            }
+        }
+        return numDelivered;
+    }
+
+    /** Helper method that handles a call to the (mock) location manager. */
+    private Object onLocationManagerCall( InvocationOnMock invocation )
+        throws Throwable {
+        String name = invocation.getMethod().getName();
+        Object[] args = invocation.getArguments();
+        if( name.equals( "getProviders" ) || name.equals( "getAllProviders" ) ) {
+            // The apps modify the returned list
+            return new ArrayList< String >( enabledProviders );
+        }
+        else if( name.equals( "isProviderEnabled" ) ) {
+            return enabledProviders.contains( args[0] );
+        }
+        else if( name.equals( "requestLocationUpdates" ) &&
+                 args.length == 4 &&
+                 args[0] instanceof String &&
+                 args[3] instanceof LocationListener ) {
+            register( new Registration( (String) args[0] , (LocationListener) args[3] ) );
+            return null;
+        }
+        else if( name.equals( "removeUpdates" ) &&
+                 args[0] instanceof LocationListener ) {
+            unregister( (LocationListener) args[0] );
+            return null;
+        }
+        else if( name.equals( "sendExtraCommand" ) ) {
+            return true;
+        }
+        return Mockito.RETURNS_DEFAULTS.answer( invocation );
+    }
+
+    /** Helper method that adds a registration (copy-on-write, so delivery can iterate without copying). */
+    private synchronized void register( Registration registration ) {
+        Registration[] newRegistrations = Arrays.copyOf( registrations , registrations.length + 1 );
+        newRegistrations[ registrations.length ] = registration;
+        registrations = newRegistrations;
+    }
+
+    /** Helper method that removes the registrations of a listener. */
+    private synchronized void unregister( LocationListener listener ) {
+        List< Registration > remaining = new ArrayList< Registration >();
+        for( Registration registration : registrations ) {
+            if( registration.listener != listener ) {
+                remaining.add( registration );
+            }
+        }
+        registrations = remaining.toArray( new Registration[ remaining.size() ] );
+    }
+
+    /**
+       The Location given to the listeners, whose getters return the
+       current fix (a subclass rather than a mock, since the apps call
+       several getters per fix).
+     */
+    private class FixLocation
+        extends Location {
+
+        /** Creates the location. */
+        FixLocation() {
+            super( LocationManager.GPS_PROVIDER );
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long getTime() {
+            return currentFix.locationTime;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getProvider() {
+            return currentFix.provider;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public double getLatitude() {
+            return currentFix.latitude;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public double getLongitude() {
+            return currentFix.longitude;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public float getAccuracy() {
+            return currentFix.locationAccuracy;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasAccuracy() {
+            return currentFix.locationAccuracy >= 0.0F;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public double getAltitude() {
+            return currentFix.altitude;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasAltitude() {
+            return currentFix.altitude != -1.0;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public float getBearing() {
+            return currentFix.bearing;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasBearing() {
+            return currentFix.bearing != -1.0F;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public float getSpeed() {
+            return currentFix.speed;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasSpeed() {
+            return currentFix.speed != -1.0F;
+        }
+    }
+
+    /** A listener registered for a provider. */
+    private static class Registration {
+
+        /** Creates a registration. */
+        Registration( String provider ,
+                      LocationListener listener ) {
+            this.provider = provider;
+            this.listener = listener;
+        }
+
+        /** Provider. */
+        final String provider;
+        /** Listener. */
+        final LocationListener listener;
+    }
+
+    /** Enabled providers. */
+    private final List< String > enabledProviders;
+    /** Location manager given to the app. */
+    private final LocationManager locationManager;
+    /** Location given to the listeners (its getters return the current fix). */
+    private final Location location = new FixLocation();
+    /** Fix being delivered. */
+    private volatile SensorTrace.Event currentFix;
+    /** Registered listeners. */
+    private volatile Registration[] registrations = new Registration[0];
+}
@@ -0,0 +1,209 @@
+package com.cs4222.khuthia.sensortestkit;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import android.hardware.*;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.objenesis.ObjenesisStd;
+
+/**
+   A SensorManager for JVM tests, that records the listeners registered
+   by the app, and delivers readings to them.
+
+   <p> Give the app {@link #getSensorManager()} from its
+   {@code getSystemService( Context.SENSOR_SERVICE )}. Only the sensor
+   types passed to the constructor are available. Like on a phone, one
+   SensorEvent object per sensor is re-used for all its readings.
+ */
+public class FakeSensorManager {
+
+    /** Creates a sensor manager with the given sensor types (Sensor.TYPE_*) available. */
+    public FakeSensorManager( int... sensorTypes ) {
+        for( int sensorType : sensorTypes ) {
+            sensors.put( sensorType , createSensor( sensorType ) );
+        }
+        sensorManager = Mockito.mock( SensorManager.class , new Answer< Object >() {
+                @Override
+                public Object answer( InvocationOnMock invocation ) throws Throwable {
+                    return onSensorManagerCall( invocation );
+                }
+            } );
+    }
+
+    /** Gets the (fake) sensor manager to give to the app. */
+    public SensorManager getSensorManager() {
+        return sensorManager;
+    }
+
+    /** Gets the sensor of the given type (null if not available). */
+    public Sensor getSensor( int sensorType ) {
+        return sensors.get( sensorType );
+    }
+
+    /** Gets the number of listeners registered for a sensor type. */
+    public int getNumListeners( int sensorType ) {
+        int numListeners = 0;
+        for( Registration registration : registrations ) {
+            if( registration.sensorType == sensorType ) {
+                ++numListeners;
+            }
+        }
+        return numListeners;
+    }
+
+    /**
+       Delivers a reading to the listeners registered for the sensor type.
+
+       @param  timestamp  Event timestamp (nanosec, device uptime)
+       @return  Number of listeners the reading was delivered to
+     */
+    public int deliver( int sensorType ,
+                        long timestamp ,
+                        int accuracy ,
+                        float[] values ) {
+
+        // Copy the reading into the sensor's event object
+        Registration[] currentRegistrations = registrations;
+        SensorEvent event = null;
+        int numDelivered = 0;
+        for( Registration registration : currentRegistrations ) {
+            if( registration.sensorType != sensorType ) {
+                continue;
+            }
+            if( event == null ) {
+                event = getEvent( sensorType , values.length );
+                System.arraycopy( values , 0 , event.values , 0 , values.length );
+                event.sensor = registration.sensor;
+                event.accuracy = accuracy;
+                event.timestamp = timestamp;
+            }
+            registration.listener.onSensorChanged( event );
+            ++numDelivered;
+        }
+        return numDelivered;
+    }
+
+    /** Helper method that handles a call to the (mock) sensor manager. */
+    private Object onSensorManagerCall( InvocationOnMock invocation )
+        throws Throwable {
+        String name = invocation.getMethod().getName();
+        Object[] args = invocation.getArguments();
+        if( name.equals( "getDefaultSensor" ) ) {
+            return sensors.get( (Integer) args[0] );
+        }
+        else if( name.equals( "getSensorList" ) ) {
+            int sensorType = (Integer) args[0];
+            List< Sensor > sensorList = new ArrayList< Sensor >();
+            for( Map.Entry< Integer , Sensor > entry : sensors.entrySet() ) {
+                if( sensorType == Sensor.TYPE_ALL || sensorType == entry.getKey() ) {
+                    sensorList.add( entry.getValue() );
+                }
+            }
+            return sensorList;
+        }
+        else if( name.equals( "registerListener" ) &&
+                 args.length >= 2 &&
+                 args[0] instanceof SensorEventListener &&
+                 args[1] instanceof Sensor ) {
+            Sensor sensor = (Sensor) args[1];
+            if( ! sensors.containsValue( sensor ) ) {
+                return false;
+            }
+            register( new Registration( (SensorEventListener) args[0] , sensor , sensor.getType() ) );
+            return true;
+        }
+        else if( name.equals( "unregisterListener" ) &&
+                 args.length >= 1 &&
+                 args[0] instanceof SensorEventListener ) {
+            unregister( (SensorEventListener) args[0] , ( args.length > 1 ? (Sensor) args[1] : null ) );
+            return null;
+        }
+        return Mockito.RETURNS_DEFAULTS.answer( invocation );
+    }
+
+    /** Helper method that adds a registration (copy-on-write, so delivery can iterate without copying). */
+    private synchronized void register( Registration registration ) {
+        Registration[] newRegistrations = Arrays.copyOf( registrations , registrations.length + 1 );
+        newRegistrations[ registrations.length ] = registration;
+        registrations = newRegistrations;
+    }
+
+    /** Helper method that removes the registrations of a listener (for one sensor, or all if null). */
+    private synchronized void unregister( SensorEventListener listener ,
+                                          Sensor sensor ) {
+        List< Registration > remaining = new ArrayList< Registration >();
+        for( Registration registration : registrations ) {
+            if( registration.listener != listener ||
+                ( sensor != null && registration.sensor != sensor ) ) {
+                remaining.add( registration );
+            }
+        }
+        registrations = remaining.toArray( new Registration[ remaining.size() ] );
+    }
+
+    /** Helper method that gets the (re-used) event object for a sensor. */
+    private SensorEvent getEvent( int sensorType ,
+                                  int numValues ) {
+        SensorEvent event = events.get( sensorType );
+        if( event == null || event.values == null || event.values.length != numValues ) {
+            event = createEvent( numValues );
+            events.put( sensorType , event );
+        }
+        return event;
+    }
+
+    /** Creates a sensor of the given type. */
+    private static Sensor createSensor( int sensorType ) {
+        return new FakeSensor( sensorType , "Fake sensor " + sensorType );
+    }
+
+    /**
+       Creates a sensor event (its constructor is not in the SDK's
+       android.jar, so the object is created without calling it).
+     */
+    private static SensorEvent createEvent( int numValues ) {
+        try {
+            SensorEvent event = new ObjenesisStd().newInstance( SensorEvent.class );
+            Field valuesField = SensorEvent.class.getField( "values" );
+            valuesField.setAccessible( true );
+            valuesField.set( event , new float[ numValues ] );
+            return event;
+        }
+        catch( Exception e ) {
+            throw new IllegalStateException( "Unable to create a SensorEvent" , e );
+        }
+    }
+
+    /** A listener registered for a sensor. */
+    private static class Registration {
+
+        /** Creates a registration. */
+        Registration( SensorEventListener listener ,
+                      Sensor sensor ,
+                      int sensorType ) {
+            this.listener = listener;
+            this.sensor = sensor;
+            this.sensorType = sensorType;
+        }
+
+        /** Listener. */
+        final SensorEventListener listener;
+        /** Sensor. */
+        final Sensor sensor;
+        /** Sensor type. */
+        final int sensorType;
+    }
+
+    /** Sensor manager given to the app. */
+    private final SensorManager sensorManager;
+    /** Available sensors (by type). */
+    private final Map< Integer , Sensor > sensors = new TreeMap< Integer , Sensor >();
+    /** Registered listeners (copy-on-write). */
+    private volatile Registration[] registrations = new Registration[0];
+    /** Re-used event object of each sensor type. */
+    private final Map< Integer , SensorEvent > events = new HashMap< Integer , SensorEvent >();
+}
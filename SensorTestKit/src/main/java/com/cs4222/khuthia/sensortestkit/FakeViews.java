@@ -0,0 +1,117 @@
+package com.cs4222.khuthia.sensortestkit;
+
+import java.util.*;
+
+import android.view.*;
+import android.widget.*;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+   Widgets for an activity under a JVM test, so that its GUI code runs
+   without a layout.
+
+   <p> Return {@link #findViewById( int )} from the activity's
+   {@code findViewById()}. Each id gets a (mock) Button, which can be
+   cast to any TextView, remembers its text, and can be clicked.
+
+   <p> Benchmarks use non-recording views instead: each id gets a plain
+   (no-op) Button, so the GUI updates cost about as little as possible
+   on the JVM, and cannot be clicked or read back.
+ */
+public class FakeViews {
+
+    /** Creates recording views. */
+    public FakeViews() {
+        this( true );
+    }
+
+    /** Creates recording views, or plain no-op views (e.g. for benchmarks). */
+    public FakeViews( boolean isRecording ) {
+        this.isRecording = isRecording;
+    }
+
+    /** Gets the view with the given id (created on first use). */
+    public synchronized View findViewById( int id ) {
+        FakeView view = views.get( id );
+        if( view == null ) {
+            view = new FakeView();
+            view.button = ( isRecording ? Mockito.mock( Button.class , view ) : new Button( null ) );
+            views.put( id , view );
+        }
+        return view.button;
+    }
+
+    /** Clicks a view (calls its click listener, if it has one). */
+    public void click( int id ) {
+        findViewById( id );
+        View.OnClickListener listener;
+        synchronized( this ) {
+            listener = views.get( id ).clickListener;
+        }
+        if( listener != null ) {
+            listener.onClick( views.get( id ).button );
+        }
+    }
+
+    /** Gets the text last set on a view (null if none). */
+    public synchronized String getText( int id ) {
+        FakeView view = views.get( id );
+        return ( view == null || view.text == null ? null : view.text.toString() );
+    }
+
+    /** Gets the enabled state last set on a view (views start enabled). */
+    public synchronized boolean isEnabled( int id ) {
+        FakeView view = views.get( id );
+        return ( view == null || view.isEnabled );
+    }
+
+    /** A view, recording the calls the app makes. */
+    private class FakeView
+        implements Answer< Object > {
+
+        /** {@inheritDoc} */
+        @Override
+        public Object answer( InvocationOnMock invocation ) throws Throwable {
+            String name = invocation.getMethod().getName();
+            Object[] args = invocation.getArguments();
+            synchronized( FakeViews.this ) {
+                if( name.equals( "setText" ) && args.length >= 1 && args[0] instanceof CharSequence ) {
+                    text = (CharSequence) args[0];
+                    return null;
+                }
+                else if( name.equals( "getText" ) ) {
+                    return text;
+                }
+                else if( name.equals( "setOnClickListener" ) ) {
+                    clickListener = (View.OnClickListener) args[0];
+                    return null;
+                }
+                else if( name.equals( "setEnabled" ) ) {
+                    isEnabled = (Boolean) args[0];
+                    return null;
+                }
+                else if( name.equals( "isEnabled" ) ) {
+                    return isEnabled;
+                }
+            }
+            return Mockito.RETURNS_DEFAULTS.answer( invocation );
+        }
+
+        /** Mock widget given to the app. */
+        Button button;
+        /** Text. */
+        CharSequence text;
+        /** Click listener. */
+        View.OnClickListener clickListener;
+        /** Enabled state. */
+        boolean isEnabled = true;
+    }
+
+    /** Whether the views record the calls made by the app. */
+    private final boolean isRecording;
+    /** Views (by id). */
+    private final Map< Integer , FakeView > views = new HashMap< Integer , FakeView >();
+}
@@ -0,0 +1,621 @@
+package com.cs4222.khuthia.sensortestkit;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+   Feeds synthetic readings to the listeners of a {@link FakeSensorManager}
+   at a given rate, to find the rate at which the app's sensor processing
+   saturates.
+
+   <p> Each channel is a sensor type whose readings follow a seeded
+   {@link Waveform} (so a run is repeatable), and the channels take turns,
+   so each gets rate / numChannels readings per sec. Like the sensor HAL,
+   a producer thread writes the readings into a bounded FIFO on schedule,
+   dropping them when it is full, and the app's sensor thread (a consumer
+   thread here) delivers them to the listeners.
+
+   <p> {@link #ramp} runs steps at increasing rates until one violates the
+   {@link Slo} (drops, queue growth or callback latency), and reports the
+   knee: the highest rate that met it.
+ */
+public class SensorLoadGenerator {
+
+    /** Creates a generator for the listeners of the sensor manager, with the waveforms' random seed. */
+    public SensorLoadGenerator( FakeSensorManager sensors ,
+                                long seed ) {
+        this.sensors = sensors;
+        this.seed = seed;
+    }
+
+    /**
+       Adds a channel (its readings are generated in turn with the other channels).
+
+       @param  numValues  Number of values per reading (e.g. 3 for x, y, z)
+     */
+    public SensorLoadGenerator addChannel( int sensorType ,
+                                           int numValues ,
+                                           Waveform waveform ) {
+        channels.add( new Channel( sensorType , numValues , waveform ) );
+        return this;
+    }
+
+    /** Sets the capacity of the FIFO between the producer and the sensor thread (readings). */
+    public SensorLoadGenerator setQueueCapacity( int queueCapacity ) {
+        if( queueCapacity <= 0 ) {
+            throw new IllegalArgumentException( "Queue capacity must be positive: " + queueCapacity );
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+       Generates readings at a given rate for a while, and waits for the
+       sensor thread to deliver the queued ones.
+
+       @param  eventsPerSecond  Rate of readings (all channels together)
+       @param  durationMillis   Time readings are generated for (millisec)
+     */
+    public Step run( int eventsPerSecond ,
+                     long durationMillis )
+        throws InterruptedException {
+
+        if( channels.isEmpty() ) {
+            throw new IllegalStateException( "No channels added" );
+        }
+        if( eventsPerSecond <= 0 ) {
+            throw new IllegalArgumentException( "Rate must be positive: " + eventsPerSecond );
+        }
+
+        // The FIFO (a whole number of channel rounds, so that each slot always holds the same channel)
+        int numChannels = channels.size();
+        int capacity = ( ( queueCapacity + numChannels - 1 ) / numChannels ) * numChannels;
+        Slot[] slots = new Slot[ capacity ];
+        for( int i = 0 ; i < capacity ; ++i ) {
+            slots[i] = new Slot( channels.get( i % numChannels ) );
+        }
+        Random[] randoms = new Random[ numChannels ];
+        for( int i = 0 ; i < numChannels ; ++i ) {
+            randoms[i] = new Random( seed * 31L + i );
+        }
+        int numEvents = (int) Math.max( 1L , eventsPerSecond * durationMillis / 1000L );
+        Step step = new Step( eventsPerSecond , numEvents , capacity );
+
+        // Start the sensor thread
+        Consumer consumer = new Consumer( slots , step );
+        consumer.start();
+
+        // Produce the readings on schedule (the event timestamps follow the schedule,
+        //  even when the producer runs late)
+        double intervalNanos = 1.0E9 / eventsPerSecond;
+        long startTime = System.nanoTime();
+        for( int n = 0 ; n < numEvents ; ++n ) {
+            long offset = (long) ( n * intervalNanos );
+            long dueTime = startTime + offset;
+            waitUntil( dueTime );
+            step.maxGeneratorLagNanos = Math.max( step.maxGeneratorLagNanos , System.nanoTime() - dueTime );
+
+            // Drop the reading if the FIFO is full
+            long head = consumer.head.get();
+            if( head - consumer.tail.get() >= capacity ) {
+                ++step.numDropped;
+                continue;
+            }
+            Slot slot = slots[ (int) ( head % capacity ) ];
+            int channelIndex = n % numChannels;
+            slot.channel.waveform.fill( offset * 1.0E-9 , randoms[ channelIndex ] , slot.values );
+            slot.dueTime = dueTime;
+            slot.timestamp = UPTIME_AT_START + offset;
+            // Publish the slot (after it is written)
+            consumer.head.lazySet( head + 1 );
+            step.maxBacklog = Math.max( step.maxBacklog , (int) ( head + 1 - consumer.tail.get() ) );
+        }
+        step.generatorNanos = System.nanoTime() - startTime;
+        step.backlogAtEnd = (int) ( consumer.head.get() - consumer.tail.get() );
+
+        // Let the sensor thread deliver the queued readings
+        consumer.isProducerDone = true;
+        consumer.join( MAX_DRAIN_MILLIS );
+        if( consumer.isAlive() ) {
+            consumer.interrupt();
+            consumer.join();
+            throw new IllegalStateException( "The sensor thread did not deliver the queued readings in " +
+                                             MAX_DRAIN_MILLIS + " ms" );
+        }
+        if( consumer.failure != null ) {
+            throw new IllegalStateException( "A listener failed" , consumer.failure );
+        }
+        step.computeLatencies();
+        return step;
+    }
+
+    /**
+       Runs steps at increasing rates (startRate, startRate x factor, ...,
+       up to maxRate), until a step violates the SLO.
+     */
+    public Report ramp( int startRate ,
+                        int maxRate ,
+                        double factor ,
+                        long stepMillis ,
+                        Slo slo )
+        throws InterruptedException {
+
+        if( factor <= 1.0 ) {
+            throw new IllegalArgumentException( "Ramp factor must be > 1: " + factor );
+        }
+        Report report = new Report( slo );
+        int rate = startRate;
+        while( true ) {
+            Step step = run( rate , stepMillis );
+            step.violation = slo.check( step );
+            report.steps.add( step );
+            if( step.violation != null || rate >= maxRate ) {
+                return report;
+            }
+            rate = (int) Math.min( maxRate , Math.ceil( rate * factor ) );
+        }
+    }
+
+    /** Helper method that waits until the given time (System.nanoTime). */
+    private static void waitUntil( long dueTime ) {
+        long remaining;
+        while( ( remaining = dueTime - System.nanoTime() ) > 0L ) {
+            if( remaining > SPIN_NANOS ) {
+                LockSupport.parkNanos( remaining - SPIN_NANOS );
+            }
+            else {
+                // Let the sensor thread run, in case they share a CPU
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+       A deterministic signal for the values of a channel's readings.
+
+       <p> The value depends only on the reading's time since the start of
+       the run, and the channel's random numbers (seeded).
+     */
+    public static abstract class Waveform {
+
+        /**
+           Gets a value of a reading.
+
+           @param  time    Reading time since the start of the run (sec)
+           @param  index   Index of the value in the reading (e.g. 0 for x)
+           @param  random  The channel's random numbers
+         */
+        public abstract float valueAt( double time ,
+                                       int index ,
+                                       Random random );
+
+        /** Fills all the values of a reading. */
+        void fill( double time ,
+                   Random random ,
+                   float[] values ) {
+            for( int i = 0 ; i < values.length ; ++i ) {
+                values[i] = valueAt( time , i , random );
+            }
+        }
+
+        /** Sinusoid around an offset (the values of a reading are a third of a period apart). */
+        public static Waveform sine( final float offset ,
+                                     final float amplitude ,
+                                     final double frequency ) {
+            return new Waveform() {
+                @Override
+                public float valueAt( double time , int index , Random random ) {
+                    double phase = 2.0 * Math.PI * ( frequency * time + index / 3.0 );
+                    return offset + amplitude * (float) Math.sin( phase );
+                }
+            };
+        }
+
+        /** Gaussian noise. */
+        public static Waveform noise( final float mean ,
+                                      final float stdDev ) {
+            return new Waveform() {
+                @Override
+                public float valueAt( double time , int index , Random random ) {
+                    return mean + stdDev * (float) random.nextGaussian();
+                }
+            };
+        }
+
+        /** Square wave, from low to high every half period (sec). */
+        public static Waveform step( final float low ,
+                                     final float high ,
+                                     final double period ) {
+            return new Waveform() {
+                @Override
+                public float valueAt( double time , int index , Random random ) {
+                    return ( ( time % period ) < period / 2.0 ? low : high );
+                }
+            };
+        }
+
+        /**
+           A base level, with bursts of uniform noise of +/- amplitude
+           (e.g. shaking the phone) of burstLength sec every period sec.
+         */
+        public static Waveform burst( final float base ,
+                                      final float amplitude ,
+                                      final double burstLength ,
+                                      final double period ) {
+            return new Waveform() {
+                @Override
+                public float valueAt( double time , int index , Random random ) {
+                    if( ( time % period ) >= burstLength ) {
+                        return base;
+                    }
+                    return base + amplitude * ( 2.0F * random.nextFloat() - 1.0F );
+                }
+            };
+        }
+    }
+
+    /**
+       Service level objective of the sensor processing: no more readings
+       dropped than allowed, a FIFO backlog that does not keep growing,
+       and a bounded latency from a reading's due time to the end of its
+       callbacks.
+     */
+    public static class Slo {
+
+        /**
+           Creates an SLO.
+
+           @param  maxDropFraction      Max fraction of the readings dropped
+           @param  maxBacklogFraction   Max fraction of the FIFO still full when the producer stops
+           @param  maxP99LatencyMillis  Max 99th percentile latency (millisec)
+         */
+        public Slo( double maxDropFraction ,
+                    double maxBacklogFraction ,
+                    double maxP99LatencyMillis ) {
+            this.maxDropFraction = maxDropFraction;
+            this.maxBacklogFraction = maxBacklogFraction;
+            this.maxP99LatencyMillis = maxP99LatencyMillis;
+        }
+
+        /** Checks a step, returning the violation (null if it met the SLO). */
+        public String check( Step step ) {
+            if( step.getNumDropped() > maxDropFraction * step.getNumOffered() ) {
+                return step.getNumDropped() + " readings dropped";
+            }
+            if( step.getBacklogAtEnd() > maxBacklogFraction * step.getQueueCapacity() ) {
+                return "FIFO backlog grew to " + step.getBacklogAtEnd() + " of " + step.getQueueCapacity();
+            }
+            if( step.getP99LatencyNanos() > maxP99LatencyMillis * 1.0E6 ) {
+                return String.format( Locale.US , "p99 latency %.2f ms" , step.getP99LatencyNanos() * 1.0E-6 );
+            }
+            return null;
+        }
+
+        /** Max fraction of the readings dropped. */
+        final double maxDropFraction;
+        /** Max fraction of the FIFO still full when the producer stops. */
+        final double maxBacklogFraction;
+        /** Max 99th percentile latency (millisec). */
+        final double maxP99LatencyMillis;
+    }
+
+    /** Results of a run at one rate. */
+    public static class Step {
+
+        /** Creates the results of a run. */
+        Step( int offeredRate ,
+              int numOffered ,
+              int queueCapacity ) {
+            this.offeredRate = offeredRate;
+            this.numOffered = numOffered;
+            this.queueCapacity = queueCapacity;
+            this.latencies = new long[ numOffered ];
+        }
+
+        /** Gets the rate the readings were generated at (readings/sec). */
+        public int getOfferedRate() {
+            return offeredRate;
+        }
+
+        /** Gets the number of readings generated. */
+        public int getNumOffered() {
+            return numOffered;
+        }
+
+        /** Gets the number of readings delivered to the listeners. */
+        public int getNumDelivered() {
+            return numDelivered;
+        }
+
+        /** Gets the number of readings dropped (the FIFO was full). */
+        public int getNumDropped() {
+            return numDropped;
+        }
+
+        /** Gets the rate the readings were delivered at, over the run and the drain (readings/sec). */
+        public double getDeliveredRate() {
+            long elapsed = Math.max( generatorNanos , lastDeliveryNanos );
+            return ( elapsed == 0L ? 0.0 : numDelivered * 1.0E9 / elapsed );
+        }
+
+        /** Gets the FIFO capacity (readings). */
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        /** Gets the max FIFO backlog (readings). */
+        public int getMaxBacklog() {
+            return maxBacklog;
+        }
+
+        /** Gets the FIFO backlog when the producer stopped (readings). */
+        public int getBacklogAtEnd() {
+            return backlogAtEnd;
+        }
+
+        /** Gets the median latency, from a reading's due time to the end of its callbacks (nanosec). */
+        public long getP50LatencyNanos() {
+            return p50LatencyNanos;
+        }
+
+        /** Gets the 99th percentile latency (nanosec). */
+        public long getP99LatencyNanos() {
+            return p99LatencyNanos;
+        }
+
+        /** Gets the max latency (nanosec). */
+        public long getMaxLatencyNanos() {
+            return maxLatencyNanos;
+        }
+
+        /** Gets the mean time spent in the callbacks per reading (nanosec). */
+        public double getMeanCallbackNanos() {
+            return ( numDelivered == 0 ? 0.0 : (double) callbackNanos / numDelivered );
+        }
+
+        /** Gets the max time the producer ran behind its schedule (nanosec). */
+        public long getMaxGeneratorLagNanos() {
+            return maxGeneratorLagNanos;
+        }
+
+        /** Gets the SLO violation (null if the step met the SLO, or was not checked). */
+        public String getViolation() {
+            return violation;
+        }
+
+        /** Helper method that computes the latency percentiles. */
+        void computeLatencies() {
+            if( numDelivered == 0 ) {
+                return;
+            }
+            long[] sorted = Arrays.copyOf( latencies , numDelivered );
+            Arrays.sort( sorted );
+            p50LatencyNanos = sorted[ ( numDelivered - 1 ) / 2 ];
+            p99LatencyNanos = sorted[ (int) Math.ceil( 0.99 * numDelivered ) - 1 ];
+            maxLatencyNanos = sorted[ numDelivered - 1 ];
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return String.format( Locale.US ,
+                                  "%8d/s offered, %10.0f/s delivered, %6d dropped, backlog max %5d end %5d, " +
+                                  "latency p50 %8.3f ms p99 %8.3f ms max %8.3f ms, callback %7.0f ns%s" ,
+                                  offeredRate , getDeliveredRate() , numDropped , maxBacklog , backlogAtEnd ,
+                                  p50LatencyNanos * 1.0E-6 , p99LatencyNanos * 1.0E-6 , maxLatencyNanos * 1.0E-6 ,
+                                  getMeanCallbackNanos() ,
+                                  ( violation == null ? "" : "  <-- " + violation ) );
+        }
+
+        /** Rate the readings were generated at (readings/sec). */
+        private final int offeredRate;
+        /** Number of readings generated. */
+        private final int numOffered;
+        /** FIFO capacity. */
+        private final int queueCapacity;
+        /** Latency of each delivered reading (nanosec), written by the sensor thread. */
+        final long[] latencies;
+        /** Number of readings delivered (written by the sensor thread). */
+        int numDelivered;
+        /** Number of readings dropped. */
+        int numDropped;
+        /** Max FIFO backlog. */
+        int maxBacklog;
+        /** FIFO backlog when the producer stopped. */
+        int backlogAtEnd;
+        /** Time the producer ran (nanosec). */
+        long generatorNanos;
+        /** Time from the start of the run to the end of the last delivery (nanosec), written by the sensor thread. */
+        long lastDeliveryNanos;
+        /** Time spent in the callbacks (nanosec), written by the sensor thread. */
+        long callbackNanos;
+        /** Max time the producer ran behind its schedule (nanosec). */
+        long maxGeneratorLagNanos;
+        /** Latency percentiles (nanosec). */
+        private long p50LatencyNanos , p99LatencyNanos , maxLatencyNanos;
+        /** SLO violation (null if none). */
+        String violation;
+    }
+
+    /** Results of a ramp. */
+    public static class Report {
+
+        /** Creates an empty report. */
+        Report( Slo slo ) {
+            this.slo = slo;
+        }
+
+        /** Gets the steps, in the order they were run. */
+        public List< Step > getSteps() {
+            return Collections.unmodifiableList( steps );
+        }
+
+        /** Gets the knee: the highest rate step that met the SLO (null if even the first one failed). */
+        public Step getKnee() {
+            Step knee = null;
+            for( Step step : steps ) {
+                if( step.getViolation() == null ) {
+                    knee = step;
+                }
+            }
+            return knee;
+        }
+
+        /** Checks if the load saturated the sensor processing (a step violated the SLO). */
+        public boolean isSaturated() {
+            return ( ! steps.isEmpty() && steps.get( steps.size() - 1 ).getViolation() != null );
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for( Step step : steps ) {
+                sb.append( step ).append( '\n' );
+            }
+            Step knee = getKnee();
+            sb.append( "Knee: " );
+            if( knee == null ) {
+                sb.append( "none (the first step violated the SLO)" );
+            }
+            else {
+                sb.append( String.format( Locale.US , "%d readings/s (%.0f/s delivered)%s" ,
+                                          knee.getOfferedRate() , knee.getDeliveredRate() ,
+                                          ( isSaturated() ? "" : ", not saturated at the max rate" ) ) );
+            }
+            return sb.toString();
+        }
+
+        /** SLO the steps were checked against. */
+        final Slo slo;
+        /** Steps. */
+        final List< Step > steps = new ArrayList< Step >();
+    }
+
+    /** The app's sensor thread, delivering the readings in the FIFO. */
+    private class Consumer
+        extends Thread {
+
+        /** Creates the sensor thread. */
+        Consumer( Slot[] slots ,
+                  Step step ) {
+            super( "SensorThread" );
+            this.slots = slots;
+            this.step = step;
+            this.startTime = System.nanoTime();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            try {
+                long tail = 0L;
+                while( true ) {
+
+                    // Wait for a reading (or the end of the run)
+                    if( tail == head.get() ) {
+                        if( isProducerDone && tail == head.get() ) {
+                            return;
+                        }
+                        if( isInterrupted() ) {
+                            return;
+                        }
+                        LockSupport.parkNanos( IDLE_PARK_NANOS );
+                        continue;
+                    }
+
+                    // Deliver it, and free the slot
+                    Slot slot = slots[ (int) ( tail % slots.length ) ];
+                    long callbackStart = System.nanoTime();
+                    sensors.deliver( slot.channel.sensorType , slot.timestamp , ACCURACY , slot.values );
+                    long callbackEnd = System.nanoTime();
+                    step.latencies[ step.numDelivered++ ] = callbackEnd - slot.dueTime;
+                    step.callbackNanos += callbackEnd - callbackStart;
+                    step.lastDeliveryNanos = callbackEnd - startTime;
+                    ++tail;
+                    this.tail.lazySet( tail );
+                }
+            }
+            catch( Throwable e ) {
+                failure = e;
+            }
+        }
+
+        /** FIFO slots. */
+        private final Slot[] slots;
+        /** Results of the run. */
+        private final Step step;
+        /** Start time of the run (nanosec). */
+        private final long startTime;
+        /** Number of readings written to the FIFO (by the producer). */
+        final AtomicLong head = new AtomicLong();
+        /** Number of readings delivered from the FIFO (by the sensor thread). */
+        final AtomicLong tail = new AtomicLong();
+        /** Flag to indicate that the producer has stopped. */
+        volatile boolean isProducerDone = false;
+        /** Exception thrown by a listener (null if none). */
+        volatile Throwable failure;
+    }
+
+    /** A channel. */
+    private static class Channel {
+
+        /** Creates a channel. */
+        Channel( int sensorType ,
+                 int numValues ,
+                 Waveform waveform ) {
+            this.sensorType = sensorType;
+            this.numValues = numValues;
+            this.waveform = waveform;
+        }
+
+        /** Sensor type (Sensor.TYPE_*). */
+        final int sensorType;
+        /** Number of values per reading. */
+        final int numValues;
+        /** Waveform of the values. */
+        final Waveform waveform;
+    }
+
+    /** A FIFO slot (re-used, so the producer does not allocate). */
+    private static class Slot {
+
+        /** Creates a slot for the readings of a channel. */
+        Slot( Channel channel ) {
+            this.channel = channel;
+            this.values = new float[ channel.numValues ];
+        }
+
+        /** Channel. */
+        final Channel channel;
+        /** Reading's values. */
+        final float[] values;
+        /** Time the reading was due (System.nanoTime). */
+        long dueTime;
+        /** Event timestamp (nanosec, device uptime). */
+        long timestamp;
+    }
+
+    /** Sensor manager whose listeners get the readings. */
+    private final FakeSensorManager sensors;
+    /** Seed of the waveforms' random numbers. */
+    private final long seed;
+    /** Channels. */
+    private final List< Channel > channels = new ArrayList< Channel >();
+    /** FIFO capacity (readings). */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /** Default FIFO capacity (readings), about a sec of a 400 Hz IMU. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 512;
+    /** Accuracy of the readings. */
+    private static final int ACCURACY = 3;
+    /** Device uptime at the start of a run (nanosec), like the replayer. */
+    private static final long UPTIME_AT_START = 60L * 1000000000L;
+    /** The producer spins (yielding) when a reading is due within this time (nanosec). */
+    private static final long SPIN_NANOS = 100000L;
+    /** The sensor thread parks for this time when the FIFO is empty (nanosec). */
+    private static final long IDLE_PARK_NANOS = 20000L;
+    /** Max time to wait for the sensor thread to deliver the queued readings (millisec). */
+    private static final long MAX_DRAIN_MILLIS = 30000L;
+}
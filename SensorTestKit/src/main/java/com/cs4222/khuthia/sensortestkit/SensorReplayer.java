@@ -0,0 +1,182 @@
+package com.cs4222.khuthia.sensortestkit;
+
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+/**
+   Replays a sensor trace into the listeners registered with the fake
+   sensor and location managers.
+
+   <p> The events are delivered on the calling thread (like the main
+   thread on a phone), either paced at a multiple of the recorded speed,
+   or as fast as possible. Pacing only changes when an event is delivered;
+   the apps still timestamp and rate limit with System.currentTimeMillis(),
+   so at N times speed their logging and display rates see compressed time.
+ */
+public class SensorReplayer {
+
+    /**
+       Creates a replayer.
+
+       @param  sensorManager    Sensor manager the app registered with
+       @param  locationManager  Location manager the app registered with (null if it has none)
+     */
+    public SensorReplayer( FakeSensorManager sensorManager ,
+                           FakeLocationManager locationManager ) {
+        this.sensorManager = sensorManager;
+        this.locationManager = locationManager;
+    }
+
+    /**
+       Replays the trace.
+
+       @param  speed  Replay speed (1.0 is real time, 10.0 is 10 times faster),
+                      or AS_FAST_AS_POSSIBLE
+       @return  Replay stats (partial, if the thread is interrupted)
+     */
+    public Result replay( SensorTrace trace ,
+                          double speed ) {
+        Result result = new Result();
+        long startTime = trace.getStartTime();
+        long beginNanos = System.nanoTime();
+        for( int i = 0 ; i < trace.size() ; ++i ) {
+            SensorTrace.Event event = trace.get( i );
+
+            // Wait until the event is due
+            if( speed > 0.0 ) {
+                long dueNanos = beginNanos + (long) ( ( event.time - startTime ) * 1.0E6 / speed );
+                if( ! waitUntil( dueNanos ) ) {
+                    break;
+                }
+                result.maxLagNanos = Math.max( result.maxLagNanos , System.nanoTime() - dueNanos );
+            }
+
+            // Deliver it to the app
+            long deliverNanos = System.nanoTime();
+            int numDelivered;
+            if( event.isLocation() ) {
+                numDelivered = ( locationManager == null ? 0 : locationManager.deliver( event ) );
+                ++result.numLocations;
+            }
+            else {
+                // NOTE: Event timestamps are in the device uptime base (nanosec), so
+                //  they start at UPTIME_AT_START rather than at the UNIX time
+                long timestamp = UPTIME_AT_START + ( event.time - startTime ) * 1000000L;
+                numDelivered = sensorManager.deliver( event.sensorType , timestamp ,
+                                                      event.accuracy , event.values );
+                ++result.numSensorEvents;
+            }
+            result.callbackNanos += System.nanoTime() - deliverNanos;
+            if( numDelivered == 0 ) {
+                ++result.numUndelivered;
+            }
+        }
+        result.traceMillis = trace.getEndTime() - startTime;
+        result.elapsedNanos = System.nanoTime() - beginNanos;
+        return result;
+    }
+
+    /** Helper method that waits until the given time (returns false if interrupted). */
+    private static boolean waitUntil( long dueNanos ) {
+        long remainingNanos;
+        while( ( remainingNanos = dueNanos - System.nanoTime() ) > 0L ) {
+            // Sleep for long waits, park (more precise) for the rest
+            if( remainingNanos > SLEEP_THRESHOLD ) {
+                try {
+                    Thread.sleep( TimeUnit.NANOSECONDS.toMillis( remainingNanos - SLEEP_THRESHOLD / 2 ) );
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            else {
+                LockSupport.parkNanos( remainingNanos );
+                if( Thread.interrupted() ) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Replay stats. */
+    public static class Result {
+
+        /** Gets the number of sensor readings replayed. */
+        public int getNumSensorEvents() {
+            return numSensorEvents;
+        }
+
+        /** Gets the number of location fixes replayed. */
+        public int getNumLocations() {
+            return numLocations;
+        }
+
+        /** Gets the number of events that no listener was registered for. */
+        public int getNumUndelivered() {
+            return numUndelivered;
+        }
+
+        /** Gets the recorded duration of the trace (millisec). */
+        public long getTraceMillis() {
+            return traceMillis;
+        }
+
+        /** Gets the elapsed time of the replay (nanosec). */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /** Gets the time spent in the app's callbacks (nanosec). */
+        public long getCallbackNanos() {
+            return callbackNanos;
+        }
+
+        /** Gets the max delay of an event after it was due (nanosec, 0 if not paced). */
+        public long getMaxLagNanos() {
+            return maxLagNanos;
+        }
+
+        /** Gets the mean time spent in the app's callbacks per event (nanosec). */
+        public double getMeanCallbackNanos() {
+            int numEvents = numSensorEvents + numLocations;
+            return ( numEvents == 0 ? 0.0 : (double) callbackNanos / numEvents );
+        }
+
+        /** Gets the callback throughput (events per second of callback time). */
+        public double getEventsPerSecond() {
+            return ( callbackNanos == 0L ? 0.0 : ( numSensorEvents + numLocations ) * 1.0E9 / callbackNanos );
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return numSensorEvents + " sensor events, " + numLocations + " locations (" +
+                numUndelivered + " undelivered), trace " + traceMillis + " ms, replay " +
+                elapsedNanos / 1000000 + " ms, callbacks " + callbackNanos / 1000000 + " ms (" +
+                (int) getMeanCallbackNanos() + " ns/event, " + (int) getEventsPerSecond() +
+                " events/s), max lag " + maxLagNanos / 1000 + " us";
+        }
+
+        /** Counts. */
+        int numSensorEvents , numLocations , numUndelivered;
+        /** Timings. */
+        long traceMillis , elapsedNanos , callbackNanos , maxLagNanos;
+    }
+
+    /** Sensor manager. */
+    private final FakeSensorManager sensorManager;
+    /** Location manager (may be null). */
+    private final FakeLocationManager locationManager;
+
+    /** Replay speed to deliver the events as fast as possible. */
+    public static final double AS_FAST_AS_POSSIBLE = 0.0;
+    /** Replay speed to deliver the events at the recorded times. */
+    public static final double REAL_TIME = 1.0;
+    /** Device uptime at the start of the trace (nanosec), for the event timestamps. */
+    private static final long UPTIME_AT_START = 60L * 1000000000L;
+    /** Waits longer than this sleep first (nanosec). */
+    private static final long SLEEP_THRESHOLD = 2000000L;
+}
@@ -0,0 +1,291 @@
+package com.cs4222.khuthia.sensortestkit;
+
+import java.io.*;
+import java.util.*;
+
+import android.hardware.*;
+
+/**
+   A recorded sequence of sensor readings and location fixes, in time order.
+
+   <p> A trace is read from the logs written by the apps (a SensorLogApp
+   session folder, the BaroGpsApp logs, or the LightAnalyzer log), or
+   built event by event in a test. Lines that cannot be parsed are
+   skipped and counted.
+ */
+public class SensorTrace {
+
+    /** A sensor reading, or a location fix. */
+    public static class Event {
+
+        /** Creates a sensor reading. */
+        Event( long time ,
+               int sensorType ,
+               int accuracy ,
+               float[] values ) {
+            this.time = time;
+            this.sensorType = sensorType;
+            this.accuracy = accuracy;
+            this.values = values;
+            locationTime = 0L;
+            provider = null;
+            latitude = longitude = altitude = 0.0;
+            locationAccuracy = bearing = speed = 0.0F;
+        }
+
+        /** Creates a location fix. */
+        Event( long time ,
+               long locationTime ,
+               String provider ,
+               double latitude ,
+               double longitude ,
+               float locationAccuracy ,
+               double altitude ,
+               float bearing ,
+               float speed ) {
+            this.time = time;
+            sensorType = TYPE_LOCATION;
+            accuracy = 0;
+            values = null;
+            this.locationTime = locationTime;
+            this.provider = provider;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.locationAccuracy = locationAccuracy;
+            this.altitude = altitude;
+            this.bearing = bearing;
+            this.speed = speed;
+        }
+
+        /** Checks if this is a location fix. */
+        public boolean isLocation() {
+            return sensorType == TYPE_LOCATION;
+        }
+
+        /** Time the event was delivered to the app (UNIX millisec). */
+        public final long time;
+        /** Sensor type (Sensor.TYPE_*), or TYPE_LOCATION. */
+        public final int sensorType;
+        /** Sensor accuracy (SensorManager.SENSOR_STATUS_*). */
+        public final int accuracy;
+        /** Sensor values. */
+        public final float[] values;
+        /** Location time (UNIX millisec). */
+        public final long locationTime;
+        /** Location provider. */
+        public final String provider;
+        /** Location (degrees), and altitude (m, -1 if not available). */
+        public final double latitude , longitude , altitude;
+        /** Location accuracy (m), bearing (degrees) and speed (m/sec), -1 if not available. */
+        public final float locationAccuracy , bearing , speed;
+    }
+
+    /** Adds a sensor reading. */
+    public void addSensorEvent( long time ,
+                                int sensorType ,
+                                int accuracy ,
+                                float... values ) {
+        add( new Event( time , sensorType , accuracy , values ) );
+    }
+
+    /** Adds a location fix (altitude, bearing and speed are -1 if not available). */
+    public void addLocation( long time ,
+                             long locationTime ,
+                             String provider ,
+                             double latitude ,
+                             double longitude ,
+                             float accuracy ,
+                             double altitude ,
+                             float bearing ,
+                             float speed ) {
+        add( new Event( time , locationTime , provider , latitude , longitude ,
+                        accuracy , altitude , bearing , speed ) );
+    }
+
+    /** Gets the number of events. */
+    public int size() {
+        return events.size();
+    }
+
+    /** Gets an event (in time order). */
+    public Event get( int index ) {
+        sort();
+        return events.get( index );
+    }
+
+    /** Gets the time of the first event (UNIX millisec). */
+    public long getStartTime() {
+        return ( events.isEmpty() ? 0L : get( 0 ).time );
+    }
+
+    /** Gets the time of the last event (UNIX millisec). */
+    public long getEndTime() {
+        return ( events.isEmpty() ? 0L : get( events.size() - 1 ).time );
+    }
+
+    /** Gets the number of log lines skipped while reading the trace. */
+    public int getNumSkippedLines() {
+        return numSkippedLines;
+    }
+
+    /** Reads a SensorLogApp session folder (the logged sensors and locations). */
+    public static SensorTrace readSensorLogSession( File sessionFolder )
+        throws IOException {
+
+        // Format: Human readable time, Unix time, sensor values..., accuracy
+        SensorTrace trace = new SensorTrace();
+        trace.readSensorLog( new File( sessionFolder , "Accl.txt" ) , Sensor.TYPE_ACCELEROMETER , 1 , 2 , 3 , 5 );
+        trace.readSensorLog( new File( sessionFolder , "Gravity.txt" ) , Sensor.TYPE_GRAVITY , 1 , 2 , 3 , 5 );
+        trace.readSensorLog( new File( sessionFolder , "LinAccl.txt" ) , Sensor.TYPE_LINEAR_ACCELERATION , 1 , 2 , 3 , 5 );
+        trace.readSensorLog( new File( sessionFolder , "Mag.txt" ) , Sensor.TYPE_MAGNETIC_FIELD , 1 , 2 , 3 , 5 );
+        trace.readSensorLog( new File( sessionFolder , "Gyro.txt" ) , Sensor.TYPE_GYROSCOPE , 1 , 2 , 3 , 5 );
+        trace.readSensorLog( new File( sessionFolder , "RotVec.txt" ) , Sensor.TYPE_ROTATION_VECTOR , 1 , 2 , 4 , 6 );
+        trace.readSensorLog( new File( sessionFolder , "Baro.txt" ) , Sensor.TYPE_PRESSURE , 1 , 2 , 1 , 4 );
+        trace.readSensorLog( new File( sessionFolder , "Light.txt" ) , Sensor.TYPE_LIGHT , 1 , 2 , 1 , 3 );
+        trace.readSensorLog( new File( sessionFolder , "Proximity.txt" ) , Sensor.TYPE_PROXIMITY , 1 , 2 , 1 , 3 );
+
+        // Format: Human readable time, Unix time, Location time, Human readable location time,
+        //  Provider, Latitude, Longitude, Accuracy, Altitude, Bearing, Speed
+        trace.readLocationLog( new File( sessionFolder , "Loc.txt" ) , 1 , 2 , 4 );
+        return trace;
+    }
+
+    /** Reads the BaroGpsApp logs ('Barometer.csv' and 'GPS.csv') in the log folder. */
+    public static SensorTrace readBaroGpsLogs( File logFolder )
+        throws IOException {
+
+        // Format: Reading number, Unix time, Human readable time, Millibar, ...
+        SensorTrace trace = new SensorTrace();
+        trace.readSensorLog( new File( logFolder , "Barometer.csv" ) , Sensor.TYPE_PRESSURE , 1 , 3 , 1 , -1 );
+
+        // Format: Reading number, Unix time, Human readable time, Provider,
+        //  Latitude, Longitude, Accuracy, Altitude, Bearing, Speed, ...
+        trace.readLocationLog( new File( logFolder , "GPS.csv" ) , 1 , 1 , 3 );
+        return trace;
+    }
+
+    /** Reads the LightAnalyzer log ('Light.csv'). */
+    public static SensorTrace readLightAnalyzerLog( File logFile )
+        throws IOException {
+
+        // Format: Reading number, Unix time, Human readable time, Lux
+        SensorTrace trace = new SensorTrace();
+        trace.readSensorLog( logFile , Sensor.TYPE_LIGHT , 1 , 3 , 1 , -1 );
+        return trace;
+    }
+
+    /**
+       Helper method that reads the sensor readings in a log file (if it exists).
+
+       @param  accuracyColumn  Column of the accuracy (-1 if not logged)
+     */
+    private void readSensorLog( File logFile ,
+                                int sensorType ,
+                                int timeColumn ,
+                                int firstValueColumn ,
+                                int numValues ,
+                                int accuracyColumn )
+        throws IOException {
+        if( ! logFile.isFile() ) {
+            return;
+        }
+        BufferedReader in = new BufferedReader( new FileReader( logFile ) );
+        try {
+            String line;
+            while( ( line = in.readLine() ) != null ) {
+                try {
+                    String[] columns = line.split( "," );
+                    long time = Long.parseLong( columns[ timeColumn ] );
+                    float[] values = new float[ numValues ];
+                    for( int i = 0 ; i < numValues ; ++i ) {
+                        values[i] = Float.parseFloat( columns[ firstValueColumn + i ] );
+                    }
+                    int accuracy = ( accuracyColumn < 0 ?
+                                     SensorManager.SENSOR_STATUS_ACCURACY_HIGH :
+                                     Integer.parseInt( columns[ accuracyColumn ] ) );
+                    addSensorEvent( time , sensorType , accuracy , values );
+                }
+                catch( RuntimeException e ) {
+                    // Skip lines that are not in the expected format (e.g. partly written)
+                    ++numSkippedLines;
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+       Helper method that reads the location fixes in a log file (if it exists).
+       The provider is followed by the latitude, longitude, accuracy, altitude,
+       bearing and speed.
+     */
+    private void readLocationLog( File logFile ,
+                                  int timeColumn ,
+                                  int locationTimeColumn ,
+                                  int providerColumn )
+        throws IOException {
+        if( ! logFile.isFile() ) {
+            return;
+        }
+        BufferedReader in = new BufferedReader( new FileReader( logFile ) );
+        try {
+            String line;
+            while( ( line = in.readLine() ) != null ) {
+                try {
+                    String[] columns = line.split( "," );
+                    int i = providerColumn;
+                    addLocation( Long.parseLong( columns[ timeColumn ] ) ,
+                                 Long.parseLong( columns[ locationTimeColumn ] ) ,
+                                 columns[ i ] ,
+                                 Double.parseDouble( columns[ i + 1 ] ) ,
+                                 Double.parseDouble( columns[ i + 2 ] ) ,
+                                 Float.parseFloat( columns[ i + 3 ] ) ,
+                                 Double.parseDouble( columns[ i + 4 ] ) ,
+                                 Float.parseFloat( columns[ i + 5 ] ) ,
+                                 Float.parseFloat( columns[ i + 6 ] ) );
+                }
+                catch( RuntimeException e ) {
+                    ++numSkippedLines;
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /** Helper method that adds an event. */
+    private void add( Event event ) {
+        if( ! events.isEmpty() && event.time < events.get( events.size() - 1 ).time ) {
+            isSorted = false;
+        }
+        events.add( event );
+    }
+
+    /** Helper method that sorts the events by time (if required). */
+    private void sort() {
+        if( isSorted ) {
+            return;
+        }
+        // NOTE: The sort is stable, so events with the same time keep their order
+        Collections.sort( events , new Comparator< Event >() {
+                @Override
+                public int compare( Event lhs , Event rhs ) {
+                    return ( lhs.time < rhs.time ? -1 : ( lhs.time == rhs.time ? 0 : 1 ) );
+                }
+            } );
+        isSorted = true;
+    }
+
+    /** Events. */
+    private final List< Event > events = new ArrayList< Event >();
+    /** Flag to indicate that the events are in time order. */
+    private boolean isSorted = true;
+    /** Number of log lines skipped. */
+    private int numSkippedLines;
+
+    /** Event type of a location fix (not a sensor type). */
+    public static final int TYPE_LOCATION = -1;
+}
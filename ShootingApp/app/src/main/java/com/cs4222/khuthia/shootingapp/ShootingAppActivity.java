@@ -16,6 +16,13 @@ import android.media.SoundPool;
 import android.media.AudioManager;
 import android.util.Log;
 
+import com.cs4222.khuthia.sensormetrics.Counter;
+import com.cs4222.khuthia.sensormetrics.LatencyTimer;
+import com.cs4222.khuthia.sensormetrics.MetricsRegistry;
+import com.cs4222.khuthia.sensormetrics.MetricsReporter;
+import com.cs4222.khuthia.sensormetrics.MetricsSnapshot;
+import com.cs4222.khuthia.sensormetrics.SpanTracer;
+
 /**
  Activity that detects a simple gesture by the user.
 
@@ -53,6 +60,14 @@ public class ShootingAppActivity
 
             // Initialise sensor manager and sensors
             initSensors();
+
+            // Export the runtime metrics periodically
+            startMetricsReporter();
+
+            // Dump a trace to the app's files when a sensor callback stalls
+            //  (the folder is null if the storage is not available)
+            tracer.setTrigger( SPAN_SENSOR_CALLBACK , TRACE_TRIGGER_NANOS , TRACE_WINDOW_NANOS ,
+                    getExternalFilesDir( null ) );
         }
         catch( Exception e ) {
             // Log the exception
@@ -68,7 +83,10 @@ public class ShootingAppActivity
         super.onDestroy();
 
         try {
-            // Nothing to do here yet...
+
+            // Stop exporting the metrics (logging a last snapshot), and the trace dumps
+            metricsReporter.stop();
+            tracer.setTrigger( SPAN_SENSOR_CALLBACK , TRACE_TRIGGER_NANOS , TRACE_WINDOW_NANOS , null );
         }
         catch( Exception e ) {
             // Log the exception
@@ -201,6 +219,15 @@ public class ShootingAppActivity
 
     /** Called when the sensor value has changed (not necessarily periodically). */
     public void onSensorChanged( SensorEvent event ) {
+        long startNanos = sensorCallbackTimer.start();
+        long beginNanos = tracer.begin();
+        processSensorEvent( event );
+        tracer.end( SPAN_SENSOR_CALLBACK , beginNanos );
+        sensorCallbackTimer.stop( startNanos );
+    }
+
+    /** Helper method that processes a sensor event. */
+    private void processSensorEvent( SensorEvent event ) {
 
         // NOTE: Sensor callbacks are in the main UI thread, so do not
         //  do very long calculations here. A better approach would be
@@ -209,17 +236,21 @@ public class ShootingAppActivity
 
         // Case 1: Gravity sensor
         if( event.sensor.getType() == Sensor.TYPE_GRAVITY ) {
+            long beginNanos = tracer.begin();
             processGravityValues( event );
+            tracer.end( SPAN_GRAVITY , beginNanos );
         }
         // Case 2: Linear accl sensor
         else if( event.sensor.getType() == Sensor.TYPE_LINEAR_ACCELERATION ) {
+            long beginNanos = tracer.begin();
             processAcclValues( event );
+            tracer.end( SPAN_LINEAR_ACCL , beginNanos );
         }
         else if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            gData = event.values.clone();
+            System.arraycopy( event.values , 0 , gData , 0 , gData.length );
         }
         else if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-            mData = event.values.clone();
+            System.arraycopy( event.values , 0 , mData , 0 , mData.length );
         }
 
         if ( SensorManager.getRotationMatrix( rMat, iMat, gData, mData ) ) {
@@ -229,7 +260,9 @@ public class ShootingAppActivity
         // PA3: Detect the shooting direction and region.
         //  Think about what sensor or sensors on the phone can
         //  help you do this.
+        long beginNanos = tracer.begin();
         detectShootingDirectionAndRegion( event );
+        tracer.end( SPAN_DIRECTION , beginNanos );
     }
 
     /** Process the gravity sensor. */
@@ -242,11 +275,12 @@ public class ShootingAppActivity
         //  which can be calculated as the angle between the sampled
         //  gravity vector and the (0 , 0 , 1) phone's z-axis.
 
-        // Store the gravity readings
-        float[] gravityValues = event.values.clone();
+        // Store the gravity readings (in a preallocated array, as this
+        //  runs for every event)
+        System.arraycopy( event.values , 0 , gravityValues , 0 , gravityValues.length );
 
         // Positive z-axis (0, 0, 1)
-        float[] zaxis = new float[] { 0.0F , 0.0F , 1.0F };
+        float[] zaxis = Z_AXIS;
 
         // Calculate the angle between z-axis and gravity sensor vector.
         // NOTE: This calculation can be easily optimized since there
@@ -284,23 +318,35 @@ public class ShootingAppActivity
         }
 
         // Update the GUI (at a slower rate easy for the user to see on screen)
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         if( currentTime - lastPhoneAngleTime > MAX_UPDATE_INTERVAL_PHONE_ANGLE ) {
 
-            // Update the text view
-            textView_Gravity.setText ( "\nGravity Sensor" +
-                    "\nX: " + gravityValues[0] +
-                    "\nY: " + gravityValues[1] +
-                    "\nZ: " + gravityValues[2] +
-                    "\nAngle of phone with horizontal plane: " + angle + " degrees" +
-                    "\nIs phone face up?: " + isFaceUp );
-            textView_PhoneFaceUp.setText( "\nIs phone face up?: " + isFaceUp );
+            // Update the text view (the texts are re-used: a text view
+            //  copies its text, and the callbacks run in the main thread)
+            gravityText.setLength( 0 );
+            gravityText.append( "\nGravity Sensor" )
+                .append( "\nX: " ).append( gravityValues[0] )
+                .append( "\nY: " ).append( gravityValues[1] )
+                .append( "\nZ: " ).append( gravityValues[2] )
+                .append( "\nAngle of phone with horizontal plane: " ).append( angle ).append( " degrees" )
+                .append( "\nIs phone face up?: " ).append( isFaceUp );
+            textView_Gravity.setText ( gravityText );
+            faceUpText.setLength( 0 );
+            faceUpText.append( "\nIs phone face up?: " ).append( isFaceUp );
+            textView_PhoneFaceUp.setText( faceUpText );
+
+            displayUpdateCounter.increment();
 
             // Set the last GUI update time
             lastPhoneAngleTime = currentTime;
         }
     }
 
+    /** Gets the current time (millisec) of the GUI update rates (the JVM tests replay on a fake clock). */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
     /** Detect the shooting direction and region. */
     private void detectShootingDirectionAndRegion( SensorEvent event ) {
 
@@ -354,12 +400,16 @@ public class ShootingAppActivity
         //  in the text view below.
 
         // Update the GUI (at a slower rate easy for the user to see on screen)
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         if( currentTime - lastPhoneDirectionTime > MAX_UPDATE_INTERVAL_PHONE_DIRECTION ) {
 
-            // Update the text view
-            textView_PhoneShootingRegion.setText( "\nShooting direction: " + shootingDirection + " degrees" +
-                    "\nShooting region: " + shootingRegion );
+            // Update the text view (re-used, like the gravity's)
+            directionText.setLength( 0 );
+            directionText.append( "\nShooting direction: " ).append( shootingDirection ).append( " degrees" )
+                .append( "\nShooting region: " ).append( shootingRegion );
+            textView_PhoneShootingRegion.setText( directionText );
+
+            displayUpdateCounter.increment();
 
             // Set the last GUI update time
             lastPhoneDirectionTime = currentTime;
@@ -430,19 +480,25 @@ public class ShootingAppActivity
         }
 
         // Store the linear accl readings
-        float[] acclValues = event.values.clone();
+        System.arraycopy( event.values , 0 , acclValues , 0 , acclValues.length );
 
         // Update the GUI (at a slower rate easy for the user to see on screen)
-        long currentTime = System.currentTimeMillis();
+        long currentTime = currentTimeMillis();
         if( currentTime - lastPhoneGestureTime > MAX_UPDATE_INTERVAL_PHONE_GESTURE ) {
 
-            // Update the text view
-            textView_Accl.setText ( "\nLinear Accelerometer Sensor" +
-                    "\nX: " + acclValues[0] +
-                    "\nY: " + acclValues[1] +
-                    "\nZ: " + acclValues[2] +
-                    "\nNumber of gestures: " + numGestures );
-            textView_PhoneGesture.setText( "\nNumber of gestures: " + numGestures );
+            // Update the text view (re-used, like the gravity's)
+            acclText.setLength( 0 );
+            acclText.append( "\nLinear Accelerometer Sensor" )
+                .append( "\nX: " ).append( acclValues[0] )
+                .append( "\nY: " ).append( acclValues[1] )
+                .append( "\nZ: " ).append( acclValues[2] )
+                .append( "\nNumber of gestures: " ).append( numGestures );
+            textView_Accl.setText ( acclText );
+            gestureText.setLength( 0 );
+            gestureText.append( "\nNumber of gestures: " ).append( numGestures );
+            textView_PhoneGesture.setText( gestureText );
+
+            displayUpdateCounter.increment();
 
             // Set the last GUI update time
             lastPhoneGestureTime = currentTime;
@@ -539,12 +595,27 @@ public class ShootingAppActivity
         int priority = 1;
         int noLoop = 0;
         float normalPlaybackRate = 1.0F;
+        long startNanos = soundPlayTimer.start();
+        long beginNanos = tracer.begin();
         soundPool.play( streamID ,
                 leftVolume ,
                 rightVolume ,
                 priority ,
                 noLoop ,
                 normalPlaybackRate );
+        tracer.end( SPAN_SOUND_PLAY , beginNanos );
+        soundPlayTimer.stop( startNanos );
+    }
+
+    /** Helper method that starts exporting the metrics (to the DDMS log, as the app has no log folder). */
+    private void startMetricsReporter() {
+        metricsReporter.setListener( new MetricsReporter.Listener() {
+            @Override
+            public void onSnapshot( MetricsSnapshot snapshot ) {
+                Log.i( TAG , snapshot.format() );
+            }
+        } );
+        metricsReporter.start();
     }
 
     /** Helper method to create toasts. */
@@ -581,12 +652,18 @@ public class ShootingAppActivity
     private static final float MAX_FACE_UP_ANGLE_ERROR = 30.0F;
     /** Flag to indicate whether the phone is face up (and nearly parallel to the ground). */
     private boolean isFaceUp;
+    /** Last gravity readings (preallocated, so the callback allocates nothing). */
+    private final float[] gravityValues = new float[3];
+    /** Positive z-axis of the phone. */
+    private static final float[] Z_AXIS = { 0.0F , 0.0F , 1.0F };
 
     // Linear accl sensor
     /** Last time the GUI was updated about number of gestures (UNIX millisec). */
     private long lastPhoneGestureTime = 0L;
     /** Max delay before GUI is updated about the gestures (millisec). */
     private static final long MAX_UPDATE_INTERVAL_PHONE_GESTURE = 250L;
+    /** Last linear accl readings (preallocated). */
+    private final float[] acclValues = new float[3];
     /** Minimum gesture force (m/sec^2). */
     private static final float MIN_ACCL_FORCE = 7.0F;
     /** Minimum accl peak trough value (m/sec^2). */
@@ -622,6 +699,12 @@ public class ShootingAppActivity
     private TextView textView_PhoneFaceUp;
     /** Text view displaying the shooting region. */
     private TextView textView_PhoneShootingRegion;
+    /** Texts of the text views (re-used). */
+    private final StringBuilder acclText = new StringBuilder();
+    private final StringBuilder gravityText = new StringBuilder();
+    private final StringBuilder gestureText = new StringBuilder();
+    private final StringBuilder faceUpText = new StringBuilder();
+    private final StringBuilder directionText = new StringBuilder();
 
     // For sound effects (gunshots)
     // http://soundscrate.com/gun-related.html
@@ -645,6 +728,31 @@ public class ShootingAppActivity
     /** Number of sound files loaded. */
     private int numSoundsLoaded;
 
+    // Runtime metrics
+    /** Runtime metrics of the app. */
+    private static final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    /** Time to process a sensor event. */
+    private final LatencyTimer sensorCallbackTimer = metrics.timer( "sensor.callback" );
+    /** Time to start playing a sound. */
+    private final LatencyTimer soundPlayTimer = metrics.timer( "sound.play" );
+    /** Number of text view updates. */
+    private final Counter displayUpdateCounter = metrics.counter( "display.updates" );
+    /** Exports the metrics snapshots. */
+    private final MetricsReporter metricsReporter = new MetricsReporter( metrics , METRICS_PERIOD );
+    /** Time between two metrics snapshots (millisec). */
+    private static final long METRICS_PERIOD = 5000L;
+    /** Trace of the app's spans. */
+    private static final SpanTracer tracer = SpanTracer.getDefault();
+    /** Trace spans of a sensor event, its processing steps, and starting a sound. */
+    private static final int SPAN_SENSOR_CALLBACK = tracer.span( "sensor.callback" );
+    private static final int SPAN_GRAVITY = tracer.span( "sensor.gravity" );
+    private static final int SPAN_LINEAR_ACCL = tracer.span( "sensor.linearAccl" );
+    private static final int SPAN_DIRECTION = tracer.span( "sensor.direction" );
+    private static final int SPAN_SOUND_PLAY = tracer.span( "sound.play" );
+    /** Callback time that dumps a trace (nanosec), and the time dumped (nanosec). */
+    private static final long TRACE_TRIGGER_NANOS = 20L * 1000000L;
+    private static final long TRACE_WINDOW_NANOS = 10L * 1000000000L;
+
     // For DDMS Logging and Toasts
     /** Handler to the main thread. */
     private Handler handler;
@@ -0,0 +1,75 @@
+package com.cs4222.khuthia.shootingapp;
+
+import android.content.*;
+import android.hardware.*;
+import android.view.*;
+
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.junit.Test;
+
+/**
+ * Checks that the activity's sensor callbacks allocate nothing, GUI
+ * updates included (the GC pauses of any garbage show as gesture
+ * detection jitter). The activity runs on a fake clock, so the GUI is
+ * updated at its 4 Hz, like on a phone.
+ */
+public class ShootingAppAllocationTest {
+
+    /** Activity with the fake sensor manager and widgets. */
+    private static class ReplayActivity
+        extends ShootingAppActivity {
+
+        @Override
+        public Object getSystemService( String name ) {
+            return ( Context.SENSOR_SERVICE.equals( name ) ? sensors.getSensorManager() : null );
+        }
+
+        @Override
+        public View findViewById( int id ) {
+            return views.findViewById( id );
+        }
+
+        @Override
+        public void onSensorChanged( SensorEvent event ) {
+            // Each event moves the fake clock on by the replay's 50 Hz
+            nowMillis += 20L;
+            super.onSensorChanged( event );
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return nowMillis;
+        }
+
+        final FakeSensorManager sensors =
+            new FakeSensorManager( Sensor.TYPE_LINEAR_ACCELERATION , Sensor.TYPE_GRAVITY ,
+                                   Sensor.TYPE_ACCELEROMETER , Sensor.TYPE_MAGNETIC_FIELD );
+        // Non-recording views (a mock would record the text of each GUI update)
+        final FakeViews views = new FakeViews( false );
+        /** Fake time (millisec). */
+        long nowMillis = 1451624400000L;
+    }
+
+    @Test
+    public void sensorCallbacks_stayWithinTheirBudgets() {
+        ReplayActivity activity = new ReplayActivity();
+        activity.onCreate( null );
+        activity.onResume();
+
+        // Phone lying face up, with an upward jerk now and then
+        // NOTE: A GUI update formats its texts into re-used builders (a
+        //  String per text was up to 1 KB an update, 76 bytes/event at 50 Hz)
+        new AllocationBudget()
+            .addSensorPath( "gravity" , 0L , activity.sensors , Sensor.TYPE_GRAVITY ,
+                            new float[] { 0.1F , 0.2F , 9.8F } , new float[] { 0.2F , 0.1F , 9.7F } )
+            .addSensorPath( "accelerometer" , 0L , activity.sensors , Sensor.TYPE_ACCELEROMETER ,
+                            new float[] { 0.1F , 0.2F , 9.8F } , new float[] { 0.2F , 0.1F , 9.7F } )
+            .addSensorPath( "magnetic field" , 0L , activity.sensors , Sensor.TYPE_MAGNETIC_FIELD ,
+                            new float[] { 5.0F , 20.0F , -40.0F } , new float[] { 6.0F , 19.0F , -41.0F } )
+            .addSensorPath( "linear accl" , 0L , activity.sensors , Sensor.TYPE_LINEAR_ACCELERATION ,
+                            new float[] { 0.0F , 0.0F , 0.2F } , new float[] { 0.0F , 0.0F , 10.0F } ,
+                            new float[] { 0.0F , 0.1F , 0.1F } , new float[] { 0.1F , 0.0F , 0.3F } )
+            .check();
+    }
+}
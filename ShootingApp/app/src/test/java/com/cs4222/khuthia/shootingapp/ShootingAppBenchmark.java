@@ -0,0 +1,96 @@
+package com.cs4222.khuthia.shootingapp;
+
+import java.util.concurrent.*;
+
+import android.content.*;
+import android.hardware.*;
+import android.view.*;
+
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of the activity's sensor processing, per sensor: the gravity
+ * (processGravityValues), the linear accl (processAcclValues, without gestures),
+ * and the accl and magnetic readings of the rotation matrix path (one of each
+ * per operation).
+ *
+ * <p> NOTE: On the JVM, SensorManager.getRotationMatrix() is the mockable
+ * android.jar's stub (it returns false), so the rotation matrix path measures
+ * the app's own work (copying the readings), not the platform's math.
+ */
+@BenchmarkMode( { Mode.Throughput , Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class ShootingAppBenchmark {
+
+    /** Activity with the fake sensor manager, and plain (non-recording) widgets. */
+    private static class BenchmarkActivity
+        extends ShootingAppActivity {
+
+        @Override
+        public Object getSystemService( String name ) {
+            return ( Context.SENSOR_SERVICE.equals( name ) ? sensors.getSensorManager() : null );
+        }
+
+        @Override
+        public View findViewById( int id ) {
+            return views.findViewById( id );
+        }
+
+        final FakeSensorManager sensors =
+            new FakeSensorManager( Sensor.TYPE_LINEAR_ACCELERATION , Sensor.TYPE_GRAVITY ,
+                                   Sensor.TYPE_ACCELEROMETER , Sensor.TYPE_MAGNETIC_FIELD );
+        final FakeViews views = new FakeViews( false );
+    }
+
+    @Setup
+    public void setUp() {
+        activity.onCreate( null );
+        activity.onResume();
+    }
+
+    @TearDown
+    public void tearDown() {
+        activity.onPause();
+    }
+
+    @Benchmark
+    public int processGravityValues() {
+        timestamp += READING_INTERVAL;
+        return activity.sensors.deliver( Sensor.TYPE_GRAVITY , timestamp , ACCURACY , GRAVITY );
+    }
+
+    @Benchmark
+    public int processAcclValues() {
+        timestamp += READING_INTERVAL;
+        return activity.sensors.deliver( Sensor.TYPE_LINEAR_ACCELERATION , timestamp , ACCURACY , LINEAR_ACCL );
+    }
+
+    @Benchmark
+    public int rotationMatrix() {
+        timestamp += READING_INTERVAL;
+        return activity.sensors.deliver( Sensor.TYPE_ACCELEROMETER , timestamp , ACCURACY , GRAVITY ) +
+            activity.sensors.deliver( Sensor.TYPE_MAGNETIC_FIELD , timestamp , ACCURACY , MAGNETIC );
+    }
+
+    /** Activity under test. */
+    private final BenchmarkActivity activity = new BenchmarkActivity();
+    /** Event timestamp (nanosec, device uptime). */
+    private long timestamp = 60L * 1000000000L;
+
+    /** Time between readings (nanosec), 50 Hz. */
+    private static final long READING_INTERVAL = 20000000L;
+    /** Accuracy of the readings. */
+    private static final int ACCURACY = SensorManager.SENSOR_STATUS_ACCURACY_HIGH;
+    /** Gravity (and accl) reading of a phone lying face up. */
+    private static final float[] GRAVITY = { 0.1F , 0.2F , 9.8F };
+    /** Linear accl reading below the gesture threshold. */
+    private static final float[] LINEAR_ACCL = { 0.0F , 0.0F , 0.2F };
+    /** Magnetic reading. */
+    private static final float[] MAGNETIC = { 5.0F , 20.0F , -40.0F };
+}
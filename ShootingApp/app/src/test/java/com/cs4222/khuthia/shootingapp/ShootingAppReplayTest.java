@@ -0,0 +1,84 @@
+package com.cs4222.khuthia.shootingapp;
+
+import android.content.*;
+import android.hardware.*;
+import android.view.*;
+
+import com.cs4222.khuthia.sensortestkit.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays shooting gestures into the activity on the JVM,
+ * and checks the gestures it counts.
+ */
+public class ShootingAppReplayTest {
+
+    /** Activity with the fake sensor manager and widgets. */
+    private static class ReplayActivity
+        extends ShootingAppActivity {
+
+        @Override
+        public Object getSystemService( String name ) {
+            return ( Context.SENSOR_SERVICE.equals( name ) ? sensors.getSensorManager() : null );
+        }
+
+        @Override
+        public View findViewById( int id ) {
+            return views.findViewById( id );
+        }
+
+        final FakeSensorManager sensors =
+            new FakeSensorManager( Sensor.TYPE_LINEAR_ACCELERATION , Sensor.TYPE_GRAVITY ,
+                                   Sensor.TYPE_ACCELEROMETER , Sensor.TYPE_MAGNETIC_FIELD );
+        final FakeViews views = new FakeViews();
+    }
+
+    /**
+       Creates a trace of a phone lying face up (all sensors at 50 Hz),
+       with an upward jerk (linear accl z peak) every 200 ms, starting at 200 ms.
+     */
+    private SensorTrace createTrace( long durationMillis , int numGestures ) {
+        SensorTrace trace = new SensorTrace();
+        long startTime = 1451624400000L;
+        for( long t = 0 ; t <= durationMillis ; t += 20L ) {
+            int accuracy = SensorManager.SENSOR_STATUS_ACCURACY_HIGH;
+            trace.addSensorEvent( startTime + t , Sensor.TYPE_GRAVITY , accuracy , 0.1F , 0.2F , 9.8F );
+            trace.addSensorEvent( startTime + t , Sensor.TYPE_ACCELEROMETER , accuracy , 0.1F , 0.2F , 9.8F );
+            trace.addSensorEvent( startTime + t , Sensor.TYPE_MAGNETIC_FIELD , accuracy , 5.0F , 20.0F , -40.0F );
+            boolean isPeak = ( t > 0 && t % 200L == 0 && t / 200L <= numGestures );
+            trace.addSensorEvent( startTime + t , Sensor.TYPE_LINEAR_ACCELERATION , accuracy ,
+                                  0.0F , 0.0F , ( isPeak ? 10.0F : 0.2F ) );
+        }
+        return trace;
+    }
+
+    /** Creates the activity, and resumes it (which starts sensing). */
+    private ReplayActivity startActivity() {
+        ReplayActivity activity = new ReplayActivity();
+        activity.onCreate( null );
+        activity.onResume();
+        return activity;
+    }
+
+    @Test
+    public void replay_countsGestures() {
+        ReplayActivity activity = startActivity();
+
+        assertEquals( 1 , activity.sensors.getNumListeners( Sensor.TYPE_LINEAR_ACCELERATION ) );
+
+        // Real time, since the GUI is updated at most every 250 ms of wall clock time
+        SensorReplayer.Result result =
+            new SensorReplayer( activity.sensors , null ).replay( createTrace( 1000L , 3 ) , SensorReplayer.REAL_TIME );
+
+        assertEquals( 0 , result.getNumUndelivered() );
+        assertEquals( "\nIs phone face up?: true" , activity.views.getText( R.id.TextView_PhoneFaceUp ) );
+        assertEquals( "\nNumber of gestures: 3" , activity.views.getText( R.id.TextView_PhoneGesture ) );
+
+        // Pausing stops sensing
+        activity.onPause();
+        assertEquals( 0 , activity.sensors.getNumListeners( Sensor.TYPE_GRAVITY ) );
+    }
+}